@@ -776,6 +776,15 @@ public class Apriori
     return options;
   }
 
+  /**
+   * Returns the name of the algorithm, used in the model output.
+   *
+   * @return the name
+   */
+  protected String getAlgorithmName() {
+    return "Apriori";
+  }
+
   /**
    * Outputs the size of all the generated sets of itemsets and the rules.
    * 
@@ -787,7 +796,10 @@ public class Apriori
 
     if (m_Ls.size() <= 1)
       return "\nNo large itemsets and rules found!\n";
-    text.append("\nApriori\n=======\n\n");
+    text.append("\n" + getAlgorithmName() + "\n");
+    for (int i = 0; i < getAlgorithmName().length(); i++)
+      text.append('=');
+    text.append("\n\n");
     text.append("Minimum support: " 
 		+ Utils.doubleToString(m_minSupport,2) 
 		+ " (" + ((int)(m_minSupport * (double)m_instances.numInstances()+0.5)) 
@@ -1274,7 +1286,7 @@ public class Apriori
    *
    * @throws Exception if an attribute is numeric
    */
-  private void findLargeItemSets() throws Exception {
+  protected void findLargeItemSets() throws Exception {
     
     FastVector kMinusOneSets, kSets;
     Hashtable hashtable;
@@ -0,0 +1,570 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    FPGrowth.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.associations;
+
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ <!-- globalinfo-start -->
+ * Class implementing the FP-growth algorithm for finding large item sets without candidate generation. The data is read twice, to count the items and to build a prefix tree of the transactions (FP-tree), which is then mined recursively. Iteratively reduces the minimum support until it finds the required number of rules with the given minimum metric, like Apriori, and generates the same rules as Apriori. Class association rules are mined with Apriori's level-wise search.<br/>
+ * <br/>
+ * For more information see:<br/>
+ * <br/>
+ * J. Han, J.Pei, Y. Yin: Mining frequent patterns without candidate generation. In: Proceedings of the 2000 ACM-SIGMID International Conference on Management of Data, 1-12, 2000.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * BibTeX:
+ * <pre>
+ * &#64;inproceedings{Han2000,
+ *    author = {J. Han and J.Pei and Y. Yin},
+ *    booktitle = {Proceedings of the 2000 ACM-SIGMID International Conference on Management of Data},
+ *    pages = {1-12},
+ *    title = {Mining frequent patterns without candidate generation},
+ *    year = {2000}
+ * }
+ * </pre>
+ * <p/>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -N &lt;required number of rules output&gt;
+ *  The required number of rules. (default = 10)</pre>
+ *
+ * <pre> -T &lt;0=confidence | 1=lift | 2=leverage | 3=Conviction&gt;
+ *  The metric type by which to rank rules. (default = confidence)</pre>
+ *
+ * <pre> -C &lt;minimum metric score of a rule&gt;
+ *  The minimum confidence of a rule. (default = 0.9)</pre>
+ *
+ * <pre> -D &lt;delta for minimum support&gt;
+ *  The delta by which the minimum support is decreased in
+ *  each iteration. (default = 0.05)</pre>
+ *
+ * <pre> -U &lt;upper bound for minimum support&gt;
+ *  Upper bound for minimum support. (default = 1.0)</pre>
+ *
+ * <pre> -M &lt;lower bound for minimum support&gt;
+ *  The lower bound for the minimum support. (default = 0.1)</pre>
+ *
+ * <pre> -S &lt;significance level&gt;
+ *  If used, rules are tested for significance at
+ *  the given level. Slower. (default = no significance testing)</pre>
+ *
+ * <pre> -I
+ *  If set the itemsets found are also output. (default = no)</pre>
+ *
+ * <pre> -R
+ *  Remove columns that contain all missing values (default = no)</pre>
+ *
+ * <pre> -V
+ *  Report progress iteratively. (default = no)</pre>
+ *
+ * <pre> -A
+ *  If set class association rules are mined. (default = no)</pre>
+ *
+ * <pre> -c &lt;the class index&gt;
+ *  The class index. (default = last)</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision: 1.1 $
+ */
+public class FPGrowth
+  extends Apriori {
+
+  /** for serialization */
+  private static final long serialVersionUID = -8364436298405939785L;
+
+  /** the tree of the transactions, shared by all cycles */
+  protected transient FPTree m_Tree;
+
+  /** the transactions the tree was built for */
+  protected transient Instances m_TreeInstances;
+
+  /** the maximum support the tree was built for */
+  protected transient int m_TreeMaxSupport;
+
+  /** the attribute of each item, items are indexed by their rank in the
+   * tree (most frequent first) */
+  protected transient int[] m_ItemAttribute;
+
+  /** the attribute value of each item */
+  protected transient int[] m_ItemValue;
+
+  /**
+   * A prefix tree of the transactions, the items of a transaction are
+   * ordered by rank. The nodes are stored in arrays, node 0 is the root.
+   */
+  protected static class FPTree {
+
+    /** the number of nodes, including the root */
+    protected int m_NumNodes;
+
+    /** the item (rank) of each node */
+    protected int[] m_Item;
+
+    /** the number of transactions passing through each node */
+    protected int[] m_Count;
+
+    /** the parent of each node */
+    protected int[] m_Parent;
+
+    /** the first child of each node, -1 if none */
+    protected int[] m_FirstChild;
+
+    /** the next sibling of each node, -1 if none */
+    protected int[] m_NextSibling;
+
+    /** the next node with the same item, -1 if none */
+    protected int[] m_NodeLink;
+
+    /** the first node of each item, -1 if none */
+    protected int[] m_Head;
+
+    /** the support of each item in the tree */
+    protected int[] m_Support;
+
+    /**
+     * Creates an empty tree.
+     *
+     * @param numItems the number of items (ranks)
+     * @param capacity the initial number of nodes
+     */
+    public FPTree(int numItems, int capacity) {
+      capacity = Math.max(capacity, 16);
+      m_Item = new int[capacity];
+      m_Count = new int[capacity];
+      m_Parent = new int[capacity];
+      m_FirstChild = new int[capacity];
+      m_NextSibling = new int[capacity];
+      m_NodeLink = new int[capacity];
+      m_Head = new int[numItems];
+      m_Support = new int[numItems];
+      Arrays.fill(m_Head, -1);
+
+      m_NumNodes = 1;
+      m_Item[0] = -1;
+      m_Parent[0] = -1;
+      m_FirstChild[0] = -1;
+      m_NextSibling[0] = -1;
+      m_NodeLink[0] = -1;
+    }
+
+    /**
+     * Returns the number of items (ranks) the tree was created for.
+     *
+     * @return the number of items
+     */
+    public int numItems() {
+      return m_Head.length;
+    }
+
+    /**
+     * Adds a transaction to the tree.
+     *
+     * @param items the items (ranks) of the transaction, in ascending order
+     * @param num the number of items to use
+     * @param count the number of times the transaction occurs
+     */
+    public void insert(int[] items, int num, int count) {
+      int node = 0;
+      for (int i = 0; i < num; i++) {
+        int child = m_FirstChild[node];
+        while ((child != -1) && (m_Item[child] != items[i]))
+          child = m_NextSibling[child];
+
+        if (child == -1) {
+          if (m_NumNodes == m_Item.length)
+            grow();
+          child = m_NumNodes++;
+          m_Item[child] = items[i];
+          m_Count[child] = 0;
+          m_Parent[child] = node;
+          m_FirstChild[child] = -1;
+          m_NextSibling[child] = m_FirstChild[node];
+          m_FirstChild[node] = child;
+          m_NodeLink[child] = m_Head[items[i]];
+          m_Head[items[i]] = child;
+        }
+
+        m_Count[child] += count;
+        m_Support[items[i]] += count;
+        node = child;
+      }
+    }
+
+    /**
+     * Doubles the capacity of the node arrays.
+     */
+    protected void grow() {
+      int capacity = m_Item.length * 2;
+      m_Item = copy(m_Item, capacity);
+      m_Count = copy(m_Count, capacity);
+      m_Parent = copy(m_Parent, capacity);
+      m_FirstChild = copy(m_FirstChild, capacity);
+      m_NextSibling = copy(m_NextSibling, capacity);
+      m_NodeLink = copy(m_NodeLink, capacity);
+    }
+
+    /**
+     * Returns a copy of the array with the given length.
+     *
+     * @param array the array to copy
+     * @param length the new length
+     * @return the copy
+     */
+    protected static int[] copy(int[] array, int length) {
+      int[] result = new int[length];
+      System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+      return result;
+    }
+
+    /**
+     * Builds the tree of the transactions that contain the given item,
+     * restricted to the items preceding it that have at least the
+     * minimum support in these transactions.
+     *
+     * @param item the item (rank)
+     * @param minSupport the minimum support
+     * @return the conditional tree, null if no item is frequent
+     */
+    public FPTree conditionalTree(int item, int minSupport) {
+      // count the items on the prefix paths
+      int[] support = new int[item];
+      int numNodes = 0;
+      for (int node = m_Head[item]; node != -1; node = m_NodeLink[node]) {
+        for (int p = m_Parent[node]; p != 0; p = m_Parent[p]) {
+          support[m_Item[p]] += m_Count[node];
+          numNodes++;
+        }
+      }
+
+      boolean frequent = false;
+      for (int i = 0; i < item; i++) {
+        if (support[i] >= minSupport) {
+          frequent = true;
+          break;
+        }
+      }
+      if (!frequent)
+        return null;
+
+      // insert the frequent part of each prefix path
+      FPTree result = new FPTree(item, numNodes + 1);
+      int[] path = new int[item];
+      for (int node = m_Head[item]; node != -1; node = m_NodeLink[node]) {
+        int num = 0;
+        for (int p = m_Parent[node]; p != 0; p = m_Parent[p]) {
+          if (support[m_Item[p]] >= minSupport)
+            path[num++] = m_Item[p];
+        }
+        if (num > 0) {
+          // the path was collected from the leaf to the root
+          for (int i = 0; i < num / 2; i++) {
+            int help = path[i];
+            path[i] = path[num - 1 - i];
+            path[num - 1 - i] = help;
+          }
+          result.insert(path, num, m_Count[node]);
+        }
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * Returns a string describing this associator
+   * @return a description of the evaluator suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Class implementing the FP-growth algorithm for finding large item "
+      + "sets without candidate generation. The data is read twice, to count "
+      + "the items and to build a prefix tree of the transactions (FP-tree), "
+      + "which is then mined recursively. Iteratively reduces the minimum "
+      + "support until it finds the required number of rules with the given "
+      + "minimum metric, like Apriori, and generates the same rules as "
+      + "Apriori. Class association rules are mined with Apriori's "
+      + "level-wise search.\n\n"
+      + "For more information see:\n\n"
+      + getTechnicalInformation().toString();
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing
+   * detailed information about the technical background of this class,
+   * e.g., paper reference or book this class is based on.
+   *
+   * @return the technical information about this class
+   */
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation 	result;
+
+    result = new TechnicalInformation(Type.INPROCEEDINGS);
+    result.setValue(Field.AUTHOR, "J. Han and J.Pei and Y. Yin");
+    result.setValue(Field.TITLE, "Mining frequent patterns without candidate generation");
+    result.setValue(Field.BOOKTITLE, "Proceedings of the 2000 ACM-SIGMID International Conference on Management of Data");
+    result.setValue(Field.YEAR, "2000");
+    result.setValue(Field.PAGES, "1-12");
+
+    return result;
+  }
+
+  /**
+   * Returns the name of the algorithm, used in the model output.
+   *
+   * @return the name
+   */
+  protected String getAlgorithmName() {
+    return "FPGrowth";
+  }
+
+  /**
+   * Builds the tree of the transactions, containing all the items that
+   * have at least the lowest support any cycle can use and at most the
+   * maximum support. Needs two passes over the data.
+   *
+   * @param maxSupport the maximum support
+   * @throws Exception if an attribute is numeric
+   */
+  protected void buildTree(int maxSupport) throws Exception {
+    int numInstances = m_instances.numInstances();
+    int numAttributes = m_instances.numAttributes();
+
+    // same lower bound as in buildAssociations()
+    double lowerBound =
+      (m_lowerBoundMinSupport * (double)numInstances < 1.0)
+      ? 1.0 / (double)numInstances
+      : m_lowerBoundMinSupport;
+    int minSupport = (int)(lowerBound * (double)numInstances + 0.5);
+
+    // first pass: count the items
+    int[] offsets = new int[numAttributes + 1];
+    for (int i = 0; i < numAttributes; i++) {
+      if (m_instances.attribute(i).isNumeric())
+	throw new Exception("Can't handle numeric attributes!");
+      offsets[i + 1] = offsets[i] + m_instances.attribute(i).numValues();
+    }
+    int[] counts = new int[offsets[numAttributes]];
+    for (int n = 0; n < numInstances; n++) {
+      Instance instance = m_instances.instance(n);
+      for (int i = 0; i < numAttributes; i++) {
+	if (!instance.isMissing(i))
+	  counts[offsets[i] + (int)instance.value(i)]++;
+      }
+    }
+
+    // rank the frequent items, most frequent first
+    Integer[] frequent = new Integer[counts.length];
+    int numItems = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if ((counts[i] >= minSupport) && (counts[i] <= maxSupport)
+	  && (counts[i] > 0))
+	frequent[numItems++] = new Integer(i);
+    }
+    final int[] itemCounts = counts;
+    Arrays.sort(frequent, 0, numItems, new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+	int c1 = itemCounts[o1.intValue()];
+	int c2 = itemCounts[o2.intValue()];
+	if (c1 != c2)
+	  return (c1 > c2) ? -1 : 1;
+	return o1.compareTo(o2);
+      }
+    });
+    int[] ranks = new int[counts.length];
+    Arrays.fill(ranks, -1);
+    m_ItemAttribute = new int[numItems];
+    m_ItemValue = new int[numItems];
+    int attribute = 0;
+    for (int r = 0; r < numItems; r++) {
+      int item = frequent[r].intValue();
+      ranks[item] = r;
+      attribute = 0;
+      while (offsets[attribute + 1] <= item)
+	attribute++;
+      m_ItemAttribute[r] = attribute;
+      m_ItemValue[r] = item - offsets[attribute];
+    }
+
+    // second pass: insert the transactions
+    m_Tree = new FPTree(numItems, numInstances);
+    int[] transaction = new int[numAttributes];
+    for (int n = 0; n < numInstances; n++) {
+      Instance instance = m_instances.instance(n);
+      int num = 0;
+      for (int i = 0; i < numAttributes; i++) {
+	if (!instance.isMissing(i)) {
+	  int rank = ranks[offsets[i] + (int)instance.value(i)];
+	  if (rank != -1)
+	    transaction[num++] = rank;
+	}
+      }
+      Arrays.sort(transaction, 0, num);
+      m_Tree.insert(transaction, num, 1);
+    }
+
+    m_TreeInstances = m_instances;
+    m_TreeMaxSupport = maxSupport;
+  }
+
+  /**
+   * Adds the large item sets of the tree that end with the given suffix
+   * to the levels, recursively.
+   *
+   * @param tree the (conditional) tree
+   * @param suffix the items of the suffix
+   * @param suffixLength the number of items in the suffix
+   * @param minSupport the minimum support
+   * @param levels the large item sets, by size
+   */
+  protected void mine(FPTree tree, int[] suffix, int suffixLength,
+                      int minSupport, FastVector levels) {
+
+    for (int item = tree.numItems() - 1; item >= 0; item--) {
+      if (tree.m_Support[item] < minSupport)
+	continue;
+
+      suffix[suffixLength] = item;
+      AprioriItemSet itemSet = new AprioriItemSet(m_instances.numInstances());
+      itemSet.m_items = new int[m_instances.numAttributes()];
+      Arrays.fill(itemSet.m_items, -1);
+      for (int i = 0; i <= suffixLength; i++)
+	itemSet.m_items[m_ItemAttribute[suffix[i]]] = m_ItemValue[suffix[i]];
+      itemSet.m_counter = tree.m_Support[item];
+      while (levels.size() <= suffixLength)
+	levels.addElement(new FastVector());
+      ((FastVector)levels.elementAt(suffixLength)).addElement(itemSet);
+
+      FPTree conditional = tree.conditionalTree(item, minSupport);
+      if (conditional != null)
+	mine(conditional, suffix, suffixLength + 1, minSupport, levels);
+    }
+  }
+
+  /**
+   * Finds all large item sets with FP-growth. The item sets of each size
+   * are stored in the same (lexicographic) order as Apriori generates
+   * them, together with their hash tables.
+   *
+   * @throws Exception if an attribute is numeric
+   */
+  protected void findLargeItemSets() throws Exception {
+    int necSupport, necMaxSupport;
+
+    // minimum support
+    necSupport = (int)(m_minSupport * (double)m_instances.numInstances()+0.5);
+    necMaxSupport = (int)(m_upperBoundMinSupport * (double)m_instances.numInstances()+0.5);
+
+    if ((m_Tree == null) || (m_TreeInstances != m_instances)
+	|| (m_TreeMaxSupport != necMaxSupport))
+      buildTree(necMaxSupport);
+
+    FastVector levels = new FastVector();
+    mine(m_Tree, new int[m_instances.numAttributes()], 0,
+	 Math.max(necSupport, 1), levels);
+
+    Comparator<Object> lexicographic = new Comparator<Object>() {
+      public int compare(Object o1, Object o2) {
+	int[] items1 = ((ItemSet)o1).m_items;
+	int[] items2 = ((ItemSet)o2).m_items;
+	for (int i = 0; i < items1.length; i++) {
+	  if (items1[i] != items2[i]) {
+	    if (items1[i] == -1)
+	      return 1;
+	    if (items2[i] == -1)
+	      return -1;
+	    return (items1[i] < items2[i]) ? -1 : 1;
+	  }
+	}
+	return 0;
+      }
+    };
+    for (int i = 0; i < levels.size(); i++) {
+      FastVector level = (FastVector)levels.elementAt(i);
+      Object[] itemSets = new Object[level.size()];
+      for (int j = 0; j < itemSets.length; j++)
+	itemSets[j] = level.elementAt(j);
+      Arrays.sort(itemSets, lexicographic);
+      FastVector sorted = new FastVector(itemSets.length);
+      for (int j = 0; j < itemSets.length; j++)
+	sorted.addElement(itemSets[j]);
+
+      m_Ls.addElement(sorted);
+      m_hashtables.addElement(AprioriItemSet.getHashtable(sorted, sorted.size()));
+    }
+  }
+
+  /**
+   * Method that generates all large itemsets with a minimum support, and from
+   * these all association rules with a minimum confidence.
+   *
+   * @param instances the instances to be used for generating the associations
+   * @throws Exception if rules can't be built successfully
+   */
+  public void buildAssociations(Instances instances) throws Exception {
+    try {
+      super.buildAssociations(instances);
+    }
+    finally {
+      // the tree is only needed during the cycles
+      m_Tree = null;
+      m_TreeInstances = null;
+      m_ItemAttribute = null;
+      m_ItemValue = null;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args the commandline options
+   */
+  public static void main(String[] args) {
+    runAssociator(new FPGrowth(), args);
+  }
+}
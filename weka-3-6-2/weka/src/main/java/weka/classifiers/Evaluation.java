@@ -66,6 +66,12 @@ import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -104,6 +110,10 @@ import java.util.zip.GZIPOutputStream;
  * Random number seed for the cross-validation and percentage split
  * (default: 1). <p/>
  *
+ * -eval-slots number <br/>
+ * The number of threads to use for the cross-validation, one fold per
+ * thread (default: 1). <p/>
+ *
  * -m filename <br/>
  * The name of a file containing a cost matrix. <p/>
  *
@@ -302,6 +312,9 @@ public class Evaluation
    * present in case of de-serialized schemes */
   protected boolean m_NoPriors = false;
 
+  /** the number of threads to use for cross-validation */
+  protected int m_NumExecutionSlots = 1;
+
   /**
    * Initializes all the counters for the evaluation. 
    * Use <code>useNoPriors()</code> if the dataset is the test set and you
@@ -427,6 +440,35 @@ public class Evaluation
     return newMatrix;
   }
 
+  /**
+   * Sets the number of threads to use for cross-validation. With more
+   * than one thread, the folds are trained and tested concurrently, but
+   * the statistics and predictions are still collected in the order of
+   * the folds, hence they are the same as with a single thread. The
+   * classifier must not share state between copies.
+   *
+   * @param value the number of threads, at least 1
+   * @throws IllegalArgumentException if the number is less than 1
+   */
+  public void setNumExecutionSlots(int value) {
+
+    if (value < 1) {
+      throw new IllegalArgumentException(
+	  "Number of execution slots must be at least 1!");
+    }
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Returns the number of threads to use for cross-validation.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation 
    * for a classifier on a set of instances. Now performs
@@ -470,17 +512,140 @@ public class Evaluation
     }
 
     // Do the folds
-    for (int i = 0; i < numFolds; i++) {
-      Instances train = data.trainCV(numFolds, i, random);
-      setPriors(train);
-      Classifier copiedClassifier = Classifier.makeCopy(classifier);
-      copiedClassifier.buildClassifier(train);
-      Instances test = data.testCV(numFolds, i);
-      evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+    if ((m_NumExecutionSlots > 1) && (numFolds > 1)) {
+      crossValidateFolds(classifier, data, numFolds, random, 
+	  forPredictionsPrinting);
+    } else {
+      for (int i = 0; i < numFolds; i++) {
+	Instances train = data.trainCV(numFolds, i, random);
+	setPriors(train);
+	Classifier copiedClassifier = Classifier.makeCopy(classifier);
+	copiedClassifier.buildClassifier(train);
+	Instances test = data.testCV(numFolds, i);
+	evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+      }
     }
     m_NumFolds = numFolds;
   }
 
+  /**
+   * Trains and tests the folds of a cross-validation concurrently. The
+   * folds are generated and the results collected in the same order as 
+   * in the sequential case, hence the statistics are identical.
+   *
+   * @param classifier the classifier with any options set.
+   * @param data the randomized (and stratified) data
+   * @param numFolds the number of folds for the cross-validation
+   * @param random random number generator for randomization 
+   * @param forPredictionsString varargs parameter that, if supplied, is
+   * expected to hold a StringBuffer to print predictions to, 
+   * a Range of attributes to output and a Boolean (true if the distribution
+   * is to be printed)
+   * @throws Exception if a classifier could not be generated 
+   * successfully
+   */
+  protected void crossValidateFolds(Classifier classifier,
+      Instances data, int numFolds, Random random,
+      Object... forPredictionsPrinting) throws Exception {
+
+    StringBuffer buff = null;
+    Range attsToOutput = null;
+    boolean printDist = false;
+    if (forPredictionsPrinting.length > 0) {
+      buff = (StringBuffer)forPredictionsPrinting[0];
+      attsToOutput = (Range)forPredictionsPrinting[1];
+      printDist = ((Boolean)forPredictionsPrinting[2]).booleanValue();
+    }
+    final Range atts = attsToOutput;
+    final boolean dist = printDist;
+
+    // generating the training sets consumes random numbers, hence this
+    // has to happen in the order of the folds
+    final Instances[] train = new Instances[numFolds];
+    final Instances[] test = new Instances[numFolds];
+    final StringBuffer[] text = new StringBuffer[numFolds];
+    for (int i = 0; i < numFolds; i++) {
+      train[i] = data.trainCV(numFolds, i, random);
+      test[i] = data.testCV(numFolds, i);
+      if (buff != null) {
+	text[i] = new StringBuffer();
+      }
+    }
+    final Classifier[] copies = Classifier.makeCopies(classifier, numFolds);
+
+    ExecutorService executor = 
+      Executors.newFixedThreadPool(Math.min(m_NumExecutionSlots, numFolds));
+    try {
+      Vector<Future<double[][]>> folds = new Vector<Future<double[][]>>();
+      for (int i = 0; i < numFolds; i++) {
+	final int fold = i;
+	folds.add(executor.submit(new Callable<double[][]>() {
+	  public double[][] call() throws Exception {
+	    copies[fold].buildClassifier(train[fold]);
+	    double[][] result = new double[test[fold].numInstances()][];
+	    for (int n = 0; n < result.length; n++) {
+	      result[n] = predict(copies[fold], test[fold].instance(n));
+	      if (text[fold] != null) {
+		text[fold].append(predictionText(copies[fold], 
+		    test[fold].instance(n), n, atts, dist));
+	      }
+	    }
+	    return result;
+	  }
+	}));
+      }
+
+      // collect the results in order, just like the sequential code
+      for (int i = 0; i < numFolds; i++) {
+	double[][] predictions;
+	try {
+	  predictions = folds.get(i).get();
+	} catch (ExecutionException e) {
+	  if (e.getCause() instanceof Exception) {
+	    throw (Exception) e.getCause();
+	  }
+	  throw new Exception(e.getCause());
+	}
+	setPriors(train[i]);
+	for (int n = 0; n < predictions.length; n++) {
+	  evaluateModelOnceAndRecordPrediction(predictions[n], 
+	      test[i].instance(n));
+	}
+	if (buff != null) {
+	  buff.append(text[i]);
+	}
+	train[i] = null;
+	test[i] = null;
+	copies[i] = null;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the prediction of a classifier for a test instance, the way
+   * <code>evaluateModelOnceAndRecordPrediction</code> obtains it. 
+   *
+   * @param classifier the trained classifier
+   * @param instance the test instance
+   * @return the distribution for a nominal class, otherwise an array 
+   * containing the predicted value
+   * @throws Exception if the classifier fails
+   */
+  protected double[] predict(Classifier classifier, Instance instance)
+    throws Exception {
+
+    Instance classMissing = (Instance)instance.copy();
+    classMissing.setDataset(instance.dataset());
+    classMissing.setClassMissing();
+    if (m_ClassIsNominal) {
+      return classifier.distributionForInstance(classMissing);
+    } else {
+      return new double[]{classifier.classifyInstance(classMissing)};
+    }
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation 
    * for a classifier on a set of instances.
@@ -538,6 +703,10 @@ public class Evaluation
    * Random number seed for the cross-validation and percentage split
    * (default: 1). <p/>
    *
+   * -eval-slots number <br/>
+   * The number of threads to use for the cross-validation, one fold per
+   * thread (default: 1). <p/>
+   *
    * -m filename <br/>
    * The name of a file containing a cost matrix. <p/>
    *
@@ -667,6 +836,10 @@ public class Evaluation
    * Random number seed for the cross-validation and percentage split
    * (default: 1). <p/>
    *
+   * -eval-slots number <br/>
+   * The number of threads to use for the cross-validation, one fold per
+   * thread (default: 1). <p/>
+   *
    * -m file with cost matrix <br/>
    * The name of a file containing a cost matrix. <p/>
    *
@@ -719,10 +892,10 @@ public class Evaluation
       String [] options) throws Exception {
 
     Instances train = null, tempTrain, test = null, template = null;
-    int seed = 1, folds = 10, classIndex = -1;
+    int seed = 1, folds = 10, classIndex = -1, numSlots = 1;
     boolean noCrossValidation = false;
     String trainFileName, testFileName, sourceClass, 
-    classIndexString, seedString, foldsString, objectInputFileName, 
+    classIndexString, seedString, foldsString, numSlotsString, objectInputFileName, 
     objectOutputFileName, attributeRangeString;
     boolean noOutput = false,
     printClassifications = false, trainStatistics = true,
@@ -824,6 +997,10 @@ public class Evaluation
       if (seedString.length() != 0) {
 	seed = Integer.parseInt(seedString);
       }
+      numSlotsString = Utils.getOption("eval-slots", options);
+      if (numSlotsString.length() != 0) {
+	numSlots = Integer.parseInt(numSlotsString);
+      }
       if (trainFileName.length() == 0) {
 	if (objectInputFileName.length() == 0) {
 	  throw new Exception("No training file and no object "+
@@ -1012,6 +1189,7 @@ public class Evaluation
     // Setup up evaluation objects
     Evaluation trainingEvaluation = new Evaluation(new Instances(template, 0), costMatrix);
     Evaluation testingEvaluation = new Evaluation(new Instances(template, 0), costMatrix);
+    testingEvaluation.setNumExecutionSlots(numSlots);
 
     // disable use of priors if no training file given
     if (!trainSetPresent)
@@ -3300,6 +3478,9 @@ public class Evaluation
     optionsText.append("-s <random number seed>\n");
     optionsText.append("\tSets random number seed for cross-validation or percentage split\n");
     optionsText.append("\t(default: 1).\n");
+    optionsText.append("-eval-slots <number of threads>\n");
+    optionsText.append("\tSets the number of threads for cross-validation, one fold\n");
+    optionsText.append("\tper thread (default: 1).\n");
     optionsText.append("-m <name of file with cost matrix>\n");
     optionsText.append("\tSets file with cost matrix.\n");
     optionsText.append("-l <name of input file>\n");
@@ -0,0 +1,357 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelIteratedSingleClassifierEnhancer.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.util.Enumeration;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Abstract utility class for meta classifiers that build an ensemble of
+ * independent members from a single base learner. The members can be
+ * built and queried by several threads. Subclasses have to make sure that
+ * building and querying a member only depends on the member's index, ie.
+ * any random numbers have to be drawn from a generator of the member and
+ * not from a generator shared by all members. Then the ensemble does not
+ * depend on the number of threads.
+ *
+ * @version $Revision: 1.1 $
+ */
+public abstract class ParallelIteratedSingleClassifierEnhancer
+  extends IteratedSingleClassifierEnhancer {
+
+  /** for serialization */
+  private static final long serialVersionUID = -3717224471637413563L;
+
+  /** the minimum number of members per thread when querying the ensemble. */
+  public final static int MIN_MEMBERS_PER_TASK = 25;
+
+  /** The number of threads to use. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The threads, shared by all ensembles and created on demand. */
+  protected static ExecutorService m_Executor;
+
+  /**
+   * A piece of work that is done for each member of the ensemble.
+   */
+  protected interface MemberTask {
+
+    /**
+     * Does the work for the given member.
+     *
+     * @param index the index of the member
+     * @throws Exception if the work fails
+     */
+    void run(int index) throws Exception;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+
+    Vector newVector = new Vector(2);
+
+    newVector.addElement(new Option(
+	      "\tThe number of threads to use for building and querying\n"
+	      + "\tthe ensemble.\n"
+	      + "\t(default 1)",
+	      "num-slots", 1, "-num-slots <num>"));
+
+    Enumeration enu = super.listOptions();
+    while (enu.hasMoreElements()) {
+      newVector.addElement(enu.nextElement());
+    }
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. Valid options are:<p>
+   *
+   * -W classname <br>
+   * Specify the full class name of the base learner.<p>
+   *
+   * -I num <br>
+   * Set the number of iterations (default 10). <p>
+   *
+   * -num-slots num <br>
+   * Set the number of threads to use (default 1). <p>
+   *
+   * Options after -- are passed to the designated classifier.<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+
+    String slots = Utils.getOption("num-slots", options);
+    if (slots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slots));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String [] getOptions() {
+
+    String [] superOptions = super.getOptions();
+    String [] options = new String [superOptions.length + 2];
+
+    int current = 0;
+    options[current++] = "-num-slots";
+    options[current++] = "" + getNumExecutionSlots();
+
+    System.arraycopy(superOptions, 0, options, current,
+		     superOptions.length);
+
+    return options;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for building the members of the "
+      + "ensemble and for combining their predictions.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the threads, creates them if necessary. The threads are shared
+   * by all ensembles, so building an ensemble doesn't leave a pool behind,
+   * and idle threads terminate after a while.
+   *
+   * @return the threads
+   */
+  protected static synchronized ExecutorService getExecutor() {
+
+    if (m_Executor == null) {
+      m_Executor = Executors.newCachedThreadPool(new ThreadFactory() {
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, "ParallelIteratedSingleClassifierEnhancer");
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Builds the given member of the ensemble. Is called concurrently for
+   * different members, hence must only modify the state of the member.
+   *
+   * @param index the index of the member
+   * @param data the training data, must not be modified
+   * @throws Exception if the member could not be built
+   */
+  protected abstract void buildMember(int index, Instances data)
+    throws Exception;
+
+  /**
+   * Builds all members of the ensemble, using as many threads as
+   * specified.
+   *
+   * @param data the training data, must not be modified
+   * @throws Exception if a member could not be built
+   */
+  protected void buildMembers(final Instances data) throws Exception {
+
+    forEachMember(new MemberTask() {
+      public void run(int index) throws Exception {
+	buildMember(index, data);
+      }
+    }, m_NumExecutionSlots);
+  }
+
+  /**
+   * Runs the task for all members. With more than one thread, each thread
+   * processes members until none are left. A member is only ever
+   * processed by one thread.
+   *
+   * @param task the task to run
+   * @param numThreads the number of threads to use
+   * @throws Exception if the task fails for a member
+   */
+  protected void forEachMember(final MemberTask task, int numThreads)
+    throws Exception {
+
+    final int numMembers = m_Classifiers.length;
+    if (numThreads > numMembers)
+      numThreads = numMembers;
+
+    if (numThreads <= 1) {
+      for (int i = 0; i < numMembers; i++)
+	task.run(i);
+      return;
+    }
+
+    final AtomicInteger next = new AtomicInteger();
+    Vector<Future<Object>> futures = new Vector<Future<Object>>();
+    for (int t = 0; t < numThreads; t++) {
+      futures.add(getExecutor().submit(new Callable<Object>() {
+	public Object call() throws Exception {
+	  int index;
+	  while ((index = next.getAndIncrement()) < numMembers)
+	    task.run(index);
+	  return null;
+	}
+      }));
+    }
+
+    Exception error = null;
+    for (int t = 0; t < futures.size(); t++) {
+      try {
+	futures.get(t).get();
+      }
+      catch (ExecutionException e) {
+	// stop the other threads, the first error is reported
+	next.set(numMembers);
+	if (error == null) {
+	  if (e.getCause() instanceof Exception)
+	    error = (Exception) e.getCause();
+	  else
+	    error = new Exception(e.getCause().toString());
+	}
+      }
+    }
+    if (error != null)
+      throw error;
+  }
+
+  /**
+   * Returns the number of threads to use for querying the ensemble. Small
+   * ensembles are queried by a single thread, since the overhead of the
+   * threads would outweigh their benefit.
+   *
+   * @return the number of threads
+   */
+  protected int numQueryThreads() {
+
+    int result = m_Classifiers.length / MIN_MEMBERS_PER_TASK;
+    if (result > m_NumExecutionSlots)
+      result = m_NumExecutionSlots;
+    if (result < 1)
+      result = 1;
+
+    return result;
+  }
+
+  /**
+   * Averages the predictions of the members for the given instance: the
+   * numeric predictions in case of a numeric class, otherwise the
+   * normalized sum of the distributions. The predictions are added up in
+   * the order of the members, regardless of the number of threads.
+   *
+   * @param instance the instance to be classified
+   * @return the averaged prediction
+   * @throws Exception if a prediction fails
+   */
+  protected double[] averageDistribution(final Instance instance)
+    throws Exception {
+
+    final boolean numeric = instance.classAttribute().isNumeric();
+    double[] sums = new double[instance.numClasses()];
+
+    if (numQueryThreads() <= 1) {
+      for (int i = 0; i < m_Classifiers.length; i++) {
+	if (numeric) {
+	  sums[0] += m_Classifiers[i].classifyInstance(instance);
+	} else {
+	  double[] newProbs = m_Classifiers[i].distributionForInstance(instance);
+	  for (int j = 0; j < newProbs.length; j++)
+	    sums[j] += newProbs[j];
+	}
+      }
+    }
+    else {
+      final double[][] preds = new double[m_Classifiers.length][];
+      forEachMember(new MemberTask() {
+	public void run(int index) throws Exception {
+	  if (numeric)
+	    preds[index] = new double[]{m_Classifiers[index].classifyInstance(instance)};
+	  else
+	    preds[index] = m_Classifiers[index].distributionForInstance(instance);
+	}
+      }, numQueryThreads());
+      for (int i = 0; i < preds.length; i++) {
+	for (int j = 0; j < preds[i].length; j++)
+	  sums[j] += preds[i][j];
+      }
+    }
+
+    if (numeric) {
+      sums[0] /= (double) m_Classifiers.length;
+    } else if (!Utils.eq(Utils.sum(sums), 0)) {
+      Utils.normalize(sums);
+    }
+
+    return sums;
+  }
+}
@@ -23,6 +23,7 @@
 package weka.classifiers.functions;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.supportVector.CachedKernel;
 import weka.classifiers.functions.supportVector.Kernel;
 import weka.classifiers.functions.supportVector.PolyKernel;
 import weka.classifiers.functions.supportVector.SMOset;
@@ -33,6 +34,7 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
+import weka.core.ParallelTasks;
 import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
 import weka.core.SerializedObject;
@@ -155,6 +157,11 @@ import java.util.Vector;
  * <pre> -W &lt;double&gt;
  *  The random number seed. (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of threads to use for training the pairwise
+ *  classifiers.
+ *  (default 1)</pre>
+ * 
  * <pre> -K &lt;classname and parameters&gt;
  *  The Kernel to use.
  *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -176,6 +183,12 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The memory in megabytes for caching whole kernel rows
+ *  (least recently used rows are evicted), 0 to use the
+ *  cache of -C instead.
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -1194,6 +1207,9 @@ public class SMO
 
   /** the kernel to use */
   protected Kernel m_kernel = new PolyKernel();
+
+  /** the number of threads to use */
+  protected int m_NumExecutionSlots = 1;
   
   /**
    * Turns off checks for missing values, etc. Use with caution.
@@ -1320,38 +1336,80 @@ public class SMO
     m_KernelIsLinear = (m_kernel instanceof PolyKernel) && (((PolyKernel) m_kernel).getExponent() == 1.0);
     
     // Generate subsets representing each class
-    Instances[] subsets = new Instances[insts.numClasses()];
+    int[][] subsets = new int[insts.numClasses()][];
+    int[] subsetSizes = new int[insts.numClasses()];
+    for (int j = 0; j < insts.numInstances(); j++) {
+      subsetSizes[(int)insts.instance(j).classValue()]++;
+    }
     for (int i = 0; i < insts.numClasses(); i++) {
-      subsets[i] = new Instances(insts, insts.numInstances());
+      subsets[i] = new int[subsetSizes[i]];
+      subsetSizes[i] = 0;
     }
     for (int j = 0; j < insts.numInstances(); j++) {
-      Instance inst = insts.instance(j);
-      subsets[(int)inst.classValue()].add(inst);
+      int cl = (int)insts.instance(j).classValue();
+      subsets[cl][subsetSizes[cl]++] = j;
     }
-    for (int i = 0; i < insts.numClasses(); i++) {
-      subsets[i].compactify();
+
+    // Share the kernel rows between the binary classifiers?
+    final CachedKernel sharedKernel;
+    if ((insts.numClasses() > 2) && (getKernel() instanceof CachedKernel)
+	&& (((CachedKernel) getKernel()).getCacheMemory() > 0)) {
+      sharedKernel = (CachedKernel) Kernel.makeCopy(getKernel());
+      sharedKernel.buildKernel(insts);
+    } else {
+      sharedKernel = null;
     }
 
-    // Build the binary classifiers
+    // Determine the training data of the binary classifiers, i.e., the
+    // indices of the instances in the order given by randomizing them
     Random rand = new Random(m_randomSeed);
     m_classifiers = new BinarySMO[insts.numClasses()][insts.numClasses()];
+    final Vector<int[]> pairs = new Vector<int[]>();
+    final Vector<int[]> pairIndices = new Vector<int[]>();
     for (int i = 0; i < insts.numClasses(); i++) {
       for (int j = i + 1; j < insts.numClasses(); j++) {
 	m_classifiers[i][j] = new BinarySMO();
 	m_classifiers[i][j].setKernel(Kernel.makeCopy(getKernel()));
-	Instances data = new Instances(insts, insts.numInstances());
-	for (int k = 0; k < subsets[i].numInstances(); k++) {
-	  data.add(subsets[i].instance(k));
+	int[] indices = new int[subsets[i].length + subsets[j].length];
+	System.arraycopy(subsets[i], 0, indices, 0, subsets[i].length);
+	System.arraycopy(subsets[j], 0, indices, subsets[i].length, 
+	    subsets[j].length);
+	// the same as Instances.randomize(Random)
+	for (int k = indices.length - 1; k > 0; k--) {
+	  int r = rand.nextInt(k + 1);
+	  int tmp = indices[k];
+	  indices[k] = indices[r];
+	  indices[r] = tmp;
 	}
-	for (int k = 0; k < subsets[j].numInstances(); k++) {
-	  data.add(subsets[j].instance(k));
+	if (sharedKernel != null) {
+	  ((CachedKernel) m_classifiers[i][j].getKernel()).shareCache(
+	      sharedKernel, indices);
+	}
+	pairs.add(new int[]{i, j});
+	pairIndices.add(indices);
+      }
+    }
+
+    // Build the binary classifiers
+    final Instances trainData = insts;
+    ParallelTasks.forEach(pairs.size(), m_NumExecutionSlots, 
+	new ParallelTasks.Task() {
+      public void run(int pair) throws Exception {
+	int i = pairs.get(pair)[0];
+	int j = pairs.get(pair)[1];
+	int[] indices = pairIndices.get(pair);
+	Instances data = new Instances(trainData, indices.length);
+	for (int k = 0; k < indices.length; k++) {
+	  data.add(trainData.instance(indices[k]));
 	}
-	data.compactify();
-	data.randomize(rand);
 	m_classifiers[i][j].buildClassifier(data, i, j, 
 					    m_fitLogisticModels,
 					    m_numFolds, m_randomSeed);
       }
+    });
+
+    if (sharedKernel != null) {
+      sharedKernel.clean();
     }
   }
 
@@ -1625,6 +1683,12 @@ public class SMO
 	"(default 1)",
 	"W", 1, "-W <double>"));
     
+    result.addElement(new Option(
+	"\tNumber of threads to use for training the pairwise\n"
+	+ "\tclassifiers.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+    
     result.addElement(new Option(
 	"\tThe Kernel to use.\n"
 	+ "\t(default: weka.classifiers.functions.supportVector.PolyKernel)",
@@ -1683,6 +1747,11 @@ public class SMO
    * <pre> -W &lt;double&gt;
    *  The random number seed. (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads to use for training the pairwise
+   *  classifiers.
+   *  (default 1)</pre>
+   * 
    * <pre> -K &lt;classname and parameters&gt;
    *  The Kernel to use.
    *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -1704,6 +1773,12 @@ public class SMO
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The memory in megabytes for caching whole kernel rows
+   *  (least recently used rows are evicted), 0 to use the
+   *  cache of -C instead.
+   *  (default: 0)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
@@ -1761,6 +1836,12 @@ public class SMO
     else
       setRandomSeed(1);
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
+
     tmpStr     = Utils.getOption('K', options);
     tmpOptions = Utils.splitOptions(tmpStr);
     if (tmpOptions.length != 0) {
@@ -1811,6 +1892,9 @@ public class SMO
     result.add("-W");
     result.add("" + getRandomSeed());
 
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
     result.add("-K");
     result.add("" + getKernel().getClass().getName() + " " + Utils.joinOptions(getKernel().getOptions()));
     
@@ -2082,6 +2166,37 @@ public class SMO
     m_randomSeed = newrandomSeed;
   }
   
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for training the pairwise "
+      + "classifiers. The results don't depend on it.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+  
   /**
    * Prints out the classifier.
    *
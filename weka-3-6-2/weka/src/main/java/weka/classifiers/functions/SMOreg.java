@@ -145,6 +145,12 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The memory in megabytes for caching whole kernel rows
+ *  (least recently used rows are evicted), 0 to use the
+ *  cache of -C instead.
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -368,6 +374,12 @@ public class SMOreg
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The memory in megabytes for caching whole kernel rows
+   *  (least recently used rows are evicted), 0 to use the
+   *  cache of -C instead.
+   *  (default: 0)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
@@ -25,15 +25,25 @@ package weka.classifiers.functions.supportVector;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
+import weka.core.SparseInstance;
 import weka.core.Utils;
 
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Vector;
 
 /**
  * Base class for RBFKernel and PolyKernel that implements a simple LRU.
  * (least-recently-used) cache if the cache size is set to a value > 0.
- * Otherwise it uses a full cache.
+ * Otherwise it uses a full cache. <p/>
+ * 
+ * Alternatively, whole kernel rows can be cached within a memory budget,
+ * evicting the least recently used rows. Rows are computed in one go,
+ * which subclasses can speed up by overriding evaluateRow(). The row
+ * cache can be shared with kernels built on subsets of the data (see
+ * shareCache()), e.g., the kernels of the pairwise machines of SMO. 
+ * The caches can be used by several threads at the same time.
  * 
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
  * @author Shane Legg (shane@intelligenesis.net) (sparse vector code)
@@ -71,6 +81,26 @@ public abstract class CachedKernel
   /** number of cache slots in an entry */
   protected int m_cacheSlots = 4;
 
+  /** The memory for the row cache in megabytes, 0 to turn it off */
+  protected double m_cacheMemory = 0;
+
+  /** The cached kernel rows (least recently used first) */
+  protected transient LinkedHashMap<Integer,double[]> m_rows;
+
+  /** The maximum number of rows in the row cache */
+  protected transient int m_maxRows;
+
+  /** The kernel whose row cache is used (this kernel if not shared) */
+  protected transient CachedKernel m_cacheOwner;
+
+  /** The indices of the instances in the data of the cache owner, null
+   * if the cache is not shared */
+  protected transient int[] m_cacheIndices;
+
+  /** The data as dense vectors (class value set to 0) for computing rows,
+   * null if the data is sparse */
+  protected transient double[][] m_denseData;
+
   /**
    * default constructor - does nothing.
    */
@@ -115,6 +145,13 @@ public abstract class CachedKernel
 	+ "\t(default: 250007)",
 	"C", 1, "-C <num>"));
 
+    result.addElement(new Option(
+	"\tThe memory in megabytes for caching whole kernel rows\n"
+	+ "\t(least recently used rows are evicted), 0 to use the\n"
+	+ "\tcache of -C instead.\n"
+	+ "\t(default: 0)",
+	"cache-mb", 1, "-cache-mb <num>"));
+
     return result.elements();
   }
 
@@ -133,6 +170,12 @@ public abstract class CachedKernel
     else
       setCacheSize(250007);
     
+    tmpStr = Utils.getOption("cache-mb", options);
+    if (tmpStr.length() != 0)
+      setCacheMemory(Double.parseDouble(tmpStr));
+    else
+      setCacheMemory(0);
+    
     super.setOptions(options);
   }
 
@@ -154,6 +197,11 @@ public abstract class CachedKernel
     result.add("-C");
     result.add("" + getCacheSize());
 
+    if (getCacheMemory() > 0) {
+      result.add("-cache-mb");
+      result.add("" + getCacheMemory());
+    }
+
     return (String[]) result.toArray(new String[result.size()]);	  
   }
 
@@ -185,23 +233,38 @@ public abstract class CachedKernel
     long key = -1;
     int location = -1;
 
+    // Use row cache?
+    if ( (id1 >= 0) && (m_cacheOwner != null) ) {
+      if (m_cacheIndices != null) {
+	id1 = m_cacheIndices[id1];
+	id2 = m_cacheIndices[id2];
+      }
+      double[] row = m_cacheOwner.cachedRow(id1, this);
+      if (row == null)
+	row = m_cacheOwner.computeRow(id1, this);
+      return row[id2];
+    }
+
     // we can only cache if we know the indexes and caching is not 
     // disbled (m_cacheSize == -1)
     if ( (id1 >= 0) && (m_cacheSize != -1) ) {
 
       // Use full cache?
       if (m_cacheSize == 0) {
-	if (m_kernelMatrix == null) {
-	  m_kernelMatrix = new double[m_data.numInstances()][];
-	  for(int i = 0; i < m_data.numInstances(); i++) {
-	    m_kernelMatrix[i] = new double[i + 1];
-	    for(int j = 0; j <= i; j++) {
-	      m_kernelEvals++;
-	      m_kernelMatrix[i][j] = evaluate(i, j, m_data.instance(i));
+	synchronized (this) {
+	  if (m_kernelMatrix == null) {
+	    double[][] kernelMatrix = new double[m_data.numInstances()][];
+	    for(int i = 0; i < m_data.numInstances(); i++) {
+	      kernelMatrix[i] = new double[i + 1];
+	      for(int j = 0; j <= i; j++) {
+		m_kernelEvals++;
+		kernelMatrix[i][j] = evaluate(i, j, m_data.instance(i));
+	      }
 	    }
-	  }
-	} 
-	m_cacheHits++;
+	    m_kernelMatrix = kernelMatrix;
+	  } 
+	  m_cacheHits++;
+	}
 	result = (id1 > id2) ? m_kernelMatrix[id1][id2] : m_kernelMatrix[id2][id1];
 	return result;
       }
@@ -213,47 +276,158 @@ public abstract class CachedKernel
 	key = (id2 + ((long) id1 * m_numInsts));
       }
       location = (int) (key % m_cacheSize) * m_cacheSlots;
-      int loc = location;
-      for (int i = 0; i < m_cacheSlots; i++) {
-	long thiskey = m_keys[loc];
-	if (thiskey == 0)
-	  break; // empty slot, so break out of loop early
-	if (thiskey == (key + 1)) {
-	  m_cacheHits++;
-	  // move entry to front of cache (LRU) by swapping
-	  // only if it's not already at the front of cache
-	  if (i > 0) {
-	    double tmps = m_storage[loc];
-	    m_storage[loc] = m_storage[location];
-	    m_keys[loc] = m_keys[location];
-	    m_storage[location] = tmps;
-	    m_keys[location] = thiskey;
-	    return tmps;
-	  } else
-	    return m_storage[loc];
+      synchronized (this) {
+	int loc = location;
+	for (int i = 0; i < m_cacheSlots; i++) {
+	  long thiskey = m_keys[loc];
+	  if (thiskey == 0)
+	    break; // empty slot, so break out of loop early
+	  if (thiskey == (key + 1)) {
+	    m_cacheHits++;
+	    // move entry to front of cache (LRU) by swapping
+	    // only if it's not already at the front of cache
+	    if (i > 0) {
+	      double tmps = m_storage[loc];
+	      m_storage[loc] = m_storage[location];
+	      m_keys[loc] = m_keys[location];
+	      m_storage[location] = tmps;
+	      m_keys[location] = thiskey;
+	      return tmps;
+	    } else
+	      return m_storage[loc];
+	  }
+	  loc++;
 	}
-	loc++;
       }
     }
 
     result = evaluate(id1, id2, inst1);
 
-    m_kernelEvals++;
-
     // store result in cache
-    if ( (key != -1) && (m_cacheSize != -1) ) {
-      // move all cache slots forward one array index
-      // to make room for the new entry
-      System.arraycopy(m_keys, location, m_keys, location + 1,
-		       m_cacheSlots - 1);
-      System.arraycopy(m_storage, location, m_storage, location + 1,
-		       m_cacheSlots - 1);
-      m_storage[location] = result;
-      m_keys[location] = (key + 1);
+    synchronized (this) {
+      m_kernelEvals++;
+
+      if ( (key != -1) && (m_cacheSize != -1) ) {
+	// move all cache slots forward one array index
+	// to make room for the new entry
+	System.arraycopy(m_keys, location, m_keys, location + 1,
+	    m_cacheSlots - 1);
+	System.arraycopy(m_storage, location, m_storage, location + 1,
+	    m_cacheSlots - 1);
+	m_storage[location] = result;
+	m_keys[location] = (key + 1);
+      }
     }
     return result;
   }
 
+  /**
+   * Returns a row of the kernel matrix from the row cache, marking it as
+   * the most recently used one.
+   * 
+   * @param id		the index of the row
+   * @param counter	the kernel whose number of cache hits to update
+   * @return		the row, null if not in the cache
+   */
+  protected double[] cachedRow(int id, CachedKernel counter) {
+    synchronized (m_rows) {
+      double[] row = m_rows.get(id);
+      if (row != null)
+	counter.m_cacheHits++;
+      return row;
+    }
+  }
+
+  /**
+   * Computes a row of the kernel matrix and adds it to the row cache,
+   * evicting the least recently used row if the cache is full.
+   * 
+   * @param id		the index of the row
+   * @param counter	the kernel whose number of evaluations to update
+   * @return		the row
+   * @throws Exception	if something goes wrong
+   */
+  protected double[] computeRow(int id, CachedKernel counter) 
+    throws Exception {
+
+    double[] row = new double[m_numInsts];
+    evaluateRow(id, row);
+
+    synchronized (m_rows) {
+      counter.m_kernelEvals += row.length;
+      m_rows.put(id, row);
+      if (m_rows.size() > m_maxRows) {
+	Iterator<Integer> it = m_rows.keySet().iterator();
+	it.next();
+	it.remove();
+      }
+    }
+    return row;
+  }
+
+  /**
+   * Computes a row of the kernel matrix, i.e., evaluates the kernel for
+   * an instance of the data and all instances of the data. Subclasses can 
+   * override this method to compute the row more efficiently, but must 
+   * produce the same values as evaluate().
+   * 
+   * @param id1		the index of the instance
+   * @param result	the array for the kernel values
+   * @throws Exception	if something goes wrong
+   */
+  protected void evaluateRow(int id1, double[] result) throws Exception {
+    Instance inst1 = m_data.instance(id1);
+    for (int i = 0; i < result.length; i++)
+      result[i] = evaluate(id1, i, inst1);
+  }
+
+  /**
+   * Computes the dot products of an instance of the data with all 
+   * instances of the data. Uses tight loops over a dense copy of the 
+   * data if the row cache is used and the data is dense. The results are 
+   * the same as those of dotProd().
+   * 
+   * @param id1		the index of the instance
+   * @param result	the array for the dot products
+   * @throws Exception	if an error occurs
+   */
+  protected final void dotProds(int id1, double[] result) throws Exception {
+    if (m_denseData != null) {
+      double[] x = m_denseData[id1];
+      for (int i = 0; i < result.length; i++) {
+	double[] y = m_denseData[i];
+	double sum = 0;
+	for (int k = 0; k < x.length; k++)
+	  sum += x[k] * y[k];
+	result[i] = sum;
+      }
+    }
+    else {
+      Instance inst1 = m_data.instance(id1);
+      for (int i = 0; i < result.length; i++)
+	result[i] = dotProd(inst1, m_data.instance(i));
+    }
+  }
+
+  /**
+   * Makes this kernel use the row cache of the given kernel. The given 
+   * kernel must use the same settings and must have been built with data
+   * that contains the data this kernel will be built with. The sharing
+   * ends when this kernel is cleaned or built with data of another size.
+   * 
+   * @param owner	the kernel whose row cache to use
+   * @param indices	the indices in the data of the given kernel of the
+   * 			instances this kernel will be built with
+   * @throws Exception	if the given kernel doesn't use a row cache
+   */
+  public void shareCache(CachedKernel owner, int[] indices) throws Exception {
+    if (owner.m_rows == null)
+      throw new Exception("Kernel doesn't use a row cache!");
+
+    m_cacheOwner   = owner;
+    m_cacheIndices = indices;
+  }
+
   /**
    * Returns the number of time Eval has been called.
    * 
@@ -279,6 +453,10 @@ public abstract class CachedKernel
     m_storage = null;
     m_keys = null;
     m_kernelMatrix = null;
+    m_rows = null;
+    m_cacheOwner = null;
+    m_cacheIndices = null;
+    m_denseData = null;
   }
 
   /**
@@ -351,6 +529,44 @@ public abstract class CachedKernel
     return "The size of the cache (a prime number), 0 for full cache and -1 to turn it off.";
   }
 
+  /**
+   * Sets the memory for caching kernel rows.
+   * 
+   * @param value	the memory in megabytes, 0 to turn the row cache off
+   */
+  public void setCacheMemory(double value) {
+    if (value >= 0) {
+      m_cacheMemory = value;
+      clean();
+    }
+    else {
+      System.out.println(
+	  "Cache memory cannot be negative (provided: " + value + ")!");
+    }
+  }
+  
+  /**
+   * Gets the memory for caching kernel rows.
+   * 
+   * @return 		the memory in megabytes, 0 if the row cache is off
+   */
+  public double getCacheMemory() {
+    return m_cacheMemory;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String cacheMemoryTipText() {
+    return 
+        "The memory in megabytes for caching whole kernel rows, evicting "
+      + "the least recently used rows; 0 to use the cache of the given "
+      + "cache size instead.";
+  }
+
   /**
    * initializes variables etc.
    * 
@@ -362,8 +578,34 @@ public abstract class CachedKernel
     m_kernelEvals = 0;
     m_cacheHits   = 0;
     m_numInsts    = m_data.numInstances();
+    m_rows        = null;
+    m_denseData   = null;
+
+    // shared row cache for other data?
+    if ((m_cacheIndices != null) && (m_cacheIndices.length != m_numInsts))
+      m_cacheIndices = null;
+    if (m_cacheIndices == null)
+      m_cacheOwner = null;
+
+    if ((m_cacheIndices == null) && (getCacheMemory() > 0)) {
+      // Use row cache
+      m_rows       = new LinkedHashMap<Integer,double[]>(16, 0.75f, true);
+      m_maxRows    = (int) Math.max(1, Math.min(m_numInsts, 
+	  getCacheMemory() * 1024 * 1024 / (8.0 * Math.max(1, m_numInsts))));
+      m_cacheOwner = this;
+      m_denseData  = new double[m_numInsts][];
+      for (int i = 0; i < m_numInsts; i++) {
+	if (m_data.instance(i) instanceof SparseInstance) {
+	  m_denseData = null;
+	  break;
+	}
+	m_denseData[i] = m_data.instance(i).toDoubleArray();
+	if (m_data.classIndex() >= 0)
+	  m_denseData[i][m_data.classIndex()] = 0;
+      }
+    }
 
-    if (getCacheSize() > 0) {
+    if ((getCacheSize() > 0) && (m_cacheOwner == null)) {
       // Use LRU cache
       m_storage = new double[m_cacheSize * m_cacheSlots];
       m_keys    = new long[m_cacheSize * m_cacheSlots];
@@ -156,6 +156,12 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The memory in megabytes for caching whole kernel rows
+ *  (least recently used rows are evicted), 0 to use the
+ *  cache of -C instead.
+ *  (default: 0)</pre>
+ * 
  * <pre> -G &lt;num&gt;
  *  The Gamma parameter.
  *  (default: 0.01)</pre>
@@ -280,6 +286,12 @@ public class CheckKernel
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The memory in megabytes for caching whole kernel rows
+   *  (least recently used rows are evicted), 0 to use the
+   *  cache of -C instead.
+   *  (default: 0)</pre>
+   * 
    * <pre> -G &lt;num&gt;
    *  The Gamma parameter.
    *  (default: 0.01)</pre>
@@ -55,6 +55,12 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The memory in megabytes for caching whole kernel rows
+ *  (least recently used rows are evicted), 0 to use the
+ *  cache of -C instead.
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -168,6 +174,12 @@ public class PolyKernel
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The memory in megabytes for caching whole kernel rows
+   *  (least recently used rows are evicted), 0 to use the
+   *  cache of -C instead.
+   *  (default: 0)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
@@ -246,6 +258,28 @@ public class PolyKernel
     return result;
   }
 
+  /**
+   * Computes a row of the kernel matrix from the dot products of the 
+   * instance with all instances.
+   * 
+   * @param id1		the index of the instance
+   * @param result	the array for the kernel values
+   * @throws Exception	if something goes wrong
+   */
+  protected void evaluateRow(int id1, double[] result) throws Exception {
+    dotProds(id1, result);
+
+    // Use lower order terms?
+    if (m_lowerOrder) {
+      for (int i = 0; i < result.length; i++)
+	result[i] += 1.0;
+    }
+    if (m_exponent != 1.0) {
+      for (int i = 0; i < result.length; i++)
+	result[i] = Math.pow(result[i], m_exponent);
+    }
+  }
+
   /** 
    * Returns the Capabilities of this kernel.
    *
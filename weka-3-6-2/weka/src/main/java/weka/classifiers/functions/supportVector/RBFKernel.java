@@ -56,6 +56,12 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The memory in megabytes for caching whole kernel rows
+ *  (least recently used rows are evicted), 0 to use the
+ *  cache of -C instead.
+ *  (default: 0)</pre>
+ * 
  * <pre> -G &lt;num&gt;
  *  The Gamma parameter.
  *  (default: 0.01)</pre>
@@ -159,6 +165,12 @@ public class RBFKernel
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The memory in megabytes for caching whole kernel rows
+   *  (least recently used rows are evicted), 0 to use the
+   *  cache of -C instead.
+   *  (default: 0)</pre>
+   * 
    * <pre> -G &lt;num&gt;
    *  The Gamma parameter.
    *  (default: 0.01)</pre>
@@ -227,6 +239,24 @@ public class RBFKernel
       return result;
     }
   }
+
+  /**
+   * Computes a row of the kernel matrix from the dot products of the 
+   * instance with all instances.
+   * 
+   * @param id1		the index of the instance
+   * @param result	the array for the kernel values
+   * @throws Exception	if something goes wrong
+   */
+  protected void evaluateRow(int id1, double[] result) throws Exception {
+    dotProds(id1, result);
+
+    double precalc1 = m_kernelPrecalc[id1];
+    for (int i = 0; i < result.length; i++)
+      result[i] = Math.exp(m_gamma 
+	  * (2. * result[i] - precalc1 - m_kernelPrecalc[i]));
+    result[id1] = 1.0;
+  }
     
   /**
    * Sets the gamma value.
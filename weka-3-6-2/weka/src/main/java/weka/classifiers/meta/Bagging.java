@@ -22,7 +22,7 @@
 
 package weka.classifiers.meta;
 
-import weka.classifiers.RandomizableIteratedSingleClassifierEnhancer;
+import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -80,6 +80,11 @@ import java.util.Vector;
  *  Random number seed.
  *  (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for building and querying
+ *  the ensemble.
+ *  (default 1)</pre>
+ * 
  * <pre> -I &lt;num&gt;
  *  Number of iterations.
  *  (default 10)</pre>
@@ -125,7 +130,7 @@ import java.util.Vector;
  * @version $Revision: 1.41 $
  */
 public class Bagging
-  extends RandomizableIteratedSingleClassifierEnhancer 
+  extends RandomizableParallelIteratedSingleClassifierEnhancer 
   implements WeightedInstancesHandler, AdditionalMeasureProducer,
              TechnicalInformationHandler {
 
@@ -140,6 +145,15 @@ public class Bagging
 
   /** The out of bag error that has been calculated */
   protected double m_OutOfBagError;  
+
+  /** the number of instances predicted at a time for the out of bag error */
+  protected final static int OOB_CHUNK_SIZE = 1000;
+
+  /** the random number seeds of the members, only used while building */
+  protected transient long[] m_MemberSeeds;
+
+  /** which instances are in the bags, only used while building */
+  protected transient boolean[][] m_InBag;
     
   /**
    * Constructor.
@@ -236,6 +250,11 @@ public class Bagging
    *  Random number seed.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use for building and querying
+   *  the ensemble.
+   *  (default 1)</pre>
+   * 
    * <pre> -I &lt;num&gt;
    *  Number of iterations.
    *  (default 10)</pre>
@@ -438,14 +457,37 @@ public class Bagging
 					     Random random, 
 					     boolean[] sampled) {
 
+    int[] counts = resampleCounts(data, random);
+    Instances newData = new Instances(data, data.numInstances());
+    for (int l = 0; l < counts.length; l++) {
+      for (int k = 0; k < counts[l]; k++) {
+	newData.add(data.instance(l));
+	sampled[l] = true;
+	newData.instance(newData.numInstances() - 1).setWeight(1);
+      }
+    }
+    return newData;
+  }
+
+  /**
+   * Draws the same sample as resampleWithWeights, but only counts how
+   * often each instance is drawn instead of copying the instances.
+   *
+   * @param data the data to be sampled from
+   * @param random a random number generator
+   * @return how often each instance has been drawn
+   * @throws IllegalArgumentException if the data contains negative weights
+   */
+  public final int[] resampleCounts(Instances data, Random random) {
+
+    int[] counts = new int[data.numInstances()];
+    if (data.numInstances() == 0) {
+      return counts;
+    }
     double[] weights = new double[data.numInstances()];
     for (int i = 0; i < weights.length; i++) {
       weights[i] = data.instance(i).weight();
     }
-    Instances newData = new Instances(data, data.numInstances());
-    if (data.numInstances() == 0) {
-      return newData;
-    }
     double[] probabilities = new double[data.numInstances()];
     double sumProbs = 0, sumOfWeights = Utils.sum(weights);
     for (int i = 0; i < data.numInstances(); i++) {
@@ -465,14 +507,48 @@ public class Bagging
       sumProbs += weights[l];
       while ((k < data.numInstances()) &&
 	     (probabilities[k] <= sumProbs)) { 
-	newData.add(data.instance(l));
-	sampled[l] = true;
-	newData.instance(k).setWeight(1);
+	counts[l]++;
 	k++;
       }
       l++;
     }
-    return newData;
+    return counts;
+  }
+
+  /**
+   * Builds the given member of the ensemble. The bag is sampled with
+   * the member's own random number generator, hence the bags do not
+   * depend on the order in which the members are built.
+   *
+   * @param index the index of the member
+   * @param data the training data
+   * @throws Exception if the member could not be built successfully
+   */
+  protected void buildMember(int index, Instances data) throws Exception {
+
+    Random random = new Random(m_MemberSeeds[index]);
+    Instances bagData = null;
+
+    // create the in-bag dataset
+    if (m_CalcOutOfBag) {
+      m_InBag[index] = new boolean[data.numInstances()];
+      bagData = resampleWithWeights(data, random, m_InBag[index]);
+    } else {
+      bagData = data.resampleWithWeights(random);
+      int bagSize = data.numInstances() * m_BagSizePercent / 100;
+      if (bagSize < data.numInstances()) {
+	bagData.randomize(random);
+	Instances newBagData = new Instances(bagData, 0, bagSize);
+	bagData = newBagData;
+      }
+    }
+
+    if (m_Classifier instanceof Randomizable) {
+      ((Randomizable) m_Classifiers[index]).setSeed(random.nextInt());
+    }
+
+    // build the classifier
+    m_Classifiers[index].buildClassifier(bagData);
   }
 
   /**
@@ -498,75 +574,95 @@ public class Bagging
 					 "out-of-bag error is to be calculated!");
     }
 
-    int bagSize = data.numInstances() * m_BagSizePercent / 100;
+    // one seed per member, drawn in order
     Random random = new Random(m_Seed);
+    m_MemberSeeds = new long[m_Classifiers.length];
+    for (int j = 0; j < m_Classifiers.length; j++) {
+      m_MemberSeeds[j] = random.nextLong();
+    }
     
-    boolean[][] inBag = null;
     if (m_CalcOutOfBag)
-      inBag = new boolean[m_Classifiers.length][];
+      m_InBag = new boolean[m_Classifiers.length][];
     
-    for (int j = 0; j < m_Classifiers.length; j++) {
-      Instances bagData = null;
-
-      // create the in-bag dataset
-      if (m_CalcOutOfBag) {
-	inBag[j] = new boolean[data.numInstances()];
-	bagData = resampleWithWeights(data, random, inBag[j]);
-      } else {
-	bagData = data.resampleWithWeights(random);
-	if (bagSize < data.numInstances()) {
-	  bagData.randomize(random);
-	  Instances newBagData = new Instances(bagData, 0, bagSize);
-	  bagData = newBagData;
-	}
-      }
-      
-      if (m_Classifier instanceof Randomizable) {
-	((Randomizable) m_Classifiers[j]).setSeed(random.nextInt());
-      }
-      
-      // build the classifier
-      m_Classifiers[j].buildClassifier(bagData);
+    try {
+      buildMembers(data);
+
+      // calc OOB error?
+      if (getCalcOutOfBag())
+	m_OutOfBagError = outOfBagError(data);
+      else
+	m_OutOfBagError = 0;
     }
-    
-    // calc OOB error?
-    if (getCalcOutOfBag()) {
-      double outOfBagCount = 0.0;
-      double errorSum = 0.0;
-      boolean numeric = data.classAttribute().isNumeric();
-      
-      for (int i = 0; i < data.numInstances(); i++) {
+    finally {
+      m_MemberSeeds = null;
+      m_InBag       = null;
+    }
+  }
+
+  /**
+   * Calculates the out of bag error. The instances are processed in
+   * chunks, the members predict the instances of a chunk that are not in
+   * their bag concurrently.
+   *
+   * @param data the training data
+   * @return the out of bag error
+   * @throws Exception if a prediction fails
+   */
+  protected double outOfBagError(final Instances data) throws Exception {
+
+    double outOfBagCount = 0.0;
+    double errorSum = 0.0;
+    boolean numeric = data.classAttribute().isNumeric();
+    final double[][] preds = new double[m_Classifiers.length][];
+
+    for (int start = 0; start < data.numInstances(); start += OOB_CHUNK_SIZE) {
+      final int first = start;
+      final int last = Math.min(start + OOB_CHUNK_SIZE, data.numInstances());
+
+      // determine predictions for the instances of the chunk
+      forEachMember(new MemberTask() {
+	public void run(int index) throws Exception {
+	  if (preds[index] == null)
+	    preds[index] = new double[OOB_CHUNK_SIZE];
+	  for (int i = first; i < last; i++) {
+	    if (!m_InBag[index][i])
+	      preds[index][i - first] = m_Classifiers[index].classifyInstance(data.instance(i));
+	  }
+	}
+      }, m_NumExecutionSlots);
+
+      for (int i = first; i < last; i++) {
 	double vote;
 	double[] votes;
 	if (numeric)
 	  votes = new double[1];
 	else
 	  votes = new double[data.numClasses()];
-	
-	// determine predictions for instance
+
+	// collect the predictions for instance
 	int voteCount = 0;
 	for (int j = 0; j < m_Classifiers.length; j++) {
-	  if (inBag[j][i])
+	  if (m_InBag[j][i])
 	    continue;
-	  
+
 	  voteCount++;
-	  double pred = m_Classifiers[j].classifyInstance(data.instance(i));
+	  double pred = preds[j][i - first];
 	  if (numeric)
 	    votes[0] += pred;
 	  else
 	    votes[(int) pred]++;
 	}
-	
+
 	// "vote"
 	if (numeric) {
 	  vote = votes[0];
-          if (voteCount > 0) {
-            vote  /= voteCount;    // average
-          }
-        } else {
+	  if (voteCount > 0) {
+	    vote  /= voteCount;    // average
+	  }
+	} else {
 	  vote = Utils.maxIndex(votes);   // majority vote
-        }
-	
+	}
+
 	// error for instance
 	outOfBagCount += data.instance(i).weight();
 	if (numeric) {
@@ -578,12 +674,9 @@ public class Bagging
 	    errorSum += data.instance(i).weight();
 	}
       }
-      
-      m_OutOfBagError = errorSum / outOfBagCount;
-    }
-    else {
-      m_OutOfBagError = 0;
     }
+
+    return errorSum / outOfBagCount;
   }
 
   /**
@@ -596,26 +689,7 @@ public class Bagging
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
 
-    double [] sums = new double [instance.numClasses()], newProbs; 
-    
-    for (int i = 0; i < m_NumIterations; i++) {
-      if (instance.classAttribute().isNumeric() == true) {
-	sums[0] += m_Classifiers[i].classifyInstance(instance);
-      } else {
-	newProbs = m_Classifiers[i].distributionForInstance(instance);
-	for (int j = 0; j < newProbs.length; j++)
-	  sums[j] += newProbs[j];
-      }
-    }
-    if (instance.classAttribute().isNumeric() == true) {
-      sums[0] /= (double)m_NumIterations;
-      return sums;
-    } else if (Utils.eq(Utils.sum(sums), 0)) {
-      return sums;
-    } else {
-      Utils.normalize(sums);
-      return sums;
-    }
+    return averageDistribution(instance);
   }
 
   /**
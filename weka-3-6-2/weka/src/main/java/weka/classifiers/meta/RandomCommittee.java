@@ -23,12 +23,11 @@
 package weka.classifiers.meta;
 
 import weka.classifiers.Classifier;
-import weka.classifiers.RandomizableIteratedSingleClassifierEnhancer;
+import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Randomizable;
 import weka.core.RevisionUtils;
-import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
 
 import java.util.Random;
@@ -46,6 +45,11 @@ import java.util.Random;
  *  Random number seed.
  *  (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for building and querying
+ *  the ensemble.
+ *  (default 1)</pre>
+ * 
  * <pre> -I &lt;num&gt;
  *  Number of iterations.
  *  (default 10)</pre>
@@ -89,7 +93,7 @@ import java.util.Random;
  * @version $Revision: 1.13 $
  */
 public class RandomCommittee 
-  extends RandomizableIteratedSingleClassifierEnhancer
+  extends RandomizableParallelIteratedSingleClassifierEnhancer
   implements WeightedInstancesHandler {
     
   /** for serialization */
@@ -148,15 +152,27 @@ public class RandomCommittee
 
     m_Classifiers = Classifier.makeCopies(m_Classifier, m_NumIterations);
 
+    // the seeds are drawn in order, before any member is built
     Random random = data.getRandomNumberGenerator(m_Seed);
     for (int j = 0; j < m_Classifiers.length; j++) {
 
       // Set the random number seed for the current classifier.
       ((Randomizable) m_Classifiers[j]).setSeed(random.nextInt());
-      
-      // Build the classifier.
-      m_Classifiers[j].buildClassifier(data);
     }
+
+    buildMembers(data);
+  }
+
+  /**
+   * Builds the given member of the committee.
+   *
+   * @param index the index of the member
+   * @param data the training data
+   * @exception Exception if the member could not be built successfully
+   */
+  protected void buildMember(int index, Instances data) throws Exception {
+
+    m_Classifiers[index].buildClassifier(data);
   }
 
   /**
@@ -169,26 +185,7 @@ public class RandomCommittee
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
 
-    double [] sums = new double [instance.numClasses()], newProbs; 
-    
-    for (int i = 0; i < m_NumIterations; i++) {
-      if (instance.classAttribute().isNumeric() == true) {
-	sums[0] += m_Classifiers[i].classifyInstance(instance);
-      } else {
-	newProbs = m_Classifiers[i].distributionForInstance(instance);
-	for (int j = 0; j < newProbs.length; j++)
-	  sums[j] += newProbs[j];
-      }
-    }
-    if (instance.classAttribute().isNumeric() == true) {
-      sums[0] /= (double)m_NumIterations;
-      return sums;
-    } else if (Utils.eq(Utils.sum(sums), 0)) {
-      return sums;
-    } else {
-      Utils.normalize(sums);
-      return sums;
-    }
+    return averageDistribution(instance);
   }
 
   /**
@@ -24,7 +24,7 @@ package weka.classifiers.meta;
 
 import weka.filters.unsupervised.attribute.Remove;
 import weka.classifiers.Classifier;
-import weka.classifiers.RandomizableIteratedSingleClassifierEnhancer;
+import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -84,6 +84,11 @@ import java.util.Collections;
  *  Random number seed.
  *  (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for building and querying
+ *  the ensemble.
+ *  (default 1)</pre>
+ * 
  * <pre> -I &lt;num&gt;
  *  Number of iterations.
  *  (default 10)</pre>
@@ -128,7 +133,7 @@ import java.util.Collections;
  * @version $Revision: 1.4 $
  */
 public class RandomSubSpace
-  extends RandomizableIteratedSingleClassifierEnhancer 
+  extends RandomizableParallelIteratedSingleClassifierEnhancer 
   implements WeightedInstancesHandler, TechnicalInformationHandler {
 
   /** for serialization */
@@ -238,6 +243,11 @@ public class RandomSubSpace
    *  Random number seed.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use for building and querying
+   *  the ensemble.
+   *  (default 1)</pre>
+   * 
    * <pre> -I &lt;num&gt;
    *  Number of iterations.
    *  (default 10)</pre>
@@ -429,6 +439,7 @@ public class RandomSubSpace
     int subSpaceSize = numberOfAttributes(indices.length, getSubSpaceSize());
     Random random = data.getRandomNumberGenerator(m_Seed);
     
+    // the seeds and subspaces are drawn in order, before any member is built
     for (int j = 0; j < m_Classifiers.length; j++) {
       if (m_Classifier instanceof Randomizable) {
 	((Randomizable) m_Classifiers[j]).setSeed(random.nextInt());
@@ -439,11 +450,21 @@ public class RandomSubSpace
       Remove rm = new Remove();
       rm.setOptions(new String[]{"-V", "-R", randomSubSpace(indices,subSpaceSize,classIndex+1,random)});
       fc.setFilter(rm);
-
-      // build the classifier
-      m_Classifiers[j].buildClassifier(data);
     }
-    
+
+    // build the classifiers
+    buildMembers(data);
+  }
+
+  /**
+   * Builds the given member of the ensemble.
+   *
+   * @param index 	the index of the member
+   * @param data 	the training data
+   * @throws Exception 	if the member could not be built successfully
+   */
+  protected void buildMember(int index, Instances data) throws Exception {
+    m_Classifiers[index].buildClassifier(data);
   }
 
   /**
@@ -461,26 +482,7 @@ public class RandomSubSpace
       return m_ZeroR.distributionForInstance(instance);
     }
     
-    double[] sums = new double [instance.numClasses()], newProbs; 
-    
-    for (int i = 0; i < m_NumIterations; i++) {
-      if (instance.classAttribute().isNumeric() == true) {
-	sums[0] += m_Classifiers[i].classifyInstance(instance);
-      } else {
-	newProbs = m_Classifiers[i].distributionForInstance(instance);
-	for (int j = 0; j < newProbs.length; j++)
-	  sums[j] += newProbs[j];
-      }
-    }
-    if (instance.classAttribute().isNumeric() == true) {
-      sums[0] /= (double)m_NumIterations;
-      return sums;
-    } else if (Utils.eq(Utils.sum(sums), 0)) {
-      return sums;
-    } else {
-      Utils.normalize(sums);
-      return sums;
-    }
+    return averageDistribution(instance);
   }
 
   /**
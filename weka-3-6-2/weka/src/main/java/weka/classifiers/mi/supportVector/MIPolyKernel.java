@@ -52,6 +52,12 @@ import weka.core.Capabilities.Capability;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The memory in megabytes for caching whole kernel rows
+ *  (least recently used rows are evicted), 0 to use the
+ *  cache of -C instead.
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -136,6 +142,20 @@ public class MIPolyKernel
     return res;
   }
 
+  /**
+   * Computes a row of the kernel matrix, evaluating the kernel for each
+   * pair of bags.
+   * 
+   * @param id1		the index of the bag
+   * @param result	the array for the kernel values
+   * @throws Exception	if something goes wrong
+   */
+  protected void evaluateRow(int id1, double[] result) throws Exception {
+    Instance inst1 = m_data.instance(id1);
+    for (int i = 0; i < result.length; i++)
+      result[i] = evaluate(id1, i, inst1);
+  }
+
   /** 
    * Returns the Capabilities of this kernel.
    *
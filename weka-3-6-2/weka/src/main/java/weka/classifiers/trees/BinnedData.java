@@ -0,0 +1,298 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BinnedData.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.trees;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.util.Arrays;
+
+/**
+ * Quantised copy of a dataset for growing trees on histograms. Every
+ * value is replaced by the index of its bin, stored in a byte. Nominal
+ * attributes use one bin per value, numeric attributes are split into
+ * at most the given number of bins with roughly the same number of
+ * instances. Values that fall into the same bin can't be separated by a
+ * split, but as long as an attribute has no more distinct values than
+ * bins every value gets a bin of its own.<p/>
+ *
+ * For each bin of a numeric attribute the smallest and largest value
+ * of the data in the bin is kept, so that the split points between two
+ * bins can be placed halfway between actual values, like for the
+ * unquantised data.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class BinnedData
+  implements RevisionHandler {
+
+  /** the bin of missing values */
+  public final static int MISSING = 255;
+
+  /** the maximum number of bins per attribute */
+  public final static int MAX_BINS = 255;
+
+  /** the data that was quantised */
+  protected Instances m_Data;
+
+  /** the header of the data */
+  protected Instances m_Header;
+
+  /** the bins of the values, per attribute (null for the class) */
+  protected byte[][] m_Bins;
+
+  /** the number of bins per attribute */
+  protected int[] m_NumBins;
+
+  /** the smallest value in each bin of the numeric attributes */
+  protected double[][] m_Lower;
+
+  /** the largest value in each bin of the numeric attributes */
+  protected double[][] m_Upper;
+
+  /** the class values as indices */
+  protected int[] m_ClassValues;
+
+  /**
+   * Quantises the given data, which must have a nominal class without
+   * missing values.
+   *
+   * @param data the data to quantise
+   * @param maxBins the maximum number of bins per numeric attribute
+   * @throws IllegalArgumentException if the number of bins is out of range
+   * or a nominal attribute has too many values
+   */
+  public BinnedData(Instances data, int maxBins) {
+
+    if ((maxBins < 1) || (maxBins > MAX_BINS))
+      throw new IllegalArgumentException(
+	  "Number of bins must be between 1 and " + MAX_BINS + "!");
+
+    m_Data        = data;
+    m_Header      = new Instances(data, 0);
+    m_Bins        = new byte[data.numAttributes()][];
+    m_NumBins     = new int[data.numAttributes()];
+    m_Lower       = new double[data.numAttributes()][];
+    m_Upper       = new double[data.numAttributes()][];
+    m_ClassValues = new int[data.numInstances()];
+
+    for (int i = 0; i < data.numInstances(); i++)
+      m_ClassValues[i] = (int) data.instance(i).classValue();
+
+    for (int j = 0; j < data.numAttributes(); j++) {
+      if (j == data.classIndex())
+	continue;
+      if (data.attribute(j).isNominal())
+	binNominal(j);
+      else
+	binNumeric(j, maxBins);
+    }
+  }
+
+  /**
+   * Stores the indices of the values of a nominal attribute.
+   *
+   * @param att the index of the attribute
+   * @throws IllegalArgumentException if the attribute has too many values
+   */
+  protected void binNominal(int att) {
+    Attribute attribute = m_Data.attribute(att);
+    if (attribute.numValues() > MAX_BINS)
+      throw new IllegalArgumentException(
+	  "Attribute '" + attribute.name() + "' has more than "
+	  + MAX_BINS + " values!");
+
+    m_NumBins[att] = attribute.numValues();
+    m_Bins[att]    = new byte[m_Data.numInstances()];
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      Instance inst = m_Data.instance(i);
+      if (inst.isMissing(att))
+	m_Bins[att][i] = (byte) MISSING;
+      else
+	m_Bins[att][i] = (byte) inst.value(att);
+    }
+  }
+
+  /**
+   * Determines the bins of a numeric attribute and the bins of its
+   * values. If there are more distinct values than bins, a new bin is
+   * started once the bins so far hold their share of the instances.
+   * Equal values always end up in the same bin.
+   *
+   * @param att the index of the attribute
+   * @param maxBins the maximum number of bins
+   */
+  protected void binNumeric(int att, int maxBins) {
+    double[] values = new double[m_Data.numInstances()];
+    int numPresent = 0;
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      if (!m_Data.instance(i).isMissing(att))
+	values[numPresent++] = value(m_Data.instance(i), att);
+    }
+    Arrays.sort(values, 0, numPresent);
+
+    // one bin per value if there are few enough distinct values
+    int numDistinct = 0;
+    for (int i = 0; i < numPresent; i++) {
+      if ((i == 0) || (values[i] != values[i - 1]))
+	numDistinct++;
+    }
+    boolean distinct = (numDistinct <= maxBins);
+
+    // determine the bins
+    double[] lower = new double[maxBins];
+    double[] upper = new double[maxBins];
+    int numBins = 0;
+    int i = 0;
+    while (i < numPresent) {
+      lower[numBins] = values[i];
+      double share = (double) (numBins + 1) * numPresent / maxBins;
+      do {
+	int next = i + 1;
+	while ((next < numPresent) && (values[next] == values[i]))
+	  next++;
+	i = next;
+      }
+      while (!distinct && (i < numPresent)
+	     && ((i < share) || (numBins == maxBins - 1)));
+      upper[numBins] = values[i - 1];
+      numBins++;
+    }
+
+    m_NumBins[att] = numBins;
+    m_Lower[att]   = new double[numBins];
+    m_Upper[att]   = new double[numBins];
+    System.arraycopy(lower, 0, m_Lower[att], 0, numBins);
+    System.arraycopy(upper, 0, m_Upper[att], 0, numBins);
+
+    // the bins of the values
+    m_Bins[att] = new byte[m_Data.numInstances()];
+    for (i = 0; i < m_Data.numInstances(); i++) {
+      Instance inst = m_Data.instance(i);
+      if (inst.isMissing(att)) {
+	m_Bins[att][i] = (byte) MISSING;
+      }
+      else {
+	int bin = Arrays.binarySearch(m_Upper[att], value(inst, att));
+	if (bin < 0)
+	  bin = -bin - 1;
+	m_Bins[att][i] = (byte) bin;
+      }
+    }
+  }
+
+  /**
+   * Returns the value of a numeric attribute, with -0 turned into 0 (the
+   * two are equal, but not for sorting and searching).
+   *
+   * @param inst the instance
+   * @param att the index of the attribute
+   * @return the value
+   */
+  protected static double value(Instance inst, int att) {
+    return inst.value(att) + 0.0;
+  }
+
+  /**
+   * Returns the data that was quantised.
+   *
+   * @return the data
+   */
+  public Instances getData() {
+    return m_Data;
+  }
+
+  /**
+   * Returns the header of the data.
+   *
+   * @return the header
+   */
+  public Instances getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * Returns the number of instances.
+   *
+   * @return the number of instances
+   */
+  public int numInstances() {
+    return m_ClassValues.length;
+  }
+
+  /**
+   * Returns the number of bins of the given attribute.
+   *
+   * @param att the index of the attribute
+   * @return the number of bins
+   */
+  public int numBins(int att) {
+    return m_NumBins[att];
+  }
+
+  /**
+   * Returns the bins of the values of the given attribute, as unsigned
+   * bytes. Missing values are in bin MISSING.
+   *
+   * @param att the index of the attribute
+   * @return the bins, indexed by instance
+   */
+  public byte[] getBins(int att) {
+    return m_Bins[att];
+  }
+
+  /**
+   * Returns the indices of the class values.
+   *
+   * @return the class values, indexed by instance
+   */
+  public int[] getClassValues() {
+    return m_ClassValues;
+  }
+
+  /**
+   * Returns the split point between two bins of a numeric attribute,
+   * halfway between the largest value in the lower bin and the smallest
+   * value in the upper bin.
+   *
+   * @param att the index of the attribute
+   * @param lowerBin the lower bin
+   * @param upperBin the upper bin
+   * @return the split point
+   */
+  public double splitPoint(int att, int lowerBin, int upperBin) {
+    return (m_Upper[att][lowerBin] + m_Lower[att][upperBin]) / 2.0;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
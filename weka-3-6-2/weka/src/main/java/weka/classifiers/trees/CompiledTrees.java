@@ -0,0 +1,863 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    CompiledTrees.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.trees;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A decision tree or a forest of trees, flattened into arrays of
+ * primitives for fast predictions. The nodes of all trees are stored in
+ * the same arrays, the children of a node are stored next to each other.
+ * Nodes that were empty during training are leaves that predict the
+ * distribution of their parent; they are left out when the prediction
+ * for a missing value is combined from all children.<p/>
+ *
+ * The predictions are the same as the ones of the original trees, down
+ * to the rounding of the probabilities. Once the trees are compiled, no
+ * memory is allocated for predictions, except for the arrays returned
+ * by the methods that return new arrays.<p/>
+ *
+ * The trees are added with addTree() and addChildren(), see
+ * RandomTree.compile(CompiledTrees, int) and
+ * ClassifierTree.compile(CompiledTrees, int, boolean, Instance).
+ *
+ * @version $Revision: 1.1 $
+ */
+public class CompiledTrees
+  implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -3851823489416294137L;
+
+  /** node type: leaf */
+  public final static int LEAF = 0;
+
+  /** node type: one child per value of a nominal attribute */
+  public final static int NOMINAL = 1;
+
+  /** node type: first child for the value of the split point, second
+   * child for all other values of a nominal attribute */
+  public final static int NOMINAL_BINARY = 2;
+
+  /** node type: first child for values smaller than the split point */
+  public final static int NUMERIC_LESS = 3;
+
+  /** node type: first child for values smaller than or equal to the
+   * split point (up to Utils.SMALL) */
+  public final static int NUMERIC_LESS_OR_EQUAL = 4;
+
+  /** trees like RandomTree: for a missing value, the distributions of
+   * the subtrees are weighted and added up */
+  public final static int RANDOM_TREE = 0;
+
+  /** trees like C4.5 (J48): for a missing value, the weights are passed
+   * down to the leaves and the weighted leaf distributions are added up;
+   * the first class with the highest probability is predicted */
+  public final static int C45_TREE = 1;
+
+  /** the header of the data */
+  protected Instances m_Header;
+
+  /** the kind of trees */
+  protected int m_TreeType;
+
+  /** whether the distributions of the trees are averaged (forest) */
+  protected boolean m_Average;
+
+  /** the number of classes */
+  protected int m_NumClasses;
+
+  /** the number of nodes */
+  protected int m_NumNodes;
+
+  /** the type of each node */
+  protected byte[] m_Type;
+
+  /** the attribute of each node (-1 for leaves) */
+  protected int[] m_Attribute;
+
+  /** the split point of each node */
+  protected double[] m_SplitPoint;
+
+  /** the index of the first child of each node */
+  protected int[] m_FirstChild;
+
+  /** the number of children of each node */
+  protected int[] m_NumChildren;
+
+  /** the weight of each node at its parent, for missing values */
+  protected double[] m_Weight;
+
+  /** whether each node was empty during training */
+  protected boolean[] m_Empty;
+
+  /** the offset of the distribution of each leaf in m_Distributions */
+  protected int[] m_Distribution;
+
+  /** the distributions of the leaves */
+  protected double[] m_Distributions;
+
+  /** the length of m_Distributions that is used */
+  protected int m_DistributionsLength;
+
+  /** the root of each tree */
+  protected int[] m_Roots;
+
+  /** the number of trees */
+  protected int m_NumTrees;
+
+  /** the depth of each node, only used while the trees are added */
+  protected int[] m_Depth;
+
+  /** the maximum depth of a node */
+  protected int m_MaxDepth;
+
+  /** the working memory of each thread (rows of length numClasses) */
+  protected transient ThreadLocal<double[][]> m_Scratch;
+
+  /**
+   * Initializes the compiled trees.
+   *
+   * @param header the header of the data
+   * @param treeType the kind of trees, RANDOM_TREE or C45_TREE
+   * @param average whether the distributions of the trees are averaged
+   * and normalized (like Bagging does), otherwise the distribution of a
+   * single tree is returned as is
+   */
+  public CompiledTrees(Instances header, int treeType, boolean average) {
+    m_Header     = new Instances(header, 0);
+    m_TreeType   = treeType;
+    m_Average    = average;
+    m_NumClasses = header.numClasses();
+
+    m_Type          = new byte[16];
+    m_Attribute     = new int[16];
+    m_SplitPoint    = new double[16];
+    m_FirstChild    = new int[16];
+    m_NumChildren   = new int[16];
+    m_Weight        = new double[16];
+    m_Empty         = new boolean[16];
+    m_Distribution  = new int[16];
+    m_Depth         = new int[16];
+    m_Distributions = new double[16 * m_NumClasses];
+    m_Roots         = new int[4];
+  }
+
+  /**
+   * Makes sure that the arrays can hold the given number of nodes.
+   *
+   * @param numNodes the number of nodes
+   */
+  protected void ensureCapacity(int numNodes) {
+    if (numNodes <= m_Type.length)
+      return;
+
+    int size = Math.max(numNodes, 2 * m_Type.length);
+    byte[] type = new byte[size];
+    System.arraycopy(m_Type, 0, type, 0, m_NumNodes);
+    m_Type = type;
+    m_Attribute    = grow(m_Attribute, size, m_NumNodes);
+    m_FirstChild   = grow(m_FirstChild, size, m_NumNodes);
+    m_NumChildren  = grow(m_NumChildren, size, m_NumNodes);
+    m_Distribution = grow(m_Distribution, size, m_NumNodes);
+    m_Depth        = grow(m_Depth, size, m_NumNodes);
+    m_SplitPoint   = grow(m_SplitPoint, size, m_NumNodes);
+    m_Weight       = grow(m_Weight, size, m_NumNodes);
+    boolean[] empty = new boolean[size];
+    System.arraycopy(m_Empty, 0, empty, 0, m_NumNodes);
+    m_Empty = empty;
+  }
+
+  /**
+   * Returns a copy of the array with the given size.
+   *
+   * @param array the array to copy
+   * @param size the new size
+   * @param length the number of elements to copy
+   * @return the copy
+   */
+  protected static int[] grow(int[] array, int size, int length) {
+    int[] result = new int[size];
+    System.arraycopy(array, 0, result, 0, length);
+    return result;
+  }
+
+  /**
+   * Returns a copy of the array with the given size.
+   *
+   * @param array the array to copy
+   * @param size the new size
+   * @param length the number of elements to copy
+   * @return the copy
+   */
+  protected static double[] grow(double[] array, int size, int length) {
+    double[] result = new double[size];
+    System.arraycopy(array, 0, result, 0, length);
+    return result;
+  }
+
+  /**
+   * Adds a new node, which is a leaf without distribution until it is
+   * changed.
+   *
+   * @param depth the depth of the node
+   * @return the index of the node
+   */
+  protected int addNode(int depth) {
+    ensureCapacity(m_NumNodes + 1);
+    int node = m_NumNodes++;
+    m_Type[node]         = LEAF;
+    m_Attribute[node]    = -1;
+    m_SplitPoint[node]   = Double.NaN;
+    m_FirstChild[node]   = -1;
+    m_Distribution[node] = -1;
+    m_Weight[node]       = 1;
+    m_Depth[node]        = depth;
+    m_MaxDepth           = Math.max(m_MaxDepth, depth);
+    return node;
+  }
+
+  /**
+   * Adds the root of a new tree.
+   *
+   * @return the index of the root node
+   */
+  public int addTree() {
+    if (m_NumTrees == m_Roots.length)
+      m_Roots = grow(m_Roots, 2 * m_Roots.length, m_NumTrees);
+    m_Roots[m_NumTrees] = addNode(0);
+    return m_Roots[m_NumTrees++];
+  }
+
+  /**
+   * Turns the given node into a split and adds its children.
+   *
+   * @param node the node to split
+   * @param type the type of the split
+   * @param attribute the index of the attribute
+   * @param splitPoint the split point (or value for NOMINAL_BINARY)
+   * @param numChildren the number of children
+   * @return the index of the first child, the others follow
+   */
+  public int addChildren(int node, int type, int attribute,
+      double splitPoint, int numChildren) {
+
+    m_Type[node]        = (byte) type;
+    m_Attribute[node]   = attribute;
+    m_SplitPoint[node]  = splitPoint;
+    m_NumChildren[node] = numChildren;
+    m_FirstChild[node]  = m_NumNodes;
+    for (int i = 0; i < numChildren; i++)
+      addNode(m_Depth[node] + 1);
+
+    return m_FirstChild[node];
+  }
+
+  /**
+   * Sets the distribution of a leaf.
+   *
+   * @param node the leaf
+   * @param distribution the distribution, null for a leaf that predicts
+   * zero for all classes
+   */
+  public void setDistribution(int node, double[] distribution) {
+    if (distribution == null) {
+      m_Distribution[node] = -1;
+      return;
+    }
+
+    if (m_DistributionsLength + m_NumClasses > m_Distributions.length)
+      m_Distributions = grow(
+	  m_Distributions,
+	  Math.max(2 * m_Distributions.length, m_DistributionsLength + m_NumClasses),
+	  m_DistributionsLength);
+    System.arraycopy(
+	distribution, 0, m_Distributions, m_DistributionsLength, m_NumClasses);
+    m_Distribution[node] = m_DistributionsLength;
+    m_DistributionsLength += m_NumClasses;
+  }
+
+  /**
+   * Sets the weight of a node at its parent, used for missing values.
+   *
+   * @param node the node
+   * @param weight the weight
+   */
+  public void setWeight(int node, double weight) {
+    m_Weight[node] = weight;
+  }
+
+  /**
+   * Marks a node as empty, i.e., it is skipped for missing values.
+   *
+   * @param node the node
+   */
+  public void setEmpty(int node) {
+    m_Empty[node] = true;
+  }
+
+  /**
+   * Trims the arrays once all trees are added.
+   */
+  public void finish() {
+    byte[] type = new byte[m_NumNodes];
+    System.arraycopy(m_Type, 0, type, 0, m_NumNodes);
+    m_Type = type;
+    m_Attribute     = grow(m_Attribute, m_NumNodes, m_NumNodes);
+    m_FirstChild    = grow(m_FirstChild, m_NumNodes, m_NumNodes);
+    m_NumChildren   = grow(m_NumChildren, m_NumNodes, m_NumNodes);
+    m_Distribution  = grow(m_Distribution, m_NumNodes, m_NumNodes);
+    m_SplitPoint    = grow(m_SplitPoint, m_NumNodes, m_NumNodes);
+    m_Weight        = grow(m_Weight, m_NumNodes, m_NumNodes);
+    m_Distributions = grow(m_Distributions, m_DistributionsLength, m_DistributionsLength);
+    m_Roots         = grow(m_Roots, m_NumTrees, m_NumTrees);
+    boolean[] empty = new boolean[m_NumNodes];
+    System.arraycopy(m_Empty, 0, empty, 0, m_NumNodes);
+    m_Empty = empty;
+    m_Depth = null;
+  }
+
+  /**
+   * Returns the number of trees.
+   *
+   * @return the number of trees
+   */
+  public int numTrees() {
+    return m_NumTrees;
+  }
+
+  /**
+   * Returns the number of nodes of all trees.
+   *
+   * @return the number of nodes
+   */
+  public int numNodes() {
+    return m_NumNodes;
+  }
+
+  /**
+   * Returns the working memory of the current thread.
+   *
+   * @return the rows of working memory
+   */
+  protected double[][] getScratch() {
+    ThreadLocal<double[][]> scratch;
+    synchronized (this) {
+      if (m_Scratch == null)
+	m_Scratch = new ThreadLocal<double[][]>();
+      scratch = m_Scratch;
+    }
+
+    double[][] result = scratch.get();
+    if (result == null) {
+      result = new double[m_MaxDepth + 2][m_NumClasses];
+      scratch.set(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the child of a split node that the value belongs to.
+   *
+   * @param node the split node
+   * @param value the value of the attribute, not missing
+   * @return the index of the child
+   */
+  protected int child(int node, double value) {
+    switch (m_Type[node]) {
+      case NOMINAL:
+	return m_FirstChild[node] + (int) value;
+      case NOMINAL_BINARY:
+	return m_FirstChild[node]
+	  + (((int) m_SplitPoint[node] == (int) value) ? 0 : 1);
+      case NUMERIC_LESS:
+	return m_FirstChild[node] + ((value < m_SplitPoint[node]) ? 0 : 1);
+      default:
+	return m_FirstChild[node]
+	  + (Utils.smOrEq(value, m_SplitPoint[node]) ? 0 : 1);
+    }
+  }
+
+  /**
+   * Computes the distribution of a RandomTree subtree for an instance.
+   * For a missing value, the distributions of the children are weighted.
+   *
+   * @param node the root of the subtree
+   * @param instance the instance
+   * @param result the distribution (output)
+   * @param scratch the working memory
+   * @param depth the first row of working memory that can be used
+   */
+  protected void subtreeDistribution(int node, Instance instance,
+      double[] result, double[][] scratch, int depth) {
+
+    while (m_Type[node] != LEAF) {
+      double value = instance.value(m_Attribute[node]);
+      if (!Instance.isMissingValue(value)) {
+	node = child(node, value);
+	continue;
+      }
+
+      Arrays.fill(result, 0);
+      double[] help = scratch[depth];
+      int last = m_FirstChild[node] + m_NumChildren[node];
+      for (int i = m_FirstChild[node]; i < last; i++) {
+	if (m_Empty[i])
+	  continue;
+	subtreeDistribution(i, instance, help, scratch, depth + 1);
+	for (int j = 0; j < m_NumClasses; j++)
+	  result[j] += m_Weight[i] * help[j];
+      }
+      return;
+    }
+
+    if (m_Distribution[node] == -1)
+      Arrays.fill(result, 0);
+    else
+      System.arraycopy(
+	  m_Distributions, m_Distribution[node], result, 0, m_NumClasses);
+  }
+
+  /**
+   * Computes the distribution of a C4.5 subtree for an instance with the
+   * given weight. For a missing value, the weights of the children are
+   * passed down.
+   *
+   * @param node the root of the subtree
+   * @param instance the instance
+   * @param weight the weight of the instance
+   * @param result the distribution (output)
+   * @param scratch the working memory
+   * @param depth the first row of working memory that can be used
+   */
+  protected void leafDistribution(int node, Instance instance, double weight,
+      double[] result, double[][] scratch, int depth) {
+
+    while (m_Type[node] != LEAF) {
+      double value = instance.value(m_Attribute[node]);
+      if (!Instance.isMissingValue(value)) {
+	node = child(node, value);
+	continue;
+      }
+
+      Arrays.fill(result, 0);
+      double[] help = scratch[depth];
+      int last = m_FirstChild[node] + m_NumChildren[node];
+      for (int i = m_FirstChild[node]; i < last; i++) {
+	if (m_Empty[i])
+	  continue;
+	leafDistribution(i, instance, m_Weight[i] * weight, help, scratch,
+	    depth + 1);
+	for (int j = 0; j < m_NumClasses; j++)
+	  result[j] += help[j];
+      }
+      return;
+    }
+
+    if (m_Distribution[node] == -1) {
+      Arrays.fill(result, 0);
+    }
+    else {
+      int offset = m_Distribution[node];
+      for (int j = 0; j < m_NumClasses; j++)
+	result[j] = weight * m_Distributions[offset + j];
+    }
+  }
+
+  /**
+   * Computes the distribution of a single tree for an instance.
+   *
+   * @param tree the index of the tree
+   * @param instance the instance
+   * @param result the distribution (output)
+   * @param scratch the working memory
+   */
+  protected void treeDistribution(int tree, Instance instance,
+      double[] result, double[][] scratch) {
+
+    if (m_TreeType == C45_TREE)
+      leafDistribution(m_Roots[tree], instance, 1, result, scratch, 1);
+    else
+      subtreeDistribution(m_Roots[tree], instance, result, scratch, 1);
+  }
+
+  /**
+   * Computes the class distribution for an instance without allocating
+   * memory.
+   *
+   * @param instance the instance
+   * @param result the distribution (output), of length numClasses
+   */
+  public void distributionForInstance(Instance instance, double[] result) {
+    double[][] scratch = getScratch();
+
+    if (!m_Average) {
+      treeDistribution(0, instance, result, scratch);
+      return;
+    }
+
+    Arrays.fill(result, 0);
+    double[] dist = scratch[0];
+    for (int i = 0; i < m_NumTrees; i++) {
+      treeDistribution(i, instance, dist, scratch);
+      for (int j = 0; j < m_NumClasses; j++)
+	result[j] += dist[j];
+    }
+    if (!Utils.eq(Utils.sum(result), 0))
+      Utils.normalize(result);
+  }
+
+  /**
+   * Computes the class distribution for an instance.
+   *
+   * @param instance the instance
+   * @return the distribution
+   */
+  public double[] distributionForInstance(Instance instance) {
+    double[] result = new double[m_NumClasses];
+    distributionForInstance(instance, result);
+    return result;
+  }
+
+  /**
+   * Computes the class distributions for a batch of instances without
+   * allocating memory.
+   *
+   * @param data the instances
+   * @param result the distributions (output), one row of length
+   * numClasses per instance
+   */
+  public void distributionsForInstances(Instances data, double[][] result) {
+    for (int i = 0; i < data.numInstances(); i++)
+      distributionForInstance(data.instance(i), result[i]);
+  }
+
+  /**
+   * Returns the predicted class of the given distribution. For C4.5 trees
+   * the first class that exceeds the probabilities of the classes before
+   * it by more than Utils.SMALL is predicted, otherwise the first class
+   * with the highest probability, or missing if all probabilities are 0.
+   *
+   * @param dist the distribution
+   * @return the index of the class
+   */
+  protected double classify(double[] dist) {
+    int maxIndex = 0;
+
+    if (m_TreeType == C45_TREE) {
+      double maxProb = -1;
+      for (int j = 0; j < dist.length; j++) {
+	if (Utils.gr(dist[j], maxProb)) {
+	  maxIndex = j;
+	  maxProb = dist[j];
+	}
+      }
+      return maxIndex;
+    }
+
+    double max = 0;
+    for (int j = 0; j < dist.length; j++) {
+      if (dist[j] > max) {
+	maxIndex = j;
+	max = dist[j];
+      }
+    }
+    if (max > 0)
+      return maxIndex;
+    else
+      return Instance.missingValue();
+  }
+
+  /**
+   * Classifies an instance without allocating memory.
+   *
+   * @param instance the instance
+   * @return the index of the predicted class
+   */
+  public double classifyInstance(Instance instance) {
+    double[] dist = getScratch()[m_MaxDepth + 1];
+    distributionForInstance(instance, dist);
+    return classify(dist);
+  }
+
+  /**
+   * Appends the values as list of strings of at most 60000 characters,
+   * to stay within the limits of class files.
+   *
+   * @param buffer the buffer to append to
+   * @param values the values
+   * @param length the number of values
+   */
+  protected static void appendChunks(StringBuffer buffer, String[] values,
+      int length) {
+
+    StringBuffer chunk = new StringBuffer();
+    buffer.append("new String[]{\n");
+    for (int i = 0; i < length; i++) {
+      if (chunk.length() + values[i].length() > 60000) {
+	buffer.append("    \"" + chunk + "\",\n");
+	chunk = new StringBuffer();
+      }
+      chunk.append(values[i]).append(' ');
+    }
+    buffer.append("    \"" + chunk + "\"})");
+  }
+
+  /**
+   * Returns the given integers as Java code.
+   *
+   * @param values the values
+   * @param length the number of values
+   * @return the code
+   */
+  protected static String intsSource(int[] values, int length) {
+    String[] strings = new String[length];
+    for (int i = 0; i < length; i++)
+      strings[i] = "" + values[i];
+    StringBuffer result = new StringBuffer("ints(");
+    appendChunks(result, strings, length);
+    return result.toString();
+  }
+
+  /**
+   * Returns the given doubles as Java code, they are read back exactly.
+   *
+   * @param values the values
+   * @param length the number of values
+   * @return the code
+   */
+  protected static String doublesSource(double[] values, int length) {
+    String[] strings = new String[length];
+    for (int i = 0; i < length; i++)
+      strings[i] = Double.toString(values[i]);
+    StringBuffer result = new StringBuffer("doubles(");
+    appendChunks(result, strings, length);
+    return result.toString();
+  }
+
+  /**
+   * Returns the string as Java string literal.
+   *
+   * @param string the string to quote
+   * @return the literal
+   */
+  protected static String quote(String string) {
+    StringBuffer result = new StringBuffer("\"");
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if ((c == '"') || (c == '\\'))
+	result.append('\\').append(c);
+      else if ((c < 0x20) || (c > 0x7e))
+	result.append("\\u" + Integer.toHexString(0x10000 | c).substring(1));
+      else
+	result.append(c);
+    }
+    result.append('"');
+    return result.toString();
+  }
+
+  /**
+   * Returns Java code for a class that predicts like the compiled trees,
+   * using the same arrays. The class offers the method
+   * <code>classify(Object[] i)</code> for Sourcable, and
+   * <code>distribution(Object[] i)</code> which returns the class
+   * distribution. Nominal values are passed as strings, numeric values as
+   * doubles and missing values as null.
+   *
+   * @param className the name of the class
+   * @return the code
+   */
+  public String toSource(String className) {
+    StringBuffer result = new StringBuffer();
+    int[] types = new int[m_NumNodes];
+    int[] empty = new int[m_NumNodes];
+    for (int i = 0; i < m_NumNodes; i++) {
+      types[i] = m_Type[i];
+      empty[i] = m_Empty[i] ? 1 : 0;
+    }
+
+    result.append("class " + className + " {\n\n");
+    result.append("  /** node types */\n");
+    result.append("  static final int LEAF = " + LEAF + ", NOMINAL = " + NOMINAL
+	+ ", NOMINAL_BINARY = " + NOMINAL_BINARY + ", NUMERIC_LESS = "
+	+ NUMERIC_LESS + ";\n\n");
+    result.append("  static final int NUM_CLASSES = " + m_NumClasses + ";\n");
+    result.append("  static final boolean C45_TREE = " + (m_TreeType == C45_TREE) + ";\n");
+    result.append("  static final boolean AVERAGE = " + m_Average + ";\n");
+    result.append("  static final double SMALL = " + Utils.SMALL + ";\n\n");
+    result.append("  static final int[] TYPE = " + intsSource(types, m_NumNodes) + ";\n");
+    result.append("  static final int[] ATTRIBUTE = " + intsSource(m_Attribute, m_NumNodes) + ";\n");
+    result.append("  static final double[] SPLIT_POINT = " + doublesSource(m_SplitPoint, m_NumNodes) + ";\n");
+    result.append("  static final int[] FIRST_CHILD = " + intsSource(m_FirstChild, m_NumNodes) + ";\n");
+    result.append("  static final int[] NUM_CHILDREN = " + intsSource(m_NumChildren, m_NumNodes) + ";\n");
+    result.append("  static final double[] WEIGHT = " + doublesSource(m_Weight, m_NumNodes) + ";\n");
+    result.append("  static final int[] EMPTY = " + intsSource(empty, m_NumNodes) + ";\n");
+    result.append("  static final int[] DISTRIBUTION = " + intsSource(m_Distribution, m_NumNodes) + ";\n");
+    result.append("  static final double[] DISTRIBUTIONS = " + doublesSource(m_Distributions, m_DistributionsLength) + ";\n");
+    result.append("  static final int[] ROOTS = " + intsSource(m_Roots, m_NumTrees) + ";\n\n");
+
+    // nominal values
+    result.append("  static final String[][] VALUES = {\n");
+    for (int i = 0; i < m_Header.numAttributes(); i++) {
+      Attribute att = m_Header.attribute(i);
+      if (att.isNominal()) {
+	result.append("    {");
+	for (int j = 0; j < att.numValues(); j++)
+	  result.append(((j > 0) ? ", " : "") + quote(att.value(j)));
+	result.append("}");
+      }
+      else {
+	result.append("    null");
+      }
+      result.append((i < m_Header.numAttributes() - 1) ? ",\n" : "\n");
+    }
+    result.append("  };\n\n");
+
+    result.append("  static int[] ints(String[] chunks) {\n");
+    result.append("    double[] values = doubles(chunks);\n");
+    result.append("    int[] result = new int[values.length];\n");
+    result.append("    for (int n = 0; n < values.length; n++)\n");
+    result.append("      result[n] = (int) values[n];\n");
+    result.append("    return result;\n");
+    result.append("  }\n\n");
+
+    result.append("  static double[] doubles(String[] chunks) {\n");
+    result.append("    java.util.Vector list = new java.util.Vector();\n");
+    result.append("    for (int n = 0; n < chunks.length; n++) {\n");
+    result.append("      java.util.StringTokenizer tok = new java.util.StringTokenizer(chunks[n]);\n");
+    result.append("      while (tok.hasMoreTokens())\n");
+    result.append("        list.add(tok.nextToken());\n");
+    result.append("    }\n");
+    result.append("    double[] result = new double[list.size()];\n");
+    result.append("    for (int n = 0; n < result.length; n++)\n");
+    result.append("      result[n] = Double.parseDouble((String) list.get(n));\n");
+    result.append("    return result;\n");
+    result.append("  }\n\n");
+
+    result.append("  static double value(Object[] i, int att) {\n");
+    result.append("    if (i[att] == null)\n");
+    result.append("      return Double.NaN;\n");
+    result.append("    if (i[att] instanceof String) {\n");
+    result.append("      for (int n = 0; n < VALUES[att].length; n++) {\n");
+    result.append("        if (VALUES[att][n].equals(i[att]))\n");
+    result.append("          return n;\n");
+    result.append("      }\n");
+    result.append("      return Double.NaN;\n");
+    result.append("    }\n");
+    result.append("    return ((Double) i[att]).doubleValue();\n");
+    result.append("  }\n\n");
+
+    result.append("  static int child(int node, double value) {\n");
+    result.append("    if (TYPE[node] == NOMINAL)\n");
+    result.append("      return FIRST_CHILD[node] + (int) value;\n");
+    result.append("    if (TYPE[node] == NOMINAL_BINARY)\n");
+    result.append("      return FIRST_CHILD[node] + (((int) SPLIT_POINT[node] == (int) value) ? 0 : 1);\n");
+    result.append("    if (TYPE[node] == NUMERIC_LESS)\n");
+    result.append("      return FIRST_CHILD[node] + ((value < SPLIT_POINT[node]) ? 0 : 1);\n");
+    result.append("    return FIRST_CHILD[node] + ((value - SPLIT_POINT[node] < SMALL) ? 0 : 1);\n");
+    result.append("  }\n\n");
+
+    result.append("  static double[] tree(int node, double[] values, double weight) {\n");
+    result.append("    while (TYPE[node] != LEAF) {\n");
+    result.append("      double value = values[ATTRIBUTE[node]];\n");
+    result.append("      if (!Double.isNaN(value)) {\n");
+    result.append("        node = child(node, value);\n");
+    result.append("        continue;\n");
+    result.append("      }\n");
+    result.append("      double[] result = new double[NUM_CLASSES];\n");
+    result.append("      for (int c = FIRST_CHILD[node]; c < FIRST_CHILD[node] + NUM_CHILDREN[node]; c++) {\n");
+    result.append("        if (EMPTY[c] == 1)\n");
+    result.append("          continue;\n");
+    result.append("        double[] help = tree(c, values, C45_TREE ? WEIGHT[c] * weight : 1);\n");
+    result.append("        for (int j = 0; j < NUM_CLASSES; j++)\n");
+    result.append("          result[j] += C45_TREE ? help[j] : WEIGHT[c] * help[j];\n");
+    result.append("      }\n");
+    result.append("      return result;\n");
+    result.append("    }\n");
+    result.append("    double[] result = new double[NUM_CLASSES];\n");
+    result.append("    if (DISTRIBUTION[node] > -1) {\n");
+    result.append("      for (int j = 0; j < NUM_CLASSES; j++)\n");
+    result.append("        result[j] = C45_TREE ? weight * DISTRIBUTIONS[DISTRIBUTION[node] + j] : DISTRIBUTIONS[DISTRIBUTION[node] + j];\n");
+    result.append("    }\n");
+    result.append("    return result;\n");
+    result.append("  }\n\n");
+
+    result.append("  public static double[] distribution(Object[] i) {\n");
+    result.append("    double[] values = new double[i.length];\n");
+    result.append("    for (int n = 0; n < i.length; n++)\n");
+    result.append("      values[n] = value(i, n);\n");
+    result.append("    if (!AVERAGE)\n");
+    result.append("      return tree(ROOTS[0], values, 1);\n");
+    result.append("    double[] result = new double[NUM_CLASSES];\n");
+    result.append("    double sum = 0;\n");
+    result.append("    for (int t = 0; t < ROOTS.length; t++) {\n");
+    result.append("      double[] dist = tree(ROOTS[t], values, 1);\n");
+    result.append("      for (int j = 0; j < NUM_CLASSES; j++)\n");
+    result.append("        result[j] += dist[j];\n");
+    result.append("    }\n");
+    result.append("    for (int j = 0; j < NUM_CLASSES; j++)\n");
+    result.append("      sum += result[j];\n");
+    result.append("    if (Math.abs(sum) >= SMALL) {\n");
+    result.append("      for (int j = 0; j < NUM_CLASSES; j++)\n");
+    result.append("        result[j] /= sum;\n");
+    result.append("    }\n");
+    result.append("    return result;\n");
+    result.append("  }\n\n");
+
+    result.append("  public static double classify(Object[] i) {\n");
+    result.append("    double[] dist = distribution(i);\n");
+    result.append("    int maxIndex = 0;\n");
+    result.append("    double max = C45_TREE ? -1 : 0;\n");
+    result.append("    for (int j = 0; j < NUM_CLASSES; j++) {\n");
+    result.append("      if (C45_TREE ? (dist[j] - max > SMALL) : (dist[j] > max)) {\n");
+    result.append("        maxIndex = j;\n");
+    result.append("        max = dist[j];\n");
+    result.append("      }\n");
+    result.append("    }\n");
+    result.append("    if (!C45_TREE && (max == 0))\n");
+    result.append("      return Double.NaN;\n");
+    result.append("    return maxIndex;\n");
+    result.append("  }\n");
+    result.append("}\n");
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
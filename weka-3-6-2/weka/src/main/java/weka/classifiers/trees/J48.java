@@ -109,6 +109,19 @@ import java.util.Vector;
  * <pre> -Q &lt;seed&gt;
  *  Seed for random data shuffling (default 1).</pre>
  * 
+ * <pre> -presort
+ *  Sort the numeric attributes only once, before the tree
+ *  is built (not with binary splits).</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of threads to use for evaluating the attributes
+ *  at large nodes (only with -presort).
+ *  (default 1)</pre>
+ * 
+ * <pre> -compile
+ *  Flatten the tree into arrays after it is built, for
+ *  faster predictions.</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -157,6 +170,21 @@ public class J48
   /** Random number seed for reduced-error pruning. */
   private int m_Seed = 1;
 
+  /** Sort the numeric attributes only once? */
+  private boolean m_presort = false;
+
+  /** Number of threads to use for evaluating the attributes. */
+  private int m_numExecutionSlots = 1;
+
+  /** Flatten the tree into arrays after it is built? */
+  private boolean m_compileModel = false;
+
+  /** The flattened tree, if the model is compiled. */
+  private CompiledTrees m_compiledTree;
+
+  /** Whether the flattened tree uses Laplace estimates. */
+  private boolean m_compiledLaplace;
+
   /**
    * Returns a string describing classifier
    * @return a description suitable for
@@ -226,21 +254,57 @@ public class J48
     if (m_binarySplits)
       modSelection = new BinC45ModelSelection(m_minNumObj, instances);
     else
-      modSelection = new C45ModelSelection(m_minNumObj, instances);
+      modSelection = new C45ModelSelection(m_minNumObj, instances,
+					   m_presort, m_numExecutionSlots);
     if (!m_reducedErrorPruning)
       m_root = new C45PruneableClassifierTree(modSelection, !m_unpruned, m_CF,
 					    m_subtreeRaising, !m_noCleanup);
     else
       m_root = new PruneableClassifierTree(modSelection, !m_unpruned, m_numFolds,
 					   !m_noCleanup, m_Seed);
-    m_root.buildClassifier(instances);
-    if (m_binarySplits) {
-      ((BinC45ModelSelection)modSelection).cleanup();
-    } else {
-      ((C45ModelSelection)modSelection).cleanup();
+    m_compiledTree = null;
+    try {
+      m_root.buildClassifier(instances);
+    } finally {
+      if (m_binarySplits) {
+	((BinC45ModelSelection)modSelection).cleanup();
+      } else {
+	((C45ModelSelection)modSelection).cleanup();
+      }
+    }
+    if (m_compileModel) {
+      m_compiledTree = compile(m_useLaplace);
+      m_compiledLaplace = m_useLaplace;
     }
   }
 
+  /**
+   * Returns the tree flattened into arrays, for fast predictions. The
+   * probabilities are computed without Laplace estimates, like the ones
+   * used by classifyInstance.
+   *
+   * @return the compiled tree
+   * @throws Exception if the tree can't be compiled
+   */
+  public CompiledTrees compile() throws Exception {
+
+    return compile(false);
+  }
+
+  /**
+   * Returns the tree flattened into arrays.
+   *
+   * @param useLaplace whether to use Laplace estimates
+   * @return the compiled tree
+   * @throws Exception if the tree can't be compiled
+   */
+  protected CompiledTrees compile(boolean useLaplace) throws Exception {
+
+    if (m_root == null)
+      throw new Exception("No model built yet!");
+    return m_root.compile(useLaplace);
+  }
+
   /**
    * Classifies an instance.
    *
@@ -250,6 +314,8 @@ public class J48
    */
   public double classifyInstance(Instance instance) throws Exception {
 
+    if ((m_compiledTree != null) && !m_compiledLaplace)
+      return m_compiledTree.classifyInstance(instance);
     return m_root.classifyInstance(instance);
   }
 
@@ -263,6 +329,8 @@ public class J48
   public final double [] distributionForInstance(Instance instance) 
        throws Exception {
 
+    if ((m_compiledTree != null) && (m_compiledLaplace == m_useLaplace))
+      return m_compiledTree.distributionForInstance(instance);
     return m_root.distributionForInstance(instance, m_useLaplace);
   }
 
@@ -299,7 +367,8 @@ public class J48
 
 
   /**
-   * Returns tree as an if-then statement.
+   * Returns tree as an if-then statement, or as arrays that are
+   * walked if the model is compiled.
    *
    * @param className the name of the Java class 
    * @return the tree as a Java if-then type statement
@@ -307,6 +376,9 @@ public class J48
    */
   public String toSource(String className) throws Exception {
 
+    if (m_compileModel)
+      return compile().toSource(className);
+
     StringBuffer [] source = m_root.toSource(className);
     return 
     "class " + className + " {\n\n"
@@ -360,7 +432,7 @@ public class J48
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(9);
+    Vector newVector = new Vector(12);
 
     newVector.
 	addElement(new Option("\tUse unpruned tree.",
@@ -396,6 +468,19 @@ public class J48
     newVector.
       addElement(new Option("\tSeed for random data shuffling (default 1).",
 			    "Q", 1, "-Q <seed>"));
+    newVector.
+      addElement(new Option("\tSort the numeric attributes only once, before the tree\n" +
+			    "\tis built (not with binary splits).",
+			    "presort", 0, "-presort"));
+    newVector.
+      addElement(new Option("\tNumber of threads to use for evaluating the attributes\n" +
+			    "\tat large nodes (only with -presort).\n" +
+			    "\t(default 1)",
+			    "num-slots", 1, "-num-slots <num>"));
+    newVector.
+      addElement(new Option("\tFlatten the tree into arrays after it is built, for\n" +
+			    "\tfaster predictions.",
+			    "compile", 0, "-compile"));
 
     return newVector.elements();
   }
@@ -440,6 +525,19 @@ public class J48
    * <pre> -Q &lt;seed&gt;
    *  Seed for random data shuffling (default 1).</pre>
    * 
+   * <pre> -presort
+   *  Sort the numeric attributes only once, before the tree
+   *  is built (not with binary splits).</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads to use for evaluating the attributes
+   *  at large nodes (only with -presort).
+   *  (default 1)</pre>
+   * 
+   * <pre> -compile
+   *  Flatten the tree into arrays after it is built, for
+   *  faster predictions.</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -505,6 +603,14 @@ public class J48
     } else {
       m_Seed = 1;
     }
+    m_presort = Utils.getFlag("presort", options);
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    m_compileModel = Utils.getFlag("compile", options);
   }
 
   /**
@@ -514,7 +620,9 @@ public class J48
    */
   public String [] getOptions() {
 
-    String [] options = new String [14];
+    String [] options = new String [14 + (m_presort ? 1 : 0)
+                                    + ((m_numExecutionSlots != 1) ? 2 : 0)
+                                    + (m_compileModel ? 1 : 0)];
     int current = 0;
 
     if (m_noCleanup) {
@@ -541,6 +649,16 @@ public class J48
     if (m_useLaplace) {
       options[current++] = "-A";
     }
+    if (m_presort) {
+      options[current++] = "-presort";
+    }
+    if (m_numExecutionSlots != 1) {
+      options[current++] = "-num-slots"; 
+      options[current++] = "" + m_numExecutionSlots;
+    }
+    if (m_compileModel) {
+      options[current++] = "-compile";
+    }
 
     while (current < options.length) {
       options[current++] = "";
@@ -548,6 +666,99 @@ public class J48
     return options;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String presortTipText() {
+    return "Whether to sort the numeric attributes only once, before the "
+      + "tree is built, instead of at every node (not used for binary splits).";
+  }
+
+  /**
+   * Get the value of presort.
+   *
+   * @return Value of presort.
+   */
+  public boolean getPresort() {
+    
+    return m_presort;
+  }
+  
+  /**
+   * Set the value of presort.
+   *
+   * @param v  Value to assign to presort.
+   */
+  public void setPresort(boolean v) {
+    
+    m_presort = v;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for evaluating the attributes at "
+      + "large nodes, only used if the attributes are presorted. The tree "
+      + "doesn't depend on it.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_numExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String compileModelTipText() {
+    return "Whether to flatten the tree into arrays after it is built. "
+      + "The predictions are the same, but faster, and the source code "
+      + "uses the arrays instead of nested if-statements.";
+  }
+
+  /**
+   * Get the value of compileModel.
+   *
+   * @return Value of compileModel.
+   */
+  public boolean getCompileModel() {
+    
+    return m_compileModel;
+  }
+  
+  /**
+   * Set the value of compileModel.
+   *
+   * @param v  Value to assign to compileModel.
+   */
+  public void setCompileModel(boolean v) {
+    
+    m_compileModel = v;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
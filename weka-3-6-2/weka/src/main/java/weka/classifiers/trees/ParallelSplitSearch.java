@@ -0,0 +1,182 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelSplitSearch.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.trees;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes the attributes at the nodes of a tree with several threads
+ * while the tree is grown. Only the attributes of nodes with at least
+ * MIN_NODE_SIZE instances are processed in parallel, for smaller nodes
+ * the overhead of handing out the work outweighs the gain and the
+ * calling thread processes them itself.<p/>
+ *
+ * The tasks may only write to slots of their own attribute, that way the
+ * tree does not depend on the number of threads. The threads are daemon
+ * threads, {@link #shutdown()} should be called once the tree is built.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ParallelSplitSearch
+  implements RevisionHandler {
+
+  /** the minimum number of instances at a node for parallel processing */
+  public final static int MIN_NODE_SIZE = 1000;
+
+  /**
+   * The processing of a single attribute.
+   */
+  public interface AttributeTask {
+
+    /**
+     * Processes the given attribute.
+     *
+     * @param att the index of the attribute
+     * @throws Exception if processing fails
+     */
+    void run(int att) throws Exception;
+  }
+
+  /** the number of threads to use */
+  protected int m_NumThreads;
+
+  /** the name of the threads */
+  protected String m_Name;
+
+  /** the threads, created on demand */
+  protected ExecutorService m_Executor;
+
+  /**
+   * Initializes the search.
+   *
+   * @param numThreads the number of threads to use
+   * @param name the name of the threads
+   */
+  public ParallelSplitSearch(int numThreads, String name) {
+    m_NumThreads = numThreads;
+    m_Name = name;
+  }
+
+  /**
+   * Returns the threads, creates them if necessary.
+   *
+   * @return the threads
+   */
+  protected synchronized ExecutorService getExecutor() {
+    if (m_Executor == null) {
+      m_Executor = Executors.newCachedThreadPool(new ThreadFactory() {
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, m_Name);
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Runs the task for the attributes 0 to numAttributes-1. The attributes
+   * are processed in parallel if the node is large enough.
+   *
+   * @param nodeSize the number of instances at the node
+   * @param numAttributes the number of attributes
+   * @param task the task to run
+   * @throws Exception if the task fails for an attribute
+   */
+  public void forEachAttribute(int nodeSize, final int numAttributes,
+      final AttributeTask task) throws Exception {
+
+    int numThreads = Math.min(m_NumThreads, numAttributes);
+
+    if ((numThreads <= 1) || (nodeSize < MIN_NODE_SIZE)) {
+      for (int att = 0; att < numAttributes; att++) {
+	task.run(att);
+      }
+      return;
+    }
+
+    final AtomicInteger next = new AtomicInteger();
+    Vector<Future<Object>> futures = new Vector<Future<Object>>();
+    for (int t = 0; t < numThreads; t++) {
+      futures.add(getExecutor().submit(new Callable<Object>() {
+	public Object call() throws Exception {
+	  int att;
+	  while ((att = next.getAndIncrement()) < numAttributes) {
+	    task.run(att);
+	  }
+	  return null;
+	}
+      }));
+    }
+
+    Exception error = null;
+    for (int t = 0; t < futures.size(); t++) {
+      try {
+	futures.get(t).get();
+      }
+      catch (ExecutionException e) {
+	// stop the other threads, the first error is reported
+	next.set(numAttributes);
+	if (error == null) {
+	  if (e.getCause() instanceof Exception)
+	    error = (Exception) e.getCause();
+	  else
+	    error = new Exception(e.getCause().toString());
+	}
+      }
+    }
+    if (error != null)
+      throw error;
+  }
+
+  /**
+   * Stops the threads.
+   */
+  public synchronized void shutdown() {
+    if (m_Executor != null) {
+      m_Executor.shutdownNow();
+      m_Executor = null;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
@@ -73,6 +73,11 @@ import java.util.Vector;
  * <pre> -L
  *  Maximum tree depth (default -1, no maximum)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of threads to use for evaluating the attributes
+ *  at large nodes.
+ *  (default 1)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -500,8 +505,9 @@ public class REPTree
      * @param maxDepth the maximum allowed depth of the tree
      * @throws Exception if generation fails
      */
-    protected void buildTree(int[][] sortedIndices, double[][] weights,
-			     Instances data, double totalWeight, 
+    protected void buildTree(final int[][] sortedIndices, 
+			     final double[][] weights,
+			     final Instances data, double totalWeight, 
 			     double[] classProbs, Instances header,
 			     double minNum, double minVariance,
 			     int depth, int maxDepth) 
@@ -583,33 +589,35 @@ public class REPTree
 
       // Compute class distributions and value of splitting
       // criterion for each attribute
-      double[] vals = new double[data.numAttributes()];
-      double[][][] dists = new double[data.numAttributes()][0][0];
-      double[][] props = new double[data.numAttributes()][0];
-      double[][] totalSubsetWeights = new double[data.numAttributes()][0];
-      double[] splits = new double[data.numAttributes()];
-      if (data.classAttribute().isNominal()) { 
+      final double[] vals = new double[data.numAttributes()];
+      final double[][][] dists = new double[data.numAttributes()][0][0];
+      final double[][] props = new double[data.numAttributes()][0];
+      final double[][] totalSubsetWeights = 
+	new double[data.numAttributes()][0];
+      final double[] splits = new double[data.numAttributes()];
+      m_SplitSearch.forEachAttribute(sortedIndices[helpIndex].length, 
+				     data.numAttributes(), 
+				     new ParallelSplitSearch.AttributeTask() {
+	public void run(int i) throws Exception {
+	  if (i == data.classIndex()) {
+	    return;
+	  }
+	  if (data.classAttribute().isNominal()) { 
 
-	// Nominal case
-	for (int i = 0; i < data.numAttributes(); i++) {
-	  if (i != data.classIndex()) {
+	    // Nominal case
 	    splits[i] = distribution(props, dists, i, sortedIndices[i], 
 				     weights[i], totalSubsetWeights, data);
 	    vals[i] = gain(dists[i], priorVal(dists[i]));
-	  }
-	}
-      } else {
+	  } else {
 
-	// Numeric case
-	for (int i = 0; i < data.numAttributes(); i++) {
-	  if (i != data.classIndex()) {
+	    // Numeric case
 	    splits[i] = 
 	      numericDistribution(props, dists, i, sortedIndices[i], 
 				  weights[i], totalSubsetWeights, data, 
 				  vals);
 	  }
 	}
-      }
+      });
 
       // Find best attribute
       m_Attribute = Utils.maxIndex(vals);
@@ -698,90 +706,123 @@ public class REPTree
      * @param data the data to work with
      * @throws Exception if something goes wrong
      */
+    protected void splitData(final int[][][] subsetIndices, 
+			     final double[][][] subsetWeights,
+			     final int att, final double splitPoint, 
+			     final int[][] sortedIndices, 
+			     final double[][] weights, 
+			     final Instances data) throws Exception {
+    
+      int helpIndex = 0;
+      if (data.classIndex() == 0) {
+	helpIndex = 1;
+      }
+
+      // For each attribute
+      m_SplitSearch.forEachAttribute(sortedIndices[helpIndex].length, 
+				     data.numAttributes(), 
+				     new ParallelSplitSearch.AttributeTask() {
+	public void run(int i) throws Exception {
+	  if (i != data.classIndex()) {
+	    splitData(subsetIndices, subsetWeights, att, splitPoint, 
+		      sortedIndices, weights, data, i);
+	  }
+	}
+      });
+    }
+
+    /**
+     * Splits the sorted indices of one attribute into subsets.
+     * 
+     * @param subsetIndices the sorted indices in the subset
+     * @param subsetWeights the weights of the subset
+     * @param att the attribute index
+     * @param splitPoint the split point for numeric attributes
+     * @param sortedIndices the sorted indices of the whole set
+     * @param weights the weights of the whole set
+     * @param data the data to work with
+     * @param i the index of the attribute whose indices are split
+     * @throws Exception if something goes wrong
+     */
     protected void splitData(int[][][] subsetIndices, 
 			     double[][][] subsetWeights,
 			     int att, double splitPoint, 
 			     int[][] sortedIndices, double[][] weights, 
-			     Instances data) throws Exception {
+			     Instances data, int i) throws Exception {
     
       int j;
       int[] num;
    
-      // For each attribute
-      for (int i = 0; i < data.numAttributes(); i++) {
-	if (i != data.classIndex()) {
-	  if (data.attribute(att).isNominal()) {
+      if (data.attribute(att).isNominal()) {
+
+	// For nominal attributes
+	num = new int[data.attribute(att).numValues()];
+	for (int k = 0; k < num.length; k++) {
+	  subsetIndices[k][i] = new int[sortedIndices[i].length];
+	  subsetWeights[k][i] = new double[sortedIndices[i].length];
+	}
+	for (j = 0; j < sortedIndices[i].length; j++) {
+	  Instance inst = data.instance(sortedIndices[i][j]);
+	  if (inst.isMissing(att)) {
 
-	    // For nominal attributes
-	    num = new int[data.attribute(att).numValues()];
+	    // Split instance up
 	    for (int k = 0; k < num.length; k++) {
-	      subsetIndices[k][i] = new int[sortedIndices[i].length];
-	      subsetWeights[k][i] = new double[sortedIndices[i].length];
-	    }
-	    for (j = 0; j < sortedIndices[i].length; j++) {
-	      Instance inst = data.instance(sortedIndices[i][j]);
-	      if (inst.isMissing(att)) {
-
-		// Split instance up
-		for (int k = 0; k < num.length; k++) {
-		  if (m_Prop[k] > 0) {
-		    subsetIndices[k][i][num[k]] = sortedIndices[i][j];
-		    subsetWeights[k][i][num[k]] = 
-		      m_Prop[k] * weights[i][j];
-		    num[k]++;
-		  }
-		}
-	      } else {
-		int subset = (int)inst.value(att);
-		subsetIndices[subset][i][num[subset]] = 
-		  sortedIndices[i][j];
-		subsetWeights[subset][i][num[subset]] = weights[i][j];
-		num[subset]++;
+	      if (m_Prop[k] > 0) {
+		subsetIndices[k][i][num[k]] = sortedIndices[i][j];
+		subsetWeights[k][i][num[k]] = 
+		  m_Prop[k] * weights[i][j];
+		num[k]++;
 	      }
 	    }
 	  } else {
+	    int subset = (int)inst.value(att);
+	    subsetIndices[subset][i][num[subset]] = 
+	      sortedIndices[i][j];
+	    subsetWeights[subset][i][num[subset]] = weights[i][j];
+	    num[subset]++;
+	  }
+	}
+      } else {
 
-	    // For numeric attributes
-	    num = new int[2];
-	    for (int k = 0; k < 2; k++) {
-	      subsetIndices[k][i] = new int[sortedIndices[i].length];
-	      subsetWeights[k][i] = new double[weights[i].length];
-	    }
-	    for (j = 0; j < sortedIndices[i].length; j++) {
-	      Instance inst = data.instance(sortedIndices[i][j]);
-	      if (inst.isMissing(att)) {
-
-		// Split instance up
-		for (int k = 0; k < num.length; k++) {
-		  if (m_Prop[k] > 0) {
-		    subsetIndices[k][i][num[k]] = sortedIndices[i][j];
-		    subsetWeights[k][i][num[k]] = 
-		      m_Prop[k] * weights[i][j];
-		    num[k]++;
-		  }
-		}
-	      } else {
-		int subset = (inst.value(att) < splitPoint) ? 0 : 1;
-		subsetIndices[subset][i][num[subset]] = 
-		  sortedIndices[i][j];
-		subsetWeights[subset][i][num[subset]] = weights[i][j];
-		num[subset]++;
-	      } 
+	// For numeric attributes
+	num = new int[2];
+	for (int k = 0; k < 2; k++) {
+	  subsetIndices[k][i] = new int[sortedIndices[i].length];
+	  subsetWeights[k][i] = new double[weights[i].length];
+	}
+	for (j = 0; j < sortedIndices[i].length; j++) {
+	  Instance inst = data.instance(sortedIndices[i][j]);
+	  if (inst.isMissing(att)) {
+
+	    // Split instance up
+	    for (int k = 0; k < num.length; k++) {
+	      if (m_Prop[k] > 0) {
+		subsetIndices[k][i][num[k]] = sortedIndices[i][j];
+		subsetWeights[k][i][num[k]] = 
+		  m_Prop[k] * weights[i][j];
+		num[k]++;
+	      }
 	    }
-	  }
-	
-	  // Trim arrays
-	  for (int k = 0; k < num.length; k++) {
-	    int[] copy = new int[num[k]];
-	    System.arraycopy(subsetIndices[k][i], 0, copy, 0, num[k]);
-	    subsetIndices[k][i] = copy;
-	    double[] copyWeights = new double[num[k]];
-	    System.arraycopy(subsetWeights[k][i], 0,
-			     copyWeights, 0, num[k]);
-	    subsetWeights[k][i] = copyWeights;
-	  }
+	  } else {
+	    int subset = (inst.value(att) < splitPoint) ? 0 : 1;
+	    subsetIndices[subset][i][num[subset]] = 
+	      sortedIndices[i][j];
+	    subsetWeights[subset][i][num[subset]] = weights[i][j];
+	    num[subset]++;
+	  } 
 	}
       }
+	
+      // Trim arrays
+      for (int k = 0; k < num.length; k++) {
+	int[] copy = new int[num[k]];
+	System.arraycopy(subsetIndices[k][i], 0, copy, 0, num[k]);
+	subsetIndices[k][i] = copy;
+	double[] copyWeights = new double[num[k]];
+	System.arraycopy(subsetWeights[k][i], 0,
+			 copyWeights, 0, num[k]);
+	subsetWeights[k][i] = copyWeights;
+      }
     }
 
     /**
@@ -1351,6 +1392,12 @@ public class REPTree
 
   /** Upper bound on the tree depth */
   protected int m_MaxDepth = -1;
+
+  /** The number of threads to use for evaluating the attributes. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** Evaluates the attributes while the tree is built. */
+  protected transient ParallelSplitSearch m_SplitSearch = null;
   
   /**
    * Returns the tip text for this property
@@ -1528,6 +1575,37 @@ public class REPTree
     
     m_MaxDepth = newMaxDepth;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for evaluating the attributes at "
+      + "large nodes. The tree doesn't depend on it.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
   
   /**
    * Lists the command-line options for this classifier.
@@ -1536,7 +1614,7 @@ public class REPTree
    */
   public Enumeration listOptions() {
     
-    Vector newVector = new Vector(5);
+    Vector newVector = new Vector(7);
 
     newVector.
       addElement(new Option("\tSet minimum number of instances per leaf " +
@@ -1559,6 +1637,11 @@ public class REPTree
     newVector.
       addElement(new Option("\tMaximum tree depth (default -1, no maximum)",
 			    "L", 1, "-L"));
+    newVector.
+      addElement(new Option("\tNumber of threads to use for evaluating the attributes\n" +
+			    "\tat large nodes.\n" +
+			    "\t(default 1)",
+			    "num-slots", 1, "-num-slots <num>"));
 
     return newVector.elements();
   } 
@@ -1570,7 +1653,7 @@ public class REPTree
    */
   public String[] getOptions() {
     
-    String [] options = new String [12];
+    String [] options = new String [14];
     int current = 0;
     options[current++] = "-M"; 
     options[current++] = "" + (int)getMinNum();
@@ -1582,6 +1665,8 @@ public class REPTree
     options[current++] = "" + getSeed();
     options[current++] = "-L"; 
     options[current++] = "" + getMaxDepth();
+    options[current++] = "-num-slots"; 
+    options[current++] = "" + getNumExecutionSlots();
     if (getNoPruning()) {
       options[current++] = "-P";
     }
@@ -1616,6 +1701,11 @@ public class REPTree
    * <pre> -L
    *  Maximum tree depth (default -1, no maximum)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads to use for evaluating the attributes
+   *  at large nodes.
+   *  (default 1)</pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -1654,6 +1744,12 @@ public class REPTree
     } else {
       m_MaxDepth = -1;
     }
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
     Utils.checkForRemainingOptions(options);
   }
   
@@ -1827,9 +1923,15 @@ public class REPTree
     }
 
     // Build tree
-    m_Tree.buildTree(sortedIndices, weights, train, totalWeight, classProbs,
-		     new Instances(train, 0), m_MinNum, m_MinVarianceProp * 
-		     trainVariance, 0, m_MaxDepth);
+    m_SplitSearch = new ParallelSplitSearch(m_NumExecutionSlots, "REPTree");
+    try {
+      m_Tree.buildTree(sortedIndices, weights, train, totalWeight, classProbs,
+		       new Instances(train, 0), m_MinNum, m_MinVarianceProp * 
+		       trainVariance, 0, m_MaxDepth);
+    } finally {
+      m_SplitSearch.shutdown();
+      m_SplitSearch = null;
+    }
     
     // Insert pruning data and perform reduced error pruning
     if (!m_NoPruning) {
@@ -23,6 +23,7 @@
 package weka.classifiers.trees;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.Sourcable;
 import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
@@ -40,6 +41,7 @@ import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 
 import java.util.Enumeration;
+import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -85,6 +87,21 @@ import java.util.Vector;
  *  The maximum depth of the trees, 0 for unlimited.
  *  (default 0)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for building and querying
+ *  the forest.
+ *  (default 1)</pre>
+ * 
+ * <pre> -bins &lt;num&gt;
+ *  The maximum number of bins per numeric attribute for
+ *  growing the trees on histograms, 0 to split on the exact
+ *  values (at most 255).
+ *  (default 0)</pre>
+ * 
+ * <pre> -compile
+ *  Flatten the trees into arrays after the forest is built,
+ *  for faster predictions.</pre>
+ * 
  * <pre> -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console</pre>
@@ -97,7 +114,8 @@ import java.util.Vector;
 public class RandomForest 
   extends Classifier 
   implements OptionHandler, Randomizable, WeightedInstancesHandler, 
-             AdditionalMeasureProducer, TechnicalInformationHandler {
+             AdditionalMeasureProducer, TechnicalInformationHandler,
+             Sourcable {
 
   /** for serialization */
   static final long serialVersionUID = 4216839470751428698L;
@@ -121,6 +139,152 @@ public class RandomForest
   /** The maximum depth of the trees (0 = unlimited) */
   protected int m_MaxDepth = 0;
 
+  /** The number of threads to use. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The maximum number of bins per numeric attribute (0 = no binning). */
+  protected int m_NumBins = 0;
+
+  /** Whether to flatten the trees into arrays after building. */
+  protected boolean m_CompileModel = false;
+
+  /** The flattened trees, if the model is compiled. */
+  protected CompiledTrees m_Compiled = null;
+
+  /**
+   * Bagging of random trees, optionally grown on quantised data. The data
+   * is quantised once and the bootstrap samples only consist of how often
+   * each instance was drawn. The same samples are drawn and the same
+   * random numbers are used as for bagging on copies of the data, hence
+   * with at least as many bins as distinct values per attribute the 
+   * same trees are grown.
+   */
+  protected static class ForestBagging
+    extends Bagging {
+
+    /** for serialization */
+    static final long serialVersionUID = 3294683201725117437L;
+
+    /** the maximum number of bins per numeric attribute (0 = no binning) */
+    protected int m_NumBins;
+
+    /** the quantised data, only used while building */
+    protected transient BinnedData m_BinnedData;
+
+    /**
+     * Initializes the bagging.
+     *
+     * @param numBins the maximum number of bins per numeric attribute,
+     * 0 for growing the trees on copies of the data
+     */
+    public ForestBagging(int numBins) {
+      super();
+
+      m_NumBins = numBins;
+    }
+
+    /**
+     * Builds the forest.
+     *
+     * @param data the training data
+     * @throws Exception if the forest could not be built successfully
+     */
+    public void buildClassifier(Instances data) throws Exception {
+      if (m_NumBins == 0) {
+	super.buildClassifier(data);
+	return;
+      }
+
+      data = new Instances(data);
+      data.deleteWithMissingClass();
+
+      m_BinnedData = new BinnedData(data, m_NumBins);
+      try {
+	super.buildClassifier(data);
+      }
+      finally {
+	m_BinnedData = null;
+      }
+    }
+
+    /**
+     * Grows the given tree on its bootstrap sample.
+     *
+     * @param index the index of the tree
+     * @param data the training data
+     * @throws Exception if the tree could not be built successfully
+     */
+    protected void buildMember(int index, Instances data) throws Exception {
+      if (m_BinnedData == null) {
+	super.buildMember(index, data);
+	return;
+      }
+
+      Random random = new Random(m_MemberSeeds[index]);
+      int[] counts = resampleCounts(data, random);
+      double[] weights = new double[counts.length];
+      for (int i = 0; i < counts.length; i++)
+	weights[i] = counts[i];
+      if (m_InBag != null) {
+	m_InBag[index] = new boolean[counts.length];
+	for (int i = 0; i < counts.length; i++)
+	  m_InBag[index][i] = (counts[i] > 0);
+      }
+
+      RandomTree tree = (RandomTree) m_Classifiers[index];
+      tree.setSeed(random.nextInt());
+      tree.buildClassifier(
+	  m_BinnedData, weights, 
+	  getRandomNumberGenerator(data, counts, tree.getSeed()));
+    }
+
+    /**
+     * Returns the random number generator that RandomTree uses on the
+     * bootstrap sample, see Instances.getRandomNumberGenerator(long).
+     *
+     * @param data the training data
+     * @param counts how often the instances were drawn
+     * @param seed the seed of the tree
+     * @return the random number generator
+     */
+    protected Random getRandomNumberGenerator(Instances data, int[] counts, 
+	long seed) {
+
+      Random result = new Random(seed);
+      if (data.numInstances() == 0)
+	return result;
+
+      // the bootstrap sample contains the instances in their original order
+      int pos = result.nextInt(data.numInstances());
+      int i = 0;
+      while (pos >= counts[i]) {
+	pos -= counts[i];
+	i++;
+      }
+      result.setSeed(data.instance(i).toStringNoWeight().hashCode() + seed);
+
+      return result;
+    }
+
+    /**
+     * Returns the trees flattened into arrays, for fast predictions. The
+     * distributions of the trees are averaged like by the bagging.
+     *
+     * @return the compiled forest
+     * @throws Exception if the trees can't be compiled
+     */
+    public CompiledTrees compile() throws Exception {
+      CompiledTrees result = new CompiledTrees(
+	  ((RandomTree) m_Classifiers[0]).m_Info, 
+	  CompiledTrees.RANDOM_TREE, true);
+      for (int i = 0; i < m_Classifiers.length; i++)
+	((RandomTree) m_Classifiers[i]).compile(result, result.addTree());
+      result.finish();
+
+      return result;
+    }
+  }
+
   /**
    * Returns a string describing classifier
    * @return a description suitable for
@@ -271,6 +435,104 @@ public class RandomForest
     m_MaxDepth = value;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for building the trees and for "
+      + "combining their predictions.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numBinsTipText() {
+    return "The maximum number of bins per numeric attribute (at most 255), "
+      + "0 to split on the exact values. With bins, the data is quantised "
+      + "once and the trees are grown on histograms of the bins, which "
+      + "is faster and needs less memory. Split points can only be placed "
+      + "between bins.";
+  }
+
+  /**
+   * Sets the maximum number of bins per numeric attribute.
+   *
+   * @param value the number of bins, 0 to split on the exact values
+   */
+  public void setNumBins(int value) {
+    if ((value >= 0) && (value <= BinnedData.MAX_BINS))
+      m_NumBins = value;
+    else
+      System.err.println("Number of bins must be between 0 and " 
+	  + BinnedData.MAX_BINS + "!");
+  }
+
+  /**
+   * Gets the maximum number of bins per numeric attribute.
+   *
+   * @return the number of bins, 0 for the exact values
+   */
+  public int getNumBins() {
+    return m_NumBins;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String compileModelTipText() {
+    return "Whether to flatten the trees into arrays after the forest is "
+      + "built. The predictions are the same, but faster and without "
+      + "creating objects per tree.";
+  }
+
+  /**
+   * Sets whether to flatten the trees into arrays after building.
+   *
+   * @param value true if the model is compiled
+   */
+  public void setCompileModel(boolean value) {
+    m_CompileModel = value;
+  }
+
+  /**
+   * Gets whether to flatten the trees into arrays after building.
+   *
+   * @return true if the model is compiled
+   */
+  public boolean getCompileModel() {
+    return m_CompileModel;
+  }
+
   /**
    * Gets the out of bag error that was calculated as the classifier was built.
    *
@@ -339,6 +601,24 @@ public class RandomForest
 	+ "\t(default 0)",
 	"depth", 1, "-depth <num>"));
 
+    newVector.addElement(new Option(
+	"\tThe number of threads to use for building and querying\n"
+	+ "\tthe forest.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+	"\tThe maximum number of bins per numeric attribute for\n"
+	+ "\tgrowing the trees on histograms, 0 to split on the exact\n"
+	+ "\tvalues (at most 255).\n"
+	+ "\t(default 0)",
+	"bins", 1, "-bins <num>"));
+
+    newVector.addElement(new Option(
+	"\tFlatten the trees into arrays after the forest is built,\n"
+	+ "\tfor faster predictions.",
+	"compile", 0, "-compile"));
+
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
       newVector.addElement(enu.nextElement());
@@ -373,6 +653,17 @@ public class RandomForest
       result.add("" + getMaxDepth());
     }
     
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
+    if (getNumBins() > 0) {
+      result.add("-bins");
+      result.add("" + getNumBins());
+    }
+    
+    if (getCompileModel())
+      result.add("-compile");
+    
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -400,6 +691,21 @@ public class RandomForest
    *  The maximum depth of the trees, 0 for unlimited.
    *  (default 0)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use for building and querying
+   *  the forest.
+   *  (default 1)</pre>
+   * 
+   * <pre> -bins &lt;num&gt;
+   *  The maximum number of bins per numeric attribute for
+   *  growing the trees on histograms, 0 to split on the exact
+   *  values (at most 255).
+   *  (default 0)</pre>
+   * 
+   * <pre> -compile
+   *  Flatten the trees into arrays after the forest is built,
+   *  for faster predictions.</pre>
+   * 
    * <pre> -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console</pre>
@@ -440,6 +746,22 @@ public class RandomForest
       setMaxDepth(0);
     }
     
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
+    tmpStr = Utils.getOption("bins", options);
+    if (tmpStr.length() != 0) {
+      setNumBins(Integer.parseInt(tmpStr));
+    } else {
+      setNumBins(0);
+    }
+    
+    setCompileModel(Utils.getFlag("compile", options));
+    
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -469,7 +791,8 @@ public class RandomForest
     data = new Instances(data);
     data.deleteWithMissingClass();
     
-    m_bagger = new Bagging();
+    m_bagger = new ForestBagging(m_NumBins);
+    m_Compiled = null;
     RandomTree rTree = new RandomTree();
 
     // set up the random tree options
@@ -483,7 +806,41 @@ public class RandomForest
     m_bagger.setSeed(m_randomSeed);
     m_bagger.setNumIterations(m_numTrees);
     m_bagger.setCalcOutOfBag(true);
+    m_bagger.setNumExecutionSlots(m_NumExecutionSlots);
     m_bagger.buildClassifier(data);
+
+    if (m_CompileModel)
+      m_Compiled = compile();
+  }
+
+  /**
+   * Returns the trees flattened into arrays, for fast predictions.
+   *
+   * @return the compiled forest
+   * @throws Exception if the forest can't be compiled
+   */
+  public CompiledTrees compile() throws Exception {
+    if (m_bagger == null)
+      throw new Exception("No model built yet!");
+    if (!(m_bagger instanceof ForestBagging))
+      throw new Exception("Model can't be compiled, rebuild the forest!");
+
+    return ((ForestBagging) m_bagger).compile();
+  }
+
+  /**
+   * Returns the forest as Java source code, using the compiled form of 
+   * the trees.
+   *
+   * @param className the name of the class
+   * @return the source code
+   * @throws Exception if the forest can't be compiled
+   */
+  public String toSource(String className) throws Exception {
+    if (m_Compiled != null)
+      return m_Compiled.toSource(className);
+    else
+      return compile().toSource(className);
   }
 
   /**
@@ -495,6 +852,8 @@ public class RandomForest
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
 
+    if (m_Compiled != null)
+      return m_Compiled.distributionForInstance(instance);
     return m_bagger.distributionForInstance(instance);
   }
 
@@ -514,6 +873,7 @@ public class RandomForest
 	   + "Out of bag error: "
 	   + Utils.doubleToString(m_bagger.measureOutOfBagError(), 4) + "\n"
 	   + (getMaxDepth() > 0 ? ("Max. depth of trees: " + getMaxDepth() + "\n") : (""))
+	   + (getNumBins() > 0 ? ("Max. number of bins per attribute: " + getNumBins() + "\n") : (""))
 	   + "\n";
   }
   
@@ -23,6 +23,7 @@
 package weka.classifiers.trees;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.Sourcable;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.ContingencyTables;
@@ -71,6 +72,15 @@ import java.util.Vector;
  * <pre> -U
  *  Allow unclassified instances.</pre>
  * 
+ * <pre> -presort
+ *  Sort the numeric attributes only once, before the tree
+ *  is built.</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of threads to use for evaluating the attributes
+ *  at large nodes (only with -presort).
+ *  (default 1)</pre>
+ * 
  * <pre> -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console</pre>
@@ -82,7 +92,7 @@ import java.util.Vector;
  * @version $Revision: 5535 $
  */
 public class RandomTree extends Classifier implements OptionHandler,
-WeightedInstancesHandler, Randomizable, Drawable {
+WeightedInstancesHandler, Randomizable, Drawable, Sourcable {
 
   /** for serialization */
   static final long serialVersionUID = 8934314652175299374L;
@@ -126,6 +136,15 @@ WeightedInstancesHandler, Randomizable, Drawable {
   /** a ZeroR model in case no model can be built from the data */
   protected Classifier m_ZeroR;
 
+  /** Whether the numeric attributes are sorted only once */
+  protected boolean m_Presort = false;
+
+  /** The number of threads to use for evaluating the attributes */
+  protected int m_NumExecutionSlots = 1;
+
+  /** Evaluates the attributes while the tree is built */
+  protected transient ParallelSplitSearch m_SplitSearch = null;
+
   /**
    * Returns a string describing classifier
    * 
@@ -311,6 +330,69 @@ WeightedInstancesHandler, Randomizable, Drawable {
     m_AllowUnclassifiedInstances = newAllowUnclassifiedInstances;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String presortTipText() {
+    return "Whether to sort the numeric attributes only once, before the "
+      + "tree is built, instead of at every node. Faster for large datasets, "
+      + "but the sorted indices of all attributes are split at every node.";
+  }
+
+  /**
+   * Get whether the numeric attributes are sorted only once.
+   *
+   * @return true if the attributes are presorted
+   */
+  public boolean getPresort() {
+    
+    return m_Presort;
+  }
+
+  /**
+   * Set whether the numeric attributes are sorted only once.
+   *
+   * @param value true if the attributes are to be presorted
+   */
+  public void setPresort(boolean value) {
+    
+    m_Presort = value;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for evaluating the attributes at "
+      + "large nodes, only used if the attributes are presorted. The tree "
+      + "doesn't depend on it.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Set the maximum depth of the tree, 0 for unlimited.
    * 
@@ -353,6 +435,15 @@ WeightedInstancesHandler, Randomizable, Drawable {
     newVector.
       addElement(new Option("\tAllow unclassified instances.",
 			    "U", 0, "-U"));
+    newVector.
+      addElement(new Option("\tSort the numeric attributes only once, before the tree\n"
+			    + "\tis built.",
+			    "presort", 0, "-presort"));
+    newVector.
+      addElement(new Option("\tNumber of threads to use for evaluating the attributes\n"
+			    + "\tat large nodes (only with -presort).\n"
+			    + "\t(default 1)",
+			    "num-slots", 1, "-num-slots <num>"));
 
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
@@ -397,6 +488,13 @@ WeightedInstancesHandler, Randomizable, Drawable {
       result.add("-U");
     }
 
+    if (getPresort()) {
+      result.add("-presort");
+    }
+
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -432,6 +530,15 @@ WeightedInstancesHandler, Randomizable, Drawable {
    * <pre> -U
    *  Allow unclassified instances.</pre>
    * 
+   * <pre> -presort
+   *  Sort the numeric attributes only once, before the tree
+   *  is built.</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads to use for evaluating the attributes
+   *  at large nodes (only with -presort).
+   *  (default 1)</pre>
+   * 
    * <pre> -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console</pre>
@@ -482,6 +589,15 @@ WeightedInstancesHandler, Randomizable, Drawable {
 
     setAllowUnclassifiedInstances(Utils.getFlag('U', options));
 
+    setPresort(Utils.getFlag("presort", options));
+
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -539,6 +655,7 @@ WeightedInstancesHandler, Randomizable, Drawable {
           + "using ZeroR model instead!");
       m_ZeroR = new weka.classifiers.rules.ZeroR();
       m_ZeroR.buildClassifier(data);
+      m_Info = new Instances(data, 0);
       return;
     } else {
       m_ZeroR = null;
@@ -574,8 +691,23 @@ WeightedInstancesHandler, Randomizable, Drawable {
     }
 
     // Build tree 
-    buildTree(train, classProbs, new Instances(data, 0), m_MinNum, m_Debug, attIndicesWindow, 
-              rand, 0, getAllowUnclassifiedInstances());
+    if (m_Presort) {
+      m_SplitSearch = new ParallelSplitSearch(m_NumExecutionSlots, "RandomTree");
+      try {
+        int[][] sortedIndices = new int[train.numAttributes()][0];
+        double[][] weights = new double[train.numAttributes()][0];
+        presort(train, sortedIndices, weights);
+        buildTree(sortedIndices, weights, train, classProbs, new Instances(data, 0), 
+                  m_MinNum, m_Debug, attIndicesWindow, rand, 0, 
+                  getAllowUnclassifiedInstances());
+      } finally {
+        m_SplitSearch.shutdown();
+        m_SplitSearch = null;
+      }
+    } else {
+      buildTree(train, classProbs, new Instances(data, 0), m_MinNum, m_Debug, attIndicesWindow, 
+                rand, 0, getAllowUnclassifiedInstances());
+    }
       
     // Backfit if required
     if (backfit != null) {
@@ -583,6 +715,68 @@ WeightedInstancesHandler, Randomizable, Drawable {
     }
   }
 
+  /**
+   * Builds the tree on quantised data, with the given weights for the
+   * instances instead of their own weights. Instances with a weight of
+   * zero are left out. This way a tree can be grown on a bootstrap
+   * sample without copying the data. Backfitting is not supported.
+   * 
+   * @param data
+   *            the quantised data
+   * @param weights
+   *            the weights of the instances
+   * @param random
+   *            random number generator for choosing random attributes
+   * @throws Exception
+   *             if generation fails
+   */
+  public void buildClassifier(BinnedData data, double[] weights, Random random) 
+    throws Exception {
+
+    Instances header = data.getHeader();
+
+    // Make sure K value is in range
+    if (m_KValue > header.numAttributes() - 1)
+      m_KValue = header.numAttributes() - 1;
+    if (m_KValue < 1)
+      m_KValue = (int) Utils.log2(header.numAttributes()) + 1;
+    m_ZeroR = null;
+
+    // Create the attribute indices window
+    int[] attIndicesWindow = new int[header.numAttributes() - 1];
+    int j = 0;
+    for (int i = 0; i < attIndicesWindow.length; i++) {
+      if (j == header.classIndex())
+        j++; // do not include the class
+      attIndicesWindow[i] = j++;
+    }
+
+    // Collect the instances and compute initial class counts
+    int[] classValues = data.getClassValues();
+    double[] classProbs = new double[header.numClasses()];
+    int numRows = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] > 0) {
+        numRows++;
+      }
+    }
+    int[] rows = new int[numRows];
+    double[] rowWeights = new double[numRows];
+    numRows = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] > 0) {
+        rows[numRows] = i;
+        rowWeights[numRows] = weights[i];
+        classProbs[classValues[i]] += weights[i];
+        numRows++;
+      }
+    }
+
+    // Build tree
+    buildTree(data, rows, rowWeights, classProbs, header, m_MinNum, m_Debug,
+              attIndicesWindow, random, 0, getAllowUnclassifiedInstances());
+  }
+
   /**
    * Backfits the given data into the tree.
    */
@@ -675,6 +869,85 @@ WeightedInstancesHandler, Randomizable, Drawable {
     }
   }
 
+  /**
+   * Adds the tree to the compiled trees, below the given node. Empty
+   * successors predict the distribution of their parent and are skipped
+   * for missing values, unless unclassified instances are allowed.
+   *
+   * @param trees the compiled trees to add to
+   * @param node the node that becomes the root of this tree
+   * @throws Exception if the tree can't be compiled
+   */
+  public void compile(CompiledTrees trees, int node) throws Exception {
+
+    // default model?
+    if (m_ZeroR != null) {
+      Instance dummy = new Instance(trees.m_Header.numAttributes());
+      dummy.setDataset(trees.m_Header);
+      trees.setDistribution(node, m_ZeroR.distributionForInstance(dummy));
+      return;
+    }
+
+    if (m_Attribute == -1) {
+      if (m_ClassDistribution != null) {
+        double[] normalizedDistribution = (double[]) m_ClassDistribution.clone();
+        Utils.normalize(normalizedDistribution);
+        trees.setDistribution(node, normalizedDistribution);
+      }
+      return;
+    }
+
+    int first;
+    if (m_Info.attribute(m_Attribute).isNominal()) {
+      first = trees.addChildren(node, CompiledTrees.NOMINAL, m_Attribute,
+          Double.NaN, m_Successors.length);
+    } else {
+      first = trees.addChildren(node, CompiledTrees.NUMERIC_LESS, m_Attribute,
+          m_SplitPoint, m_Successors.length);
+    }
+
+    for (int i = 0; i < m_Successors.length; i++) {
+      trees.setWeight(first + i, m_Prop[i]);
+      RandomTree successor = m_Successors[i];
+      if ((successor.m_Attribute == -1)
+          && (successor.m_ClassDistribution == null)
+          && !successor.getAllowUnclassifiedInstances()) {
+        double[] normalizedDistribution = (double[]) m_ClassDistribution.clone();
+        Utils.normalize(normalizedDistribution);
+        trees.setDistribution(first + i, normalizedDistribution);
+        trees.setEmpty(first + i);
+      } else {
+        successor.compile(trees, first + i);
+      }
+    }
+  }
+
+  /**
+   * Returns the tree flattened into arrays, for fast predictions.
+   *
+   * @return the compiled tree
+   * @throws Exception if the tree can't be compiled
+   */
+  public CompiledTrees compile() throws Exception {
+    CompiledTrees result = new CompiledTrees(m_Info,
+        CompiledTrees.RANDOM_TREE, false);
+    compile(result, result.addTree());
+    result.finish();
+    return result;
+  }
+
+  /**
+   * Returns the tree as Java source code, using the compiled form of the
+   * tree.
+   *
+   * @param className the name of the class
+   * @return the source code
+   * @throws Exception if the tree can't be compiled
+   */
+  public String toSource(String className) throws Exception {
+    return compile().toSource(className);
+  }
+
   /**
    * Outputs the decision tree as a graph
    * 
@@ -1087,132 +1360,558 @@ WeightedInstancesHandler, Randomizable, Drawable {
   }
 
   /**
-   * Computes size of the tree.
-   * 
-   * @return the number of nodes
-   */
-  public int numNodes() {
-
-    if (m_Attribute == -1) {
-      return 1;
-    } else {
-      int size = 1;
-      for (int i = 0; i < m_Successors.length; i++) {
-        size += m_Successors[i].numNodes();
-      }
-      return size;
-    }
-  }
-
-  /**
-   * Splits instances into subsets based on the given split.
+   * Computes the indices of the instances sorted on each attribute, and the
+   * corresponding weights. Instances with missing values are put at the end,
+   * the indices of nominal attributes are not sorted otherwise.
    * 
    * @param data
    *            the data to work with
-   * @return  the subsets of instances
-   * @throws Exception
-   *             if something goes wrong
+   * @param sortedIndices
+   *            the sorted indices for each attribute (output)
+   * @param weights
+   *            the weights of the sorted instances (output)
    */
-  protected Instances[] splitData(Instances data) throws Exception {
-
-    // Allocate array of Instances objects
-    Instances[] subsets = new Instances[m_Prop.length];
-    for (int i = 0; i < m_Prop.length; i++) {
-      subsets[i] = new Instances(data, data.numInstances());
-    }
-
-    // Go through the data
-    for (int i = 0; i < data.numInstances(); i++) {
-
-      // Get instance
-      Instance inst = data.instance(i);
-
-      // Does the instance have a missing value?
-      if (inst.isMissing(m_Attribute)) {
-        
-        // Split instance up
-        for (int k = 0; k < m_Prop.length; k++) {
-          if (m_Prop[k] > 0) {
-            Instance copy = (Instance)inst.copy();
-            copy.setWeight(m_Prop[k] * inst.weight());
-            subsets[k].add(copy);
-          }
-        }
+  protected void presort(Instances data, int[][] sortedIndices, double[][] weights) {
 
-        // Proceed to next instance
+    for (int j = 0; j < data.numAttributes(); j++) {
+      if (j == data.classIndex()) {
         continue;
       }
 
-      // Do we have a nominal attribute?
-      if (data.attribute(m_Attribute).isNominal()) {
-        subsets[(int)inst.value(m_Attribute)].add(inst);
-
-        // Proceed to next instance
-        continue;
+      // Putting indices of instances with missing values at the end
+      int[] present = new int[data.numInstances()];
+      int[] missing = new int[data.numInstances()];
+      int numPresent = 0, numMissing = 0;
+      for (int i = 0; i < data.numInstances(); i++) {
+        if (data.instance(i).isMissing(j)) {
+          missing[numMissing++] = i;
+        } else {
+          present[numPresent++] = i;
+        }
       }
 
-      // Do we have a numeric attribute?
-      if (data.attribute(m_Attribute).isNumeric()) {
-        subsets[(inst.value(m_Attribute) < m_SplitPoint) ? 0 : 1].add(inst);
-
-        // Proceed to next instance
-        continue;
+      // Sorting numeric attributes
+      if (data.attribute(j).isNumeric()) {
+        double[] vals = new double[numPresent];
+        for (int i = 0; i < numPresent; i++) {
+          vals[i] = data.instance(present[i]).value(j);
+        }
+        int[] order = Utils.sort(vals);
+        int[] sorted = new int[numPresent];
+        for (int i = 0; i < numPresent; i++) {
+          sorted[i] = present[order[i]];
+        }
+        present = sorted;
       }
-      
-      // Else throw an exception
-      throw new IllegalArgumentException("Unknown attribute type");
-    }
 
-    // Save memory
-    for (int i = 0; i < m_Prop.length; i++) {
-      subsets[i].compactify();
+      sortedIndices[j] = new int[data.numInstances()];
+      weights[j] = new double[data.numInstances()];
+      System.arraycopy(present, 0, sortedIndices[j], 0, numPresent);
+      System.arraycopy(missing, 0, sortedIndices[j], numPresent, numMissing);
+      for (int i = 0; i < sortedIndices[j].length; i++) {
+        weights[j][i] = data.instance(sortedIndices[j][i]).weight();
+      }
     }
-
-    // Return the subsets
-    return subsets;
   }
 
   /**
-   * Computes class distribution for an attribute.
+   * Recursively generates a tree from presorted data. Grows the same tree
+   * as buildTree(Instances, ...), but the numeric attributes don't get
+   * sorted again at each node.
    * 
-   * @param props
-   * @param dists
-   * @param att
-   *            the attribute index
+   * @param sortedIndices
+   *            the sorted indices of the instances for each attribute
+   * @param weights
+   *            the weights of the sorted instances
    * @param data
    *            the data to work with
+   * @param classProbs
+   *            the class distribution
+   * @param header
+   *            the header of the data
+   * @param minNum
+   *            the minimum number of instances per leaf
+   * @param debug
+   *            whether debugging is on
+   * @param attIndicesWindow
+   *            the attribute window to choose attributes from
+   * @param random
+   *            random number generator for choosing random attributes
+   * @param depth
+   *            the current depth
+   * @param allow
+   *            whether to allow unclassified instances
    * @throws Exception
-   *             if something goes wrong
+   *             if generation fails
    */
-  protected double distribution(double[][] props, double[][][] dists, int att, Instances data)
-  throws Exception {
-
-    double splitPoint = Double.NaN;
-    Attribute attribute = data.attribute(att);
-    double[][] dist = null;
-    int indexOfFirstMissingValue = -1;
+  protected void buildTree(final int[][] sortedIndices, final double[][] weights, 
+                           final Instances data, double[] classProbs, Instances header,
+                           double minNum, boolean debug, int[] attIndicesWindow,
+                           Random random, int depth, boolean allow) throws Exception {
 
-    if (attribute.isNominal()) {
+    // Store structure of dataset, set minimum number of instances
+    m_Info = header;
+    m_Debug = debug;
+    m_MinNum = minNum;
+    m_AllowUnclassifiedInstances = allow;
 
-      // For nominal attributes
-      dist = new double[attribute.numValues()][data.numClasses()];
-      for (int i = 0; i < data.numInstances(); i++) {
-        Instance inst = data.instance(i);
-        if (inst.isMissing(att)) {
+    // Make leaf if there are no training instances
+    int nodeSize = sortedIndices[(data.classIndex() == 0) ? 1 : 0].length;
+    if (nodeSize == 0) {
+      m_Attribute = -1;
+      m_ClassDistribution = null;
+      m_Prop = null;
+      return;
+    }
 
-          // Skip missing values at this stage
-          if (indexOfFirstMissingValue < 0) {
-            indexOfFirstMissingValue = i;
-          }
-          continue;
-        }
-        dist[(int) inst.value(att)][(int) inst.classValue()] += inst.weight();
-      }
-    } else {
+    // Check if node doesn't contain enough instances or is pure
+    // or maximum depth reached
+    m_ClassDistribution = (double[]) classProbs.clone();
 
-      // For numeric attributes
-      double[][] currDist = new double[2][data.numClasses()];
-      dist = new double[2][data.numClasses()];
+    if (Utils.sum(m_ClassDistribution) < 2 * m_MinNum
+        || Utils.eq(m_ClassDistribution[Utils.maxIndex(m_ClassDistribution)], Utils
+            .sum(m_ClassDistribution))
+            || ((getMaxDepth() > 0) && (depth >= getMaxDepth()))) {
+      // Make leaf
+      m_Attribute = -1;
+      m_Prop = null;
+      return;
+    }
+
+    // Compute class distributions and value of splitting
+    // criterion for each attribute
+    final double[] vals = new double[data.numAttributes()];
+    final double[][][] dists = new double[data.numAttributes()][0][0];
+    final double[][] props = new double[data.numAttributes()][0];
+    final double[] splits = new double[data.numAttributes()];
+    
+    // Choose K random attributes and investigate them, the same random
+    // numbers are drawn as in buildTree(Instances, ...)
+    int windowSize = attIndicesWindow.length;
+    final int[] chosen = new int[Math.min(m_KValue, windowSize)];
+    for (int k = 0; k < chosen.length; k++) {
+      int chosenIndex = random.nextInt(windowSize);
+      chosen[k] = attIndicesWindow[chosenIndex];
+
+      // shift chosen attIndex out of window
+      attIndicesWindow[chosenIndex] = attIndicesWindow[windowSize - 1];
+      attIndicesWindow[windowSize - 1] = chosen[k];
+      windowSize--;
+    }
+    m_SplitSearch.forEachAttribute(nodeSize, chosen.length, 
+                                   new ParallelSplitSearch.AttributeTask() {
+      public void run(int k) throws Exception {
+        int attIndex = chosen[k];
+        splits[attIndex] = distribution(props, dists, attIndex, 
+                                        sortedIndices[attIndex], weights[attIndex], data);
+        vals[attIndex] = gain(dists[attIndex], priorVal(dists[attIndex]));
+      }
+    });
+    boolean gainFound = false;
+    for (int k = 0; k < chosen.length; k++) {
+      if (Utils.gr(vals[chosen[k]], 0))
+        gainFound = true;
+    }
+
+    // Investigate further attributes until a gain is found
+    while ((windowSize > 0) && !gainFound) {
+      
+      int chosenIndex = random.nextInt(windowSize);
+      int attIndex = attIndicesWindow[chosenIndex];
+      
+      // shift chosen attIndex out of window
+      attIndicesWindow[chosenIndex] = attIndicesWindow[windowSize - 1];
+      attIndicesWindow[windowSize - 1] = attIndex;
+      windowSize--;
+      
+      splits[attIndex] = distribution(props, dists, attIndex, 
+                                      sortedIndices[attIndex], weights[attIndex], data);
+      vals[attIndex] = gain(dists[attIndex], priorVal(dists[attIndex]));
+      
+      if (Utils.gr(vals[attIndex], 0))
+        gainFound = true;
+    }
+      
+    // Find best attribute
+    m_Attribute = Utils.maxIndex(vals);
+    double[][] distribution = dists[m_Attribute];
+
+    // Any useful split found? 
+    if (Utils.gr(vals[m_Attribute], 0)) {
+
+      // Build subtrees
+      m_SplitPoint = splits[m_Attribute];
+      m_Prop = props[m_Attribute];
+      final int[][][] subsetIndices = 
+        new int[distribution.length][data.numAttributes()][0];
+      final double[][][] subsetWeights = 
+        new double[distribution.length][data.numAttributes()][0];
+      m_SplitSearch.forEachAttribute(nodeSize, data.numAttributes(), 
+                                     new ParallelSplitSearch.AttributeTask() {
+        public void run(int att) throws Exception {
+          if (att != data.classIndex()) {
+            splitData(subsetIndices, subsetWeights, att, sortedIndices[att], 
+                      weights[att], data);
+          }
+        }
+      });
+      m_Successors = new RandomTree[distribution.length];
+      for (int i = 0; i < distribution.length; i++) {
+        m_Successors[i] = new RandomTree();
+        m_Successors[i].setKValue(m_KValue);
+        m_Successors[i].setMaxDepth(getMaxDepth());
+        m_Successors[i].m_SplitSearch = m_SplitSearch;
+        m_Successors[i].buildTree(subsetIndices[i], subsetWeights[i], data, 
+                                  distribution[i], header, m_MinNum, m_Debug,
+                                  attIndicesWindow, random, depth + 1, allow);
+        m_Successors[i].m_SplitSearch = null;
+      }
+
+      // If all successors are non-empty, we don't need to store the class distribution
+      boolean emptySuccessor = false;
+      for (int i = 0; i < distribution.length; i++) {
+        if (m_Successors[i].m_ClassDistribution == null) {
+          emptySuccessor = true;
+          break;
+        }
+      }
+      if (!emptySuccessor) {
+        m_ClassDistribution = null;
+      }
+    } else {
+
+      // Make leaf
+      m_Attribute = -1;
+    }
+  }
+
+  /**
+   * Recursively generates a tree from quantised data. The class 
+   * distributions of the attributes are computed from the histograms of
+   * their bins, the split points are placed between the bins.
+   * 
+   * @param data
+   *            the quantised data
+   * @param rows
+   *            the indices of the instances at this node
+   * @param weights
+   *            the weights of the instances at this node
+   * @param classProbs
+   *            the class distribution
+   * @param header
+   *            the header of the data
+   * @param minNum
+   *            the minimum number of instances per leaf
+   * @param debug
+   *            whether debugging is on
+   * @param attIndicesWindow
+   *            the attribute window to choose attributes from
+   * @param random
+   *            random number generator for choosing random attributes
+   * @param depth
+   *            the current depth
+   * @param allow
+   *            whether to allow unclassified instances
+   * @throws Exception
+   *             if generation fails
+   */
+  protected void buildTree(BinnedData data, int[] rows, double[] weights,
+                           double[] classProbs, Instances header,
+                           double minNum, boolean debug, int[] attIndicesWindow,
+                           Random random, int depth, boolean allow) throws Exception {
+
+    // Store structure of dataset, set minimum number of instances
+    m_Info = header;
+    m_Debug = debug;
+    m_MinNum = minNum;
+    m_AllowUnclassifiedInstances = allow;
+
+    // Make leaf if there are no training instances
+    if (rows.length == 0) {
+      m_Attribute = -1;
+      m_ClassDistribution = null;
+      m_Prop = null;
+      return;
+    }
+
+    // Check if node doesn't contain enough instances or is pure
+    // or maximum depth reached
+    m_ClassDistribution = (double[]) classProbs.clone();
+
+    if (Utils.sum(m_ClassDistribution) < 2 * m_MinNum
+        || Utils.eq(m_ClassDistribution[Utils.maxIndex(m_ClassDistribution)], Utils
+            .sum(m_ClassDistribution))
+            || ((getMaxDepth() > 0) && (depth >= getMaxDepth()))) {
+      // Make leaf
+      m_Attribute = -1;
+      m_Prop = null;
+      return;
+    }
+
+    // Compute class distributions and value of splitting
+    // criterion for each attribute
+    double[] vals = new double[header.numAttributes()];
+    double[][][] dists = new double[header.numAttributes()][0][0];
+    double[][] props = new double[header.numAttributes()][0];
+    double[] splits = new double[header.numAttributes()];
+    int[] splitBins = new int[header.numAttributes()];
+    
+    // Investigate K random attributes
+    int attIndex = 0;
+    int windowSize = attIndicesWindow.length;
+    int k = m_KValue;
+    boolean gainFound = false;
+    while ((windowSize > 0) && (k-- > 0 || !gainFound)) {
+      
+      int chosenIndex = random.nextInt(windowSize);
+      attIndex = attIndicesWindow[chosenIndex];
+      
+      // shift chosen attIndex out of window
+      attIndicesWindow[chosenIndex] = attIndicesWindow[windowSize - 1];
+      attIndicesWindow[windowSize - 1] = attIndex;
+      windowSize--;
+      
+      splits[attIndex] = distribution(props, dists, splitBins, attIndex, 
+                                      data, rows, weights);
+      vals[attIndex] = gain(dists[attIndex], priorVal(dists[attIndex]));
+      
+      if (Utils.gr(vals[attIndex], 0))
+        gainFound = true;
+    }
+      
+    // Find best attribute
+    m_Attribute = Utils.maxIndex(vals);
+    double[][] distribution = dists[m_Attribute];
+
+    // Any useful split found? 
+    if (Utils.gr(vals[m_Attribute], 0)) {
+
+      // Build subtrees
+      m_SplitPoint = splits[m_Attribute];
+      m_Prop = props[m_Attribute];
+      int[][] subsetRows = new int[distribution.length][];
+      double[][] subsetWeights = new double[distribution.length][];
+      splitData(subsetRows, subsetWeights, splitBins[m_Attribute], data, 
+                rows, weights);
+      m_Successors = new RandomTree[distribution.length];
+      for (int i = 0; i < distribution.length; i++) {
+        m_Successors[i] = new RandomTree();
+        m_Successors[i].setKValue(m_KValue);
+        m_Successors[i].setMaxDepth(getMaxDepth());
+        m_Successors[i].buildTree(data, subsetRows[i], subsetWeights[i], 
+                                  distribution[i], header, m_MinNum, m_Debug,
+                                  attIndicesWindow, random, depth + 1, allow);
+      }
+
+      // If all successors are non-empty, we don't need to store the class distribution
+      boolean emptySuccessor = false;
+      for (int i = 0; i < distribution.length; i++) {
+        if (m_Successors[i].m_ClassDistribution == null) {
+          emptySuccessor = true;
+          break;
+        }
+      }
+      if (!emptySuccessor) {
+        m_ClassDistribution = null;
+      }
+    } else {
+
+      // Make leaf
+      m_Attribute = -1;
+    }
+  }
+
+  /**
+   * Computes size of the tree.
+   * 
+   * @return the number of nodes
+   */
+  public int numNodes() {
+
+    if (m_Attribute == -1) {
+      return 1;
+    } else {
+      int size = 1;
+      for (int i = 0; i < m_Successors.length; i++) {
+        size += m_Successors[i].numNodes();
+      }
+      return size;
+    }
+  }
+
+  /**
+   * Splits instances into subsets based on the given split.
+   * 
+   * @param data
+   *            the data to work with
+   * @return  the subsets of instances
+   * @throws Exception
+   *             if something goes wrong
+   */
+  protected Instances[] splitData(Instances data) throws Exception {
+
+    // Allocate array of Instances objects
+    Instances[] subsets = new Instances[m_Prop.length];
+    for (int i = 0; i < m_Prop.length; i++) {
+      subsets[i] = new Instances(data, data.numInstances());
+    }
+
+    // Go through the data
+    for (int i = 0; i < data.numInstances(); i++) {
+
+      // Get instance
+      Instance inst = data.instance(i);
+
+      // Does the instance have a missing value?
+      if (inst.isMissing(m_Attribute)) {
+        
+        // Split instance up
+        for (int k = 0; k < m_Prop.length; k++) {
+          if (m_Prop[k] > 0) {
+            Instance copy = (Instance)inst.copy();
+            copy.setWeight(m_Prop[k] * inst.weight());
+            subsets[k].add(copy);
+          }
+        }
+
+        // Proceed to next instance
+        continue;
+      }
+
+      // Do we have a nominal attribute?
+      if (data.attribute(m_Attribute).isNominal()) {
+        subsets[(int)inst.value(m_Attribute)].add(inst);
+
+        // Proceed to next instance
+        continue;
+      }
+
+      // Do we have a numeric attribute?
+      if (data.attribute(m_Attribute).isNumeric()) {
+        subsets[(inst.value(m_Attribute) < m_SplitPoint) ? 0 : 1].add(inst);
+
+        // Proceed to next instance
+        continue;
+      }
+      
+      // Else throw an exception
+      throw new IllegalArgumentException("Unknown attribute type");
+    }
+
+    // Save memory
+    for (int i = 0; i < m_Prop.length; i++) {
+      subsets[i].compactify();
+    }
+
+    // Return the subsets
+    return subsets;
+  }
+
+  /**
+   * Splits the sorted indices of an attribute into subsets based on the
+   * given split. The indices stay sorted.
+   * 
+   * @param subsetIndices
+   *            the sorted indices in the subsets (output)
+   * @param subsetWeights
+   *            the weights in the subsets (output)
+   * @param att
+   *            the attribute whose indices are split
+   * @param sortedIndices
+   *            the sorted indices of the attribute
+   * @param weights
+   *            the weights of the sorted instances
+   * @param data
+   *            the data to work with
+   */
+  protected void splitData(int[][][] subsetIndices, double[][][] subsetWeights,
+                           int att, int[] sortedIndices, double[] weights, 
+                           Instances data) {
+
+    int[] num = new int[m_Prop.length];
+    for (int k = 0; k < m_Prop.length; k++) {
+      subsetIndices[k][att] = new int[sortedIndices.length];
+      subsetWeights[k][att] = new double[sortedIndices.length];
+    }
+
+    for (int i = 0; i < sortedIndices.length; i++) {
+      Instance inst = data.instance(sortedIndices[i]);
+
+      // Split instance up if the value is missing
+      if (inst.isMissing(m_Attribute)) {
+        for (int k = 0; k < m_Prop.length; k++) {
+          if (m_Prop[k] > 0) {
+            subsetIndices[k][att][num[k]] = sortedIndices[i];
+            subsetWeights[k][att][num[k]] = m_Prop[k] * weights[i];
+            num[k]++;
+          }
+        }
+        continue;
+      }
+
+      int subset;
+      if (data.attribute(m_Attribute).isNominal()) {
+        subset = (int)inst.value(m_Attribute);
+      } else {
+        subset = (inst.value(m_Attribute) < m_SplitPoint) ? 0 : 1;
+      }
+      subsetIndices[subset][att][num[subset]] = sortedIndices[i];
+      subsetWeights[subset][att][num[subset]] = weights[i];
+      num[subset]++;
+    }
+
+    // Trim arrays
+    for (int k = 0; k < m_Prop.length; k++) {
+      int[] copy = new int[num[k]];
+      System.arraycopy(subsetIndices[k][att], 0, copy, 0, num[k]);
+      subsetIndices[k][att] = copy;
+      double[] copyWeights = new double[num[k]];
+      System.arraycopy(subsetWeights[k][att], 0, copyWeights, 0, num[k]);
+      subsetWeights[k][att] = copyWeights;
+    }
+  }
+
+  /**
+   * Computes class distribution for an attribute.
+   * 
+   * @param props
+   * @param dists
+   * @param att
+   *            the attribute index
+   * @param data
+   *            the data to work with
+   * @throws Exception
+   *             if something goes wrong
+   */
+  protected double distribution(double[][] props, double[][][] dists, int att, Instances data)
+  throws Exception {
+
+    double splitPoint = Double.NaN;
+    Attribute attribute = data.attribute(att);
+    double[][] dist = null;
+    int indexOfFirstMissingValue = -1;
+
+    if (attribute.isNominal()) {
+
+      // For nominal attributes
+      dist = new double[attribute.numValues()][data.numClasses()];
+      for (int i = 0; i < data.numInstances(); i++) {
+        Instance inst = data.instance(i);
+        if (inst.isMissing(att)) {
+
+          // Skip missing values at this stage
+          if (indexOfFirstMissingValue < 0) {
+            indexOfFirstMissingValue = i;
+          }
+          continue;
+        }
+        dist[(int) inst.value(att)][(int) inst.classValue()] += inst.weight();
+      }
+    } else {
+
+      // For numeric attributes
+      double[][] currDist = new double[2][data.numClasses()];
+      dist = new double[2][data.numClasses()];
 
       // Sort data
       data.sort(att);
@@ -1319,6 +2018,331 @@ WeightedInstancesHandler, Randomizable, Drawable {
     return splitPoint;
   }
 
+  /**
+   * Computes class distribution for an attribute, based on the sorted 
+   * indices of the instances. Instances with missing values have to be 
+   * at the end.
+   * 
+   * @param props
+   * @param dists
+   * @param att
+   *            the attribute index
+   * @param sortedIndices
+   *            the sorted indices of the instances
+   * @param weights
+   *            the weights of the sorted instances
+   * @param data
+   *            the data to work with
+   * @throws Exception
+   *             if something goes wrong
+   */
+  protected double distribution(double[][] props, double[][][] dists, int att, 
+                                int[] sortedIndices, double[] weights, Instances data)
+  throws Exception {
+
+    double splitPoint = Double.NaN;
+    Attribute attribute = data.attribute(att);
+    double[][] dist = null;
+    int i;
+
+    if (attribute.isNominal()) {
+
+      // For nominal attributes
+      dist = new double[attribute.numValues()][data.numClasses()];
+      for (i = 0; i < sortedIndices.length; i++) {
+        Instance inst = data.instance(sortedIndices[i]);
+        if (inst.isMissing(att)) {
+          break;
+        }
+        dist[(int) inst.value(att)][(int) inst.classValue()] += weights[i];
+      }
+    } else {
+
+      // For numeric attributes
+      double[][] currDist = new double[2][data.numClasses()];
+      dist = new double[2][data.numClasses()];
+
+      // Move all instances into second subset
+      for (int j = 0; j < sortedIndices.length; j++) {
+        Instance inst = data.instance(sortedIndices[j]);
+        if (inst.isMissing(att)) {
+          break;
+        }
+        currDist[1][(int) inst.classValue()] += weights[j];
+      }
+
+      // Value before splitting
+      double priorVal = priorVal(currDist);
+
+      // Save initial distribution
+      for (int j = 0; j < currDist.length; j++) {
+        System.arraycopy(currDist[j], 0, dist[j], 0, dist[j].length);
+      }
+
+      // Try all possible split points
+      double currSplit = data.instance(sortedIndices[0]).value(att);
+      double currVal, bestVal = -Double.MAX_VALUE;
+      for (i = 0; i < sortedIndices.length; i++) {
+        Instance inst = data.instance(sortedIndices[i]);
+        if (inst.isMissing(att)) {
+          break;
+        }
+
+        // Can we place a sensible split point here?
+        if (inst.value(att) > currSplit) {
+
+          // Compute gain for split point
+          currVal = gain(currDist, priorVal);
+
+          // Is the current split point the best point so far?
+          if (currVal > bestVal) {
+            bestVal = currVal;
+            splitPoint = (inst.value(att) + currSplit) / 2.0;
+            for (int j = 0; j < currDist.length; j++) {
+              System.arraycopy(currDist[j], 0, dist[j], 0, dist[j].length);
+            }
+          }
+        }
+        currSplit = inst.value(att);
+
+        // Shift over the weight
+        currDist[0][(int) inst.classValue()] += weights[i];
+        currDist[1][(int) inst.classValue()] -= weights[i];
+      }
+    }
+
+    // Compute weights for subsets
+    props[att] = new double[dist.length];
+    for (int k = 0; k < props[att].length; k++) {
+      props[att][k] = Utils.sum(dist[k]);
+    }
+    if (Utils.eq(Utils.sum(props[att]), 0)) {
+      for (int k = 0; k < props[att].length; k++) {
+        props[att][k] = 1.0 / (double) props[att].length;
+      }
+    } else {
+      Utils.normalize(props[att]);
+    }
+
+    // Distribute weights for instances with missing values
+    for (; i < sortedIndices.length; i++) {
+      Instance inst = data.instance(sortedIndices[i]);
+      for (int j = 0; j < dist.length; j++) {
+        dist[j][(int) inst.classValue()] += props[att][j] * weights[i];
+      }
+    }
+
+    // Return distribution and split point
+    dists[att] = dist;
+    return splitPoint;
+  }
+
+  /**
+   * Splits the instances at this node of a tree grown on quantised data
+   * into subsets. Instances with a missing value are split up according
+   * to the proportions of the subsets.
+   * 
+   * @param subsetRows
+   *            the indices of the instances in the subsets (output)
+   * @param subsetWeights
+   *            the weights of the instances in the subsets (output)
+   * @param splitBin
+   *            the first bin of the second subset, for numeric attributes
+   * @param data
+   *            the quantised data
+   * @param rows
+   *            the indices of the instances at this node
+   * @param weights
+   *            the weights of the instances at this node
+   */
+  protected void splitData(int[][] subsetRows, double[][] subsetWeights,
+                           int splitBin, BinnedData data, int[] rows, 
+                           double[] weights) {
+
+    byte[] bins = data.getBins(m_Attribute);
+    boolean nominal = m_Info.attribute(m_Attribute).isNominal();
+
+    // Determine the sizes of the subsets
+    int[] num = new int[m_Prop.length];
+    for (int i = 0; i < rows.length; i++) {
+      int bin = bins[rows[i]] & 0xFF;
+      if (bin == BinnedData.MISSING) {
+        for (int k = 0; k < m_Prop.length; k++) {
+          if (m_Prop[k] > 0) {
+            num[k]++;
+          }
+        }
+      } else if (nominal) {
+        num[bin]++;
+      } else {
+        num[(bin < splitBin) ? 0 : 1]++;
+      }
+    }
+    for (int k = 0; k < m_Prop.length; k++) {
+      subsetRows[k] = new int[num[k]];
+      subsetWeights[k] = new double[num[k]];
+      num[k] = 0;
+    }
+
+    for (int i = 0; i < rows.length; i++) {
+      int bin = bins[rows[i]] & 0xFF;
+
+      // Split instance up if the value is missing
+      if (bin == BinnedData.MISSING) {
+        for (int k = 0; k < m_Prop.length; k++) {
+          if (m_Prop[k] > 0) {
+            subsetRows[k][num[k]] = rows[i];
+            subsetWeights[k][num[k]] = m_Prop[k] * weights[i];
+            num[k]++;
+          }
+        }
+        continue;
+      }
+
+      int subset;
+      if (nominal) {
+        subset = bin;
+      } else {
+        subset = (bin < splitBin) ? 0 : 1;
+      }
+      subsetRows[subset][num[subset]] = rows[i];
+      subsetWeights[subset][num[subset]] = weights[i];
+      num[subset]++;
+    }
+  }
+
+  /**
+   * Computes class distribution for an attribute of quantised data, 
+   * based on the histogram of its bins.
+   * 
+   * @param props
+   * @param dists
+   * @param splitBins
+   *            the first bin of the second subset, for numeric attributes
+   * @param att
+   *            the attribute index
+   * @param data
+   *            the quantised data
+   * @param rows
+   *            the indices of the instances at this node
+   * @param weights
+   *            the weights of the instances at this node
+   * @throws Exception
+   *             if something goes wrong
+   */
+  protected double distribution(double[][] props, double[][][] dists, 
+                                int[] splitBins, int att, BinnedData data, 
+                                int[] rows, double[] weights)
+  throws Exception {
+
+    double splitPoint = Double.NaN;
+    int numClasses = m_Info.numClasses();
+    byte[] bins = data.getBins(att);
+    int[] classValues = data.getClassValues();
+    boolean missing = false;
+    double[][] dist = null;
+
+    if (m_Info.attribute(att).isNominal()) {
+
+      // For nominal attributes
+      dist = new double[data.numBins(att)][numClasses];
+      for (int i = 0; i < rows.length; i++) {
+        int bin = bins[rows[i]] & 0xFF;
+        if (bin == BinnedData.MISSING) {
+          missing = true;
+          continue;
+        }
+        dist[bin][classValues[rows[i]]] += weights[i];
+      }
+    } else {
+
+      // For numeric attributes, compute the histogram and
+      // move all instances into second subset
+      double[][] hist = new double[data.numBins(att)][numClasses];
+      int[] counts = new int[data.numBins(att)];
+      double[][] currDist = new double[2][numClasses];
+      dist = new double[2][numClasses];
+      for (int i = 0; i < rows.length; i++) {
+        int bin = bins[rows[i]] & 0xFF;
+        if (bin == BinnedData.MISSING) {
+          missing = true;
+          continue;
+        }
+        hist[bin][classValues[rows[i]]] += weights[i];
+        counts[bin]++;
+        currDist[1][classValues[rows[i]]] += weights[i];
+      }
+
+      // Value before splitting
+      double priorVal = priorVal(currDist);
+
+      // Save initial distribution
+      for (int j = 0; j < currDist.length; j++) {
+        System.arraycopy(currDist[j], 0, dist[j], 0, dist[j].length);
+      }
+
+      // Try the split points between all non-empty bins
+      int prevBin = -1;
+      double currVal, bestVal = -Double.MAX_VALUE;
+      for (int bin = 0; bin < hist.length; bin++) {
+        if (counts[bin] == 0) {
+          continue;
+        }
+
+        if (prevBin > -1) {
+
+          // Compute gain for split point
+          currVal = gain(currDist, priorVal);
+
+          // Is the current split point the best point so far?
+          if (currVal > bestVal) {
+            bestVal = currVal;
+            splitPoint = data.splitPoint(att, prevBin, bin);
+            splitBins[att] = bin;
+            for (int j = 0; j < currDist.length; j++) {
+              System.arraycopy(currDist[j], 0, dist[j], 0, dist[j].length);
+            }
+          }
+        }
+        prevBin = bin;
+
+        // Shift over the weight
+        for (int j = 0; j < numClasses; j++) {
+          currDist[0][j] += hist[bin][j];
+          currDist[1][j] -= hist[bin][j];
+        }
+      }
+    }
+
+    // Compute weights for subsets
+    props[att] = new double[dist.length];
+    for (int k = 0; k < props[att].length; k++) {
+      props[att][k] = Utils.sum(dist[k]);
+    }
+    if (Utils.eq(Utils.sum(props[att]), 0)) {
+      for (int k = 0; k < props[att].length; k++) {
+        props[att][k] = 1.0 / (double) props[att].length;
+      }
+    } else {
+      Utils.normalize(props[att]);
+    }
+
+    // Distribute weights for instances with missing values
+    if (missing) {
+      for (int i = 0; i < rows.length; i++) {
+        if ((bins[rows[i]] & 0xFF) == BinnedData.MISSING) {
+          for (int j = 0; j < dist.length; j++) {
+            dist[j][classValues[rows[i]]] += props[att][j] * weights[i];
+          }
+        }
+      }
+    }
+
+    // Return distribution and split point
+    dists[att] = dist;
+    return splitPoint;
+  }
+
   /**
    * Computes value of splitting criterion before split.
    * 
@@ -104,6 +104,11 @@ import java.util.Vector;
  *  Percentage of training data size (0-1].
  *  (default 1).</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of threads to use for evaluating the attributes
+ *  at large nodes.
+ *  (default 1)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Haijian Shi (hs69@cs.waikato.ac.nz)
@@ -179,6 +184,12 @@ public class SimpleCart
   /** Training data size. */
   protected double m_SizePer = 1;
 
+  /** The number of threads to use for evaluating the attributes. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** Evaluates the attributes while the tree is built. */
+  protected transient ParallelSplitSearch m_SplitSearch = null;
+
   /**
    * Return a description suitable for displaying in the explorer/experimenter.
    * 
@@ -242,6 +253,23 @@ public class SimpleCart
    */
   public void buildClassifier(Instances data) throws Exception {
 
+    m_SplitSearch = new ParallelSplitSearch(m_NumExecutionSlots, "SimpleCart");
+    try {
+      buildTree(data);
+    } finally {
+      m_SplitSearch.shutdown();
+      m_SplitSearch = null;
+    }
+  }
+
+  /**
+   * Builds the (pruned) tree.
+   * 
+   * @param data 	the training instances
+   * @throws Exception 	if something goes wrong
+   */
+  protected void buildTree(Instances data) throws Exception {
+
     getCapabilities().testWithFail(data);
     data = new Instances(data);        
     data.deleteWithMissingClass();
@@ -366,9 +394,10 @@ public class SimpleCart
    * @param useHeuristic 	if use heuristic search for nominal attributes in multi-class problem
    * @throws Exception 		if something goes wrong
    */
-  protected void makeTree(Instances data, int totalInstances, int[][] sortedIndices,
-      double[][] weights, double[] classProbs, double totalWeight, double minNumObj,
-      boolean useHeuristic) throws Exception{
+  protected void makeTree(final Instances data, int totalInstances, 
+      final int[][] sortedIndices, final double[][] weights, double[] classProbs, 
+      double totalWeight, double minNumObj, final boolean useHeuristic) 
+    throws Exception{
 
     // if no instances have reached this node (normally won't happen)
     if (totalWeight == 0){
@@ -389,27 +418,30 @@ public class SimpleCart
 
     // Compute class distributions and value of splitting
     // criterion for each attribute
-    double[][][] dists = new double[data.numAttributes()][0][0];
-    double[][] props = new double[data.numAttributes()][0];
-    double[][] totalSubsetWeights = new double[data.numAttributes()][2];
-    double[] splits = new double[data.numAttributes()];
-    String[] splitString = new String[data.numAttributes()];
-    double[] giniGains = new double[data.numAttributes()];
+    final double[][][] dists = new double[data.numAttributes()][0][0];
+    final double[][] props = new double[data.numAttributes()][0];
+    final double[][] totalSubsetWeights = new double[data.numAttributes()][2];
+    final double[] splits = new double[data.numAttributes()];
+    final String[] splitString = new String[data.numAttributes()];
+    final double[] giniGains = new double[data.numAttributes()];
 
     // for each attribute find split information
-    for (int i = 0; i < data.numAttributes(); i++) {
-      Attribute att = data.attribute(i);
-      if (i==data.classIndex()) continue;
-      if (att.isNumeric()) {
-	// numeric attribute
-	splits[i] = numericDistribution(props, dists, att, sortedIndices[i],
-	    weights[i], totalSubsetWeights, giniGains, data);
-      } else {
-	// nominal attribute
-	splitString[i] = nominalDistribution(props, dists, att, sortedIndices[i],
-	    weights[i], totalSubsetWeights, giniGains, data, useHeuristic);
+    m_SplitSearch.forEachAttribute(nodeSize(sortedIndices, data), 
+	data.numAttributes(), new ParallelSplitSearch.AttributeTask() {
+      public void run(int i) throws Exception {
+	Attribute att = data.attribute(i);
+	if (i==data.classIndex()) return;
+	if (att.isNumeric()) {
+	  // numeric attribute
+	  splits[i] = numericDistribution(props, dists, att, sortedIndices[i],
+	      weights[i], totalSubsetWeights, giniGains, data);
+	} else {
+	  // nominal attribute
+	  splitString[i] = nominalDistribution(props, dists, att, sortedIndices[i],
+	      weights[i], totalSubsetWeights, giniGains, data, useHeuristic);
+	}
       }
-    }
+    });
 
     // Find best attribute (split with maximum Gini gain)
     int attIndex = Utils.maxIndex(giniGains);
@@ -457,9 +489,11 @@ public class SimpleCart
       m_Successors = new SimpleCart[2];
       for (int i = 0; i < 2; i++) {
 	m_Successors[i] = new SimpleCart();
+	m_Successors[i].m_SplitSearch = m_SplitSearch;
 	m_Successors[i].makeTree(data, m_totalTrainInstances, subsetIndices[i],
 	    subsetWeights[i],dists[attIndex][i], totalSubsetWeights[attIndex][i],
 	    minNumObj, useHeuristic);
+	m_Successors[i].m_SplitSearch = null;
       }
     }
   }
@@ -1183,57 +1217,102 @@ public class SimpleCart
    * @param data 		training data
    * @throws Exception 		if something goes wrong  
    */
+  protected void splitData(final int[][][] subsetIndices, 
+      final double[][][] subsetWeights, final Attribute att, 
+      final double splitPoint, final String splitStr, 
+      final int[][] sortedIndices, final double[][] weights, 
+      final Instances data) throws Exception {
+
+    // For each attribute
+    m_SplitSearch.forEachAttribute(nodeSize(sortedIndices, data), 
+	data.numAttributes(), new ParallelSplitSearch.AttributeTask() {
+      public void run(int i) throws Exception {
+	if (i==data.classIndex()) return;
+	splitData(subsetIndices, subsetWeights, att, splitPoint, splitStr, 
+	    sortedIndices, weights, data, i);
+      }
+    });
+  }
+
+  /**
+   * Splits the sorted indices and weights of one attribute into two subsets.
+   * 
+   * @param subsetIndices 	sorted indecis of instances for each attribute 
+   * 				for two successor node
+   * @param subsetWeights 	weights of instances for each attribute for 
+   * 				two successor node
+   * @param att 		attribute the split based on
+   * @param splitPoint 		split point the split based on if att is numeric
+   * @param splitStr 		split subset the split based on if att is nominal
+   * @param sortedIndices 	sorted indices of the instances to be split
+   * @param weights 		weights of the instances to bes split
+   * @param data 		training data
+   * @param i 			the attribute whose indices are split
+   * @throws Exception 		if something goes wrong  
+   */
   protected void splitData(int[][][] subsetIndices, double[][][] subsetWeights,
       Attribute att, double splitPoint, String splitStr, int[][] sortedIndices,
-      double[][] weights, Instances data) throws Exception {
+      double[][] weights, Instances data, int i) throws Exception {
 
     int j;
-    // For each attribute
-    for (int i = 0; i < data.numAttributes(); i++) {
-      if (i==data.classIndex()) continue;
-      int[] num = new int[2];
-      for (int k = 0; k < 2; k++) {
-	subsetIndices[k][i] = new int[sortedIndices[i].length];
-	subsetWeights[k][i] = new double[weights[i].length];
-      }
+    int[] num = new int[2];
+    for (int k = 0; k < 2; k++) {
+      subsetIndices[k][i] = new int[sortedIndices[i].length];
+      subsetWeights[k][i] = new double[weights[i].length];
+    }
 
-      for (j = 0; j < sortedIndices[i].length; j++) {
-	Instance inst = data.instance(sortedIndices[i][j]);
-	if (inst.isMissing(att)) {
-	  // Split instance up
-	  for (int k = 0; k < 2; k++) {
-	    if (m_Props[k] > 0) {
-	      subsetIndices[k][i][num[k]] = sortedIndices[i][j];
-	      subsetWeights[k][i][num[k]] = m_Props[k] * weights[i][j];
-	      num[k]++;
-	    }
-	  }
-	} else {
-	  int subset;
-	  if (att.isNumeric())  {
-	    subset = (inst.value(att) < splitPoint) ? 0 : 1;
-	  } else { // nominal attribute
-	    if (splitStr.indexOf
-		("(" + att.value((int)inst.value(att.index()))+")")!=-1) {
-	      subset = 0;
-	    } else subset = 1;
+    for (j = 0; j < sortedIndices[i].length; j++) {
+      Instance inst = data.instance(sortedIndices[i][j]);
+      if (inst.isMissing(att)) {
+	// Split instance up
+	for (int k = 0; k < 2; k++) {
+	  if (m_Props[k] > 0) {
+	    subsetIndices[k][i][num[k]] = sortedIndices[i][j];
+	    subsetWeights[k][i][num[k]] = m_Props[k] * weights[i][j];
+	    num[k]++;
 	  }
-	  subsetIndices[subset][i][num[subset]] = sortedIndices[i][j];
-	  subsetWeights[subset][i][num[subset]] = weights[i][j];
-	  num[subset]++;
 	}
+      } else {
+	int subset;
+	if (att.isNumeric())  {
+	  subset = (inst.value(att) < splitPoint) ? 0 : 1;
+	} else { // nominal attribute
+	  if (splitStr.indexOf
+	      ("(" + att.value((int)inst.value(att.index()))+")")!=-1) {
+	    subset = 0;
+	  } else subset = 1;
+	}
+	subsetIndices[subset][i][num[subset]] = sortedIndices[i][j];
+	subsetWeights[subset][i][num[subset]] = weights[i][j];
+	num[subset]++;
       }
+    }
 
-      // Trim arrays
-      for (int k = 0; k < 2; k++) {
-	int[] copy = new int[num[k]];
-	System.arraycopy(subsetIndices[k][i], 0, copy, 0, num[k]);
-	subsetIndices[k][i] = copy;
-	double[] copyWeights = new double[num[k]];
-	System.arraycopy(subsetWeights[k][i], 0 ,copyWeights, 0, num[k]);
-	subsetWeights[k][i] = copyWeights;
-      }
+    // Trim arrays
+    for (int k = 0; k < 2; k++) {
+      int[] copy = new int[num[k]];
+      System.arraycopy(subsetIndices[k][i], 0, copy, 0, num[k]);
+      subsetIndices[k][i] = copy;
+      double[] copyWeights = new double[num[k]];
+      System.arraycopy(subsetWeights[k][i], 0 ,copyWeights, 0, num[k]);
+      subsetWeights[k][i] = copyWeights;
+    }
+  }
+
+  /**
+   * Returns the number of instances at a node, including the ones with
+   * missing values.
+   * 
+   * @param sortedIndices 	sorted indices of the instances at the node
+   * @param data 		training data
+   * @return 			the number of instances
+   */
+  protected int nodeSize(int[][] sortedIndices, Instances data) {
+    for (int i = 0; i < data.numAttributes(); i++) {
+      if (i != data.classIndex())
+	return sortedIndices[i].length;
     }
+    return 0;
   }
 
   /**
@@ -1677,6 +1756,12 @@ public class SimpleCart
 	+ "\t(default 1).",
 	"C", 1, "-C"));
 
+    result.addElement(new Option(
+	"\tNumber of threads to use for evaluating the attributes\n"
+	+ "\tat large nodes.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
     return result.elements();
   }
 
@@ -1718,6 +1803,11 @@ public class SimpleCart
    *  Percentage of training data size (0-1].
    *  (default 1).</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads to use for evaluating the attributes
+   *  at large nodes.
+   *  (default 1)</pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -1750,6 +1840,12 @@ public class SimpleCart
     else
       setSizePer(1);
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length()!=0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
+
     Utils.checkForRemainingOptions(options);
   }
 
@@ -1787,6 +1883,9 @@ public class SimpleCart
     result.add("-C");
     result.add("" + getSizePer());
 
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
     return (String[]) result.toArray(new String[result.size()]);	  
   }
 
@@ -2002,6 +2101,38 @@ public class SimpleCart
   public double getSizePer() {
     return m_SizePer;
   }
+
+  /**
+   * Return the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui.
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for evaluating the attributes at "
+      + "large nodes. The tree doesn't depend on it.";
+  }
+
+  /** 
+   * Set the number of threads to use.
+   * 
+   * @param value 	the number of threads, at least 1
+   */  
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Get the number of threads to use.
+   * 
+   * @return 		the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
   
   /**
    * Returns the revision string.
@@ -111,6 +111,15 @@ public class BinC45Split
 
     return m_attIndex;
   }
+
+  /**
+   * Returns the split point (numeric attribute) or the index of the
+   * value that is split off (nominal attribute).
+   */
+  public final double splitPoint(){
+
+    return m_splitPoint;
+  }
   
   /**
    * Returns (C4.5-type) gain ratio for the generated split.
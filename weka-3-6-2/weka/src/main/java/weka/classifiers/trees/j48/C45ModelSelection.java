@@ -22,12 +22,15 @@
 
 package weka.classifiers.trees.j48;
 
+import weka.classifiers.trees.ParallelSplitSearch;
 import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
 
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 
 /**
  * Class for selecting a C4.5-type split for a given dataset.
@@ -47,6 +50,18 @@ public class C45ModelSelection
   /** All the training data */
   private Instances m_allData; // 
 
+  /** Sort the numeric attributes only once? */
+  private boolean m_presort;
+
+  /** Number of threads to use for evaluating the attributes. */
+  private int m_numThreads = 1;
+
+  /** Evaluates the attributes, created on demand. */
+  private transient ParallelSplitSearch m_splitSearch;
+
+  /** The sorted indices of the datasets at the nodes still to be built. */
+  private transient IdentityHashMap<Instances,int[][]> m_sortedIndices;
+
   /**
    * Initializes the split selection method with the given parameters.
    *
@@ -60,12 +75,187 @@ public class C45ModelSelection
     m_allData = allData;
   }
 
+  /**
+   * Initializes the split selection method with the given parameters.
+   * If the numeric attributes are presorted, they are sorted once for
+   * the whole dataset and the sorted indices are split along with the
+   * data. The attributes of large datasets are then evaluated with
+   * the given number of threads.
+   *
+   * @param minNoObj minimum number of instances that have to occur in at least two
+   * subsets induced by split
+   * @param allData FULL training dataset (necessary for
+   * selection of split points).
+   * @param presort whether to sort the numeric attributes only once
+   * @param numThreads the number of threads to use if presorting
+   */
+  public C45ModelSelection(int minNoObj, Instances allData, 
+			   boolean presort, int numThreads) {
+    this(minNoObj, allData);
+    m_presort = presort;
+    m_numThreads = numThreads;
+  }
+
   /**
    * Sets reference to training data to null.
    */
   public void cleanup() {
 
     m_allData = null;
+    m_sortedIndices = null;
+    synchronized (this) {
+      if (m_splitSearch != null) {
+	m_splitSearch.shutdown();
+	m_splitSearch = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the object evaluating the attributes, creates it if necessary.
+   */
+  private synchronized ParallelSplitSearch getSplitSearch() {
+
+    if (m_splitSearch == null)
+      m_splitSearch = new ParallelSplitSearch(m_numThreads, "J48");
+    return m_splitSearch;
+  }
+
+  /**
+   * Returns the indices of the given data sorted on each numeric attribute,
+   * with missing values last. Uses the indices stored when the parent
+   * dataset was split, if possible.
+   */
+  private int [][] sortedIndices(Instances data) {
+
+    int [][] result;
+    int [] present, missing, order;
+    double [] vals;
+    int numPresent, numMissing;
+    int i, j;
+
+    if (m_sortedIndices == null)
+      m_sortedIndices = new IdentityHashMap<Instances,int[][]>();
+    result = m_sortedIndices.get(data);
+    if (result != null)
+      return result;
+
+    result = new int [data.numAttributes()][];
+    for (j = 0; j < data.numAttributes(); j++) {
+      if ((j == data.classIndex()) || data.attribute(j).isNominal())
+	continue;
+      present = new int [data.numInstances()];
+      missing = new int [data.numInstances()];
+      numPresent = 0;
+      numMissing = 0;
+      for (i = 0; i < data.numInstances(); i++) {
+	if (data.instance(i).isMissing(j))
+	  missing[numMissing++] = i;
+	else
+	  present[numPresent++] = i;
+      }
+      vals = new double [numPresent];
+      for (i = 0; i < numPresent; i++)
+	vals[i] = data.instance(present[i]).value(j);
+      order = Utils.sort(vals);
+      result[j] = new int [data.numInstances()];
+      for (i = 0; i < numPresent; i++)
+	result[j][i] = present[order[i]];
+      System.arraycopy(missing, 0, result[j], numPresent, numMissing);
+    }
+    m_sortedIndices.put(data, result);
+
+    return result;
+  }
+
+  /**
+   * Builds the splits for all attributes on presorted data. The 
+   * attributes of large datasets are evaluated in parallel.
+   */
+  private void buildSplits(final Instances data, final C45Split [] models,
+			   final double sumOfWeights) throws Exception {
+
+    final int [][] sortedIndices = sortedIndices(data);
+
+    getSplitSearch().forEachAttribute(data.numInstances(), data.numAttributes(),
+				      new ParallelSplitSearch.AttributeTask() {
+	public void run(int i) throws Exception {
+	  if (i != data.classIndex()) {
+	    models[i] = new C45Split(i, m_minNoObj, sumOfWeights);
+	    models[i].buildClassifier(data, sortedIndices[i]);
+	  }
+	}
+      });
+  }
+
+  /**
+   * Stores the sorted indices for the subsets of the given data. The 
+   * subsets are created in the same way as by ClassifierSplitModel.split(),
+   * so the sorted indices of the data only have to be filtered.
+   *
+   * @param data the data that was split
+   * @param model the model used for splitting
+   * @param subsets the subsets of the data
+   * @exception Exception if something goes wrong
+   */
+  public void dataSplit(final Instances data, final ClassifierSplitModel model,
+			final Instances [] subsets) throws Exception {
+
+    final int [][] sortedIndices;
+    final int [][] positions;
+    final int [][][] subsetIndices;
+    final int [] num;
+    Instance instance;
+    double [] weights;
+    int subset, i, j;
+
+    if (m_sortedIndices == null)
+      return;
+    sortedIndices = m_sortedIndices.remove(data);
+    if (sortedIndices == null)
+      return;
+
+    // Positions of the instances in the subsets, -1 if not in a subset.
+    positions = new int [subsets.length][data.numInstances()];
+    num = new int [subsets.length];
+    for (i = 0; i < data.numInstances(); i++) {
+      instance = data.instance(i);
+      weights = model.weights(instance);
+      subset = model.whichSubset(instance);
+      for (j = 0; j < subsets.length; j++)
+	positions[j][i] = -1;
+      if (subset > -1)
+	positions[subset][i] = num[subset]++;
+      else
+	for (j = 0; j < subsets.length; j++)
+	  if (Utils.gr(weights[j],0))
+	    positions[j][i] = num[j]++;
+    }
+    for (j = 0; j < subsets.length; j++)
+      if (num[j] != subsets[j].numInstances())
+	return;
+
+    // Filter the sorted indices of each attribute.
+    subsetIndices = new int [subsets.length][data.numAttributes()][];
+    getSplitSearch().forEachAttribute(data.numInstances(), data.numAttributes(),
+				      new ParallelSplitSearch.AttributeTask() {
+	public void run(int att) throws Exception {
+	  if (sortedIndices[att] == null)
+	    return;
+	  for (int k = 0; k < subsets.length; k++) {
+	    int [] indices = new int [num[k]];
+	    int count = 0;
+	    for (int n = 0; n < sortedIndices[att].length; n++) {
+	      int pos = positions[k][sortedIndices[att][n]];
+	      if (pos > -1)
+		indices[count++] = pos;
+	    }
+	    subsetIndices[k][att] = indices;
+	  }
+	}
+      });
+    for (j = 0; j < subsets.length; j++)
+      m_sortedIndices.put(subsets[j], subsetIndices[j]);
   }
 
   /**
@@ -73,6 +263,21 @@ public class C45ModelSelection
    */
   public final ClassifierSplitModel selectModel(Instances data){
 
+    ClassifierSplitModel result = selectSplit(data);
+
+    // The sorted indices of a leaf are not needed anymore.
+    if ((m_sortedIndices != null) && 
+	((result == null) || (result.numSubsets() <= 1)))
+      m_sortedIndices.remove(data);
+
+    return result;
+  }
+
+  /**
+   * Selects C4.5-type split for the given dataset.
+   */
+  private ClassifierSplitModel selectSplit(Instances data){
+
     double minResult;
     double currentResult;
     C45Split [] currentModel;
@@ -114,6 +319,8 @@ public class C45ModelSelection
 
       currentModel = new C45Split[data.numAttributes()];
       sumOfWeights = data.sumOfWeights();
+      if (m_presort)
+	buildSplits(data, currentModel, sumOfWeights);
 
       // For each attribute.
       for (i = 0; i < data.numAttributes(); i++){
@@ -122,8 +329,10 @@ public class C45ModelSelection
 	if (i != (data).classIndex()){
 	  
 	  // Get models for current attribute.
-	  currentModel[i] = new C45Split(i,m_minNoObj,sumOfWeights);
-	  currentModel[i].buildClassifier(data);
+	  if (!m_presort) {
+	    currentModel[i] = new C45Split(i,m_minNoObj,sumOfWeights);
+	    currentModel[i].buildClassifier(data);
+	  }
 	  
 	  // Check if useful split for current attribute
 	  // exists and check for enumerated attributes with 
@@ -95,6 +95,25 @@ public class C45Split
   public void buildClassifier(Instances trainInstances) 
        throws Exception {
 
+    if (!trainInstances.attribute(m_attIndex).isNominal())
+      trainInstances.sort(trainInstances.attribute(m_attIndex));
+    buildClassifier(trainInstances, null);
+  }
+
+  /**
+   * Creates a C4.5-type split on the given data, using the given order of
+   * the instances for a numeric attribute. The data itself is not sorted,
+   * so that the splits for several attributes can be built at the same
+   * time. Assumes that none of the class values is missing.
+   *
+   * @param trainInstances the data
+   * @param sortedIndices the indices of the instances sorted on the 
+   * attribute, missing values last; null if the data is sorted already
+   * @exception Exception if something goes wrong
+   */
+  public void buildClassifier(Instances trainInstances, int [] sortedIndices) 
+       throws Exception {
+
     // Initialize the remaining instance variables.
     m_numSubsets = 0;
     m_splitPoint = Double.MAX_VALUE;
@@ -110,8 +129,7 @@ public class C45Split
     }else{
       m_complexityIndex = 2;
       m_index = 0;
-      trainInstances.sort(trainInstances.attribute(m_attIndex));
-      handleNumericAttribute(trainInstances);
+      handleNumericAttribute(trainInstances, sortedIndices);
     }
   }    
 
@@ -123,6 +141,15 @@ public class C45Split
     return m_attIndex;
   }
 
+  /**
+   * Returns the split point (numeric attribute) or the index of the
+   * value that is split off (nominal attribute).
+   */
+  public final double splitPoint() {
+
+    return m_splitPoint;
+  }
+
   /**
    * Gets class probability for instance.
    *
@@ -199,12 +226,26 @@ public class C45Split
     }
   }
   
+  /**
+   * Returns the instance at the given position of the order.
+   */
+  private static Instance instance(Instances data, int [] order, int index) {
+
+    if (order == null)
+      return data.instance(index);
+    else
+      return data.instance(order[index]);
+  }
+  
   /**
    * Creates split on numeric attribute.
    *
+   * @param trainInstances the data
+   * @param order the sorted order of the instances, null if the data
+   * is sorted
    * @exception Exception if something goes wrong
    */
-  private void handleNumericAttribute(Instances trainInstances)
+  private void handleNumericAttribute(Instances trainInstances, int [] order)
        throws Exception {
   
     int firstMiss;
@@ -221,10 +262,9 @@ public class C45Split
     m_distribution = new Distribution(2,trainInstances.numClasses());
     
     // Only Instances with known values are relevant.
-    Enumeration enu = trainInstances.enumerateInstances();
     i = 0;
-    while (enu.hasMoreElements()) {
-      instance = (Instance) enu.nextElement();
+    while (i < trainInstances.numInstances()) {
+      instance = instance(trainInstances, order, i);
       if (instance.isMissing(m_attIndex))
 	break;
       m_distribution.add(1,instance);
@@ -251,12 +291,12 @@ public class C45Split
     defaultEnt = infoGainCrit.oldEnt(m_distribution);
     while (next < firstMiss) {
 	  
-      if (trainInstances.instance(next-1).value(m_attIndex)+1e-5 < 
-	  trainInstances.instance(next).value(m_attIndex)) { 
+      if (instance(trainInstances, order, next-1).value(m_attIndex)+1e-5 < 
+	  instance(trainInstances, order, next).value(m_attIndex)) { 
 	
 	// Move class values for all Instances up to next 
 	// possible split point.
-	m_distribution.shiftRange(1,0,trainInstances,last,next);
+	m_distribution.shiftRange(1,0,trainInstances,order,last,next);
 	
 	// Check if enough Instances in each subset and compute
 	// values for criteria.
@@ -289,19 +329,19 @@ public class C45Split
     // best split.
     m_numSubsets = 2;
     m_splitPoint = 
-      (trainInstances.instance(splitIndex+1).value(m_attIndex)+
-       trainInstances.instance(splitIndex).value(m_attIndex))/2;
+      (instance(trainInstances, order, splitIndex+1).value(m_attIndex)+
+       instance(trainInstances, order, splitIndex).value(m_attIndex))/2;
 
     // In case we have a numerical precision problem we need to choose the
     // smaller value
-    if (m_splitPoint == trainInstances.instance(splitIndex + 1).value(m_attIndex)) {
-      m_splitPoint = trainInstances.instance(splitIndex).value(m_attIndex);
+    if (m_splitPoint == instance(trainInstances, order, splitIndex + 1).value(m_attIndex)) {
+      m_splitPoint = instance(trainInstances, order, splitIndex).value(m_attIndex);
     }
 
     // Restore distributioN for best split.
     m_distribution = new Distribution(2,trainInstances.numClasses());
-    m_distribution.addRange(0,trainInstances,0,splitIndex+1);
-    m_distribution.addRange(1,trainInstances,splitIndex+1,firstMiss);
+    m_distribution.addRange(0,trainInstances,order,0,splitIndex+1);
+    m_distribution.addRange(1,trainInstances,order,splitIndex+1,firstMiss);
 
     // Compute modified gain ratio for best split.
     m_gainRatio = gainRatioCrit.
@@ -22,6 +22,7 @@
 
 package weka.classifiers.trees.j48;
 
+import weka.classifiers.trees.CompiledTrees;
 import weka.core.Capabilities;
 import weka.core.CapabilitiesHandler;
 import weka.core.Drawable;
@@ -155,6 +156,7 @@ public class ClassifierTree
     m_localModel = m_toSelectModel.selectModel(data);
     if (m_localModel.numSubsets() > 1) {
       localInstances = m_localModel.split(data);
+      m_toSelectModel.dataSplit(data, m_localModel, localInstances);
       data = null;
       m_sons = new ClassifierTree [m_localModel.numSubsets()];
       for (int i = 0; i < m_sons.length; i++) {
@@ -195,6 +197,7 @@ public class ClassifierTree
     if (m_localModel.numSubsets() > 1) {
       localTrain = m_localModel.split(train);
       localTest = m_localModel.split(test);
+      m_toSelectModel.dataSplit(train, m_localModel, localTrain);
       train = test = null;
       m_sons = new ClassifierTree [m_localModel.numSubsets()];
       for (i=0;i<m_sons.length;i++) {
@@ -694,6 +697,98 @@ public class ClassifierTree
     return (ClassifierSplitModel)m_localModel;
   }
   
+  /**
+   * Returns the tree flattened into arrays, for fast predictions.
+   *
+   * @param useLaplace whether to use Laplace estimates
+   * @return the compiled tree
+   * @throws Exception if the tree uses a split that can't be compiled
+   */
+  public CompiledTrees compile(boolean useLaplace) throws Exception {
+
+    CompiledTrees result = new CompiledTrees(m_train, CompiledTrees.C45_TREE,
+					     false);
+    Instance missing = new Instance(m_train.numAttributes());
+    missing.setDataset(m_train);
+    compile(result, result.addTree(), useLaplace, missing);
+    result.finish();
+    return result;
+  }
+
+  /**
+   * Adds the tree to the compiled trees, below the given node. The leaves
+   * get the probabilities that getProbs() would use for a weight of 1,
+   * the children of splits the weights for missing values.
+   *
+   * @param trees the compiled trees to add to
+   * @param node the node that becomes the root of this tree
+   * @param useLaplace whether to use Laplace estimates
+   * @param missing an instance with all values missing
+   * @throws Exception if the tree uses a split that can't be compiled
+   */
+  public void compile(CompiledTrees trees, int node, boolean useLaplace,
+		      Instance missing) throws Exception {
+
+    int numClasses = missing.numClasses();
+    double[] probs = new double[numClasses];
+
+    if (m_isLeaf) {
+      if (!(m_localModel instanceof NoSplit))
+	throw new Exception("Can't compile leaves of type "
+			    + m_localModel.getClass().getName() + "!");
+      for (int j = 0; j < numClasses; j++) {
+	if (useLaplace)
+	  probs[j] = m_localModel.classProbLaplace(j, missing, -1);
+	else
+	  probs[j] = m_localModel.classProb(j, missing, -1);
+      }
+      trees.setDistribution(node, probs);
+      return;
+    }
+
+    int first;
+    if (m_localModel instanceof C45Split) {
+      C45Split split = (C45Split) m_localModel;
+      if (missing.attribute(split.attIndex()).isNominal())
+	first = trees.addChildren(node, CompiledTrees.NOMINAL,
+				  split.attIndex(), Double.NaN, m_sons.length);
+      else
+	first = trees.addChildren(node, CompiledTrees.NUMERIC_LESS_OR_EQUAL,
+				  split.attIndex(), split.splitPoint(),
+				  m_sons.length);
+    } else if (m_localModel instanceof BinC45Split) {
+      BinC45Split split = (BinC45Split) m_localModel;
+      if (missing.attribute(split.attIndex()).isNominal())
+	first = trees.addChildren(node, CompiledTrees.NOMINAL_BINARY,
+				  split.attIndex(), split.splitPoint(),
+				  m_sons.length);
+      else
+	first = trees.addChildren(node, CompiledTrees.NUMERIC_LESS_OR_EQUAL,
+				  split.attIndex(), split.splitPoint(),
+				  m_sons.length);
+    } else {
+      throw new Exception("Can't compile splits of type "
+			  + m_localModel.getClass().getName() + "!");
+    }
+
+    double[] weights = m_localModel.weights(missing);
+    for (int i = 0; i < m_sons.length; i++) {
+      trees.setWeight(first + i, weights[i]);
+      if (son(i).m_isEmpty) {
+	for (int j = 0; j < numClasses; j++) {
+	  if (useLaplace)
+	    probs[j] = m_localModel.classProbLaplace(j, missing, i);
+	  else
+	    probs[j] = m_localModel.classProb(j, missing, i);
+	}
+	trees.setDistribution(first + i, probs);
+	trees.setEmpty(first + i);
+      } else {
+	son(i).compile(trees, first + i, useLaplace, missing);
+      }
+    }
+  }
+
   /**
    * Method just exists to make program easier to read.
    */
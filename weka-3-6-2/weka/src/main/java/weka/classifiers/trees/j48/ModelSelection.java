@@ -56,4 +56,18 @@ public abstract class ModelSelection
 
     throw new Exception("Model selection method not implemented");
   }
+
+  /**
+   * Notifies the model selection that the given data has been split
+   * with the selected model, before the subtrees are built. Does 
+   * nothing by default.
+   *
+   * @param data the data that was split
+   * @param model the model used for splitting
+   * @param subsets the subsets of the data
+   * @exception Exception if something goes wrong
+   */
+  public void dataSplit(Instances data, ClassifierSplitModel model,
+			Instances [] subsets) throws Exception {
+  }
 }
@@ -25,6 +25,7 @@ package weka.clusterers;
 
 import weka.clusterers.forOPTICSAndDBScan.DataObjects.DataObject;
 import weka.clusterers.forOPTICSAndDBScan.Databases.Database;
+import weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -34,6 +35,8 @@ import weka.core.RevisionUtils;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.NearestNeighbourSearch;
 import weka.core.Capabilities.Capability;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -85,6 +88,9 @@ import java.util.Vector;
  * <pre> -D &lt;String&gt;
  *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject)</pre>
  * 
+ * <pre> -A &lt;String&gt;
+ *  search algorithm used as index by the IndexedDatabase (default = weka.core.neighboursearch.KDTree)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Matthias Schubert (schubert@dbs.ifi.lmu.de)
@@ -131,6 +137,12 @@ public class DBScan
      */
     private String database_Type = "weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase";
 
+    /**
+     * Holds the search algorithm used as index by the IndexedDatabase
+     * (default = weka.core.neighboursearch.KDTree)
+     */
+    private NearestNeighbourSearch nearestNeighbourSearch = new KDTree();
+
     /**
      * The database that is used for DBScan
      */
@@ -198,6 +210,8 @@ public class DBScan
         Instances filteredInstances = Filter.useFilter(instances, replaceMissingValues_Filter);
 
         database = databaseForName(getDatabase_Type(), filteredInstances);
+        if (database instanceof IndexedDatabase)
+            ((IndexedDatabase) database).setNearestNeighbourSearch(getNearestNeighbourSearch());
         for (int i = 0; i < database.getInstances().numInstances(); i++) {
             DataObject dataObject = dataObjectForName(getDatabase_distanceType(),
                     database.getInstances().instance(i),
@@ -326,6 +340,11 @@ public class DBScan
                         "D",
                         1,
                         "-D <String>"));
+        vector.addElement(
+                new Option("\tsearch algorithm used as index by the IndexedDatabase (default = weka.core.neighboursearch.KDTree)",
+                        "A",
+                        1,
+                        "-A <String>"));
         return vector.elements();
     }
 
@@ -349,6 +368,9 @@ public class DBScan
      * <pre> -D &lt;String&gt;
      *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject)</pre>
      * 
+     * <pre> -A &lt;String&gt;
+     *  search algorithm used as index by the IndexedDatabase (default = weka.core.neighboursearch.KDTree)</pre>
+     * 
      <!-- options-end -->
      *
      * @param options The list of options as an array of strings
@@ -374,6 +396,17 @@ public class DBScan
         if (optionString.length() != 0) {
             setDatabase_distanceType(optionString);
         }
+
+        optionString = Utils.getOption('A', options);
+        if (optionString.length() != 0) {
+            String[] searchSpec = Utils.splitOptions(optionString);
+            if (searchSpec.length == 0)
+                throw new Exception("Invalid NearestNeighbourSearch algorithm specification string.");
+            String className = searchSpec[0];
+            searchSpec[0] = "";
+            setNearestNeighbourSearch((NearestNeighbourSearch)
+                    Utils.forName(NearestNeighbourSearch.class, className, searchSpec));
+        }
     }
 
     /**
@@ -382,7 +415,7 @@ public class DBScan
      * @return String[] The list of current option settings as an array of strings
      */
     public String[] getOptions() {
-        String[] options = new String[8];
+        String[] options = new String[10];
         int current = 0;
 
         options[current++] = "-E";
@@ -393,6 +426,9 @@ public class DBScan
         options[current++] = "" + getDatabase_Type();
         options[current++] = "-D";
         options[current++] = "" + getDatabase_distanceType();
+        options[current++] = "-A";
+        options[current++] = getNearestNeighbourSearch().getClass().getName() + " "
+                + Utils.joinOptions(getNearestNeighbourSearch().getOptions());
 
         return options;
     }
@@ -524,6 +560,22 @@ public class DBScan
         this.database_Type = database_Type;
     }
 
+    /**
+     * Returns the search algorithm used as index by the IndexedDatabase
+     * @return NearestNeighbourSearch Search algorithm
+     */
+    public NearestNeighbourSearch getNearestNeighbourSearch() {
+        return nearestNeighbourSearch;
+    }
+
+    /**
+     * Sets a new search algorithm used as index by the IndexedDatabase
+     * @param nearestNeighbourSearch The new search algorithm
+     */
+    public void setNearestNeighbourSearch(NearestNeighbourSearch nearestNeighbourSearch) {
+        this.nearestNeighbourSearch = nearestNeighbourSearch;
+    }
+
     /**
      * Returns the tip text for this property
      * @return tip text for this property suitable for
@@ -560,6 +612,16 @@ public class DBScan
         return "used distance-type";
     }
 
+    /**
+     * Returns the tip text for this property
+     * @return tip text for this property suitable for
+     * displaying in the explorer/experimenter gui
+     */
+    public String nearestNeighbourSearchTipText() {
+        return "search algorithm used as index if the database is "
+            + IndexedDatabase.class.getName();
+    }
+
     /**
      * Returns a string describing this DataMining-Algorithm
      * @return String Information for the gui-explorer
@@ -633,6 +695,7 @@ public class DBScan
      * @param args Valid parameters are: 'E' epsilon (default = 0.9); 'M' minPoints (default = 6);
      *                                   'I' index-type (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase);
      *                                   'D' distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject);
+     *                                   'A' index search algorithm (default = weka.core.neighboursearch.KDTree);
      */
     public static void main(String[] args) {
         runClusterer(new DBScan(), args);
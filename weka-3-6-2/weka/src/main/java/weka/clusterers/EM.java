@@ -27,6 +27,7 @@ import weka.core.Instance;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.Option;
+import weka.core.ParallelTasks;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
@@ -78,6 +79,10 @@ import java.util.Vector;
  *  Display model in old format (good when there are many clusters)
  * </pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of threads to use.
+ *  (default 1)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 100)</pre>
@@ -152,6 +157,27 @@ public class EM
   /** display model output in old-style format */
   private boolean m_displayModelInOldFormat;
 
+  /** the number of threads to use */
+  private int m_NumExecutionSlots = 1;
+
+  /** the number of instances a thread processes in one go in the E step */
+  private final static int INSTANCES_PER_TASK = 256;
+
+  /**
+   * The outcome of running EM on a training fold for a number of clusters.
+   */
+  private static class FoldResult {
+
+    /** the log likelihood of the test fold */
+    double m_LogLikely;
+
+    /** the error of training or testing, stops the search */
+    Exception m_Error;
+
+    /** the error of initializing the model, aborts the clustering */
+    Exception m_InitError;
+  }
+
   /**
    * Returns a string describing this clusterer
    * @return a description of the evaluator suitable for
@@ -210,6 +236,11 @@ public class EM
                          + "many clusters)\n",
                          "O", 0, "-O"));
 
+    result.addElement(new Option(
+	"\tNumber of threads to use.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
     Enumeration en = super.listOptions();
     while (en.hasMoreElements())
       result.addElement(en.nextElement());
@@ -244,6 +275,10 @@ public class EM
    *  Display model in old format (good when there are many clusters)
    * </pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads to use.
+   *  (default 1)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 100)</pre>
@@ -274,6 +309,11 @@ public class EM
     }
 
     setDisplayModelInOldFormat(Utils.getFlag('O', options));
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
     
     super.setOptions(options);
   }
@@ -452,6 +492,38 @@ public class EM
   }
 
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for the E and M steps and for "
+      + "evaluating the folds when selecting the number of clusters by "
+      + "cross validation. The results don't depend on it.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Gets the current settings of EM.
    *
@@ -473,6 +545,8 @@ public class EM
     if (m_displayModelInOldFormat) {
       result.add("-O");
     }
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
 
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
@@ -633,37 +707,49 @@ public class EM
    * @param inst the training instances
    * @throws Exception if something goes wrong
    */
-  private void M (Instances inst)
+  private void M (final Instances inst)
     throws Exception {
 
-    int i, j, l;
+    int i, j;
+    double fullStdDev = Double.NaN;
 
     new_estimators();
 
-    for (i = 0; i < m_num_clusters; i++) {
-      for (j = 0; j < m_num_attribs; j++) {
-        for (l = 0; l < inst.numInstances(); l++) {
-	  Instance in = inst.instance(l);
-          if (!in.isMissing(j)) {
-            if (inst.attribute(j).isNominal()) {
-              m_model[i][j].addValue(in.value(j), 
-				     in.weight() * m_weights[l][i]);
-            }
-            else {
-              m_modelNormal[i][j][0] += (in.value(j) * in.weight() *
-					 m_weights[l][i]);
-              m_modelNormal[i][j][2] += in.weight() * m_weights[l][i];
-              m_modelNormal[i][j][1] += (in.value(j) * 
-					 in.value(j) * in.weight() * m_weights[l][i]);
+    // every cluster/attribute pair is summed up over the instances in
+    // their order by exactly one thread, hence the statistics don't depend
+    // on the number of threads
+    ParallelTasks.forEachRange(m_num_clusters * m_num_attribs, 1,
+        m_NumExecutionSlots, new ParallelTasks.RangeTask() {
+      public boolean run(int start, int end) {
+        for (int n = start; n < end; n++) {
+          int i = n / m_num_attribs;
+          int j = n % m_num_attribs;
+          boolean nominal = inst.attribute(j).isNominal();
+          for (int l = 0; l < inst.numInstances(); l++) {
+            Instance in = inst.instance(l);
+            if (!in.isMissing(j)) {
+              if (nominal) {
+                m_model[i][j].addValue(in.value(j), 
+                                       in.weight() * m_weights[l][i]);
+              }
+              else {
+                m_modelNormal[i][j][0] += (in.value(j) * in.weight() *
+                                           m_weights[l][i]);
+                m_modelNormal[i][j][2] += in.weight() * m_weights[l][i];
+                m_modelNormal[i][j][1] += (in.value(j) * 
+                                           in.value(j) * in.weight() * m_weights[l][i]);
+              }
             }
           }
         }
+        return false;
       }
-    }
+    });
     
     // calcualte mean and std deviation for numeric attributes
     for (j = 0; j < m_num_attribs; j++) {
       if (!inst.attribute(j).isNominal()) {
+        fullStdDev = Double.NaN;
         for (i = 0; i < m_num_clusters; i++) {
           if (m_modelNormal[i][j][2] <= 0) {
             m_modelNormal[i][j][1] = Double.MAX_VALUE;
@@ -690,7 +776,10 @@ public class EM
 	    m_modelNormal[i][j][1] = Math.sqrt(m_modelNormal[i][j][1]);              
 
 	    if ((m_modelNormal[i][j][1] <= minStdD)) {
-	      m_modelNormal[i][j][1] = inst.attributeStats(j).numericStats.stdDev;
+	      if (Double.isNaN(fullStdDev)) {
+		fullStdDev = inst.attributeStats(j).numericStats.stdDev;
+	      }
+	      m_modelNormal[i][j][1] = fullStdDev;
 	      if ((m_modelNormal[i][j][1] <= minStdD)) {
 		m_modelNormal[i][j][1] = minStdD;
 	      }
@@ -712,28 +801,61 @@ public class EM
 
   /**
    * The E step of the EM algorithm. Estimate cluster membership 
-   * probabilities.
+   * probabilities. The instances are processed in parallel, the log
+   * likelihood is summed up in the order of the instances.
    *
    * @param inst the training instances
    * @param change_weights whether to change the weights
    * @return the average log likelihood
    * @throws Exception if computation fails
    */
-  private double E (Instances inst, boolean change_weights)
+  private double E (final Instances inst, final boolean change_weights)
     throws Exception {
 
     double loglk = 0.0, sOW = 0.0;
+    final double[] logDensities = new double[inst.numInstances()];
 
-    for (int l = 0; l < inst.numInstances(); l++) {
+    if (inst.numInstances() > 0) {
+      final double[] logPriors = new double[m_num_clusters];
+      for (int i = 0; i < m_num_clusters; i++) {
+        if (m_priors[i] > 0) {
+          logPriors[i] = Math.log(m_priors[i]);
+        } else {
+          throw new IllegalArgumentException("Cluster empty!");
+        }
+      }
 
-      Instance in = inst.instance(l);
+      ParallelTasks.forEachRange(inst.numInstances(), INSTANCES_PER_TASK,
+          m_NumExecutionSlots, new ParallelTasks.RangeTask() {
+        public boolean run(int start, int end) throws Exception {
+          for (int l = start; l < end; l++) {
+            // same as logDensityForInstance() and distributionForInstance()
+            double[] a = logDensityPerCluster(inst.instance(l));
+            for (int i = 0; i < a.length; i++) {
+              a[i] += logPriors[i];
+            }
+            double max = a[Utils.maxIndex(a)];
+            double sum = 0.0;
+            for (int i = 0; i < a.length; i++) {
+              a[i] = Math.exp(a[i] - max);
+              sum += a[i];
+            }
+            logDensities[l] = max + Math.log(sum);
 
-      loglk += in.weight() * logDensityForInstance(in);
-      sOW += in.weight();
+            if (change_weights) {
+              Utils.normalize(a, sum);
+              m_weights[l] = a;
+            }
+          }
+          return false;
+        }
+      });
+    }
 
-      if (change_weights) {
-	m_weights[l] = distributionForInstance(in);
-      }
+    for (int l = 0; l < inst.numInstances(); l++) {
+      Instance in = inst.instance(l);
+      loglk += in.weight() * logDensities[l];
+      sOW += in.weight();
     }
     
     // reestimate priors
@@ -766,6 +888,7 @@ public class EM
     m_num_clusters = -1;
     m_initialNumClusters = -1;
     m_verbose = false;
+    m_NumExecutionSlots = 1;
   }
 
   /**
@@ -1070,63 +1193,52 @@ public class EM
     m_num_clusters = 1;
     int num_clusters = m_num_clusters;
     int i;
-    Random cvr;
-    Instances trainCopy;
     int numFolds = (m_theInstances.numInstances() < 10) 
       ? m_theInstances.numInstances() 
       : 10;
 
-    boolean ok = true;
-    int seed = getSeed();
-    int restartCount = 0;
+    // the folds are the same for every number of clusters
+    Random cvr = new Random(getSeed());
+    Instances trainCopy = new Instances(m_theInstances);
+    trainCopy.randomize(cvr);
+    Instances[] cvTrain = new Instances[numFolds];
+    Instances[] cvTest = new Instances[numFolds];
+    for (i = 0; i < numFolds; i++) {
+      cvTrain[i] = trainCopy.trainCV(numFolds, i, cvr);
+      cvTest[i] = trainCopy.testCV(numFolds, i);
+    }
+
+    // the folds are evaluated concurrently, and if there are more threads
+    // than folds the following numbers of clusters as well
+    int numCandidates = Math.max(1, m_NumExecutionSlots / numFolds);
+    int firstCandidate = 0;
+    FoldResult[][] results = null;
+
     CLUSTER_SEARCH: while (CVincreased) {
       // theInstances.stratify(10);
         
       CVincreased = false;
-      cvr = new Random(getSeed());
-      trainCopy = new Instances(m_theInstances);
-      trainCopy.randomize(cvr);
+      if ((results == null) 
+          || (num_clusters >= firstCandidate + results.length)) {
+        firstCandidate = num_clusters;
+        results = evaluateFolds(firstCandidate, numCandidates, 
+                                cvTrain, cvTest);
+      }
       templl = 0.0;
       for (i = 0; i < numFolds; i++) {
-	Instances cvTrain = trainCopy.trainCV(numFolds, i, cvr);
-	if (num_clusters > cvTrain.numInstances()) {
+	if (num_clusters > cvTrain[i].numInstances()) {
 	  break CLUSTER_SEARCH;
 	}
-	Instances cvTest = trainCopy.testCV(numFolds, i);
-	m_rr = new Random(seed);
-        for (int z=0; z<10; z++) m_rr.nextDouble();
-	m_num_clusters = num_clusters;
-	EM_Init(cvTrain);
-	try {
-	  iterate(cvTrain, false);
-	} catch (Exception ex) {
+	FoldResult result = results[num_clusters - firstCandidate][i];
+	if (result.m_InitError != null) {
+	  throw result.m_InitError;
+	}
+	if (result.m_Error != null) {
 	  // catch any problems - i.e. empty clusters occuring
-	  ex.printStackTrace();
-          //          System.err.println("Restarting after CV training failure ("+num_clusters+" clusters");
-          seed++;
-          restartCount++;
-          ok = false;
-          if (restartCount > 5) {
-            break CLUSTER_SEARCH;
-          }
-	  break;
+	  result.m_Error.printStackTrace();
+	  break CLUSTER_SEARCH;
 	}
-        try {
-          tll = E(cvTest, false);
-        } catch (Exception ex) {
-          // catch any problems - i.e. empty clusters occuring
-          //          ex.printStackTrace();
-          ex.printStackTrace();
-          //          System.err.println("Restarting after CV testing failure ("+num_clusters+" clusters");
-          //          throw new Exception(ex); 
-          seed++;
-          restartCount++;
-          ok = false;
-          if (restartCount > 5) {
-            break CLUSTER_SEARCH;
-          }
-          break;
-        }
+	tll = result.m_LogLikely;
 
 	if (m_verbose) {
 	  System.out.println("# clust: " + num_clusters + " Fold: " + i 
@@ -1135,26 +1247,22 @@ public class EM
 	templl += tll;
       }
 
-      if (ok) {
-        restartCount = 0;
-        seed = getSeed();
-        templl /= (double)numFolds;
+      templl /= (double)numFolds;
         
-        if (m_verbose) {
-          System.out.println("===================================" 
-                             + "==============\n# clust: " 
-                             + num_clusters 
-                             + " Mean Loglikely: " 
-                             + templl 
-                             + "\n================================" 
-                             + "=================");
-        }
+      if (m_verbose) {
+        System.out.println("===================================" 
+                           + "==============\n# clust: " 
+                           + num_clusters 
+                           + " Mean Loglikely: " 
+                           + templl 
+                           + "\n================================" 
+                           + "=================");
+      }
         
-        if (templl > CVLogLikely) {
-          CVLogLikely = templl;
-          CVincreased = true;
-          num_clusters++;
-        }
+      if (templl > CVLogLikely) {
+        CVLogLikely = templl;
+        CVincreased = true;
+        num_clusters++;
       }
     }
 
@@ -1165,6 +1273,88 @@ public class EM
     m_num_clusters = num_clusters - 1;
   }
 
+  /**
+   * Runs EM on the training folds and computes the log likelihood of the
+   * test folds, for the given range of numbers of clusters. All the runs
+   * are independent of each other and are distributed over the threads.
+   * No result is computed for a fold that has fewer instances than
+   * clusters.
+   *
+   * @param firstCandidate the first number of clusters to evaluate
+   * @param numCandidates how many numbers of clusters to evaluate
+   * @param cvTrain the training folds
+   * @param cvTest the test folds
+   * @return the results, indexed by number of clusters (relative to the
+   * first one) and fold
+   * @throws Exception if the evaluation fails
+   */
+  private FoldResult[][] evaluateFolds (final int firstCandidate, 
+                                        int numCandidates,
+                                        final Instances[] cvTrain, 
+                                        final Instances[] cvTest)
+    throws Exception {
+
+    final int numFolds = cvTrain.length;
+    final FoldResult[][] results = new FoldResult[numCandidates][numFolds];
+    ParallelTasks.forEachRange(numCandidates * numFolds, 1,
+        m_NumExecutionSlots, new ParallelTasks.RangeTask() {
+      public boolean run(int start, int end) {
+        for (int n = start; n < end; n++) {
+          int num_clusters = firstCandidate + n / numFolds;
+          int fold = n % numFolds;
+          if (num_clusters > cvTrain[fold].numInstances()) {
+            continue;
+          }
+
+          FoldResult result = new FoldResult();
+          results[n / numFolds][fold] = result;
+          EM em = foldCopy();
+          em.m_num_clusters = num_clusters;
+          try {
+            em.EM_Init(cvTrain[fold]);
+          } catch (Exception ex) {
+            result.m_InitError = ex;
+            continue;
+          }
+          try {
+            em.iterate(cvTrain[fold], false);
+            result.m_LogLikely = em.E(cvTest[fold], false);
+          } catch (Exception ex) {
+            result.m_Error = ex;
+          }
+        }
+        return false;
+      }
+    });
+
+    return results;
+  }
+
+  /**
+   * Returns a single-threaded copy of this clusterer that shares the
+   * training data and settings, but has its own model and random number
+   * generator, for running EM on a fold of the data.
+   *
+   * @return the copy
+   */
+  private EM foldCopy () {
+    EM result = new EM();
+    result.setSeed(getSeed());
+    result.m_theInstances = m_theInstances;
+    result.m_num_instances = m_num_instances;
+    result.m_num_attribs = m_num_attribs;
+    result.m_max_iterations = m_max_iterations;
+    result.m_minStdDev = m_minStdDev;
+    result.m_minStdDevPerAtt = m_minStdDevPerAtt;
+    result.m_minValues = m_minValues;
+    result.m_maxValues = m_maxValues;
+
+    result.m_rr = new Random(getSeed());
+    for (int z=0; z<10; z++) result.m_rr.nextDouble();
+
+    return result;
+  }
+
 
   /**
    * Returns the number of clusters.
@@ -1282,12 +1472,25 @@ public class EM
    */
   public double[] logDensityPerClusterForInstance(Instance inst) throws Exception {
 
+    m_replaceMissing.input(inst);
+    inst = m_replaceMissing.output();
+
+    return logDensityPerCluster(inst);
+  }
+
+  /**
+   * Computes the log of the conditional density (per cluster) for an
+   * instance that has already been passed through the missing values
+   * filter. Doesn't modify any state and can be called by several threads.
+   * 
+   * @param inst the filtered instance to compute the density for
+   * @return an array containing the estimated densities
+   */
+  private double[] logDensityPerCluster(Instance inst) {
+
     int i, j;
     double logprob;
     double[] wghts = new double[m_num_clusters];
-    
-    m_replaceMissing.input(inst);
-    inst = m_replaceMissing.output();
 
     for (i = 0; i < m_num_clusters; i++) {
       //      System.err.println("Cluster : "+i);
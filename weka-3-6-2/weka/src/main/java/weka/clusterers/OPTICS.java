@@ -25,6 +25,7 @@ package weka.clusterers;
 
 import weka.clusterers.forOPTICSAndDBScan.DataObjects.DataObject;
 import weka.clusterers.forOPTICSAndDBScan.Databases.Database;
+import weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase;
 import weka.clusterers.forOPTICSAndDBScan.OPTICS_GUI.OPTICS_Visualizer;
 import weka.clusterers.forOPTICSAndDBScan.OPTICS_GUI.SERObject;
 import weka.clusterers.forOPTICSAndDBScan.Utils.EpsilonRange_ListElement;
@@ -40,6 +41,8 @@ import weka.core.RevisionUtils;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.NearestNeighbourSearch;
 import weka.core.Capabilities.Capability;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -97,6 +100,9 @@ import java.util.Vector;
  * <pre> -D &lt;String&gt;
  *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject)</pre>
  * 
+ * <pre> -A &lt;String&gt;
+ *  search algorithm used as index by the IndexedDatabase (default = weka.core.neighboursearch.KDTree)</pre>
+ * 
  * <pre> -F
  *  write results to OPTICS_#TimeStamp#.TXT - File</pre>
  * 
@@ -156,6 +162,12 @@ public class OPTICS
      */
     private String database_Type = "weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase";
 
+    /**
+     * Holds the search algorithm used as index by the IndexedDatabase
+     * (default = weka.core.neighboursearch.KDTree)
+     */
+    private NearestNeighbourSearch nearestNeighbourSearch = new KDTree();
+
     /**
      * The database that is used for OPTICS
      */
@@ -228,6 +240,8 @@ public class OPTICS
         Instances filteredInstances = Filter.useFilter(instances, replaceMissingValues_Filter);
 
         database = databaseForName(getDatabase_Type(), filteredInstances);
+        if (database instanceof IndexedDatabase)
+            ((IndexedDatabase) database).setNearestNeighbourSearch(getNearestNeighbourSearch());
         for (int i = 0; i < database.getInstances().numInstances(); i++) {
             DataObject dataObject = dataObjectForName(getDatabase_distanceType(),
                     database.getInstances().instance(i),
@@ -422,6 +436,11 @@ public class OPTICS
         	"\tdistance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject)",
         	"D", 1, "-D <String>"));
         
+        vector.addElement(
+            new Option(
+        	"\tsearch algorithm used as index by the IndexedDatabase (default = weka.core.neighboursearch.KDTree)",
+        	"A", 1, "-A <String>"));
+        
         vector.addElement(
             new Option(
         	"\twrite results to OPTICS_#TimeStamp#.TXT - File",
@@ -464,6 +483,9 @@ public class OPTICS
      * <pre> -D &lt;String&gt;
      *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject)</pre>
      * 
+     * <pre> -A &lt;String&gt;
+     *  search algorithm used as index by the IndexedDatabase (default = weka.core.neighboursearch.KDTree)</pre>
+     * 
      * <pre> -F
      *  write results to OPTICS_#TimeStamp#.TXT - File</pre>
      * 
@@ -507,6 +529,19 @@ public class OPTICS
         else
             setDatabase_distanceType(weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject.class.getName());
 
+        optionString = Utils.getOption('A', options);
+        if (optionString.length() != 0) {
+            String[] searchSpec = Utils.splitOptions(optionString);
+            if (searchSpec.length == 0)
+                throw new Exception("Invalid NearestNeighbourSearch algorithm specification string.");
+            String className = searchSpec[0];
+            searchSpec[0] = "";
+            setNearestNeighbourSearch((NearestNeighbourSearch)
+                    Utils.forName(NearestNeighbourSearch.class, className, searchSpec));
+        }
+        else
+            setNearestNeighbourSearch(new KDTree());
+
         setWriteOPTICSresults(Utils.getFlag('F', options));
 
         setShowGUI(!Utils.getFlag("no-gui", options));
@@ -540,6 +575,10 @@ public class OPTICS
         result.add("-D");
         result.add("" + getDatabase_distanceType());
 
+        result.add("-A");
+        result.add(getNearestNeighbourSearch().getClass().getName() + " "
+            + Utils.joinOptions(getNearestNeighbourSearch().getOptions()));
+
         if (getWriteOPTICSresults())
           result.add("-F");
 
@@ -679,6 +718,22 @@ public class OPTICS
         this.database_Type = database_Type;
     }
 
+    /**
+     * Returns the search algorithm used as index by the IndexedDatabase
+     * @return NearestNeighbourSearch Search algorithm
+     */
+    public NearestNeighbourSearch getNearestNeighbourSearch() {
+        return nearestNeighbourSearch;
+    }
+
+    /**
+     * Sets a new search algorithm used as index by the IndexedDatabase
+     * @param nearestNeighbourSearch The new search algorithm
+     */
+    public void setNearestNeighbourSearch(NearestNeighbourSearch nearestNeighbourSearch) {
+        this.nearestNeighbourSearch = nearestNeighbourSearch;
+    }
+
     /**
      * Returns the flag for writing actions
      * @return writeOPTICSresults (flag)
@@ -780,6 +835,16 @@ public class OPTICS
         return "used distance-type";
     }
 
+    /**
+     * Returns the tip text for this property
+     * @return tip text for this property suitable for
+     * displaying in the explorer/experimenter gui
+     */
+    public String nearestNeighbourSearchTipText() {
+        return "search algorithm used as index if the database is "
+            + IndexedDatabase.class.getName();
+    }
+
     /**
      * Returns the tip text for this property
      * @return tip text for this property suitable for
@@ -899,6 +964,7 @@ public class OPTICS
      * @param args Valid parameters are: 'E' epsilon (default = 0.9); 'M' minPoints (default = 6);
      *                                   'I' index-type (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase);
      *                                   'D' distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject);
+     *                                   'A' index search algorithm (default = weka.core.neighboursearch.KDTree);
      *                                   'F' write results to OPTICS_#TimeStamp#.TXT - File
      */
     public static void main(String[] args) {
@@ -29,7 +29,9 @@ import weka.core.EuclideanDistance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.ManhattanDistance;
+import weka.core.NormalizableDistance;
 import weka.core.Option;
+import weka.core.ParallelTasks;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
@@ -77,6 +79,14 @@ import java.util.Vector;
  * <pre> -O 
  *  Preserve order of instances. </pre>
  * 
+ * <pre> -fast
+ *  Use the triangle inequality to skip distance calculations.
+ * </pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of threads to use.
+ *  (default 1)</pre>
+ * 
  * 
  <!-- options-end -->
  *
@@ -173,6 +183,63 @@ public class SimpleKMeans
    * Assignments obtained
    */
   protected int[] m_Assignments = null;
+
+  /**
+   * Use the triangle inequality to skip distance calculations
+   */
+  protected boolean m_FastDistanceCalc = false;
+
+  /**
+   * The number of threads to use
+   */
+  protected int m_NumExecutionSlots = 1;
+
+  /** the number of instances a thread processes in one go */
+  public final static int INSTANCES_PER_TASK = 256;
+
+  /** the number of attributes from which on a lower bound per cluster 
+   * (Elkan) instead of a single one (Hamerly) is kept */
+  public final static int MIN_ATTRIBUTES_FOR_ELKAN = 20;
+
+  /** the maximum number of lower bounds kept for Elkan's algorithm */
+  public final static int MAX_ELKAN_BOUNDS = 1 << 24;
+
+  /**
+   * Bounds on the distances between the instances and the centroids as in
+   * Elkan's and Hamerly's algorithms. Since the distance function is a
+   * metric, the distance of an instance to a centroid is at least the
+   * lower bound and at least the distance between the centroids minus the
+   * distance of the instance to its own centroid. Hence centroids whose
+   * bounds exceed the distance of the instance to its own centroid can be
+   * skipped.
+   */
+  protected static class DistanceBounds {
+
+    /** the number of lower bounds per instance: one per cluster (Elkan) or 
+     * a single one for all other clusters (Hamerly) */
+    protected int m_NumLower;
+
+    /** upper bound of the distance of each instance to its centroid */
+    protected double[] m_Upper;
+
+    /** the lower bounds, numLower per instance */
+    protected double[] m_Lower;
+
+    /** the distances between the centroids */
+    protected double[][] m_CentroidDistances;
+
+    /** half the distance of each centroid to the closest other one */
+    protected double[] m_Half;
+
+    /** how far each centroid moved in the last iteration */
+    protected double[] m_Shift;
+
+    /** the largest shift */
+    protected double m_MaxShift;
+
+    /** whether the bounds hold for the current centroids */
+    protected boolean m_Valid;
+  }
 	
   /**
    * the default constructor
@@ -309,34 +376,68 @@ public class SimpleKMeans
     m_squaredErrors = new double [m_NumClusters];
     m_ClusterNominalCounts = new int [m_NumClusters][instances.numAttributes()][0];
     m_ClusterMissingCounts = new int[m_NumClusters][instances.numAttributes()];
+    // the distance function must be fully initialized before it gets used
+    // by several threads
+    if (m_DistanceFunction instanceof NormalizableDistance)
+      ((NormalizableDistance) m_DistanceFunction).getRanges();
+    DistanceBounds bounds = null;
+    if (m_FastDistanceCalc && canUseBounds(instances)) {
+      bounds = new DistanceBounds();
+      if ((instances.numAttributes() >= MIN_ATTRIBUTES_FOR_ELKAN)
+	  && ((long) instances.numInstances() * m_NumClusters <= MAX_ELKAN_BOUNDS))
+	bounds.m_NumLower = m_NumClusters;
+      else
+	bounds.m_NumLower = 1;
+    }
+    Instances previousCentroids = null;
+    
     while (!converged) {
       emptyClusterCount = 0;
       m_Iterations++;
       converged = true;
-      for (i = 0; i < instances.numInstances(); i++) {
-	Instance toCluster = instances.instance(i);
-	int newC = clusterProcessedInstance(toCluster, true);
-	if (newC != clusterAssignments[i]) {
-	  converged = false;
-	}
-	clusterAssignments[i] = newC;
+      if ((bounds == null) && (m_NumExecutionSlots <= 1)) {
+        for (i = 0; i < instances.numInstances(); i++) {
+          Instance toCluster = instances.instance(i);
+          int newC = clusterProcessedInstance(toCluster, true);
+          if (newC != clusterAssignments[i]) {
+            converged = false;
+          }
+          clusterAssignments[i] = newC;
+        }
+      } else {
+        if (assignInstances(instances, clusterAssignments, bounds, previousCentroids)) {
+          converged = false;
+        }
+        // the errors of the last iteration are the ones that are kept
+        if (converged || (m_Iterations == m_MaxIterations)) {
+          addSquaredErrors(instances, clusterAssignments);
+        }
       }
       
       // update centroids
+      previousCentroids = m_ClusterCentroids;
       m_ClusterCentroids = new Instances(instances, m_NumClusters);
-      for (i = 0; i < m_NumClusters; i++) {
-	tempI[i] = new Instances(instances, 0);
-      }
-      for (i = 0; i < instances.numInstances(); i++) {
-	tempI[clusterAssignments[i]].add(instances.instance(i));
+      if (m_NumExecutionSlots <= 1) {
+        for (i = 0; i < m_NumClusters; i++) {
+          tempI[i] = new Instances(instances, 0);
+        }
+        for (i = 0; i < instances.numInstances(); i++) {
+          tempI[clusterAssignments[i]].add(instances.instance(i));
+        }
+        for (i = 0; i < m_NumClusters; i++) {
+          if (tempI[i].numInstances() == 0) {
+            // empty cluster
+            emptyClusterCount++;
+          } else {
+            moveCentroid( i, tempI[i], true  );
+          }
+        }
+      } else {
+        emptyClusterCount = moveCentroids(instances, clusterAssignments, tempI);
       }
-      for (i = 0; i < m_NumClusters; i++) {
-	if (tempI[i].numInstances() == 0) {
-	  // empty cluster
-	  emptyClusterCount++;
-	} else {
-          moveCentroid( i, tempI[i], true  );					
-	}
+      if ((bounds != null) && (emptyClusterCount > 0)) {
+        // the clusters get renumbered
+        bounds.m_Valid = false;
       }
 
       if (emptyClusterCount > 0) {
@@ -394,6 +495,22 @@ public class SimpleKMeans
    * @return the centroid coordinates
    */
   protected double[] moveCentroid(int centroidIndex, Instances members, boolean updateClusterInfo){
+    double [] vals = computeCentroid(centroidIndex, members, updateClusterInfo);
+    if(updateClusterInfo)
+      m_ClusterCentroids.add(new Instance(1.0, vals));
+    return vals;
+  }
+
+  /**
+   * Computes the coordinates of a centroid, as moveCentroid does, without
+   * adding it to the centroids. Only modifies the m_Cluster arrays at the
+   * given index, hence can be run for different clusters concurrently.
+   * @param centroidIndex index of the centroid which the coordinates will be computed
+   * @param members the objects that are assigned to the cluster of this centroid
+   * @param updateClusterInfo if the method is supposed to update the m_Cluster arrays
+   * @return the centroid coordinates
+   */
+  protected double[] computeCentroid(int centroidIndex, Instances members, boolean updateClusterInfo){
     double [] vals = new double[members.numAttributes()];
 		
     //used only for Manhattan Distance
@@ -435,8 +552,22 @@ public class SimpleKMeans
       }	
 			
       if(updateClusterInfo){
-        m_ClusterMissingCounts[centroidIndex][j] = members.attributeStats(j).missingCount;
-        m_ClusterNominalCounts[centroidIndex][j] = members.attributeStats(j).nominalCounts;
+        // same counts as attributeStats(j), without sorting the values
+        int[] nominalCounts = null;
+        if (members.attribute(j).isNominal()) {
+          nominalCounts = new int[members.attribute(j).numValues()];
+        }
+        int missingCount = 0;
+        for (int i = 0; i < members.numInstances(); i++) {
+          Instance member = members.instance(i);
+          if (member.isMissing(j)) {
+            missingCount++;
+          } else if (nominalCounts != null) {
+            nominalCounts[(int) member.value(j)]++;
+          }
+        }
+        m_ClusterMissingCounts[centroidIndex][j] = missingCount;
+        m_ClusterNominalCounts[centroidIndex][j] = nominalCounts;
         if (members.attribute(j).isNominal()) {
           if (m_ClusterMissingCounts[centroidIndex][j] >  
               m_ClusterNominalCounts[centroidIndex][j][Utils.maxIndex(m_ClusterNominalCounts[centroidIndex][j])]) 
@@ -450,10 +581,350 @@ public class SimpleKMeans
         }
       }
     }
-    if(updateClusterInfo)
-      m_ClusterCentroids.add(new Instance(1.0, vals));
     return vals;
   }
+
+  /**
+   * Moves all centroids using several threads, one cluster per task. The
+   * members of a cluster are collected in the order of the instances, so
+   * the centroids are the same as with a single thread.
+   *
+   * @param instances the instances
+   * @param assignments the cluster of each instance
+   * @param members receives the members of each cluster
+   * @return the number of empty clusters
+   * @throws Exception if a thread fails
+   */
+  protected int moveCentroids(final Instances instances, final int[] assignments,
+                              final Instances[] members) throws Exception {
+    final double[][] vals = new double[m_NumClusters][];
+
+    ParallelTasks.forEachRange(m_NumClusters, 1,
+        m_NumExecutionSlots, new ParallelTasks.RangeTask() {
+      public boolean run(int start, int end) {
+        for (int c = start; c < end; c++) {
+          members[c] = new Instances(instances, 0);
+          for (int i = 0; i < assignments.length; i++) {
+            if (assignments[i] == c) {
+              members[c].add(instances.instance(i));
+            }
+          }
+          if (members[c].numInstances() > 0) {
+            vals[c] = computeCentroid(c, members[c], true);
+          }
+        }
+        return false;
+      }
+    });
+
+    int emptyClusterCount = 0;
+    for (int c = 0; c < m_NumClusters; c++) {
+      if (vals[c] == null) {
+        emptyClusterCount++;
+      } else {
+        m_ClusterCentroids.add(new Instance(1.0, vals[c]));
+      }
+    }
+
+    return emptyClusterCount;
+  }
+
+  /**
+   * Returns whether bounds can be used to skip distance calculations: the
+   * distance function has to be a metric, which the Euclidean and 
+   * Manhattan distance are for data without missing values. Also the 
+   * distances must stay below the initial minimum distance used by 
+   * clusterProcessedInstance, so the bounds find the same clusters.
+   *
+   * @param instances the instances to cluster, m_FullMissingCounts must
+   * have been determined for them
+   * @return true if bounds can be used
+   * @throws Exception if the ranges of the distance function are not set
+   */
+  protected boolean canUseBounds(Instances instances) throws Exception {
+    if ((m_DistanceFunction.getClass() != EuclideanDistance.class)
+        && (m_DistanceFunction.getClass() != ManhattanDistance.class))
+      return false;
+
+    for (int j = 0; j < instances.numAttributes(); j++) {
+      if (m_FullMissingCounts[j] > 0)
+        return false;
+    }
+
+    // the Manhattan distance between the corners of the ranges is larger
+    // than any distance
+    NormalizableDistance dist = (NormalizableDistance) m_DistanceFunction;
+    if (dist.getDontNormalize()) {
+      double[][] ranges = dist.getRanges();
+      double maxDist = instances.numAttributes();
+      for (int j = 0; j < ranges.length; j++) {
+        maxDist += ranges[j][NormalizableDistance.R_WIDTH];
+      }
+      if (!(maxDist < Integer.MAX_VALUE))
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns whether a lower bound is larger than a distance, with a
+   * margin for rounding errors. Only then can the bound be used to skip a
+   * centroid, since ties are resolved in favour of the first centroid.
+   *
+   * @param bound the lower bound
+   * @param dist the distance
+   * @return true if the bound is clearly larger
+   */
+  protected static boolean exceeds(double bound, double dist) {
+    return bound > dist + 1e-10 * (1 + dist);
+  }
+
+  /**
+   * Determines the closest centroid in the same way as 
+   * clusterProcessedInstance, without updating the errors.
+   *
+   * @param instance the instance to assign a cluster to
+   * @param dists receives the distances to all centroids, may be null
+   * @return the closest centroid
+   */
+  protected int closestCentroid(Instance instance, double[] dists) {
+    double minDist = Integer.MAX_VALUE;
+    int bestCluster = 0;
+    for (int i = 0; i < m_NumClusters; i++) {
+      double dist = m_DistanceFunction.distance(instance, m_ClusterCentroids.instance(i));
+      if (dists != null) {
+        dists[i] = dist;
+      }
+      if (dist < minDist) {
+	minDist = dist;
+	bestCluster = i;
+      }
+    }
+    return bestCluster;
+  }
+
+  /**
+   * Assigns the instances to their closest centroids, using several
+   * threads and the bounds if given. Gives the same assignments as 
+   * clusterProcessedInstance, but doesn't update the errors.
+   *
+   * @param instances the instances
+   * @param assignments the current assignments, get updated
+   * @param bounds the distance bounds, null if not used
+   * @param previousCentroids the centroids of the last iteration
+   * @return true if any assignment changed
+   * @throws Exception if a thread fails
+   */
+  protected boolean assignInstances(final Instances instances, final int[] assignments,
+                                    final DistanceBounds bounds, Instances previousCentroids)
+    throws Exception {
+
+    final int numClusters = m_NumClusters;
+
+    if (bounds != null) {
+      if (bounds.m_Valid && (previousCentroids != null)
+          && (previousCentroids.numInstances() == numClusters)) {
+        bounds.m_MaxShift = 0;
+        for (int c = 0; c < numClusters; c++) {
+          bounds.m_Shift[c] = m_DistanceFunction.distance(
+              previousCentroids.instance(c), m_ClusterCentroids.instance(c));
+          if (bounds.m_Shift[c] > bounds.m_MaxShift)
+            bounds.m_MaxShift = bounds.m_Shift[c];
+        }
+      }
+      else {
+        bounds.m_Valid = false;
+        if (bounds.m_NumLower > 1)
+          bounds.m_NumLower = numClusters;
+        bounds.m_Upper = new double[instances.numInstances()];
+        bounds.m_Lower = new double[instances.numInstances() * bounds.m_NumLower];
+        bounds.m_Shift = new double[numClusters];
+      }
+
+      bounds.m_CentroidDistances = new double[numClusters][numClusters];
+      bounds.m_Half = new double[numClusters];
+      for (int c = 0; c < numClusters; c++) {
+        bounds.m_Half[c] = Double.POSITIVE_INFINITY;
+      }
+      for (int c = 0; c < numClusters; c++) {
+        for (int d = c + 1; d < numClusters; d++) {
+          double dist = m_DistanceFunction.distance(
+              m_ClusterCentroids.instance(c), m_ClusterCentroids.instance(d));
+          bounds.m_CentroidDistances[c][d] = dist;
+          bounds.m_CentroidDistances[d][c] = dist;
+          if (dist / 2 < bounds.m_Half[c])
+            bounds.m_Half[c] = dist / 2;
+          if (dist / 2 < bounds.m_Half[d])
+            bounds.m_Half[d] = dist / 2;
+        }
+      }
+    }
+
+    boolean changed = ParallelTasks.forEachRange(instances.numInstances(),
+        INSTANCES_PER_TASK, m_NumExecutionSlots, new ParallelTasks.RangeTask() {
+      public boolean run(int start, int end) {
+        boolean result = false;
+        double[] dists = (bounds == null) ? null : new double[numClusters];
+        for (int i = start; i < end; i++) {
+          int newC;
+          if (bounds == null)
+            newC = closestCentroid(instances.instance(i), null);
+          else if (!bounds.m_Valid)
+            newC = initBounds(i, instances.instance(i), bounds, dists);
+          else if (bounds.m_NumLower > 1)
+            newC = elkan(i, instances.instance(i), assignments[i], bounds);
+          else
+            newC = hamerly(i, instances.instance(i), assignments[i], bounds, dists);
+          if (newC != assignments[i]) {
+            result = true;
+          }
+          assignments[i] = newC;
+        }
+        return result;
+      }
+    });
+
+    if (bounds != null)
+      bounds.m_Valid = true;
+
+    return changed;
+  }
+
+  /**
+   * Assigns an instance by computing all distances and initializes its
+   * bounds.
+   *
+   * @param i the index of the instance
+   * @param instance the instance
+   * @param bounds the bounds
+   * @param dists buffer for the distances
+   * @return the closest centroid
+   */
+  protected int initBounds(int i, Instance instance, DistanceBounds bounds, double[] dists) {
+    int best = closestCentroid(instance, dists);
+    bounds.m_Upper[i] = dists[best];
+    if (bounds.m_NumLower > 1) {
+      System.arraycopy(dists, 0, bounds.m_Lower, i * bounds.m_NumLower, dists.length);
+    } else {
+      double second = Double.POSITIVE_INFINITY;
+      for (int c = 0; c < dists.length; c++) {
+        if ((c != best) && (dists[c] < second))
+          second = dists[c];
+      }
+      bounds.m_Lower[i] = second;
+    }
+    return best;
+  }
+
+  /**
+   * Assigns an instance with a lower bound per centroid (Elkan).
+   *
+   * @param i the index of the instance
+   * @param instance the instance
+   * @param current the current cluster of the instance
+   * @param bounds the bounds
+   * @return the closest centroid
+   */
+  protected int elkan(int i, Instance instance, int current, DistanceBounds bounds) {
+    int numClusters = bounds.m_NumLower;
+    int offset = i * numClusters;
+    double[] lower = bounds.m_Lower;
+    double[] shift = bounds.m_Shift;
+    for (int c = 0; c < numClusters; c++) {
+      lower[offset + c] -= shift[c];
+    }
+    double upper = bounds.m_Upper[i] + shift[current];
+
+    if (!exceeds(bounds.m_Half[current], upper)) {
+      boolean tight = false;
+      for (int c = 0; c < numClusters; c++) {
+        if ((c == current)
+            || exceeds(lower[offset + c], upper)
+            || exceeds(bounds.m_CentroidDistances[current][c] / 2, upper))
+          continue;
+        if (!tight) {
+          upper = m_DistanceFunction.distance(instance, m_ClusterCentroids.instance(current));
+          lower[offset + current] = upper;
+          tight = true;
+          if (exceeds(lower[offset + c], upper)
+              || exceeds(bounds.m_CentroidDistances[current][c] / 2, upper))
+            continue;
+        }
+        double dist = m_DistanceFunction.distance(instance, m_ClusterCentroids.instance(c));
+        lower[offset + c] = dist;
+        if ((dist < upper) || ((dist == upper) && (c < current))) {
+          current = c;
+          upper = dist;
+        }
+      }
+    }
+
+    bounds.m_Upper[i] = upper;
+    return current;
+  }
+
+  /**
+   * Assigns an instance with a single lower bound for all other centroids
+   * (Hamerly).
+   *
+   * @param i the index of the instance
+   * @param instance the instance
+   * @param current the current cluster of the instance
+   * @param bounds the bounds
+   * @param dists buffer for the distances
+   * @return the closest centroid
+   */
+  protected int hamerly(int i, Instance instance, int current, DistanceBounds bounds, double[] dists) {
+    double upper = bounds.m_Upper[i] + bounds.m_Shift[current];
+    double lower = bounds.m_Lower[i] - bounds.m_MaxShift;
+    double bound = Math.max(bounds.m_Half[current], lower);
+    bounds.m_Upper[i] = upper;
+    bounds.m_Lower[i] = lower;
+
+    if (exceeds(bound, upper))
+      return current;
+    upper = m_DistanceFunction.distance(instance, m_ClusterCentroids.instance(current));
+    bounds.m_Upper[i] = upper;
+    if (exceeds(bound, upper))
+      return current;
+
+    return initBounds(i, instance, bounds, dists);
+  }
+
+  /**
+   * Adds the errors of the instances with respect to their centroids to 
+   * the squared errors, in the order of the instances as 
+   * clusterProcessedInstance does.
+   *
+   * @param instances the instances
+   * @param assignments the cluster of each instance
+   * @throws Exception if a thread fails
+   */
+  protected void addSquaredErrors(final Instances instances, final int[] assignments)
+    throws Exception {
+
+    final double[] dists = new double[instances.numInstances()];
+    ParallelTasks.forEachRange(dists.length, INSTANCES_PER_TASK,
+        m_NumExecutionSlots, new ParallelTasks.RangeTask() {
+      public boolean run(int start, int end) {
+        for (int i = start; i < end; i++) {
+          dists[i] = m_DistanceFunction.distance(
+              instances.instance(i), m_ClusterCentroids.instance(assignments[i]));
+        }
+        return false;
+      }
+    });
+
+    for (int i = 0; i < dists.length; i++) {
+      double dist = dists[i];
+      if(m_DistanceFunction instanceof EuclideanDistance){
+        //Euclidean distance to Squared Euclidean distance
+        dist *= dist;
+      }
+      m_squaredErrors[assignments[i]] += dist;
+    }
+  }
 	
   /**
    * clusters an instance that has been through the filters
@@ -546,6 +1017,15 @@ public class SimpleKMeans
     result.addElement(new Option(
                                  "\tPreserve order of instances.\n", 
                                  "O", 0, "-O"));
+
+    result.addElement(new Option(
+                                 "\tUse the triangle inequality to skip distance calculations.\n", 
+                                 "fast", 0, "-fast"));
+
+    result.addElement(new Option(
+                                 "\tNumber of threads to use.\n"
+                                 + "\t(default 1)", 
+                                 "num-slots", 1, "-num-slots <num>"));
 		
     Enumeration en = super.listOptions();
     while (en.hasMoreElements())
@@ -743,6 +1223,69 @@ public class SimpleKMeans
   }
 	
 	
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String fastDistanceCalcTipText() {
+    return "Uses bounds on the distances (as in Elkan's and Hamerly's "
+      + "algorithms) to skip distance calculations. Gives the same clusters; "
+      + "only used for the Euclidean and Manhattan distance and data "
+      + "without missing values.";
+  }
+
+  /**
+   * Sets whether to use the triangle inequality to skip distance 
+   * calculations
+   *
+   * @param value true if distance calculations are to be skipped
+   */
+  public void setFastDistanceCalc(boolean value) {
+    m_FastDistanceCalc = value;
+  }
+
+  /**
+   * Gets whether the triangle inequality is used to skip distance 
+   * calculations
+   *
+   * @return true if distance calculations are skipped
+   */
+  public boolean getFastDistanceCalc() {
+    return m_FastDistanceCalc;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for assigning the instances and "
+      + "computing the centroids. The distance function must be thread-safe.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+	
   /**
    * Parses a given list of options. <p/>
    * 
@@ -776,6 +1319,14 @@ public class SimpleKMeans
    *  Preserve order of instances.
    * </pre>
    * 
+   * <pre> -fast
+   *  Use the triangle inequality to skip distance calculations.
+   * </pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads to use.
+   *  (default 1)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -817,6 +1368,15 @@ public class SimpleKMeans
 		
     m_PreserveOrder = Utils.getFlag("O", options);
 
+    m_FastDistanceCalc = Utils.getFlag("fast", options);
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
   }
 
@@ -853,6 +1413,13 @@ public class SimpleKMeans
     if(m_PreserveOrder){
       result.add("-O");
     }
+
+    if (m_FastDistanceCalc) {
+      result.add("-fast");
+    }
+
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
 		
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
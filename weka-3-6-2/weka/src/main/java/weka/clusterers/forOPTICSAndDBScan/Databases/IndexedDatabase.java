@@ -0,0 +1,406 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    IndexedDatabase.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.clusterers.forOPTICSAndDBScan.Databases;
+
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.DataObject;
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclidianDataObject;
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.ManhattanDataObject;
+import weka.clusterers.forOPTICSAndDBScan.Utils.EpsilonRange_ListElement;
+import weka.clusterers.forOPTICSAndDBScan.Utils.PriorityQueue;
+import weka.core.Attribute;
+import weka.core.EuclideanDistance;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.NearestNeighbourSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * IndexedDatabase.java <br/>
+ * A database that answers epsilon-range and k-nearest-neighbour queries
+ * with a spatial index from weka.core.neighboursearch (KDTree, BallTree or
+ * CoverTree) instead of scanning all DataObjects.
+ * </p>
+ *
+ * The index holds a copy of the instances with the numeric attributes
+ * normalized the same way the DataObjects do it, and is searched with the
+ * unnormalized Euclidean distance. This distance equals the one of
+ * EuclidianDataObject and is a lower bound of the one of
+ * ManhattanDataObject, so a k-nearest-neighbour search in the index, with
+ * k doubled until the k-th neighbour lies beyond the range of interest,
+ * yields all candidates. The candidates are then checked with the distance
+ * of the DataObjects and visited in the order of the SequentialDatabase,
+ * hence DBScan and OPTICS produce the same clusters with either database.
+ * For other types of DataObjects and for missing values, the queries fall
+ * back to the sequential scan. <p/>
+ *
+ * The index is built with the first query after the minimum and maximum
+ * values have been set.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class IndexedDatabase
+    extends SequentialDatabase {
+
+    /** for serialization */
+    private static final long serialVersionUID = -5264531097307834626L;
+
+    /**
+     * Relative tolerance for comparing the distances of the index with
+     * those of the DataObjects, which may be rounded differently
+     */
+    protected static final double TOLERANCE = 1e-9;
+
+    /**
+     * Number of neighbours retrieved by the first search of a query
+     */
+    protected static final int INITIAL_NEIGHBOURS = 16;
+
+    /**
+     * The search algorithm to build the index with
+     */
+    private NearestNeighbourSearch nearestNeighbourSearch = new KDTree();
+
+    /**
+     * True, if the index has to be (re)built before the next query
+     */
+    private boolean indexOutdated = true;
+
+    /**
+     * True, if the DataObjects have a distance the index can be used for
+     */
+    private boolean indexUsable;
+
+    /**
+     * All the DataObjects, in the order of dataObjectIterator()
+     */
+    private DataObject[] dataObjects;
+
+    /**
+     * The normalized copy of the instances that is indexed, the class
+     * attribute holds the position of the DataObject
+     */
+    private Instances indexInstances;
+
+    // *****************************************************************************************************************
+    // constructors
+    // *****************************************************************************************************************
+
+    /**
+     * Constructs a new indexed database and holds the original instances
+     * @param instances
+     */
+    public IndexedDatabase(Instances instances) {
+        super(instances);
+    }
+
+    // *****************************************************************************************************************
+    // methods
+    // *****************************************************************************************************************
+
+    /**
+     * Sets the search algorithm used as index. Its distance function is
+     * replaced by the one matching the DataObjects.
+     * @param nearestNeighbourSearch KDTree, BallTree or CoverTree
+     */
+    public void setNearestNeighbourSearch(NearestNeighbourSearch nearestNeighbourSearch) {
+        this.nearestNeighbourSearch = nearestNeighbourSearch;
+        indexOutdated = true;
+    }
+
+    /**
+     * Returns the search algorithm used as index
+     * @return nearestNeighbourSearch
+     */
+    public NearestNeighbourSearch getNearestNeighbourSearch() {
+        return nearestNeighbourSearch;
+    }
+
+    /**
+     * Sets the minimum and maximum values for each attribute, the index
+     * is rebuilt with the next query
+     */
+    public void setMinMaxValues() {
+        super.setMinMaxValues();
+        indexOutdated = true;
+    }
+
+    /**
+     * Inserts a new dataObject into the database, the index is rebuilt
+     * with the next query
+     * @param dataObject
+     */
+    public void insert(DataObject dataObject) {
+        super.insert(dataObject);
+        indexOutdated = true;
+    }
+
+    /**
+     * Builds the index over all DataObjects, if they all have a distance
+     * supported by the index
+     */
+    private void buildIndex() {
+        indexOutdated = false;
+        indexUsable = false;
+        dataObjects = new DataObject[size()];
+        Iterator iterator = dataObjectIterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            dataObjects[i] = (DataObject) iterator.next();
+            if (!supportedByIndex(dataObjects[i])) return;
+        }
+        if (dataObjects.length == 0 || getAttributeMinValues() == null) return;
+
+        // numeric and nominal attributes are used as they are, all others are ignored
+        Instances instances = getInstances();
+        FastVector attributes = new FastVector(instances.numAttributes() + 1);
+        for (int i = 0; i < instances.numAttributes(); i++) {
+            Attribute attribute = instances.attribute(i);
+            if (attribute.type() == Attribute.NOMINAL) {
+                attributes.addElement(attribute.copy());
+            } else {
+                attributes.addElement(new Attribute(attribute.name()));
+            }
+        }
+        attributes.addElement(new Attribute("position"));
+        indexInstances = new Instances(instances.relationName(), attributes, dataObjects.length);
+        indexInstances.setClassIndex(instances.numAttributes());
+        for (int i = 0; i < dataObjects.length; i++) {
+            indexInstances.add(indexInstance(dataObjects[i].getInstance(), i));
+        }
+
+        try {
+            EuclideanDistance distanceFunction = new EuclideanDistance();
+            distanceFunction.setDontNormalize(true);
+            distanceFunction.setInstances(indexInstances);
+            nearestNeighbourSearch.setDistanceFunction(distanceFunction);
+            nearestNeighbourSearch.setInstances(indexInstances);
+            indexUsable = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests if the distance of the index is a lower bound of the distance
+     * of this DataObject, which holds for Euclidian and Manhattan
+     * DataObjects without missing values
+     * @param dataObject the DataObject to test
+     * @return true, if the index can be used for the DataObject
+     */
+    private boolean supportedByIndex(DataObject dataObject) {
+        return (dataObject instanceof EuclidianDataObject || dataObject instanceof ManhattanDataObject)
+                && !dataObject.getInstance().hasMissingValue();
+    }
+
+    /**
+     * Returns the instance in the index space: numeric attributes
+     * normalized as by the DataObjects, nominal ones unchanged and 0 for
+     * all others
+     * @param instance the original instance
+     * @param position the position of the DataObject
+     * @return the instance to index or search with
+     */
+    private Instance indexInstance(Instance instance, int position) {
+        double[] minValues = getAttributeMinValues();
+        double[] maxValues = getAttributeMaxValues();
+        double[] values = new double[indexInstances.numAttributes()];
+        for (int i = 0; i < instance.numAttributes(); i++) {
+            double value = instance.value(i);
+            switch (instance.attribute(i).type()) {
+                case Attribute.NOMINAL:
+                    values[i] = value;
+                    break;
+                case Attribute.NUMERIC:
+                    if (Double.isNaN(minValues[i]) || Utils.eq(maxValues[i], minValues[i])) {
+                        values[i] = 0;
+                    } else {
+                        values[i] = (value - minValues[i]) / (maxValues[i] - minValues[i]);
+                    }
+                    break;
+                default:
+                    values[i] = 0;
+            }
+        }
+        values[values.length - 1] = position;
+        Instance result = new Instance(1.0, values);
+        result.setDataset(indexInstances);
+        return result;
+    }
+
+    /**
+     * Returns the positions of all DataObjects that may be within
+     * maxDistance of the query object or among its k nearest neighbours,
+     * in ascending order
+     * @param k number of nearest neighbours, 0 if only the range is needed
+     * @param maxDistance the range
+     * @param queryDataObject the query object
+     * @return the positions of the candidates
+     * @throws Exception if the search fails
+     */
+    private int[] candidates(int k, double maxDistance, DataObject queryDataObject) throws Exception {
+        Instance target = indexInstance(queryDataObject.getInstance(), -1);
+        double tolerance = TOLERANCE * (1 + Math.abs(maxDistance));
+        int numNeighbours = Math.min(Math.max(2 * k, INITIAL_NEIGHBOURS), dataObjects.length);
+
+        while (true) {
+            Instances neighbours = nearestNeighbourSearch.kNearestNeighbours(target, numNeighbours);
+            double[] distances = nearestNeighbourSearch.getDistances();
+            int[] positions = new int[neighbours.numInstances()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = (int) neighbours.instance(i).classValue();
+            }
+
+            // all objects not found are at least this far away
+            double bound = 0;
+            for (int i = 0; i < distances.length; i++) {
+                bound = Math.max(bound, distances[i]);
+            }
+            boolean complete = positions.length >= dataObjects.length;
+            if (!complete && bound > maxDistance + tolerance) {
+                if (k == 0) {
+                    complete = true;
+                } else {
+                    // the k-th smallest distance of the DataObjects has to be within the bound, too
+                    double[] objectDistances = new double[positions.length];
+                    for (int i = 0; i < positions.length; i++) {
+                        objectDistances[i] = queryDataObject.distance(dataObjects[positions[i]]);
+                    }
+                    Arrays.sort(objectDistances);
+                    complete = positions.length >= k
+                            && objectDistances[k - 1] < bound - tolerance * (1 + Math.abs(bound));
+                }
+            }
+            if (complete) {
+                Arrays.sort(positions);
+                return positions;
+            }
+            numNeighbours = Math.min(2 * numNeighbours, dataObjects.length);
+        }
+    }
+
+    /**
+     * Performs an epsilon range query for this dataObject
+     * @param epsilon Specifies the range for the query
+     * @param queryDataObject The dataObject that is used as query-object for epsilon range query
+     * @return List with all the DataObjects that are within the specified range
+     */
+    public List epsilonRangeQuery(double epsilon, DataObject queryDataObject) {
+        if (indexOutdated) buildIndex();
+        if (!indexUsable || !supportedByIndex(queryDataObject))
+            return super.epsilonRangeQuery(epsilon, queryDataObject);
+
+        int[] positions;
+        try {
+            positions = candidates(0, epsilon, queryDataObject);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return super.epsilonRangeQuery(epsilon, queryDataObject);
+        }
+
+        ArrayList epsilonRange_List = new ArrayList();
+        for (int i = 0; i < positions.length; i++) {
+            DataObject dataObject = dataObjects[positions[i]];
+            double distance = queryDataObject.distance(dataObject);
+            if (distance < epsilon) {
+                epsilonRange_List.add(dataObject);
+            }
+        }
+
+        return epsilonRange_List;
+    }
+
+    /**
+     * Emits the k next-neighbours and performs an epsilon-range-query at the parallel.
+     * The returned list contains two elements:
+     * At index=0 --> list with all k next-neighbours;
+     * At index=1 --> list with all dataObjects within epsilon;
+     * The candidates are visited in the same order as by the
+     * SequentialDatabase, all other DataObjects are too far away to
+     * change the result.
+     * @param k number of next neighbours
+     * @param epsilon Specifies the range for the query
+     * @param dataObject the start object
+     * @return list with the k-next neighbours (PriorityQueueElements) and a list
+     *         with candidates from the epsilon-range-query (EpsilonRange_ListElements)
+     */
+    public List k_nextNeighbourQuery(int k, double epsilon, DataObject dataObject) {
+        if (indexOutdated) buildIndex();
+        if (!indexUsable || !supportedByIndex(dataObject) || k < 1)
+            return super.k_nextNeighbourQuery(k, epsilon, dataObject);
+
+        int[] positions;
+        try {
+            positions = candidates(k, epsilon, dataObject);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return super.k_nextNeighbourQuery(k, epsilon, dataObject);
+        }
+
+        List return_List = new ArrayList();
+        List nextNeighbours_List = new ArrayList();
+        List epsilonRange_List = new ArrayList();
+
+        PriorityQueue priorityQueue = new PriorityQueue();
+
+        for (int i = 0; i < positions.length; i++) {
+            DataObject next_dataObject = dataObjects[positions[i]];
+            double dist = dataObject.distance(next_dataObject);
+
+            if (dist <= epsilon) epsilonRange_List.add(new EpsilonRange_ListElement(dist, next_dataObject));
+
+            if (priorityQueue.size() < k) {
+                priorityQueue.add(dist, next_dataObject);
+            } else {
+                if (dist < priorityQueue.getPriority(0)) {
+                    priorityQueue.next(); //removes the highest distance
+                    priorityQueue.add(dist, next_dataObject);
+                }
+            }
+        }
+
+        while (priorityQueue.hasNext()) {
+            nextNeighbours_List.add(0, priorityQueue.next());
+        }
+
+        return_List.add(nextNeighbours_List);
+        return_List.add(epsilonRange_List);
+        return return_List;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 1.1 $");
+    }
+}
@@ -165,6 +165,20 @@ public class EuclideanDistance
     return Math.sqrt(distance(first, second, Double.POSITIVE_INFINITY, stats));
   }
   
+  /**
+   * Returns the kernel for the fast path of the distance calculation. 
+   * Derived classes don't use it, since they might override 
+   * difference(int,double,double) or updateDistance(double,double).
+   * 
+   * @return		the kernel type
+   */
+  protected int getKernel() {
+    if (getClass() == EuclideanDistance.class)
+      return KERNEL_EUCLIDEAN;
+    else
+      return KERNEL_NONE;
+  }
+  
   /**
    * Updates the current distance calculated so far with the new difference
    * between two attributes. The difference between the attributes was 
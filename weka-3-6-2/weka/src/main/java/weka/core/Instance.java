@@ -98,8 +98,13 @@ public class Instance
   //@ ensures m_Dataset == null;
   public Instance(/*@non_null@*/ Instance instance) {
     
-    m_AttValues = instance.m_AttValues;
-    m_Weight = instance.m_Weight;
+    if ((instance instanceof ColumnarInstance)
+	|| (instance instanceof MappedInstance)) {
+      m_AttValues = instance.toDoubleArray();
+    } else {
+      m_AttValues = instance.m_AttValues;
+    }
+    m_Weight = instance.weight();
     m_Dataset = null;
   }
 
@@ -754,7 +759,7 @@ public class Instance
    *
    * @param weight the weight
    */
-  public final void setWeight(double weight) {
+  public void setWeight(double weight) {
 
     m_Weight = weight;
   }
@@ -872,13 +877,13 @@ public class Instance
 
     StringBuffer text = new StringBuffer();
     
-    for (int i = 0; i < m_AttValues.length; i++) {
+    for (int i = 0; i < numAttributes(); i++) {
       if (i > 0) text.append(",");
       text.append(toString(i));
     }
 
-    if (m_Weight != 1.0) {
-      text.append(",{" + Utils.doubleToString(m_Weight, 6) + "}");
+    if (weight() != 1.0) {
+      text.append(",{" + Utils.doubleToString(weight(), 6) + "}");
     }
 
     return text.toString();
@@ -897,10 +902,10 @@ public class Instance
    *
    * @return the instance's description as a string
    */
-  protected String toStringNoWeight() {
+  public String toStringNoWeight() {
     StringBuffer text = new StringBuffer();
     
-    for (int i = 0; i < m_AttValues.length; i++) {
+    for (int i = 0; i < numValues(); i++) {
       if (i > 0) text.append(",");
       text.append(toString(i));
     }
@@ -926,7 +931,7 @@ public class Instance
      text.append("?");
    } else {
      if (m_Dataset == null) {
-       text.append(Utils.doubleToString(m_AttValues[attIndex],6));
+       text.append(Utils.doubleToString(value(attIndex),6));
      } else {
        switch (m_Dataset.attribute(attIndex).type()) {
        case Attribute.NOMINAL:
@@ -1008,7 +1013,7 @@ public class Instance
    *
    * @return the instance's weight as a double
    */
-  public final /*@pure@*/ double weight() {
+  public /*@pure@*/ double weight() {
 
     return m_Weight;
   }
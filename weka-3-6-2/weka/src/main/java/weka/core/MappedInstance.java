@@ -0,0 +1,271 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MappedInstance.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+/**
+ * A flyweight view of one row of a <code>MappedInstances</code> dataset.
+ * All reads and writes go straight to the mapped buffers of the dataset.
+ * The view is bound to the row's data, not to its index, ie. it keeps
+ * referring to the same row after the dataset has been reordered.
+ * Use <code>copy()</code> to obtain an ordinary, independent instance.
+ *
+ * @version $Revision: 1.1 $
+ * @see MappedInstances
+ */
+public class MappedInstance
+  extends Instance {
+
+  /** for serialization */
+  private static final long serialVersionUID = 4613578330478364163L;
+
+  /** the dataset that stores the values of this row. */
+  protected MappedInstances m_Store;
+
+  /** the position of the row in the buffers. */
+  protected int m_Position;
+
+  /**
+   * Creates a view of the row at the given position in the buffers.
+   * The view has access to the dataset.
+   *
+   * @param store the dataset holding the values
+   * @param position the position of the row in the buffers
+   */
+  protected MappedInstance(MappedInstances store, int position) {
+
+    m_Store    = store;
+    m_Position = position;
+    m_Dataset  = store;
+  }
+
+  /**
+   * Produces an independent, dense copy of the row. The copy has
+   * access to the same dataset as this view.
+   *
+   * @return the copy
+   */
+  public Object copy() {
+
+    Instance result = new Instance(weight(), toDoubleArray());
+    result.m_Dataset = m_Dataset;
+    return result;
+  }
+
+  /**
+   * Tests if a specific value is "missing".
+   *
+   * @param attIndex the attribute's index
+   * @return true if the value is "missing"
+   */
+  public boolean isMissing(int attIndex) {
+
+    return Double.isNaN(m_Store.m_Columns[attIndex].get(m_Position));
+  }
+
+  /**
+   * Tests if a specific value is "missing". Does
+   * the same thing as isMissing().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return true if the value is "missing"
+   */
+  public boolean isMissingSparse(int indexOfIndex) {
+
+    return isMissing(indexOfIndex);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return the number of attributes as an integer
+   */
+  public int numAttributes() {
+
+    return m_Store.m_Columns.length;
+  }
+
+  /**
+   * Returns the number of values present. Always the same
+   * as numAttributes().
+   *
+   * @return the number of values
+   */
+  public int numValues() {
+
+    return m_Store.m_Columns.length;
+  }
+
+  /**
+   * Replaces all missing values in the row with the values contained
+   * in the given array.
+   *
+   * @param array containing the means and modes
+   * @throws IllegalArgumentException if numbers of attributes are unequal
+   */
+  public void replaceMissingValues(double[] array) {
+
+    if ((array == null) || (array.length != numAttributes())) {
+      throw new IllegalArgumentException("Unequal number of attributes!");
+    }
+    for (int i = 0; i < array.length; i++) {
+      if (isMissing(i)) {
+	setValue(i, array[i]);
+      }
+    }
+  }
+
+  /**
+   * Sets a specific value in the row to the given value
+   * (internal floating-point format). The change is not written
+   * back to the file.
+   *
+   * @param attIndex the attribute's index
+   * @param value the new attribute value (If the corresponding
+   * attribute is nominal (or a string) then this is the new value's
+   * index as a double).
+   */
+  public void setValue(int attIndex, double value) {
+
+    m_Store.writableColumn(attIndex).put(m_Position, value);
+  }
+
+  /**
+   * Sets a specific value in the row to the given value
+   * (internal floating-point format). Does exactly the same
+   * thing as setValue().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @param value the new attribute value (If the corresponding
+   * attribute is nominal (or a string) then this is the new value's
+   * index as a double).
+   */
+  public void setValueSparse(int indexOfIndex, double value) {
+
+    setValue(indexOfIndex, value);
+  }
+
+  /**
+   * Sets the weight of the row. The change is not written back to
+   * the file.
+   *
+   * @param weight the weight
+   */
+  public void setWeight(double weight) {
+
+    m_Store.writableWeights().put(m_Position, weight);
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return an array containing all the attribute values of the row
+   */
+  public double[] toDoubleArray() {
+
+    double[] newValues = new double[numAttributes()];
+    for (int i = 0; i < newValues.length; i++) {
+      newValues[i] = m_Store.m_Columns[i].get(m_Position);
+    }
+    return newValues;
+  }
+
+  /**
+   * Returns the row's attribute value in internal format.
+   *
+   * @param attIndex the attribute's index
+   * @return the specified value as a double (If the corresponding
+   * attribute is nominal (or a string) then it returns the value's index as a
+   * double).
+   */
+  public double value(int attIndex) {
+
+    return m_Store.m_Columns[attIndex].get(m_Position);
+  }
+
+  /**
+   * Returns the row's attribute value in internal format.
+   * Does exactly the same thing as value().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return the specified value as a double (If the corresponding
+   * attribute is nominal (or a string) then it returns the value's index as a
+   * double).
+   */
+  public double valueSparse(int indexOfIndex) {
+
+    return m_Store.m_Columns[indexOfIndex].get(m_Position);
+  }
+
+  /**
+   * Returns the row's weight.
+   *
+   * @return the weight as a double
+   */
+  public double weight() {
+
+    return m_Store.m_Weights.get(m_Position);
+  }
+
+  /**
+   * Not supported, views always have the attributes of their dataset.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  void forceDeleteAttributeAt(int position) {
+
+    throw new UnsupportedOperationException(
+	"Can't delete attribute of a mapped view, use copy() first!");
+  }
+
+  /**
+   * Not supported, views always have the attributes of their dataset.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  void forceInsertAttributeAt(int position)  {
+
+    throw new UnsupportedOperationException(
+	"Can't insert attribute into a mapped view, use copy() first!");
+  }
+
+  /**
+   * Serializes a dense copy of the row instead of the view.
+   *
+   * @return the object to serialize
+   */
+  protected Object writeReplace() {
+
+    return copy();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
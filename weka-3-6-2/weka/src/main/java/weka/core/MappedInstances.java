@@ -0,0 +1,793 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MappedInstances.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of instances whose values live in a memory-mapped file in the
+ * binary columnar format written by <code>MappedInstancesSaver</code>.
+ * Opening such a file only deserializes the (small) header; the values
+ * are never copied onto the heap but read straight from the mapped
+ * pages, one <code>DoubleBuffer</code> per attribute. <p>
+ *
+ * File layout (all numbers little-endian):
+ * <pre>
+ * int    magic number (see MAGIC)
+ * int    format version
+ * int    number of instances
+ * int    number of attributes
+ * int    length of the header in bytes
+ * int    class index
+ * byte[] the header, ie. the empty dataset, Java-serialized
+ * byte[] padding to the next multiple of 8
+ * double[numInstances] the weights
+ * double[numInstances] the values of attribute 0
+ * ...
+ * double[numInstances] the values of attribute numAttributes - 1
+ * </pre>
+ *
+ * The file is mapped read-only: the first change made to an attribute
+ * (or to the weights) through <code>setValue</code> or
+ * <code>setWeight</code> copies that column onto the heap, changes are
+ * never written back. Reordering rows (eg.
+ * <code>randomize</code>, <code>sort</code> or <code>delete</code>)
+ * only permutes an index array. Attributes can be inserted (the new
+ * column lives on the heap) and deleted, but the number of rows is
+ * fixed: <code>add</code> is not supported, use
+ * <code>new Instances(mapped)</code> to obtain a growable copy. <p>
+ *
+ * Each attribute is mapped separately, which limits a file to
+ * 268,435,455 instances but not the total size of the file.
+ *
+ * @version $Revision: 1.1 $
+ * @see MappedInstance
+ * @see weka.core.converters.MappedInstancesLoader
+ * @see weka.core.converters.MappedInstancesSaver
+ */
+public class MappedInstances
+  extends Instances {
+
+  /** for serialization */
+  private static final long serialVersionUID = -1850012651734208235L;
+
+  /** the file extension of the binary columnar format. */
+  public final static String FILE_EXTENSION = ".bci";
+
+  /** the magic number at the start of a file ("WBCI"). */
+  public final static int MAGIC = 0x57424349;
+
+  /** the current version of the file format. */
+  public final static int VERSION = 1;
+
+  /** the number of bytes before the header. */
+  protected final static int PREAMBLE_SIZE = 24;
+
+  /** the values, one buffer per attribute. */
+  protected transient DoubleBuffer[] m_Columns;
+
+  /** the weights of the rows. */
+  protected transient DoubleBuffer m_Weights;
+
+  /** maps row indices to positions in the buffers, null while unchanged. */
+  protected int[] m_Rows;
+
+  /** the number of rows. */
+  protected int m_NumRows;
+
+  /**
+   * Maps the given file, which must be in the binary columnar format.
+   * The channel can be closed afterwards.
+   *
+   * @param channel the channel of the file to map
+   * @throws IOException if the file can't be read or is not in the
+   * binary columnar format
+   */
+  public MappedInstances(FileChannel channel) throws IOException {
+
+    this(channel, readHeader(channel));
+  }
+
+  /**
+   * Maps the data section of the given file.
+   *
+   * @param channel the file to map
+   * @param header the header read from the file
+   * @throws IOException if mapping fails
+   */
+  protected MappedInstances(FileChannel channel, Object[] header)
+    throws IOException {
+
+    super((Instances) header[0], 0);
+
+    m_NumRows = ((Integer) header[1]).intValue();
+    long offset = ((Long) header[2]).longValue();
+    long size = (long) m_NumRows * 8;
+    if (channel.size() < offset + size * (numAttributes() + 1)) {
+      throw new IOException("File is truncated!");
+    }
+    m_Weights = map(channel, offset, size);
+    m_Columns = new DoubleBuffer[numAttributes()];
+    for (int i = 0; i < m_Columns.length; i++) {
+      offset += size;
+      m_Columns[i] = map(channel, offset, size);
+    }
+  }
+
+  /**
+   * Maps a section of the file read-only.
+   *
+   * @param channel the file to map
+   * @param offset the start of the section
+   * @param size the number of bytes to map
+   * @return the section as buffer of doubles
+   * @throws IOException if mapping fails
+   */
+  protected static DoubleBuffer map(FileChannel channel, long offset,
+                                    long size) throws IOException {
+
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Too many instances for a mapped column!");
+    }
+    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer.asDoubleBuffer();
+  }
+
+  /**
+   * Returns the buffer of the given attribute for writing. A mapped
+   * buffer is copied onto the heap the first time it is written to.
+   *
+   * @param attIndex the attribute's index
+   * @return the writable buffer
+   */
+  protected DoubleBuffer writableColumn(int attIndex) {
+
+    if (m_Columns[attIndex].isReadOnly()) {
+      m_Columns[attIndex] = heapCopy(m_Columns[attIndex]);
+    }
+    return m_Columns[attIndex];
+  }
+
+  /**
+   * Returns the buffer of the weights for writing. A mapped buffer is
+   * copied onto the heap the first time it is written to.
+   *
+   * @return the writable buffer
+   */
+  protected DoubleBuffer writableWeights() {
+
+    if (m_Weights.isReadOnly()) {
+      m_Weights = heapCopy(m_Weights);
+    }
+    return m_Weights;
+  }
+
+  /**
+   * Copies a buffer onto the heap.
+   *
+   * @param buffer the buffer to copy
+   * @return the copy
+   */
+  protected static DoubleBuffer heapCopy(DoubleBuffer buffer) {
+
+    DoubleBuffer result = DoubleBuffer.allocate(buffer.capacity());
+    DoubleBuffer source = buffer.duplicate();
+    source.clear();
+    result.put(source);
+    result.clear();
+    return result;
+  }
+
+  /**
+   * Reads and checks the preamble and the header of the given file.
+   *
+   * @param channel the file to read
+   * @return the empty dataset, the number of rows (Integer) and the
+   * offset of the data section (Long)
+   * @throws IOException if the file is not in the binary columnar format
+   */
+  protected static Object[] readHeader(FileChannel channel)
+    throws IOException {
+
+    ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_SIZE);
+    preamble.order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, preamble, 0);
+    preamble.flip();
+    if (preamble.getInt() != MAGIC) {
+      throw new IOException("Not a binary columnar instances file!");
+    }
+    int version = preamble.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported format version: " + version);
+    }
+    int numRows = preamble.getInt();
+    int numAtts = preamble.getInt();
+    int headerSize = preamble.getInt();
+    int classIndex = preamble.getInt();
+
+    ByteBuffer bytes = ByteBuffer.allocate(headerSize);
+    readFully(channel, bytes, PREAMBLE_SIZE);
+    Instances header;
+    try {
+      ObjectInputStream oi = new ObjectInputStream(
+	  new ByteArrayInputStream(bytes.array()));
+      header = (Instances) oi.readObject();
+      oi.close();
+    }
+    catch (ClassNotFoundException e) {
+      throw new IOException("Could not deserialize the header!");
+    }
+    if (header.numAttributes() != numAtts) {
+      throw new IOException("Header doesn't match number of attributes!");
+    }
+    header.setClassIndex(classIndex);
+
+    return new Object[]{header, new Integer(numRows),
+			new Long(dataOffset(headerSize))};
+  }
+
+  /**
+   * Reads from the channel until the buffer is full.
+   *
+   * @param channel the channel to read from
+   * @param buffer the buffer to fill
+   * @param position the position in the file to start at
+   * @throws IOException if the end of the file is reached
+   */
+  protected static void readFully(FileChannel channel, ByteBuffer buffer,
+                                  long position) throws IOException {
+
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+	throw new IOException("Unexpected end of file!");
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Returns the offset of the data section for a header of the given
+   * size, ie. the end of the header padded to a multiple of 8.
+   *
+   * @param headerSize the size of the serialized header
+   * @return the offset of the weights
+   */
+  protected static long dataOffset(int headerSize) {
+
+    long end = PREAMBLE_SIZE + headerSize;
+    return (end + 7) / 8 * 8;
+  }
+
+  /**
+   * Writes the given dataset in the binary columnar format. The stream
+   * is not closed.
+   *
+   * @param data the dataset to write
+   * @param output the stream to write to
+   * @throws IOException if writing fails
+   */
+  public static void write(Instances data, OutputStream output)
+    throws IOException {
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oo = new ObjectOutputStream(bytes);
+    oo.writeObject(new Instances(data, 0));
+    oo.close();
+    byte[] header = bytes.toByteArray();
+
+    WritableByteChannel channel = Channels.newChannel(output);
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(data.numInstances());
+    buffer.putInt(data.numAttributes());
+    buffer.putInt(header.length);
+    buffer.putInt(data.classIndex());
+    buffer.flip();
+    writeFully(channel, buffer);
+    writeFully(channel, ByteBuffer.wrap(header));
+    buffer.clear();
+    for (long i = PREAMBLE_SIZE + header.length; i < dataOffset(header.length); i++) {
+      buffer.put((byte) 0);
+    }
+
+    for (int i = 0; i < data.numInstances(); i++) {
+      if (buffer.remaining() < 8) {
+	buffer.flip();
+	writeFully(channel, buffer);
+	buffer.clear();
+      }
+      buffer.putDouble(data.instance(i).weight());
+    }
+    for (int j = 0; j < data.numAttributes(); j++) {
+      for (int i = 0; i < data.numInstances(); i++) {
+	if (buffer.remaining() < 8) {
+	  buffer.flip();
+	  writeFully(channel, buffer);
+	  buffer.clear();
+	}
+	buffer.putDouble(data.instance(i).value(j));
+      }
+    }
+    buffer.flip();
+    writeFully(channel, buffer);
+    output.flush();
+  }
+
+  /**
+   * Writes the remaining content of the buffer to the channel.
+   *
+   * @param channel the channel to write to
+   * @param buffer the buffer to write
+   * @throws IOException if writing fails
+   */
+  protected static void writeFully(WritableByteChannel channel,
+                                   ByteBuffer buffer) throws IOException {
+
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Returns the position of the given row in the buffers.
+   *
+   * @param index the row index
+   * @return the position in the buffers
+   */
+  protected int position(int index) {
+
+    if ((index < 0) || (index >= m_NumRows)) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    if (m_Rows == null) {
+      return index;
+    }
+    return m_Rows[index];
+  }
+
+  /**
+   * Creates the row index, so that rows can be reordered.
+   */
+  protected void initRows() {
+
+    if (m_Rows == null) {
+      m_Rows = new int[m_NumRows];
+      for (int i = 0; i < m_NumRows; i++) {
+	m_Rows[i] = i;
+      }
+    }
+  }
+
+  /**
+   * Not supported, the number of rows is fixed.
+   *
+   * @param instance the instance to be added
+   * @throws UnsupportedOperationException always
+   */
+  public void add(Instance instance) {
+
+    throw new UnsupportedOperationException(
+	"Can't add to mapped instances, use new Instances(data) first!");
+  }
+
+  /**
+   * Gets the value of all instances in this dataset for a particular
+   * attribute.
+   *
+   * @param index the index of the attribute.
+   * @return an array containing the value of the desired attribute for
+   * each instance in the dataset.
+   */
+  public double [] attributeToDoubleArray(int index) {
+
+    double [] result = new double[m_NumRows];
+    DoubleBuffer column = m_Columns[index];
+    if (m_Rows == null) {
+      column.duplicate().get(result, 0, m_NumRows);
+    } else {
+      for (int i = 0; i < m_NumRows; i++) {
+	result[i] = column.get(m_Rows[i]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Does nothing, the values are not stored on the heap.
+   */
+  public void compactify() {
+  }
+
+  /**
+   * Removes all instances from the set.
+   */
+  public void delete() {
+
+    m_Rows = new int[0];
+    m_NumRows = 0;
+  }
+
+  /**
+   * Removes an instance at the given position from the set.
+   *
+   * @param index the instance's position (index starts with 0)
+   */
+  public void delete(int index) {
+
+    position(index);
+    initRows();
+    System.arraycopy(m_Rows, index + 1, m_Rows, index, m_NumRows - index - 1);
+    m_NumRows--;
+  }
+
+  /**
+   * Deletes an attribute at the given position
+   * (0 to numAttributes() - 1). A deep copy of the attribute
+   * information is performed before the attribute is deleted.
+   *
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   *            or the class attribute is being deleted
+   */
+  public void deleteAttributeAt(int position) {
+
+    if ((position < 0) || (position >= m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    if (position == m_ClassIndex) {
+      throw new IllegalArgumentException("Can't delete class attribute");
+    }
+    freshAttributeInfo();
+    if (m_ClassIndex > position) {
+      m_ClassIndex--;
+    }
+    m_Attributes.removeElementAt(position);
+    for (int i = position; i < m_Attributes.size(); i++) {
+      Attribute current = (Attribute)m_Attributes.elementAt(i);
+      current.setIndex(current.index() - 1);
+    }
+    DoubleBuffer[] columns = new DoubleBuffer[m_Columns.length - 1];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    System.arraycopy(m_Columns, position + 1, columns, position,
+		     m_Columns.length - position - 1);
+    m_Columns = columns;
+  }
+
+  /**
+   * Removes all instances with missing values for a particular
+   * attribute from the dataset.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   */
+  public void deleteWithMissing(int attIndex) {
+
+    initRows();
+    DoubleBuffer column = m_Columns[attIndex];
+    int kept = 0;
+    for (int i = 0; i < m_NumRows; i++) {
+      if (!Instance.isMissingValue(column.get(m_Rows[i]))) {
+	m_Rows[kept++] = m_Rows[i];
+      }
+    }
+    m_NumRows = kept;
+  }
+
+  /**
+   * Returns an enumeration of views on all instances in the dataset.
+   *
+   * @return enumeration of all instances in the dataset
+   */
+  public Enumeration enumerateInstances() {
+
+    return new MappedEnumeration();
+  }
+
+  /**
+   * Returns a view on the first instance in the set.
+   *
+   * @return the first instance in the set
+   */
+  public Instance firstInstance() {
+
+    return instance(0);
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to
+   * numAttributes()) and sets all values to be missing. The values
+   * of the new attribute are stored on the heap.
+   *
+   * @param att the attribute to be inserted
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   */
+  public void insertAttributeAt(Attribute att, int position) {
+
+    if ((position < 0) ||
+	(position > m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    att = (Attribute)att.copy();
+    freshAttributeInfo();
+    att.setIndex(position);
+    m_Attributes.insertElementAt(att, position);
+    for (int i = position + 1; i < m_Attributes.size(); i++) {
+      Attribute current = (Attribute)m_Attributes.elementAt(i);
+      current.setIndex(current.index() + 1);
+    }
+    DoubleBuffer column = DoubleBuffer.allocate(m_Weights.capacity());
+    while (column.hasRemaining()) {
+      column.put(Instance.missingValue());
+    }
+    DoubleBuffer[] columns = new DoubleBuffer[m_Columns.length + 1];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    columns[position] = column;
+    System.arraycopy(m_Columns, position, columns, position + 1,
+		     m_Columns.length - position);
+    m_Columns = columns;
+    if (m_ClassIndex >= position) {
+      m_ClassIndex++;
+    }
+  }
+
+  /**
+   * Returns a view on the instance at the given position.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return the instance at the given position
+   */
+  public Instance instance(int index) {
+
+    return new MappedInstance(this, position(index));
+  }
+
+  /**
+   * Returns a view on the last instance in the set.
+   *
+   * @return the last instance in the set
+   */
+  public Instance lastInstance() {
+
+    return instance(m_NumRows - 1);
+  }
+
+  /**
+   * Returns the mean (mode) for a numeric (nominal) attribute as
+   * a floating-point value. Returns 0 if the attribute is neither nominal nor
+   * numeric. If all values are missing it returns zero.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   * @return the mean or the mode
+   */
+  public double meanOrMode(int attIndex) {
+
+    double result, found, value, weight;
+    int [] counts;
+    DoubleBuffer column = m_Columns[attIndex];
+
+    if (attribute(attIndex).isNumeric()) {
+      result = found = 0;
+      for (int j = 0; j < m_NumRows; j++) {
+	int pos = (m_Rows == null) ? j : m_Rows[j];
+	value = column.get(pos);
+	if (!Instance.isMissingValue(value)) {
+	  weight = m_Weights.get(pos);
+	  found += weight;
+	  result += weight * value;
+	}
+      }
+      if (found <= 0) {
+	return 0;
+      } else {
+	return result / found;
+      }
+    } else if (attribute(attIndex).isNominal()) {
+      counts = new int[attribute(attIndex).numValues()];
+      for (int j = 0; j < m_NumRows; j++) {
+	int pos = (m_Rows == null) ? j : m_Rows[j];
+	value = column.get(pos);
+	if (!Instance.isMissingValue(value)) {
+	  counts[(int) value] += m_Weights.get(pos);
+	}
+      }
+      return (double)Utils.maxIndex(counts);
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Returns the number of instances in the dataset.
+   *
+   * @return the number of instances in the dataset as an integer
+   */
+  public int numInstances() {
+
+    return m_NumRows;
+  }
+
+  /**
+   * Computes the sum of all the instances' weights.
+   *
+   * @return the sum of all the instances' weights as a double
+   */
+  public double sumOfWeights() {
+
+    double sum = 0;
+
+    for (int i = 0; i < m_NumRows; i++) {
+      sum += m_Weights.get((m_Rows == null) ? i : m_Rows[i]);
+    }
+    return sum;
+  }
+
+  /**
+   * Swaps two instances in the set. Only the row index is changed.
+   *
+   * @param i the first instance's index (index starts with 0)
+   * @param j the second instance's index (index starts with 0)
+   */
+  public void swap(int i, int j) {
+
+    position(i);
+    position(j);
+    initRows();
+    int help = m_Rows[i];
+    m_Rows[i] = m_Rows[j];
+    m_Rows[j] = help;
+  }
+
+  /**
+   * Computes the variance for a numeric attribute.
+   *
+   * @param attIndex the numeric attribute (index starts with 0)
+   * @return the variance if the attribute is numeric
+   * @throws IllegalArgumentException if the attribute is not numeric
+   */
+  public double variance(int attIndex) {
+
+    double sum = 0, sumSquared = 0, sumOfWeights = 0, value, weight;
+
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException("Can't compute variance because attribute is " +
+			  "not numeric!");
+    }
+    DoubleBuffer column = m_Columns[attIndex];
+    for (int i = 0; i < m_NumRows; i++) {
+      int pos = (m_Rows == null) ? i : m_Rows[i];
+      value = column.get(pos);
+      if (!Instance.isMissingValue(value)) {
+	weight = m_Weights.get(pos);
+	sum += weight * value;
+	sumSquared += weight * value * value;
+	sumOfWeights += weight;
+      }
+    }
+    if (sumOfWeights <= 1) {
+      return 0;
+    }
+    double result = (sumSquared - (sum * sum / sumOfWeights)) /
+      (sumOfWeights - 1);
+
+    // We don't like negative variance
+    if (result < 0) {
+      return 0;
+    } else {
+      return result;
+    }
+  }
+
+  /**
+   * Help function needed for stratification of set. Only the row
+   * index is reordered.
+   *
+   * @param numFolds the number of folds for the stratification
+   */
+  protected void stratStep(int numFolds) {
+
+    initRows();
+    int[] rows = new int[m_NumRows];
+    int count = 0, start = 0, j;
+
+    // create stratified batch
+    while (count < m_NumRows) {
+      j = start;
+      while (j < m_NumRows) {
+	rows[count++] = m_Rows[j];
+	j = j + numFolds;
+      }
+      start++;
+    }
+    m_Rows = rows;
+  }
+
+  /**
+   * Replaces the mapped dataset by an ordinary copy on serialization,
+   * since the mapping can't be serialized.
+   *
+   * @return the object to serialize
+   */
+  protected Object writeReplace() {
+
+    return new Instances(this);
+  }
+
+  /**
+   * Enumerates views on the rows of the dataset.
+   */
+  protected class MappedEnumeration
+    implements Enumeration {
+
+    /** the next row to return. */
+    protected int m_Next = 0;
+
+    /**
+     * Tests if there are any more rows to enumerate.
+     *
+     * @return true if there are some rows left
+     */
+    public boolean hasMoreElements() {
+
+      return m_Next < m_NumRows;
+    }
+
+    /**
+     * Returns a view on the next row.
+     *
+     * @return the next row
+     */
+    public Object nextElement() {
+
+      if (m_Next >= m_NumRows) {
+	throw new NoSuchElementException();
+      }
+      return instance(m_Next++);
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
@@ -68,6 +68,77 @@ public abstract class NormalizableDistance
   /** Whether all the necessary preparations have been done. */
   protected boolean m_Validated;
 
+  /** Kernel type: no fast path, difference/updateDistance are used. */
+  protected static final int KERNEL_NONE = 0;
+
+  /** Kernel type: sum of the squared differences. */
+  protected static final int KERNEL_EUCLIDEAN = 1;
+
+  /** Kernel type: sum of the absolute differences. */
+  protected static final int KERNEL_MANHATTAN = 2;
+
+  /** Kernel type: largest absolute difference. */
+  protected static final int KERNEL_CHEBYSHEV = 3;
+
+  /** Attribute kind: not used in the calculation. */
+  protected static final byte ATT_SKIP = 0;
+
+  /** Attribute kind: numeric attribute. */
+  protected static final byte ATT_NUMERIC = 1;
+
+  /** Attribute kind: nominal attribute. */
+  protected static final byte ATT_NOMINAL = 2;
+
+  /** The maximum number of values the normalized matrix may hold. */
+  public static final int MAX_MATRIX_SIZE = 1 << 25;
+
+  /** The kind of each attribute, the class and inactive attributes are 
+   * skipped. */
+  protected byte[] m_AttributeKinds;
+
+  /** The indices of the attributes that are not skipped, in ascending 
+   * order. */
+  protected int[] m_KernelIndices;
+
+  /** The class index the attribute kinds were determined with. */
+  protected int m_KernelClassIndex = -1;
+
+  /** Counts the changes of the ranges, to detect an outdated matrix. */
+  protected int m_RangesVersion = 0;
+
+  /** The normalized copy of the data used for computing batches of 
+   * distances. */
+  protected transient volatile NormalizedMatrix m_Matrix = null;
+
+  /**
+   * A normalized copy of the data: one row per instance and one column per
+   * attribute in m_KernelIndices. Numeric values are normalized as in
+   * norm(double,int), nominal values are kept and missing values are NaN.
+   */
+  protected static class NormalizedMatrix {
+
+    /** the data the matrix was built from. */
+    protected Instances m_Data;
+
+    /** the value arrays of the instances, to detect modified data. */
+    protected double[][] m_Sources;
+
+    /** the normalized values, row after row. */
+    protected double[] m_Values;
+
+    /** whether the column is nominal. */
+    protected boolean[] m_Nominal;
+
+    /** the number of columns. */
+    protected int m_Width;
+
+    /** the version of the ranges the values were normalized with. */
+    protected int m_Version;
+
+    /** the class index at build time. */
+    protected int m_ClassIndex;
+  }
+
   /**
    * Invalidates the distance function, Instances must be still set.
    */
@@ -266,6 +337,7 @@ public abstract class NormalizableDistance
    */
   protected void invalidate() {
     m_Validated = false;
+    m_Matrix = null;
   }
   
   /**
@@ -294,6 +366,46 @@ public abstract class NormalizableDistance
     m_ActiveIndices = new boolean[m_Data.numAttributes()];
     for (int i = 0; i < m_ActiveIndices.length; i++)
       m_ActiveIndices[i] = m_AttributeIndices.isInRange(i);
+    initializeKernel();
+  }
+
+  /**
+   * Determines the kinds of the attributes for the fast path of the 
+   * distance calculation.
+   */
+  protected void initializeKernel() {
+    int		classIndex;
+    int		count;
+    byte[]	kinds;
+    int[]	indices;
+    int		i;
+
+    classIndex = m_Data.classIndex();
+    kinds      = new byte[m_Data.numAttributes()];
+    count      = 0;
+    for (i = 0; i < kinds.length; i++) {
+      if ((i == classIndex) || !m_ActiveIndices[i])
+	kinds[i] = ATT_SKIP;
+      else if (m_Data.attribute(i).isNominal())
+	kinds[i] = ATT_NOMINAL;
+      else if (m_Data.attribute(i).type() == Attribute.NUMERIC)
+	kinds[i] = ATT_NUMERIC;
+      else
+	kinds[i] = ATT_SKIP;
+      if (kinds[i] != ATT_SKIP)
+	count++;
+    }
+
+    indices = new int[count];
+    count   = 0;
+    for (i = 0; i < kinds.length; i++) {
+      if (kinds[i] != ATT_SKIP)
+	indices[count++] = i;
+    }
+
+    m_AttributeKinds   = kinds;
+    m_KernelIndices    = indices;
+    m_KernelClassIndex = classIndex;
   }
 
   /**
@@ -331,6 +443,8 @@ public abstract class NormalizableDistance
   public void update(Instance ins) {
     validate();
     
+    if (!inRanges(ins, m_Ranges))
+      m_RangesVersion++;
     m_Ranges = updateRanges(ins, m_Ranges);
   }
 
@@ -404,6 +518,9 @@ public abstract class NormalizableDistance
     
     validate();
     
+    if ((stats == null) && supportsKernel(first) && supportsKernel(second))
+      return kernelDistance(first, second, cutOffValue);
+    
     for (int p1 = 0, p2 = 0; p1 < firstNumValues || p2 < secondNumValues; ) {
       if (p1 >= firstNumValues)
 	firstI = numAttributes;
@@ -551,6 +668,369 @@ public abstract class NormalizableDistance
     }
   }
   
+  /**
+   * Returns the kernel that computes the same distance as 
+   * difference(int,double,double) and updateDistance(double,double) 
+   * without calling them. Derived classes that override either of these 
+   * methods must return KERNEL_NONE.
+   * 
+   * @return		the kernel type, KERNEL_NONE by default
+   */
+  protected int getKernel() {
+    return KERNEL_NONE;
+  }
+
+  /**
+   * Returns whether the distance to the given instance can be computed by
+   * the kernel, i.e., whether it is a plain dense or sparse instance that
+   * matches the data.
+   * 
+   * @param instance	the instance to check
+   * @return		true if the kernel can be used
+   */
+  protected boolean supportsKernel(Instance instance) {
+    if (getKernel() == KERNEL_NONE)
+      return false;
+    if (instance.getClass() == SparseInstance.class)
+      return true;
+    return (instance.getClass() == Instance.class)
+        && (instance.m_AttValues.length == m_Data.numAttributes());
+  }
+
+  /**
+   * Adds the difference of one attribute to the distance calculated so far,
+   * as updateDistance(double,double) of the kernel's class does.
+   * 
+   * @param kernel	the kernel type
+   * @param currDist	the current distance calculated so far
+   * @param diff	the difference between two new attributes
+   * @return		the updated distance
+   */
+  protected static double accumulate(int kernel, double currDist, double diff) {
+    switch (kernel) {
+      case KERNEL_EUCLIDEAN:
+	return currDist + diff * diff;
+      case KERNEL_MANHATTAN:
+	return currDist + Math.abs(diff);
+      default:
+	diff = Math.abs(diff);
+	return (diff > currDist) ? diff : currDist;
+    }
+  }
+
+  /**
+   * Computes the difference between two values of a numeric or nominal 
+   * attribute, with the same result as difference(int,double,double).
+   * 
+   * @param index	the attribute index
+   * @param kind	the attribute kind
+   * @param val1	the first value
+   * @param val2	the second value
+   * @return		the difference
+   */
+  protected double kernelDifference(int index, byte kind, double val1, double val2) {
+    double[]	range;
+
+    if (kind == ATT_NOMINAL)
+      return (Double.isNaN(val1) || Double.isNaN(val2) || ((int) val1 != (int) val2)) ? 1 : 0;
+    if (Double.isNaN(val1) || Double.isNaN(val2))
+      return difference(index, val1, val2);
+    if (m_DontNormalize)
+      return val1 - val2;
+    range = m_Ranges[index];
+    if (Double.isNaN(range[R_MIN]) || (range[R_MAX] == range[R_MIN]))
+      return 0;
+    return (val1 - range[R_MIN]) / range[R_WIDTH] 
+         - (val2 - range[R_MIN]) / range[R_WIDTH];
+  }
+
+  /**
+   * Calculates the distance between two instances that are supported by the
+   * kernel, reading their values directly. Gives the same result as the
+   * general calculation in distance(Instance,Instance,double,PerformanceStats).
+   * 
+   * @param first 	the first instance
+   * @param second 	the second instance
+   * @param cutOffValue the distance above which the calculation is discarded
+   * @return 		the distance or Double.POSITIVE_INFINITY if it is 
+   * 			larger than cutOffValue
+   */
+  protected double kernelDistance(Instance first, Instance second, double cutOffValue) {
+    int		kernel;
+    byte[]	kinds;
+    double[]	values1;
+    double[]	values2;
+    int[]	indices1;
+    int[]	indices2;
+    int[]	indices;
+    int		numAttributes;
+    int		num1;
+    int		num2;
+    int		i1;
+    int		i2;
+    int		i;
+    double	diff;
+    double	distance;
+
+    if (m_KernelClassIndex != m_Data.classIndex())
+      initializeKernel();
+
+    kernel   = getKernel();
+    kinds    = m_AttributeKinds;
+    values1  = first.m_AttValues;
+    values2  = second.m_AttValues;
+    distance = 0;
+
+    // dense instances: only the attributes in use
+    if (!(first instanceof SparseInstance) && !(second instanceof SparseInstance)) {
+      indices = m_KernelIndices;
+      for (int n = 0; n < indices.length; n++) {
+	i        = indices[n];
+	distance = accumulate(kernel, distance, 
+	             kernelDifference(i, kinds[i], values1[i], values2[i]));
+	if (distance > cutOffValue)
+	  return Double.POSITIVE_INFINITY;
+      }
+      return distance;
+    }
+
+    // at least one sparse instance: merge the indices
+    indices1      = (first instanceof SparseInstance) ? ((SparseInstance) first).m_Indices : null;
+    indices2      = (second instanceof SparseInstance) ? ((SparseInstance) second).m_Indices : null;
+    numAttributes = kinds.length;
+    num1          = values1.length;
+    num2          = values2.length;
+    for (int p1 = 0, p2 = 0; (p1 < num1) || (p2 < num2); ) {
+      if (p1 >= num1)
+	i1 = numAttributes;
+      else
+	i1 = (indices1 == null) ? p1 : indices1[p1];
+      if (p2 >= num2)
+	i2 = numAttributes;
+      else
+	i2 = (indices2 == null) ? p2 : indices2[p2];
+
+      if (i1 == i2) {
+	if (kinds[i1] == ATT_SKIP) {
+	  p1++;
+	  p2++;
+	  continue;
+	}
+	diff = kernelDifference(i1, kinds[i1], values1[p1], values2[p2]);
+	p1++;
+	p2++;
+      }
+      else if (i1 > i2) {
+	if (kinds[i2] == ATT_SKIP) {
+	  p2++;
+	  continue;
+	}
+	diff = kernelDifference(i2, kinds[i2], 0, values2[p2]);
+	p2++;
+      }
+      else {
+	if (kinds[i1] == ATT_SKIP) {
+	  p1++;
+	  continue;
+	}
+	diff = kernelDifference(i1, kinds[i1], values1[p1], 0);
+	p1++;
+      }
+
+      distance = accumulate(kernel, distance, diff);
+      if (distance > cutOffValue)
+	return Double.POSITIVE_INFINITY;
+    }
+
+    return distance;
+  }
+
+  /**
+   * Normalizes a value for the normalized matrix: numeric values as in
+   * norm(double,int) (unless normalization is turned off), nominal and
+   * missing values are kept.
+   * 
+   * @param index	the attribute index
+   * @param kind	the attribute kind
+   * @param value	the value to normalize
+   * @return		the normalized value
+   */
+  protected double normalizeValue(int index, byte kind, double value) {
+    if ((kind == ATT_NOMINAL) || m_DontNormalize || Double.isNaN(value))
+      return value;
+    else
+      return norm(value, index);
+  }
+
+  /**
+   * Returns the normalized copy of the data, builds it if necessary.
+   * 
+   * @return		the matrix or null if the data is not suited for it 
+   * 			(sparse or too large)
+   */
+  protected NormalizedMatrix getMatrix() {
+    NormalizedMatrix	matrix;
+    int			numInstances;
+    int			width;
+    int[]		indices;
+    Instance		inst;
+
+    matrix       = m_Matrix;
+    numInstances = m_Data.numInstances();
+    if (    (matrix != null) 
+	 && (matrix.m_Data == m_Data)
+	 && (matrix.m_Version == m_RangesVersion)
+	 && (matrix.m_ClassIndex == m_Data.classIndex())
+	 && (matrix.m_Sources.length == numInstances) )
+      return matrix;
+
+    synchronized (this) {
+      if (m_KernelClassIndex != m_Data.classIndex())
+	initializeKernel();
+      indices = m_KernelIndices;
+      width   = indices.length;
+      if ((long) numInstances * width > MAX_MATRIX_SIZE)
+	return null;
+
+      matrix              = new NormalizedMatrix();
+      matrix.m_Data       = m_Data;
+      matrix.m_Version    = m_RangesVersion;
+      matrix.m_ClassIndex = m_Data.classIndex();
+      matrix.m_Width      = width;
+      matrix.m_Sources    = new double[numInstances][];
+      matrix.m_Values     = new double[numInstances * width];
+      matrix.m_Nominal    = new boolean[width];
+      for (int j = 0; j < width; j++)
+	matrix.m_Nominal[j] = (m_AttributeKinds[indices[j]] == ATT_NOMINAL);
+
+      for (int n = 0; n < numInstances; n++) {
+	inst = m_Data.instance(n);
+	if (    (inst.getClass() != Instance.class) 
+	     || (inst.m_AttValues.length != m_Data.numAttributes()) )
+	  return null;
+	matrix.m_Sources[n] = inst.m_AttValues;
+	for (int j = 0; j < width; j++)
+	  matrix.m_Values[n * width + j] = normalizeValue(
+	      indices[j], m_AttributeKinds[indices[j]], inst.m_AttValues[indices[j]]);
+      }
+
+      m_Matrix = matrix;
+    }
+
+    return matrix;
+  }
+
+  /**
+   * Computes the difference for a numeric attribute where at least one of
+   * the normalized values is missing, as difference(int,double,double) does.
+   * 
+   * @param index	the attribute index
+   * @param val1	the first normalized value
+   * @param val2	the second normalized value
+   * @return		the difference
+   */
+  protected double missingDifference(int index, double val1, double val2) {
+    double	diff;
+
+    if (Double.isNaN(val1) && Double.isNaN(val2)) {
+      if (!m_DontNormalize)
+	return 1;
+      else
+	return (m_Ranges[index][R_MAX] - m_Ranges[index][R_MIN]);
+    }
+
+    diff = Double.isNaN(val1) ? val2 : val1;
+    if (!m_DontNormalize)
+      return (diff < 0.5) ? 1.0 - diff : diff;
+    if ((m_Ranges[index][R_MAX] - diff) > (diff - m_Ranges[index][R_MIN]))
+      return m_Ranges[index][R_MAX] - diff;
+    else
+      return diff - m_Ranges[index][R_MIN];
+  }
+
+  /**
+   * Calculates the distances between the given instance and the instances
+   * start to end-1 of the data, with the same results as 
+   * distance(Instance,Instance,double). If the data allows it, the
+   * instances are compared with a normalized copy of the data in a single
+   * loop per instance, otherwise distance(Instance,Instance,double) is 
+   * called for each of them.
+   * 
+   * @param target	the instance to compute the distances for
+   * @param start	the index of the first instance in the data
+   * @param end		the index after the last instance in the data
+   * @param cutOffValue If the distance being calculated becomes larger than 
+   *                    cutOffValue then the rest of the calculation is 
+   *                    discarded.
+   * @param distances	the array to store the distances in, at positions 
+   * 			0 to end-start-1; Double.POSITIVE_INFINITY where
+   * 			the distance is larger than cutOffValue
+   */
+  public void distances(Instance target, int start, int end, double cutOffValue, double[] distances) {
+    NormalizedMatrix	matrix;
+    double[]		query;
+    double[]		values;
+    boolean[]		nominal;
+    int[]		indices;
+    int			kernel;
+    int			width;
+    int			offset;
+    double		a;
+    double		b;
+    double		diff;
+    double		distance;
+    Instance		inst;
+
+    validate();
+
+    kernel = getKernel();
+    matrix = null;
+    if ((kernel != KERNEL_NONE) && (target.numAttributes() == m_Data.numAttributes()))
+      matrix = getMatrix();
+    if (matrix == null) {
+      for (int n = start; n < end; n++)
+	distances[n - start] = distance(target, m_Data.instance(n), cutOffValue);
+      return;
+    }
+
+    indices = m_KernelIndices;
+    width   = matrix.m_Width;
+    values  = matrix.m_Values;
+    nominal = matrix.m_Nominal;
+    query   = new double[width];
+    for (int j = 0; j < width; j++)
+      query[j] = normalizeValue(
+	  indices[j], m_AttributeKinds[indices[j]], target.value(indices[j]));
+
+    for (int n = start; n < end; n++) {
+      inst = m_Data.instance(n);
+      if (inst.m_AttValues != matrix.m_Sources[n]) {
+	// instance got replaced or modified
+	distances[n - start] = distance(target, inst, cutOffValue);
+	continue;
+      }
+
+      distance = 0;
+      offset   = n * width;
+      for (int j = 0; j < width; j++) {
+	a = query[j];
+	b = values[offset + j];
+	if (nominal[j])
+	  diff = (Double.isNaN(a) || Double.isNaN(b) || ((int) a != (int) b)) ? 1 : 0;
+	else if (Double.isNaN(a) || Double.isNaN(b))
+	  diff = missingDifference(indices[j], a, b);
+	else
+	  diff = a - b;
+	distance = accumulate(kernel, distance, diff);
+	if (distance > cutOffValue) {
+	  distance = Double.POSITIVE_INFINITY;
+	  break;
+	}
+      }
+      distances[n - start] = distance;
+    }
+  }
+  
   /**
    * Initializes the ranges using all instances of the dataset.
    * Sets m_Ranges.
@@ -558,6 +1038,8 @@ public abstract class NormalizableDistance
    * @return 		the ranges
    */
   public double[][] initializeRanges() {
+    m_RangesVersion++;
+    
     if (m_Data == null) {
       m_Ranges = null;
       return m_Ranges;
@@ -756,6 +1238,8 @@ public abstract class NormalizableDistance
   public void updateRanges(Instance instance) {
     validate();
     
+    if (!inRanges(instance, m_Ranges))
+      m_RangesVersion++;
     m_Ranges = updateRanges(instance, m_Ranges);
   }
   
@@ -0,0 +1,192 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelTasks.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent pieces of work with several threads. Each thread takes
+ * the next index that hasn't been processed yet until none are left, so
+ * every index is processed by exactly one thread. With a single thread,
+ * the calling thread does all the work itself.<p/>
+ *
+ * The threads are daemon threads shared by all users, so nothing has to
+ * be shut down, and idle threads terminate after a while.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ParallelTasks
+  implements RevisionHandler {
+
+  /**
+   * A piece of work that is done for a single index.
+   */
+  public interface Task {
+
+    /**
+     * Does the work for the given index.
+     *
+     * @param index the index
+     * @throws Exception if the work fails
+     */
+    void run(int index) throws Exception;
+  }
+
+  /**
+   * A piece of work that is done for a range of indices.
+   */
+  public interface RangeTask {
+
+    /**
+     * Does the work for the indices start to end-1.
+     *
+     * @param start the first index
+     * @param end the index after the last one
+     * @return whether something changed
+     * @throws Exception if the work fails
+     */
+    boolean run(int start, int end) throws Exception;
+  }
+
+  /** the threads, shared by all users and created on demand */
+  protected static ExecutorService m_Executor;
+
+  /**
+   * Returns the threads, creates them if necessary.
+   *
+   * @return the threads
+   */
+  public static synchronized ExecutorService getExecutor() {
+    if (m_Executor == null) {
+      m_Executor = Executors.newCachedThreadPool(new ThreadFactory() {
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, "ParallelTasks");
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Runs the task for the indices 0 to num-1 with at most the given
+   * number of threads. If the task fails for an index, the remaining
+   * indices are skipped and the first error is thrown.
+   *
+   * @param num the number of indices
+   * @param numThreads the maximum number of threads to use
+   * @param task the task to run
+   * @throws Exception if the task fails for an index
+   */
+  public static void forEach(final int num, int numThreads,
+      final Task task) throws Exception {
+
+    if (numThreads > num)
+      numThreads = num;
+
+    if (numThreads <= 1) {
+      for (int i = 0; i < num; i++)
+	task.run(i);
+      return;
+    }
+
+    final AtomicInteger next = new AtomicInteger();
+    Vector<Future<Object>> futures = new Vector<Future<Object>>();
+    for (int t = 0; t < numThreads; t++) {
+      futures.add(getExecutor().submit(new Callable<Object>() {
+	public Object call() throws Exception {
+	  int i;
+	  while ((i = next.getAndIncrement()) < num)
+	    task.run(i);
+	  return null;
+	}
+      }));
+    }
+
+    Exception error = null;
+    for (int t = 0; t < futures.size(); t++) {
+      try {
+	futures.get(t).get();
+      }
+      catch (ExecutionException e) {
+	// stop the other threads, the first error is reported
+	next.set(num);
+	if (error == null) {
+	  if (e.getCause() instanceof Exception)
+	    error = (Exception) e.getCause();
+	  else
+	    error = new Exception(e.getCause().toString());
+	}
+      }
+    }
+    if (error != null)
+      throw error;
+  }
+
+  /**
+   * Runs the task for the indices 0 to num-1 in ranges of the given size,
+   * with at most the given number of threads.
+   *
+   * @param num the number of indices
+   * @param rangeSize the number of indices per range
+   * @param numThreads the maximum number of threads to use
+   * @param task the task to run
+   * @return true if the task returned true for any range
+   * @throws Exception if the task fails for a range
+   */
+  public static boolean forEachRange(final int num, final int rangeSize,
+      int numThreads, final RangeTask task) throws Exception {
+
+    final boolean[] changed = new boolean[(num + rangeSize - 1) / rangeSize];
+    forEach(changed.length, numThreads, new Task() {
+      public void run(int range) throws Exception {
+	int start = range * rangeSize;
+	changed[range] = task.run(start, Math.min(start + rangeSize, num));
+      }
+    });
+
+    for (int i = 0; i < changed.length; i++) {
+      if (changed[i])
+	return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
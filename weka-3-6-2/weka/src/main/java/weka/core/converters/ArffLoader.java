@@ -28,6 +28,7 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SerializedObject;
 import weka.core.SparseInstance;
 
 import java.io.BufferedReader;
@@ -40,6 +41,9 @@ import java.io.StreamTokenizer;
 import java.io.StringReader;
 import java.net.URL;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 /**
@@ -72,6 +76,9 @@ public class ArffLoader
 
   /** The parser for the ARFF file */
   protected transient ArffReader m_ArffReader = null;
+
+  /** the number of threads to use for parsing the data */
+  protected int m_NumExecutionSlots = 1;
   
   /**
    * Reads data from an ARFF file, either in incremental or batch mode. <p/>
@@ -836,6 +843,287 @@ public class ArffLoader
     }
   }
 
+  /**
+   * Reads the data section of an ARFF file with several threads. The
+   * header is read as usual, the data lines are then split into chunks
+   * that are parsed concurrently (see <code>ChunkedParser</code>) and
+   * merged in the original order. The instances and the values of string
+   * and relational attributes are therefore the same as the ones produced
+   * by <code>ArffReader</code>. <p/>
+   *
+   * Typical code for usage (batch or incremental):
+   * <pre>
+   * BufferedReader reader = new BufferedReader(new FileReader("/some/where/file.arff"));
+   * ArffReader arff = new ParallelArffReader(reader, 1000, 8);
+   * Instances data = arff.getStructure();
+   * data.setClassIndex(data.numAttributes() - 1);
+   * Instance inst;
+   * while ((inst = arff.readInstance(data)) != null) {
+   *   data.add(inst);
+   * }
+   * </pre>
+   *
+   * Instance weights are always read, ie. the <code>flag</code> of
+   * <code>readInstance(Instances,boolean)</code> is ignored.
+   *
+   * @version $Revision: 1.1 $
+   * @see ChunkedParser
+   */
+  public static class ParallelArffReader
+    extends ArffReader {
+
+    /** the string value occupying index 0 in the header of a chunk */
+    protected final static String PLACEHOLDER = "\u0000placeholder";
+
+    /** the header, serialized, from which each chunk gets its own copy */
+    protected SerializedObject m_Template;
+
+    /** the indices of the string and relational attributes */
+    protected int[] m_Remap;
+
+    /** the parser for the data section */
+    protected ChunkedParser<Instance> m_Parser;
+
+    /**
+     * Reads the header and prepares reading the data with the specified
+     * number of threads. The instances must be read via
+     * <code>readInstance()</code>.
+     *
+     * @param reader			the reader to use
+     * @param capacity 			the capacity of the new dataset
+     * @param numSlots			the number of threads to use
+     * @throws IOException		if something goes wrong
+     * @see				#getStructure()
+     * @see				#readInstance(Instances)
+     */
+    public ParallelArffReader(Reader reader, int capacity, int numSlots)
+      throws IOException {
+
+      this(reader, capacity, numSlots, ChunkedParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Reads the header and prepares reading the data with the specified
+     * number of threads and chunk size.
+     *
+     * @param reader			the reader to use
+     * @param capacity 			the capacity of the new dataset
+     * @param numSlots			the number of threads to use
+     * @param chunkSize			the number of lines per chunk
+     * @throws IOException		if something goes wrong
+     */
+    public ParallelArffReader(Reader reader, int capacity, int numSlots,
+	int chunkSize) throws IOException {
+
+      this(splitHeader(reader), capacity, numSlots, chunkSize);
+    }
+
+    /**
+     * Parses the header that was split off the data section.
+     *
+     * @param split			the reader, header, remainder of the
+     * 					data line and its line number
+     * @param capacity 			the capacity of the new dataset
+     * @param numSlots			the number of threads to use
+     * @param chunkSize			the number of lines per chunk
+     * @throws IOException		if something goes wrong
+     * @see				#splitHeader(Reader)
+     */
+    protected ParallelArffReader(Object[] split, int capacity, int numSlots,
+	int chunkSize) throws IOException {
+
+      super(new StringReader((String) split[1]), capacity);
+
+      int count = 0;
+      m_Remap = new int[m_Data.numAttributes()];
+      for (int i = 0; i < m_Data.numAttributes(); i++) {
+	if (m_Data.attribute(i).isString() || m_Data.attribute(i).isRelationValued())
+	  m_Remap[count++] = i;
+      }
+      int[] remap = new int[count];
+      System.arraycopy(m_Remap, 0, remap, 0, count);
+      m_Remap = remap;
+
+      try {
+	m_Template = new SerializedObject(new Instances(m_Data, 0));
+      }
+      catch (Exception e) {
+	throw new IOException("Unable to copy header: " + e);
+      }
+
+      m_Parser = new ChunkedParser<Instance>((Reader) split[0], ((Integer) split[3]).intValue(), numSlots, chunkSize) {
+	protected List<Instance> parseChunk(String chunk, int firstLine)
+	  throws Exception {
+
+	  Instances template = (Instances) m_Template.getObject();
+	  // sparse instances don't store index 0, which would be ambiguous
+	  for (int i = 0; i < m_Remap.length; i++) {
+	    Attribute att = template.attribute(m_Remap[i]);
+	    if (att.numValues() > 0)
+	      continue;
+	    if (att.isString())
+	      att.addStringValue(PLACEHOLDER);
+	    else
+	      att.addRelation(new Instances(att.relation(), 0));
+	  }
+	  ArffReader arff = new ArffReader(new StringReader(chunk), template, firstLine, 0);
+	  Instances data = arff.getData();
+	  List<Instance> result = new ArrayList<Instance>();
+	  Instance inst;
+	  while ((inst = arff.readInstance(data)) != null)
+	    result.add(inst);
+	  return result;
+	}
+      };
+
+      // the remainder of the @data line is the first line of the data
+      if (((String) split[2]).trim().length() > 0)
+	m_Parser.pushBack((String) split[2]);
+    }
+
+    /**
+     * Reads the header of an ARFF file, ie. all the lines up to and
+     * including the one with the data keyword.
+     *
+     * @param reader			the reader to use
+     * @return				the reader positioned after the data
+     * 					keyword, the header, the remainder of
+     * 					the data line and the line number of
+     * 					the data line
+     * @throws IOException		if reading fails
+     */
+    protected static Object[] splitHeader(Reader reader) throws IOException {
+      BufferedReader	buffered;
+      StringBuilder	header;
+      String		line;
+      String		remainder;
+      int		lineNo;
+      int		pos;
+
+      if (reader instanceof BufferedReader)
+	buffered = (BufferedReader) reader;
+      else
+	buffered = new BufferedReader(reader);
+
+      header    = new StringBuilder();
+      remainder = "";
+      lineNo    = 0;
+      while ((line = buffered.readLine()) != null) {
+	lineNo++;
+	String trimmed = line.trim();
+	if ((trimmed.length() >= Instances.ARFF_DATA.length())
+	    && trimmed.substring(0, Instances.ARFF_DATA.length()).equalsIgnoreCase(Instances.ARFF_DATA)
+	    && ((trimmed.length() == Instances.ARFF_DATA.length())
+		|| (trimmed.charAt(Instances.ARFF_DATA.length()) <= ' ')
+		|| (trimmed.charAt(Instances.ARFF_DATA.length()) == '%'))) {
+	  pos       = line.indexOf(trimmed) + Instances.ARFF_DATA.length();
+	  remainder = line.substring(pos);
+	  header.append(line.substring(0, pos)).append('\n');
+	  break;
+	}
+	header.append(line).append('\n');
+      }
+
+      return new Object[]{buffered, header.toString(), remainder, new Integer(lineNo)};
+    }
+
+    /**
+     * Returns the next instance of the data section, in the order of the
+     * file. String and relational values are added to the given structure.
+     *
+     * @param structure 	the dataset header information, will get updated
+     * 				in case of string or relational attributes
+     * @param flag 		ignored, weights are always read
+     * @return 			null if end of file has been reached
+     * @throws IOException 	if the information is not read
+     * 				successfully
+     */
+    protected Instance getInstance(Instances structure, boolean flag) throws IOException {
+      m_Data = structure;
+
+      // Check if any attributes have been declared.
+      if (m_Data.numAttributes() == 0) {
+        throw new IOException("no header information available");
+      }
+
+      Instance inst = m_Parser.next();
+      if (inst == null)
+	return null;
+
+      // move string and relational values into the structure
+      if (m_Remap.length > 0) {
+	if (inst instanceof SparseInstance) {
+	  // rebuilt, since setting a value to 0 would remove it
+	  double[] values = new double[inst.numValues()];
+	  int[] indices = new int[inst.numValues()];
+	  for (int pos = 0; pos < values.length; pos++) {
+	    indices[pos] = inst.index(pos);
+	    if (Arrays.binarySearch(m_Remap, indices[pos]) >= 0)
+	      values[pos] = remap(inst, pos);
+	    else
+	      values[pos] = inst.valueSparse(pos);
+	  }
+	  inst = new SparseInstance(inst.weight(), values, indices, inst.numAttributes());
+	}
+	else {
+	  for (int i = 0; i < m_Remap.length; i++)
+	    inst.setValue(m_Remap[i], remap(inst, m_Remap[i]));
+	}
+      }
+      inst.setDataset(m_Data);
+
+      return inst;
+    }
+
+    /**
+     * Returns the value in the structure that corresponds to a string or
+     * relational value referring to the header of a chunk. The string or
+     * relation is added to the structure.
+     *
+     * @param inst		the instance parsed from the chunk
+     * @param pos		the position of the value
+     * @return			the value for the structure
+     */
+    protected double remap(Instance inst, int pos) {
+      if (inst.isMissingSparse(pos))
+	return inst.valueSparse(pos);
+
+      int index = inst.index(pos);
+      int value = (int) inst.valueSparse(pos);
+      Attribute chunk = inst.dataset().attribute(index);
+      if (chunk.isString())
+	return m_Data.attribute(index).addStringValue(chunk, value);
+      else
+	return m_Data.attribute(index).addRelation(chunk.relation(value));
+    }
+
+    /**
+     * returns the number of lines read so far, including the lines of
+     * chunks that are still being parsed
+     *
+     * @return			the current line number
+     */
+    public int getLineNo() {
+      return m_Parser.getLineNo();
+    }
+
+    /**
+     * Stops the threads, discarding the rest of the data.
+     */
+    public void close() {
+      m_Parser.close();
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 1.1 $");
+    }
+  }
+
   /**
    * Returns a string describing this Loader
    * @return a description of the Loader suitable for
@@ -846,6 +1134,38 @@ public class ArffLoader
       +"format. ";
   }
 
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for parsing the data; with more "
+      + "than one, chunks of lines are parsed concurrently.";
+  }
+
+  /**
+   * Sets the number of threads to use for parsing the data.
+   *
+   * @param value the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+
+  /**
+   * Gets the number of threads to use for parsing the data.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Get the file extension used for arff files
    *
@@ -881,6 +1201,7 @@ public class ArffLoader
    */
   public void reset() throws IOException {
     m_structure = null;
+    closeArffReader();
     setRetrieval(NONE);
     
     if (m_File != null) {
@@ -958,9 +1279,20 @@ public class ArffLoader
     m_File = (new File(System.getProperty("user.dir"))).getAbsolutePath();
     m_URL = "http://";
 
+    closeArffReader();
     m_sourceReader = new BufferedReader(new InputStreamReader(in));
   }
 
+  /**
+   * Stops the threads of the reader, if it parses in parallel, and 
+   * discards the reader.
+   */
+  protected void closeArffReader() {
+    if (m_ArffReader instanceof ParallelArffReader)
+      ((ParallelArffReader) m_ArffReader).close();
+    m_ArffReader = null;
+  }
+
   /**
    * Determines and returns (if possible) the structure (internally the 
    * header) of the data set as an empty set of instances.
@@ -976,7 +1308,10 @@ public class ArffLoader
 
     if (m_structure == null) {
       try {
-	m_ArffReader = new ArffReader(m_sourceReader, 1);
+	if (m_NumExecutionSlots > 1)
+	  m_ArffReader = new ParallelArffReader(m_sourceReader, 1, m_NumExecutionSlots);
+	else
+	  m_ArffReader = new ArffReader(m_sourceReader, 1);
 	m_structure  = m_ArffReader.getStructure();
       } catch (Exception ex) {
 	throw new IOException("Unable to determine structure as arff (Reason: " + ex.toString() + ").");
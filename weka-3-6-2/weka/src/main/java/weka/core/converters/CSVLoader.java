@@ -39,8 +39,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StreamTokenizer;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
 
 /**
@@ -68,6 +71,10 @@ import java.util.Vector;
  *  The string representing a missing value.
  *  (default: ?)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for parsing the data.
+ *  (default: 1)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -111,6 +118,9 @@ public class CSVLoader
   
   /** whether the first row has been read. */
   protected boolean m_FirstCheck;
+
+  /** the number of threads to use for parsing the data. */
+  protected int m_NumExecutionSlots = 1;
   
   /**
    * default constructor.
@@ -185,6 +195,11 @@ public class CSVLoader
         "\tThe string representing a missing value.\n"
         + "\t(default: ?)",
         "M", 1, "-M <str>"));
+    
+    result.addElement(new Option(
+        "\tThe number of threads to use for parsing the data.\n"
+        + "\t(default: 1)",
+        "num-slots", 1, "-num-slots <num>"));
       
     return result.elements();
   }
@@ -211,6 +226,10 @@ public class CSVLoader
    *  The string representing a missing value.
    *  (default: ?)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use for parsing the data.
+   *  (default: 1)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -236,6 +255,12 @@ public class CSVLoader
       setMissingValue(tmpStr);
     else
       setMissingValue("?");
+
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
   }
 
   /**
@@ -260,6 +285,9 @@ public class CSVLoader
 
     result.add("-M");
     result.add(getMissingValue());
+
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
     
     return result.toArray(new String[result.size()]);
   }
@@ -352,6 +380,39 @@ public class CSVLoader
     return "The placeholder for missing values, default is '?'.";
   }
   
+  /**
+   * Sets the number of threads to use for parsing the data.
+   * 
+   * @param value	the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots must be at least 1!");
+  }
+  
+  /**
+   * Returns the number of threads to use for parsing the data.
+   * 
+   * @return		the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   *         		displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return 
+        "The number of threads to use for parsing the data; with more than "
+      + "one, chunks of lines are tokenized concurrently.";
+  }
+  
   /**
    * Resets the Loader object and sets the source of the data set to be 
    * the supplied Stream object.
@@ -449,8 +510,45 @@ public class CSVLoader
     
     m_cumulativeInstances = new FastVector();
     FastVector current;
-    while ((current = getInstance(m_st)) != null) {
-      m_cumulativeInstances.addElement(current);
+    if (m_NumExecutionSlots > 1) {
+      // tokenize in parallel, the structure is still determined in order
+      ChunkedParser<FastVector> parser = new ChunkedParser<FastVector>(
+	  m_sourceReader, m_st.lineno() - 1, m_NumExecutionSlots, 
+	  ChunkedParser.DEFAULT_CHUNK_SIZE) {
+	protected List<FastVector> parseChunk(String chunk, int firstLine) 
+	  throws Exception {
+	  
+	  StreamTokenizer st = new StreamTokenizer(new StringReader(chunk));
+	  initTokenizer(st);
+	  st.ordinaryChar(',');
+	  st.ordinaryChar('\t');
+	  List<FastVector> result = new ArrayList<FastVector>();
+	  FastVector values;
+	  try {
+	    while ((values = tokenizeInstance(st)) != null) {
+	      result.add(values);
+	    }
+	  }
+	  catch (IOException e) {
+	    throw ChunkedParser.relocate(e, firstLine);
+	  }
+	  return result;
+	}
+      };
+      try {
+	while ((current = parser.next()) != null) {
+	  updateStructure(current);
+	  m_cumulativeInstances.addElement(current);
+	}
+      }
+      finally {
+	parser.close();
+      }
+    }
+    else {
+      while ((current = getInstance(m_st)) != null) {
+	m_cumulativeInstances.addElement(current);
+      }
     }
 
     FastVector atts = new FastVector(m_structure.numAttributes());
@@ -575,6 +673,26 @@ public class CSVLoader
   private FastVector getInstance(StreamTokenizer tokenizer) 
     throws IOException {
 
+    FastVector current = tokenizeInstance(tokenizer);
+    if (current != null)
+      updateStructure(current);
+
+    return current;
+  }
+
+  /**
+   * Tokenizes a line of the data set, without updating the structure.
+   * Only reads the state of the loader, hence it can be called for 
+   * different tokenizers concurrently.
+   *
+   * @param tokenizer the tokenizer
+   * @return a FastVector containg String and Double objects representing
+   * the values of the instance, null if the end of file has been reached
+   * @exception IOException if an error occurs
+   */
+  protected FastVector tokenizeInstance(StreamTokenizer tokenizer) 
+    throws IOException {
+
     FastVector current = new FastVector();
 
     // Check if end of file reached.
@@ -627,14 +745,21 @@ public class CSVLoader
 			   +", expected "+m_structure.numAttributes());
     }
 
+    return current;
+  }
+
+  /**
+   * Updates the structure with the values of the given line.
+   *
+   * @param current the values of the line
+   */
+  private void updateStructure(FastVector current) {
     // check for structure update
     try {
       checkStructure(current);
     } catch (Exception ex) {
       ex.printStackTrace();
     }
-
-    return current;
   }
 
   /**
@@ -757,7 +882,7 @@ public class CSVLoader
    *
    * @param tokenizer the tokenizer to initialize
    */
-  private void initTokenizer(StreamTokenizer tokenizer) {
+  protected void initTokenizer(StreamTokenizer tokenizer) {
     tokenizer.resetSyntax();         
     tokenizer.whitespaceChars(0, (' '-1));    
     tokenizer.wordChars(' ','\u00FF');
@@ -0,0 +1,295 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ChunkedParser.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Parses line-oriented data with several threads. The lines are read
+ * sequentially from the reader and grouped into chunks of whole lines,
+ * which are tokenized and converted concurrently by a pool of threads.
+ * The parsed rows are handed out one at a time and in the original order,
+ * hence the result does not depend on the number of threads. Only a
+ * limited number of chunks is read ahead, so memory usage stays bounded
+ * when reading incrementally. <p/>
+ *
+ * Subclasses implement <code>parseChunk</code>, which must not modify any
+ * state shared with other chunks.
+ *
+ * @param <T>	the type of the parsed rows
+ * @version $Revision: 1.1 $
+ */
+public abstract class ChunkedParser<T>
+  implements RevisionHandler {
+
+  /** the default number of lines per chunk. */
+  public final static int DEFAULT_CHUNK_SIZE = 2000;
+
+  /** the reader to read the lines from. */
+  protected BufferedReader m_Reader;
+
+  /** the number of lines read so far. */
+  protected int m_LineNo;
+
+  /** the number of lines per chunk. */
+  protected int m_ChunkSize;
+
+  /** the maximum number of chunks read ahead. */
+  protected int m_MaxPending;
+
+  /** the threads parsing the chunks. */
+  protected ExecutorService m_Executor;
+
+  /** the chunks being parsed, in order. */
+  protected LinkedList<Future<List<T>>> m_Pending;
+
+  /** the rows of the current chunk. */
+  protected List<T> m_Current;
+
+  /** the index of the next row in the current chunk. */
+  protected int m_Index;
+
+  /** whether the end of the reader has been reached. */
+  protected boolean m_EndOfInput;
+
+  /** the line to return before the lines of the reader, null if none. */
+  protected String m_PushBack;
+
+  /**
+   * Initializes the parser.
+   *
+   * @param reader		the reader positioned at the start of the data
+   * @param lineNo		the number of lines already read from the reader
+   * @param numSlots		the number of threads to use
+   * @param chunkSize		the number of lines per chunk
+   */
+  public ChunkedParser(Reader reader, int lineNo, int numSlots, int chunkSize) {
+    if (numSlots < 1)
+      throw new IllegalArgumentException("Number of threads must be at least 1!");
+    if (chunkSize < 1)
+      throw new IllegalArgumentException("Chunk size must be at least 1!");
+
+    if (reader instanceof BufferedReader)
+      m_Reader = (BufferedReader) reader;
+    else
+      m_Reader = new BufferedReader(reader);
+    m_LineNo     = lineNo;
+    m_ChunkSize  = chunkSize;
+    m_MaxPending = 2 * numSlots;
+    m_Pending    = new LinkedList<Future<List<T>>>();
+    m_Executor   = Executors.newFixedThreadPool(numSlots, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+	Thread result = new Thread(r, "ChunkedParser");
+	result.setDaemon(true);
+	return result;
+      }
+    });
+  }
+
+  /**
+   * Puts a line back, which is then parsed before the lines of the
+   * reader. Must be called before the first row is requested.
+   *
+   * @param line		the line
+   */
+  public void pushBack(String line) {
+    m_PushBack = line;
+    m_LineNo--;
+  }
+
+  /**
+   * Parses a chunk of lines.
+   *
+   * @param chunk		the lines, separated by newlines
+   * @param firstLine		the line number of the first line in the chunk
+   * @return			the parsed rows
+   * @throws Exception		if parsing fails
+   */
+  protected abstract List<T> parseChunk(String chunk, int firstLine)
+    throws Exception;
+
+  /**
+   * Reads the next chunk of lines and submits it for parsing.
+   *
+   * @return			false if the end of the reader was reached
+   * 				before any line was read
+   * @throws IOException	if reading fails
+   */
+  protected boolean submitChunk() throws IOException {
+    StringBuilder	chunk;
+    String		line;
+    int			lines;
+    final int		firstLine;
+    final String	text;
+
+    chunk     = new StringBuilder();
+    firstLine = m_LineNo + 1;
+    lines     = 0;
+    if (m_PushBack != null) {
+      chunk.append(m_PushBack).append('\n');
+      m_PushBack = null;
+      lines++;
+    }
+    while (lines < m_ChunkSize) {
+      line = m_Reader.readLine();
+      if (line == null) {
+	m_EndOfInput = true;
+	break;
+      }
+      chunk.append(line).append('\n');
+      lines++;
+    }
+    if (lines == 0)
+      return false;
+    m_LineNo += lines;
+
+    text = chunk.toString();
+    m_Pending.addLast(m_Executor.submit(new Callable<List<T>>() {
+      public List<T> call() throws Exception {
+	return parseChunk(text, firstLine);
+      }
+    }));
+
+    return true;
+  }
+
+  /**
+   * Reads ahead until enough chunks are being parsed.
+   *
+   * @throws IOException	if reading fails
+   */
+  protected void fill() throws IOException {
+    while (!m_EndOfInput && (m_Pending.size() < m_MaxPending)) {
+      if (!submitChunk())
+	break;
+    }
+  }
+
+  /**
+   * Returns the next row, in the order of the input.
+   *
+   * @return			the next row or null if there are no more
+   * 				rows
+   * @throws IOException	if reading or parsing fails
+   */
+  public T next() throws IOException {
+    Future<List<T>>	future;
+    T			result;
+    IOException		ioe;
+
+    while ((m_Current == null) || (m_Index == m_Current.size())) {
+      m_Current = null;
+      fill();
+      if (m_Pending.size() == 0) {
+	close();
+	return null;
+      }
+      future = m_Pending.removeFirst();
+      try {
+	m_Current = future.get();
+      }
+      catch (ExecutionException e) {
+	close();
+	if (e.getCause() instanceof IOException)
+	  throw (IOException) e.getCause();
+	ioe = new IOException(e.getCause().toString());
+	ioe.initCause(e.getCause());
+	throw ioe;
+      }
+      catch (InterruptedException e) {
+	close();
+	throw new IOException("Interrupted while parsing!");
+      }
+      m_Index = 0;
+      fill();
+    }
+
+    // release the row, it belongs to the caller now
+    result = m_Current.set(m_Index, null);
+    m_Index++;
+
+    return result;
+  }
+
+  /**
+   * Returns the number of lines read so far. Since chunks are read ahead,
+   * this is usually larger than the line number of the last row returned.
+   *
+   * @return			the number of lines
+   */
+  public int getLineNo() {
+    return m_LineNo;
+  }
+
+  /**
+   * Stops the threads and discards all chunks not returned yet.
+   */
+  public void close() {
+    m_Executor.shutdownNow();
+    m_Pending.clear();
+    m_EndOfInput = true;
+  }
+
+  /**
+   * Makes the line number in an error message of a tokenizer that read
+   * a chunk relative to the start of the input.
+   *
+   * @param e			the error
+   * @param firstLine		the line number of the first line in the chunk
+   * @return			the error with the corrected line number
+   */
+  public static IOException relocate(IOException e, int firstLine) {
+    String	msg;
+    int		line;
+
+    msg = e.getMessage();
+    if ((msg == null) || !msg.matches(".* line \\d+$"))
+      return e;
+    line = Integer.parseInt(msg.replaceAll(".* line ", ""));
+    msg  = msg.replaceAll(" line \\d+$", " line " + (firstLine + line - 1));
+
+    return new IOException(msg);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
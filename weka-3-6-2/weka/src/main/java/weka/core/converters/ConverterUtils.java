@@ -677,6 +677,7 @@ public class ConverterUtils
     + weka.core.converters.CSVLoader.class.getName() + ","
     + weka.core.converters.DatabaseConverter.class.getName() + ","
     + weka.core.converters.LibSVMLoader.class.getName() + ","
+    + weka.core.converters.MappedInstancesLoader.class.getName() + ","
     + weka.core.converters.SerializedInstancesLoader.class.getName() + ","
     + weka.core.converters.TextDirectoryLoader.class.getName() + ","
     + weka.core.converters.XRFFLoader.class.getName();
@@ -689,6 +690,7 @@ public class ConverterUtils
     + weka.core.converters.CSVSaver.class.getName() + ","
     + weka.core.converters.DatabaseConverter.class.getName() + ","
     + weka.core.converters.LibSVMSaver.class.getName() + ","
+    + weka.core.converters.MappedInstancesSaver.class.getName() + ","
     + weka.core.converters.SerializedInstancesSaver.class.getName() + ","
     + weka.core.converters.XRFFSaver.class.getName();
   
@@ -0,0 +1,218 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MappedInstancesLoader.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.MappedInstances;
+import weka.core.RevisionUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ <!-- globalinfo-start -->
+ * Reads a source that contains instances in the binary columnar format. Files are memory-mapped, ie. the data is not copied onto the heap.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ * @version $Revision: 1.1 $
+ * @see Loader
+ * @see MappedInstances
+ */
+public class MappedInstancesLoader
+  extends AbstractFileLoader
+  implements BatchConverter, IncrementalConverter {
+
+  /** for serialization */
+  static final long serialVersionUID = -5327826186014582361L;
+
+  /** the file extension */
+  public static String FILE_EXTENSION = MappedInstances.FILE_EXTENSION;
+
+  /** Holds the mapped data set. */
+  protected Instances m_Dataset = null;
+
+  /** The current index position for incremental reading */
+  protected int m_IncrementalIndex = 0;
+
+  /**
+   * Returns a string describing this object
+   *
+   * @return a description of the classifier suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Reads a source that contains instances in the binary columnar "
+      + "format. Files are memory-mapped, ie. the data is not copied onto "
+      + "the heap.";
+  }
+
+  /** Resets the Loader ready to read a new data set */
+  public void reset() {
+
+    m_Dataset = null;
+    m_IncrementalIndex = 0;
+  }
+
+  /**
+   * Get the file extension used for binary columnar files
+   *
+   * @return the file extension
+   */
+  public String getFileExtension() {
+    return FILE_EXTENSION;
+  }
+
+  /**
+   * Gets all the file extensions used for this type of file
+   *
+   * @return the file extensions
+   */
+  public String[] getFileExtensions() {
+    return new String[]{getFileExtension()};
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return a short file description
+   */
+  public String getFileDescription() {
+    return "Binary columnar instances";
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be
+   * the supplied InputStream. Streams that read from a file are mapped
+   * directly, any other stream is copied into a temporary file first.
+   *
+   * @param in the source InputStream.
+   * @throws IOException if there is a problem with IO
+   */
+  public void setSource(InputStream in) throws IOException {
+
+    m_IncrementalIndex = 0;
+    if (in instanceof FileInputStream) {
+      m_Dataset = new MappedInstances(((FileInputStream) in).getChannel());
+      in.close();
+      return;
+    }
+
+    File tmp = File.createTempFile("weka", FILE_EXTENSION);
+    tmp.deleteOnExit();
+    OutputStream out = new FileOutputStream(tmp);
+    byte[] buffer = new byte[65536];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    out.close();
+    in.close();
+
+    FileInputStream fin = new FileInputStream(tmp);
+    m_Dataset = new MappedInstances(fin.getChannel());
+    fin.close();
+  }
+
+  /**
+   * Determines and returns (if possible) the structure (internally the
+   * header) of the data set as an empty set of instances.
+   *
+   * @return the structure of the data set as an empty set of Instances
+   * @throws IOException if an error occurs
+   */
+  public Instances getStructure() throws IOException {
+
+    if (m_Dataset == null) {
+      throw new IOException("No source has been specified");
+    }
+
+    return new Instances(m_Dataset, 0);
+  }
+
+  /**
+   * Return the full data set. The data set is backed by the mapped file,
+   * use <code>new Instances(data)</code> to obtain a data set that
+   * instances can be added to.
+   *
+   * @return the full data set
+   * @throws IOException if there is no source
+   */
+  public Instances getDataSet() throws IOException {
+
+    if (m_Dataset == null) {
+      throw new IOException("No source has been specified");
+    }
+
+    return m_Dataset;
+  }
+
+  /**
+   * Read the data set incrementally---get the next instance in the data
+   * set or returns null if there are no
+   * more instances to get. If the structure hasn't yet been
+   * determined by a call to getStructure then method should do so before
+   * returning the next instance in the data set.
+   *
+   * @param structure ignored
+   * @return the next instance in the data set as an Instance object or null
+   * if there are no more instances to be read
+   * @throws IOException if there is no source
+   */
+  public Instance getNextInstance(Instances structure) throws IOException {
+
+    if (m_Dataset == null) {
+      throw new IOException("No source has been specified");
+    }
+
+    if (m_IncrementalIndex == m_Dataset.numInstances()) {
+      return null;
+    }
+
+    return m_Dataset.instance(m_IncrementalIndex++);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args should contain the name of an input file.
+   */
+  public static void main(String[] args) {
+    runFileLoader(new MappedInstancesLoader(), args);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MappedInstancesSaver.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Capabilities;
+import weka.core.MappedInstances;
+import weka.core.RevisionUtils;
+import weka.core.Capabilities.Capability;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ <!-- globalinfo-start -->
+ * Writes the instances to a file with extension bci in the binary columnar format, which can be memory-mapped by the MappedInstancesLoader.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -i &lt;the input file&gt;
+ * The input file</pre>
+ *
+ * <pre> -o &lt;the output file&gt;
+ * The output file</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision: 1.1 $
+ * @see Saver
+ * @see MappedInstances
+ */
+public class MappedInstancesSaver
+  extends AbstractFileSaver
+  implements BatchConverter {
+
+  /** for serialization. */
+  static final long serialVersionUID = 3480934512718204937L;
+
+  /** the output stream. */
+  protected OutputStream m_Output;
+
+  /** Constructor. */
+  public MappedInstancesSaver(){
+      resetOptions();
+  }
+
+  /**
+   * Returns a string describing this Saver.
+   *
+   * @return a description of the Saver suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Writes the instances to a file with extension bci in the binary "
+      + "columnar format, which can be memory-mapped by the "
+      + "MappedInstancesLoader.";
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return a short file description
+   */
+  public String getFileDescription() {
+    return "Binary columnar instances";
+  }
+
+  /**
+   * Resets the Saver.
+   */
+  public void resetOptions() {
+
+    super.resetOptions();
+    setFileExtension(MappedInstances.FILE_EXTENSION);
+  }
+
+  /**
+   * Returns the Capabilities of this saver.
+   *
+   * @return            the capabilities of this object
+   * @see               Capabilities
+   */
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+
+    // attributes
+    result.enableAllAttributes();
+    result.enable(Capability.MISSING_VALUES);
+
+    // class
+    result.enableAllClasses();
+    result.enable(Capability.MISSING_CLASS_VALUES);
+    result.enable(Capability.NO_CLASS);
+
+    return result;
+  }
+
+  /**
+   * Resets the writer, setting writer and output stream to null.
+   */
+  public void resetWriter() {
+    super.resetWriter();
+
+    m_Output = null;
+  }
+
+  /**
+   * Sets the destination output stream.
+   *
+   * @param output the output stream.
+   * @throws IOException throws an IOException if destination cannot be set
+   */
+  public void setDestination(OutputStream output) throws IOException {
+    super.setDestination(output);
+
+    m_Output = output;
+  }
+
+  /**
+   * Writes a Batch of instances.
+   *
+   * @throws IOException throws IOException if saving in batch mode is not possible
+   */
+  public void writeBatch() throws IOException {
+    if(getRetrieval() == INCREMENTAL)
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+
+    if(getInstances() == null)
+      throw new IOException("No instances to save");
+
+    setRetrieval(BATCH);
+
+    if (m_Output == null)
+      throw new IOException("No output for the binary columnar format.");
+
+    setWriteMode(WRITE);
+    MappedInstances.write(getInstances(), m_Output);
+    m_Output.flush();
+    m_Output.close();
+    setWriteMode(WAIT);
+    resetWriter();
+    setWriteMode(CANCEL);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args should contain the options of a Saver.
+   */
+  public static void main(String[] args) {
+    runFileSaver(new MappedInstancesSaver(), args);
+  }
+}
@@ -23,6 +23,7 @@ package weka.core.neighboursearch;
 
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.NormalizableDistance;
 import weka.core.Option;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
@@ -62,6 +63,10 @@ public class LinearNNSearch
   /** Whether to skip instances from the neighbours that are identical to the query instance. */
   protected boolean m_SkipIdentical = false;
 
+  /** The number of instances a NormalizableDistance computes the distances
+   * for in one go. */
+  public static final int BLOCK_SIZE = 256;
+
   /**
    * Constructor. Needs setInstances(Instances) 
    * to be called before the class is usable.
@@ -212,6 +217,18 @@ public class LinearNNSearch
  
     MyHeap heap = new MyHeap(kNN);
     double distance; int firstkNN=0;
+    
+    // without performance stats, NormalizableDistance computes the distances
+    // block-wise; the cut-off of a block is the k-th distance at its start,
+    // which is never smaller than the one at the single instances
+    NormalizableDistance blockDistance = null;
+    double[] block = null; int blockStart=0, blockEnd=0;
+    if( (m_Stats==null) && (m_DistanceFunction instanceof NormalizableDistance) &&
+        (((NormalizableDistance) m_DistanceFunction).getInstances() == m_Instances) ) {
+      blockDistance = (NormalizableDistance) m_DistanceFunction;
+      block = new double[BLOCK_SIZE];
+    }
+    
     for(int i=0; i<m_Instances.numInstances(); i++) {
       if(target == m_Instances.instance(i)) //for hold-one-out cross-validation
         continue;
@@ -220,7 +237,16 @@ public class LinearNNSearch
       if(firstkNN<kNN) {
         if(print)
           System.out.println("K(a): "+(heap.size()+heap.noOfKthNearest()));
-        distance = m_DistanceFunction.distance(target, m_Instances.instance(i), Double.POSITIVE_INFINITY, m_Stats);
+        if(blockDistance!=null) {
+          if(i>=blockEnd) {
+            blockStart = i;
+            blockEnd = Math.min(i+BLOCK_SIZE, m_Instances.numInstances());
+            blockDistance.distances(target, blockStart, blockEnd, Double.POSITIVE_INFINITY, block);
+          }
+          distance = block[i-blockStart];
+        }
+        else
+          distance = m_DistanceFunction.distance(target, m_Instances.instance(i), Double.POSITIVE_INFINITY, m_Stats);
         if(distance == 0.0 && m_SkipIdentical)
           if(i<m_Instances.numInstances()-1)
             continue;
@@ -233,7 +259,16 @@ public class LinearNNSearch
         MyHeapElement temp = heap.peek();
         if(print)
           System.out.println("K(b): "+(heap.size()+heap.noOfKthNearest()));
-        distance = m_DistanceFunction.distance(target, m_Instances.instance(i), temp.distance, m_Stats);
+        if(blockDistance!=null) {
+          if(i>=blockEnd) {
+            blockStart = i;
+            blockEnd = Math.min(i+BLOCK_SIZE, m_Instances.numInstances());
+            blockDistance.distances(target, blockStart, blockEnd, temp.distance, block);
+          }
+          distance = block[i-blockStart];
+        }
+        else
+          distance = m_DistanceFunction.distance(target, m_Instances.instance(i), temp.distance, m_Stats);
         if(distance == 0.0 && m_SkipIdentical)
           continue;
         if(distance < temp.distance) {
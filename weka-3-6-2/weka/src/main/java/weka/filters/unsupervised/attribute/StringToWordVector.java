@@ -130,6 +130,16 @@ import java.util.Vector;
  *  The tokenizing algorihtm (classname plus parameters) to use.
  *  (default: weka.core.tokenizers.WordTokenizer)</pre>
  * 
+ * <pre> -hash-dimension &lt;int&gt;
+ *  The number of attributes to hash the words into, instead
+ *  of building a dictionary (hashing trick).
+ *  (default: 0, i.e., use a dictionary)</pre>
+ * 
+ * <pre> -streaming
+ *  Convert the instances one at a time, also in the first batch.
+ *  Document frequencies and the average document length are
+ *  those of the documents seen so far. Requires hashing.</pre>
+ * 
  <!-- options-end -->
  *
  * @author Len Trigg (len@reeltwo.com)
@@ -234,6 +244,19 @@ public class StringToWordVector
   /** the tokenizer algorithm to use. */
   private Tokenizer m_Tokenizer = new WordTokenizer();
 
+  /** the number of attributes the words are hashed into, 0 to use a 
+   * dictionary instead. */
+  private int m_HashDimension = 0;
+
+  /** whether to convert the instances one at a time (hashing only). */
+  private boolean m_Streaming = false;
+
+  /** the sum of the document lengths seen so far (streaming only). */
+  private double m_SumDocLength;
+
+  /** the stopwords used when hashing, created on demand. */
+  private transient Stopwords m_HashStopwords;
+
   /**
    * Default constructor. Targets 1000 words in the output.
    */
@@ -332,6 +355,18 @@ public class StringToWordVector
 	+ "\t(default: " + WordTokenizer.class.getName() + ")",
 	"tokenizer", 1, "-tokenizer <spec>"));
 
+    result.addElement(new Option(
+	"\tThe number of attributes to hash the words into, instead\n"
+	+ "\tof building a dictionary (hashing trick).\n"
+	+ "\t(default: 0, i.e., use a dictionary)",
+	"hash-dimension", 1, "-hash-dimension <int>"));
+
+    result.addElement(new Option(
+	"\tConvert the instances one at a time, also in the first batch.\n"
+	+ "\tDocument frequencies and the average document length are\n"
+	+ "\tthose of the documents seen so far. Requires hashing.",
+	"streaming", 0, "-streaming"));
+
     return result.elements();
   }
 
@@ -409,6 +444,16 @@ public class StringToWordVector
          *  The tokenizing algorihtm (classname plus parameters) to use.
          *  (default: weka.core.tokenizers.WordTokenizer)</pre>
          * 
+         * <pre> -hash-dimension &lt;int&gt;
+         *  The number of attributes to hash the words into, instead
+         *  of building a dictionary (hashing trick).
+         *  (default: 0, i.e., use a dictionary)</pre>
+         * 
+         * <pre> -streaming
+         *  Convert the instances one at a time, also in the first batch.
+         *  Document frequencies and the average document length are
+         *  those of the documents seen so far. Requires hashing.</pre>
+         * 
          <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -504,6 +549,14 @@ public class StringToWordVector
 	((OptionHandler) tokenizer).setOptions(tokenizerSpec);
       setTokenizer(tokenizer);
     }
+
+    value = Utils.getOption("hash-dimension", options);
+    if (value.length() != 0)
+      setHashDimension(Integer.parseInt(value));
+    else
+      setHashDimension(0);
+
+    setStreaming(Utils.getFlag("streaming", options));
   }
 
   /**
@@ -578,6 +631,14 @@ public class StringToWordVector
 	  ((OptionHandler) getTokenizer()).getOptions());
     result.add(spec.trim());
 
+    if (getHashDimension() > 0) {
+      result.add("-hash-dimension");
+      result.add(String.valueOf(getHashDimension()));
+    }
+
+    if (getStreaming())
+      result.add("-streaming");
+
     return (String[]) result.toArray(new String[result.size()]);
   }
 
@@ -663,6 +724,14 @@ public class StringToWordVector
     m_SelectedRange.setUpper(instanceInfo.numAttributes() - 1);
     m_AvgDocLength = -1;
     m_NumInstances = -1;
+
+    if (m_HashDimension > 0) {
+      determineHashedFormat();
+      return true;
+    }
+    if (m_Streaming)
+      throw new Exception("Streaming is only possible with hashing!");
+
     return false;
   }
 
@@ -684,7 +753,22 @@ public class StringToWordVector
       resetQueue();
       m_NewBatch = false;
     }
-    if (isFirstBatchDone()) {
+    if (m_Streaming) {
+      // update the statistics with this document before converting it
+      FastVector fv = new FastVector();
+      m_NumInstances++;
+      int firstCopy = convertInstancewoDocNorm(instance, fv, true);
+      Instance inst = (Instance)fv.elementAt(0);
+      if (m_filterType != FILTER_NONE) {
+	m_SumDocLength += documentLength(inst, firstCopy);
+	m_AvgDocLength = m_SumDocLength / m_NumInstances;
+	if ((m_filterType == FILTER_NORMALIZE_ALL) || isFirstBatchDone()) {
+	  normalizeInstance(inst, firstCopy);
+	}
+      }
+      push(inst);
+      return true;
+    } else if (isFirstBatchDone()) {
       FastVector fv = new FastVector();
       int firstCopy = convertInstancewoDocNorm(instance, fv);
       Instance inst = (Instance)fv.elementAt(0);
@@ -716,10 +800,13 @@ public class StringToWordVector
     // We only need to do something in this method
     // if the first batch hasn't been processed. Otherwise
     // input() has already done all the work.
-    if (!isFirstBatchDone()) {
+    if (!isFirstBatchDone() && !m_Streaming) {
 
       // Determine the dictionary from the first batch (training data)
-      determineDictionary();
+      if (m_HashDimension > 0)
+	determineHashStatistics();
+      else
+	determineDictionary();
 
       // Convert all instances w/o normalization
       FastVector fv = new FastVector();
@@ -732,14 +819,7 @@ public class StringToWordVector
       if (m_filterType != FILTER_NONE) {
 	m_AvgDocLength = 0;
 	for(int i=0; i<fv.size(); i++) {
-	  Instance inst = (Instance) fv.elementAt(i);
-	  double docLength = 0;
-	  for(int j=0; j<inst.numValues(); j++) {
-	    if(inst.index(j)>=firstCopy) {
-	      docLength += inst.valueSparse(j) * inst.valueSparse(j);
-	    }
-	  }        
-	  m_AvgDocLength += Math.sqrt(docLength);
+	  m_AvgDocLength += documentLength((Instance) fv.elementAt(i), firstCopy);
 	}
 	m_AvgDocLength /= m_NumInstances;
       }
@@ -776,7 +856,10 @@ public class StringToWordVector
     "Converts String attributes into a set of attributes representing "
     + "word occurrence (depending on the tokenizer) information from the "
     + "text contained in the strings. The set of words (attributes) is "
-    + "determined by the first batch filtered (typically training data).";
+    + "determined by the first batch filtered (typically training data). "
+    + "Alternatively, the words can be hashed into a fixed number of "
+    + "attributes, which needs no dictionary and also allows the filter "
+    + "to process the data as a stream.";
   }  
 
   /**
@@ -1310,6 +1393,75 @@ public class StringToWordVector
     return "The tokenizing algorithm to use on the strings.";
   }
 
+  /**
+   * Sets the number of attributes the words are hashed into.
+   *
+   * @param value	the number of attributes, 0 to use a dictionary
+   */
+  public void setHashDimension(int value) {
+    if (value >= 0)
+      m_HashDimension = value;
+    else
+      System.err.println("The hash dimension must be at least 0!");
+  }
+
+  /**
+   * Returns the number of attributes the words are hashed into.
+   *
+   * @return		the number of attributes, 0 if a dictionary is used
+   */
+  public int getHashDimension() {
+    return m_HashDimension;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String hashDimensionTipText() {
+    return 
+        "The number of attributes to hash the words into (hashing trick), "
+      + "0 to build a dictionary from the first batch instead. Hashing "
+      + "needs no dictionary and the output format is known in advance, but "
+      + "different words can share an attribute.";
+  }
+
+  /**
+   * Sets whether to convert the instances one at a time, also in the 
+   * first batch.
+   *
+   * @param value	true if to convert the instances one at a time
+   */
+  public void setStreaming(boolean value) {
+    m_Streaming = value;
+  }
+
+  /**
+   * Returns whether the instances are converted one at a time, also in the
+   * first batch.
+   *
+   * @return		true if the instances are converted one at a time
+   */
+  public boolean getStreaming() {
+    return m_Streaming;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String streamingTipText() {
+    return 
+        "If true, the instances of the first batch are converted one at a "
+      + "time instead of being buffered, with the document frequencies and "
+      + "the average document length of the documents seen so far. Requires "
+      + "hashing.";
+  }
+
   /**
    * sorts an array.
    * 
@@ -1366,10 +1518,11 @@ public class StringToWordVector
   }
 
   /**
-   * determines the dictionary.
+   * Returns the stopwords to use.
+   *
+   * @return the stopwords
    */
-  private void determineDictionary() {
-    // initialize stopwords
+  private Stopwords createStopwords() {
     Stopwords stopwords = new Stopwords();
     if (getUseStoplist()) {
       try {
@@ -1381,6 +1534,177 @@ public class StringToWordVector
       }
     }
 
+    return stopwords;
+  }
+
+  /**
+   * Adds copies of the attributes that are not converted.
+   *
+   * @param attributes the list to add the attributes to
+   * @return the index of the class attribute in the list, -1 if none
+   */
+  private int addUnconvertedAttributes(FastVector attributes) {
+    int classIndex = -1;
+    for (int i = 0; i < getInputFormat().numAttributes(); i++) {
+      if (!m_SelectedRange.isInRange(i)) { 
+	if (getInputFormat().classIndex() == i) {
+	  classIndex = attributes.size();
+	}
+	attributes.addElement(getInputFormat().attribute(i).copy());
+      }     
+    }
+
+    return classIndex;
+  }
+
+  /**
+   * Determines the output format when hashing: the attributes that are
+   * not converted, followed by one attribute per hash value.
+   */
+  private void determineHashedFormat() {
+    determineSelectedRange();
+    m_HashStopwords = createStopwords();
+
+    FastVector attributes = new FastVector(
+	getInputFormat().numAttributes() + m_HashDimension);
+    int classIndex = addUnconvertedAttributes(attributes);
+    for (int i = 0; i < m_HashDimension; i++)
+      attributes.addElement(new Attribute(m_Prefix + "hash_" + i));
+
+    // the document frequencies are collected per hash value
+    m_DocsCounts = new int[attributes.size()];
+    m_NumInstances = 0;
+    m_SumDocLength = 0;
+    m_Dictionary = new TreeMap();
+
+    Instances outputFormat = new Instances(getInputFormat().relationName(), 
+	attributes, 0);
+    outputFormat.setClassIndex(classIndex);
+    setOutputFormat(outputFormat);
+  }
+
+  /**
+   * Determines the document frequencies of the hash values from the first
+   * batch.
+   */
+  private void determineHashStatistics() {
+    int firstCopy = outputFormatPeek().numAttributes() - m_HashDimension;
+    for (int i = 0; i < getInputFormat().numInstances(); i++) {
+      TreeMap contained = new TreeMap();
+      addWordCounts(getInputFormat().instance(i), firstCopy, contained);
+      addDocumentFrequencies(contained, firstCopy);
+    }
+    m_NumInstances = getInputFormat().numInstances();
+  }
+
+  /**
+   * Increments the document frequencies of the words (attributes) that 
+   * occur in a document.
+   *
+   * @param contained the values of the document
+   * @param firstCopy the index of the first word attribute
+   */
+  private void addDocumentFrequencies(TreeMap contained, int firstCopy) {
+    Iterator it = contained.tailMap(new Integer(firstCopy)).keySet().iterator();
+    while (it.hasNext())
+      m_DocsCounts[((Integer) it.next()).intValue()]++;
+  }
+
+  /**
+   * Adds the counts (or presence) of the words of the instance's string
+   * attributes to the given map. With hashing, each word is mapped to 
+   * its hash value, otherwise words not in the dictionary are ignored.
+   *
+   * @param instance the instance to process
+   * @param firstCopy the index of the first word attribute
+   * @param contained the map (attribute index - value) to add the words to
+   */
+  private void addWordCounts(Instance instance, int firstCopy, 
+      TreeMap contained) {
+
+    for (int j = 0; j < instance.numAttributes(); j++) { 
+      //if ((getInputFormat().attribute(j).type() == Attribute.STRING) 
+      if (m_SelectedRange.isInRange(j)
+	  && (instance.isMissing(j) == false)) {          
+
+	m_Tokenizer.tokenize(instance.stringValue(j));
+
+	while (m_Tokenizer.hasMoreElements()) {
+	  String word = (String)m_Tokenizer.nextElement(); 
+	  if(this.m_lowerCaseTokens==true)
+	    word = word.toLowerCase();
+	  word = m_Stemmer.stem(word);
+	  Integer index;
+	  if (m_HashDimension > 0) {
+	    if (m_HashStopwords == null)
+	      m_HashStopwords = createStopwords();
+	    if (m_useStoplist && m_HashStopwords.is(word))
+	      continue;
+	    index = new Integer(firstCopy + hash(word));
+	  } else {
+	    index = (Integer) m_Dictionary.get(word);
+	  }
+	  if (index != null) {
+	    if (m_OutputCounts) { // Separate if here rather than two lines down to avoid hashtable lookup
+	      Double count = (Double)contained.get(index);
+	    if (count != null) {
+	      contained.put(index, new Double(count.doubleValue() + 1.0));
+	    } else {
+	      contained.put(index, new Double(1));
+	    }
+	    } else {
+	      contained.put(index, new Double(1));
+	    }                
+	  }
+	}
+      }
+    }
+  }
+
+  /**
+   * Returns the length (euclidean norm) of the document, i.e., of the
+   * word attributes of the instance.
+   *
+   * @param inst the converted instance
+   * @param firstCopy the index of the first word attribute
+   * @return the length of the document
+   */
+  private double documentLength(Instance inst, int firstCopy) {
+    double docLength = 0;
+    for(int j=0; j<inst.numValues(); j++) {
+      if(inst.index(j)>=firstCopy) {
+	docLength += inst.valueSparse(j) * inst.valueSparse(j);
+      }
+    }        
+
+    return Math.sqrt(docLength);
+  }
+
+  /**
+   * Returns the hash value of a word, between 0 and the hash dimension - 1.
+   *
+   * @param word the word
+   * @return the hash value
+   */
+  private int hash(String word) {
+    // spread the bits of the string's hash code (murmur3 finalizer)
+    int h = word.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+
+    return (h & 0x7fffffff) % m_HashDimension;
+  }
+
+  /**
+   * determines the dictionary.
+   */
+  private void determineDictionary() {
+    // initialize stopwords
+    Stopwords stopwords = createStopwords();
+
     // Operate on a per-class basis if class attribute is set
     int classInd = getInputFormat().classIndex();
     int values = 1;
@@ -1511,15 +1835,7 @@ public class StringToWordVector
 	getInputFormat().numAttributes());
 
     // Add the non-converted attributes 
-    int classIndex = -1;
-    for (int i = 0; i < getInputFormat().numAttributes(); i++) {
-      if (!m_SelectedRange.isInRange(i)) { 
-	if (getInputFormat().classIndex() == i) {
-	  classIndex = attributes.size();
-	}
-	attributes.addElement(getInputFormat().attribute(i).copy());
-      }     
-    }
+    int classIndex = addUnconvertedAttributes(attributes);
 
     // Add the word vector attributes (eliminating duplicates
 	// that occur in multiple classes)
@@ -1569,11 +1885,25 @@ public class StringToWordVector
   /**
    * Converts the instance w/o normalization.
    * 
-   * @oaram instance the instance to convert
+   * @param instance the instance to convert
    * @param v
    * @return the conerted instance
    */
   private int convertInstancewoDocNorm(Instance instance, FastVector v) {
+    return convertInstancewoDocNorm(instance, v, false);
+  }
+
+  /**
+   * Converts the instance w/o normalization, optionally adding the 
+   * words of the instance to the document frequencies first.
+   * 
+   * @param instance the instance to convert
+   * @param v the list to add the converted instance to
+   * @param updateDocsCounts whether to update the document frequencies
+   * @return the index of the first word attribute
+   */
+  private int convertInstancewoDocNorm(Instance instance, FastVector v, 
+      boolean updateDocsCounts) {
 
     // Convert the instance into a sorted set of indexes
     TreeMap contained = new TreeMap();
@@ -1613,34 +1943,9 @@ public class StringToWordVector
       }     
     }
 
-    for (int j = 0; j < instance.numAttributes(); j++) { 
-      //if ((getInputFormat().attribute(j).type() == Attribute.STRING) 
-      if (m_SelectedRange.isInRange(j)
-	  && (instance.isMissing(j) == false)) {          
-
-	m_Tokenizer.tokenize(instance.stringValue(j));
-
-	while (m_Tokenizer.hasMoreElements()) {
-	  String word = (String)m_Tokenizer.nextElement(); 
-	  if(this.m_lowerCaseTokens==true)
-	    word = word.toLowerCase();
-	  word = m_Stemmer.stem(word);
-	  Integer index = (Integer) m_Dictionary.get(word);
-	  if (index != null) {
-	    if (m_OutputCounts) { // Separate if here rather than two lines down to avoid hashtable lookup
-	      Double count = (Double)contained.get(index);
-	    if (count != null) {
-	      contained.put(index, new Double(count.doubleValue() + 1.0));
-	    } else {
-	      contained.put(index, new Double(1));
-	    }
-	    } else {
-	      contained.put(index, new Double(1));
-	    }                
-	  }
-	}
-      }
-    }
+    addWordCounts(instance, firstCopy, contained);
+    if (updateDocsCounts)
+      addDocumentFrequencies(contained, firstCopy);
 
     //Doing TFTransform
     if(m_TFTransform==true) {
@@ -1700,19 +2005,12 @@ public class StringToWordVector
   private void normalizeInstance(Instance inst, int firstCopy) 
   throws Exception {
 
-    double docLength = 0;
-
     if (m_AvgDocLength < 0) {
       throw new Exception("Average document length not set.");
     }
 
     // Compute length of document vector
-    for(int j=0; j<inst.numValues(); j++) {
-      if(inst.index(j)>=firstCopy) {
-	docLength += inst.valueSparse(j) * inst.valueSparse(j);
-      }
-    }        
-    docLength = Math.sqrt(docLength);
+    double docLength = documentLength(inst, firstCopy);
 
     // Normalize document vector
     for(int j=0; j<inst.numValues(); j++) {
@@ -0,0 +1,111 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.associations;
+
+import weka.associations.AbstractAssociatorTest;
+import weka.associations.Associator;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests FPGrowth. Run from the command line with:<p/>
+ * java weka.associations.FPGrowthTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class FPGrowthTest
+  extends AbstractAssociatorTest {
+
+  public FPGrowthTest(String name) {
+    super(name);
+  }
+
+  /** Creates a default FPGrowth */
+  public Associator getAssociator() {
+    return new FPGrowth();
+  }
+
+  /**
+   * builds the associator with the given options and returns the model
+   *
+   * @param associator	the associator to use
+   * @param data	the data to use
+   * @param options	the options for the associator
+   * @return		the model, without the name of the algorithm
+   * @throws Exception	if building fails
+   */
+  protected String associate(Apriori associator, Instances data, String[] options)
+    throws Exception {
+
+    associator.setOptions((String[]) options.clone());
+    associator.buildAssociations(data);
+    String result = associator.toString();
+    if (result.indexOf("Minimum support") > -1)
+      result = result.substring(result.indexOf("Minimum support"));
+
+    return result;
+  }
+
+  /**
+   * tests whether the same item sets and rules as with Apriori are found,
+   * for all metric types
+   */
+  public void testSameAsApriori() throws Exception {
+    String[][] options = new String[][]{
+	{"-I"},
+	{"-N", "50", "-M", "0.01", "-I"},
+	{"-T", "1", "-C", "1.1", "-N", "30"},
+	{"-T", "2", "-C", "0.01", "-N", "30"},
+	{"-T", "3", "-C", "1.1", "-N", "30"},
+	{"-S", "0.05", "-N", "20"},
+	{"-U", "0.7", "-M", "0.05", "-N", "40", "-I"}};
+
+    for (int seed = 0; seed < 2; seed++) {
+      Instances data = m_Tester.makeTestDataset(
+	  seed, 200, 8, 0, 0, 0, 0, 2, Attribute.NOMINAL, false);
+      Random rand = new Random(seed);
+      for (int i = 0; i < data.numInstances(); i++) {
+	if (rand.nextInt(4) == 0)
+	  data.instance(i).setMissing(rand.nextInt(data.numAttributes()));
+      }
+      for (int i = 0; i < options.length; i++) {
+	assertEquals(
+	    Utils.joinOptions(options[i]) + ", seed " + seed,
+	    associate(new Apriori(), data, options[i]),
+	    associate(new FPGrowth(), data, options[i]));
+      }
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(FPGrowthTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
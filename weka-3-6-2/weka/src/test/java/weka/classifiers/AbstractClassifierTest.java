@@ -25,11 +25,23 @@ import weka.core.Attribute;
 import weka.core.CheckGOE;
 import weka.core.CheckOptionHandler;
 import weka.core.FastVector;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.OptionHandler;
+import weka.core.Utils;
 import weka.core.CheckScheme.PostProcessor;
 import weka.test.Regression;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 /**
@@ -913,6 +925,228 @@ public abstract class AbstractClassifierTest
     return data;
   }
 
+  /**
+   * Generates data for checking that different ways of building a model,
+   * e.g., with one and with several threads, give the same result. The
+   * data is large enough for the multi-threaded code paths, the numeric
+   * values are rounded to one decimal so that there are ties, and a third
+   * of the class values is replaced with noise.
+   *
+   * @param numInstances	the number of instances
+   * @param numClasses	the number of classes (if nominal class)
+   * @param classType	the class type (NUMERIC, NOMINAL, etc.)
+   * @param missing	whether every fifth instance gets a missing value
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances makeNoisyDataset(int numInstances, int numClasses, 
+      int classType, boolean missing) throws Exception {
+
+    Instances data = m_Tester.makeTestDataset(
+	1, numInstances, 3, 5, 0, 0, 0, numClasses, classType, false);
+
+    Random rand = new Random(1);
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      for (int n = 0; n < data.numAttributes(); n++) {
+	if (n == data.classIndex()) {
+	  if (rand.nextInt(3) > 0)
+	    continue;
+	  if (data.classAttribute().isNominal())
+	    inst.setValue(n, rand.nextInt(data.numClasses()));
+	  else
+	    inst.setValue(n, inst.value(n) + rand.nextGaussian());
+	}
+	else if (data.attribute(n).isNumeric()) {
+	  inst.setValue(n, Math.rint(inst.value(n) * 10) / 10);
+	}
+      }
+      if (missing && (rand.nextInt(5) == 0)) {
+	int n = rand.nextInt(data.numAttributes() - 1);
+	if (n >= data.classIndex())
+	  n++;
+	inst.setMissing(n);
+      }
+    }
+
+    return data;
+  }
+
+  /**
+   * Builds the classifier returned by getClassifier() with the given 
+   * options.
+   *
+   * @param data	the training data
+   * @param options	the options for the classifier
+   * @return		the built classifier
+   * @throws Exception	if building fails
+   * @see		#getClassifier()
+   */
+  protected Classifier buildWithOptions(Instances data, String options) 
+    throws Exception {
+
+    Classifier result = getClassifier();
+    result.setOptions(Utils.splitOptions(options));
+    result.buildClassifier(data);
+
+    return result;
+  }
+
+  /**
+   * Checks whether the two sets of options result in the same model, i.e.,
+   * the same output of toString().
+   *
+   * @param data	the training data
+   * @param options	the first options
+   * @param other	the options to compare with
+   * @throws Exception	if building fails
+   */
+  protected void checkSameModel(Instances data, String options, String other)
+    throws Exception {
+
+    assertEquals(options + " / " + other, 
+	buildWithOptions(data, options).toString(), 
+	buildWithOptions(data, other).toString());
+  }
+
+  /**
+   * Checks whether the two sets of options result in exactly the same 
+   * predictions for the training data.
+   *
+   * @param data	the training data
+   * @param options	the first options
+   * @param other	the options to compare with
+   * @throws Exception	if building fails
+   */
+  protected void checkSamePredictions(Instances data, String options, 
+      String other) throws Exception {
+
+    Classifier expected = buildWithOptions(data, options);
+    Classifier actual = buildWithOptions(data, other);
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      String msg = options + " / " + other + ", instance " + i;
+      double[] dist = expected.distributionForInstance(inst);
+      double[] otherDist = actual.distributionForInstance(inst);
+      for (int n = 0; n < dist.length; n++)
+	assertEquals(msg, dist[n], otherDist[n], 0.0);
+      assertEquals(msg, 
+	  expected.classifyInstance(inst), actual.classifyInstance(inst), 0.0);
+    }
+  }
+
+  /**
+   * Compiles the given source code of a class in the default package,
+   * with the system Java compiler.
+   *
+   * @param className	the name of the class
+   * @param source	the source code of the class
+   * @return		the compiled class, null if no Java compiler is
+   * 			available
+   * @throws Exception	if compiling or loading fails
+   */
+  protected Class compileSource(String className, String source) 
+    throws Exception {
+
+    // javax.tools is only available from Java 6 on
+    Object compiler = Class.forName("javax.tools.ToolProvider")
+      .getMethod("getSystemJavaCompiler", new Class[0])
+      .invoke(null, new Object[0]);
+    if (compiler == null)
+      return null;
+
+    File dir = File.createTempFile("weka_classifiers_source", "");
+    dir.delete();
+    dir.mkdir();
+    File file = new File(dir, className + ".java");
+    try {
+      FileWriter writer = new FileWriter(file);
+      writer.write(source);
+      writer.close();
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      Method run = Class.forName("javax.tools.Tool").getMethod("run", 
+	  new Class[]{InputStream.class, OutputStream.class, 
+	      OutputStream.class, String[].class});
+      Integer result = (Integer) run.invoke(compiler, new Object[]{null, 
+	  output, output, 
+	  new String[]{"-d", dir.getAbsolutePath(), file.getAbsolutePath()}});
+      assertEquals("Compiling " + className + " failed:\n" + output, 
+	  0, result.intValue());
+
+      URLClassLoader loader = new URLClassLoader(
+	  new URL[]{dir.toURI().toURL()}, null);
+      return loader.loadClass(className);
+    }
+    finally {
+      File[] files = dir.listFiles();
+      for (int i = 0; i < files.length; i++)
+	files[i].delete();
+      dir.delete();
+    }
+  }
+
+  /**
+   * Compiles the source code generated by the given Sourcable classifier
+   * and checks whether its classify() method predicts the same as 
+   * classifyInstance for the given data. If the source code has a
+   * distribution() method, its distributions are compared to the ones of
+   * distributionForInstance.
+   *
+   * @param classifier	the built classifier, must be Sourcable
+   * @param data	the data to compare the predictions on
+   * @throws Exception	if generating or compiling the source fails
+   */
+  protected void checkSource(Classifier classifier, Instances data) 
+    throws Exception {
+
+    String className = "WekaSource" + classifier.getClass().getSimpleName();
+    Class source = compileSource(className, 
+	((Sourcable) classifier).toSource(className));
+    if (source == null) {
+      System.err.println("No Java compiler available, source of " 
+	  + classifier.getClass().getName() + " not checked!");
+      return;
+    }
+    // the generated classes aren't public
+    Method classify = source.getMethod("classify", new Class[]{Object[].class});
+    classify.setAccessible(true);
+    Method distribution = null;
+    try {
+      distribution = source.getMethod("distribution", new Class[]{Object[].class});
+      distribution.setAccessible(true);
+    }
+    catch (NoSuchMethodException e) {
+      // only the predicted class is compared
+    }
+
+    for (int i = 0; i < data.numInstances(); i++) {
+      // the same as the wrapper generated by Evaluation.wekaStaticWrapper
+      Instance inst = data.instance(i);
+      Object[] values = new Object[inst.numAttributes()];
+      for (int n = 0; n < values.length; n++) {
+	if ((n == inst.classIndex()) || inst.isMissing(n))
+	  continue;
+	if (inst.attribute(n).isNominal())
+	  values[n] = inst.stringValue(n);
+	else if (inst.attribute(n).isNumeric())
+	  values[n] = new Double(inst.value(n));
+      }
+
+      String msg = "instance " + i;
+      // compared as objects, so that missing values are equal
+      assertEquals(msg, new Double(classifier.classifyInstance(inst)), 
+	  classify.invoke(null, new Object[]{values}));
+      if (distribution != null) {
+	double[] expected = classifier.distributionForInstance(inst);
+	double[] actual = (double[]) distribution.invoke(null, new Object[]{values});
+	assertEquals(msg, expected.length, actual.length);
+	for (int n = 0; n < expected.length; n++)
+	  assertEquals(msg, expected[n], actual[n], 1e-12);
+      }
+    }
+  }
+
   /**
    * Runs a regression test -- this checks that the output of the tested
    * object matches that in a reference version. When this test is
@@ -40,6 +40,7 @@ public class AllTests
     TestSuite suite = new TestSuite();
     
     suite.addTest(weka.classifiers.pmml.consumer.AllTests.suite());
+    suite.addTest(EvaluationTest.suite());
     suite.addTest(suite("weka.classifiers.Classifier"));
     suite.addTest(suite("weka.classifiers.functions.supportVector.Kernel"));
 
@@ -0,0 +1,199 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato
+ */
+
+package weka.classifiers;
+
+import weka.classifiers.functions.LinearRegression;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Range;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests Evaluation. Run from the command line with:<p/>
+ * java weka.classifiers.EvaluationTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class EvaluationTest
+  extends TestCase {
+
+  /**
+   * Constructs the <code>EvaluationTest</code>.
+   *
+   * @param name 	the name of the test class
+   */
+  public EvaluationTest(String name) {
+    super(name);
+  }
+
+  /**
+   * generates a dataset with the given class type
+   *
+   * @param classType	the type of the class attribute
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances getData(int classType) throws Exception {
+    return new CheckClassifier().makeTestDataset(
+	42, 150, 2, 3, 0, 0, 0, 2, classType, false);
+  }
+
+  /**
+   * cross-validates the classifier with the given number of threads
+   *
+   * @param classifier	the classifier to evaluate
+   * @param data	the data to use
+   * @param numSlots	the number of threads
+   * @param preds	the buffer for the predictions
+   * @return		the evaluation
+   * @throws Exception	if evaluation fails
+   */
+  protected Evaluation crossValidate(Classifier classifier, Instances data,
+      int numSlots, StringBuffer preds) throws Exception {
+    Evaluation eval = new Evaluation(data);
+    eval.setNumExecutionSlots(numSlots);
+    eval.crossValidateModel(classifier, data, 10, new Random(42),
+	preds, new Range("first-last"), Boolean.TRUE);
+    return eval;
+  }
+
+  /**
+   * compares the sequential and the parallel cross-validation
+   *
+   * @param classifier	the classifier to evaluate
+   * @param data	the data to use
+   * @throws Exception	if evaluation fails
+   */
+  protected void compareCrossValidation(Classifier classifier, Instances data)
+    throws Exception {
+
+    StringBuffer seqPreds = new StringBuffer();
+    StringBuffer parPreds = new StringBuffer();
+    Evaluation seq = crossValidate(classifier, data, 1, seqPreds);
+    Evaluation par = crossValidate(classifier, data, 3, parPreds);
+
+    assertEquals(seq.toSummaryString(true), par.toSummaryString(true));
+    assertEquals(seqPreds.toString(), parPreds.toString());
+    assertEquals(seq.errorRate(), par.errorRate(), 0.0);
+    assertEquals(seq.SFMeanSchemeEntropy(), par.SFMeanSchemeEntropy(), 0.0);
+    if (data.classAttribute().isNominal()) {
+      assertEquals(seq.toMatrixString(), par.toMatrixString());
+      assertEquals(seq.toClassDetailsString(), par.toClassDetailsString());
+      assertEquals(seq.predictions().size(), par.predictions().size());
+      for (int i = 0; i < seq.predictions().size(); i++)
+	assertEquals(seq.predictions().elementAt(i).toString(),
+	    par.predictions().elementAt(i).toString());
+    }
+  }
+
+  /**
+   * tests the parallel cross-validation with a nominal class
+   */
+  public void testParallelCrossValidationNominal() throws Exception {
+    compareCrossValidation(new J48(), getData(Attribute.NOMINAL));
+  }
+
+  /**
+   * tests the parallel cross-validation with a numeric class
+   */
+  public void testParallelCrossValidationNumeric() throws Exception {
+    compareCrossValidation(new LinearRegression(), getData(Attribute.NUMERIC));
+  }
+
+  /**
+   * tests that errors of the classifier are passed on
+   */
+  public void testParallelCrossValidationError() throws Exception {
+    Instances data = getData(Attribute.NOMINAL);
+    try {
+      crossValidate(new LinearRegression(), data, 3, new StringBuffer());
+      fail("Exception of classifier was not passed on");
+    }
+    catch (Exception e) {
+      // expected
+    }
+  }
+
+  /**
+   * runs the command-line evaluation on the given data
+   *
+   * @param classifier	the classifier to evaluate
+   * @param data	the training data
+   * @param options	the options besides the training file
+   * @throws Exception	if evaluation fails
+   */
+  protected void evaluate(Classifier classifier, Instances data,
+      String[] options) throws Exception {
+    File file = File.createTempFile("weka_classifiers_evaluation", ".arff");
+    try {
+      BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+      writer.write(data.toString());
+      writer.newLine();
+      writer.close();
+      String[] all = new String[options.length + 2];
+      all[0] = "-t";
+      all[1] = file.getAbsolutePath();
+      System.arraycopy(options, 0, all, 2, options.length);
+      Evaluation.evaluateModel(classifier, all);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * tests that the -num-slots option is left to the classifier and the
+   * threads of the cross-validation are set with -eval-slots
+   */
+  public void testExecutionSlotsOptions() throws Exception {
+    Instances data = getData(Attribute.NOMINAL);
+    J48 classifier = new J48();
+
+    evaluate(classifier, data, new String[]{"-x", "3", "-num-slots", "4"});
+    assertEquals(4, classifier.getNumExecutionSlots());
+
+    classifier = new J48();
+    evaluate(classifier, data, new String[]{"-x", "3", "-eval-slots", "2"});
+    assertEquals(1, classifier.getNumExecutionSlots());
+
+    classifier = new J48();
+    evaluate(classifier, data,
+	new String[]{"-x", "3", "-eval-slots", "2", "-num-slots", "3"});
+    assertEquals(3, classifier.getNumExecutionSlots());
+  }
+
+  public static Test suite() {
+    return new TestSuite(EvaluationTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
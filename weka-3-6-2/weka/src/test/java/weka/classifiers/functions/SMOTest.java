@@ -22,6 +22,9 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +45,51 @@ public class SMOTest extends AbstractClassifierTest {
     return new SMO();
   }
 
+  /**
+   * generates multi-class data
+   *
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances getMultiClassData() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumInstances(120);
+    test.setNumNominal(2);
+    test.setNumNumeric(6);
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(4);
+    return test.generate();
+  }
+
+  /**
+   * tests whether training the pairwise classifiers with several threads
+   * produces the same model
+   */
+  public void testParallel() throws Exception {
+    Instances data = getMultiClassData();
+    checkSamePredictions(data, "", "-num-slots 3");
+    checkSamePredictions(data, "-M -V 3", "-M -V 3 -num-slots 4");
+  }
+
+  /**
+   * tests whether the (shared) row cache produces the same model
+   */
+  public void testRowCache() throws Exception {
+    Instances data = getMultiClassData();
+    String[] kernels = new String[]{
+	"weka.classifiers.functions.supportVector.PolyKernel -E 2 -L",
+	"weka.classifiers.functions.supportVector.RBFKernel -G 0.1",
+	"weka.classifiers.functions.supportVector.NormalizedPolyKernel",
+	"weka.classifiers.functions.supportVector.Puk"};
+    for (int i = 0; i < kernels.length; i++) {
+      String options = "-K \"" + kernels[i] + "\"";
+      checkSamePredictions(data, options, "-K \"" + kernels[i] + " -cache-mb 1\"");
+      // a small cache, so that rows are evicted
+      checkSamePredictions(data, options, 
+	  "-num-slots 2 -K \"" + kernels[i] + " -cache-mb 0.005\"");
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(SMOTest.class);
   }
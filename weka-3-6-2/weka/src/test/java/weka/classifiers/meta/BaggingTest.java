@@ -22,6 +22,10 @@ package weka.classifiers.meta;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +46,47 @@ public class BaggingTest extends AbstractClassifierTest {
     return new Bagging();
   }
 
+  /**
+   * builds the classifier with the given number of threads and returns
+   * the model and its predictions for the data
+   *
+   * @param numSlots	the number of threads
+   * @param data	the data to use
+   * @return		the model and the predictions
+   * @throws Exception	if building or predicting fails
+   */
+  protected String buildAndPredict(int numSlots, Instances data)
+    throws Exception {
+
+    Bagging bagging = new Bagging();
+    bagging.setNumIterations(60);
+    bagging.setCalcOutOfBag(true);
+    bagging.setNumExecutionSlots(numSlots);
+    bagging.buildClassifier(data);
+
+    StringBuffer result = new StringBuffer(bagging.toString());
+    for (int i = 0; i < data.numInstances(); i++)
+      result.append(Utils.arrayToString(
+	  bagging.distributionForInstance(data.instance(i))) + "\n");
+
+    return result.toString();
+  }
+
+  /**
+   * tests whether the number of threads influences the model, the out of
+   * bag error or the predictions
+   */
+  public void testParallel() throws Exception {
+    int[] types = new int[]{Attribute.NOMINAL, Attribute.NUMERIC};
+    for (int i = 0; i < types.length; i++) {
+      TestInstances test = new TestInstances();
+      test.setNumInstances(200);
+      test.setClassType(types[i]);
+      Instances data = test.generate();
+      assertEquals(buildAndPredict(1, data), buildAndPredict(4, data));
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(BaggingTest.class);
   }
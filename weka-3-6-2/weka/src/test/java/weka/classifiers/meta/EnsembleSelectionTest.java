@@ -39,7 +39,7 @@ import junit.framework.TestSuite;
 public class EnsembleSelectionTest 
   extends AbstractClassifierTest {
 
-  /** Default root location, relative to the users home direcory. */
+  /** Default root location, relative to the temporary directory. */
   private final static String DEFAULT_ROOT = "ensembleSelection/setup-1";
 
   /**
@@ -73,7 +73,7 @@ public class EnsembleSelectionTest
     if (ROOT == null) {
       String root = System.getProperty(ROOT_PROPERTY);
       if (root == null) {
-        root = System.getProperty("user.dir");
+        root = System.getProperty("java.io.tmpdir");
         ROOT = new File(root, DEFAULT_ROOT);
       }
       else {
@@ -198,6 +198,21 @@ public class EnsembleSelectionTest
     deleteDirs();
   }
 
+  /**
+   * Called by JUnit after each test method. This implementation removes
+   * the output directories again.
+   */
+  protected void tearDown() {
+    try {
+      deleteDirs();
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+
+    super.tearDown();
+  }
+
   /** Creates a default EnsembleSelection */
   public Classifier getClassifier() {
     EnsembleSelection   cls;
@@ -22,6 +22,9 @@ package weka.classifiers.meta;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +48,43 @@ public class RandomSubSpaceTest
     return new RandomSubSpace();
   }
 
+  /**
+   * builds the classifier with the given number of threads and returns
+   * the model and its predictions for the data
+   *
+   * @param numSlots	the number of threads
+   * @param data	the data to use
+   * @return		the model and the predictions
+   * @throws Exception	if building or predicting fails
+   */
+  protected String buildAndPredict(int numSlots, Instances data)
+    throws Exception {
+
+    RandomSubSpace subspace = new RandomSubSpace();
+    subspace.setNumIterations(60);
+    subspace.setNumExecutionSlots(numSlots);
+    subspace.buildClassifier(data);
+
+    StringBuffer result = new StringBuffer(subspace.toString());
+    for (int i = 0; i < data.numInstances(); i++)
+      result.append(Utils.arrayToString(
+	  subspace.distributionForInstance(data.instance(i))) + "\n");
+
+    return result.toString();
+  }
+
+  /**
+   * tests whether the number of threads influences the model or the
+   * predictions
+   */
+  public void testParallel() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumNumeric(4);
+    Instances data = test.generate();
+    assertEquals(buildAndPredict(1, data), buildAndPredict(4, data));
+  }
+
   public static Test suite() {
     return new TestSuite(RandomSubSpaceTest.class);
   }
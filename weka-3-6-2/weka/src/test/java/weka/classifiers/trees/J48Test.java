@@ -22,6 +22,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +44,48 @@ public class J48Test extends AbstractClassifierTest {
     return new J48();
   }
 
+  /**
+   * tests whether presorting and evaluating the attributes with several 
+   * threads result in the same tree
+   */
+  public void testPresort() throws Exception {
+    Instances data = makeNoisyDataset(3000, 2, Attribute.NOMINAL, false);
+    checkSameModel(data, "-U", "-U -presort");
+    checkSameModel(data, "-U", "-U -presort -num-slots 3");
+    checkSameModel(data, "", "-presort -num-slots 2");
+    checkSameModel(data, "-R", "-R -presort -num-slots 2");
+
+    // with missing values, the instances are summed up in a different order
+    data = makeNoisyDataset(3000, 2, Attribute.NOMINAL, true);
+    checkSameModel(data, "-U -presort", "-U -presort -num-slots 3");
+    checkSameModel(data, "-presort", "-presort -num-slots 2");
+  }
+
+  /**
+   * tests whether the compiled tree gives the same predictions, also for
+   * missing values, binary splits and Laplace estimates
+   */
+  public void testCompile() throws Exception {
+    String[] options = new String[]{"", "-U", "-B", "-A", "-R", "-M 20 -B"};
+    Instances data = makeNoisyDataset(3000, 2, Attribute.NOMINAL, true);
+
+    for (int n = 0; n < options.length; n++)
+      checkSamePredictions(data, options[n], options[n] + " -compile");
+  }
+
+  /**
+   * tests whether the source code generated from the compiled tree
+   * predicts the same as the tree, also for missing values and binary
+   * splits
+   */
+  public void testCompiledSource() throws Exception {
+    String[] options = new String[]{"", "-U", "-B", "-R", "-M 20 -B"};
+    Instances data = makeNoisyDataset(1000, 3, Attribute.NOMINAL, true);
+
+    for (int n = 0; n < options.length; n++)
+      checkSource(buildWithOptions(data, options[n] + " -compile"), data);
+  }
+
   public static Test suite() {
     return new TestSuite(J48Test.class);
   }
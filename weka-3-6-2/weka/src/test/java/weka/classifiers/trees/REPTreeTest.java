@@ -22,6 +22,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +44,30 @@ public class REPTreeTest extends AbstractClassifierTest {
     return new REPTree();
   }
 
+  /**
+   * tests whether evaluating the attributes with several threads results
+   * in the same tree
+   */
+  public void testParallel() throws Exception {
+    Instances data = makeNoisyDataset(3000, 2, Attribute.NOMINAL, true);
+    checkSameModel(data, "", "-num-slots 3");
+    checkSameModel(data, "-P", "-P -num-slots 2");
+    data = makeNoisyDataset(3000, 2, Attribute.NUMERIC, true);
+    checkSameModel(data, "", "-num-slots 3");
+    checkSameModel(data, "-P -M 5", "-P -M 5 -num-slots 2");
+  }
+
+  /**
+   * tests whether the generated source code predicts the same as the
+   * tree (the source code predicts the majority class of a node for a
+   * missing value, hence there are none)
+   */
+  public void testSource() throws Exception {
+    Instances data = makeNoisyDataset(1000, 3, Attribute.NOMINAL, false);
+    checkSource(buildWithOptions(data, ""), data);
+    checkSource(buildWithOptions(data, "-P"), data);
+  }
+
   public static Test suite() {
     return new TestSuite(REPTreeTest.class);
   }
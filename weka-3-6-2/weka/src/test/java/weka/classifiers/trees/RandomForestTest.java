@@ -22,6 +22,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,75 @@ public class RandomForestTest
     return new RandomForest();
   }
 
+  /**
+   * Checks whether the two sets of options result in the same predictions
+   * and the same out of bag error.
+   *
+   * @param data	the data to use
+   * @param options	the first options
+   * @param other	the options to compare with
+   * @throws Exception	if building fails
+   */
+  protected void checkSameForest(Instances data, String options, String other)
+    throws Exception {
+
+    checkSamePredictions(data, options, other);
+    assertEquals(options + " / " + other,
+	((RandomForest) buildWithOptions(data, options)).measureOutOfBagError(),
+	((RandomForest) buildWithOptions(data, other)).measureOutOfBagError(),
+	0.0);
+  }
+
+  /**
+   * tests whether the histograms give the same forest as the exact values 
+   * if there are enough bins
+   */
+  public void testBins() throws Exception {
+    Instances data = makeNoisyDataset(2000, 3, Attribute.NOMINAL, false);
+    checkSameForest(data, "-I 5 -S 3", "-I 5 -S 3 -bins 255");
+  }
+
+  /**
+   * tests whether the histograms with fewer bins than values and missing
+   * values give the same forest with several threads
+   */
+  public void testBinsParallel() throws Exception {
+    Instances data = makeNoisyDataset(2000, 3, Attribute.NOMINAL, true);
+    checkSameForest(data, "-I 5 -bins 16", "-I 5 -bins 16 -num-slots 3");
+  }
+
+  /**
+   * tests whether the compiled forest gives the same predictions, also
+   * for missing values and for a batch of instances
+   */
+  public void testCompile() throws Exception {
+    Instances data = makeNoisyDataset(2000, 3, Attribute.NOMINAL, true);
+    checkSameForest(data, "-I 5", "-I 5 -compile");
+    checkSameForest(data, "-I 5 -depth 3 -bins 16", "-I 5 -depth 3 -bins 16 -compile");
+
+    RandomForest forest = new RandomForest();
+    forest.setNumTrees(5);
+    forest.buildClassifier(data);
+    CompiledTrees compiled = forest.compile();
+    double[][] dists = new double[data.numInstances()][data.numClasses()];
+    compiled.distributionsForInstances(data, dists);
+    for (int i = 0; i < data.numInstances(); i++) {
+      double[] dist = forest.distributionForInstance(data.instance(i));
+      for (int j = 0; j < dist.length; j++)
+	assertEquals("instance " + i, dist[j], dists[i][j], 0.0);
+    }
+  }
+
+  /**
+   * tests whether the generated source code predicts the same as the
+   * forest, also for missing values
+   */
+  public void testSource() throws Exception {
+    Instances data = makeNoisyDataset(1000, 3, Attribute.NOMINAL, true);
+    checkSource(buildWithOptions(data, "-I 5"), data);
+    checkSource(buildWithOptions(data, "-I 5 -compile"), data);
+  }
+
   public static Test suite() {
     return new TestSuite(RandomForestTest.class);
   }
@@ -22,6 +22,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,32 @@ public class RandomTreeTest
     return new RandomTree();
   }
 
+  /**
+   * tests whether presorting and evaluating the attributes with several 
+   * threads result in the same tree
+   */
+  public void testPresort() throws Exception {
+    Instances data = makeNoisyDataset(3000, 2, Attribute.NOMINAL, false);
+    checkSameModel(data, "", "-presort");
+    checkSameModel(data, "-K 3 -M 2", "-K 3 -M 2 -presort -num-slots 3");
+    checkSameModel(data, "-N 3", "-N 3 -presort -num-slots 2");
+
+    // with missing values, the instances are summed up in a different order
+    data = makeNoisyDataset(3000, 2, Attribute.NOMINAL, true);
+    checkSameModel(data, "-presort", "-presort -num-slots 3");
+    checkSameModel(data, "-K 1 -presort", "-K 1 -presort -num-slots 2");
+  }
+
+  /**
+   * tests whether the generated source code predicts the same as the
+   * tree, also for missing values
+   */
+  public void testSource() throws Exception {
+    Instances data = makeNoisyDataset(1000, 3, Attribute.NOMINAL, true);
+    checkSource(buildWithOptions(data, ""), data);
+    checkSource(buildWithOptions(data, "-depth 3"), data);
+  }
+
   public static Test suite() {
     return new TestSuite(RandomTreeTest.class);
   }
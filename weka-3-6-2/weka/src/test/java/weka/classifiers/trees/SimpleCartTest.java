@@ -22,6 +22,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,17 @@ public class SimpleCartTest
     return new SimpleCart();
   }
 
+  /**
+   * tests whether evaluating the attributes with several threads results
+   * in the same tree
+   */
+  public void testParallel() throws Exception {
+    Instances data = makeNoisyDataset(3000, 2, Attribute.NOMINAL, true);
+    checkSameModel(data, "", "-num-slots 3");
+    checkSameModel(data, "-U", "-U -num-slots 2");
+    checkSameModel(data, "-U -H", "-U -H -num-slots 2");
+  }
+
   public static Test suite() {
     return new TestSuite(SimpleCartTest.class);
   }
@@ -22,6 +22,8 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,56 @@ public class DBScanTest
     return new DBScan();
   }
 
+  /**
+   * builds DBScan with the given database and search algorithm and
+   * returns the cluster of each instance
+   *
+   * @param data	the data to cluster
+   * @param database	the classname of the database
+   * @param search	the search algorithm, used by the indexed database
+   * @return		the clusters, -1 for noise
+   * @throws Exception	if clustering fails
+   */
+  protected String cluster(Instances data, String database, String search)
+    throws Exception {
+
+    DBScan dbscan = new DBScan();
+    dbscan.setOptions(new String[]{
+	"-E", "0.3", "-M", "4", "-I", database, "-A", search});
+    dbscan.buildClusterer(data);
+
+    StringBuffer result = new StringBuffer();
+    for (int i = 0; i < data.numInstances(); i++) {
+      int cluster;
+      try {
+	cluster = dbscan.clusterInstance(data.instance(i));
+      }
+      catch (Exception e) {
+	cluster = -1;
+      }
+      result.append(cluster + "\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * tests whether the indexed database yields the same clusters as the
+   * sequential one
+   */
+  public void testIndexedDatabase() throws Exception {
+    Instances data = m_Tester.makeTestDataset(42, 300, 1, 3, 0, 0, 0, false);
+    String sequential = cluster(data, "weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase",
+	"weka.core.neighboursearch.KDTree");
+    String[] searches = new String[]{
+	"weka.core.neighboursearch.KDTree",
+	"weka.core.neighboursearch.BallTree",
+	"weka.core.neighboursearch.CoverTree"};
+    for (int i = 0; i < searches.length; i++)
+      assertEquals(searches[i], sequential,
+	  cluster(data, IndexedDatabase.class.getName(), searches[i]));
+  }
+
   public static Test suite() {
     return new TestSuite(DBScanTest.class);
   }
@@ -22,6 +22,7 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +46,51 @@ public class EMTest
     return new EM();
   }
 
+  /**
+   * builds EM with the given options and returns the model and the
+   * cluster distribution of each instance
+   *
+   * @param data	the data to cluster
+   * @param options	the options for EM
+   * @return		the model and the distributions
+   * @throws Exception	if clustering fails
+   */
+  protected String cluster(Instances data, String[] options)
+    throws Exception {
+
+    EM em = new EM();
+    em.setOptions(options);
+    em.buildClusterer(data);
+
+    StringBuffer result = new StringBuffer(em.toString());
+    for (int i = 0; i < data.numInstances(); i++) {
+      double[] dist = em.distributionForInstance(data.instance(i));
+      for (int n = 0; n < dist.length; n++)
+	result.append(dist[n] + " ");
+      result.append("\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * tests whether several threads yield the same model as a single one,
+   * with a fixed number of clusters and with cross validation
+   */
+  public void testParallel() throws Exception {
+    Instances data = m_Tester.makeTestDataset(42, 200, 2, 4, 0, 0, 0, false);
+
+    String[] numClusters = new String[]{"3", "-1"};
+    for (int i = 0; i < numClusters.length; i++) {
+      String sequential = cluster(data, new String[]{"-N", numClusters[i]});
+      String[] slots = new String[]{"3", "25"};
+      for (int n = 0; n < slots.length; n++)
+	assertEquals("-N " + numClusters[i] + " -num-slots " + slots[n],
+	    sequential,
+	    cluster(data, new String[]{"-N", numClusters[i], "-num-slots", slots[n]}));
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(EMTest.class);
   }
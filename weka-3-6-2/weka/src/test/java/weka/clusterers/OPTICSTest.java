@@ -22,6 +22,10 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase;
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.DataObject;
+import weka.core.FastVector;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -47,6 +51,52 @@ public class OPTICSTest
     return ops;
   }
 
+  /**
+   * builds OPTICS with the given database and search algorithm and
+   * returns the cluster order with the core and reachability distances
+   *
+   * @param data	the data to cluster
+   * @param database	the classname of the database
+   * @param search	the search algorithm, used by the indexed database
+   * @return		the cluster order
+   * @throws Exception	if clustering fails
+   */
+  protected String clusterOrder(Instances data, String database, String search)
+    throws Exception {
+
+    OPTICS optics = new OPTICS();
+    optics.setOptions(new String[]{
+	"-E", "0.3", "-M", "4", "-I", database, "-A", search, "-no-gui"});
+    optics.buildClusterer(data);
+
+    StringBuffer result = new StringBuffer();
+    FastVector order = optics.getResultVector();
+    for (int i = 0; i < order.size(); i++) {
+      DataObject dataObject = (DataObject) order.elementAt(i);
+      result.append(dataObject.getKey() + " " + dataObject.getCoreDistance() 
+	  + " " + dataObject.getReachabilityDistance() + "\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * tests whether the indexed database yields the same cluster order as
+   * the sequential one
+   */
+  public void testIndexedDatabase() throws Exception {
+    Instances data = m_Tester.makeTestDataset(42, 300, 1, 3, 0, 0, 0, false);
+    String sequential = clusterOrder(data, "weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase",
+	"weka.core.neighboursearch.KDTree");
+    String[] searches = new String[]{
+	"weka.core.neighboursearch.KDTree",
+	"weka.core.neighboursearch.BallTree",
+	"weka.core.neighboursearch.CoverTree"};
+    for (int i = 0; i < searches.length; i++)
+      assertEquals(searches[i], sequential,
+	  clusterOrder(data, IndexedDatabase.class.getName(), searches[i]));
+  }
+
   public static Test suite() {
     return new TestSuite(OPTICSTest.class);
   }
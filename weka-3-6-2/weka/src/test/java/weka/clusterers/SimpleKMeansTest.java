@@ -22,6 +22,8 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.Utils;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,59 @@ public class SimpleKMeansTest
     return new SimpleKMeans();
   }
 
+  /**
+   * builds SimpleKMeans with the given options and returns the model and
+   * the assignments
+   *
+   * @param data	the data to cluster
+   * @param options	the options to use
+   * @return		the model and the assignments
+   * @throws Exception	if clustering fails
+   */
+  protected String cluster(Instances data, String options) throws Exception {
+    SimpleKMeans kmeans = new SimpleKMeans();
+    kmeans.setOptions(Utils.splitOptions(options + " -O"));
+    kmeans.buildClusterer(data);
+
+    StringBuffer result = new StringBuffer(kmeans.toString());
+    int[] assignments = kmeans.getAssignments();
+    for (int i = 0; i < assignments.length; i++)
+      result.append(assignments[i] + "\n");
+
+    return result.toString();
+  }
+
+  /**
+   * tests whether the bounds (a lower bound per cluster for data with many
+   * attributes, a single one otherwise) and several threads yield the same
+   * clusters
+   */
+  public void testFastAndParallel() throws Exception {
+    checkFastAndParallel(m_Tester.makeTestDataset(42, 400, 2, 25, 0, 0, 0, false));
+    checkFastAndParallel(m_Tester.makeTestDataset(42, 400, 2, 4, 0, 0, 0, false));
+  }
+
+  /**
+   * checks whether the bounds and several threads yield the same clusters
+   *
+   * @param data	the data to cluster
+   * @throws Exception	if clustering fails
+   */
+  protected void checkFastAndParallel(Instances data) throws Exception {
+    String[] options = new String[]{
+	"-N 8 -S 1",
+	"-N 12 -S 2 -A weka.core.ManhattanDistance",
+	"-N 3 -S 3 -V"};
+    String[] modes = new String[]{
+	"-fast", "-num-slots 3", "-fast -num-slots 3"};
+    for (int i = 0; i < options.length; i++) {
+      String expected = cluster(data, options[i]);
+      for (int n = 0; n < modes.length; n++)
+	assertEquals(options[i] + " " + modes[n], expected,
+	    cluster(data, options[i] + " " + modes[n]));
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(SimpleKMeansTest.class);
   }
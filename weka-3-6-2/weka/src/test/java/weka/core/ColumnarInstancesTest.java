@@ -0,0 +1,193 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato
+ */
+
+package weka.core;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests ColumnarInstances. Run from the command line with:<p/>
+ * java weka.core.ColumnarInstancesTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ColumnarInstancesTest
+  extends TestCase {
+
+  /** the row-based reference data */
+  protected Instances m_Data;
+
+  /**
+   * Constructs the <code>ColumnarInstancesTest</code>.
+   *
+   * @param name 	the name of the test class
+   */
+  public ColumnarInstancesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    TestInstances test = new TestInstances();
+    test.setNumInstances(100);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    test.setClassType(Attribute.NOMINAL);
+    m_Data = test.generate();
+
+    // sprinkle in some missing values and weights
+    Random rand = new Random(1);
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      if (rand.nextInt(10) == 0)
+	m_Data.instance(i).setMissing(rand.nextInt(m_Data.numAttributes()));
+      m_Data.instance(i).setWeight(rand.nextDouble() + 0.5);
+    }
+  }
+
+  /**
+   * Called by JUnit after each test method
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    m_Data = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * compares the content of the two datasets
+   *
+   * @param expected	the expected data
+   * @param actual	the data to check
+   */
+  protected void assertSameData(Instances expected, Instances actual) {
+    assertEquals("numInstances", expected.numInstances(), actual.numInstances());
+    assertEquals("numAttributes", expected.numAttributes(), actual.numAttributes());
+    for (int i = 0; i < expected.numInstances(); i++)
+      assertEquals("row " + i, expected.instance(i).toString(), actual.instance(i).toString());
+  }
+
+  /**
+   * tests whether the columnar copy contains the same rows
+   */
+  public void testCopy() {
+    Instances data = new ColumnarInstances(m_Data);
+    assertSameData(m_Data, data);
+    assertSameData(m_Data, new Instances(data));
+    assertEquals(m_Data.toString(), data.toString());
+  }
+
+  /**
+   * tests the column scans against the row-based implementation
+   */
+  public void testStatistics() {
+    Instances data = new ColumnarInstances(m_Data);
+    assertEquals(m_Data.sumOfWeights(), data.sumOfWeights(), 0.0);
+    for (int i = 0; i < m_Data.numAttributes(); i++) {
+      assertEquals("meanOrMode " + i, m_Data.meanOrMode(i), data.meanOrMode(i), 0.0);
+      assertEquals("numDistinctValues " + i, m_Data.numDistinctValues(i), data.numDistinctValues(i));
+      assertEquals("attributeStats " + i, m_Data.attributeStats(i).toString(), data.attributeStats(i).toString());
+      if (m_Data.attribute(i).isNumeric())
+	assertEquals("variance " + i, m_Data.variance(i), data.variance(i), 0.0);
+    }
+  }
+
+  /**
+   * tests that the views write through to the columns
+   */
+  public void testViews() {
+    Instances data = new ColumnarInstances(m_Data);
+    Instance inst = data.instance(3);
+    inst.setValue(0, 1);
+    inst.setWeight(7);
+    assertEquals(1.0, data.instance(3).value(0), 0.0);
+    assertEquals(7.0, data.instance(3).weight(), 0.0);
+
+    // copies are independent
+    Instance copy = (Instance) inst.copy();
+    copy.setValue(0, 0);
+    assertEquals(1.0, data.instance(3).value(0), 0.0);
+    assertFalse(copy instanceof ColumnarInstance);
+  }
+
+  /**
+   * tests the operations that reorder or remove rows
+   */
+  public void testReordering() {
+    Instances data = new ColumnarInstances(m_Data);
+    Instances ref = new Instances(m_Data);
+
+    ref.randomize(new Random(42));
+    data.randomize(new Random(42));
+    assertSameData(ref, data);
+
+    ref.stratify(5);
+    data.stratify(5);
+    assertSameData(ref, data);
+
+    ref.sort(2);
+    data.sort(2);
+    assertSameData(ref, data);
+
+    ref.delete(10);
+    data.delete(10);
+    ref.deleteWithMissing(1);
+    data.deleteWithMissing(1);
+    assertSameData(ref, data);
+
+    assertSameData(ref.trainCV(3, 1), data.trainCV(3, 1));
+  }
+
+  /**
+   * tests inserting and deleting attributes
+   */
+  public void testAttributes() {
+    Instances data = new ColumnarInstances(m_Data);
+    Instances ref = new Instances(m_Data);
+
+    ref.insertAttributeAt(new Attribute("new"), 1);
+    data.insertAttributeAt(new Attribute("new"), 1);
+    assertSameData(ref, data);
+
+    ref.deleteAttributeAt(0);
+    data.deleteAttributeAt(0);
+    assertSameData(ref, data);
+    assertEquals(ref.classIndex(), data.classIndex());
+  }
+
+  public static Test suite() {
+    return new TestSuite(ColumnarInstancesTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato
+ */
+
+package weka.core;
+
+import weka.core.neighboursearch.PerformanceStats;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the fast paths of the NormalizableDistance classes against the
+ * general calculation (which is used when performance stats are collected).
+ * Run from the command line with:<p/>
+ * java weka.core.NormalizableDistanceTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class NormalizableDistanceTest
+  extends TestCase {
+
+  /** the dense data, with missing values */
+  protected Instances m_Data;
+
+  /**
+   * Constructs the <code>NormalizableDistanceTest</code>.
+   *
+   * @param name 	the name of the test class
+   */
+  public NormalizableDistanceTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    TestInstances test = new TestInstances();
+    test.setNumInstances(100);
+    test.setNumNominal(2);
+    test.setNumNumeric(4);
+    test.setNumDate(1);
+    test.setClassType(Attribute.NOMINAL);
+    m_Data = test.generate();
+
+    Random rand = new Random(1);
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      if (rand.nextInt(5) == 0)
+	m_Data.instance(i).setMissing(rand.nextInt(m_Data.numAttributes()));
+    }
+  }
+
+  /**
+   * Called by JUnit after each test method
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    m_Data = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns a copy of the data where every other instance is sparse and
+   * some values are zero.
+   *
+   * @return		the sparse data
+   */
+  protected Instances getSparseData() {
+    Instances	result;
+    double[]	values;
+    Random	rand;
+
+    rand   = new Random(2);
+    result = new Instances(m_Data, 0);
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      values = m_Data.instance(i).toDoubleArray();
+      for (int j = 0; j < values.length; j++) {
+	if ((j != m_Data.classIndex()) && (rand.nextInt(3) == 0))
+	  values[j] = 0;
+      }
+      if (i % 2 == 0)
+	result.add(new SparseInstance(1, values));
+      else
+	result.add(new Instance(1, values));
+    }
+
+    return result;
+  }
+
+  /**
+   * Compares the fast paths of the distance function with the general
+   * calculation for all pairs of instances.
+   *
+   * @param dist	the distance function to check
+   * @param data	the data to use
+   */
+  protected void checkDistances(NormalizableDistance dist, Instances data) {
+    double[]	batch;
+    double	cutOff;
+    double	expected;
+    Instance	first;
+
+    dist.setInstances(data);
+    batch = new double[data.numInstances()];
+    for (int i = 0; i < data.numInstances(); i += 7) {
+      first  = data.instance(i);
+      cutOff = (i % 2 == 0) ? Double.POSITIVE_INFINITY : 0.5;
+      dist.distances(first, 0, data.numInstances(), cutOff, batch);
+      for (int n = 0; n < data.numInstances(); n++) {
+	expected = dist.distance(first, data.instance(n), cutOff, new PerformanceStats());
+	assertEquals(dist.getClass().getName() + ": " + i + "/" + n,
+	    expected, dist.distance(first, data.instance(n), cutOff), 0.0);
+	assertEquals(dist.getClass().getName() + " (batch): " + i + "/" + n,
+	    expected, batch[n], 0.0);
+      }
+    }
+  }
+
+  /**
+   * Checks all the distance functions with the given settings.
+   *
+   * @param data		the data to use
+   * @param dontNormalize	whether to turn normalization off
+   * @param range		the attribute range to use
+   */
+  protected void checkAll(Instances data, boolean dontNormalize, String range) {
+    NormalizableDistance[]	dists;
+
+    dists = new NormalizableDistance[]{
+	new EuclideanDistance(), new ManhattanDistance(), new ChebyshevDistance()};
+    for (int i = 0; i < dists.length; i++) {
+      dists[i].setDontNormalize(dontNormalize);
+      dists[i].setAttributeIndices(range);
+      checkDistances(dists[i], data);
+    }
+  }
+
+  /**
+   * tests the dense data
+   */
+  public void testDense() {
+    checkAll(m_Data, false, "first-last");
+    checkAll(m_Data, true, "first-last");
+    checkAll(m_Data, false, "2-5");
+  }
+
+  /**
+   * tests mixed sparse and dense data
+   */
+  public void testSparse() {
+    Instances data = getSparseData();
+    checkAll(data, false, "first-last");
+    checkAll(data, true, "first-last");
+    checkAll(data, false, "2-5");
+  }
+
+  /**
+   * tests that the batch distances notice changed data and ranges
+   */
+  public void testChangedData() {
+    Instances data = new Instances(m_Data);
+    EuclideanDistance dist = new EuclideanDistance(data);
+    double[] batch = new double[data.numInstances()];
+    dist.distances(data.instance(0), 0, data.numInstances(), Double.POSITIVE_INFINITY, batch);
+
+    // modify an instance and extend the ranges
+    Instance inst = (Instance) data.instance(0).copy();
+    inst.setValue(1, 1000);
+    dist.update(inst);
+    data.instance(3).setValue(1, 500);
+    dist.distances(data.instance(0), 0, data.numInstances(), Double.POSITIVE_INFINITY, batch);
+    for (int n = 0; n < data.numInstances(); n++)
+      assertEquals(
+	  dist.distance(data.instance(0), data.instance(n), Double.POSITIVE_INFINITY, new PerformanceStats()),
+	  batch[n], 0.0);
+  }
+
+  public static Test suite() {
+    return new TestSuite(NormalizableDistanceTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato
+ */
+
+package weka.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests ParallelTasks. Run from the command line with:<p/>
+ * java weka.core.ParallelTasksTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ParallelTasksTest
+  extends TestCase {
+
+  /**
+   * Constructs the <code>ParallelTasksTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public ParallelTasksTest(String name) {
+    super(name);
+  }
+
+  /**
+   * tests whether every index is processed exactly once
+   */
+  public void testForEach() throws Exception {
+    int[] threads = new int[]{1, 3, 20};
+    for (int t = 0; t < threads.length; t++) {
+      final AtomicIntegerArray counts = new AtomicIntegerArray(10);
+      ParallelTasks.forEach(counts.length(), threads[t], new ParallelTasks.Task() {
+	public void run(int index) {
+	  counts.incrementAndGet(index);
+	}
+      });
+      for (int i = 0; i < counts.length(); i++)
+	assertEquals(threads[t] + " threads, index " + i, 1, counts.get(i));
+    }
+  }
+
+  /**
+   * tests whether the ranges cover all indices and the results are
+   * combined
+   */
+  public void testForEachRange() throws Exception {
+    int[] threads = new int[]{1, 4};
+    for (int t = 0; t < threads.length; t++) {
+      final AtomicIntegerArray counts = new AtomicIntegerArray(23);
+      boolean changed = ParallelTasks.forEachRange(counts.length(), 5, threads[t],
+	  new ParallelTasks.RangeTask() {
+	public boolean run(int start, int end) {
+	  for (int i = start; i < end; i++)
+	    counts.incrementAndGet(i);
+	  return (start == 20);
+	}
+      });
+      assertTrue(changed);
+      for (int i = 0; i < counts.length(); i++)
+	assertEquals(threads[t] + " threads, index " + i, 1, counts.get(i));
+
+      changed = ParallelTasks.forEachRange(counts.length(), 5, threads[t],
+	  new ParallelTasks.RangeTask() {
+	public boolean run(int start, int end) {
+	  return false;
+	}
+      });
+      assertFalse(changed);
+    }
+  }
+
+  /**
+   * tests whether the error of a task is passed on
+   */
+  public void testError() throws Exception {
+    final Exception error = new Exception("task failed");
+    int[] threads = new int[]{1, 3};
+    for (int t = 0; t < threads.length; t++) {
+      try {
+	ParallelTasks.forEach(100, threads[t], new ParallelTasks.Task() {
+	  public void run(int index) throws Exception {
+	    if (index == 42)
+	      throw error;
+	  }
+	});
+	fail("Exception of task was not passed on");
+      }
+      catch (Exception e) {
+	assertSame(error, e);
+      }
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(ParallelTasksTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
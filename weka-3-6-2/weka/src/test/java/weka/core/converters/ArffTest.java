@@ -20,6 +20,20 @@
 
 package weka.core.converters;
 
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.TestInstances;
+import weka.core.converters.ArffLoader.ArffReader;
+import weka.core.converters.ArffLoader.ParallelArffReader;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -60,6 +74,163 @@ public class ArffTest
     return new ArffSaver();
   }
 
+  /**
+   * reads the data with the given reader
+   * 
+   * @param arff	the reader to use
+   * @return		the data
+   * @throws Exception	if reading fails
+   */
+  protected Instances read(ArffReader arff) throws Exception {
+    Instances	result;
+    Instance	inst;
+    
+    result = arff.getStructure();
+    while ((inst = arff.readInstance(result)) != null)
+      result.add(inst);
+    
+    return result;
+  }
+
+  /**
+   * returns the message of the error that occurs when reading the data
+   * 
+   * @param arff	the reader to use
+   * @return		the message, null if no error occurs
+   */
+  protected String readError(ArffReader arff) {
+    try {
+      read(arff);
+      return null;
+    }
+    catch (Exception e) {
+      return e.getMessage();
+    }
+  }
+  
+  /**
+   * tests whether the parallel reader produces the same data as the
+   * sequential one, for dense and sparse data with string and relational
+   * attributes
+   */
+  public void testParallelReader() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    Instances		sparse;
+    String		arff;
+    int			i;
+    
+    test = new TestInstances();
+    test.setNumInstances(50);
+    test.setNumNominal(2);
+    test.setNumNumeric(2);
+    test.setNumString(2);
+    test.setNumDate(1);
+    test.setNumRelational(1);
+    test.setClassType(Attribute.NOMINAL);
+    data = test.generate();
+    
+    sparse = new Instances(data, data.numInstances());
+    for (i = 0; i < data.numInstances(); i++)
+      sparse.add(new SparseInstance(data.instance(i)));
+    
+    // unusual layout of the header/data boundary
+    arff = data.toString().replaceFirst("@data\n", "@DATA % comment\n\n");
+    assertEquals(
+	read(new ArffReader(new StringReader(arff), 1)).toString(),
+	read(new ParallelArffReader(new StringReader(arff), 1, 3, 7)).toString());
+
+    arff = sparse.toString();
+    assertEquals(
+	read(new ArffReader(new StringReader(arff), 1)).toString(),
+	read(new ParallelArffReader(new StringReader(arff), 1, 2, 5)).toString());
+  }
+
+  /**
+   * tests whether errors refer to the same line as with the sequential
+   * reader
+   */
+  public void testParallelReaderError() throws Exception {
+    String	arff;
+    String	msg;
+    
+    arff = m_Instances.toString();
+    arff = arff.substring(0, arff.length() - 1) + ",too,many,values\n";
+    msg  = readError(new ArffReader(new StringReader(arff), 1));
+    assertNotNull(msg);
+    assertEquals(msg, readError(new ParallelArffReader(new StringReader(arff), 1, 3, 4)));
+  }
+
+  /**
+   * tests the loader with several threads
+   */
+  public void testParallelLoader() {
+    ((ArffLoader) m_Loader).setNumExecutionSlots(3);
+    testBatch();
+    ((ArffLoader) m_Loader).setNumExecutionSlots(3);
+    testIncrementalLoader();
+  }
+
+  /**
+   * returns the threads of the parallel parsers that are alive
+   * 
+   * @return the threads
+   */
+  protected Set<Thread> getParserThreads() {
+    Set<Thread>	result;
+    Iterator	iter;
+    Thread	thread;
+    
+    result = new HashSet<Thread>();
+    iter   = Thread.getAllStackTraces().keySet().iterator();
+    while (iter.hasNext()) {
+      thread = (Thread) iter.next();
+      if (thread.getName().equals("ChunkedParser") && thread.isAlive())
+	result.add(thread);
+    }
+    
+    return result;
+  }
+
+  /**
+   * tests whether the threads of the parallel reader are stopped when the
+   * loader is reset or gets a new source before the data was read
+   */
+  public void testParallelLoaderReset() throws Exception {
+    ArffLoader		loader;
+    Set<Thread>		before;
+    Set<Thread>		after;
+    Iterator		iter;
+    Instances		data;
+    int			i;
+    
+    m_Saver.setInstances(m_Instances);
+    m_Saver.setFile(new File(m_ExportFilename));
+    m_Saver.writeBatch();
+
+    before = getParserThreads();
+    loader = (ArffLoader) m_Loader;
+    loader.setNumExecutionSlots(3);
+    for (i = 0; i < 5; i++) {
+      // abandon the incremental read after the first instance
+      loader.setFile(new File(m_ExportFilename));
+      data = loader.getStructure();
+      assertNotNull(loader.getNextInstance(data));
+      if (i % 2 == 0)
+	loader.reset();
+    }
+    loader.reset();
+    
+    after = getParserThreads();
+    after.removeAll(before);
+    iter = after.iterator();
+    while (iter.hasNext())
+      ((Thread) iter.next()).join(5000);
+    after = getParserThreads();
+    after.removeAll(before);
+    assertEquals("threads leaked", 0, after.size());
+  }
+
   /**
    * returns a test suite
    * 
@@ -20,8 +20,12 @@
 
 package weka.core.converters;
 
+import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.TestInstances;
+
+import java.io.File;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -99,6 +103,40 @@ public class CSVTest
     }
   }
 
+  /**
+   * tests whether tokenizing with several threads produces the same data
+   */
+  public void testParallelLoader() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    Instances		sequential;
+    Instances		parallel;
+    CSVLoader		loader;
+    
+    test = new TestInstances();
+    test.setNumInstances(5000);
+    test.setNumNominal(2);
+    test.setNumNumeric(2);
+    test.setNumString(1);
+    test.setClassType(Attribute.NOMINAL);
+    data = test.generate();
+    
+    m_Saver.setInstances(data);
+    m_Saver.setFile(new File(m_ExportFilename));
+    m_Saver.writeBatch();
+
+    loader = new CSVLoader();
+    loader.setFile(new File(m_ExportFilename));
+    sequential = loader.getDataSet();
+    
+    loader = new CSVLoader();
+    loader.setNumExecutionSlots(4);
+    loader.setFile(new File(m_ExportFilename));
+    parallel = loader.getDataSet();
+    
+    assertEquals(sequential.toString(), parallel.toString());
+  }
+
   /**
    * returns a test suite
    * 
@@ -61,6 +61,38 @@ public class StringToWordVectorTest extends AbstractFilterTest {
     assertEquals(m_Instances.numAttributes() - 2 + 3, result.numAttributes());
   }
 
+  public void testHashing() {
+    ((StringToWordVector)m_Filter).setHashDimension(16);
+    Instances result = useFilter();
+    // Number of instances shouldn't change
+    assertEquals(m_Instances.numInstances(),  result.numInstances());
+
+    // Number of attributes will be minus 2 string attributes plus
+    // the hash attributes
+    assertEquals(m_Instances.numAttributes() - 2 + 16, result.numAttributes());
+  }
+
+  public void testStreaming() throws Exception {
+    StringToWordVector hashing = new StringToWordVector();
+    hashing.setHashDimension(16);
+    hashing.setOutputWordCounts(true);
+    hashing.setInputFormat(m_Instances);
+    Instances expected = Filter.useFilter(m_Instances, hashing);
+
+    StringToWordVector streaming = new StringToWordVector();
+    streaming.setHashDimension(16);
+    streaming.setOutputWordCounts(true);
+    streaming.setStreaming(true);
+    streaming.setInputFormat(m_Instances);
+    for (int i = 0; i < m_Instances.numInstances(); i++) {
+      // output is available immediately
+      assertTrue(streaming.input(m_Instances.instance(i)));
+      assertEquals(expected.instance(i).toString(), 
+	  streaming.output().toString());
+    }
+    streaming.batchFinished();
+    assertNull(streaming.output());
+  }
 
   public static Test suite() {
     return new TestSuite(StringToWordVectorTest.class);
@@ -0,0 +1,229 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    CondensedDistanceMatrix.java
+ *    Upper triangle of a symmetric distance matrix in a flat array
+ *
+ */
+
+package weka.clusterers;
+
+import java.io.Serializable;
+import weka.core.*;
+import weka.core.metrics.*;
+
+/**
+ * A symmetric matrix of distances between n objects that only stores the
+ * n(n-1)/2 entries above the diagonal, row by row in a single array.  The
+ * entries are floats by default, which halves the memory again compared
+ * to doubles; 10,000 instances take 200MB, 30,000 take 1.8GB.  The
+ * diagonal is not stored, get(i, i) is always 0.<p>
+ *
+ * The matrix can be filled with the distances between instances by
+ * several threads, each of which computes whole rows with its own copy of
+ * the metric.  The metric has to support computing distances concurrently
+ * if more than one thread is used.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class CondensedDistanceMatrix implements Serializable {
+
+  /** Number of objects, i.e. rows and columns of the matrix */
+  protected int m_Size;
+
+  /** The entries as floats, null if doubles are used */
+  protected float[] m_Floats;
+
+  /** The entries as doubles, null if floats are used */
+  protected double[] m_Doubles;
+
+  /** The instances while the matrix is filled */
+  protected transient Instance[] m_Instances;
+
+  /** The next row to fill */
+  protected transient int m_NextRow;
+
+  /** The first error a thread ran into while filling the matrix */
+  protected transient Exception m_Error;
+
+  /**
+   * Creates a matrix with all distances 0
+   * @param size the number of objects
+   * @param doublePrecision whether to store the distances as doubles
+   * @exception Exception if the matrix would have too many entries for an array
+   */
+  public CondensedDistanceMatrix(int size, boolean doublePrecision) throws Exception {
+    long numEntries = (long) size * (size - 1) / 2;
+    if (numEntries > Integer.MAX_VALUE - 8) {
+      throw new Exception("Too many objects for a distance matrix: " + size);
+    }
+    m_Size = size;
+    if (doublePrecision) {
+      m_Doubles = new double[(int) numEntries];
+    } else {
+      m_Floats = new float[(int) numEntries];
+    }
+  }
+
+  /** Returns the number of objects */
+  public int size() {
+    return m_Size;
+  }
+
+  /** Returns whether the distances are stored as doubles */
+  public boolean isDoublePrecision() {
+    return m_Doubles != null;
+  }
+
+  /**
+   * Returns the position of an entry in the array
+   * @param i the smaller index
+   * @param j the larger index
+   */
+  protected final int index(int i, int j) {
+    return (int) ((long) i * (2L * m_Size - i - 1) / 2) + (j - i - 1);
+  }
+
+  /**
+   * Returns the distance between two objects
+   * @param i the first object
+   * @param j the second object
+   */
+  public final double get(int i, int j) {
+    if (i == j) {
+      return 0;
+    }
+    int idx = (i < j) ? index(i, j) : index(j, i);
+    return (m_Floats != null) ? m_Floats[idx] : m_Doubles[idx];
+  }
+
+  /**
+   * Sets the distance between two different objects
+   * @param i the first object
+   * @param j the second object
+   * @param distance the distance
+   */
+  public final void set(int i, int j, double distance) {
+    int idx = (i < j) ? index(i, j) : index(j, i);
+    if (m_Floats != null) {
+      m_Floats[idx] = (float) distance;
+    } else {
+      m_Doubles[idx] = distance;
+    }
+  }
+
+  /**
+   * Fills the matrix with the distances between the instances
+   * @param metric the metric computing the distances
+   * @param instances the instances, as many as the matrix has rows
+   * @param numThreads the number of threads computing the rows
+   * @exception Exception if a distance can't be computed
+   */
+  public void fill(Metric metric, Instance[] instances, int numThreads) throws Exception {
+    if (instances.length != m_Size) {
+      throw new Exception("Expected " + m_Size + " instances, got " + instances.length);
+    }
+    m_Instances = instances;
+    m_NextRow = 0;
+    m_Error = null;
+
+    try {
+      if (numThreads <= 1) {
+	int row;
+	while ((row = nextRow()) != -1) {
+	  fillRow(metric, row);
+	}
+	return;
+      }
+
+      RowWorker [] workers = new RowWorker[numThreads];
+      for (int t = 0; t < workers.length; t++) {
+	workers[t] = new RowWorker((Metric) metric.clone());
+	workers[t].start();
+      }
+      for (int t = 0; t < workers.length; t++) {
+	workers[t].join();
+      }
+      if (m_Error != null) {
+	throw m_Error;
+      }
+    } finally {
+      m_Instances = null;
+    }
+  }
+
+  /**
+   * Hands out the rows to fill; the rows get shorter towards the end, so
+   * handing them out one at a time keeps the threads equally busy
+   * @return the next row, -1 if all rows have been handed out or a
+   * thread failed
+   */
+  protected synchronized int nextRow() {
+    if (m_NextRow >= m_Size - 1 || m_Error != null) {
+      return -1;
+    }
+    return m_NextRow++;
+  }
+
+  /** Records the first error of a thread */
+  protected synchronized void setError(Exception e) {
+    if (m_Error == null) {
+      m_Error = e;
+    }
+  }
+
+  /**
+   * Computes the distances from an instance to all instances after it
+   * @param metric the metric to use
+   * @param row the index of the instance
+   * @exception Exception if a distance can't be computed
+   */
+  protected void fillRow(Metric metric, int row) throws Exception {
+    Instance instance = m_Instances[row];
+    int idx = index(row, row + 1);
+    for (int j = row + 1; j < m_Size; j++, idx++) {
+      double distance = metric.distance(instance, m_Instances[j]);
+      if (m_Floats != null) {
+	m_Floats[idx] = (float) distance;
+      } else {
+	m_Doubles[idx] = distance;
+      }
+    }
+  }
+
+  /** A thread that fills rows until none are left */
+  protected class RowWorker extends Thread {
+
+    /** The copy of the metric used by this thread */
+    protected Metric m_Metric;
+
+    public RowWorker(Metric metric) {
+      m_Metric = metric;
+    }
+
+    public void run() {
+      int row;
+      try {
+	while ((row = nextRow()) != -1) {
+	  fillRow(m_Metric, row);
+	}
+      } catch (Exception e) {
+	setError(e);
+      }
+    }
+  }
+}
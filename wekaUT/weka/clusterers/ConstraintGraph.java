@@ -0,0 +1,410 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ConstraintGraph.java
+ *    Compact adjacency structure for pairwise constraints
+ *
+ */
+
+package weka.clusterers;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * The pairwise constraints of a semi-supervised clusterer as a graph over
+ * the instance indices, stored in compressed sparse row form: the edges of
+ * instance i are the entries start(i) ... end(i)-1 of flat arrays holding
+ * the other instance, the link type and the cost of each constraint.  Every
+ * constraint is stored once for each of its two instances.  The edges of an
+ * instance keep the order in which its constraints were added, so penalties
+ * are summed up in the order in which the constraints were given.<p>
+ *
+ * The graph is the only store of the constraints of PCKMeans and MPCKMeans.
+ * Looking up the constraints of an instance costs two array reads instead of
+ * boxing the index and probing a HashMap.  Constraints added later, e.g. by
+ * the transitive closure, are appended to the edges of their instances;
+ * while the clusters are assigned the graph is not modified, so the arrays
+ * can be shared by several threads.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ConstraintGraph implements Serializable {
+
+  /** Number of instances, i.e. nodes of the graph */
+  protected int m_NumInstances;
+
+  /** Edges of instance i are at m_Offsets[i] ... m_Offsets[i+1]-1 */
+  protected int[] m_Offsets;
+
+  /** The other instance of each edge */
+  protected int[] m_Neighbours;
+
+  /** The link type of each edge, InstancePair.MUST_LINK or CANNOT_LINK */
+  protected int[] m_LinkTypes;
+
+  /** The cost of violating the constraint of each edge */
+  protected double[] m_Costs;
+
+  /** Builds the graph from pairwise constraints.  Each pair has to hold
+   * two different instances.
+   * @param pairs an ArrayList of InstancePairs with the actual link types
+   * @param numInstances the number of instances; grown if a pair refers
+   * to an instance beyond it
+   */
+  public ConstraintGraph(ArrayList pairs, int numInstances) throws Exception {
+    allocate(new int[numInstances]);
+    addConstraints(pairs);
+  }
+
+  /** Adds pairwise constraints to the graph.  The new edges of each
+   * instance come after its existing ones, in the order of the list.  The
+   * arrays are rebuilt, which takes time linear in the size of the graph,
+   * hence constraints should be added in batches; the graph must not be
+   * read by other threads meanwhile.
+   * @param pairs an ArrayList of InstancePairs with the actual link types
+   */
+  public void addConstraints(ArrayList pairs) throws Exception {
+    int numNodes = m_NumInstances;
+    for (int i = 0; i < pairs.size(); i++) {
+      InstancePair pair = (InstancePair) pairs.get(i);
+      if (pair.first == pair.second) {
+	throw new Exception("Constraint between instance " + pair.first + " and itself");
+      }
+      numNodes = Math.max(numNodes, Math.max(pair.first, pair.second) + 1);
+    }
+
+    int [] degrees = new int[numNodes];
+    for (int i = 0; i < m_NumInstances; i++) {
+      degrees[i] = degree(i);
+    }
+    for (int i = 0; i < pairs.size(); i++) {
+      InstancePair pair = (InstancePair) pairs.get(i);
+      degrees[pair.first]++;
+      degrees[pair.second]++;
+    }
+    int [] oldOffsets = m_Offsets;
+    int [] oldNeighbours = m_Neighbours;
+    int [] oldLinkTypes = m_LinkTypes;
+    double [] oldCosts = m_Costs;
+    int oldNumInstances = m_NumInstances;
+    allocate(degrees);
+
+    int [] next = new int[numNodes];
+    for (int i = 0; i < numNodes; i++) {
+      next[i] = m_Offsets[i];
+      if (i < oldNumInstances) {
+	int oldDegree = oldOffsets[i+1] - oldOffsets[i];
+	System.arraycopy(oldNeighbours, oldOffsets[i], m_Neighbours, next[i], oldDegree);
+	System.arraycopy(oldLinkTypes, oldOffsets[i], m_LinkTypes, next[i], oldDegree);
+	System.arraycopy(oldCosts, oldOffsets[i], m_Costs, next[i], oldDegree);
+	next[i] += oldDegree;
+      }
+    }
+    for (int i = 0; i < pairs.size(); i++) {
+      InstancePair pair = (InstancePair) pairs.get(i);
+      setEdge(next[pair.first]++, pair.second, pair);
+      setEdge(next[pair.second]++, pair.first, pair);
+    }
+  }
+
+  /** Adds the constraints that follow from transitivity: a must-link
+   * between any two instances of the same must-link neighborhood, and a
+   * cannot-link between any two instances of two neighborhoods that have
+   * a constraint between them (which has to be a cannot-link, otherwise
+   * they would be one neighborhood).  Pairs that are constrained already
+   * are skipped.
+   * @param neighborhoods HashSets with the Integer instance indices of the
+   * neighborhoods, null entries are skipped.  The constraints are inferred
+   * in the order of the array and of the iterators of the sets.
+   * @return the inferred constraints, as InstancePairs with first < second
+   * @exception Exception if an instance is in two neighborhoods
+   */
+  public ArrayList addTransitiveClosure(HashSet[] neighborhoods) throws Exception {
+    return addTransitiveClosure(neighborhoods, null);
+  }
+
+  /** Adds the constraints that follow from transitivity, like
+   * addTransitiveClosure(HashSet[]).  The pairs of the second graph count
+   * as constrained as well, i.e. they link neighborhoods and are skipped,
+   * but they are not added to this graph.
+   * @param neighborhoods HashSets with the Integer instance indices of the
+   * neighborhoods, null entries are skipped
+   * @param known further pairs that are constrained already, may be null
+   * @return the inferred constraints, as InstancePairs with first < second
+   * @exception Exception if an instance is in two neighborhoods
+   */
+  public ArrayList addTransitiveClosure(HashSet[] neighborhoods, ConstraintGraph known)
+    throws Exception {
+    int numNodes = m_NumInstances;
+    if (known != null) {
+      numNodes = Math.max(numNodes, known.m_NumInstances);
+    }
+    for (int k = 0; k < neighborhoods.length; k++) {
+      if (neighborhoods[k] != null) {
+	Iterator iter = neighborhoods[k].iterator();
+	while (iter.hasNext()) {
+	  numNodes = Math.max(numNodes, ((Integer) iter.next()).intValue() + 1);
+	}
+      }
+    }
+
+    // the neighborhood of each instance, -1 if none
+    int [] neighborhood = new int[numNodes];
+    Arrays.fill(neighborhood, -1);
+    for (int k = 0; k < neighborhoods.length; k++) {
+      if (neighborhoods[k] != null) {
+	Iterator iter = neighborhoods[k].iterator();
+	while (iter.hasNext()) {
+	  int u = ((Integer) iter.next()).intValue();
+	  if (neighborhood[u] != -1) {
+	    throw new Exception(" Same instance " + u + " cannot be in neighborhood: "
+				+ neighborhood[u] + " and neighborhood " + k);
+	  }
+	  neighborhood[u] = k;
+	}
+      }
+    }
+
+    // find the pairs of neighborhoods with a constraint between them,
+    // with a single pass over the edges
+    boolean [][] constrained = new boolean[neighborhoods.length][neighborhoods.length];
+    markConstrainedNeighborhoods(neighborhood, constrained);
+    if (known != null) {
+      known.markConstrainedNeighborhoods(neighborhood, constrained);
+    }
+
+    // mark[v] == u iff u and v are constrained already, after markNeighbours(u)
+    ArrayList inferred = new ArrayList();
+    int [] mark = new int[numNodes];
+    Arrays.fill(mark, -1);
+
+    // all ML links within neighborhoods
+    for (int k = 0; k < neighborhoods.length; k++) {
+      if (neighborhoods[k] != null) {
+	Iterator iter1 = neighborhoods[k].iterator();
+	while (iter1.hasNext()) {
+	  int first = ((Integer) iter1.next()).intValue();
+	  markNeighbours(first, mark);
+	  if (known != null) {
+	    known.markNeighbours(first, mark);
+	  }
+	  Iterator iter2 = neighborhoods[k].iterator();
+	  while (iter2.hasNext()) {
+	    int second = ((Integer) iter2.next()).intValue();
+	    if (first < second && mark[second] != first) {
+	      inferred.add(new InstancePair(first, second, InstancePair.MUST_LINK));
+	    }
+	  }
+	}
+      }
+    }
+
+    // all CL links between constrained neighborhoods
+    for (int k = 0; k < neighborhoods.length; k++) {
+      for (int l = k+1; l < neighborhoods.length; l++) {
+	if (!constrained[k][l]) {
+	  continue;
+	}
+	Iterator iter1 = neighborhoods[k].iterator();
+	while (iter1.hasNext()) {
+	  int index1 = ((Integer) iter1.next()).intValue();
+	  markNeighbours(index1, mark);
+	  if (known != null) {
+	    known.markNeighbours(index1, mark);
+	  }
+	  Iterator iter2 = neighborhoods[l].iterator();
+	  while (iter2.hasNext()) {
+	    int index2 = ((Integer) iter2.next()).intValue();
+	    if (mark[index2] != index1) {
+	      inferred.add(new InstancePair(Math.min(index1, index2), Math.max(index1, index2),
+					    InstancePair.CANNOT_LINK));
+	    }
+	  }
+	}
+      }
+    }
+
+    addConstraints(inferred);
+    return inferred;
+  }
+
+  /** Sets constrained[k][l] if there is an edge between an instance of
+   * neighborhood k and one of neighborhood l != k
+   * @param neighborhood the neighborhood of each instance, -1 if none
+   */
+  protected void markConstrainedNeighborhoods(int[] neighborhood, boolean[][] constrained) {
+    for (int u = 0; u < m_NumInstances; u++) {
+      if (neighborhood[u] != -1) {
+	for (int e = m_Offsets[u]; e < m_Offsets[u+1]; e++) {
+	  int v = m_Neighbours[e];
+	  if (neighborhood[v] != -1 && neighborhood[v] != neighborhood[u]) {
+	    constrained[neighborhood[u]][neighborhood[v]] = true;
+	  }
+	}
+      }
+    }
+  }
+
+  /** Sets mark[v] = instIdx for all instances v constrained with instIdx */
+  protected void markNeighbours(int instIdx, int[] mark) {
+    for (int e = start(instIdx); e < end(instIdx); e++) {
+      mark[m_Neighbours[e]] = instIdx;
+    }
+  }
+
+  /** Allocates the arrays for the given number of edges per instance */
+  protected void allocate(int[] degrees) {
+    m_NumInstances = degrees.length;
+    m_Offsets = new int[m_NumInstances + 1];
+    for (int i = 0; i < m_NumInstances; i++) {
+      m_Offsets[i+1] = m_Offsets[i] + degrees[i];
+    }
+    int numEdges = m_Offsets[m_NumInstances];
+    m_Neighbours = new int[numEdges];
+    m_LinkTypes = new int[numEdges];
+    m_Costs = new double[numEdges];
+  }
+
+  /** Fills in an edge */
+  protected void setEdge(int edge, int neighbour, InstancePair pair) {
+    m_Neighbours[edge] = neighbour;
+    m_LinkTypes[edge] = pair.linkType;
+    m_Costs[edge] = pair.cost;
+  }
+
+  /** The number of instances covered by the graph */
+  public int numInstances() {
+    return m_NumInstances;
+  }
+
+  /** The number of constraints, each of which is stored as two edges */
+  public int numConstraints() {
+    return m_Neighbours.length / 2;
+  }
+
+  /** Is the instance involved in any constraint? */
+  public boolean hasConstraints(int instIdx) {
+    return instIdx < m_NumInstances && m_Offsets[instIdx] != m_Offsets[instIdx+1];
+  }
+
+  /** The number of constraints the instance is involved in */
+  public int degree(int instIdx) {
+    return (instIdx < m_NumInstances) ? m_Offsets[instIdx+1] - m_Offsets[instIdx] : 0;
+  }
+
+  /** The first edge of the instance */
+  public int start(int instIdx) {
+    return (instIdx < m_NumInstances) ? m_Offsets[instIdx] : 0;
+  }
+
+  /** One past the last edge of the instance */
+  public int end(int instIdx) {
+    return (instIdx < m_NumInstances) ? m_Offsets[instIdx+1] : 0;
+  }
+
+  /** The other instance of an edge */
+  public int neighbour(int edge) {
+    return m_Neighbours[edge];
+  }
+
+  /** The link type of an edge */
+  public int linkType(int edge) {
+    return m_LinkTypes[edge];
+  }
+
+  /** The cost of violating the constraint of an edge */
+  public double cost(int edge) {
+    return m_Costs[edge];
+  }
+
+  /** The link type of the constraint between two instances
+   * @return InstancePair.MUST_LINK, CANNOT_LINK, or DONT_CARE_LINK if the
+   * instances are not constrained
+   */
+  public int linkType(int instIdx1, int instIdx2) {
+    // scan the shorter of the two edge lists
+    if (degree(instIdx2) < degree(instIdx1)) {
+      int tmp = instIdx1;
+      instIdx1 = instIdx2;
+      instIdx2 = tmp;
+    }
+    for (int e = start(instIdx1); e < end(instIdx1); e++) {
+      if (m_Neighbours[e] == instIdx2) {
+	return m_LinkTypes[e];
+      }
+    }
+    return InstancePair.DONT_CARE_LINK;
+  }
+
+  /** Labels the connected components of the must-link edges
+   * @return for each instance the index of its component, in the order in
+   * which the components are first reached, or -1 for instances without
+   * must-links
+   */
+  public int[] mustLinkComponents() {
+    int [] components = new int[m_NumInstances];
+    Arrays.fill(components, -1);
+    int [] stack = new int[m_NumInstances];
+    int numComponents = 0;
+
+    for (int i = 0; i < m_NumInstances; i++) {
+      if (components[i] != -1 || !hasMustLink(i)) {
+	continue;
+      }
+      int top = 0;
+      stack[top++] = i;
+      components[i] = numComponents;
+      while (top > 0) {
+	int u = stack[--top];
+	for (int e = m_Offsets[u]; e < m_Offsets[u+1]; e++) {
+	  int v = m_Neighbours[e];
+	  if (m_LinkTypes[e] == InstancePair.MUST_LINK && components[v] == -1) {
+	    components[v] = numComponents;
+	    stack[top++] = v;
+	  }
+	}
+      }
+      numComponents++;
+    }
+    return components;
+  }
+
+  /** Does the instance have at least one must-link? */
+  protected boolean hasMustLink(int instIdx) {
+    for (int e = m_Offsets[instIdx]; e < m_Offsets[instIdx+1]; e++) {
+      if (m_LinkTypes[e] == InstancePair.MUST_LINK) {
+	return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the constraints as InstancePairs with first < second, each
+   * one once, in the order of their smaller instance */
+  public ArrayList toPairs() {
+    ArrayList pairs = new ArrayList(numConstraints());
+    for (int i = 0; i < m_NumInstances; i++) {
+      for (int e = m_Offsets[i]; e < m_Offsets[i+1]; e++) {
+	if (i < m_Neighbours[e]) {
+	  pairs.add(new InstancePair(i, m_Neighbours[e], m_LinkTypes[e], m_Costs[e]));
+	}
+      }
+    }
+    return pairs;
+  }
+}
@@ -29,6 +29,15 @@
  * -N <0-10000> <br>
  * Number of clusters. <p>
  *
+ * -E <br>
+ * Use the nearest-neighbour chain algorithm on a condensed distance matrix. <p>
+ *
+ * -D <br>
+ * Store the condensed distances as doubles instead of floats. <p>
+ *
+ * -P <num> <br>
+ * Number of threads computing the condensed distance matrix. <p>
+ *
  * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
  * @version $Revision: 1.11 $
  */
@@ -44,7 +53,8 @@ import weka.filters.unsupervised.attribute.Remove;
 import weka.filters.unsupervised.attribute.Normalize;
 import weka.filters.Filter;
 
-public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
+public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler,
+  OutputFileHandler {
   /* name of the clusterer */
   String m_name = "HAC";
 
@@ -81,6 +91,18 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
   /** distance matrix */
     protected double[][] m_distanceMatrix = null;
 
+  /** Use the nearest-neighbour chain algorithm on a condensed distance matrix? */
+  protected boolean m_useNNChain = false;
+
+  /** Store the condensed distances as doubles instead of floats? */
+  protected boolean m_doublePrecision = false;
+
+  /** Number of threads computing the condensed distance matrix */
+  protected int m_numExecutionSlots = 1;
+
+  /** condensed distance matrix, only used by the nearest-neighbour chain algorithm */
+  protected CondensedDistanceMatrix m_condensedMatrix = null;
+
   /** cluster similarity type */
   public final static int SINGLE_LINK = 0;
   public final static int COMPLETE_LINK = 1;
@@ -184,6 +206,11 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
     return m_mergeThreshold;
   }
 
+  /** Adds a suffix to the name of the dot file */
+  public void setOutputFileSuffix(String suffix) {
+    m_dotFileName = Utils.addFileNameSuffix(m_dotFileName, suffix);
+  }
+
 
   /**
    * Set the distance metric
@@ -326,8 +353,17 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
     }
     
     hashInstances(m_instances);
-    createDistanceMatrix();
-    cluster();
+    if (m_useNNChain) {
+      createCondensedDistanceMatrix();
+      try {
+	clusterNNChain();
+      } finally {
+	m_condensedMatrix = null;
+      }
+    } else {
+      createDistanceMatrix();
+      cluster();
+    }
     unhashClusters();
 
     m_dotWriter.println("}");
@@ -466,7 +502,7 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
     
     for (Enumeration enum = data.enumerateInstances(); enum.hasMoreElements();) {
       Instance instance = (Instance) enum.nextElement();
-      if (!m_instancesHash.containsValue(instance)) {
+      if (!m_reverseInstancesHash.containsKey(instance)) {
 	Integer idx = new Integer(next_value);
 	next_value++;
 	m_instancesHash.put(idx, instance);
@@ -540,6 +576,21 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
     }
   }
 
+  /**
+   * Fill the condensed distance matrix with values using the metric
+   *
+   */
+  protected void createCondensedDistanceMatrix () throws Exception {
+    int n = m_instancesHash.size();
+    Instance [] instances = new Instance[n];
+    for (int i = 0; i < n; i++) {
+      instances[i] = (Instance) m_instancesHash.get(new Integer(i));
+    }
+    
+    m_condensedMatrix = new CondensedDistanceMatrix(n, m_doublePrecision);
+    m_condensedMatrix.fill(m_metric, instances, m_numExecutionSlots);
+  }
+
   /**
    * Set the type of clustering
    *
@@ -563,6 +614,52 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
       return new SelectedTag(m_linkingType, TAGS_LINKING);
   }
 
+  /** Turn the nearest-neighbour chain algorithm on and off
+   * @param useNNChain should the clusters be merged with nearest-neighbour chains?
+   */
+  public void setUseNNChain(boolean useNNChain) {
+    m_useNNChain = useNNChain;
+  }
+
+  /** Is the nearest-neighbour chain algorithm used?
+   * @return true if the clusters are merged with nearest-neighbour chains
+   */
+  public boolean getUseNNChain() {
+    return m_useNNChain;
+  }
+
+  /** Set whether the condensed distances are stored as doubles
+   * @param doublePrecision true for doubles, false for floats
+   */
+  public void setDoublePrecision(boolean doublePrecision) {
+    m_doublePrecision = doublePrecision;
+  }
+
+  /** Are the condensed distances stored as doubles?
+   * @return true for doubles, false for floats
+   */
+  public boolean getDoublePrecision() {
+    return m_doublePrecision;
+  }
+
+  /** Set the number of threads computing the condensed distance matrix
+   * @param numExecutionSlots the number of threads, at least 1
+   */
+  public void setNumExecutionSlots(int numExecutionSlots) {
+    if (numExecutionSlots >= 1) {
+      m_numExecutionSlots = numExecutionSlots;
+    } else {
+      System.err.println("Number of execution slots must be at least 1!");
+    }
+  }
+
+  /** Get the number of threads computing the condensed distance matrix
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
 
   /**
    * Internal method that initializes distances between seed clusters to
@@ -670,6 +767,227 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
     initClusterAssignments();
   }
 
+  /**
+   * Internal method that produces the clusters with the nearest-neighbour
+   * chain algorithm.  Starting from any cluster, the chain follows nearest
+   * neighbours until two clusters are each other's nearest neighbours;
+   * those are merged and the distances to the merged cluster are computed
+   * from the distances to its parts (Lance-Williams), so every merge costs
+   * O(n) instead of a search over all pairs.  For single, complete and
+   * group-average linkage these merges are the same as the ones of the
+   * greedy algorithm, just found in a different order, so they are sorted
+   * by distance before they are applied until the desired number of
+   * clusters or the merge threshold is reached.  Ties are broken by the
+   * index of the clusters instead of randomly.<p>
+   *
+   * Seeded instances of the same class start in the same cluster, and the
+   * distance between clusters containing seeds of different classes is
+   * infinite, as with initConstraints.  Clusters are never merged at an
+   * infinite distance.
+   */
+  protected void clusterNNChain() throws Exception {
+    CondensedDistanceMatrix matrix = m_condensedMatrix;
+    int n = matrix.size();
+    int [] sizes = new int[n];           // 0 once merged into another cluster
+    boolean [] retired = new boolean[n]; // infinitely far from all other clusters
+    int [] parents = new int[n];         // union-find forest of the merges
+    int numActive = n;
+    m_numSeededClusters = 0;
+
+    for (int i = 0; i < n; i++) {
+      sizes[i] = 1;
+      parents[i] = i;
+    }
+
+    // seeds: cannot-links between the classes, must-links within a class
+    if (m_SeedHash != null) {
+      if (m_verbose) {
+	System.out.println("Seeding HAC using " + m_SeedHash.size() + " seeds");
+      }
+      int [] seedClasses = new int[n];
+      Arrays.fill(seedClasses, -1);
+      Iterator iterator = m_SeedHash.entrySet().iterator();
+      while (iterator.hasNext()) {
+	Map.Entry entry = (Map.Entry) iterator.next();
+	Integer instanceIdx = (Integer) m_reverseInstancesHash.get(entry.getKey());
+	seedClasses[instanceIdx.intValue()] = ((Integer) entry.getValue()).intValue();
+      }
+      int [] seeds = new int[m_SeedHash.size()];
+      int numSeeds = 0;
+      for (int i = 0; i < n; i++) {
+	if (seedClasses[i] != -1) {
+	  seeds[numSeeds++] = i;
+	}
+      }
+      for (int i = 0; i < numSeeds; i++) {
+	for (int j = i+1; j < numSeeds; j++) {
+	  if (seedClasses[seeds[i]] != seedClasses[seeds[j]]) {
+	    matrix.set(seeds[i], seeds[j], Double.POSITIVE_INFINITY);
+	  }
+	}
+      }
+      HashMap firstOfClass = new HashMap();
+      for (int i = 0; i < numSeeds; i++) {
+	Integer seedClass = new Integer(seedClasses[seeds[i]]);
+	Integer first = (Integer) firstOfClass.get(seedClass);
+	if (first == null) {
+	  firstOfClass.put(seedClass, new Integer(seeds[i]));
+	} else {
+	  updateDistances(first.intValue(), seeds[i], sizes, retired);
+	  sizes[first.intValue()] += sizes[seeds[i]];
+	  sizes[seeds[i]] = 0;
+	  parents[seeds[i]] = first.intValue();
+	  numActive--;
+	}
+      }
+      m_numSeededClusters = firstOfClass.size();
+      System.out.println("Seeded " + m_numSeededClusters + " clusters");
+    }
+
+    // find all merges at a finite distance
+    int [] chain = new int[n];
+    int chainLength = 0;
+    int [] mergeFrom = new int[n];
+    int [] mergeInto = new int[n];
+    double [] mergeDistances = new double[n];
+    int numMerges = 0;
+    int nextStart = 0;
+    while (numActive > 1) {
+      if (chainLength == 0) {
+	while (sizes[nextStart] == 0 || retired[nextStart]) {
+	  nextStart++;
+	}
+	chain[chainLength++] = nextStart;
+      }
+      int current = chain[chainLength-1];
+      int previous = (chainLength > 1) ? chain[chainLength-2] : -1;
+
+      // nearest neighbour, the previous cluster wins ties so the chain ends
+      int nearest = previous;
+      double bestDistance = (previous != -1) ? matrix.get(current, previous) : Double.POSITIVE_INFINITY;
+      for (int k = 0; k < n; k++) {
+	if (k != current && sizes[k] > 0 && !retired[k]) {
+	  double distance = matrix.get(current, k);
+	  if (distance < bestDistance) {
+	    bestDistance = distance;
+	    nearest = k;
+	  }
+	}
+      }
+
+      if (bestDistance == Double.POSITIVE_INFINITY) {
+	// can't be merged with anything anymore
+	retired[current] = true;
+	numActive--;
+	chainLength = 0;
+      } else if (nearest == previous) {
+	int into = Math.min(current, previous);
+	int from = Math.max(current, previous);
+	updateDistances(into, from, sizes, retired);
+	sizes[into] += sizes[from];
+	sizes[from] = 0;
+	numActive--;
+	mergeInto[numMerges] = into;
+	mergeFrom[numMerges] = from;
+	mergeDistances[numMerges] = bestDistance;
+	numMerges++;
+	chainLength -= 2;
+      } else {
+	chain[chainLength++] = nearest;
+      }
+    }
+
+    // apply the merges in the order of the greedy algorithm
+    int numClusters = 0;
+    for (int i = 0; i < n; i++) {
+      if (parents[i] == i) {
+	numClusters++;
+      }
+    }
+    double [] sortedDistances = new double[numMerges];
+    System.arraycopy(mergeDistances, 0, sortedDistances, 0, numMerges);
+    int [] order = Utils.stableSort(sortedDistances);
+    for (int m = 0; m < numMerges && numClusters > m_numClusters; m++) {
+      int into = findRoot(parents, mergeInto[order[m]]);
+      int from = findRoot(parents, mergeFrom[order[m]]);
+      parents[from] = into;
+      numClusters--;
+      if (m_verbose) {
+	System.out.println("Merged with " + numClusters + " clusters left; distance=" + mergeDistances[order[m]]);
+      }
+      if (mergeDistances[order[m]] >= m_mergeThreshold) {
+	break;
+      }
+    }
+
+    // clusters of instance indices, in the order of their first instance
+    m_clusters = new ArrayList();
+    int [] clusterIdxs = new int[n];
+    for (int i = 0; i < n; i++) {
+      int root = findRoot(parents, i);
+      if (root == i) {
+	clusterIdxs[i] = m_clusters.size();
+	m_clusters.add(new Cluster(m_clusterID++));
+      }
+      ((Cluster) m_clusters.get(clusterIdxs[root])).add(new Integer(i), 1);
+    }
+    m_numCurrentClusters = m_clusters.size();
+    if (m_verbose) {
+      System.out.println("Done clustering with " + m_clusters.size() + " clusters");
+    }
+    initClusterAssignments();
+  }
+
+  /**
+   * Internal method that computes the distances from the union of two
+   * clusters to all other clusters (Lance-Williams update); the union
+   * takes the place of the first cluster.  An infinite distance to either
+   * part stays infinite, so cannot-links carry over to merged clusters for
+   * every linkage type.
+   * @param into the cluster that takes the union
+   * @param from the cluster merged into it
+   * @param sizes the number of instances of each cluster, 0 if merged away
+   * @param retired the clusters that are infinitely far from all others
+   */
+  protected void updateDistances(int into, int from, int [] sizes, boolean [] retired) {
+    CondensedDistanceMatrix matrix = m_condensedMatrix;
+    double intoSize = sizes[into];
+    double fromSize = sizes[from];
+    for (int k = 0; k < sizes.length; k++) {
+      if (k == into || k == from || sizes[k] == 0 || retired[k]) {
+	continue;
+      }
+      double intoDistance = matrix.get(into, k);
+      double fromDistance = matrix.get(from, k);
+      double distance;
+      if (intoDistance == Double.POSITIVE_INFINITY || fromDistance == Double.POSITIVE_INFINITY) {
+	distance = Double.POSITIVE_INFINITY;
+      } else if (m_linkingType == SINGLE_LINK) {
+	distance = Math.min(intoDistance, fromDistance);
+      } else if (m_linkingType == COMPLETE_LINK) {
+	distance = Math.max(intoDistance, fromDistance);
+      } else {
+	distance = (intoDistance * intoSize + fromDistance * fromSize) / (intoSize + fromSize);
+      }
+      matrix.set(into, k, distance);
+    }
+  }
+
+  /** Internal method that returns the root of an instance in the union-find forest */
+  protected static int findRoot(int [] parents, int i) {
+    int root = i;
+    while (parents[root] != root) {
+      root = parents[root];
+    }
+    // shorten the path for later lookups
+    while (parents[i] != root) {
+      int next = parents[i];
+      parents[i] = root;
+      i = next;
+    }
+    return root;
+  }
+
   /**
    * Internal method that finds two most similar clusters and merges them
    */
@@ -1203,6 +1521,12 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
 				    +"\t(default=MAX_DOUBLE)", "T", 1,"-T <0-MAX_DOUBLE>"));
     newVector.addElement(new Option("\tNumber of clusters.\n"
 				    +"a\t(default=-1)", "N", 1,"-N <-1-MAX_INT100%>"));
+    newVector.addElement(new Option("\tUse the nearest-neighbour chain algorithm on a condensed\n"
+				    +"\tdistance matrix.", "E", 0,"-E"));
+    newVector.addElement(new Option("\tStore the condensed distances as doubles instead of floats.",
+				    "D", 0,"-D"));
+    newVector.addElement(new Option("\tNumber of threads computing the condensed distance matrix.\n"
+				    +"\t(default=1)", "P", 1,"-P <num>"));
     return newVector.elements();
   }
 
@@ -1228,7 +1552,13 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
     if (optionString.length() != 0) {
       setNumClusters(Integer.parseInt(optionString));
     }
-    
+
+    setUseNNChain(Utils.getFlag('E', options));
+    setDoublePrecision(Utils.getFlag('D', options));
+    optionString = Utils.getOption('P', options); 
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
 
@@ -1256,6 +1586,15 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
       options[current++] = "-S";
     }
 
+    if (m_useNNChain) {
+      options[current++] = "-E";
+      if (m_doublePrecision) {
+	options[current++] = "-D";
+      }
+      options[current++] = "-P";
+      options[current++] = "" + m_numExecutionSlots;
+    }
+
     options[current++] = "-M";
     options[current++] = m_metric.getClass().getName();
     if (m_metric instanceof OptionHandler) {
@@ -1296,6 +1635,11 @@ public class HAC extends Clusterer implements SemiSupClusterer, OptionHandler{
     return Double.NaN;
   }
 
+  /** HAC does not use pairwise constraints, needed for compatibility with SemiSupClusterer */
+  public ConstraintGraph getConstraintGraph() {
+    return null;
+  }
+
     /** Return the number of clusters */
   public int getNumClusters() {
     return m_numClusters;
@@ -0,0 +1,385 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    LanczosEigensolver.java
+ *    Largest eigenpairs of a symmetric operator by thick-restart Lanczos
+ *
+ */
+
+package weka.clusterers;
+
+import java.util.Random;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.linalg.EigenvalueDecomposition;
+
+/**
+ * Computes the eigenvectors of the largest eigenvalues of a symmetric
+ * matrix that is only accessed through matrix-vector products, so the
+ * matrix never has to be stored densely.  This is the Lanczos method with
+ * full reorthogonalization and thick restarts (Wu and Simon, 2000): the
+ * Krylov basis has at most a fixed number of vectors, and when it is full
+ * the best Ritz vectors are kept and the iteration continues from them.<p>
+ *
+ * The search can be restricted to the orthogonal complement of some known
+ * eigenvectors (the locked vectors), for example the trivial eigenvector
+ * of a normalized graph Laplacian.<p>
+ *
+ * Each iteration costs one product with the matrix plus O(n m) for the
+ * orthogonalization, where m is the size of the basis; memory is m + 1
+ * vectors of length n.  The small projected problem is solved with the
+ * dense Colt eigenvalue decomposition.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class LanczosEigensolver {
+
+  /** A symmetric matrix accessed through products with vectors */
+  public interface Operator {
+
+    /** Returns the number of rows and columns */
+    int size();
+
+    /**
+     * Computes y = A x
+     * @param x the vector to multiply, must not be modified
+     * @param y receives the product
+     */
+    void multiply(double[] x, double[] y);
+  }
+
+  /** The default maximum number of vectors in the Krylov basis */
+  public static final int DEFAULT_BASIS_SIZE = 40;
+
+  /** The maximum number of vectors in the Krylov basis */
+  protected int m_BasisSize = DEFAULT_BASIS_SIZE;
+
+  /** A Ritz pair has converged when its residual is below this */
+  protected double m_Tolerance = 1e-8;
+
+  /** The maximum number of restarts before giving up on convergence */
+  protected int m_MaxRestarts = 1000;
+
+  /** The seed for the random start vector */
+  protected long m_Seed = 1;
+
+  /** The number of products with the matrix of the last solve */
+  protected int m_NumMultiplications;
+
+  /** Whether all eigenpairs of the last solve converged */
+  protected boolean m_Converged;
+
+  /** Sets the maximum number of vectors in the Krylov basis */
+  public void setBasisSize(int basisSize) {
+    m_BasisSize = basisSize;
+  }
+
+  /** Returns the maximum number of vectors in the Krylov basis */
+  public int getBasisSize() {
+    return m_BasisSize;
+  }
+
+  /** Sets the residual norm below which a Ritz pair has converged */
+  public void setTolerance(double tolerance) {
+    m_Tolerance = tolerance;
+  }
+
+  /** Returns the residual norm below which a Ritz pair has converged */
+  public double getTolerance() {
+    return m_Tolerance;
+  }
+
+  /** Sets the maximum number of restarts */
+  public void setMaxRestarts(int maxRestarts) {
+    m_MaxRestarts = maxRestarts;
+  }
+
+  /** Returns the maximum number of restarts */
+  public int getMaxRestarts() {
+    return m_MaxRestarts;
+  }
+
+  /** Sets the seed for the random start vector */
+  public void setSeed(long seed) {
+    m_Seed = seed;
+  }
+
+  /** Returns the number of products with the matrix of the last solve */
+  public int getNumMultiplications() {
+    return m_NumMultiplications;
+  }
+
+  /**
+   * Returns whether all eigenpairs of the last solve converged; if not,
+   * the best approximations found were returned
+   */
+  public boolean hasConverged() {
+    return m_Converged;
+  }
+
+  /**
+   * Computes the eigenvectors of the largest eigenvalues of a symmetric
+   * matrix in the orthogonal complement of the locked vectors.
+   *
+   * @param A the matrix
+   * @param numEigenvectors the number of eigenvectors wanted
+   * @param locked orthonormal vectors to search orthogonally to, may be null
+   * @param eigenvalues receives the eigenvalues, largest first, may be null
+   * @return the unit eigenvectors, in the order of their eigenvalues; fewer
+   * than requested if the complement of the locked vectors is smaller
+   * @exception Exception if the parameters are invalid
+   */
+  public double[][] solve(Operator A, int numEigenvectors, double[][] locked,
+			  double[] eigenvalues) throws Exception {
+    int n = A.size();
+    int numLocked = (locked == null) ? 0 : locked.length;
+    if (numEigenvectors < 1) {
+      throw new Exception("At least one eigenvector has to be requested");
+    }
+    if (m_BasisSize < 2) {
+      throw new Exception("The Krylov basis needs at least two vectors");
+    }
+    m_NumMultiplications = 0;
+    m_Converged = true;
+
+    // the basis can't be larger than the space it is built in
+    int dim = n - numLocked;
+    int nev = Math.min(numEigenvectors, dim);
+    if (nev <= 0) {
+      return new double[0][];
+    }
+    int m = Math.min(Math.max(m_BasisSize, nev + 2), dim);
+
+    Random random = new Random(m_Seed);
+    double[][] V = new double[m + 1][];
+    double[][] H = new double[m][m];
+    double[] w = new double[n];
+    double beta = 0;
+
+    V[0] = randomStart(n, locked, V, 0, random);
+    if (V[0] == null) {
+      return new double[0][];
+    }
+
+    int kept = 0;
+    double[] theta = null;
+    double[][] Y = null;
+    for (int restart = 0; ; restart++) {
+      // extend the basis to m vectors
+      int size = m;
+      for (int j = kept; j < m; j++) {
+	A.multiply(V[j], w);
+	m_NumMultiplications++;
+	orthogonalize(w, locked, numLocked);
+	// two passes of Gram-Schmidt against the basis; the coefficients
+	// are the entries of the projected matrix
+	for (int pass = 0; pass < 2; pass++) {
+	  for (int i = 0; i <= j; i++) {
+	    double h = dot(V[i], w);
+	    H[i][j] += h;
+	    axpy(-h, V[i], w);
+	  }
+	}
+	for (int i = 0; i < j; i++) {
+	  H[j][i] = H[i][j];
+	}
+	beta = Math.sqrt(dot(w, w));
+	if (beta > 1e-12) {
+	  V[j + 1] = scale(w, 1 / beta);
+	} else if (j + 1 < m) {
+	  // invariant subspace found, continue with a fresh direction
+	  V[j + 1] = randomStart(n, locked, V, j + 1, random);
+	  beta = 0;
+	  if (V[j + 1] == null) {
+	    size = j + 1;
+	    break;
+	  }
+	} else {
+	  V[j + 1] = new double[n];
+	  beta = 0;
+	}
+      }
+
+      // Ritz pairs of the projected matrix, largest first
+      DoubleMatrix2D T = new DenseDoubleMatrix2D(size, size);
+      for (int i = 0; i < size; i++) {
+	for (int j = 0; j < size; j++) {
+	  T.setQuick(i, j, H[i][j]);
+	}
+      }
+      EigenvalueDecomposition e = new EigenvalueDecomposition(T);
+      DoubleMatrix1D lambda = e.getRealEigenvalues();
+      DoubleMatrix2D E = e.getV();
+      theta = new double[size];
+      Y = new double[size][size];
+      for (int c = 0; c < size; c++) {
+	// the decomposition of a symmetric matrix sorts ascending
+	int src = size - 1 - c;
+	theta[c] = lambda.getQuick(src);
+	for (int r = 0; r < size; r++) {
+	  Y[r][c] = E.getQuick(r, src);
+	}
+      }
+
+      // the residual of a Ritz pair is beta times the last entry of its vector
+      boolean converged = true;
+      for (int c = 0; c < nev && converged; c++) {
+	double scale = Math.max(1, Math.abs(theta[c]));
+	if (Math.abs(beta * Y[size - 1][c]) > m_Tolerance * scale) {
+	  converged = false;
+	}
+      }
+      if (converged || size < m || restart >= m_MaxRestarts) {
+	m_Converged = converged || size < m;
+	if (eigenvalues != null) {
+	  for (int c = 0; c < Math.min(nev, eigenvalues.length); c++) {
+	    eigenvalues[c] = theta[c];
+	  }
+	}
+	return ritzVectors(V, Y, size, nev, n);
+      }
+
+      // thick restart: keep the best Ritz vectors and the residual direction
+      kept = Math.min(nev + (m - nev) / 2, m - 1);
+      double[][] R = ritzVectors(V, Y, size, kept, n);
+      double[] residual = V[size];
+      for (int i = 0; i <= m; i++) {
+	V[i] = null;
+      }
+      for (int i = 0; i < kept; i++) {
+	V[i] = R[i];
+      }
+      V[kept] = residual;
+      for (int i = 0; i < m; i++) {
+	for (int j = 0; j < m; j++) {
+	  H[i][j] = 0;
+	}
+      }
+      for (int i = 0; i < kept; i++) {
+	H[i][i] = theta[i];
+      }
+      // the next column couples the kept vectors with the residual direction
+      kept++;
+      A.multiply(V[kept - 1], w);
+      m_NumMultiplications++;
+      orthogonalize(w, locked, numLocked);
+      for (int pass = 0; pass < 2; pass++) {
+	for (int i = 0; i < kept; i++) {
+	  double h = dot(V[i], w);
+	  H[i][kept - 1] += h;
+	  axpy(-h, V[i], w);
+	}
+      }
+      for (int i = 0; i < kept - 1; i++) {
+	H[kept - 1][i] = H[i][kept - 1];
+      }
+      beta = Math.sqrt(dot(w, w));
+      if (beta > 1e-12) {
+	V[kept] = scale(w, 1 / beta);
+      } else {
+	V[kept] = randomStart(n, locked, V, kept, random);
+	if (V[kept] == null) {
+	  V[kept] = new double[n];
+	}
+      }
+    }
+  }
+
+  /**
+   * Combines the basis vectors into Ritz vectors
+   * @param V the basis
+   * @param Y the eigenvectors of the projected matrix, by column
+   * @param size the number of basis vectors
+   * @param count the number of Ritz vectors
+   * @param n the length of the vectors
+   */
+  protected static double[][] ritzVectors(double[][] V, double[][] Y, int size,
+					  int count, int n) {
+    double[][] R = new double[count][n];
+    for (int c = 0; c < count; c++) {
+      for (int i = 0; i < size; i++) {
+	axpy(Y[i][c], V[i], R[c]);
+      }
+      double norm = Math.sqrt(dot(R[c], R[c]));
+      if (norm > 0) {
+	for (int i = 0; i < n; i++) {
+	  R[c][i] /= norm;
+	}
+      }
+    }
+    return R;
+  }
+
+  /**
+   * Returns a random unit vector orthogonal to the locked vectors and the
+   * first basis vectors
+   * @return the vector, null if these span the whole space
+   */
+  protected static double[] randomStart(int n, double[][] locked, double[][] V,
+					int numBasis, Random random) {
+    int numLocked = (locked == null) ? 0 : locked.length;
+    for (int attempt = 0; attempt < 5; attempt++) {
+      double[] x = new double[n];
+      for (int i = 0; i < n; i++) {
+	x[i] = random.nextDouble() - 0.5;
+      }
+      for (int pass = 0; pass < 2; pass++) {
+	orthogonalize(x, locked, numLocked);
+	orthogonalize(x, V, numBasis);
+      }
+      double norm = Math.sqrt(dot(x, x));
+      if (norm > 1e-8) {
+	return scale(x, 1 / norm);
+      }
+    }
+    return null;
+  }
+
+  /** Removes the components along the first count of the given unit vectors */
+  protected static void orthogonalize(double[] x, double[][] basis, int count) {
+    for (int i = 0; i < count; i++) {
+      axpy(-dot(basis[i], x), basis[i], x);
+    }
+  }
+
+  /** Returns the dot product of two vectors */
+  protected static double dot(double[] x, double[] y) {
+    double sum = 0;
+    for (int i = 0; i < x.length; i++) {
+      sum += x[i] * y[i];
+    }
+    return sum;
+  }
+
+  /** Computes y += a x */
+  protected static void axpy(double a, double[] x, double[] y) {
+    for (int i = 0; i < x.length; i++) {
+      y[i] += a * x[i];
+    }
+  }
+
+  /** Returns a new vector a x */
+  protected static double[] scale(double[] x, double a) {
+    double[] y = new double[x.length];
+    for (int i = 0; i < x.length; i++) {
+      y[i] = a * x[i];
+    }
+    return y;
+  }
+}
@@ -54,7 +54,8 @@ import  weka.clusterers.metriclearners.*;
  * @see Clusterer
  * @see OptionHandler
  */
-public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupClusterer {
+public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupClusterer,
+  OutputFileHandler {
 
   /** Name of clusterer */
   String m_name = "MPCKMeans";
@@ -65,29 +66,14 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
   /** holds the instance indices in the clusters */
   protected HashSet[] m_IndexClusters = null;
   
-  /** holds the ([instance pair] -> [type of constraint]) mapping,
-      where the hashed value stores the type of link but the instance
-      pair does not hold the type of constraint - it holds (instanceIdx1,
-      instanceIdx2, DONT_CARE_LINK). This is done to make lookup easier
-      in future 
+  /** holds the constraints, including those inferred by the transitive
+      closure, as a graph over the instance indices; the edges of each
+      instance are in the order in which its constraints were added, so
+      penalties are summed up in that order.
   */
-  protected HashMap m_ConstraintsHash = null;
-  public HashMap getConstraintsHash() {
-    return m_ConstraintsHash;
-  }
-
-  /** stores the ([instanceIdx] -> [ArrayList of constraints])
-      mapping, where the arraylist contains the constraints in which
-      instanceIdx is involved. Note that the instance pairs stored in
-      the Arraylist have the actual link type.  
-  */
-  protected HashMap m_instanceConstraintHash = null; 
-  public HashMap getInstanceConstraintsHash() {
-    return m_instanceConstraintHash;
-  }
-
-  public void setInstanceConstraintsHash(HashMap instanceConstraintHash) {
-    m_instanceConstraintHash = instanceConstraintHash;
+  protected ConstraintGraph m_ConstraintGraph = null;
+  public ConstraintGraph getConstraintGraph() {
+    return m_ConstraintGraph;
   }
   
   /** holds the points involved in the constraints */
@@ -162,6 +148,13 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
   /** Seedable or not (true by default) */
   protected boolean m_Seedable = true;
 
+  /** Should the metric learners use per-cluster sufficient statistics
+   * instead of going through all instances in every M-step? */
+  protected boolean m_useSufficientStatistics = false;
+
+  /** The sufficient statistics of the clusters, null until a learner asks for them */
+  protected ClusterStatistics m_clusterStatistics = null;
+
   /** Possible metric training */
   public static final int TRAINING_NONE = 1;
   public static final int TRAINING_EXTERNAL = 2;
@@ -292,6 +285,16 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     m_ConstraintIncoherenceFile = file;
   } 
 
+  /** Adds a suffix to the names of the assignments and incoherence files */
+  public void setOutputFileSuffix(String suffix) {
+    if (m_ClusterAssignmentsOutputFile != null) {
+      m_ClusterAssignmentsOutputFile = Utils.addFileNameSuffix(m_ClusterAssignmentsOutputFile, suffix);
+    }
+    if (m_ConstraintIncoherenceFile != null) {
+      m_ConstraintIncoherenceFile = Utils.addFileNameSuffix(m_ConstraintIncoherenceFile, suffix);
+    }
+  }
+
 
   /**
    * holds the random Seed, useful for randomPerturbInit
@@ -389,8 +392,6 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 
     if (labeledPairs != null) {
       m_SeedHash = new HashSet((int) (unlabeledData.numInstances()/0.75 + 10)) ;
-      m_ConstraintsHash = new HashMap();
-      m_instanceConstraintHash = new HashMap();
 
       for (int i = 0; i < labeledPairs.size(); i++) {
 	InstancePair pair = (InstancePair) labeledPairs.get(i);	
@@ -414,33 +415,11 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 	}
 	if (pair.first >= pair.second) {
 	  throw new Exception("Ordering reversed - something wrong!!");
-	} else {
-	  InstancePair newPair = null;
-	  newPair = new InstancePair(pair.first, pair.second, InstancePair.DONT_CARE_LINK);
-	  m_ConstraintsHash.put(newPair, new Integer(pair.linkType)); // WLOG first < second
-	  if (m_verbose) {
-	    System.out.println("Adding constraint (" + pair.first +","+pair.second+"), " + pair.linkType);
-	  }
-	  
-	  // hash the constraints for the instances involved
-	  Object constraintList1 = m_instanceConstraintHash.get(firstInt);
-	  if (constraintList1 == null) {
-	    ArrayList constraintList = new ArrayList();
-	    constraintList.add(pair);
-	    m_instanceConstraintHash.put(firstInt, constraintList);
-	  } else {
-	    ((ArrayList)constraintList1).add(pair);
-	  }
-	  Object constraintList2 = m_instanceConstraintHash.get(secondInt);
-	  if (constraintList2 == null) {
-	    ArrayList constraintList = new ArrayList();
-	    constraintList.add(pair);
-	    m_instanceConstraintHash.put(secondInt, constraintList);
-	  } else {
-	    ((ArrayList)constraintList2).add(pair);
-	  }
+	} else if (m_verbose) {
+	  System.out.println("Adding constraint (" + pair.first +","+pair.second+"), " + pair.linkType);
 	}
       }
+      m_ConstraintGraph = new ConstraintGraph(labeledPairs, unlabeledData.numInstances());
     }
 
     m_StartingIndexOfTest = startingIndexOfTest;
@@ -496,7 +475,7 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     System.out.println("Regularizer weight= " + m_regularizerTermWeight);
     m_RandomNumberGenerator = new Random(m_RandomSeed);
 
-    if (m_metric instanceof OfflineLearnableMetric) {
+    if (CachingMetric.unwrap(m_metric) instanceof OfflineLearnableMetric) {
       m_isOfflineMetric = true;
     } else {
       m_isOfflineMetric = false;
@@ -525,6 +504,9 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     }
 
     setInstances(data);
+    if (m_ConstraintGraph == null) {  // clustering without constraints
+      m_ConstraintGraph = new ConstraintGraph(new ArrayList(), m_Instances.numInstances());
+    }
     m_ClusterCentroids = new Instances(m_Instances, m_NumClusters);
     m_ClusterAssignments = new int [m_Instances.numInstances()];
 
@@ -538,12 +520,12 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     // if all instances are smoothed by the metric, the centroids
     // need to be smoothed too (note that this is independent of
     // centroid smoothing performed by K-Means)
-    if (m_metric instanceof InstanceConverter) {
+    if (CachingMetric.unwrap(m_metric) instanceof InstanceConverter) {
       System.out.println("Converting centroids...");
       Instances convertedCentroids = new Instances(m_ClusterCentroids, m_NumClusters);
       for (int i = 0; i < m_ClusterCentroids.numInstances(); i++) {
 	Instance centroid = m_ClusterCentroids.instance(i); 
-	convertedCentroids.add(((InstanceConverter)m_metric).convertInstance(centroid));
+	convertedCentroids.add(((InstanceConverter) CachingMetric.unwrap(m_metric)).convertInstance(centroid));
       }
 
       m_ClusterCentroids.delete();
@@ -563,10 +545,10 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     }
 
     // Some extra work for smoothing metrics
-    if (m_metric instanceof SmoothingMetric &&
-	((SmoothingMetric) m_metric).getUseSmoothing()) { 
+    if (CachingMetric.unwrap(m_metric) instanceof SmoothingMetric &&
+	((SmoothingMetric) CachingMetric.unwrap(m_metric)).getUseSmoothing()) { 
 
-      SmoothingMetric smoothingMetric = (SmoothingMetric) m_metric;
+      SmoothingMetric smoothingMetric = (SmoothingMetric) CachingMetric.unwrap(m_metric);
       Instances smoothedCentroids = new Instances(m_Instances, m_NumClusters);
       
       for (int i = 0; i < m_ClusterCentroids.numInstances(); i++) {
@@ -585,10 +567,12 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
   protected void updateSmoothingMetrics() {
     if (m_useMultipleMetrics) {
       for (int i = 0; i < m_NumClusters; i++) { 
-	((SmoothingMetric)m_metrics[i]).updateAlpha();
+	((SmoothingMetric) CachingMetric.unwrap(m_metrics[i])).updateAlpha();
+	CachingMetric.metricChanged(m_metrics[i]);
       }
     } else {
-      ((SmoothingMetric)m_metric).updateAlpha();
+      ((SmoothingMetric) CachingMetric.unwrap(m_metric)).updateAlpha();
+      CachingMetric.metricChanged(m_metric);
     }
   } 
 
@@ -605,8 +589,7 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     }
     
     m_SeedHash = null;
-    m_ConstraintsHash = null;
-    m_instanceConstraintHash = null;
+    m_ConstraintGraph = null;
   }
 
 
@@ -832,43 +815,42 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 
     // Sugato: replacing, in order to be able to run MKMeans (no
     // constraint violation, only metric learning)
-    if (m_Seedable) {
-      Object list =  m_instanceConstraintHash.get(new Integer(instIdx));
-      if (list != null) {   // there are constraints associated with this instance
-	ArrayList constraintList = (ArrayList) list;
-	for (int i = 0; i < constraintList.size(); i++) {
-	  InstancePair pair = (InstancePair) constraintList.get(i);
-	  int firstIdx = pair.first;
-	  int secondIdx = pair.second;
-
-	  Instance instance1 = m_Instances.instance(firstIdx);
-	  Instance instance2 = m_Instances.instance(secondIdx);
-	  int otherIdx = (firstIdx == instIdx) ? 
-	    m_ClusterAssignments[secondIdx] : m_ClusterAssignments[firstIdx];
+    if (m_Seedable && m_ConstraintGraph != null) {
+      ConstraintGraph graph = m_ConstraintGraph;
+      int end = graph.end(instIdx);
+      for (int e = graph.start(instIdx); e < end; e++) {
+	int neighbour = graph.neighbour(e);
+	int linkType = graph.linkType(e);
+	// constraints are stored with first < second
+	int firstIdx = (instIdx < neighbour) ? instIdx : neighbour;
+	int secondIdx = (instIdx < neighbour) ? neighbour : instIdx;
+
+	Instance instance1 = m_Instances.instance(firstIdx);
+	Instance instance2 = m_Instances.instance(secondIdx);
+	int otherIdx = m_ClusterAssignments[neighbour];
 	  
-	  // check whether the constraint is violated
-	  if (otherIdx != -1 && otherIdx < m_NumClusters) { 
-	    if (otherIdx != centroidIdx && 
-		pair.linkType == InstancePair.MUST_LINK) {
-	      violatedConstraints++; 
-	      // split penalty in half between the two involved clusters
-	      if (m_useMultipleMetrics) {  
-		double penalty1 = m_metrics[otherIdx].penaltySymmetric(instance1, instance2);
-		double penalty2 = m_metrics[centroidIdx].penaltySymmetric(instance1, instance2);
-		m_objMustLinksCurrPoint += 0.5 * m_MLweight * (penalty1 + penalty2);
-	      } else {
-		double penalty = m_metric.penaltySymmetric(instance1, instance2);
-		m_objMustLinksCurrPoint += m_MLweight * penalty;
-	      }
-	    } else if (otherIdx == centroidIdx &&
-		       pair.linkType == InstancePair.CANNOT_LINK) {
-	      violatedConstraints++; 
-	      double penalty = m_metrics[centroidIdx].penaltySymmetric(instance1, instance2);
-	      m_objCannotLinksCurrPoint +=  m_CLweight *
-		(m_maxCLPenalties[centroidIdx] - penalty);
-	      if (m_maxCLPenalties[centroidIdx] - penalty < 0) {
-		System.out.println("***NEGATIVE*** penalty: " + penalty + " for CL constraint"); 
-	      }
+	// check whether the constraint is violated
+	if (otherIdx != -1 && otherIdx < m_NumClusters) { 
+	  if (otherIdx != centroidIdx && 
+	      linkType == InstancePair.MUST_LINK) {
+	    violatedConstraints++; 
+	    // split penalty in half between the two involved clusters
+	    if (m_useMultipleMetrics) {  
+	      double penalty1 = m_metrics[otherIdx].penaltySymmetric(instance1, instance2);
+	      double penalty2 = m_metrics[centroidIdx].penaltySymmetric(instance1, instance2);
+	      m_objMustLinksCurrPoint += 0.5 * m_MLweight * (penalty1 + penalty2);
+	    } else {
+	      double penalty = m_metric.penaltySymmetric(instance1, instance2);
+	      m_objMustLinksCurrPoint += m_MLweight * penalty;
+	    }
+	  } else if (otherIdx == centroidIdx &&
+		     linkType == InstancePair.CANNOT_LINK) {
+	    violatedConstraints++; 
+	    double penalty = m_metrics[centroidIdx].penaltySymmetric(instance1, instance2);
+	    m_objCannotLinksCurrPoint +=  m_CLweight *
+	      (m_maxCLPenalties[centroidIdx] - penalty);
+	    if (m_maxCLPenalties[centroidIdx] - penalty < 0) {
+	      System.out.println("***NEGATIVE*** penalty: " + penalty + " for CL constraint"); 
 	    }
 	  }
 	}
@@ -883,7 +865,72 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     }
     return total;
   }
-  
+
+
+  /** Returns true if the penalty for the instance depends on the
+   * cluster assignments of other instances, i.e. if constraints are
+   * used and there are constraints associated with the instance
+   */
+  public boolean hasConstraints(int instIdx) {
+    return m_Seedable && m_ConstraintGraph != null && m_ConstraintGraph.hasConstraints(instIdx);
+  }
+
+  /** The variance contribution of an instance to the given cluster.
+   * Unlike penaltyForInstance it does not change the clusterer, hence it
+   * can be called by several threads at once, provided that the metric
+   * can compute penalties concurrently
+   */
+  public double varianceForInstance(int instIdx, int centroidIdx) throws Exception {
+    return m_metrics[centroidIdx].penalty(m_Instances.instance(instIdx),
+					  m_ClusterCentroids.instance(centroidIdx));
+  }
+
+  /** The normalizer contribution of any instance to the given cluster */
+  public double normalizerForCluster(int centroidIdx) {
+    if (m_Trainable == TRAINING_INTERNAL) {
+      return -m_logTerms[centroidIdx];
+    }
+    return 0;
+  }
+
+  /** Assigns an instance without constraints to the cluster with the
+   * lowest penalty, which was determined beforehand from
+   * varianceForInstance and normalizerForCluster.  The objective and
+   * the output are updated exactly like by
+   * assignInstanceToClusterWithConstraints.
+   * @param instIdx the instance
+   * @param bestCluster the cluster with the lowest penalty
+   * @param variance the variance contribution to the best cluster
+   * @param normalizer the normalizer contribution to the best cluster
+   * @param currentPenalty the penalty for the current cluster of the instance
+   * @return 1 if the instance moved to a different cluster, 0 otherwise
+   */
+  public int assignUnconstrainedInstance(int instIdx, int bestCluster, double variance,
+					 double normalizer, double currentPenalty) {
+    int moved = 0;
+
+    m_objVariance += variance;
+    m_objNormalizer += normalizer;
+
+    if (m_ClusterAssignments[instIdx] != bestCluster) {
+      if (m_ClusterAssignments[instIdx] >= 0 && m_ClusterAssignments[instIdx] < m_NumClusters) {
+	System.out.println("Moving instance " + instIdx + " from cluster "
+			   + m_ClusterAssignments[instIdx] + " to cluster " + bestCluster
+			   + " penalty:" + ((float)currentPenalty)
+			   + "=>" + ((float)(variance + normalizer)));
+      }
+      moved = 1;
+      m_ClusterAssignments[instIdx] = bestCluster;
+    }
+
+    if (m_verbose) {
+      System.out.println("Assigning instance " + instIdx + " to cluster "
+			 + bestCluster);
+    }
+
+    return moved;
+  }
+
 
   /** M-step of the KMeans clustering algorithm -- updates cluster centroids
    */
@@ -953,10 +1000,10 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
       
 
       // if we are using a smoothing metric, smooth the centroids
-      if (m_metric instanceof SmoothingMetric &&
-	  ((SmoothingMetric) m_metric).getUseSmoothing()) {
+      if (CachingMetric.unwrap(m_metric) instanceof SmoothingMetric &&
+	  ((SmoothingMetric) CachingMetric.unwrap(m_metric)).getUseSmoothing()) {
 	System.out.println("\tSmoothing..."); 
-	SmoothingMetric smoothingMetric = (SmoothingMetric) m_metric;
+	SmoothingMetric smoothingMetric = (SmoothingMetric) CachingMetric.unwrap(m_metric);
 	centroid = smoothingMetric.smoothInstance(centroid); 
       }
 
@@ -984,8 +1031,8 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
       }
     }
 
-    if (m_metric instanceof SmoothingMetric &&
-	((SmoothingMetric) m_metric).getUseSmoothing())
+    if (CachingMetric.unwrap(m_metric) instanceof SmoothingMetric &&
+	((SmoothingMetric) CachingMetric.unwrap(m_metric)).getUseSmoothing())
       updateSmoothingMetrics();       
     
     for (int i = 0; i < m_NumClusters; i++)
@@ -998,6 +1045,13 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
    *  and metric is trainable
    */
   protected void updateMetricWeights() throws Exception {
+    if (m_clusterStatistics != null) {
+      m_clusterStatistics.update();
+      if (m_verbose) {
+	System.out.println("Sufficient statistics: " + m_clusterStatistics.getLastMoved()
+			   + " points moved since the last M-step");
+      }
+    }
     if (m_useMultipleMetrics) {
       for (int i = 0; i < m_NumClusters; i++) {
 	m_metricLearners[i].trainMetric(i);
@@ -1007,6 +1061,25 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     } 
     InitNormalizerRegularizer();
   }
+
+  /**
+   * Returns the sufficient statistics of the clusters for the current
+   * assignments, computing them the first time they are asked for
+   * @param kind the kind of statistics the learner needs
+   * @return the statistics, null if they are not used or don't apply
+   * (a class attribute is set or there are per-cluster metrics)
+   * @exception Exception if the statistics can't be computed
+   */
+  public ClusterStatistics getClusterStatistics(int kind) throws Exception {
+    if (!m_useSufficientStatistics || m_useMultipleMetrics
+	|| m_Instances.classIndex() >= 0) {
+      return null;
+    }
+    if (m_clusterStatistics == null || m_clusterStatistics.getKind() != kind) {
+      m_clusterStatistics = new ClusterStatistics(this, kind);
+    }
+    return m_clusterStatistics;
+  }
  
 
   /** checks for convergence */
@@ -1120,6 +1193,7 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     m_Iterations = 0;
     m_numBlankIterations = 0; 
     m_Objective = Double.POSITIVE_INFINITY; 
+    m_clusterStatistics = null;
 
     if (!m_isOfflineMetric) {
       if (m_useMultipleMetrics) {
@@ -1132,7 +1206,7 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 	m_metricLearner.resetLearner();
       }
       // initialize max CL penalties
-      if (m_ConstraintsHash.size() > 0) {
+      if (m_ConstraintGraph.numConstraints() > 0) {
 	m_maxCLPenalties = calculateMaxCLPenalties();
       }
     }
@@ -1187,7 +1261,7 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 			     "\tREG=" + ((float)m_objRegularizer));
 	}
 	  
-	if (m_ConstraintsHash.size() > 0) {
+	if (m_ConstraintGraph.numConstraints() > 0) {
 	  m_maxCLPenalties = calculateMaxCLPenalties();
 	}
       }
@@ -1227,7 +1301,7 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 
 
   public void printConstraintIncoherence(PrintStream fincoh) throws Exception {
-      Object[] array = m_ConstraintsHash.entrySet().toArray();
+      Object[] array = m_ConstraintGraph.toPairs().toArray();
       
       int numML = 0, numCL = 0; 
       double incoh = 0;
@@ -1236,9 +1310,8 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 
       System.out.println("NumConstraints: " + array.length);
       for (int i=0; i < array.length; i++) {
-	  Map.Entry con1 = (Map.Entry) array[i];
-	  InstancePair pair1 = (InstancePair) con1.getKey();
-	  int link1 = ((Integer) con1.getValue()).intValue();
+	  InstancePair pair1 = (InstancePair) array[i];
+	  int link1 = pair1.linkType;
 	  double dist1 =  m_metric.distance(m_Instances.instance(pair1.first),
 					    m_Instances.instance(pair1.second));
 	  if (link1 == InstancePair.MUST_LINK) {
@@ -1248,9 +1321,8 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 	  }
 
 	  for (int j=i+1; j < array.length; j++) {
-	      Map.Entry con2 = (Map.Entry) array[j];
-	      InstancePair pair2 = (InstancePair) con2.getKey();
-	      int link2 = ((Integer) con2.getValue()).intValue();
+	      InstancePair pair2 = (InstancePair) array[j];
+	      int link2 = pair2.linkType;
 	      double dist2 =  m_metric.distance(m_Instances.instance(pair2.first),
 						m_Instances.instance(pair2.second));
 	      
@@ -1344,17 +1416,17 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
 
     // TODO:  Mahalanobis - check with getMaxPoints
     // go through all points
-    if (m_metric instanceof WeightedMahalanobis) {
+    if (CachingMetric.unwrap(m_metric) instanceof WeightedMahalanobis) {
       if (m_useMultipleMetrics) { 
 	for (int i = 0; i < m_metrics.length; i++) { 
-	  double[][] maxPoints = ((WeightedMahalanobis)m_metrics[i]).getMaxPoints(m_ConstraintsHash, m_Instances);
+	  double[][] maxPoints = ((WeightedMahalanobis) CachingMetric.unwrap(m_metrics[i])).getMaxPoints(m_ConstraintGraph, m_Instances);
 	  minValues[i] = maxPoints[0];
 	  maxValues[i] = maxPoints[1];
 	  //  	  System.out.println("Max points " + i);
 	  //  	  for (int j = 0; j < maxPoints[0].length; j++) { System.out.println(maxPoints[0][j] + " - " + maxPoints[1][j]);}
 	}
       } else { 
-	double[][] maxPoints = ((WeightedMahalanobis)m_metric).getMaxPoints(m_ConstraintsHash, m_Instances);
+	double[][] maxPoints = ((WeightedMahalanobis) CachingMetric.unwrap(m_metric)).getMaxPoints(m_ConstraintGraph, m_Instances);
 	minValues[0] = maxPoints[0];
 	maxValues[0] = maxPoints[1];
 	for (int i = 0; i < m_metrics.length; i++) {
@@ -1563,8 +1635,8 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     double bestSimilarity = Double.NEGATIVE_INFINITY;
     int lookupCluster;
 
-    if (m_metric instanceof InstanceConverter) {
-      Instance newInstance = ((InstanceConverter)m_metric).convertInstance(instance);
+    if (CachingMetric.unwrap(m_metric) instanceof InstanceConverter) {
+      Instance newInstance = ((InstanceConverter) CachingMetric.unwrap(m_metric)).convertInstance(instance);
       lookupCluster = lookupInstanceCluster(newInstance);
     } else {
       lookupCluster = lookupInstanceCluster(instance);
@@ -1970,6 +2042,9 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     options[current++] = "" + m_ConstraintIncoherenceFile;
     options[current++] = "-V";
     options[current++] = "" + m_useTransitiveConstraints;
+    if (m_useSufficientStatistics) {
+      options[current++] = "-S";
+    }
 
     while (current < options.length) {
       options[current++] = "";
@@ -2119,6 +2194,11 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
       setUseTransitiveConstraints(false);
       System.out.println("Setting useTransitiveConstraints to: false");
     }
+
+    if (Utils.getFlag('S', options)) {
+      setUseSufficientStatistics(true);
+      System.out.println("Setting useSufficientStatistics to: true");
+    }
   }
   
   /**   
@@ -2157,6 +2237,23 @@ public class MPCKMeans extends Clusterer implements OptionHandler,SemiSupCluster
     return m_useTransitiveConstraints;
   } 
 
+  /**
+   * Turn on/off keeping per-cluster sufficient statistics for the metric
+   * learners, which then only look at the points that changed cluster
+   * @param useSufficientStatistics if true, the statistics will be used
+   */
+  public void setUseSufficientStatistics(boolean useSufficientStatistics) {
+    m_useSufficientStatistics = useSufficientStatistics;
+  }
+
+  /**
+   * See if per-cluster sufficient statistics are used
+   * @return true if the statistics are used
+   */
+  public boolean getUseSufficientStatistics() {
+    return m_useSufficientStatistics;
+  }
+
   /**
    * Turn on/off the use of per-cluster metrics
    * @param useMultipleMetrics if true, individual metrics will be used for each cluster
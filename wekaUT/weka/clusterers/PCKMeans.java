@@ -62,19 +62,16 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
   /** holds the instance indices in the clusters */
   protected HashSet[] m_IndexClusters = null;
   
-  /** holds the ([instance pair] -> [type of constraint])
-      mapping. Note that the instance pairs stored in the hash always
-      have constraint type InstancePair.DONT_CARE_LINK, the actual
-      link type is stored in the hashed value 
+  /** holds the constraints, including the ones inferred by transitive
+      closure, as a graph over the instance indices
   */
-  
-  protected HashMap m_ConstraintsHash = null;
-  
-  /** holds the ([instance i] -> [Arraylist of constraints involving i])
-      mapping. Note that the instance pairs stored in the Arraylist 
-      have the actual link type
+  protected ConstraintGraph m_ConstraintGraph = null;
+
+  /** the answers of the oracle in active learning, as InstancePairs.
+      They are not penalized, but the transitive closure doesn't infer
+      constraints between pairs that were queried already
   */
-  protected HashMap m_instanceConstraintHash = null; 
+  protected ArrayList m_OracleAnswers = null;
 
   /** adjacency list for neighborhoods */
   protected HashSet[] m_AdjacencyList;
@@ -93,9 +90,6 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
   /** weight to be given to each constraint */
   protected double m_MustLinkWeight = 1;
 
-  /** the maximum number of cannot-link constraints allowed */
-  protected final static int m_MaxConstraintsAllowed = 10000;
-
   /** verbose? */
   protected boolean m_verbose = false;
 
@@ -149,6 +143,11 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
     return m_Objective;
   }
 
+  /** returns the constraints, including those inferred by transitive closure */
+  public ConstraintGraph getConstraintGraph() {
+    return m_ConstraintGraph;
+  }
+
   /**
    * training instances with labels
    */
@@ -280,8 +279,9 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
    */
   public void buildClusterer(Instances data, int num_clusters) throws Exception {
     m_NumClusters = num_clusters;
-    if (m_Algorithm == ALGORITHM_SPHERICAL && m_metric instanceof WeightedDotP) {
-      ((WeightedDotP)m_metric).setLengthNormalized(false); // since instances and clusters are already normalized, we don't need to normalize again while computing similarity - saves time
+    if (m_Algorithm == ALGORITHM_SPHERICAL && CachingMetric.unwrap(m_metric) instanceof WeightedDotP) {
+      ((WeightedDotP) CachingMetric.unwrap(m_metric)).setLengthNormalized(false); // since instances and clusters are already normalized, we don't need to normalize again while computing similarity - saves time
+      CachingMetric.metricChanged(m_metric);
     }
     if (data.instance(0) instanceof SparseInstance) {
       m_isSparseInstance = true;
@@ -320,8 +320,8 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
     m_TotalTrainWithLabels = labeledTrain;
 
     m_SeedHash = new HashSet((int) (unlabeledData.numInstances()/0.75 + 10)) ;
-    m_ConstraintsHash = new HashMap(m_MaxConstraintsAllowed); 
-    m_instanceConstraintHash = new HashMap(m_MaxConstraintsAllowed);
+    m_ConstraintGraph = new ConstraintGraph(new ArrayList(), unlabeledData.numInstances());
+    m_OracleAnswers = new ArrayList();
 
     if (!m_Active && labeledPairs != null) {
       for (int i=0; i<labeledPairs.size(); i++) {
@@ -341,28 +341,8 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
 	if (pair.first >= pair.second) {
 	  throw new Exception("Ordering reversed - something wrong!!");
 	} 
-	else {
-	  InstancePair newPair = new InstancePair(pair.first, pair.second, InstancePair.DONT_CARE_LINK);
-	  m_ConstraintsHash.put(newPair, new Integer(pair.linkType)); // WLOG first < second
-	  // hash the constraints for the instances involved
-	  Object constraintList1 = m_instanceConstraintHash.get(firstInt);
-	  if (constraintList1 == null) {
-	    ArrayList constraintList = new ArrayList();
-	    constraintList.add(pair);
-	    m_instanceConstraintHash.put(firstInt, constraintList);
-	  } else {
-	    ((ArrayList)constraintList1).add(pair);
-	  }
-	  Object constraintList2 = m_instanceConstraintHash.get(secondInt);
-	  if (constraintList2 == null) {
-	    ArrayList constraintList = new ArrayList();
-	    constraintList.add(pair);
-	    m_instanceConstraintHash.put(secondInt, constraintList);
-	  } else {
-	    ((ArrayList)constraintList2).add(pair);
-	  }
-	}
       }
+      m_ConstraintGraph.addConstraints(labeledPairs);
     } else {
       m_NumActive = labeledPairs.size();
     }
@@ -403,6 +383,10 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
     if (!m_metricBuilt) {
       m_metric.buildMetric(data.numAttributes());
     }
+    // cache the values between the instances being clustered
+    if (m_metric instanceof CachingMetric) {
+      ((CachingMetric) m_metric).setInstances(m_Instances);
+    }
     m_ClusterCentroids = new Instances(m_Instances, m_NumClusters);
     m_ClusterAssignments = new int [m_Instances.numInstances()];
 
@@ -442,8 +426,8 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
       ((LearnableMetric)m_metric).resetMetric();
     }
     m_SeedHash = null;
-    m_ConstraintsHash = null;
-    m_instanceConstraintHash = null;
+    m_ConstraintGraph = null;
+    m_OracleAnswers = null;
   }
 
 
@@ -932,187 +916,41 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
     m_NumCurrentClusters = m_NumClusters;
   }
 
-  /** adding other inferred ML and CL links to m_ConstraintsHash, from
+  /** adding other inferred ML and CL links to m_ConstraintGraph, from
    *   m_NeighborSets 
    */
   protected void addMLAndCLTransitiveClosure(int[] indices) throws Exception {
-    // add all ML links within clusters
-    if (m_verbose) {
-      for (int j=0; j<m_NumCurrentClusters; j++) {
-	int i = j;
-	if (indices != null) {
-	  i = indices[j];
-	}
-	System.out.println("Neighborhood list " + j + " is:");
-	System.out.println(m_NeighborSets[i]);
-      }
-    }
-
+    // the neighborhoods in the order given by indices
+    HashSet[] neighborhoods = new HashSet[m_NumCurrentClusters];
     for (int j=0; j<m_NumCurrentClusters; j++) {
       int i = j;
       if (indices != null) {
 	i = indices[j];
       }
-      if (m_NeighborSets[i] != null) {
-	Iterator iter1 = m_NeighborSets[i].iterator();
-	while (iter1.hasNext()) {
-	  int first = ((Integer) iter1.next()).intValue();
-	  Iterator iter2 = m_NeighborSets[i].iterator();
-	  while (iter2.hasNext()) {
-	    int second = ((Integer) iter2.next()).intValue();
-	    if (first < second) {
-	      InstancePair pair = null;
-	      pair = new InstancePair(first, second, InstancePair.DONT_CARE_LINK);
-	      if (!m_ConstraintsHash.containsKey(pair)) {
-		m_ConstraintsHash.put(pair, new Integer(InstancePair.MUST_LINK));
-		if (m_verbose) {
-		  System.out.println("Adding inferred ML (" + pair.first +","+pair.second+")");
-		}
-		
-		// hash the constraints for the instances involved
-		Integer firstInt = new Integer(first);
-		Integer secondInt = new Integer(second);
-		InstancePair pairML = null;
-		pairML = new InstancePair(first, second, InstancePair.MUST_LINK);
-		Object constraintList1 = m_instanceConstraintHash.get(firstInt);
-		if (constraintList1 == null) {
-		  ArrayList constraintList = new ArrayList();
-		  constraintList.add(pairML);
-		  m_instanceConstraintHash.put(firstInt, constraintList);
-		} else {
-		  ((ArrayList)constraintList1).add(pairML);
-		}
-		Object constraintList2 = m_instanceConstraintHash.get(secondInt);
-		if (constraintList2 == null) {
-		  ArrayList constraintList = new ArrayList();
-		  constraintList.add(pairML);
-		  m_instanceConstraintHash.put(secondInt, constraintList);
-		} else {
-		  ((ArrayList)constraintList2).add(pairML);
-		}
-		
-		if (m_verbose) {
-		  System.out.println("Adding inferred ML link: " + pair);
-		}
-		if (!m_SeedHash.contains(new Integer(first))) {
-		  m_SeedHash.add(new Integer(first));
-		}
-		if (!m_SeedHash.contains(new Integer(second))) {
-		  m_SeedHash.add(new Integer(second));
-		}
-	      }
-	    }
-	  }
-	}
+      neighborhoods[j] = m_NeighborSets[i];
+      if (m_verbose) {
+	System.out.println("Neighborhood list " + j + " is:");
+	System.out.println(m_NeighborSets[i]);
       }
     }
 
-    // add all CL links between clusters
-    for (int ii=0; ii<m_NumCurrentClusters; ii++) {
-      int i = ii;
-      if (indices != null) {
-	i = indices[ii];
+    // the answers of the oracle are added to a graph in one go
+    ConstraintGraph queried = null;
+    if (m_OracleAnswers != null && m_OracleAnswers.size() > 0) {
+      queried = new ConstraintGraph(m_OracleAnswers, m_ConstraintGraph.numInstances());
+    }
+    ArrayList inferred = m_ConstraintGraph.addTransitiveClosure(neighborhoods, queried);
+    for (int i = 0; i < inferred.size(); i++) {
+      InstancePair pair = (InstancePair) inferred.get(i);
+      if (m_verbose) {
+	System.out.println("Adding inferred " + ((pair.linkType == InstancePair.MUST_LINK) ? "ML" : "CL")
+			   + " (" + pair.first +","+pair.second+")");
       }
-      if (m_NeighborSets[i] != null) {
-	for (int jj=ii+1; jj<m_NumCurrentClusters; jj++) {
-	  int j = jj;
-	  if (indices != null) {
-	    j = indices[jj];
-	  }
-	  // check if there is at least one CL between neighborhoods ii & jj
-	  boolean existsCL = false;
-
-	  Iterator iter1 = m_NeighborSets[i].iterator();	
-	  while (iter1.hasNext()) {
-	    int index1 = ((Integer) iter1.next()).intValue();
-	    if (m_NeighborSets[j] != null) {
-	      Iterator iter2 = m_NeighborSets[j].iterator();
-	      while (iter2.hasNext()) {
-		int index2 = ((Integer) iter2.next()).intValue();
-		int first = (index1 < index2)? index1:index2;
-		int second = (index1 >= index2)? index1:index2;
-		if (first == second) {
-		  throw new Exception(" Same instance " + first + " cannot be in cluster: " + i + " and cluster " + j);
-		}
-		else if (first < second) {
-		  InstancePair pair;
-		  pair = new InstancePair(first, second, InstancePair.DONT_CARE_LINK);
-		  if (m_ConstraintsHash.containsKey(pair)) {
-		    // found one CL between the neighborhoods		    
-		    existsCL = true;
-		    break; // out of inner while
-		  }
-		}
-	      }
-	    }
-	    if (existsCL) {
-	      break; // out of outer while
-	    }
-	  }
-
-	  // now add the inferred CLs
-	  if (existsCL) {
-	    iter1 = m_NeighborSets[i].iterator();	
-	    while (iter1.hasNext()) {
-	      int index1 = ((Integer) iter1.next()).intValue();
-	      if (m_NeighborSets[j] != null) {
-		Iterator iter2 = m_NeighborSets[j].iterator();
-		while (iter2.hasNext()) {
-		  int index2 = ((Integer) iter2.next()).intValue();
-		  int first = (index1 < index2)? index1:index2;
-		  int second = (index1 >= index2)? index1:index2;
-		  if (first == second) {
-		    throw new Exception(" Same instance " + first + " cannot be in cluster: " + i + " and cluster " + j);
-		  }
-		  else if (first < second) {
-		    InstancePair pair;
-		    pair = new InstancePair(first, second, InstancePair.DONT_CARE_LINK);
-
-		    // add new constraint
-		    if (!m_ConstraintsHash.containsKey(pair)) {
-		      m_ConstraintsHash.put(pair, new Integer(InstancePair.CANNOT_LINK));
-		      if (m_verbose) {
-			System.out.println("Adding inferred CL (" + pair.first +","+pair.second+")");
-		      }
-
-		      // hash the constraints for the instances involved
-		      Integer firstInt = new Integer(first);
-		      Integer secondInt = new Integer(second);
-		      InstancePair pairCL;
-		      pairCL = new InstancePair(first, second, InstancePair.CANNOT_LINK);
-		      Object constraintList1 = m_instanceConstraintHash.get(firstInt);
-		      if (constraintList1 == null) {
-			ArrayList constraintList = new ArrayList();
-			constraintList.add(pairCL);
-			m_instanceConstraintHash.put(firstInt, constraintList);
-		      } else {
-			((ArrayList)constraintList1).add(pairCL);
-		      }
-		      Object constraintList2 = m_instanceConstraintHash.get(secondInt);
-		      if (constraintList2 == null) {
-			ArrayList constraintList = new ArrayList();
-			constraintList.add(pairCL);
-			m_instanceConstraintHash.put(secondInt, constraintList);
-		      } else {
-			((ArrayList)constraintList2).add(pairCL);
-		      }
-		    
-		      if (m_verbose) {
-			System.out.println("Adding inferred CL link: " + pair);
-		      }
-		      if (!m_SeedHash.contains(new Integer(first))) {
-			m_SeedHash.add(new Integer(first));
-		      }
-		      if (!m_SeedHash.contains(new Integer(second))) {
-			m_SeedHash.add(new Integer(second));
-		      }
-		    }
-		  }
-		}
-	      }
-	    }
-	  }
-	}
+      if (!m_SeedHash.contains(new Integer(pair.first))) {
+	m_SeedHash.add(new Integer(pair.first));
+      }
+      if (!m_SeedHash.contains(new Integer(pair.second))) {
+	m_SeedHash.add(new Integer(pair.second));
       }
     }
   }
@@ -1167,30 +1005,23 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
       m_ClusterAssignments[i] = -1;
     }
 
-    if (m_ConstraintsHash != null) {
-      Set pointPairs = (Set) m_ConstraintsHash.keySet(); 
-      Iterator pairItr = pointPairs.iterator();
+    if (m_ConstraintGraph != null) {
       System.out.println("In non-active init");
       
-      // iterate over the pairs in ConstraintHash to create Adjacency List
-      while( pairItr.hasNext() ){
-	InstancePair pair = (InstancePair) pairItr.next();
-	int linkType = ((Integer) m_ConstraintsHash.get(pair)).intValue();
-	if (m_verbose)
-	  System.out.println(pair + ": type = " + linkType);
-	if( linkType == InstancePair.MUST_LINK ){ // concerned with MUST-LINK in Adjacency List
-	  if (m_AdjacencyList[pair.first] == null) {
-	    m_AdjacencyList[pair.first] = new HashSet();
-	  }
-	  if (!m_AdjacencyList[pair.first].contains(new Integer(pair.second))) {
-	    m_AdjacencyList[pair.first].add(new Integer(pair.second));
-	  }
-	  
-	  if (m_AdjacencyList[pair.second] == null) {
-	    m_AdjacencyList[pair.second] = new HashSet();
-	  }
-	  if (!m_AdjacencyList[pair.second].contains(new Integer(pair.first))) {
-	    m_AdjacencyList[pair.second].add(new Integer(pair.first));
+      // go through the constraints of each instance to create Adjacency List
+      for (int first = 0; first < m_ConstraintGraph.numInstances(); first++) {
+	for (int e = m_ConstraintGraph.start(first); e < m_ConstraintGraph.end(first); e++) {
+	  int second = m_ConstraintGraph.neighbour(e);
+	  int linkType = m_ConstraintGraph.linkType(e);
+	  if (m_verbose && first < second)
+	    System.out.println("(" + first + "," + second + "): type = " + linkType);
+	  if( linkType == InstancePair.MUST_LINK ){ // concerned with MUST-LINK in Adjacency List
+	    if (m_AdjacencyList[first] == null) {
+	      m_AdjacencyList[first] = new HashSet();
+	    }
+	    if (!m_AdjacencyList[first].contains(new Integer(second))) {
+	      m_AdjacencyList[first].add(new Integer(second));
+	    }
 	  }
 	}
       }
@@ -1275,7 +1106,7 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
     }
   }
 
-  // Query: oracle replies on link, added to m_ConstraintsHash
+  // Query: oracle replies on link, added to m_OracleAnswers
   protected int askOracle(int X, int Y) {
     Instance first = m_TotalTrainWithLabels.instance(X);
     Instance second = m_TotalTrainWithLabels.instance(Y);
@@ -1302,14 +1133,11 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
       linkType = InstancePair.DONT_CARE_LINK;
     }
     
-    // add to constraintHash and seedHash
+    // add to oracle answers and seedHash
 
     int firstIndex = (X<Y)? X:Y;
     int secondIndex = (X>=Y)? X:Y;
-    InstancePair newPair = new InstancePair(firstIndex, secondIndex, InstancePair.DONT_CARE_LINK);
-    if (!m_ConstraintsHash.containsKey(newPair)) {
-      m_ConstraintsHash.put(newPair, new Integer(linkType));
-    }
+    m_OracleAnswers.add(new InstancePair(firstIndex, secondIndex, linkType));
 
     Integer firstInt = new Integer(firstIndex);
     Integer secondInt = new Integer(secondIndex);
@@ -1838,22 +1666,17 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
   double similarityInPottsModel(int instIdx, int centroidIdx) throws Exception{
     double sim = m_metric.similarity(m_Instances.instance(instIdx), m_ClusterCentroids.instance(centroidIdx));
 
-    Object list =  m_instanceConstraintHash.get(new Integer(instIdx));
-    if (list != null) {   // there are constraints associated with this instance
-      ArrayList constraintList = (ArrayList) list;
-      for (int i = 0; i < constraintList.size(); i++) {
-	InstancePair pair = (InstancePair) constraintList.get(i);
-	int firstIdx = pair.first;
-	int secondIdx = pair.second;
-	Instance instance1 = m_Instances.instance(firstIdx);
-	Instance instance2 = m_Instances.instance(secondIdx);
-	int otherIdx = (firstIdx == instIdx) ? m_ClusterAssignments[secondIdx] : m_ClusterAssignments[firstIdx];
+    if (m_ConstraintGraph != null) {   // go through the constraints of this instance
+      ConstraintGraph graph = m_ConstraintGraph;
+      for (int e = graph.start(instIdx); e < graph.end(instIdx); e++) {
+	int otherIdx = m_ClusterAssignments[graph.neighbour(e)];
+	int linkType = graph.linkType(e);
 	
 	// check whether the constraint is violated
 	if (otherIdx != -1) { 
-	  if (otherIdx != centroidIdx && pair.linkType == InstancePair.MUST_LINK) { 
+	  if (otherIdx != centroidIdx && linkType == InstancePair.MUST_LINK) { 
 	    sim -= m_MustLinkWeight;
-	  } else if (otherIdx == centroidIdx && pair.linkType == InstancePair.CANNOT_LINK) { 
+	  } else if (otherIdx == centroidIdx && linkType == InstancePair.CANNOT_LINK) { 
 	    sim -= m_CannotLinkWeight;
 	  }
 	}
@@ -1875,22 +1698,17 @@ public class PCKMeans extends Clusterer implements OptionHandler,SemiSupClustere
       System.out.println("Unconstrained distance between instance " + instIdx + " and centroid " + centroidIdx + " is: " + dist);
     }
 
-    Object list =  m_instanceConstraintHash.get(new Integer(instIdx));
-    if (list != null) {   // there are constraints associated with this instance
-      ArrayList constraintList = (ArrayList) list;
-      for (int i = 0; i < constraintList.size(); i++) {
-	InstancePair pair = (InstancePair) constraintList.get(i);
-	int firstIdx = pair.first;
-	int secondIdx = pair.second;
-	Instance instance1 = m_Instances.instance(firstIdx);
-	Instance instance2 = m_Instances.instance(secondIdx);
-	int otherIdx = (firstIdx == instIdx) ? m_ClusterAssignments[secondIdx] : m_ClusterAssignments[firstIdx];
+    if (m_ConstraintGraph != null) {   // go through the constraints of this instance
+      ConstraintGraph graph = m_ConstraintGraph;
+      for (int e = graph.start(instIdx); e < graph.end(instIdx); e++) {
+	int otherIdx = m_ClusterAssignments[graph.neighbour(e)];
+	int linkType = graph.linkType(e);
 	
 	// check whether the constraint is violated
 	if (otherIdx != -1) { 
-	  if (otherIdx != centroidIdx && pair.linkType == InstancePair.MUST_LINK) { 
+	  if (otherIdx != centroidIdx && linkType == InstancePair.MUST_LINK) { 
 	    dist += m_MustLinkWeight;
-	  } else if (otherIdx == centroidIdx && pair.linkType == InstancePair.CANNOT_LINK) { 
+	  } else if (otherIdx == centroidIdx && linkType == InstancePair.CANNOT_LINK) { 
 	    dist += m_CannotLinkWeight;
 	  }
 	}
@@ -148,6 +148,11 @@ public class PCSoftKMeans extends DistributionClusterer implements OptionHandler
     return m_Objective;
   }
 
+  /** the constraints are only kept in m_ConstraintsHash, no constraint graph */
+  public ConstraintGraph getConstraintGraph() {
+    return null;
+  }
+
   /**
    * training instances with labels
    */
@@ -269,6 +274,10 @@ public class PCSoftKMeans extends DistributionClusterer implements OptionHandler
     if (!m_metricBuilt) {
       m_metric.buildMetric(data.numAttributes());
     }
+    // cache the values between the instances being clustered
+    if (m_metric instanceof CachingMetric) {
+      ((CachingMetric) m_metric).setInstances(m_Instances);
+    }
     m_ClusterCentroids = new Instances(m_Instances, m_NumClusters);
     m_ClusterAssignments = new int [m_Instances.numInstances()];
 
@@ -320,8 +329,9 @@ public class PCSoftKMeans extends DistributionClusterer implements OptionHandler
    */
   public void buildClusterer(Instances data, int num_clusters) throws Exception {
     m_NumClusters = num_clusters;
-    if (m_Algorithm == ALGORITHM_SPHERICAL && m_metric instanceof WeightedDotP) {
-      ((WeightedDotP)m_metric).setLengthNormalized(false); // since instances and clusters are already normalized, we don't need to normalize again while computing similarity - saves time
+    if (m_Algorithm == ALGORITHM_SPHERICAL && CachingMetric.unwrap(m_metric) instanceof WeightedDotP) {
+      ((WeightedDotP) CachingMetric.unwrap(m_metric)).setLengthNormalized(false); // since instances and clusters are already normalized, we don't need to normalize again while computing similarity - saves time
+      CachingMetric.metricChanged(m_metric);
     }
     if (data.instance(0) instanceof SparseInstance) {
       m_isSparseInstance = true;
@@ -129,6 +129,11 @@ public class SeededKMeans extends Clusterer implements OptionHandler,SemiSupClus
     return m_Objective;
   }
 
+  /** seeds are used instead of pairwise constraints, hence no constraint graph */
+  public ConstraintGraph getConstraintGraph() {
+    return null;
+  }
+
   /** Verbose? */
   protected boolean m_Verbose = false;
 
@@ -222,8 +227,9 @@ public class SeededKMeans extends Clusterer implements OptionHandler,SemiSupClus
    */
   public void buildClusterer(Instances data, int num_clusters) throws Exception {
     setNumClusters(num_clusters);
-    if (m_Algorithm == ALGORITHM_SPHERICAL && m_metric instanceof WeightedDotP) {
-      ((WeightedDotP)m_metric).setLengthNormalized(false); // since instances and clusters are already normalized, we don't need to normalize again while computing similarity - saves time
+    if (m_Algorithm == ALGORITHM_SPHERICAL && CachingMetric.unwrap(m_metric) instanceof WeightedDotP) {
+      ((WeightedDotP) CachingMetric.unwrap(m_metric)).setLengthNormalized(false); // since instances and clusters are already normalized, we don't need to normalize again while computing similarity - saves time
+      CachingMetric.metricChanged(m_metric);
     }
     if (data.instance(0) instanceof SparseInstance) {
       isSparseInstance = true;
@@ -586,6 +592,10 @@ public class SeededKMeans extends Clusterer implements OptionHandler,SemiSupClus
     if (!m_metricBuilt) {
       m_metric.buildMetric(data);
     }
+    // cache the values between the instances being clustered
+    if (m_metric instanceof CachingMetric) {
+      ((CachingMetric) m_metric).setInstances(m_Instances);
+    }
     m_ClusterCentroids = new Instances(m_Instances, m_NumClusters);
     m_ClusterAssignments = new int [m_Instances.numInstances()];
 
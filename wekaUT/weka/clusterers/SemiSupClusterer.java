@@ -119,4 +119,11 @@ public interface SemiSupClusterer {
    *  Needed for SemiSupClustererEvaluation.
    */
   abstract double objectiveFunction();
+
+  /**
+   *  Returns the pairwise constraints the clusterer works with, including
+   *  any inferred by transitive closure, or null if it does not use
+   *  pairwise constraints or has not been built yet.
+   */
+  abstract ConstraintGraph getConstraintGraph();
 }
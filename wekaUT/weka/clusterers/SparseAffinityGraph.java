@@ -0,0 +1,565 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    SparseAffinityGraph.java
+ *    Symmetric similarity graph in compressed sparse rows
+ *
+ */
+
+package weka.clusterers;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A weighted undirected graph over n points, stored as a symmetric matrix
+ * in compressed sparse rows: the neighbours of point i are
+ * m_Columns[m_RowStart[i] .. m_RowStart[i+1]-1], sorted, with the weights
+ * at the same positions of m_Weights.  Every point has an edge to itself,
+ * so no point has degree 0.<p>
+ *
+ * The graph can be built from points in an Euclidean space, either by
+ * connecting all points closer than a radius or by connecting every point
+ * to its k nearest neighbours (an edge is kept if either end point has the
+ * other among its neighbours).  Both need all pairwise distances, which
+ * several threads can compute, handing out one point at a time; only the
+ * edges are kept in memory.<p>
+ *
+ * The similarity of two points is the one used by SpectralClusterer:
+ * with d the squared Euclidean distance, it is exp(-d^2 / (2 sigma^2)).
+ *
+ * @version $Revision: 1.1 $
+ */
+public class SparseAffinityGraph implements Serializable {
+
+  /** The number of points */
+  protected int m_Size;
+
+  /** Where the edges of each point start, n + 1 entries */
+  protected int[] m_RowStart;
+
+  /** The neighbour of each edge */
+  protected int[] m_Columns;
+
+  /** The weight of each edge */
+  protected double[] m_Weights;
+
+  /** The degree of each point, i.e. the sum of the weights of its edges */
+  protected double[] m_Degrees;
+
+  /** The points while the graph is built */
+  protected transient double[][] m_Points;
+
+  /** The next point to process while the graph is built */
+  protected transient int m_NextRow;
+
+  /** Per point the neighbours found while the graph is built */
+  protected transient int[][] m_RowColumns;
+
+  /** Per point the weights of the neighbours found while the graph is built */
+  protected transient double[][] m_RowWeights;
+
+  /**
+   * Creates a graph from its rows
+   * @param rowStart where the edges of each point start
+   * @param columns the neighbour of each edge, sorted within a row
+   * @param weights the weight of each edge
+   */
+  public SparseAffinityGraph(int[] rowStart, int[] columns, double[] weights) {
+    m_Size = rowStart.length - 1;
+    m_RowStart = rowStart;
+    m_Columns = columns;
+    m_Weights = weights;
+    m_Degrees = new double[m_Size];
+    for (int i = 0; i < m_Size; i++) {
+      double sum = 0;
+      for (int e = m_RowStart[i]; e < m_RowStart[i + 1]; e++) {
+	sum += m_Weights[e];
+      }
+      m_Degrees[i] = sum;
+    }
+  }
+
+  /** Used while building the graph from points */
+  protected SparseAffinityGraph() {
+  }
+
+  /**
+   * Builds the similarity graph of points in an Euclidean space
+   * @param points the coordinates of the points
+   * @param sigma the scaling factor of the similarity
+   * @param r the points are connected if their squared distance is
+   * below this, -1 for no limit
+   * @param numNeighbours if positive, a point is only connected to this
+   * many nearest points (and the points that have it among theirs)
+   * @param numThreads the number of threads computing distances
+   * @return the graph
+   * @exception Exception if a thread fails
+   */
+  public static SparseAffinityGraph build(double[][] points, double sigma, double r,
+					  int numNeighbours, int numThreads)
+    throws Exception {
+    SparseAffinityGraph graph = new SparseAffinityGraph();
+    graph.buildRows(points, sigma, r, numNeighbours, numThreads);
+    return graph;
+  }
+
+  /**
+   * Finds the neighbours of all points and assembles the rows
+   */
+  protected void buildRows(double[][] points, double sigma, double r,
+			   int numNeighbours, int numThreads) throws Exception {
+    int n = points.length;
+    m_Points = points;
+    m_NextRow = 0;
+    m_RowColumns = new int[n][];
+    m_RowWeights = new double[n][];
+    try {
+      if (numThreads <= 1) {
+	RowWorker worker = new RowWorker(sigma, r, numNeighbours);
+	worker.run();
+	if (worker.m_Error != null) {
+	  throw worker.m_Error;
+	}
+      } else {
+	RowWorker [] workers = new RowWorker[numThreads];
+	for (int t = 0; t < workers.length; t++) {
+	  workers[t] = new RowWorker(sigma, r, numNeighbours);
+	  workers[t].start();
+	}
+	for (int t = 0; t < workers.length; t++) {
+	  workers[t].join();
+	}
+	for (int t = 0; t < workers.length; t++) {
+	  if (workers[t].m_Error != null) {
+	    throw workers[t].m_Error;
+	  }
+	}
+      }
+
+      // with a radius the rows are already symmetric; nearest neighbours
+      // are not, an edge is added to both end points and then merged
+      int[] count = new int[n];
+      for (int i = 0; i < n; i++) {
+	count[i] += m_RowColumns[i].length;
+	if (numNeighbours > 0) {
+	  for (int k = 0; k < m_RowColumns[i].length; k++) {
+	    int j = m_RowColumns[i][k];
+	    if (j != i) {
+	      count[j]++;
+	    }
+	  }
+	}
+      }
+      int[] rowStart = new int[n + 1];
+      for (int i = 0; i < n; i++) {
+	rowStart[i + 1] = rowStart[i] + count[i];
+      }
+      int[] columns = new int[rowStart[n]];
+      double[] weights = new double[rowStart[n]];
+      int[] fill = new int[n];
+      System.arraycopy(rowStart, 0, fill, 0, n);
+      for (int i = 0; i < n; i++) {
+	for (int k = 0; k < m_RowColumns[i].length; k++) {
+	  int j = m_RowColumns[i][k];
+	  double weight = m_RowWeights[i][k];
+	  columns[fill[i]] = j;
+	  weights[fill[i]++] = weight;
+	  if (numNeighbours > 0 && j != i) {
+	    columns[fill[j]] = i;
+	    weights[fill[j]++] = weight;
+	  }
+	}
+	m_RowColumns[i] = null;
+	m_RowWeights[i] = null;
+      }
+      compress(rowStart, columns, weights);
+    } finally {
+      m_Points = null;
+      m_RowColumns = null;
+      m_RowWeights = null;
+    }
+  }
+
+  /**
+   * Sorts every row by neighbour and removes duplicate edges, then sets
+   * up the graph
+   */
+  protected void compress(int[] rowStart, int[] columns, double[] weights) {
+    int n = rowStart.length - 1;
+    int[] newStart = new int[n + 1];
+    int out = 0;
+    for (int i = 0; i < n; i++) {
+      int start = rowStart[i];
+      int end = rowStart[i + 1];
+      // sort the row by neighbour, the weights go along
+      long[] keys = new long[end - start];
+      for (int e = start; e < end; e++) {
+	keys[e - start] = ((long) columns[e] << 32) | (e - start);
+      }
+      Arrays.sort(keys);
+      int[] rowColumns = new int[keys.length];
+      double[] rowWeights = new double[keys.length];
+      for (int k = 0; k < keys.length; k++) {
+	int e = start + (int) (keys[k] & 0xffffffffL);
+	rowColumns[k] = columns[e];
+	rowWeights[k] = weights[e];
+      }
+      newStart[i] = out;
+      for (int k = 0; k < keys.length; k++) {
+	if (k > 0 && rowColumns[k] == rowColumns[k - 1]) {
+	  continue;
+	}
+	columns[out] = rowColumns[k];
+	weights[out++] = rowWeights[k];
+      }
+    }
+    newStart[n] = out;
+    int[] c = new int[out];
+    double[] w = new double[out];
+    System.arraycopy(columns, 0, c, 0, out);
+    System.arraycopy(weights, 0, w, 0, out);
+
+    SparseAffinityGraph g = new SparseAffinityGraph(newStart, c, w);
+    m_Size = g.m_Size;
+    m_RowStart = g.m_RowStart;
+    m_Columns = g.m_Columns;
+    m_Weights = g.m_Weights;
+    m_Degrees = g.m_Degrees;
+  }
+
+  /** Hands out the points to process, -1 when all have been handed out */
+  protected synchronized int nextRow() {
+    if (m_NextRow >= m_Points.length) {
+      return -1;
+    }
+    return m_NextRow++;
+  }
+
+  /** Returns the squared Euclidean distance between two points */
+  protected static double distnorm2(double[] x, double[] y) {
+    double sum = 0;
+    for (int k = 0; k < x.length; k++) {
+      double diff = x[k] - y[k];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  /** A thread that finds the neighbours of points until none are left */
+  protected class RowWorker extends Thread {
+
+    /** Twice the squared scaling factor */
+    protected double m_TwoSigmaSq;
+
+    /** The radius, -1 for no limit */
+    protected double m_R;
+
+    /** The number of nearest neighbours, 0 for all within the radius */
+    protected int m_K;
+
+    /** The error this thread ran into */
+    protected Exception m_Error;
+
+    public RowWorker(double sigma, double r, int numNeighbours) {
+      m_TwoSigmaSq = 2 * sigma * sigma;
+      m_R = r;
+      m_K = numNeighbours;
+    }
+
+    public void run() {
+      try {
+	int n = m_Points.length;
+	int[] columns = new int[(m_K > 0) ? m_K : Math.min(n, 16)];
+	double[] dists = new double[columns.length];
+	int row;
+	while ((row = nextRow()) != -1) {
+	  double[] x = m_Points[row];
+	  int count = 0;
+	  for (int j = 0; j < n; j++) {
+	    if (j == row) {
+	      continue;
+	    }
+	    double dist = distnorm2(x, m_Points[j]);
+	    if (m_R != -1 && dist >= m_R) {
+	      continue;
+	    }
+	    if (m_K > 0) {
+	      // keep the k nearest in a max-heap on the distance
+	      if (count < m_K) {
+		siftUp(dists, columns, count++, dist, j);
+	      } else if (dist < dists[0]) {
+		siftDown(dists, columns, count, dist, j);
+	      }
+	    } else {
+	      if (count == columns.length) {
+		int[] c = new int[2 * count];
+		double[] d = new double[2 * count];
+		System.arraycopy(columns, 0, c, 0, count);
+		System.arraycopy(dists, 0, d, 0, count);
+		columns = c;
+		dists = d;
+	      }
+	      columns[count] = j;
+	      dists[count++] = dist;
+	    }
+	  }
+	  int[] rowColumns = new int[count + 1];
+	  double[] rowWeights = new double[count + 1];
+	  for (int k = 0; k < count; k++) {
+	    rowColumns[k] = columns[k];
+	    rowWeights[k] = Math.exp(-(dists[k] * dists[k]) / m_TwoSigmaSq);
+	  }
+	  rowColumns[count] = row;
+	  rowWeights[count] = 1;
+	  m_RowColumns[row] = rowColumns;
+	  m_RowWeights[row] = rowWeights;
+	}
+      } catch (Exception e) {
+	m_Error = e;
+      }
+    }
+  }
+
+  /** Adds an entry at position count of a max-heap */
+  protected static void siftUp(double[] dists, int[] columns, int count,
+			       double dist, int column) {
+    int pos = count;
+    while (pos > 0) {
+      int parent = (pos - 1) / 2;
+      if (dists[parent] >= dist) {
+	break;
+      }
+      dists[pos] = dists[parent];
+      columns[pos] = columns[parent];
+      pos = parent;
+    }
+    dists[pos] = dist;
+    columns[pos] = column;
+  }
+
+  /** Replaces the largest entry of a full max-heap */
+  protected static void siftDown(double[] dists, int[] columns, int count,
+				 double dist, int column) {
+    int pos = 0;
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= count) {
+	break;
+      }
+      if (child + 1 < count && dists[child + 1] > dists[child]) {
+	child++;
+      }
+      if (dists[child] <= dist) {
+	break;
+      }
+      dists[pos] = dists[child];
+      columns[pos] = columns[child];
+      pos = child;
+    }
+    dists[pos] = dist;
+    columns[pos] = column;
+  }
+
+  /** Returns the number of points */
+  public int size() {
+    return m_Size;
+  }
+
+  /** Returns the number of stored edges, each undirected edge counts twice */
+  public int numEdges() {
+    return m_Columns.length;
+  }
+
+  /** Returns the degree of a point */
+  public double degree(int i) {
+    return m_Degrees[i];
+  }
+
+  /**
+   * Returns the subgraph spanned by some of the points
+   * @param points the points, they become points 0, 1, ... of the subgraph
+   * @return the subgraph
+   */
+  public SparseAffinityGraph subgraph(int[] points) {
+    int[] map = new int[m_Size];
+    Arrays.fill(map, -1);
+    for (int i = 0; i < points.length; i++) {
+      map[points[i]] = i;
+    }
+    int[] rowStart = new int[points.length + 1];
+    for (int i = 0; i < points.length; i++) {
+      int count = 0;
+      int p = points[i];
+      for (int e = m_RowStart[p]; e < m_RowStart[p + 1]; e++) {
+	if (map[m_Columns[e]] != -1) {
+	  count++;
+	}
+      }
+      rowStart[i + 1] = rowStart[i] + count;
+    }
+    int[] columns = new int[rowStart[points.length]];
+    double[] weights = new double[columns.length];
+    for (int i = 0; i < points.length; i++) {
+      int out = rowStart[i];
+      int p = points[i];
+      for (int e = m_RowStart[p]; e < m_RowStart[p + 1]; e++) {
+	int j = map[m_Columns[e]];
+	if (j != -1) {
+	  columns[out] = j;
+	  weights[out++] = m_Weights[e];
+	}
+      }
+      // the points need not be in ascending order
+      sortRow(columns, weights, rowStart[i], out);
+    }
+    return new SparseAffinityGraph(rowStart, columns, weights);
+  }
+
+  /** Sorts the edges of a row by neighbour with an insertion sort */
+  protected static void sortRow(int[] columns, double[] weights, int start, int end) {
+    for (int e = start + 1; e < end; e++) {
+      int c = columns[e];
+      double w = weights[e];
+      int f = e - 1;
+      while (f >= start && columns[f] > c) {
+	columns[f + 1] = columns[f];
+	weights[f + 1] = weights[f];
+	f--;
+      }
+      columns[f + 1] = c;
+      weights[f + 1] = w;
+    }
+  }
+
+  /**
+   * Returns the normalized similarity matrix D^(-1/2) W D^(-1/2) shifted
+   * by the identity, so that its eigenvalues lie between 0 and 2.  Its
+   * largest eigenvalues belong to the smallest eigenvalues of the
+   * normalized Laplacian I - D^(-1/2) W D^(-1/2).
+   */
+  public LanczosEigensolver.Operator normalizedOperator() {
+    final double[] scale = new double[m_Size];
+    for (int i = 0; i < m_Size; i++) {
+      scale[i] = 1 / Math.sqrt(m_Degrees[i]);
+    }
+    return new LanczosEigensolver.Operator() {
+	public int size() {
+	  return m_Size;
+	}
+
+	public void multiply(double[] x, double[] y) {
+	  for (int i = 0; i < m_Size; i++) {
+	    double sum = 0;
+	    for (int e = m_RowStart[i]; e < m_RowStart[i + 1]; e++) {
+	      int j = m_Columns[e];
+	      sum += m_Weights[e] * scale[j] * x[j];
+	    }
+	    y[i] = x[i] + scale[i] * sum;
+	  }
+	}
+      };
+  }
+
+  /**
+   * Returns the trivial eigenvector D^(1/2) 1 of the normalized
+   * similarity matrix, scaled to unit length
+   */
+  public double[] trivialEigenvector() {
+    double[] z = new double[m_Size];
+    double norm = 0;
+    for (int i = 0; i < m_Size; i++) {
+      z[i] = Math.sqrt(m_Degrees[i]);
+      norm += m_Degrees[i];
+    }
+    norm = Math.sqrt(norm);
+    for (int i = 0; i < m_Size; i++) {
+      z[i] /= norm;
+    }
+    return z;
+  }
+
+  /**
+   * Returns the normalized cut between two parts of the graph
+   * @param a the points of the first part, the others form the second
+   * @return the normalized cut, cut/vol(a) + cut/vol(b)
+   */
+  public double ncut(int[] a) {
+    boolean[] inA = new boolean[m_Size];
+    for (int i = 0; i < a.length; i++) {
+      inA[a[i]] = true;
+    }
+    double cut = 0, volA = 0, volB = 0;
+    for (int i = 0; i < m_Size; i++) {
+      if (inA[i]) {
+	volA += m_Degrees[i];
+	for (int e = m_RowStart[i]; e < m_RowStart[i + 1]; e++) {
+	  if (!inA[m_Columns[e]]) {
+	    cut += m_Weights[e];
+	  }
+	}
+      } else {
+	volB += m_Degrees[i];
+      }
+    }
+    return cut / volA + cut / volB;
+  }
+
+  /**
+   * Finds the split of points ordered along a vector that has the smallest
+   * normalized cut.  Moving the points one by one from the second part to
+   * the first updates the cut with the edges of the moved point, so all
+   * n - 1 splits are evaluated in time proportional to the number of edges.
+   *
+   * @param order the points in the order of the vector
+   * @return the number of points of the first part of the best split
+   */
+  public int bestSweepSplit(int[] order) {
+    int n = m_Size;
+    int[] rank = new int[n];
+    for (int i = 0; i < n; i++) {
+      rank[order[i]] = i;
+    }
+    double volume = 0;
+    for (int i = 0; i < n; i++) {
+      volume += m_Degrees[i];
+    }
+    double cut = 0, volA = 0;
+    double bestCut = Double.POSITIVE_INFINITY;
+    int best = 1;
+    for (int pos = 0; pos < n - 1; pos++) {
+      int u = order[pos];
+      // u moves to the first part: its edges to that part are no longer
+      // cut, its edges to the rest now are
+      for (int e = m_RowStart[u]; e < m_RowStart[u + 1]; e++) {
+	int r = rank[m_Columns[e]];
+	if (r < pos) {
+	  cut -= m_Weights[e];
+	} else if (r > pos) {
+	  cut += m_Weights[e];
+	}
+      }
+      volA += m_Degrees[u];
+      double ncut = cut / volA + cut / (volume - volA);
+      if (ncut < bestCut) {
+	bestCut = ncut;
+	best = pos + 1;
+      }
+    }
+    return best;
+  }
+}
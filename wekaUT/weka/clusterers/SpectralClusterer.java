@@ -86,7 +86,36 @@ import java.util.*;
  * -M <br>
  * Requires the use of sparse representation of similarity matrices.
  * </li>
+ * <li>
+ * -L <br>
+ * Uses a sparse similarity graph and computes the eigenvectors with the
+ * Lanczos method instead of a dense eigenvalue decomposition.
+ * </li>
+ * <li>
+ * -K &lt;0 or a positive number&gt; <br>
+ * With -L, connects every point only to its k nearest neighbours.
+ * 0 connects all points closer than the distance cut factor.
+ * </li>
+ * <li>
+ * -C &lt;0 or a positive number&gt; <br>
+ * With -L, finds this many clusters at once from the embedding of the
+ * points into the first eigenvectors. 0 partitions recursively.
+ * </li>
+ * <li>
+ * -P &lt;positive number&gt; <br>
+ * With -L, the number of threads computing the similarity graph.
+ * </li>
  * </ul>
+ * <p>The dense representation needs O(n^2) memory and every bisection costs
+ * O(n^3) for the eigenvalue decomposition. With -L, the similarity graph
+ * only keeps the edges within the distance cut factor or between nearest
+ * neighbours, and the eigenvector of the second smallest eigenvalue is
+ * found iteratively with sparse matrix-vector products (see
+ * LanczosEigensolver). The best cut along it is found in a single sweep
+ * over the edges. This scales to much larger datasets, but building the
+ * graph still computes all pairwise distances. With -C the points are
+ * embedded into the first eigenvectors, the rows of the embedding are
+ * scaled to unit length and grouped by k-means, as in Ng, Jordan and Weiss.</p>
  * <p>This implementation relies on the COLT numeric package for Java written by
  * Wolfgang Hoschek. For other information about COLT see its home
  * page at
@@ -159,6 +188,28 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
    */
   protected boolean useSparseMatrix = false;
 
+  /**
+   * The using Lanczos solver on a sparse similarity graph flag
+   */
+  protected boolean useLanczos = false;
+
+  /**
+   * The number of nearest neighbours in the sparse similarity graph,
+   * 0 for all points within the distance cut
+   */
+  protected int numNeighbours = 0;
+
+  /**
+   * The number of clusters of the multi-way embedding, 0 for recursive
+   * partitioning
+   */
+  protected int numClusters = 0;
+
+  /**
+   * The number of threads computing the sparse similarity graph
+   */
+  protected int numExecutionSlots = 1;
+
   protected static Vector options = new Vector();
   /**
    * The static initializer sets up the options vector
@@ -168,6 +219,10 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
     options.addElement(new Option("\tSigma. (default = 1.0).", "S", 1, "-S <num>"));
     options.addElement(new Option("\tR. All points that are far away more than this value have a zero similarity. (default = -1).", "R", 1, "-R <num>"));
     options.addElement(new Option("\tUse sparse matrix representation. (default = false).", "M", 0, "-M"));
+    options.addElement(new Option("\tUse a sparse similarity graph and the Lanczos eigensolver. (default = false).", "L", 0, "-L"));
+    options.addElement(new Option("\tNumber of nearest neighbours in the sparse graph, 0 for all within R. (default = 0).", "K", 1, "-K <num>"));
+    options.addElement(new Option("\tNumber of clusters of the multi-way embedding, 0 for recursive partitioning. (default = 0).", "C", 1, "-C <num>"));
+    options.addElement(new Option("\tNumber of threads computing the sparse graph. (default = 1).", "P", 1, "-P <num>"));
   }
 
   /**
@@ -399,6 +454,218 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
     }
   }
 
+  /**
+   * Returns the best cut of a sparse graph w.r.t. the normalized cut. The
+   * eigenvector z_2 of the second smallest eigenvalue of the normalized
+   * Laplacian is computed by the Lanczos method in the orthogonal
+   * complement of the trivial eigenvector, then the points are ordered by
+   * y_2 = D^(-1/2) * z_2 and the split with the smallest cut is chosen.
+   *
+   * @param W the similarity graph
+   * @return an array of two elements, each of these contains the points of a
+   * partition
+   * @exception Exception if the eigenvector can't be computed
+   */
+  protected static int[][] bestCut(SparseAffinityGraph W) throws Exception {
+    int n = W.size();
+    double[][] locked = new double[][] {W.trivialEigenvector()};
+    double[][] z = new LanczosEigensolver().solve(W.normalizedOperator(), 1, locked, null);
+
+    // y_2 = D^(-1/2) * z_2
+    final double[] y_2 = new double[n];
+    for(int i = 0; i < n; i++)
+      y_2[i] = z[0][i] / Math.sqrt(W.degree(i));
+    final int[] v = new int[n];
+    for(int i = 0; i < n; i++)
+      v[i] = i;
+    // Orders the points by their projection on vector y_2
+    GenericSorting.mergeSort(0, n, new cern.colt.function.IntComparator() {
+	public int compare(int a, int b) {
+	  return (y_2[v[a]] < y_2[v[b]]) ? -1 : ((y_2[v[a]] > y_2[v[b]]) ? 1 : 0);
+	}
+      }, new Swapper() {
+	public void swap(int a, int b) {
+	  int t = v[a];
+	  v[a] = v[b];
+	  v[b] = t;
+	}
+      });
+
+    int i = W.bestSweepSplit(v);
+    int[][] partition = new int[2][];
+    partition[0] = new int[i];
+    partition[1] = new int[n - i];
+    System.arraycopy(v, 0, partition[0], 0, i);
+    System.arraycopy(v, i, partition[1], 0, n - i);
+    return partition;
+  }
+
+  /**
+   * Splits recursively the points of a sparse graph while the value of the
+   * best cut found is less of a specified limit (the alpha star factor).
+   *
+   * @param W the similarity graph
+   * @param alpha_star the alpha star factor
+   * @return an array of sets of points (partitions)
+   * @exception Exception if an eigenvector can't be computed
+   */
+  protected static int[][] partition(SparseAffinityGraph W, double alpha_star) throws Exception {
+    int[][] p;
+    if(W.size() > 1) {
+      int[][] cut = bestCut(W);
+      if(W.ncut(cut[0]) < alpha_star) {
+        int[][] p0 = partition(W.subgraph(cut[0]), alpha_star);
+        int[][] p1 = partition(W.subgraph(cut[1]), alpha_star);
+        // Maps the points of the subgraphs back to the points of W
+        p = new int[p0.length + p1.length][];
+        for(int i = 0; i < p0.length; i++) {
+          p[i] = new int[p0[i].length];
+          for(int j = 0; j < p0[i].length; j++)
+            p[i][j] = cut[0][p0[i][j]];
+        }
+        for(int i = 0; i < p1.length; i++) {
+          p[i + p0.length] = new int[p1[i].length];
+          for(int j = 0; j < p1[i].length; j++)
+            p[i + p0.length][j] = cut[1][p1[i][j]];
+        }
+        return p;
+      }
+    }
+    p = new int[1][W.size()];
+    for(int i = 0; i < p[0].length; i++)
+      p[0][i] = i;
+    return p;
+  }
+
+  /**
+   * Partitions the points of a sparse graph into k clusters at once. The
+   * points are embedded into the eigenvectors of the k smallest eigenvalues
+   * of the normalized Laplacian, the rows of the embedding are scaled to
+   * unit length and clustered by k-means, starting from k points that are
+   * far apart.
+   *
+   * @param W the similarity graph
+   * @param k the number of clusters
+   * @return an array of sets of points (partitions), empty clusters are
+   * left out
+   * @exception Exception if the eigenvectors can't be computed
+   */
+  protected static int[][] embed(SparseAffinityGraph W, int k) throws Exception {
+    int n = W.size();
+    k = Math.min(k, n);
+    double[] z_1 = W.trivialEigenvector();
+    double[][] z = (k > 1)
+      ? new LanczosEigensolver().solve(W.normalizedOperator(), k - 1, new double[][] {z_1}, null)
+      : new double[0][];
+    int dim = z.length + 1;
+
+    // The rows of the embedding, scaled to unit length
+    double[][] u = new double[n][dim];
+    for(int i = 0; i < n; i++) {
+      u[i][0] = z_1[i];
+      for(int j = 1; j < dim; j++)
+        u[i][j] = z[j - 1][i];
+      double norm = Math.sqrt(dot(u[i], u[i]));
+      if(norm > 0)
+        for(int j = 0; j < dim; j++)
+          u[i][j] /= norm;
+    }
+
+    // Farthest-first initialization: each new center is the row farthest
+    // from the centers chosen so far
+    double[][] centers = new double[k][];
+    double[] minDist = new double[n];
+    java.util.Arrays.fill(minDist, Double.POSITIVE_INFINITY);
+    int next = 0;
+    for(int c = 0; c < k; c++) {
+      centers[c] = (double[]) u[next].clone();
+      int farthest = 0;
+      for(int i = 0; i < n; i++) {
+        minDist[i] = Math.min(minDist[i], dist2(u[i], centers[c]));
+        if(minDist[i] > minDist[farthest])
+          farthest = i;
+      }
+      next = farthest;
+    }
+
+    // Lloyd iterations
+    int[] assignment = new int[n];
+    java.util.Arrays.fill(assignment, -1);
+    for(int iter = 0; iter < 100; iter++) {
+      boolean changed = false;
+      for(int i = 0; i < n; i++) {
+        int best = 0;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for(int c = 0; c < k; c++) {
+          double d = dist2(u[i], centers[c]);
+          if(d < bestDist) {
+            bestDist = d;
+            best = c;
+          }
+        }
+        if(assignment[i] != best) {
+          assignment[i] = best;
+          changed = true;
+        }
+      }
+      if(!changed)
+        break;
+      int[] counts = new int[k];
+      for(int c = 0; c < k; c++)
+        java.util.Arrays.fill(centers[c], 0);
+      for(int i = 0; i < n; i++) {
+        counts[assignment[i]]++;
+        for(int j = 0; j < dim; j++)
+          centers[assignment[i]][j] += u[i][j];
+      }
+      for(int c = 0; c < k; c++)
+        if(counts[c] > 0)
+          for(int j = 0; j < dim; j++)
+            centers[c][j] /= counts[c];
+    }
+
+    // Collects the non empty clusters
+    int[] counts = new int[k];
+    for(int i = 0; i < n; i++)
+      counts[assignment[i]]++;
+    int numNonEmpty = 0;
+    int[] index = new int[k];
+    for(int c = 0; c < k; c++)
+      index[c] = (counts[c] > 0) ? numNonEmpty++ : -1;
+    int[][] p = new int[numNonEmpty][];
+    for(int c = 0; c < k; c++)
+      if(counts[c] > 0)
+        p[index[c]] = new int[counts[c]];
+    int[] fill = new int[numNonEmpty];
+    for(int i = 0; i < n; i++) {
+      int c = index[assignment[i]];
+      p[c][fill[c]++] = i;
+    }
+    return p;
+  }
+
+  /**
+   * Returns the dot product of two vectors.
+   */
+  protected static double dot(double[] x, double[] y) {
+    double sum = 0;
+    for(int i = 0; i < x.length; i++)
+      sum += x[i] * y[i];
+    return sum;
+  }
+
+  /**
+   * Returns the squared Euclidean distance between two vectors.
+   */
+  protected static double dist2(double[] x, double[] y) {
+    double sum = 0;
+    for(int i = 0; i < x.length; i++) {
+      double d = x[i] - y[i];
+      sum += d * d;
+    }
+    return sum;
+  }
+
   /**
    * Returns the number of clusters found.
    *
@@ -438,6 +705,10 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
   public void buildClusterer(Instances data) throws java.lang.Exception {
     int n = data.numInstances();
     int k = data.numAttributes();
+    if(useLanczos) {
+      buildSparseClusterer(data);
+      return;
+    }
     DoubleMatrix2D w;
     if(useSparseMatrix)
       w = DoubleFactory2D.sparse.make(n, n);
@@ -470,6 +741,32 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
         cluster[p[i][j]] = i;
   }
 
+  /**
+   * Generates the clusterer from a sparse similarity graph with the
+   * Lanczos eigensolver.
+   *
+   * @param data set of instances serving as training data
+   * @exception Exception if the clusterer has not been generated successfully
+   */
+  protected void buildSparseClusterer(Instances data) throws Exception {
+    int n = data.numInstances();
+    double[][] v1 = new double[n][];
+    for(int i = 0; i < n; i++)
+      v1[i] = data.instance(i).toDoubleArray();
+    v = DoubleFactory2D.dense.make(v1);
+    SparseAffinityGraph w = SparseAffinityGraph.build(v1, sigma, r, numNeighbours, numExecutionSlots);
+
+    //Partitions points
+    int[][] p = (numClusters > 0) ? embed(w, numClusters) : partition(w, alpha_star);
+
+    //Deploys results
+    numOfClusters = p.length;
+    cluster = new int[n];
+    for(int i = 0; i < p.length; i++)
+      for(int j = 0; j < p[i].length; j++)
+        cluster[p[i][j]] = i;
+  }
+
   /**
    * Returns a string describing this clusterer
    * @return a description of the evaluator suitable for
@@ -505,6 +802,22 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
     if(optionString.length() != 0)
       setR(Double.parseDouble(optionString));
     setUseSparseMatrix(Utils.getFlag('M', options));
+    setUseLanczos(Utils.getFlag('L', options));
+    optionString = Utils.getOption('K', options);
+    if(optionString.length() != 0)
+      setNumNeighbours(Integer.parseInt(optionString));
+    else
+      setNumNeighbours(0);
+    optionString = Utils.getOption('C', options);
+    if(optionString.length() != 0)
+      setNumClusters(Integer.parseInt(optionString));
+    else
+      setNumClusters(0);
+    optionString = Utils.getOption('P', options);
+    if(optionString.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    else
+      setNumExecutionSlots(1);
   }
 
   /**
@@ -513,7 +826,7 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
    * @return an array of strings suitable for passing to setOptions()
    */
   public String[] getOptions() {
-    String[] options = new String[7];
+    String[] options = new String[14];
     int current = 0;
     options[current++] = "-A";
     options[current++] = "" + Double.toString(getAlphaStar());
@@ -523,6 +836,15 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
     options[current++] = "" + Double.toString(getR());
     if(getUseSparseMatrix())
       options[current++] = "-M";
+    if(getUseLanczos()) {
+      options[current++] = "-L";
+      options[current++] = "-K";
+      options[current++] = "" + getNumNeighbours();
+      options[current++] = "-C";
+      options[current++] = "" + getNumClusters();
+      options[current++] = "-P";
+      options[current++] = "" + getNumExecutionSlots();
+    }
     while (current < options.length)
       options[current++] = "";
     return  options;
@@ -652,6 +974,130 @@ public class SpectralClusterer extends Clusterer implements OptionHandler {
     return "use sparse representation for similarity matrix. It can improve the memory efficiency";
   }
 
+  /**
+   * Sets the use of a sparse similarity graph and the Lanczos eigensolver.
+   *
+   * @param useLanczos true for the sparse graph and the Lanczos eigensolver
+   */
+  public void setUseLanczos(boolean useLanczos) {
+    this.useLanczos = useLanczos;
+  }
+
+  /**
+   * Returns the status of using Lanczos eigensolver flag.
+   *
+   * @return the status of using Lanczos eigensolver flag
+   */
+  public boolean getUseLanczos() {
+    return useLanczos;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String useLanczosTipText() {
+    return "use a sparse similarity graph and compute its eigenvectors with the Lanczos method instead of a dense eigenvalue decomposition. Needed for large datasets; the graph is limited by r or the number of neighbours.";
+  }
+
+  /**
+   * Sets the number of nearest neighbours in the sparse similarity graph.
+   *
+   * @param numNeighbours the new value (numNeighbours &gt;= 0)
+   * @exception Exception if numNeighbours is negative
+   */
+  public void setNumNeighbours(int numNeighbours) throws Exception {
+    if(numNeighbours >= 0)
+      this.numNeighbours = numNeighbours;
+    else
+      throw new Exception("numNeighbours must be 0 or a positive number");
+  }
+
+  /**
+   * Returns the number of nearest neighbours in the sparse similarity graph.
+   *
+   * @return the number of nearest neighbours
+   */
+  public int getNumNeighbours() {
+    return numNeighbours;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numNeighboursTipText() {
+    return "set the number of nearest neighbours each point is connected to in the sparse similarity graph (see -L). 0 connects all points closer than r.";
+  }
+
+  /**
+   * Sets the number of clusters of the multi-way embedding.
+   *
+   * @param numClusters the new value (numClusters &gt;= 0)
+   * @exception Exception if numClusters is negative
+   */
+  public void setNumClusters(int numClusters) throws Exception {
+    if(numClusters >= 0)
+      this.numClusters = numClusters;
+    else
+      throw new Exception("numClusters must be 0 or a positive number");
+  }
+
+  /**
+   * Returns the number of clusters of the multi-way embedding.
+   *
+   * @return the number of clusters
+   */
+  public int getNumClusters() {
+    return numClusters;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numClustersTipText() {
+    return "set the number of clusters to find at once by k-means on the first eigenvectors (see -L). 0 partitions recursively while the cut is below alpha star.";
+  }
+
+  /**
+   * Sets the number of threads computing the sparse similarity graph.
+   *
+   * @param numExecutionSlots the new value (numExecutionSlots &gt; 0)
+   * @exception Exception if numExecutionSlots is not positive
+   */
+  public void setNumExecutionSlots(int numExecutionSlots) throws Exception {
+    if(numExecutionSlots > 0)
+      this.numExecutionSlots = numExecutionSlots;
+    else
+      throw new Exception("numExecutionSlots must be a positive number");
+  }
+
+  /**
+   * Returns the number of threads computing the sparse similarity graph.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "set the number of threads computing the distances for the sparse similarity graph (see -L).";
+  }
+
   /**
    * Constructor.
    **/
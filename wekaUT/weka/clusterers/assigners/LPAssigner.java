@@ -40,7 +40,8 @@ public class LPAssigner extends MPCKMeansAssigner {
 
   /** fields to be initialized from m_clusterer */
   protected Instances m_instances = null;
-  protected HashMap m_constraintHash = null; 
+  /** the constraints of the clusterer, InstancePairs with the actual link types */
+  protected ArrayList m_constraints = null; 
 
   protected int m_numInstances = 0;
   protected int m_numClusters = 0;
@@ -101,15 +102,13 @@ public class LPAssigner extends MPCKMeansAssigner {
       m_instances = m_clusterer.getInstances();
       m_numInstances = m_instances.numInstances();
       
-      m_constraintHash = m_clusterer.getConstraintsHash();
-      m_numConstraints = m_constraintHash.size();
+      m_constraints = m_clusterer.getConstraintGraph().toPairs();
+      m_numConstraints = m_constraints.size();
       m_numMLConstraints = 0;
       m_numCLConstraints = 0;
       // go through the constraints and count ML and CL
-      Iterator pairItr = ((Set) m_constraintHash.keySet()).iterator();
-      while(pairItr.hasNext()) {
-	InstancePair pair = (InstancePair) pairItr.next();
-	int linkType = ((Integer) m_constraintHash.get(pair)).intValue();
+      for (int i = 0; i < m_constraints.size(); i++) {
+	int linkType = ((InstancePair) m_constraints.get(i)).linkType;
 	if (linkType == InstancePair.MUST_LINK) {
 	  m_numMLConstraints++;
 	} else if (linkType == InstancePair.CANNOT_LINK) {
@@ -189,12 +188,10 @@ public class LPAssigner extends MPCKMeansAssigner {
       b[i] = 0;
     }
     // Constraint vars
-    Iterator pairItr = ((Set) m_constraintHash.keySet()).iterator();
-    int idx = 0;
     int offset = m_numVars;
-    while(pairItr.hasNext()) {
-      InstancePair pair = (InstancePair) pairItr.next();
-      int linkType = ((Integer) m_constraintHash.get(pair)).intValue();
+    for (int idx = 0; idx < m_constraints.size(); idx++) {
+      InstancePair pair = (InstancePair) m_constraints.get(idx);
+      int linkType = pair.linkType;
       if (linkType == InstancePair.MUST_LINK) { 
 	for (int centroidIdx = 0; centroidIdx < m_numClusters; centroidIdx++) { 
 	  A[offset+2*idx*m_numClusters + centroidIdx][centroidIdx * m_numInstances + pair.first] = 1;
@@ -217,7 +214,6 @@ public class LPAssigner extends MPCKMeansAssigner {
 	  b[offset+2*idx*m_numClusters + m_numClusters + centroidIdx] = 1;
 	}
       }
-      idx++;
     }
     
 
@@ -322,26 +318,21 @@ public class LPAssigner extends MPCKMeansAssigner {
       
 
       // count number of constraint violations for this point
-      HashMap instanceConstraintHash = m_clusterer.getInstanceConstraintsHash();
+      ConstraintGraph graph = m_clusterer.getConstraintGraph();
       int numViolated = 0;
       int numTotal = 0; 
-      Object list =  instanceConstraintHash.get(new Integer(i));
-      if (list != null) {   // there are constraints associated with this instance
-	ArrayList constraintList = (ArrayList) list;
-	numTotal = constraintList.size();
-	for (int j = 0; j < constraintList.size(); j++) {
-	  InstancePair pair = (InstancePair) constraintList.get(j);
-	  int firstIdx = pair.first;
-	  int secondIdx = pair.second;
-	    
-	  int centroidIdx = (firstIdx == i) ? clusterAssignments[firstIdx] : clusterAssignments[secondIdx];
-	  int otherIdx = (firstIdx == i) ? clusterAssignments[secondIdx] : clusterAssignments[firstIdx];
+      if (graph != null && graph.hasConstraints(i)) {   // there are constraints associated with this instance
+	numTotal = graph.degree(i);
+	for (int j = graph.start(i); j < graph.end(i); j++) {
+	  int linkType = graph.linkType(j);
+	  int centroidIdx = clusterAssignments[i];
+	  int otherIdx = clusterAssignments[graph.neighbour(j)];
 	  
 	    // check whether the constraint is violated
 	  if (otherIdx != -1 && otherIdx < m_numClusters) {
-	    if (otherIdx != centroidIdx && pair.linkType == InstancePair.MUST_LINK) { 
+	    if (otherIdx != centroidIdx && linkType == InstancePair.MUST_LINK) { 
 	      numViolated++;
-	    } else if (otherIdx == centroidIdx && pair.linkType == InstancePair.CANNOT_LINK) { 
+	    } else if (otherIdx == centroidIdx && linkType == InstancePair.CANNOT_LINK) { 
 	      numViolated++;
 	    }
 	  }
@@ -432,15 +423,9 @@ public class LPAssigner extends MPCKMeansAssigner {
 
   /** Accumulate contribution from constraints */
   protected void accumulateConstraintCoeffs(double [] objCoeffs) throws Exception{
-    if (m_constraintHash != null) {
-      Set pointPairs = (Set) m_constraintHash.keySet(); 
-      Iterator pairItr = pointPairs.iterator();
-      int idx = 0;
-
-      while( pairItr.hasNext() ){
-	InstancePair pair = (InstancePair) pairItr.next();
-	addPairPenalties(pair, idx, objCoeffs);
-	idx++; 
+    if (m_constraints != null) {
+      for (int idx = 0; idx < m_constraints.size(); idx++) {
+	addPairPenalties((InstancePair) m_constraints.get(idx), idx, objCoeffs);
       }
     }
   }
@@ -454,7 +439,7 @@ public class LPAssigner extends MPCKMeansAssigner {
     int instance2Idx = pair.second;
     Instance instance1 = m_instances.instance(instance1Idx);
     Instance instance2 = m_instances.instance(instance2Idx);
-    int linkType = ((Integer) m_constraintHash.get(pair)).intValue();
+    int linkType = pair.linkType;
 
     double cost = 0;
     if (linkType == InstancePair.MUST_LINK) {
@@ -467,23 +452,24 @@ public class LPAssigner extends MPCKMeansAssigner {
     if (!m_useMultipleMetrics) {  // MAJOR KLUDGE.  TODO:  create penalty(InstancePair) method in MPCKMeans; use both internally and here;
                                   // avoid iterating through constraints inside individual calculateConstraintPenalties methods
       double penalty = 0;
+      Metric metric = CachingMetric.unwrap(m_metric);
 
       // add the penalty for different types of metrics
-      if (m_metric instanceof WeightedDotP) {
+      if (metric instanceof WeightedDotP) {
 	double sim = m_metric.similarity(instance1, instance2);
 	if (linkType == InstancePair.MUST_LINK) {
 	  penalty = -cost * (1 - sim);
 	} else if (linkType == InstancePair.CANNOT_LINK) {
 	  penalty = -cost * sim;
 	}
-      } else if (m_metric instanceof KL) {
-	double distance = ((KL) m_metric).distanceJS(instance1, instance2);
+      } else if (metric instanceof KL) {
+	double distance = ((KL) metric).distanceJS(instance1, instance2);
 	if (linkType == InstancePair.MUST_LINK) {
 	  penalty = cost * distance;
 	} else if (linkType == InstancePair.CANNOT_LINK) { 
 	  penalty = cost * (2.0 - distance); 
 	}
-      } else if (m_metric instanceof WeightedEuclidean || m_metric instanceof WeightedMahalanobis) {
+      } else if (metric instanceof WeightedEuclidean || metric instanceof WeightedMahalanobis) {
 	double distance = m_metric.distance(instance1, instance2);
 	if (linkType == InstancePair.MUST_LINK) {
 	  penalty = cost * distance * distance;
@@ -491,7 +477,7 @@ public class LPAssigner extends MPCKMeansAssigner {
 	  penalty = cost * (m_maxCLDistances[0] * m_maxCLDistances[0] - distance * distance); 
 	} 
       } else {
-	throw new Exception("Unknown metric: " + m_metric.getClass().getName());
+	throw new Exception("Unknown metric: " + metric.getClass().getName());
       }
 
       // y_m = 0.5 sum_j (y_{mj})
@@ -0,0 +1,325 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelAssigner.java
+ *    Blocked, multi-threaded in-order assignment for MPCKMeans
+ *
+ */
+
+package weka.clusterers.assigners;
+
+import  java.io.*;
+import  java.util.*;
+import  weka.core.*;
+import  weka.clusterers.*;
+
+/**
+ * Assigns the instances in the same order as SimpleAssigner, but in two
+ * passes.  The best clusters of all instances without constraints do not
+ * depend on the assignments of other instances, so they are computed
+ * first, by several threads that process blocks of instances one cluster
+ * at a time.  The second pass walks over the instances in order, assigns
+ * the instances with constraints as SimpleAssigner does (ICM) and applies
+ * the precomputed results for the others, so the assignments and the
+ * objective are the same as with SimpleAssigner.  The metrics have to
+ * support computing penalties concurrently if more than one thread is
+ * used.
+ */
+public class ParallelAssigner extends SimpleAssigner {
+
+  /** The number of threads computing the distances */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The number of instances per block */
+  protected int m_BlockSize = 1024;
+
+  /** The next block to process in the first pass */
+  protected int m_NextBlock;
+
+  /** The first error a thread of the first pass ran into, null if none */
+  protected Throwable m_WorkerError;
+
+  /** Results of the first pass: the best cluster of each instance
+   * without constraints, -1 if it has to be assigned in the second pass */
+  protected int[] m_BestClusters;
+
+  /** Results of the first pass: the variance contribution to the best cluster */
+  protected double[] m_BestVariances;
+
+  /** Results of the first pass: the normalizer contribution to the best cluster */
+  protected double[] m_BestNormalizers;
+
+  /** Results of the first pass: the penalty for the current cluster */
+  protected double[] m_CurrentPenalties;
+
+  /** Default constructors */
+  public ParallelAssigner() {
+    super();
+  }
+
+  /** Initialize with a clusterer */
+  public ParallelAssigner (MPCKMeans clusterer) {
+    super(clusterer);
+  }
+
+  /** Assigns all instances once, in the order of SimpleAssigner
+   *  @param failOnError if false, instances that can't be assigned are
+   *  reported and skipped, otherwise the exception is passed on
+   *  @return the number of points that changed assignment
+   */
+  protected int assignInstances(boolean failOnError) throws Exception {
+    int moved = 0;
+    Instances instances = m_clusterer.getInstances();
+    int numInstances = instances.numInstances();
+    int [] assignments = m_clusterer.getClusterAssignments();
+
+    m_BestClusters = new int[numInstances];
+    m_BestVariances = new double[numInstances];
+    m_BestNormalizers = new double[numInstances];
+    m_CurrentPenalties = new double[numInstances];
+    for (int i = 0; i < numInstances; i++) {
+      m_BestClusters[i] = m_clusterer.hasConstraints(i) ? -1 : 0;
+    }
+
+    try {
+      // first pass: instances without constraints
+      computeBestClusters();
+
+      // second pass: all instances in order
+      for (int i = 0; i < numInstances; i++) {
+	if (failOnError) {
+	  moved += assignInstance(i);
+	  continue;
+	}
+	try { 	// Update number of points moved
+	  moved += assignInstance(i);
+	} catch (Exception e) {
+	  System.out.println("Could not assign instance: " + i + " with current assignment: " + assignments[i] + ". Exception: " + e);
+	  e.printStackTrace();
+	}
+      }
+    } finally {
+      m_BestClusters = null;
+      m_BestVariances = null;
+      m_BestNormalizers = null;
+      m_CurrentPenalties = null;
+    }
+
+    return moved;
+  }
+
+  /** Assigns an instance in the second pass
+   *  @param instIdx the instance
+   *  @return 1 if the instance moved to a different cluster, 0 otherwise
+   */
+  protected int assignInstance(int instIdx) throws Exception {
+    if (m_BestClusters[instIdx] == -1) {
+      return m_clusterer.assignInstanceToClusterWithConstraints(instIdx);
+    }
+    return m_clusterer.assignUnconstrainedInstance(instIdx, m_BestClusters[instIdx],
+						   m_BestVariances[instIdx],
+						   m_BestNormalizers[instIdx],
+						   m_CurrentPenalties[instIdx]);
+  }
+
+  /** Runs the first pass, with as many threads as specified */
+  protected void computeBestClusters() throws Exception {
+    m_NextBlock = 0;
+    m_WorkerError = null;
+
+    if (m_NumExecutionSlots <= 1) {
+      int block;
+      while ((block = nextBlock()) != -1) {
+	computeBlock(block);
+      }
+      return;
+    }
+
+    BlockWorker [] workers = new BlockWorker[m_NumExecutionSlots];
+    for (int t = 0; t < workers.length; t++) {
+      workers[t] = new BlockWorker();
+      workers[t].start();
+    }
+    for (int t = 0; t < workers.length; t++) {
+      workers[t].join();
+    }
+
+    // a block that wasn't finished would leave its instances in cluster 0
+    if (m_WorkerError != null) {
+      Throwable error = m_WorkerError;
+      m_WorkerError = null;
+      if (error instanceof Exception) {
+	throw (Exception) error;
+      } else if (error instanceof Error) {
+	throw (Error) error;
+      }
+      throw new Exception(error.toString());
+    }
+  }
+
+  /** Hands out the blocks of the first pass
+   *  @return the next block, -1 if all blocks have been handed out or
+   *  a thread failed
+   */
+  protected synchronized int nextBlock() {
+    int numInstances = m_BestClusters.length;
+    if (m_WorkerError != null || m_NextBlock * m_BlockSize >= numInstances) {
+      return -1;
+    }
+    return m_NextBlock++;
+  }
+
+  /** Finds the best clusters of the instances without constraints in a
+   * block.  The clusters are tried in the same order as by
+   * assignInstanceToClusterWithConstraints, so ties are broken in the same
+   * way.  An instance for which this fails is left to the second pass,
+   * where the error is reported as usual.
+   *  @param block the index of the block
+   */
+  protected void computeBlock(int block) {
+    int numClusters = m_clusterer.getNumClusters();
+    int [] assignments = m_clusterer.getClusterAssignments();
+    int first = block * m_BlockSize;
+    int last = Math.min(first + m_BlockSize, m_BestClusters.length);
+    double [] lowestPenalties = new double[last - first];
+    Arrays.fill(lowestPenalties, Double.MAX_VALUE);
+
+    for (int j = 0; j < numClusters; j++) {
+      double normalizer = m_clusterer.normalizerForCluster(j);
+      for (int i = first; i < last; i++) {
+	if (m_BestClusters[i] == -1) {
+	  continue;
+	}
+	try {
+	  double variance = m_clusterer.varianceForInstance(i, j);
+	  double penalty = variance + normalizer;
+	  if (penalty < lowestPenalties[i - first]) {
+	    lowestPenalties[i - first] = penalty;
+	    m_BestClusters[i] = j;
+	    m_BestVariances[i] = variance;
+	    m_BestNormalizers[i] = normalizer;
+	  }
+	  if (assignments[i] == j) {
+	    m_CurrentPenalties[i] = penalty;
+	  }
+	} catch (Exception e) {
+	  m_BestClusters[i] = -1;
+	}
+      }
+    }
+
+    // no penalty below the maximum, leave it to the second pass
+    for (int i = first; i < last; i++) {
+      if (lowestPenalties[i - first] == Double.MAX_VALUE) {
+	m_BestClusters[i] = -1;
+      }
+    }
+  }
+
+  /** Records the first error of a thread of the first pass, after which
+   *  no more blocks are handed out
+   *  @param error the error
+   */
+  protected synchronized void workerFailed(Throwable error) {
+    if (m_WorkerError == null) {
+      m_WorkerError = error;
+    }
+  }
+
+  /** A thread that processes blocks until none are left */
+  protected class BlockWorker extends Thread {
+    public void run() {
+      int block;
+      try {
+	while ((block = nextBlock()) != -1) {
+	  computeBlock(block);
+	}
+      } catch (Throwable t) {
+	// e.g. running out of memory, reported by computeBestClusters
+	workerFailed(t);
+      }
+    }
+  }
+
+  /** Get/set the number of threads computing the distances */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+  public void setNumExecutionSlots(int v) {
+    if (v >= 1) {
+      m_NumExecutionSlots = v;
+    } else {
+      System.err.println("Number of execution slots must be at least 1!");
+    }
+  }
+
+  /** Get/set the number of instances per block */
+  public int getBlockSize() {
+    return m_BlockSize;
+  }
+  public void setBlockSize(int v) {
+    if (v >= 1) {
+      m_BlockSize = v;
+    } else {
+      System.err.println("Block size must be at least 1!");
+    }
+  }
+
+  public void setOptions (String[] options)
+    throws Exception {
+    String optionString = Utils.getOption('N', options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
+    optionString = Utils.getOption('B', options);
+    if (optionString.length() != 0) {
+      setBlockSize(Integer.parseInt(optionString));
+    }
+    super.setOptions(options);
+  }
+
+  public Enumeration listOptions () {
+    Vector newVector = new Vector(2);
+    newVector.addElement(new Option("\tNumber of threads computing the distances (default 1)",
+				    "N", 1, "-N <num>"));
+    newVector.addElement(new Option("\tNumber of instances per block (default 1024)",
+				    "B", 1, "-B <num>"));
+
+    Enumeration superOptions = super.listOptions();
+    if (superOptions != null) {
+      while (superOptions.hasMoreElements()) {
+	newVector.addElement(superOptions.nextElement());
+      }
+    }
+    return newVector.elements();
+  }
+
+  public String [] getOptions ()  {
+    String [] superOptions = super.getOptions();
+    String [] options = new String [superOptions.length + 4];
+    int current = 0;
+
+    options[current++] = "-N";
+    options[current++] = "" + getNumExecutionSlots();
+    options[current++] = "-B";
+    options[current++] = "" + getBlockSize();
+
+    System.arraycopy(superOptions, 0, options, current, superOptions.length);
+
+    return options;
+  }
+}
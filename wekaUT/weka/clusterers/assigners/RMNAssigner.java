@@ -66,6 +66,7 @@ public class RMNAssigner extends MPCKMeansAssigner {
     m_epsilon = 1e-9;
 
     Metric metric = m_clusterer.getMetric();
+    Metric baseMetric = CachingMetric.unwrap(metric);
     LearnableMetric[] metrics = m_clusterer.getMetrics();
     boolean useMultipleMetrics = m_clusterer.getUseMultipleMetrics();
     Instances instances = m_clusterer.getInstances();
@@ -106,7 +107,7 @@ public class RMNAssigner extends MPCKMeansAssigner {
 	  } else {
 	    simMatrix[i][centroidIdx] = metric.distance(instance, centroid);
 	  }
-	  if (metric instanceof WeightedEuclidean || metric instanceof WeightedMahalanobis) {
+	  if (baseMetric instanceof WeightedEuclidean || baseMetric instanceof WeightedMahalanobis) {
 	    simMatrix[i][centroidIdx] *= simMatrix[i][centroidIdx];
 	  }
 	}
@@ -153,18 +154,17 @@ public class RMNAssigner extends MPCKMeansAssigner {
     }
 
     // create ML and CL potential nodes
-    HashMap constraintsHash = m_clusterer.getConstraintsHash();
-    if (constraintsHash != null) {
+    ConstraintGraph constraintGraph = m_clusterer.getConstraintGraph();
+    if (constraintGraph != null) {
       System.out.println("Creating constraint potential nodes");
-      Set pointPairs = (Set) constraintsHash.keySet(); 
-      Iterator pairItr = pointPairs.iterator();
+      ArrayList pairs = constraintGraph.toPairs();
       
-      // iterate over the pairs in ConstraintHash
-      while( pairItr.hasNext() ){
-	InstancePair pair = (InstancePair) pairItr.next();
+      // iterate over the constraints
+      for (int p = 0; p < pairs.size(); p++) {
+	InstancePair pair = (InstancePair) pairs.get(p);
 	Instance instance1 = instances.instance(pair.first);
 	Instance instance2 = instances.instance(pair.second);
-	int linkType = ((Integer) constraintsHash.get(pair)).intValue();
+	int linkType = pair.linkType;
 
 	double cost = 0;
 	if (linkType == InstancePair.MUST_LINK) {
@@ -184,7 +184,7 @@ public class RMNAssigner extends MPCKMeansAssigner {
 	      // fill up potential table using current distances	      
 	      if (centroidIdx1!=centroidIdx2) {
 		double weight = 0;
-		if (metric instanceof WeightedDotP) {
+		if (baseMetric instanceof WeightedDotP) {
 		  if (useMultipleMetrics) {  // split penalty in half between the two involved clusters
 		    double sim1 = metrics[centroidIdx1].similarity(instance1, instance2);
 		    weight -= 0.5 * cost * (1 - sim1);
@@ -196,19 +196,19 @@ public class RMNAssigner extends MPCKMeansAssigner {
 		  }
 		  weightMatrix[centroidIdx1][centroidIdx2] = Math.exp(m_constraintWeight*m_expScalingFactor*weight);
 		  weightMatrix[centroidIdx2][centroidIdx1] = Math.exp(m_constraintWeight*m_expScalingFactor*weight);
-		} else if (metric instanceof KL) {
+		} else if (baseMetric instanceof KL) {
 		  if (useMultipleMetrics) {  // split penalty in half between the two involved clusters
-		    double penalty1 = ((KL) metrics[centroidIdx1]).distanceJS(instance1, instance2);
+		    double penalty1 = ((KL) CachingMetric.unwrap(metrics[centroidIdx1])).distanceJS(instance1, instance2);
 		    weight += 0.5 * cost * penalty1;
-		    double penalty2 = ((KL) metrics[centroidIdx2]).distanceJS(instance1, instance2);
+		    double penalty2 = ((KL) CachingMetric.unwrap(metrics[centroidIdx2])).distanceJS(instance1, instance2);
 		    weight += 0.5 * cost * penalty2;
 		  } else {  // single metric for all clusters
-		    double penalty = ((KL) metric).distanceJS(instance1, instance2);
+		    double penalty = ((KL) baseMetric).distanceJS(instance1, instance2);
 		    weight += cost * penalty;
 		  }
 		  weightMatrix[centroidIdx1][centroidIdx2] = Math.exp(-m_constraintWeight*weight/m_expScalingFactor);
 		  weightMatrix[centroidIdx2][centroidIdx1] = Math.exp(-m_constraintWeight*weight/m_expScalingFactor);
-		} else if (metric instanceof WeightedEuclidean || metric instanceof WeightedMahalanobis) {
+		} else if (baseMetric instanceof WeightedEuclidean || baseMetric instanceof WeightedMahalanobis) {
 		  if (useMultipleMetrics) {  // split penalty in half between the two involved clusters
 		    double distance1 = metrics[centroidIdx1].distance(instance1, instance2);
 		    weight += 0.5 * cost * distance1 * distance1;
@@ -244,7 +244,7 @@ public class RMNAssigner extends MPCKMeansAssigner {
 	      // fill up potential table using current distances
 	      if (centroidIdx1 == centroidIdx2) {
 		double weight = 0;
-		if (metric instanceof WeightedDotP) {
+		if (baseMetric instanceof WeightedDotP) {
 		  if (useMultipleMetrics) {  // centroidIdx1 == centroidIdx2
 		    weight -= cost * metrics[centroidIdx1].similarity(instance1, instance2);
 		  } else {  // single metric for all clusters
@@ -252,17 +252,17 @@ public class RMNAssigner extends MPCKMeansAssigner {
 		  }
 		  weightMatrix[centroidIdx1][centroidIdx2] = Math.exp(m_constraintWeight*m_expScalingFactor*weight);
 		  weightMatrix[centroidIdx2][centroidIdx1] = Math.exp(m_constraintWeight*m_expScalingFactor*weight);
-		} else if (metric instanceof KL) {
+		} else if (baseMetric instanceof KL) {
 		  if (useMultipleMetrics) {  // centroidIdx1 == centroidIdx2		    
-		    double penalty = 2.0 - ((KL) metrics[centroidIdx1]).distanceJS(instance1, instance2);
+		    double penalty = 2.0 - ((KL) CachingMetric.unwrap(metrics[centroidIdx1])).distanceJS(instance1, instance2);
 		    weight += cost * penalty; 
 		  } else {  // single metric for all clusters
-		    double penalty = 2.0 - ((KL) metric).distanceJS(instance1, instance2);
+		    double penalty = 2.0 - ((KL) baseMetric).distanceJS(instance1, instance2);
 		    weight += cost * penalty;
 		  }
 		  weightMatrix[centroidIdx1][centroidIdx2] = Math.exp(-m_constraintWeight*weight/m_expScalingFactor);
 		  weightMatrix[centroidIdx2][centroidIdx1] = Math.exp(-m_constraintWeight*weight/m_expScalingFactor);
-		} else if (metric instanceof WeightedEuclidean || metric instanceof WeightedMahalanobis) {
+		} else if (baseMetric instanceof WeightedEuclidean || baseMetric instanceof WeightedMahalanobis) {
 		  if (useMultipleMetrics) {  // centroidIdx1 == centroidIdx2
 		    double maxDistance = metrics[centroidIdx1].distance(m_clusterer.m_maxCLPoints[centroidIdx1][0],
 									m_clusterer.m_maxCLPoints[centroidIdx1][1]);
@@ -380,26 +380,21 @@ public class RMNAssigner extends MPCKMeansAssigner {
 	  numDiff++;
 	  
 	  // count number of constraint violations for this point
-	  HashMap instanceConstraintHash = m_clusterer.getInstanceConstraintsHash();
+	  ConstraintGraph graph = m_clusterer.getConstraintGraph();
 	  int numViolated = 0;
 	  int numTotal = 0; 
-	  Object list =  instanceConstraintHash.get(new Integer(i));
-	  if (list != null) {   // there are constraints associated with this instance
-	    ArrayList constraintList = (ArrayList) list;
-	    numTotal = constraintList.size();
-	    for (int j = 0; j < constraintList.size(); j++) {
-	      InstancePair pair = (InstancePair) constraintList.get(j);
-	      int firstIdx = pair.first;
-	      int secondIdx = pair.second;
-	      
-	      int centroidIdx = (firstIdx == i) ? clusterAssignments[firstIdx] : clusterAssignments[secondIdx];
-	      int otherIdx = (firstIdx == i) ? clusterAssignments[secondIdx] : clusterAssignments[firstIdx];
+	  if (graph != null && graph.hasConstraints(i)) {   // there are constraints associated with this instance
+	    numTotal = graph.degree(i);
+	    for (int j = graph.start(i); j < graph.end(i); j++) {
+	      int linkType = graph.linkType(j);
+	      int centroidIdx = clusterAssignments[i];
+	      int otherIdx = clusterAssignments[graph.neighbour(j)];
 	      
 	      // check whether the constraint is violated
 	      if (otherIdx != -1 && otherIdx < numClusters) { 
-		if (otherIdx != centroidIdx && pair.linkType == InstancePair.MUST_LINK) { 
+		if (otherIdx != centroidIdx && linkType == InstancePair.MUST_LINK) { 
 		  numViolated++;
-		} else if (otherIdx == centroidIdx && pair.linkType == InstancePair.CANNOT_LINK) { 
+		} else if (otherIdx == centroidIdx && linkType == InstancePair.CANNOT_LINK) { 
 		  numViolated++;
 		}
 	      }
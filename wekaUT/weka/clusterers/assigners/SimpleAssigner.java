@@ -55,20 +55,7 @@ public class SimpleAssigner extends MPCKMeansAssigner {
    *  @return the number of points that changed assignment
    */
   public int assign() throws Exception {
-    int moved = 0;
-    Instances instances = m_clusterer.getInstances();
-    int numInstances = instances.numInstances();
-
-    for (int i=0; i < numInstances; i++) {
-      Instance inst = instances.instance(i);
-      try { 	// Update number of points moved
-	//	System.out.println("Current cluster assignment of " + i + " = " + m_clusterer.getClusterAssignments()[i]);
-	moved += m_clusterer.assignInstanceToClusterWithConstraints(i);
-      } catch (Exception e) {
-	System.out.println("Could not assign instance: " + i + " with current assignment: " + m_clusterer.getClusterAssignments()[i] + ". Exception: " + e);
-	e.printStackTrace();
-      }
-    }
+    int moved = assignInstances(false);
 
     if (m_MovePointsTillAssignmentStabilizes) {
       int newMoved = -1;
@@ -76,9 +63,7 @@ public class SimpleAssigner extends MPCKMeansAssigner {
 	newMoved = 0;
 
 	m_clusterer.resetObjective();
-	for (int i = 0; i < numInstances; i++) {
-	  newMoved += m_clusterer.assignInstanceToClusterWithConstraints(i);
-	}
+	newMoved = assignInstances(true);
 	if (newMoved > 0) {
 	  System.out.println(newMoved + " points moved in t=" + t);
 	} else {
@@ -90,6 +75,33 @@ public class SimpleAssigner extends MPCKMeansAssigner {
     return moved;
   }
 
+  /** Assigns all instances once, in order
+   *  @param failOnError if false, instances that can't be assigned are
+   *  reported and skipped, otherwise the exception is passed on
+   *  @return the number of points that changed assignment
+   */
+  protected int assignInstances(boolean failOnError) throws Exception {
+    int moved = 0;
+    Instances instances = m_clusterer.getInstances();
+    int numInstances = instances.numInstances();
+
+    for (int i=0; i < numInstances; i++) {
+      if (failOnError) {
+	moved += m_clusterer.assignInstanceToClusterWithConstraints(i);
+	continue;
+      }
+      try { 	// Update number of points moved
+	//	System.out.println("Current cluster assignment of " + i + " = " + m_clusterer.getClusterAssignments()[i]);
+	moved += m_clusterer.assignInstanceToClusterWithConstraints(i);
+      } catch (Exception e) {
+	System.out.println("Could not assign instance: " + i + " with current assignment: " + m_clusterer.getClusterAssignments()[i] + ". Exception: " + e);
+	e.printStackTrace();
+      }
+    }
+
+    return moved;
+  }
+
   /**
    * Get/Set m_MovePointsTillAssignmentStabilizes
    * @param b truth value
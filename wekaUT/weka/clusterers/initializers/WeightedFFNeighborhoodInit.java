@@ -32,20 +32,9 @@ import  weka.core.metrics.*;
 import  weka.clusterers.*;
 
 public class WeightedFFNeighborhoodInit extends MPCKMeansInitializer {
-  /** holds the ([instance pair] -> [type of constraint]) mapping,
-      where the hashed value stores the type of link but the instance
-      pair does not hold the type of constraint - it holds (instanceIdx1,
-      instanceIdx2, DONT_CARE_LINK). This is done to make lookup easier
-      in future 
-  */
-  protected HashMap m_ConstraintsHash;
-
-  /** stores the ([instanceIdx] -> [ArrayList of constraints])
-      mapping, where the arraylist contains the constraints in which
-      instanceIdx is involved. Note that the instance pairs stored in
-      the Arraylist have the actual link type.  
-  */
-  protected HashMap m_instanceConstraintHash; 
+  /** holds the constraints of the clusterer; the inferred ones are
+      added to it */
+  protected ConstraintGraph m_ConstraintGraph;
 
   /** holds the points involved in the constraints */
   protected HashSet m_SeedHash;
@@ -126,8 +115,7 @@ public class WeightedFFNeighborhoodInit extends MPCKMeansInitializer {
     System.out.println("Num clusters = " + m_numClusters);
     m_Instances = m_clusterer.getInstances();
     m_TotalTrainWithLabels = m_clusterer.getTotalTrainWithLabels();
-    m_ConstraintsHash = m_clusterer.getConstraintsHash();
-    m_instanceConstraintHash = m_clusterer.getInstanceConstraintsHash();
+    m_ConstraintGraph = m_clusterer.getConstraintGraph();
     m_SeedHash = m_clusterer.getSeedHash();
     m_Seedable = m_clusterer.getSeedable();
     m_metric = m_clusterer.getMetric();
@@ -153,30 +141,23 @@ public class WeightedFFNeighborhoodInit extends MPCKMeansInitializer {
       m_ClusterAssignments[i] = -1;
     }
 
-    if (m_ConstraintsHash != null) {
-      Set pointPairs = (Set) m_ConstraintsHash.keySet(); 
-      Iterator pairItr = pointPairs.iterator();
+    if (m_ConstraintGraph != null) {
       System.out.println("In non-active init");
       
-      // iterate over the pairs in ConstraintHash
-      while( pairItr.hasNext() ){
-	InstancePair pair = (InstancePair) pairItr.next();
-	int linkType = ((Integer) m_ConstraintsHash.get(pair)).intValue();
-	if (m_verbose)
-	  System.out.println(pair + ": type = " + linkType);
-	if( linkType == InstancePair.MUST_LINK ){ // mainly concerned with MUST-LINK
-	  if (m_AdjacencyList[pair.first] == null) {
-	    m_AdjacencyList[pair.first] = new HashSet();
-	  }
-	  if (!m_AdjacencyList[pair.first].contains(new Integer(pair.second))) {
-	    m_AdjacencyList[pair.first].add(new Integer(pair.second));
-	  }
-	  
-	  if (m_AdjacencyList[pair.second] == null) {
-	    m_AdjacencyList[pair.second] = new HashSet();
-	  }
-	  if (!m_AdjacencyList[pair.second].contains(new Integer(pair.first))) {
-	    m_AdjacencyList[pair.second].add(new Integer(pair.first));
+      // go through the constraints of each instance
+      for (int first = 0; first < m_ConstraintGraph.numInstances(); first++) {
+	for (int e = m_ConstraintGraph.start(first); e < m_ConstraintGraph.end(first); e++) {
+	  int second = m_ConstraintGraph.neighbour(e);
+	  int linkType = m_ConstraintGraph.linkType(e);
+	  if (m_verbose && first < second)
+	    System.out.println("(" + first + "," + second + "): type = " + linkType);
+	  if( linkType == InstancePair.MUST_LINK ){ // mainly concerned with MUST-LINK
+	    if (m_AdjacencyList[first] == null) {
+	      m_AdjacencyList[first] = new HashSet();
+	    }
+	    if (!m_AdjacencyList[first].contains(new Integer(second))) {
+	      m_AdjacencyList[first].add(new Integer(second));
+	    }
 	  }
 	}
       }
@@ -186,18 +167,20 @@ public class WeightedFFNeighborhoodInit extends MPCKMeansInitializer {
     }
     
     // print out cluster assignments right here!!
-    if (m_ConstraintsHash.size() > 0) { 
-      if (m_metric instanceof BarHillelMetric) {
+    if (m_ConstraintGraph != null && m_ConstraintGraph.numConstraints() > 0) { 
+      Metric metric = CachingMetric.unwrap(m_metric);
+      if (metric instanceof BarHillelMetric) {
 	System.out.println("Starting building BarHillel metric ...\n\n");
-	((BarHillelMetric) m_metric).buildAttributeMatrix(m_Instances, m_ClusterAssignments);
+	((BarHillelMetric) metric).buildAttributeMatrix(m_Instances, m_ClusterAssignments);
 	System.out.println("Finished building BarHillel metric!!\n\n");
-      } else if (m_metric instanceof XingMetric) {
-	((XingMetric) m_metric).buildAttributeMatrix(m_Instances, m_ConstraintsHash);
-      } else if (m_metric instanceof BarHillelMetricMatlab) {
+      } else if (metric instanceof XingMetric) {
+	((XingMetric) metric).buildAttributeMatrix(m_Instances, m_ConstraintGraph);
+      } else if (metric instanceof BarHillelMetricMatlab) {
 	System.out.println("Starting building BarHillelMatlab metric ...\n\n");
-	((BarHillelMetricMatlab) m_metric).buildAttributeMatrix(m_Instances, m_ClusterAssignments);
+	((BarHillelMetricMatlab) metric).buildAttributeMatrix(m_Instances, m_ClusterAssignments);
 	System.out.println("Finished building BarHillelMatlab metric!!\n\n");
       }
+      CachingMetric.metricChanged(m_metric);
     }
     
     if (!m_Seedable) { // don't perform any seeding, initialize from random
@@ -516,8 +499,8 @@ public class WeightedFFNeighborhoodInit extends MPCKMeansInitializer {
 	      }
 	    } else {
 	      double dist = 0; 
-	      if (m_metric instanceof KL) {
-		dist = ((KL)m_metric).distanceJS(inst, pointInSet) * Math.sqrt(pointInSet.weight() * inst.weight());
+	      if (CachingMetric.unwrap(m_metric) instanceof KL) {
+		dist = ((KL) CachingMetric.unwrap(m_metric)).distanceJS(inst, pointInSet) * Math.sqrt(pointInSet.weight() * inst.weight());
 	      } else {
 		dist = m_metric.distance(inst, pointInSet) * Math.sqrt(pointInSet.weight() * inst.weight());
 	      } 
@@ -579,184 +562,38 @@ public class WeightedFFNeighborhoodInit extends MPCKMeansInitializer {
   }
 
 
-  /** adding other inferred ML and CL links to m_ConstraintsHash, from
+  /** adding other inferred ML and CL links to the constraint graph, from
    *   m_NeighborSets 
    */
   protected void addMLAndCLTransitiveClosure(int[] indices) throws Exception {
-    // add all ML links within clusters
-    if (m_verbose) {
-      for (int j=0; j<m_NumCurrentClusters; j++) {
-	int i = j;
-	if (indices != null) {
-	  i = indices[j];
-	}
-	System.out.println("Neighborhood list " + j + " is:");
-	System.out.println(m_NeighborSets[i]);
-      }
-    }
-
+    // the neighborhoods in the order given by indices
+    HashSet[] neighborhoods = new HashSet[m_NumCurrentClusters];
     for (int j=0; j<m_NumCurrentClusters; j++) {
       int i = j;
       if (indices != null) {
 	i = indices[j];
       }
-      if (m_NeighborSets[i] != null) {
-	Iterator iter1 = m_NeighborSets[i].iterator();
-	while (iter1.hasNext()) {
-	  int first = ((Integer) iter1.next()).intValue();
-	  Iterator iter2 = m_NeighborSets[i].iterator();
-	  while (iter2.hasNext()) {
-	    int second = ((Integer) iter2.next()).intValue();
-	    if (first < second) {
-	      InstancePair pair = new InstancePair(first, second, InstancePair.DONT_CARE_LINK);
-	      if (!m_ConstraintsHash.containsKey(pair)) {
-		m_ConstraintsHash.put(pair, new Integer(InstancePair.MUST_LINK));
-		if (m_verbose) {
-		  System.out.println("Adding inferred ML (" + pair.first +","+pair.second+")");
-		}
-		
-		// hash the constraints for the instances involved
-		Integer firstInt = new Integer(first);
-		Integer secondInt = new Integer(second);
-		InstancePair pairML = new InstancePair(first, second, InstancePair.MUST_LINK);
-
-		Object constraintList1 = m_instanceConstraintHash.get(firstInt);
-		if (constraintList1 == null) {
-		  ArrayList constraintList = new ArrayList();
-		  constraintList.add(pairML);
-		  m_instanceConstraintHash.put(firstInt, constraintList);
-		} else {
-		  ((ArrayList)constraintList1).add(pairML);
-		}
-		Object constraintList2 = m_instanceConstraintHash.get(secondInt);
-		if (constraintList2 == null) {
-		  ArrayList constraintList = new ArrayList();
-		  constraintList.add(pairML);
-		  m_instanceConstraintHash.put(secondInt, constraintList);
-		} else {
-		  ((ArrayList)constraintList2).add(pairML);
-		}
-		
-		if (m_verbose) {
-		  System.out.println("Adding inferred ML link: " + pair);
-		}
-		if (!m_SeedHash.contains(new Integer(first))) {
-		  m_SeedHash.add(new Integer(first));
-		}
-		if (!m_SeedHash.contains(new Integer(second))) {
-		  m_SeedHash.add(new Integer(second));
-		}
-	      }
-	    }
-	  }
-	}
+      neighborhoods[j] = m_NeighborSets[i];
+      if (m_verbose) {
+	System.out.println("Neighborhood list " + j + " is:");
+	System.out.println(m_NeighborSets[i]);
       }
     }
 
-    // add all CL links between clusters
-    for (int ii=0; ii<m_NumCurrentClusters; ii++) {
-      int i = ii;
-      if (indices != null) {
-	i = indices[ii];
+    ArrayList inferred = m_ConstraintGraph.addTransitiveClosure(neighborhoods);
+    for (int i = 0; i < inferred.size(); i++) {
+      InstancePair pair = (InstancePair) inferred.get(i);
+      if (m_verbose) {
+	System.out.println("Adding inferred " + ((pair.linkType == InstancePair.MUST_LINK) ? "ML" : "CL")
+			   + " (" + pair.first +","+pair.second+")");
       }
-      if (m_NeighborSets[i] != null) {
-	for (int jj=ii+1; jj<m_NumCurrentClusters; jj++) {
-	  int j = jj;
-	  if (indices != null) {
-	    j = indices[jj];
-	  }
-	  // check if there is at least one CL between neighborhoods ii & jj
-	  boolean existsCL = false;
-
-	  Iterator iter1 = m_NeighborSets[i].iterator();	
-	  while (iter1.hasNext()) {
-	    int index1 = ((Integer) iter1.next()).intValue();
-	    if (m_NeighborSets[j] != null) {
-	      Iterator iter2 = m_NeighborSets[j].iterator();
-	      while (iter2.hasNext()) {
-		int index2 = ((Integer) iter2.next()).intValue();
-		int first = (index1 < index2)? index1:index2;
-		int second = (index1 >= index2)? index1:index2;
-		if (first == second) {
-		  throw new Exception(" Same instance " + first + " cannot be in cluster: " + i + " and cluster " + j);
-		}
-		else if (first < second) {
-		  InstancePair pair = new InstancePair(first, second, InstancePair.DONT_CARE_LINK);
-		  if (m_ConstraintsHash.containsKey(pair)) {
-		    // found one CL between the neighborhoods		    
-		    existsCL = true;
-		    break; // out of inner while
-		  }
-		}
-	      }
-	    }
-	    if (existsCL) {
-	      break; // out of outer while
-	    }
-	  }
-
-	  // now add the inferred CLs
-	  if (existsCL) {
-	    iter1 = m_NeighborSets[i].iterator();	
-	    while (iter1.hasNext()) {
-	      int index1 = ((Integer) iter1.next()).intValue();
-	      if (m_NeighborSets[j] != null) {
-		Iterator iter2 = m_NeighborSets[j].iterator();
-		while (iter2.hasNext()) {
-		  int index2 = ((Integer) iter2.next()).intValue();
-		  int first = (index1 < index2)? index1:index2;
-		  int second = (index1 >= index2)? index1:index2;
-		  if (first == second) {
-		    throw new Exception(" Same instance " + first + " cannot be in cluster: " + i + " and cluster " + j);
-		  }
-		  else if (first < second) {  // add new constraint
-		    InstancePair pair = new InstancePair(first, second, InstancePair.DONT_CARE_LINK);
-		    if (!m_ConstraintsHash.containsKey(pair)) {
-		      m_ConstraintsHash.put(pair, new Integer(InstancePair.CANNOT_LINK));
-		      if (m_verbose) {
-			System.out.println("Adding inferred CL (" + pair.first +","+pair.second+")");
-		      }
-
-		      // hash the constraints for the instances involved
-		      Integer firstInt = new Integer(first);
-		      Integer secondInt = new Integer(second);
-		      InstancePair pairCL = new InstancePair(first, second, InstancePair.CANNOT_LINK);
-		      Object constraintList1 = m_instanceConstraintHash.get(firstInt);
-		      if (constraintList1 == null) {
-			ArrayList constraintList = new ArrayList();
-			constraintList.add(pairCL);
-			m_instanceConstraintHash.put(firstInt, constraintList);
-		      } else {
-			((ArrayList)constraintList1).add(pairCL);
-		      }
-		      Object constraintList2 = m_instanceConstraintHash.get(secondInt);
-		      if (constraintList2 == null) {
-			ArrayList constraintList = new ArrayList();
-			constraintList.add(pairCL);
-			m_instanceConstraintHash.put(secondInt, constraintList);
-		      } else {
-			((ArrayList)constraintList2).add(pairCL);
-		      }
-		    
-		      if (m_verbose) {
-			System.out.println("Adding inferred CL link: " + pair);
-		      }
-		      if (!m_SeedHash.contains(new Integer(first))) {
-			m_SeedHash.add(new Integer(first));
-		      }
-		      if (!m_SeedHash.contains(new Integer(second))) {
-			m_SeedHash.add(new Integer(second));
-		      }
-		    }
-		  }
-		}
-	      }
-	    }
-	  }
-	}
+      if (!m_SeedHash.contains(new Integer(pair.first))) {
+	m_SeedHash.add(new Integer(pair.first));
+      }
+      if (!m_SeedHash.contains(new Integer(pair.second))) {
+	m_SeedHash.add(new Integer(pair.second));
       }
     }
-    m_clusterer.setInstanceConstraintsHash(m_instanceConstraintHash);
   }
 
 
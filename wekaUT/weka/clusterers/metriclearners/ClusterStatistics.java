@@ -0,0 +1,468 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ClusterStatistics.java
+ *    Per-cluster sufficient statistics for the MPCKMeans metric learners
+ *
+ */
+
+package weka.clusterers.metriclearners;
+
+import java.io.Serializable;
+
+import weka.core.*;
+import weka.core.metrics.*;
+import weka.clusterers.MPCKMeans;
+import weka.clusterers.ConstraintGraph;
+import weka.clusterers.InstancePair;
+
+/**
+ * Sufficient statistics of the points and the violated constraints of
+ * every cluster of MPCKMeans, from which the metric learners compute their
+ * updates without going through all instances.<p>
+ *
+ * The scatter of a cluster around its centroid c follows from the number
+ * of points n, the sums of the values and one more per-learner sum:
+ * <ul>
+ * <li> SQUARES (weighted Euclidean): the sums of squares,
+ *      sum (x - c)^2 = sum x^2 - 2 c sum x + n c^2 </li>
+ * <li> OUTER_PRODUCTS (Mahalanobis): the sum of the outer products,
+ *      sum (x - c)(x - c)' = sum xx' - c (sum x)' - (sum x) c' + n cc' </li>
+ * <li> XLOGX (KL with I-divergence): the sums of x log x and the numbers
+ *      of non-zero values </li>
+ * </ul>
+ * The violated constraints contribute the pair differences of the learner
+ * (the squared differences, the outer products of the differences or the
+ * Jensen-Shannon components), summed separately for must-links and
+ * cannot-links, and the number of violated cannot-links, each counted from
+ * both of its points as the learners do.<p>
+ *
+ * The statistics remember the assignments they were computed for.
+ * {@link #update()} compares them with the current assignments of the
+ * clusterer and moves only the points that changed cluster, together with
+ * their constraints, so keeping the statistics up to date costs time
+ * proportional to the number of moved points.  When a large part of the
+ * points moved they are recomputed from scratch, which also discards the
+ * rounding errors accumulated by the updates.
+ *
+ * @version $Revision: 1.1 $ */
+
+public class ClusterStatistics implements Serializable {
+
+  /** Statistics for WeightedEuclidean */
+  public static final int SQUARES = 0;
+
+  /** Statistics for WeightedMahalanobis */
+  public static final int OUTER_PRODUCTS = 1;
+
+  /** Statistics for KL */
+  public static final int XLOGX = 2;
+
+  /** Recompute from scratch when more than this fraction of points moved */
+  protected static final double REBUILD_FRACTION = 0.25;
+
+  /** The kind of statistics kept */
+  protected int m_kind;
+
+  /** The clusterer */
+  protected MPCKMeans m_kmeans;
+
+  /** The instances being clustered */
+  protected Instances m_instances;
+
+  /** The constraints, null if there are none */
+  protected ConstraintGraph m_constraintGraph;
+
+  /** The number of attributes */
+  protected int m_numAttributes;
+
+  /** The number of components of the pair differences */
+  protected int m_length;
+
+  /** The number of clusters */
+  protected int m_numClusters;
+
+  /** The assignments the statistics were computed for */
+  protected int[] m_assignments;
+
+  /** The number of points of each cluster */
+  protected int[] m_count;
+
+  /** The sums of the values of each cluster */
+  protected double[][] m_sum;
+
+  /** The sums of squares (SQUARES) or outer products (OUTER_PRODUCTS)
+      or of x log x (XLOGX) of each cluster */
+  protected double[][] m_sumSecond;
+
+  /** The numbers of non-zero values of each cluster (XLOGX) */
+  protected int[][] m_nonZero;
+
+  /** The sums of the pair differences of violated must-links */
+  protected double[][] m_mustLinkSum;
+
+  /** The sums of the pair differences of violated cannot-links */
+  protected double[][] m_cannotLinkSum;
+
+  /** The number of violated cannot-links of each cluster */
+  protected int[] m_cannotLinkCount;
+
+  /** The number of violated constraints of each cluster */
+  protected int[] m_violated;
+
+  /** The number of points moved by the last update */
+  protected int m_lastMoved;
+
+  /**
+   * Computes the statistics for the current assignments of the clusterer
+   * @param kmeans the clusterer
+   * @param kind SQUARES, OUTER_PRODUCTS or XLOGX
+   * @exception Exception if the metric does not fit the kind of statistics
+   */
+  public ClusterStatistics(MPCKMeans kmeans, int kind) throws Exception {
+    if (kind == XLOGX && !(CachingMetric.unwrap(kmeans.getMetric()) instanceof KL)) {
+      throw new Exception("XLOGX statistics need the KL metric");
+    }
+    m_kmeans = kmeans;
+    m_kind = kind;
+    m_instances = kmeans.getInstances();
+    m_constraintGraph = kmeans.getConstraintGraph();
+    m_numAttributes = m_instances.numAttributes();
+    m_numClusters = kmeans.getNumClusters();
+    m_length = (kind == OUTER_PRODUCTS) ? m_numAttributes * m_numAttributes : m_numAttributes;
+    rebuild();
+  }
+
+  /** Returns the kind of statistics kept */
+  public int getKind() {
+    return m_kind;
+  }
+
+  /** Returns the number of points moved by the last update, -1 if the
+      statistics were recomputed */
+  public int getLastMoved() {
+    return m_lastMoved;
+  }
+
+  /** Computes all statistics from the current assignments */
+  protected void rebuild() throws Exception {
+    int secondLength = (m_kind == OUTER_PRODUCTS) ? m_length : m_numAttributes;
+    m_count = new int[m_numClusters];
+    m_sum = new double[m_numClusters][m_numAttributes];
+    m_sumSecond = new double[m_numClusters][secondLength];
+    m_nonZero = (m_kind == XLOGX) ? new int[m_numClusters][m_numAttributes] : null;
+    m_mustLinkSum = new double[m_numClusters][m_length];
+    m_cannotLinkSum = new double[m_numClusters][m_length];
+    m_cannotLinkCount = new int[m_numClusters];
+    m_violated = new int[m_numClusters];
+
+    m_assignments = (int[]) m_kmeans.getClusterAssignments().clone();
+    for (int instIdx = 0; instIdx < m_assignments.length; instIdx++) {
+      addPoint(instIdx, m_assignments[instIdx], 1);
+    }
+    if (m_constraintGraph != null) {
+      for (int instIdx = 0; instIdx < m_assignments.length; instIdx++) {
+	for (int e = m_constraintGraph.start(instIdx); e < m_constraintGraph.end(instIdx); e++) {
+	  int neighbour = m_constraintGraph.neighbour(e);
+	  if (neighbour > instIdx) {
+	    addConstraint(instIdx, neighbour, m_constraintGraph.linkType(e),
+			  m_assignments[instIdx], m_assignments[neighbour], 1);
+	  }
+	}
+      }
+    }
+    m_lastMoved = -1;
+  }
+
+  /**
+   * Brings the statistics up to date with the current assignments of the
+   * clusterer, moving the points that changed cluster
+   * @exception Exception if a pair difference can't be computed
+   */
+  public void update() throws Exception {
+    int[] current = m_kmeans.getClusterAssignments();
+    int numMoved = 0;
+    for (int instIdx = 0; instIdx < current.length; instIdx++) {
+      if (current[instIdx] != m_assignments[instIdx]) {
+	numMoved++;
+      }
+    }
+    if (numMoved == 0) {
+      m_lastMoved = 0;
+      return;
+    }
+    if (numMoved > REBUILD_FRACTION * current.length) {
+      rebuild();
+      return;
+    }
+
+    int[] moved = new int[numMoved];
+    boolean[] isMoved = new boolean[current.length];
+    numMoved = 0;
+    for (int instIdx = 0; instIdx < current.length; instIdx++) {
+      if (current[instIdx] != m_assignments[instIdx]) {
+	moved[numMoved++] = instIdx;
+	isMoved[instIdx] = true;
+      }
+    }
+
+    for (int i = 0; i < moved.length; i++) {
+      int instIdx = moved[i];
+      addPoint(instIdx, m_assignments[instIdx], -1);
+      addPoint(instIdx, current[instIdx], 1);
+    }
+    if (m_constraintGraph != null) {
+      for (int i = 0; i < moved.length; i++) {
+	int instIdx = moved[i];
+	for (int e = m_constraintGraph.start(instIdx); e < m_constraintGraph.end(instIdx); e++) {
+	  int neighbour = m_constraintGraph.neighbour(e);
+	  // a constraint between two moved points is handled once
+	  if (isMoved[neighbour] && neighbour < instIdx) {
+	    continue;
+	  }
+	  int linkType = m_constraintGraph.linkType(e);
+	  addConstraint(instIdx, neighbour, linkType,
+			m_assignments[instIdx], m_assignments[neighbour], -1);
+	  addConstraint(instIdx, neighbour, linkType,
+			current[instIdx], current[neighbour], 1);
+	}
+      }
+    }
+    for (int i = 0; i < moved.length; i++) {
+      m_assignments[moved[i]] = current[moved[i]];
+    }
+    m_lastMoved = numMoved;
+  }
+
+  /**
+   * Adds a point to the sums of a cluster, or removes it
+   * @param instIdx the point
+   * @param cluster the cluster, nothing happens if it is -1
+   * @param sign 1 to add, -1 to remove
+   */
+  protected void addPoint(int instIdx, int cluster, int sign) {
+    if (cluster < 0) {
+      return;
+    }
+    m_count[cluster] += sign;
+    Instance instance = m_instances.instance(instIdx);
+    double[] sum = m_sum[cluster];
+    double[] second = m_sumSecond[cluster];
+    int numValues = instance.numValues();
+    for (int v = 0; v < numValues; v++) {
+      int attr = instance.index(v);
+      double x = instance.valueSparse(v);
+      if (x == 0) {
+	continue;
+      }
+      sum[attr] += sign * x;
+      switch (m_kind) {
+      case SQUARES:
+	second[attr] += sign * x * x;
+	break;
+      case XLOGX:
+	second[attr] += sign * x * Math.log(x);
+	m_nonZero[cluster][attr] += sign;
+	break;
+      case OUTER_PRODUCTS:
+	for (int w = 0; w < numValues; w++) {
+	  second[attr * m_numAttributes + instance.index(w)] += sign * x * instance.valueSparse(w);
+	}
+	break;
+      }
+    }
+  }
+
+  /**
+   * Adds the contribution of a constraint to the clusters of its points,
+   * or removes it
+   * @param first the first point
+   * @param second the second point
+   * @param linkType the type of the constraint
+   * @param firstCluster the cluster of the first point
+   * @param secondCluster the cluster of the second point
+   * @param sign 1 to add, -1 to remove
+   * @exception Exception if the pair difference can't be computed
+   */
+  protected void addConstraint(int first, int second, int linkType,
+			       int firstCluster, int secondCluster, int sign) throws Exception {
+    if (firstCluster < 0 || secondCluster < 0) {
+      return;
+    }
+    if (linkType == InstancePair.MUST_LINK && firstCluster != secondCluster) {
+      double[] diff = pairDifference(first, second);
+      // counted once from each point, in the cluster of that point
+      for (int k = 0; k < m_length; k++) {
+	m_mustLinkSum[firstCluster][k] += sign * diff[k];
+	m_mustLinkSum[secondCluster][k] += sign * diff[k];
+      }
+      m_violated[firstCluster] += sign;
+      m_violated[secondCluster] += sign;
+    } else if (linkType == InstancePair.CANNOT_LINK && firstCluster == secondCluster) {
+      double[] diff = pairDifference(first, second);
+      for (int k = 0; k < m_length; k++) {
+	m_cannotLinkSum[firstCluster][k] += 2 * sign * diff[k];
+      }
+      m_cannotLinkCount[firstCluster] += 2 * sign;
+      m_violated[firstCluster] += 2 * sign;
+    }
+  }
+
+  /**
+   * Returns the difference of a constrained pair as the learner computes it
+   * @param first the first point
+   * @param second the second point
+   */
+  protected double[] pairDifference(int first, int second) throws Exception {
+    Instance instance1 = m_instances.instance(Math.min(first, second));
+    Instance instance2 = m_instances.instance(Math.max(first, second));
+    double[] diff = new double[m_length];
+    switch (m_kind) {
+    case SQUARES: {
+      Instance diffInstance = m_kmeans.getMetric().createDiffInstance(instance1, instance2);
+      for (int attr = 0; attr < m_numAttributes; attr++) {
+	diff[attr] = diffInstance.value(attr);
+      }
+      break;
+    }
+    case XLOGX: {
+      Instance diffInstance = ((KL) CachingMetric.unwrap(m_kmeans.getMetric())).createDiffInstanceJS(instance1, instance2);
+      for (int attr = 0; attr < m_numAttributes; attr++) {
+	diff[attr] = diffInstance.value(attr);
+      }
+      break;
+    }
+    case OUTER_PRODUCTS: {
+      double[] d = new double[m_numAttributes];
+      for (int attr = 0; attr < m_numAttributes; attr++) {
+	d[attr] = instance1.value(attr) - instance2.value(attr);
+      }
+      for (int i = 0; i < m_numAttributes; i++) {
+	for (int j = 0; j < m_numAttributes; j++) {
+	  diff[i * m_numAttributes + j] = d[i] * d[j];
+	}
+      }
+      break;
+    }
+    }
+    return diff;
+  }
+
+  /**
+   * Returns whether the scatter around a centroid can be computed from the
+   * statistics.  The KL components depend on whether the instances and the
+   * centroid are sparse, only the cases where both are sparse or both are
+   * not are covered.
+   * @param centroid the centroid
+   */
+  public boolean supports(Instance centroid) {
+    if (m_kind != XLOGX || m_instances.numInstances() == 0) {
+      return true;
+    }
+    return (centroid instanceof SparseInstance)
+      == (m_instances.instance(0) instanceof SparseInstance);
+  }
+
+  /** Returns the number of points of a cluster */
+  public int count(int cluster) {
+    return m_count[cluster];
+  }
+
+  /** Returns the number of violated constraints of a cluster, each
+      counted from both of its points */
+  public int numViolated(int cluster) {
+    return m_violated[cluster];
+  }
+
+  /**
+   * Adds the scatter of a cluster around a centroid to the given sums:
+   * per attribute the sum of (x - c)^2 for SQUARES, the sum of the
+   * I-divergence components for XLOGX and the entries of the sum of
+   * (x - c)(x - c)' row by row for OUTER_PRODUCTS
+   * @param cluster the cluster
+   * @param centroid the centroid
+   * @param sums the sums to add to
+   */
+  public void addScatter(int cluster, Instance centroid, double[] sums) {
+    int n = m_count[cluster];
+    double[] sum = m_sum[cluster];
+    double[] second = m_sumSecond[cluster];
+    switch (m_kind) {
+    case SQUARES:
+      for (int attr = 0; attr < m_numAttributes; attr++) {
+	double c = centroid.value(attr);
+	sums[attr] += second[attr] - 2 * c * sum[attr] + n * c * c;
+      }
+      break;
+    case XLOGX: {
+      // the components of KL.createDiffInstance with I-divergence
+      boolean sparse = centroid instanceof SparseInstance;
+      double log2 = Math.log(2);
+      for (int attr = 0; attr < m_numAttributes; attr++) {
+	double c = centroid.value(attr);
+	if (c != 0) {
+	  sums[attr] += (second[attr] - Math.log(c) * sum[attr]) / log2 + n * c - sum[attr];
+	} else if (sparse) {
+	  sums[attr] -= sum[attr];
+	} else if (m_nonZero[cluster][attr] > 0) {
+	  sums[attr] += Double.MAX_VALUE * m_nonZero[cluster][attr];
+	}
+      }
+      break;
+    }
+    case OUTER_PRODUCTS: {
+      double[] c = new double[m_numAttributes];
+      for (int attr = 0; attr < m_numAttributes; attr++) {
+	c[attr] = centroid.value(attr);
+      }
+      for (int i = 0; i < m_numAttributes; i++) {
+	for (int j = 0; j < m_numAttributes; j++) {
+	  sums[i * m_numAttributes + j] += second[i * m_numAttributes + j]
+	    - c[i] * sum[j] - sum[i] * c[j] + n * c[i] * c[j];
+	}
+      }
+      break;
+    }
+    }
+  }
+
+  /**
+   * Adds the terms of the violated constraints of a cluster to the given
+   * sums: mustLinkScale times the must-link differences, minus
+   * cannotLinkScale times the cannot-link differences, plus
+   * cannotLinkScale times the maximum cannot-link difference for every
+   * violated cannot-link
+   * @param cluster the cluster
+   * @param mustLinkScale the factor of the must-link differences
+   * @param cannotLinkScale the factor of the cannot-link differences
+   * @param maxCannotLink the maximum cannot-link difference, null if the
+   * learner does not use it
+   * @param sums the sums to add to
+   */
+  public void addConstraintTerms(int cluster, double mustLinkScale, double cannotLinkScale,
+				 double[] maxCannotLink, double[] sums) {
+    double[] mustLink = m_mustLinkSum[cluster];
+    double[] cannotLink = m_cannotLinkSum[cluster];
+    int numCannotLinks = m_cannotLinkCount[cluster];
+    for (int k = 0; k < m_length; k++) {
+      sums[k] += mustLinkScale * mustLink[k] - cannotLinkScale * cannotLink[k];
+      if (maxCannotLink != null && numCannotLinks > 0) {
+	sums[k] += cannotLinkScale * numCannotLinks * maxCannotLink[k];
+      }
+    }
+  }
+}
@@ -85,18 +85,15 @@ public class DotPGDLearner extends GDMetricLearner {
 	}
 
 	// go through violated constraints
-	Object list =  m_instanceConstraintMap.get(new Integer(instIdx));
-	if (list != null) {   // there are constraints associated with this instance
-	  ArrayList constraintList = (ArrayList) list;
-	  for (int i = 0; i < constraintList.size(); i++) {
-	    InstancePair pair = (InstancePair) constraintList.get(i);
-	    int linkType = pair.linkType;
-	    int firstIdx = pair.first;
-	    int secondIdx = pair.second;
+	if (m_constraintGraph != null) {   // go through the constraints of this instance
+	  for (int e = m_constraintGraph.start(instIdx); e < m_constraintGraph.end(instIdx); e++) {
+	    int neighbour = m_constraintGraph.neighbour(e);
+	    int linkType = m_constraintGraph.linkType(e);
+	    int firstIdx = Math.min(instIdx, neighbour);
+	    int secondIdx = Math.max(instIdx, neighbour);
 	    Instance instance1 = m_instances.instance(firstIdx);
 	    Instance instance2 = m_instances.instance(secondIdx);
-	    int otherIdx = (firstIdx == instIdx) ?
-	      m_clusterAssignments[secondIdx] : m_clusterAssignments[firstIdx];
+	    int otherIdx = m_clusterAssignments[neighbour];
 
 	    // check whether the constraint is violated
 	    if (otherIdx != -1) {  
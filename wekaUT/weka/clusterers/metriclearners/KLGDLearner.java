@@ -44,9 +44,11 @@ public class KLGDLearner extends GDMetricLearner {
   public boolean trainMetric(int clusterIdx) throws Exception {
     Init(clusterIdx);
 
-    if (((KL)m_metric).getUseIDivergence() == false) {
+    KL metric = (KL) CachingMetric.unwrap(m_metric);
+    if (metric.getUseIDivergence() == false) {
       System.out.println("Trainable KL metric, using IDvergence ...");
-      ((KL)m_metric).setUseIDivergence(true);
+      metric.setUseIDivergence(true);
+      CachingMetric.metricChanged(m_metric);
     }
 
     int numInstances = 0; 
@@ -60,76 +62,80 @@ public class KLGDLearner extends GDMetricLearner {
       regularizerComponents = InitRegularizerComponents(currentWeights); 
     }
 
-    for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
-      int assignment = m_clusterAssignments[instIdx];
-
-      // only instances assigned to this cluster are of importance
-      if (assignment == clusterIdx || clusterIdx == -1) {
-	Instance instance = m_instances.instance(instIdx);
-	numInstances++;
-	if (clusterIdx < 0) {
-	  m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
-	} 
-
-	diffInstance = m_metric.createDiffInstance(instance, m_centroid); 
-
-	// variance components
-	if (diffInstance instanceof SparseInstance) {
-	  for (int i = 0; i < diffInstance.numValues(); i++) {
-	    int idx = diffInstance.index(i);
-	    gradients[idx] += diffInstance.valueSparse(i); 
+    ClusterStatistics stats = getClusterStatistics(ClusterStatistics.XLOGX, clusterIdx);
+    if (stats != null) {
+      numInstances = accumulateStatistics(stats, clusterIdx, 0.5 * m_MLweight, 0.5 * m_CLweight,
+					  null, gradients);
+      violatedConstraints = numViolated(stats, clusterIdx);
+    } else {
+      for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
+	int assignment = m_clusterAssignments[instIdx];
+
+	// only instances assigned to this cluster are of importance
+	if (assignment == clusterIdx || clusterIdx == -1) {
+	  Instance instance = m_instances.instance(instIdx);
+	  numInstances++;
+	  if (clusterIdx < 0) {
+	    m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
 	  } 
-	} else {  // non-sparse case
-	  for (int attr=0; attr<m_numAttributes; attr++) {
-	    gradients[attr] += diffInstance.value(attr); // variance components
+
+	  diffInstance = m_metric.createDiffInstance(instance, m_centroid); 
+
+	  // variance components
+	  if (diffInstance instanceof SparseInstance) {
+	    for (int i = 0; i < diffInstance.numValues(); i++) {
+	      int idx = diffInstance.index(i);
+	      gradients[idx] += diffInstance.valueSparse(i); 
+	    } 
+	  } else {  // non-sparse case
+	    for (int attr=0; attr<m_numAttributes; attr++) {
+	      gradients[attr] += diffInstance.value(attr); // variance components
+	    }
 	  }
-	}
 
-	// go through violated constraints
-	Object list =  m_instanceConstraintMap.get(new Integer(instIdx));
-	if (list != null) {   // there are constraints associated with this instance
-	  ArrayList constraintList = (ArrayList) list;
-	  for (int i = 0; i < constraintList.size(); i++) {
-	    InstancePair pair = (InstancePair) constraintList.get(i);
-	    int linkType = pair.linkType; 
-	    int firstIdx = pair.first;
-	    int secondIdx = pair.second;
-	    Instance instance1 = m_instances.instance(firstIdx);
-	    Instance instance2 = m_instances.instance(secondIdx);
-	    int otherIdx = (firstIdx == instIdx) ? m_clusterAssignments[secondIdx]
-	      : m_clusterAssignments[firstIdx];
-
-	    // check whether the constraint is violated
-	    if (otherIdx != -1) {  
-	      if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
-		diffInstance = ((KL) m_metric).createDiffInstanceJS(instance1, instance2);
-		if (diffInstance instanceof SparseInstance) {
-		  for (int l = 0; l < diffInstance.numValues(); l++) {
-		    int idx = diffInstance.index(l);
-		    gradients[idx] += 0.5 * m_MLweight * diffInstance.valueSparse(l); 
-		  } 
-		} else {  // non-sparse case
-		  for (int attr = 0; attr < m_numAttributes; attr++) {
-		    gradients[attr] += 0.5 * m_MLweight * diffInstance.value(attr); // variance components
+	  // go through violated constraints
+	  if (m_constraintGraph != null) {   // go through the constraints of this instance
+	    for (int e = m_constraintGraph.start(instIdx); e < m_constraintGraph.end(instIdx); e++) {
+	      int neighbour = m_constraintGraph.neighbour(e);
+	      int linkType = m_constraintGraph.linkType(e);
+	      int firstIdx = Math.min(instIdx, neighbour);
+	      int secondIdx = Math.max(instIdx, neighbour);
+	      Instance instance1 = m_instances.instance(firstIdx);
+	      Instance instance2 = m_instances.instance(secondIdx);
+	      int otherIdx = m_clusterAssignments[neighbour];
+
+	      // check whether the constraint is violated
+	      if (otherIdx != -1) {  
+		if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
+		  diffInstance = metric.createDiffInstanceJS(instance1, instance2);
+		  if (diffInstance instanceof SparseInstance) {
+		    for (int l = 0; l < diffInstance.numValues(); l++) {
+		      int idx = diffInstance.index(l);
+		      gradients[idx] += 0.5 * m_MLweight * diffInstance.valueSparse(l); 
+		    } 
+		  } else {  // non-sparse case
+		    for (int attr = 0; attr < m_numAttributes; attr++) {
+		      gradients[attr] += 0.5 * m_MLweight * diffInstance.value(attr); // variance components
+		    }
 		  }
-		}
-		violatedConstraints++; 
-	      } else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK){
-		diffInstance = ((KL) m_metric).createDiffInstanceJS(instance1, instance2);
-		// Cannot link component, adjusted not to double count constraints
-		if (diffInstance instanceof SparseInstance) {
-		  for (int l = 0; l < diffInstance.numValues(); l++) {
-		    int idx = diffInstance.index(l);
-		    gradients[idx] -= 0.5 * m_CLweight * diffInstance.valueSparse(l); 
-		  } 
-		} else {  // non-sparse case
-		  for (int attr=0; attr<m_numAttributes; attr++) {
-		    gradients[attr] -= 0.5 * m_CLweight * diffInstance.value(attr); // variance components
+		  violatedConstraints++; 
+		} else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK){
+		  diffInstance = metric.createDiffInstanceJS(instance1, instance2);
+		  // Cannot link component, adjusted not to double count constraints
+		  if (diffInstance instanceof SparseInstance) {
+		    for (int l = 0; l < diffInstance.numValues(); l++) {
+		      int idx = diffInstance.index(l);
+		      gradients[idx] -= 0.5 * m_CLweight * diffInstance.valueSparse(l); 
+		    } 
+		  } else {  // non-sparse case
+		    for (int attr=0; attr<m_numAttributes; attr++) {
+		      gradients[attr] -= 0.5 * m_CLweight * diffInstance.value(attr); // variance components
+		    }
 		  }
+		  violatedConstraints++; 
 		}
-		violatedConstraints++; 
-	      }
-	    } // end while
+	      } // end while
+	    }
 	  }
 	}
       }
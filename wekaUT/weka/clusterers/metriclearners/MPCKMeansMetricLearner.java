@@ -27,6 +27,7 @@ import java.util.*;
 import weka.core.*;
 import weka.core.metrics.LearnableMetric;
 import weka.clusterers.MPCKMeans;
+import weka.clusterers.ConstraintGraph;
 
 
 /** 
@@ -50,8 +51,8 @@ public abstract class MPCKMeansMetricLearner extends  MetricLearner
   /** Cluster assignments */
   protected int[] m_clusterAssignments = null;
 
-  /** Map from instanceIdx to a list of constraints */
-  protected HashMap m_instanceConstraintMap = null;
+  /** The constraints of each instance */
+  protected ConstraintGraph m_constraintGraph = null;
 
   /** Term weights */
   protected double m_MLweight = 0;
@@ -81,7 +82,7 @@ public abstract class MPCKMeansMetricLearner extends  MetricLearner
     m_instances = m_kmeans.getInstances();
     m_numAttributes = m_instances.numAttributes();
     m_clusterAssignments = m_kmeans.getClusterAssignments();
-    m_instanceConstraintMap = m_kmeans.getInstanceConstraintsHash();
+    m_constraintGraph = m_kmeans.getConstraintGraph();
     m_MLweight = m_kmeans.getMustLinkWeight();
     m_CLweight = m_kmeans.getCannotLinkWeight();
     m_logTermWeight = m_kmeans.getLogTermWeight();
@@ -93,7 +94,7 @@ public abstract class MPCKMeansMetricLearner extends  MetricLearner
       m_centroid = m_kmeans.getClusterCentroids().instance(clusterIdx);
     }
 
-    if (m_instanceConstraintMap != null && m_instanceConstraintMap.size() > 0) {
+    if (m_constraintGraph != null && m_constraintGraph.numConstraints() > 0) {
       if (clusterIdx < 0) {
 	m_maxCLDiffInstance = m_kmeans.m_maxCLDiffInstances[0];
       } else { 
@@ -105,6 +106,65 @@ public abstract class MPCKMeansMetricLearner extends  MetricLearner
   public void resetLearner() {
   }
 
+  /** Returns the sufficient statistics kept by the clusterer if they
+      can replace going through the instances for the given cluster (or
+      all clusters if clusterIdx is -1), null otherwise */
+  protected ClusterStatistics getClusterStatistics(int kind, int clusterIdx) throws Exception {
+    ClusterStatistics stats = m_kmeans.getClusterStatistics(kind);
+    if (stats == null) {
+      return null;
+    }
+    Instances centroids = m_kmeans.getClusterCentroids();
+    for (int i = 0; i < centroids.numInstances(); i++) {
+      if ((clusterIdx < 0 || i == clusterIdx) && !stats.supports(centroids.instance(i))) {
+	return null;
+      }
+    }
+    return stats;
+  }
+
+  /** Adds the scatter and the violated constraint terms of a cluster, or
+      of all clusters if clusterIdx is -1, to the given sums and returns
+      the number of instances in the cluster(s) */
+  protected int accumulateStatistics(ClusterStatistics stats, int clusterIdx,
+				     double mustLinkScale, double cannotLinkScale,
+				     double[] maxCannotLink, double[] sums) {
+    Instances centroids = m_kmeans.getClusterCentroids();
+    int numInstances = 0;
+    for (int i = 0; i < centroids.numInstances(); i++) {
+      if (clusterIdx < 0 || i == clusterIdx) {
+	stats.addScatter(i, centroids.instance(i), sums);
+	stats.addConstraintTerms(i, mustLinkScale, cannotLinkScale, maxCannotLink, sums);
+	numInstances += stats.count(i);
+      }
+    }
+    return numInstances;
+  }
+
+  /** Returns the number of violated constraints of a cluster, or of all
+      clusters if clusterIdx is -1, counted from both of their points */
+  protected int numViolated(ClusterStatistics stats, int clusterIdx) {
+    int violated = 0;
+    for (int i = 0; i < m_kmeans.getNumClusters(); i++) {
+      if (clusterIdx < 0 || i == clusterIdx) {
+	violated += stats.numViolated(i);
+      }
+    }
+    return violated;
+  }
+
+  /** Returns the values of m_maxCLDiffInstance, null if there is none */
+  protected double[] maxCLDiffValues() {
+    if (m_maxCLDiffInstance == null) {
+      return null;
+    }
+    double[] values = new double[m_numAttributes];
+    for (int attr = 0; attr < m_numAttributes; attr++) {
+      values[attr] = m_maxCLDiffInstance.value(attr);
+    }
+    return values;
+  }
+
     /** calculates weights using Newton Raphson, to satisfy the
       positivity constraint of each attribute weight, returns learned
       attribute weights. Note: currentAttrWeights is the inverted version
@@ -56,9 +56,9 @@ public class MahalanobisLearner extends MPCKMeansMetricLearner {
     int violatedConstraints = 0;
     int numInstances = 0;
 
-    WeightedMahalanobis metric = (WeightedMahalanobis) m_metric;
+    WeightedMahalanobis metric = (WeightedMahalanobis) CachingMetric.unwrap(m_metric);
     Matrix maxMatrix = null;
-    if (m_instanceConstraintMap.size() > 0) {
+    if (m_constraintGraph != null && m_constraintGraph.numConstraints() > 0) {
       if (clusterIdx == -1) { 
 	maxMatrix = metric.createDiffMatrix(m_kmeans.m_maxCLPoints[0][0],
 					    m_kmeans.m_maxCLPoints[0][1]);
@@ -69,49 +69,59 @@ public class MahalanobisLearner extends MPCKMeansMetricLearner {
       maxMatrix = maxMatrix.times(0.5);
     }
 
-    for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
-      int assignment = m_clusterAssignments[instIdx];
-
-      // only instances assigned to this cluster are of importance
-      if (assignment == clusterIdx || clusterIdx == -1) {
-	numInstances++;
-	if (clusterIdx < 0) {
-	  m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
-	}
+    ClusterStatistics stats = getClusterStatistics(ClusterStatistics.OUTER_PRODUCTS, clusterIdx);
+    if (stats != null) {
+      double[] sums = new double[m_numAttributes * m_numAttributes];
+      double[] maxValues = null;
+      if (maxMatrix != null) {
+	// maxMatrix holds half of the difference
+	maxValues = maxMatrix.times(2).getRowPackedCopy();
+      }
+      numInstances = accumulateStatistics(stats, clusterIdx, 0.5, 0.5, maxValues, sums);
+      updateMatrix = new Matrix(sums, m_numAttributes).transpose();
+      violatedConstraints = numViolated(stats, clusterIdx);
+    } else {
+      for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
+	int assignment = m_clusterAssignments[instIdx];
+
+	// only instances assigned to this cluster are of importance
+	if (assignment == clusterIdx || clusterIdx == -1) {
+	  numInstances++;
+	  if (clusterIdx < 0) {
+	    m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
+	  }
 
-	Instance instance = m_instances.instance(instIdx); 
-	Matrix diffMatrix = metric.createDiffMatrix(instance, m_centroid); 
-	updateMatrix = updateMatrix.plus(diffMatrix);
-
-	// go through violated constraints
-	Object list =  m_instanceConstraintMap.get(new Integer(instIdx));
-	if (list != null) {   // there are constraints associated with this instance
-	  ArrayList constraintList = (ArrayList) list;
-	  for (int i = 0; i < constraintList.size(); i++) {
-	    InstancePair pair = (InstancePair) constraintList.get(i);
-	    int linkType = pair.linkType;
-	    int firstIdx = pair.first;
-	    int secondIdx = pair.second;
-	    Instance instance1 = m_instances.instance(firstIdx);
-	    Instance instance2 = m_instances.instance(secondIdx);
-	    int otherIdx = (firstIdx == instIdx) ? m_clusterAssignments[secondIdx]
-	      : m_clusterAssignments[firstIdx];
-
-	    // check whether the constraint is violated
-	    if (otherIdx != -1 ) {  
-	      if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
-		diffMatrix = metric.createDiffMatrix(instance1, instance2);
-		diffMatrix = diffMatrix.times(0.5);
-		updateMatrix = updateMatrix.plus(diffMatrix); 
-		violatedConstraints++; 
-	      } else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK) {
-		diffMatrix = metric.createDiffMatrix(instance1, instance2);
-		diffMatrix = diffMatrix.times(0.5);
-		updateMatrix = updateMatrix.plus(maxMatrix); 
-		updateMatrix = updateMatrix.minus(diffMatrix);
-		violatedConstraints++; 
-	      }
-	    } // end while
+	  Instance instance = m_instances.instance(instIdx); 
+	  Matrix diffMatrix = metric.createDiffMatrix(instance, m_centroid); 
+	  updateMatrix = updateMatrix.plus(diffMatrix);
+
+	  // go through violated constraints
+	  if (m_constraintGraph != null) {   // go through the constraints of this instance
+	    for (int e = m_constraintGraph.start(instIdx); e < m_constraintGraph.end(instIdx); e++) {
+	      int neighbour = m_constraintGraph.neighbour(e);
+	      int linkType = m_constraintGraph.linkType(e);
+	      int firstIdx = Math.min(instIdx, neighbour);
+	      int secondIdx = Math.max(instIdx, neighbour);
+	      Instance instance1 = m_instances.instance(firstIdx);
+	      Instance instance2 = m_instances.instance(secondIdx);
+	      int otherIdx = m_clusterAssignments[neighbour];
+
+	      // check whether the constraint is violated
+	      if (otherIdx != -1 ) {  
+		if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
+		  diffMatrix = metric.createDiffMatrix(instance1, instance2);
+		  diffMatrix = diffMatrix.times(0.5);
+		  updateMatrix = updateMatrix.plus(diffMatrix); 
+		  violatedConstraints++; 
+		} else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK) {
+		  diffMatrix = metric.createDiffMatrix(instance1, instance2);
+		  diffMatrix = diffMatrix.times(0.5);
+		  updateMatrix = updateMatrix.plus(maxMatrix); 
+		  updateMatrix = updateMatrix.minus(diffMatrix);
+		  violatedConstraints++; 
+		}
+	      } // end while
+	    }
 	  }
 	}
       }
@@ -202,6 +212,7 @@ public class MahalanobisLearner extends MPCKMeansMetricLearner {
 	metric.projectInstance(m_instances.instance(instIdx));
       }
     }
+    CachingMetric.metricChanged(m_metric);
     return true; 
 
   }
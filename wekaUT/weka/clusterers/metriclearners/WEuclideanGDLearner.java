@@ -56,23 +56,34 @@ public class WEuclideanGDLearner extends GDMetricLearner {
       regularizerComponents = InitRegularizerComponents(currentWeights); 
     }
     
-    for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
-      int assignment = m_clusterAssignments[instIdx];
-
-      // only instances assigned to this cluster are of importance
-      if (assignment == clusterIdx || clusterIdx == -1) {
-	Instance instance = m_instances.instance(instIdx); 
-	numInstances++;
-
-	if (clusterIdx < 0) {
-	  m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
+    ClusterStatistics stats = getClusterStatistics(ClusterStatistics.SQUARES, clusterIdx);
+    if (stats != null) {
+      int count = accumulateStatistics(stats, clusterIdx, 0.5 * m_MLweight, 0.5 * m_CLweight,
+				       maxCLDiffValues(), gradients);
+      for (int attr = 0; attr < m_numAttributes; attr++) {
+	if (currentWeights[attr] > 0) {
+	  gradients[attr] -= count * m_logTermWeight/currentWeights[attr]; // log components
 	}
+      }
+      violatedConstraints = numViolated(stats, clusterIdx);
+    } else {
+      for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
+	int assignment = m_clusterAssignments[instIdx];
+
+	// only instances assigned to this cluster are of importance
+	if (assignment == clusterIdx || clusterIdx == -1) {
+	  Instance instance = m_instances.instance(instIdx); 
+	  numInstances++;
+
+	  if (clusterIdx < 0) {
+	    m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
+	  }
 	
-	diffInstance = m_metric.createDiffInstance(instance, m_centroid);
-	for (int attr = 0; attr < m_numAttributes; attr++) {
-	  gradients[attr] +=  diffInstance.value(attr); // Euclidean components
-	  if (currentWeights[attr] > 0) {
-	    gradients[attr] -= m_logTermWeight/currentWeights[attr]; // log components
+	  diffInstance = m_metric.createDiffInstance(instance, m_centroid);
+	  for (int attr = 0; attr < m_numAttributes; attr++) {
+	    gradients[attr] +=  diffInstance.value(attr); // Euclidean components
+	    if (currentWeights[attr] > 0) {
+	      gradients[attr] -= m_logTermWeight/currentWeights[attr]; // log components
 
 //  	    if (m_regularize) {
 //  	      regularizerComponents[attr] = m_regularizerTermWeight *
@@ -80,42 +91,40 @@ public class WEuclideanGDLearner extends GDMetricLearner {
 //  	    } else {
 //  	      regularizerComponents[attr] = 0;
 //  	    }
+	    }
 	  }
-	}
 
-	// go through violated constraints
-	Object list =  m_instanceConstraintMap.get(new Integer(instIdx));
-	if (list != null) {   // there are constraints associated with this instance
-	  ArrayList constraintList = (ArrayList) list;
-	  for (int i = 0; i < constraintList.size(); i++) {
-	    InstancePair pair = (InstancePair) constraintList.get(i);
-	    int linkType = pair.linkType;
-	    int firstIdx = pair.first;
-	    int secondIdx = pair.second;
-	    Instance instance1 = m_instances.instance(firstIdx);
-	    Instance instance2 = m_instances.instance(secondIdx);
-	    int otherIdx = (firstIdx == instIdx) ?
-	      m_clusterAssignments[secondIdx] : m_clusterAssignments[firstIdx];
-
-	    // check whether the constraint is violated
-	    if (otherIdx != -1) {  
-	      if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
-		diffInstance = m_metric.createDiffInstance(instance1, instance2);
-		for (int attr = 0; attr < m_numAttributes; attr++) {
-		  gradients[attr] += 0.5 * m_MLweight * diffInstance.value(attr);
-		}
-		violatedConstraints++; 
-	      } else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK){
-		diffInstance = m_metric.createDiffInstance(instance1, instance2);
-
-		for (int attr = 0; attr < m_numAttributes; attr++) {
-		  // this constraint will be counted twice, hence 0.5
-		  gradients[attr] += 0.5 * m_CLweight * m_maxCLDiffInstance.value(attr);
-		  gradients[attr] -= 0.5 * m_CLweight * diffInstance.value(attr); 
+	  // go through violated constraints
+	  if (m_constraintGraph != null) {   // go through the constraints of this instance
+	    for (int e = m_constraintGraph.start(instIdx); e < m_constraintGraph.end(instIdx); e++) {
+	      int neighbour = m_constraintGraph.neighbour(e);
+	      int linkType = m_constraintGraph.linkType(e);
+	      int firstIdx = Math.min(instIdx, neighbour);
+	      int secondIdx = Math.max(instIdx, neighbour);
+	      Instance instance1 = m_instances.instance(firstIdx);
+	      Instance instance2 = m_instances.instance(secondIdx);
+	      int otherIdx = m_clusterAssignments[neighbour];
+
+	      // check whether the constraint is violated
+	      if (otherIdx != -1) {  
+		if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
+		  diffInstance = m_metric.createDiffInstance(instance1, instance2);
+		  for (int attr = 0; attr < m_numAttributes; attr++) {
+		    gradients[attr] += 0.5 * m_MLweight * diffInstance.value(attr);
+		  }
+		  violatedConstraints++; 
+		} else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK){
+		  diffInstance = m_metric.createDiffInstance(instance1, instance2);
+
+		  for (int attr = 0; attr < m_numAttributes; attr++) {
+		    // this constraint will be counted twice, hence 0.5
+		    gradients[attr] += 0.5 * m_CLweight * m_maxCLDiffInstance.value(attr);
+		    gradients[attr] -= 0.5 * m_CLweight * diffInstance.value(attr); 
+		  }
+		  violatedConstraints++; 
 		}
-		violatedConstraints++; 
-	      }
-	    } // end while
+	      } // end while
+	    }
 	  }
 	}
       }
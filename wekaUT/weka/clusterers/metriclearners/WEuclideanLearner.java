@@ -52,53 +52,56 @@ public class WEuclideanLearner extends  MPCKMeansMetricLearner {
     int violatedConstraints = 0;
     int numInstances = 0; 
 
-    for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
-      int assignment = m_clusterAssignments[instIdx];
-
-      // only instances assigned to this cluster are of importance
-      if (assignment == clusterIdx || clusterIdx == -1) {
-	numInstances++;
-	if (clusterIdx < 0) {
-	  m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
-	} 
+    ClusterStatistics stats = getClusterStatistics(ClusterStatistics.SQUARES, clusterIdx);
+    if (stats != null) {
+      numInstances = accumulateStatistics(stats, clusterIdx, 0.5 * m_MLweight, 0.5 * m_CLweight,
+					  maxCLDiffValues(), weights);
+    } else {
+      for (int instIdx = 0; instIdx < m_instances.numInstances(); instIdx++) {
+	int assignment = m_clusterAssignments[instIdx];
+
+	// only instances assigned to this cluster are of importance
+	if (assignment == clusterIdx || clusterIdx == -1) {
+	  numInstances++;
+	  if (clusterIdx < 0) {
+	    m_centroid = m_kmeans.getClusterCentroids().instance(assignment); 
+	  } 
 	
-	// accumulate variance
-	Instance instance = m_instances.instance(instIdx);
-	Instance diffInstance = m_metric.createDiffInstance(instance, m_centroid); 
-	for (int attr = 0; attr < m_numAttributes; attr++) {
-	  weights[attr] += diffInstance.value(attr); 
-	}
+	  // accumulate variance
+	  Instance instance = m_instances.instance(instIdx);
+	  Instance diffInstance = m_metric.createDiffInstance(instance, m_centroid); 
+	  for (int attr = 0; attr < m_numAttributes; attr++) {
+	    weights[attr] += diffInstance.value(attr); 
+	  }
 
-	// check all constraints for this instance
-	Object list =  m_instanceConstraintMap.get(new Integer(instIdx));
-	if (list != null) {   // there are constraints associated with this instance
-	  ArrayList constraintList = (ArrayList) list;
-	  for (int i = 0; i < constraintList.size(); i++) {
-	    InstancePair pair = (InstancePair) constraintList.get(i);
-	    int linkType = pair.linkType;
-	    int firstIdx = pair.first;
-	    int secondIdx = pair.second;
-	    Instance instance1 = m_instances.instance(firstIdx);
-	    Instance instance2 = m_instances.instance(secondIdx);
-	    int otherIdx = (firstIdx == instIdx) ? m_clusterAssignments[secondIdx]
-	      : m_clusterAssignments[firstIdx];
-
-	    if (otherIdx != -1) {  // check whether the constraint is violated
-	      if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
-		diffInstance = m_metric.createDiffInstance(instance1, instance2);
-		for (int attr = 0; attr < m_numAttributes; attr++) {  
-		  weights[attr] += 0.5 * m_MLweight * diffInstance.value(attr);
+	  // check all constraints for this instance
+	  if (m_constraintGraph != null) {   // go through the constraints of this instance
+	    for (int e = m_constraintGraph.start(instIdx); e < m_constraintGraph.end(instIdx); e++) {
+	      int neighbour = m_constraintGraph.neighbour(e);
+	      int linkType = m_constraintGraph.linkType(e);
+	      int firstIdx = Math.min(instIdx, neighbour);
+	      int secondIdx = Math.max(instIdx, neighbour);
+	      Instance instance1 = m_instances.instance(firstIdx);
+	      Instance instance2 = m_instances.instance(secondIdx);
+	      int otherIdx = m_clusterAssignments[neighbour];
+
+	      if (otherIdx != -1) {  // check whether the constraint is violated
+		if (otherIdx != assignment && linkType == InstancePair.MUST_LINK) {
+		  diffInstance = m_metric.createDiffInstance(instance1, instance2);
+		  for (int attr = 0; attr < m_numAttributes; attr++) {  
+		    weights[attr] += 0.5 * m_MLweight * diffInstance.value(attr);
+		  }
 		}
-	      }
-	      else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK){ 
-		diffInstance = m_metric.createDiffInstance(instance1, instance2);
-		for (int attr = 0; attr < m_numAttributes; attr++) {
-		  // this constraint will be counted twice, hence 0.5
-		  weights[attr] += 0.5 * m_CLweight * m_maxCLDiffInstance.value(attr);
-		  weights[attr] -= 0.5 * m_CLweight * diffInstance.value(attr); 
+		else if (otherIdx == assignment && linkType == InstancePair.CANNOT_LINK){ 
+		  diffInstance = m_metric.createDiffInstance(instance1, instance2);
+		  for (int attr = 0; attr < m_numAttributes; attr++) {
+		    // this constraint will be counted twice, hence 0.5
+		    weights[attr] += 0.5 * m_CLweight * m_maxCLDiffInstance.value(attr);
+		    weights[attr] -= 0.5 * m_CLweight * diffInstance.value(attr); 
+		  }
 		}
-	      }
-	    } 
+	      } 
+	    }
 	  }
 	}
       }
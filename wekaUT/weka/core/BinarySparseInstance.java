@@ -49,7 +49,7 @@ public class BinarySparseInstance extends SparseInstance {
    */
   public BinarySparseInstance(Instance instance) {
     
-    m_Weight = instance.m_Weight;
+    m_Weight = instance.weight();
     m_Dataset = null;
     m_NumAttributes = instance.numAttributes();
     if (instance instanceof SparseInstance) {
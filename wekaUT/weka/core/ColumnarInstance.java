@@ -0,0 +1,291 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ColumnarInstance.java
+ *    Copyright (C) 2010
+ *
+ */
+
+package weka.core;
+
+/**
+ * A flyweight view of one row of a <code>ColumnarInstances</code>
+ * dataset. The view does not hold any attribute values itself: all reads
+ * and writes go straight through to the column arrays of the dataset it
+ * was obtained from. Views are positional, ie. they refer to a row index
+ * and not to the row's contents, so a view that was obtained before the
+ * rows of the dataset were swapped, sorted or deleted will see the
+ * values that are now stored at its position. Use <code>copy()</code> to
+ * obtain an ordinary, independent instance. <p>
+ *
+ * Views cannot change their number of attributes; use the attribute
+ * methods of the dataset instead.
+ *
+ * @version $Revision: 1.1 $
+ * @see ColumnarInstances
+ */
+public class ColumnarInstance
+  extends Instance {
+
+  /** for serialization */
+  private static final long serialVersionUID = -2318254375233613286L;
+
+  /** the dataset that stores the values of this row. */
+  protected ColumnarInstances m_Store;
+
+  /** the index of the row in the store. */
+  protected int m_Row;
+
+  /**
+   * Creates a view of the given row of the dataset. The view has
+   * access to the dataset.
+   *
+   * @param store the dataset holding the values
+   * @param row the index of the row
+   */
+  protected ColumnarInstance(ColumnarInstances store, int row) {
+
+    m_Store   = store;
+    m_Row     = row;
+    m_Dataset = store;
+  }
+
+  /**
+   * Returns the index of the row this view refers to.
+   *
+   * @return the row index in the underlying dataset
+   */
+  public int row() {
+
+    return m_Row;
+  }
+
+  /**
+   * Produces an independent, dense copy of the row. The copy has
+   * access to the same dataset as this view.
+   *
+   * @return the copy
+   */
+  public Object copy() {
+
+    Instance result = new Instance(weight(), toDoubleArray());
+    result.m_Dataset = m_Dataset;
+    return result;
+  }
+
+  /**
+   * Tests if a specific value is "missing".
+   *
+   * @param attIndex the attribute's index
+   * @return true if the value is "missing"
+   */
+  public boolean isMissing(int attIndex) {
+
+    return Double.isNaN(m_Store.m_Columns[attIndex][m_Row]);
+  }
+
+  /**
+   * Tests if a specific value is "missing". Does
+   * the same thing as isMissing().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return true if the value is "missing"
+   */
+  public boolean isMissingSparse(int indexOfIndex) {
+
+    return Double.isNaN(m_Store.m_Columns[indexOfIndex][m_Row]);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return the number of attributes as an integer
+   */
+  public int numAttributes() {
+
+    return m_Store.m_Columns.length;
+  }
+
+  /**
+   * Returns the number of values present. Always the same
+   * as numAttributes().
+   *
+   * @return the number of values
+   */
+  public int numValues() {
+
+    return m_Store.m_Columns.length;
+  }
+
+  /**
+   * Replaces all missing values in the row with the values contained
+   * in the given array. The values are written to the dataset.
+   *
+   * @param array containing the means and modes
+   * @throws IllegalArgumentException if numbers of attributes are unequal
+   */
+  public void replaceMissingValues(double[] array) {
+
+    if ((array == null) || (array.length != numAttributes())) {
+      throw new IllegalArgumentException("Unequal number of attributes!");
+    }
+    for (int i = 0; i < array.length; i++) {
+      if (isMissing(i)) {
+	m_Store.m_Columns[i][m_Row] = array[i];
+      }
+    }
+  }
+
+  /**
+   * Sets a specific value in the row to the given value
+   * (internal floating-point format). The value is written to
+   * the dataset.
+   *
+   * @param attIndex the attribute's index
+   * @param value the new attribute value (If the corresponding
+   * attribute is nominal (or a string) then this is the new value's
+   * index as a double).
+   */
+  public void setValue(int attIndex, double value) {
+
+    m_Store.m_Columns[attIndex][m_Row] = value;
+  }
+
+  /**
+   * Sets all values of the row. The values are written to the dataset.
+   *
+   * @param array the attribute value array
+   */
+  public void setValueArray(double [] array) {
+
+    for (int i = 0; i < array.length; i++) {
+      m_Store.m_Columns[i][m_Row] = array[i];
+    }
+  }
+
+  /**
+   * Sets a specific value in the row to the given value
+   * (internal floating-point format). Does exactly the same
+   * thing as setValue().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @param value the new attribute value (If the corresponding
+   * attribute is nominal (or a string) then this is the new value's
+   * index as a double).
+   */
+  public void setValueSparse(int indexOfIndex, double value) {
+
+    m_Store.m_Columns[indexOfIndex][m_Row] = value;
+  }
+
+  /**
+   * Sets the weight of the row. The weight is written to the dataset.
+   *
+   * @param weight the weight
+   */
+  public void setWeight(double weight) {
+
+    m_Store.m_Weights[m_Row] = weight;
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return an array containing all the attribute values of the row
+   */
+  public double[] toDoubleArray() {
+
+    double[][] columns = m_Store.m_Columns;
+    double[] newValues = new double[columns.length];
+    for (int i = 0; i < newValues.length; i++) {
+      newValues[i] = columns[i][m_Row];
+    }
+    return newValues;
+  }
+
+  /**
+   * Returns the row's attribute value in internal format.
+   *
+   * @param attIndex the attribute's index
+   * @return the specified value as a double (If the corresponding
+   * attribute is nominal (or a string) then it returns the value's index as a
+   * double).
+   */
+  public double value(int attIndex) {
+
+    return m_Store.m_Columns[attIndex][m_Row];
+  }
+
+  /**
+   * Returns the row's attribute value in internal format.
+   * Does exactly the same thing as value().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return the specified value as a double (If the corresponding
+   * attribute is nominal (or a string) then it returns the value's index as a
+   * double).
+   */
+  public double valueSparse(int indexOfIndex) {
+
+    return m_Store.m_Columns[indexOfIndex][m_Row];
+  }
+
+  /**
+   * Returns the row's weight.
+   *
+   * @return the weight as a double
+   */
+  public double weight() {
+
+    return m_Store.m_Weights[m_Row];
+  }
+
+  /**
+   * Not supported, views always have the attributes of their dataset.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  void forceDeleteAttributeAt(int position) {
+
+    throw new UnsupportedOperationException(
+	"Can't delete attribute of a columnar view, use copy() first!");
+  }
+
+  /**
+   * Not supported, views always have the attributes of their dataset.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  void forceInsertAttributeAt(int position)  {
+
+    throw new UnsupportedOperationException(
+	"Can't insert attribute into a columnar view, use copy() first!");
+  }
+
+  /**
+   * Serializes a dense copy of the row instead of the view, so that
+   * the whole dataset is not written along with it.
+   *
+   * @return the object to serialize
+   */
+  protected Object writeReplace() {
+
+    return copy();
+  }
+}
@@ -0,0 +1,698 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ColumnarInstances.java
+ *    Copyright (C) 2010
+ *
+ */
+
+package weka.core;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of instances that stores its data column by column: one
+ * primitive array per attribute plus one array with the weights, instead
+ * of one <code>Instance</code> object per row. This removes the per-row
+ * object overhead and makes scans over a single attribute (eg.
+ * <code>meanOrMode</code>, <code>variance</code> or
+ * <code>attributeStats</code>) run over contiguous memory. <p>
+ *
+ * The rows are handed out as flyweight <code>ColumnarInstance</code>
+ * views that read and write the column arrays directly, so all code
+ * written against <code>Instances</code> keeps working. Instances added
+ * to the set are copied into the columns; sparse instances are stored
+ * densely. String and relational values are not transferred, just like
+ * with <code>add(Instance)</code> of the superclass. <p>
+ *
+ * Typical usage: <p>
+ * <code>
+ * Instances data = new ColumnarInstances(new Instances(reader));
+ * </code><p>
+ *
+ * @version $Revision: 1.1 $
+ * @see ColumnarInstance
+ */
+public class ColumnarInstances
+  extends Instances {
+
+  /** for serialization */
+  private static final long serialVersionUID = 7105239284071338829L;
+
+  /** the values, one array per attribute. */
+  protected double[][] m_Columns;
+
+  /** the weights of the rows. */
+  protected double[] m_Weights;
+
+  /** the number of rows currently stored. */
+  protected int m_NumRows;
+
+  /**
+   * Constructor copying all instances and references to the header
+   * information from the given set of instances into columnar storage.
+   *
+   * @param dataset the set to be copied
+   */
+  public ColumnarInstances(Instances dataset) {
+
+    this(dataset, dataset.numInstances());
+
+    for (int i = 0; i < dataset.numInstances(); i++) {
+      add(dataset.instance(i));
+    }
+  }
+
+  /**
+   * Constructor creating an empty set of instances. Copies references
+   * to the header information from the given set of instances. Sets
+   * the capacity of the set of instances to 0 if its negative.
+   *
+   * @param dataset the instances from which the header
+   * information is to be taken
+   * @param capacity the capacity of the new dataset
+   */
+  public ColumnarInstances(Instances dataset, int capacity) {
+
+    super(dataset, 0);
+
+    allocate(capacity);
+  }
+
+  /**
+   * Creates an empty set of instances. Uses the given
+   * attribute information. Sets the capacity of the set of
+   * instances to 0 if its negative. Given attribute information
+   * must not be changed after this constructor has been used.
+   *
+   * @param name the name of the relation
+   * @param attInfo the attribute information
+   * @param capacity the capacity of the set
+   */
+  public ColumnarInstances(String name, FastVector attInfo, int capacity) {
+
+    super(name, attInfo, 0);
+
+    allocate(capacity);
+  }
+
+  /**
+   * Allocates empty columns with the given capacity.
+   *
+   * @param capacity the number of rows to reserve
+   */
+  protected void allocate(int capacity) {
+
+    if (capacity < 0) {
+      capacity = 0;
+    }
+    m_Columns = new double[numAttributes()][capacity];
+    m_Weights = new double[capacity];
+    m_NumRows = 0;
+  }
+
+  /**
+   * Resizes all columns to the given capacity.
+   *
+   * @param capacity the new capacity, at least the number of rows
+   */
+  protected void setCapacity(int capacity) {
+
+    for (int i = 0; i < m_Columns.length; i++) {
+      double[] column = new double[capacity];
+      System.arraycopy(m_Columns[i], 0, column, 0, m_NumRows);
+      m_Columns[i] = column;
+    }
+    double[] weights = new double[capacity];
+    System.arraycopy(m_Weights, 0, weights, 0, m_NumRows);
+    m_Weights = weights;
+  }
+
+  /**
+   * Adds one instance to the end of the set. The values of the
+   * instance are copied into the columns. Increases the
+   * size of the dataset if it is not large enough. Does not
+   * check if the instance is compatible with the dataset.
+   * Note: String or relational values are not transferred.
+   *
+   * @param instance the instance to be added
+   */
+  public void add(Instance instance) {
+
+    if (m_NumRows == m_Weights.length) {
+      setCapacity(m_Weights.length * 2 + 1);
+    }
+    int row = m_NumRows;
+    if (instance instanceof SparseInstance) {
+      for (int i = 0; i < m_Columns.length; i++) {
+	m_Columns[i][row] = 0;
+      }
+      for (int i = 0; i < instance.numValues(); i++) {
+	m_Columns[instance.index(i)][row] = instance.valueSparse(i);
+      }
+    } else {
+      for (int i = 0; i < m_Columns.length; i++) {
+	m_Columns[i][row] = instance.value(i);
+      }
+    }
+    m_Weights[row] = instance.weight();
+    m_NumRows++;
+  }
+
+  /**
+   * Adds one instance to the end of the set, with given weight.
+   * The values of the instance are copied into the columns.
+   *
+   * @param instance the instance to be added
+   * @param weight the weight of the new row
+   */
+  public void add(Instance instance, double weight) {
+
+    add(instance);
+    m_Weights[m_NumRows - 1] = weight;
+  }
+
+  /**
+   * Calculates summary statistics on the values that appear in this
+   * set of instances for a specified attribute.
+   *
+   * @param index the index of the attribute to summarize (index starts with 0)
+   * @return an AttributeStats object with it's fields calculated.
+   */
+  public AttributeStats attributeStats(int index) {
+
+    AttributeStats result = new AttributeStats();
+    if (attribute(index).isNominal()) {
+      result.nominalCounts = new int [attribute(index).numValues()];
+    }
+    if (attribute(index).isNumeric()) {
+      result.numericStats = new weka.experiment.Stats();
+    }
+    result.totalCount = m_NumRows;
+
+    double[] column = m_Columns[index];
+    int [] sorted = Utils.sort(attributeToDoubleArray(index));
+    int currentCount = 0;
+    double prev = Instance.missingValue();
+    for (int j = 0; j < m_NumRows; j++) {
+      double current = column[sorted[j]];
+      if (Instance.isMissingValue(current)) {
+	result.missingCount = m_NumRows - j;
+	break;
+      }
+      if (Utils.eq(current, prev)) {
+	currentCount++;
+      } else {
+	result.addDistinct(prev, currentCount);
+	currentCount = 1;
+	prev = current;
+      }
+    }
+    result.addDistinct(prev, currentCount);
+    result.distinctCount--; // So we don't count "missing" as a value
+    return result;
+  }
+
+  /**
+   * Gets the value of all instances in this dataset for a particular
+   * attribute.
+   *
+   * @param index the index of the attribute.
+   * @return a copy of the column of the desired attribute
+   */
+  public double [] attributeToDoubleArray(int index) {
+
+    double [] result = new double[m_NumRows];
+    System.arraycopy(m_Columns[index], 0, result, 0, m_NumRows);
+    return result;
+  }
+
+  /**
+   * Compactifies the set of instances. Decreases the capacity of
+   * the columns so that it matches the number of instances in the set.
+   */
+  public void compactify() {
+
+    if (m_NumRows < m_Weights.length) {
+      setCapacity(m_NumRows);
+    }
+  }
+
+  /**
+   * Removes all instances from the set.
+   */
+  public void delete() {
+
+    allocate(0);
+  }
+
+  /**
+   * Removes an instance at the given position from the set.
+   *
+   * @param index the instance's position (index starts with 0)
+   */
+  public void delete(int index) {
+
+    checkRow(index);
+    int toMove = m_NumRows - index - 1;
+    if (toMove > 0) {
+      for (int i = 0; i < m_Columns.length; i++) {
+	System.arraycopy(m_Columns[i], index + 1, m_Columns[i], index, toMove);
+      }
+      System.arraycopy(m_Weights, index + 1, m_Weights, index, toMove);
+    }
+    m_NumRows--;
+  }
+
+  /**
+   * Deletes an attribute at the given position
+   * (0 to numAttributes() - 1). A deep copy of the attribute
+   * information is performed before the attribute is deleted.
+   *
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   *            or the class attribute is being deleted
+   */
+  public void deleteAttributeAt(int position) {
+
+    if ((position < 0) || (position >= m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    if (position == m_ClassIndex) {
+      throw new IllegalArgumentException("Can't delete class attribute");
+    }
+    freshAttributeInfo();
+    if (m_ClassIndex > position) {
+      m_ClassIndex--;
+    }
+    m_Attributes.removeElementAt(position);
+    for (int i = position; i < m_Attributes.size(); i++) {
+      Attribute current = (Attribute)m_Attributes.elementAt(i);
+      current.setIndex(current.index() - 1);
+    }
+    double[][] columns = new double[m_Columns.length - 1][];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    System.arraycopy(m_Columns, position + 1, columns, position,
+		     m_Columns.length - position - 1);
+    m_Columns = columns;
+  }
+
+  /**
+   * Deletes the class attribute and unsets the class index.
+   */
+  public void deleteClassAttribute() {
+
+    int position = m_ClassIndex;
+    m_ClassIndex = -1;
+    deleteAttributeAt(position);
+  }
+
+  /**
+   * Removes all instances with missing values for a particular
+   * attribute from the dataset.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   */
+  public void deleteWithMissing(int attIndex) {
+
+    double[] test = m_Columns[attIndex];
+    int kept = 0;
+    for (int j = 0; j < m_NumRows; j++) {
+      if (!Instance.isMissingValue(test[j])) {
+	if (kept != j) {
+	  for (int i = 0; i < m_Columns.length; i++) {
+	    m_Columns[i][kept] = m_Columns[i][j];
+	  }
+	  m_Weights[kept] = m_Weights[j];
+	}
+	kept++;
+      }
+    }
+    m_NumRows = kept;
+  }
+
+  /**
+   * Returns an enumeration of views on all instances in the dataset.
+   *
+   * @return enumeration of all instances in the dataset
+   */
+  public Enumeration enumerateInstances() {
+
+    return new ColumnarEnumeration();
+  }
+
+  /**
+   * Returns a view on the first instance in the set.
+   *
+   * @return the first instance in the set
+   */
+  public Instance firstInstance() {
+
+    return instance(0);
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to
+   * numAttributes()) and sets all values to be missing.
+   * Shallow copies the attribute before it is inserted, and performs
+   * a deep copy of the existing attribute information.
+   *
+   * @param att the attribute to be inserted
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   */
+  public void insertAttributeAt(Attribute att, int position) {
+
+    if ((position < 0) ||
+	(position > m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    att = (Attribute)att.copy();
+    freshAttributeInfo();
+    att.setIndex(position);
+    m_Attributes.insertElementAt(att, position);
+    for (int i = position + 1; i < m_Attributes.size(); i++) {
+      Attribute current = (Attribute)m_Attributes.elementAt(i);
+      current.setIndex(current.index() + 1);
+    }
+    double[] column = new double[m_Weights.length];
+    for (int j = 0; j < m_NumRows; j++) {
+      column[j] = Instance.missingValue();
+    }
+    double[][] columns = new double[m_Columns.length + 1][];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    columns[position] = column;
+    System.arraycopy(m_Columns, position, columns, position + 1,
+		     m_Columns.length - position);
+    m_Columns = columns;
+    if (m_ClassIndex >= position) {
+      m_ClassIndex++;
+    }
+  }
+
+  /**
+   * Returns a view on the instance at the given position.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return the instance at the given position
+   */
+  public Instance instance(int index) {
+
+    checkRow(index);
+    return new ColumnarInstance(this, index);
+  }
+
+  /**
+   * Returns a view on the last instance in the set.
+   *
+   * @return the last instance in the set
+   */
+  public Instance lastInstance() {
+
+    return instance(m_NumRows - 1);
+  }
+
+  /**
+   * Returns the mean of a numeric attribute. If all values are
+   * missing it returns zero.
+   *
+   * @param attIndex the attribute's index
+   * @return the mean
+   */
+  public double mean(int attIndex) {
+
+    double found = 0, result = 0;
+    double[] column = m_Columns[attIndex];
+    for (int j = 0; j < m_NumRows; j++) {
+      if (!Instance.isMissingValue(column[j])) {
+	found += m_Weights[j];
+	result += m_Weights[j] * column[j];
+      }
+    }
+    if (found != 0) {
+      result /= found;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the mode of a nominal attribute.
+   *
+   * @param attIndex the attribute's index
+   * @return the index of the most frequent value
+   */
+  public double mode(int attIndex) {
+
+    int [] counts = new int[attribute(attIndex).numValues()];
+    double[] column = m_Columns[attIndex];
+    for (int j = 0; j < m_NumRows; j++) {
+      if (!Instance.isMissingValue(column[j])) {
+	counts[(int) column[j]] += m_Weights[j];
+      }
+    }
+    return (double)Utils.maxIndex(counts);
+  }
+
+  /**
+   * Returns the number of distinct values of a given attribute.
+   * Returns the number of instances if the attribute is a
+   * string attribute. The value 'missing' is not counted.
+   *
+   * @param attIndex the attribute (index starts with 0)
+   * @return the number of distinct values of a given attribute
+   */
+  public int numDistinctValues(int attIndex) {
+
+    if (attribute(attIndex).isNumeric()) {
+      double[] column = m_Columns[attIndex];
+      int [] sorted = Utils.sort(attributeToDoubleArray(attIndex));
+      double prev = 0;
+      int counter = 0;
+      for (int i = 0; i < sorted.length; i++) {
+	double current = column[sorted[i]];
+	if (Instance.isMissingValue(current)) {
+	  break;
+	}
+	if ((i == 0) || Utils.gr(current, prev)) {
+	  prev = current;
+	  counter++;
+	}
+      }
+      return counter;
+    } else {
+      return attribute(attIndex).numValues();
+    }
+  }
+
+  /**
+   * Returns the number of instances in the dataset.
+   *
+   * @return the number of instances in the dataset as an integer
+   */
+  public int numInstances() {
+
+    return m_NumRows;
+  }
+
+  /**
+   * Computes the sum of all the instances' weights.
+   *
+   * @return the sum of all the instances' weights as a double
+   */
+  public double sumOfWeights() {
+
+    double sum = 0;
+
+    for (int i = 0; i < m_NumRows; i++) {
+      sum += m_Weights[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Swaps two instances in the set.
+   *
+   * @param i the first instance's index (index starts with 0)
+   * @param j the second instance's index (index starts with 0)
+   */
+  protected void swap(int i, int j) {
+
+    checkRow(i);
+    checkRow(j);
+    double help;
+    for (int k = 0; k < m_Columns.length; k++) {
+      double[] column = m_Columns[k];
+      help = column[i];
+      column[i] = column[j];
+      column[j] = help;
+    }
+    help = m_Weights[i];
+    m_Weights[i] = m_Weights[j];
+    m_Weights[j] = help;
+  }
+
+  /**
+   * Returns a value without creating a view on the row.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @param attIndex the attribute's index
+   * @return the value in internal format
+   */
+  public double value(int index, int attIndex) {
+
+    checkRow(index);
+    return m_Columns[attIndex][index];
+  }
+
+  /**
+   * Returns the weight of a row without creating a view on it.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return the weight of the instance
+   */
+  public double weight(int index) {
+
+    checkRow(index);
+    return m_Weights[index];
+  }
+
+  /**
+   * Computes the variance for a numeric attribute.
+   *
+   * @param attIndex the numeric attribute (index starts with 0)
+   * @return the variance if the attribute is numeric
+   * @throws IllegalArgumentException if the attribute is not numeric
+   */
+  public double variance(int attIndex) {
+
+    double sum = 0, sumSquared = 0, sumOfWeights = 0;
+
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException("Can't compute variance because attribute is " +
+			  "not numeric!");
+    }
+    double[] column = m_Columns[attIndex];
+    for (int i = 0; i < m_NumRows; i++) {
+      if (!Instance.isMissingValue(column[i])) {
+	sum += m_Weights[i] * column[i];
+	sumSquared += m_Weights[i] * column[i] * column[i];
+	sumOfWeights += m_Weights[i];
+      }
+    }
+    if (Utils.smOrEq(sumOfWeights, 1)) {
+      return 0;
+    }
+    double result = (sumSquared - (sum * sum / sumOfWeights)) /
+      (sumOfWeights - 1);
+
+    // We don't like negative variance
+    if (result < 0) {
+      return 0;
+    } else {
+      return result;
+    }
+  }
+
+  /**
+   * Help function needed for stratification of set. Applies the
+   * stratified order to all columns at once.
+   *
+   * @param numFolds the number of folds for the stratification
+   */
+  protected void stratStep(int numFolds) {
+
+    int[] order = new int[m_NumRows];
+    int count = 0, start = 0, j;
+
+    // create stratified batch
+    while (count < m_NumRows) {
+      j = start;
+      while (j < m_NumRows) {
+	order[count++] = j;
+	j = j + numFolds;
+      }
+      start++;
+    }
+    for (int i = 0; i < m_Columns.length; i++) {
+      m_Columns[i] = permute(m_Columns[i], order);
+    }
+    m_Weights = permute(m_Weights, order);
+  }
+
+  /**
+   * Returns a copy of the given column with the rows in the given order.
+   *
+   * @param column the column to reorder
+   * @param order the row indices in their new order
+   * @return the reordered column, with the same capacity
+   */
+  protected double[] permute(double[] column, int[] order) {
+
+    double[] result = new double[column.length];
+    for (int j = 0; j < order.length; j++) {
+      result[j] = column[order[j]];
+    }
+    return result;
+  }
+
+  /**
+   * Checks whether the given row exists.
+   *
+   * @param index the row index
+   * @throws ArrayIndexOutOfBoundsException if the row doesn't exist
+   */
+  protected void checkRow(int index) {
+
+    if ((index < 0) || (index >= m_NumRows)) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+  }
+
+  /**
+   * Enumerates views on the rows of the dataset.
+   */
+  protected class ColumnarEnumeration
+    implements Enumeration {
+
+    /** the next row to return. */
+    protected int m_Next = 0;
+
+    /**
+     * Tests if there are any more rows to enumerate.
+     *
+     * @return true if there are some rows left
+     */
+    public boolean hasMoreElements() {
+
+      return m_Next < m_NumRows;
+    }
+
+    /**
+     * Returns a view on the next row.
+     *
+     * @return the next row
+     */
+    public Object nextElement() {
+
+      if (m_Next >= m_NumRows) {
+	throw new NoSuchElementException();
+      }
+      return new ColumnarInstance(ColumnarInstances.this, m_Next++);
+    }
+  }
+}
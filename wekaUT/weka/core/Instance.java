@@ -93,8 +93,12 @@ public class Instance implements Copyable, Serializable {
    */
   public Instance(Instance instance) {
     
-    m_AttValues = instance.m_AttValues;
-    m_Weight = instance.m_Weight;
+    if (instance instanceof ColumnarInstance) {
+      m_AttValues = instance.toDoubleArray();
+    } else {
+      m_AttValues = instance.m_AttValues;
+    }
+    m_Weight = instance.weight();
     m_Dataset = null;
   }
 
@@ -240,7 +244,7 @@ public class Instance implements Copyable, Serializable {
     return result;
   }
   public Instance deepcopy(){
-	  Instance instance=new Instance(m_Weight,toDoubleArray());
+	  Instance instance=new Instance(weight(),toDoubleArray());
 	  instance.m_Dataset=m_Dataset;
 	  return instance;
   }
@@ -687,7 +691,7 @@ public class Instance implements Copyable, Serializable {
    *
    * @param weight the weight
    */
-  public final void setWeight(double weight) {
+  public void setWeight(double weight) {
 
     m_Weight = weight;
   }
@@ -761,7 +765,7 @@ public class Instance implements Copyable, Serializable {
 
     StringBuffer text = new StringBuffer();
     
-    for (int i = 0; i < m_AttValues.length; i++) {
+    for (int i = 0; i < numAttributes(); i++) {
       if (i > 0) text.append(",");
       text.append(toString(i));
     }
@@ -787,7 +791,7 @@ public class Instance implements Copyable, Serializable {
      text.append("?");
    } else {
      if (m_Dataset == null) {
-       text.append(Utils.doubleToString(m_AttValues[attIndex],6));
+       text.append(Utils.doubleToString(value(attIndex),6));
      } else {
        switch (m_Dataset.attribute(attIndex).type()) {
        case Attribute.NOMINAL:
@@ -843,7 +847,7 @@ public class Instance implements Copyable, Serializable {
    *
    * @return the instance's weight as a double
    */
-  public final double weight() {
+  public double weight() {
 
     return m_Weight;
   }
@@ -199,7 +199,7 @@ public class Instances implements Serializable {
    *
    * @param instance the instance to be added
    */
-  public final void add(Instance instance) {
+  public void add(Instance instance) {
 
     Instance newInstance = (Instance)instance.copy();
 
@@ -214,7 +214,7 @@ public class Instances implements Serializable {
    * instance is compatible with the dataset.
    *
    * @param instance the instance to be added */
-  public final void add(Instance instance, double weight) {
+  public void add(Instance instance, double weight) {
 
     Instance newInstance = (Instance)instance.copy();
 
@@ -354,7 +354,7 @@ public class Instances implements Serializable {
    * Compactifies the set of instances. Decreases the capacity of
    * the set so that it matches the number of instances in the set.
    */
-  public final void compactify() {
+  public void compactify() {
 
     m_Instances.trimToSize();
   }
@@ -362,7 +362,7 @@ public class Instances implements Serializable {
   /**
    * Removes all instances from the set.
    */
-  public final void delete() {
+  public void delete() {
     
     m_Instances = new FastVector();
   }
@@ -372,7 +372,7 @@ public class Instances implements Serializable {
    *
    * @param index the instance's position
    */
-  public final void delete(int index) {
+  public void delete(int index) {
     
     m_Instances.removeElementAt(index);
   }
@@ -453,7 +453,7 @@ public class Instances implements Serializable {
    *
    * @param attIndex the attribute's index
    */
-  public final void deleteWithMissing(int attIndex) {
+  public void deleteWithMissing(int attIndex) {
 
     FastVector newInstances = new FastVector(numInstances());
 
@@ -502,7 +502,7 @@ public class Instances implements Serializable {
    * Returns an enumeration of all instances in the dataset.
    * @return enumeration of all instances in the dataset
    */
-  public final Enumeration enumerateInstances() {
+  public Enumeration enumerateInstances() {
     return m_Instances.elements();
   }
 
@@ -535,7 +535,7 @@ public class Instances implements Serializable {
    *
    * @return the first instance in the set
    */
-  public final Instance firstInstance() {
+  public Instance firstInstance() {
     
     return (Instance)m_Instances.firstElement();
   }
@@ -575,7 +575,7 @@ public class Instances implements Serializable {
    * @param index the instance's index
    * @return the instance at the given position
    */
-  public final Instance instance(int index) {
+  public Instance instance(int index) {
     return (Instance)m_Instances.elementAt(index);
   }
 
@@ -584,7 +584,7 @@ public class Instances implements Serializable {
    *
    * @return the last instance in the set
    */
-  public final Instance lastInstance() {
+  public Instance lastInstance() {
     
     return (Instance)m_Instances.lastElement();
   }
@@ -597,7 +597,7 @@ public class Instances implements Serializable {
    * @param att(Index) the attribute('s index)
    * @return the mean or the mode
    */
-   public final double mean(int attIndex){
+   public double mean(int attIndex){
    	   double found=0,result=0;
    	   for(int i=0;i<numInstances();i++)if(!instance(i).isMissing(attIndex)){
    	   	   found+=instance(i).weight();
@@ -616,7 +616,7 @@ public class Instances implements Serializable {
        }
        return new Instance(numInstances(),vals);
    }
-   public final double mode(int attIndex){
+   public double mode(int attIndex){
    	   int [] counts=new int[attribute(attIndex).numValues()];
    	   for(int i=0;i<numInstances();i++)if(!instance(i).isMissing(attIndex)){
    	   	   counts[(int)instance(i).value(attIndex)]+=instance(i).weight();
@@ -698,7 +698,7 @@ public class Instances implements Serializable {
    * @param attIndex the attribute
    * @return the number of distinct values of a given attribute
    */
-  public final int numDistinctValues(int attIndex) {
+  public int numDistinctValues(int attIndex) {
 
     if (attribute(attIndex).isNumeric()) {
       double [] attVals = attributeToDoubleArray(attIndex);
@@ -737,7 +737,7 @@ public class Instances implements Serializable {
    * Returns the number of instances in the dataset.
    * @return the number of instances in the dataset as an integer
    */
-  public final int numInstances() {
+  public int numInstances() {
     return m_Instances.size();
   }
   public final int numInstancesWithClass(double value){
@@ -1054,7 +1054,7 @@ public class Instances implements Serializable {
    *
    * @return the sum of all the instances' weights as a double
    */
-  public final double sumOfWeights() {
+  public double sumOfWeights() {
     
     double sum = 0;
 
@@ -1168,7 +1168,7 @@ public class Instances implements Serializable {
    * @return the variance if the attribute is numeric
    * @exception IllegalArgumentException if the attribute is not numeric
    */
-  public final double variance(int attIndex) {
+  public double variance(int attIndex) {
   
     double sum = 0, sumSquared = 0, sumOfWeights = 0;
 
@@ -1724,7 +1724,7 @@ public class Instances implements Serializable {
    * Replaces the attribute information by a clone of
    * itself.
    */
-  private void freshAttributeInfo() {
+  protected void freshAttributeInfo() {
 
     m_Attributes = (FastVector) m_Attributes.copyElements();
   }
@@ -1916,7 +1916,7 @@ public class Instances implements Serializable {
    *
    * @param numFolds the number of folds for the stratification
    */
-  private void stratStep (int numFolds){
+  protected void stratStep (int numFolds){
     
     FastVector newVec = new FastVector(m_Instances.capacity());
     int start = 0, j;
@@ -1939,7 +1939,7 @@ public class Instances implements Serializable {
    * @param i the first instance's index
    * @param j the second instance's index
    */
-  private void swap(int i, int j){
+  protected void swap(int i, int j){
     
     m_Instances.swap(i, j);
   }
@@ -0,0 +1,41 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    OutputFileHandler.java
+ *
+ */
+
+package weka.core;
+
+/** 
+ * Interface to something that writes files besides its results, e.g. a
+ * dump of its model or of intermediate assignments.  Copies of such an
+ * object that run at the same time have to be told to write to files
+ * of their own.
+ *
+ * @version $Revision: 1.1 $
+ */
+public interface OutputFileHandler {
+
+  /**
+   * Makes the names of the files written from now on unique by adding a
+   * suffix to them, see Utils.addFileNameSuffix().
+   *
+   * @param suffix the suffix
+   */
+  public void setOutputFileSuffix(String suffix);
+}
@@ -191,6 +191,24 @@ public final class Utils {
   }
 
 
+  /**
+   * Adds a suffix to a file name, in front of the extension if the name
+   * has one, e.g. "user-features.dot" becomes "user-features-cell3.dot"
+   * for the suffix "-cell3".
+   *
+   * @param fileName the file name
+   * @param suffix the suffix
+   * @return the file name with the suffix added
+   */
+  public static String addFileNameSuffix(String fileName, String suffix) {
+
+    int dot = fileName.lastIndexOf('.');
+    if (dot <= fileName.lastIndexOf(File.separatorChar) + 1) {
+      return fileName + suffix;
+    }
+    return fileName.substring(0, dot) + suffix + fileName.substring(dot);
+  }
+
   /**
    * Pads a string to a specified length, inserting spaces on the left
    * as required. If the string is too long, characters are removed (from
@@ -0,0 +1,825 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    CachingMetric.java
+ *    Caches and counts the evaluations of another learnable metric
+ *
+ */
+
+package weka.core.metrics;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+import weka.core.*;
+import weka.clusterers.regularizers.Regularizer;
+
+/**
+ * CachingMetric class
+ *
+ * Wraps a learnable metric, remembers the values it computes for pairs
+ * of instances and keeps statistics on how it is used.<p>
+ *
+ * A pair is identified by the positions of its instances in the dataset
+ * the metric was built with (or that was passed to setInstances()), so
+ * only values between those instances are cached; pairs involving any
+ * other instance, e.g. a cluster centroid, are passed on to the wrapped
+ * metric and counted as uncached.  The values are kept in a fixed-size
+ * two-way set-associative table outside the Java heap; a new value
+ * replaces the less recently used entry of its set.  Every entry carries
+ * the generation of the metric it was computed with.  Changing the
+ * weights, resetting, building or training the metric, or normalizing an
+ * instance through it starts a new generation, which invalidates all
+ * entries at once.  Code that modifies the registered instances in any
+ * other way has to call invalidate().<p>
+ *
+ * For every method the wrapper counts calls, cache hits and uncached
+ * calls, and with profiling switched on it keeps a histogram of the call
+ * times in power-of-two nanosecond buckets.<p>
+ *
+ * Code that checks the class of its metric or calls methods of a
+ * concrete metric class, e.g. the Mahalanobis and KL metric learners and
+ * the LP and RMN assigners, looks at unwrap(metric) instead, and calls
+ * metricChanged(metric) after modifying the metric it got that way.<p>
+ *
+ * The table and the statistics are guarded by the lock of the wrapper and
+ * the wrapped metric computes values outside of it, so the wrapper can be
+ * used by several threads at once, e.g. by ParallelAssigner, if the
+ * wrapped metric can.  Copies made with clone() get their own empty table
+ * and statistics.
+ *
+ * @version $Revision: 1.1 $
+ */
+
+public class CachingMetric extends LearnableMetric implements OptionHandler {
+
+  /** Ids of the cached methods */
+  public static final int DISTANCE = 0;
+  public static final int SIMILARITY = 1;
+  public static final int PENALTY = 2;
+  public static final int PENALTY_SYMMETRIC = 3;
+  public static final int DISTANCE_NON_WEIGHTED = 4;
+  public static final int SIMILARITY_NON_WEIGHTED = 5;
+
+  /** Names of the cached methods, indexed by id */
+  public static final String [] METHOD_NAMES = {"distance", "similarity", "penalty",
+						"penaltySymmetric", "distanceNonWeighted",
+						"similarityNonWeighted"};
+
+  /** Number of buckets of the time histograms; the last one takes all longer calls */
+  public static final int NUM_TIME_BUCKETS = 40;
+
+  /** Bytes per table entry: long key, double value, int stamp, padding */
+  protected static final int ENTRY_SIZE = 24;
+
+  /** Offsets of the fields of an entry */
+  protected static final int VALUE_OFFSET = 8;
+  protected static final int STAMP_OFFSET = 16;
+
+  /** Largest generation that fits into a stamp next to the method id */
+  protected static final int MAX_GENERATION = (1 << 28) - 1;
+
+  /** System.nanoTime() on JVMs that have it, null otherwise */
+  protected static Method s_nanoTime;
+  static {
+    try {
+      s_nanoTime = System.class.getMethod("nanoTime", new Class[0]);
+    } catch (Exception e) {
+      s_nanoTime = null;
+    }
+  }
+
+  /** The wrapped metric */
+  protected LearnableMetric m_metric = new WeightedEuclidean();
+
+  /** Requested number of table entries */
+  protected int m_cacheSize = 1 << 20;
+
+  /** Are call times recorded? */
+  protected boolean m_profile = false;
+
+  /** The table of cached values, allocated on first use */
+  protected transient ByteBuffer m_table = null;
+
+  /** Number of two-entry sets of the table, a power of two */
+  protected int m_numSets = 0;
+
+  /** The current generation; entries with an older one are stale */
+  protected int m_generation = 1;
+
+  /** Positions of the registered instances, keyed by identity */
+  protected transient IdentityHashMap m_instanceIndices = null;
+
+  /** Per-method statistics */
+  protected long [] m_numCalls;
+  protected long [] m_numHits;
+  protected long [] m_numUncached;
+  protected long [] m_totalTime;
+  protected long [][] m_timeHistogram;
+
+  /** Create a new caching metric around WeightedEuclidean */
+  public CachingMetric() {
+    resetStatistics();
+  }
+
+  /**
+   * Create a new caching metric
+   * @param metric the metric to wrap
+   */
+  public CachingMetric(LearnableMetric metric) {
+    this();
+    setMetric(metric);
+  }
+
+  /**
+   * Creates a new metric.  The instances registered last stay registered;
+   * clusterers that build the metric this way register their dataset
+   * with setInstances().
+   * @param numAttributes the number of attributes that the metric will work on
+   */
+  public void buildMetric(int numAttributes) throws Exception {
+    m_metric.buildMetric(numAttributes);
+    copyState();
+    invalidate();
+  }
+
+  /**
+   * Creates a new metric.
+   * @param numAttributes the number of attributes that the metric will work on
+   * @param options an array of options suitable for passing to setOptions.
+   * May be null.
+   */
+  public void buildMetric(int numAttributes, String[] options) throws Exception {
+    m_metric.buildMetric(numAttributes, options);
+    copyState();
+    invalidate();
+  }
+
+  /**
+   * Create a new metric for operating on specified instances and
+   * register the instances for caching
+   * @param data instances that the metric will be used on
+   */
+  public void buildMetric(Instances data) throws Exception {
+    m_metric.buildMetric(data);
+    copyState();
+    setInstances(data);
+  }
+
+  /**
+   * Returns the metric that computes the values: the innermost wrapped
+   * metric of a CachingMetric, the metric itself otherwise
+   * @param metric a metric, may be null
+   */
+  public static Metric unwrap(Metric metric) {
+    while (metric instanceof CachingMetric) {
+      metric = ((CachingMetric) metric).getMetric();
+    }
+    return metric;
+  }
+
+  /**
+   * Discards the cached values of a CachingMetric whose wrapped metric
+   * was modified directly, through unwrap(); does nothing for other metrics
+   * @param metric a metric, may be null
+   */
+  public static void metricChanged(Metric metric) {
+    if (metric instanceof CachingMetric) {
+      CachingMetric caching = (CachingMetric) metric;
+      metricChanged(caching.m_metric);
+      caching.copyState();
+      caching.invalidate();
+    }
+  }
+
+  /** Copies the fields that users read directly from the wrapped metric */
+  protected void copyState() {
+    m_numAttributes = m_metric.getNumAttributes();
+    m_classIndex = m_metric.m_classIndex;
+    m_attrIdxs = m_metric.getAttrIndxs();
+    m_attrWeights = m_metric.m_attrWeights;
+    m_fixedMaxDistance = m_metric.m_fixedMaxDistance;
+    m_maxDistance = m_metric.getMaxDistance();
+    m_normalizeData = m_metric.doesNormalizeData();
+    m_trainable = m_metric.getTrainable();
+    m_external = m_metric.getExternal();
+  }
+
+  /**
+   * Registers the instances whose pairwise values are cached; their
+   * positions in the dataset identify them in the table
+   * @param data the instances, null to cache nothing
+   */
+  public synchronized void setInstances(Instances data) {
+    if (data == null) {
+      m_instanceIndices = null;
+    } else {
+      m_instanceIndices = new IdentityHashMap(2 * data.numInstances());
+      for (int i = 0; i < data.numInstances(); i++) {
+	m_instanceIndices.put(data.instance(i), new Integer(i));
+      }
+    }
+    invalidate();
+  }
+
+  /** Discards all cached values */
+  public synchronized void invalidate() {
+    m_generation++;
+    if (m_generation > MAX_GENERATION) {
+      // stamps would wrap around, start over with an empty table
+      if (m_table != null) {
+	for (int pos = 0; pos < m_table.capacity(); pos += 8) {
+	  m_table.putLong(pos, 0);
+	}
+      }
+      m_generation = 1;
+    }
+  }
+
+  /**
+   * Returns the position of a registered instance
+   * @param instance the instance
+   * @return its position, -1 if it isn't registered
+   */
+  protected int indexOf(Instance instance) {
+    if (m_instanceIndices == null) {
+      return -1;
+    }
+    Integer index = (Integer) m_instanceIndices.get(instance);
+    return index == null ? -1 : index.intValue();
+  }
+
+  /** Returns the table, allocating it if necessary */
+  protected ByteBuffer table() {
+    if (m_table == null) {
+      // round down to a power of two number of sets, at least one
+      m_numSets = 1;
+      while (m_numSets <= m_cacheSize / 4 && m_numSets < (Integer.MAX_VALUE / (4 * ENTRY_SIZE))) {
+	m_numSets <<= 1;
+      }
+      m_table = ByteBuffer.allocateDirect(m_numSets * 2 * ENTRY_SIZE);
+      m_generation = 1;
+    }
+    return m_table;
+  }
+
+  /**
+   * Computes a value with the wrapped metric
+   * @param method the id of the method
+   * @param instance1 first instance
+   * @param instance2 second instance
+   */
+  protected double compute(int method, Instance instance1, Instance instance2) throws Exception {
+    switch (method) {
+    case DISTANCE:
+      return m_metric.distance(instance1, instance2);
+    case SIMILARITY:
+      return m_metric.similarity(instance1, instance2);
+    case PENALTY:
+      return m_metric.penalty(instance1, instance2);
+    case PENALTY_SYMMETRIC:
+      return m_metric.penaltySymmetric(instance1, instance2);
+    case DISTANCE_NON_WEIGHTED:
+      return m_metric.distanceNonWeighted(instance1, instance2);
+    default:
+      return m_metric.similarityNonWeighted(instance1, instance2);
+    }
+  }
+
+  /**
+   * Returns a value from the table or computes and stores it.  The table
+   * and the statistics are only accessed while holding the lock of the
+   * metric; the wrapped metric computes values outside of it.
+   * @param method the id of the method
+   * @param instance1 first instance
+   * @param instance2 second instance
+   */
+  protected double lookup(int method, Instance instance1, Instance instance2) throws Exception {
+    long start = m_profile ? now() : 0;
+    double value = 0;
+    boolean found = false;
+    ByteBuffer table = null;
+    long key = 0;
+    int stamp = 0;
+    int first = 0;
+
+    synchronized (this) {
+      m_numCalls[method]++;
+      int idx1 = indexOf(instance1);
+      int idx2 = (idx1 < 0) ? -1 : indexOf(instance2);
+
+      if (idx2 < 0) {
+	m_numUncached[method]++;
+      } else {
+	if (method == PENALTY_SYMMETRIC && idx1 > idx2) {
+	  int tmp = idx1;
+	  idx1 = idx2;
+	  idx2 = tmp;
+	}
+	table = table();
+	key = ((long) idx1 << 32) | idx2;
+	stamp = (m_generation << 3) | method;
+	long hash = (key + method) * 0x9E3779B97F4A7C15L;
+	first = (int) (hash >>> 33) & (m_numSets - 1);
+	first *= 2 * ENTRY_SIZE;
+	int second = first + ENTRY_SIZE;
+
+	if (table.getInt(first + STAMP_OFFSET) == stamp && table.getLong(first) == key) {
+	  value = table.getDouble(first + VALUE_OFFSET);
+	  found = true;
+	} else if (table.getInt(second + STAMP_OFFSET) == stamp && table.getLong(second) == key) {
+	  value = table.getDouble(second + VALUE_OFFSET);
+	  found = true;
+	  // keep the most recently used entry first
+	  moveEntry(table, first, second);
+	  putEntry(table, first, key, value, stamp);
+	}
+	if (found) {
+	  m_numHits[method]++;
+	}
+      }
+    }
+
+    if (!found) {
+      value = compute(method, instance1, instance2);
+      if (table != null) {
+	store(table, first, key, value, stamp);
+      }
+    }
+
+    if (m_profile) {
+      recordTime(method, now() - start);
+    }
+    return value;
+  }
+
+  /**
+   * Stores a computed value in its set, unless the table was replaced or
+   * the metric changed while it was computed
+   * @param table the table the value was looked up in
+   * @param first the position of the first entry of the set
+   * @param key the key of the pair
+   * @param value the value
+   * @param stamp the stamp of the lookup
+   */
+  protected synchronized void store(ByteBuffer table, int first, long key, double value, int stamp) {
+    if (table == m_table && (stamp >>> 3) == m_generation) {
+      // the first entry becomes the second, the old second one is evicted
+      moveEntry(table, first, first + ENTRY_SIZE);
+      putEntry(table, first, key, value, stamp);
+    }
+  }
+
+  /**
+   * Adds a call time to the statistics of a method
+   * @param method the id of the method
+   * @param time the time in nanoseconds
+   */
+  protected synchronized void recordTime(int method, long time) {
+    m_totalTime[method] += time;
+    int bucket = 0;
+    while (time > 1 && bucket < NUM_TIME_BUCKETS - 1) {
+      time >>= 1;
+      bucket++;
+    }
+    m_timeHistogram[method][bucket]++;
+  }
+
+  /** Copies the entry at one position of the table to another */
+  protected static void moveEntry(ByteBuffer table, int from, int to) {
+    table.putLong(to, table.getLong(from));
+    table.putDouble(to + VALUE_OFFSET, table.getDouble(from + VALUE_OFFSET));
+    table.putInt(to + STAMP_OFFSET, table.getInt(from + STAMP_OFFSET));
+  }
+
+  /** Writes an entry of the table */
+  protected static void putEntry(ByteBuffer table, int pos, long key, double value, int stamp) {
+    table.putLong(pos, key);
+    table.putDouble(pos + VALUE_OFFSET, value);
+    table.putInt(pos + STAMP_OFFSET, stamp);
+  }
+
+  /** Returns the current time in nanoseconds, with millisecond
+   * resolution on JVMs without System.nanoTime() */
+  protected static long now() {
+    if (s_nanoTime != null) {
+      try {
+	return ((Long) s_nanoTime.invoke(null, new Object[0])).longValue();
+      } catch (Exception e) {
+	s_nanoTime = null;
+      }
+    }
+    return System.currentTimeMillis() * 1000000L;
+  }
+
+  /**
+   * Returns a distance value between two instances.
+   * @param instance1 First instance.
+   * @param instance2 Second instance.
+   * @exception Exception if distance could not be estimated.
+   */
+  public double distance(Instance instance1, Instance instance2) throws Exception {
+    return lookup(DISTANCE, instance1, instance2);
+  }
+
+  /**
+   * Returns a similarity estimate between two instances.
+   * @param instance1 First instance.
+   * @param instance2 Second instance.
+   * @exception Exception if similarity could not be estimated.
+   */
+  public double similarity(Instance instance1, Instance instance2) throws Exception {
+    return lookup(SIMILARITY, instance1, instance2);
+  }
+
+  /** Returns the penalty of the wrapped metric for a pair */
+  public double penalty(Instance instance1, Instance instance2) throws Exception {
+    return lookup(PENALTY, instance1, instance2);
+  }
+
+  /** Returns the symmetric penalty of the wrapped metric for a pair;
+   * both orders of the pair share a table entry */
+  public double penaltySymmetric(Instance instance1, Instance instance2) throws Exception {
+    return lookup(PENALTY_SYMMETRIC, instance1, instance2);
+  }
+
+  /** Returns the unweighted distance of the wrapped metric for a pair */
+  public double distanceNonWeighted(Instance instance1, Instance instance2) throws Exception {
+    return lookup(DISTANCE_NON_WEIGHTED, instance1, instance2);
+  }
+
+  /** Returns the unweighted similarity of the wrapped metric for a pair */
+  public double similarityNonWeighted(Instance instance1, Instance instance2) throws Exception {
+    return lookup(SIMILARITY_NON_WEIGHTED, instance1, instance2);
+  }
+
+  /** Is the wrapped metric distance-based? */
+  public boolean isDistanceBased() {
+    return m_metric.isDistanceBased();
+  }
+
+  /**
+   * Train the wrapped metric
+   * @param data the training instances
+   */
+  public void learnMetric(Instances data) throws Exception {
+    m_metric.learnMetric(data);
+    copyState();
+    invalidate();
+  }
+
+  /** Reset all values that the wrapped metric has learned */
+  public void resetMetric() throws Exception {
+    m_metric.resetMetric();
+    copyState();
+    invalidate();
+  }
+
+  /**
+   * Set the feature weights of the wrapped metric
+   * @param weights an array of double weights for features
+   */
+  public void setWeights(double[] weights) throws Exception {
+    m_metric.setWeights(weights);
+    copyState();
+    invalidate();
+  }
+
+  /**
+   * Get the feature weights of the wrapped metric.  The array may be
+   * modified by the caller, so the cached values are discarded.
+   * @return an array of feature weights
+   */
+  public double[] getWeights() {
+    invalidate();
+    return m_metric.getWeights();
+  }
+
+  /** Create an instance with features corresponding to components of the two given instances */
+  public Instance createDiffInstance(Instance instance1, Instance instance2) {
+    return m_metric.createDiffInstance(instance1, instance2);
+  }
+
+  /** Get the values of the partial derivates for the metric components
+   * for a particular instance pair */
+  public double[] getGradients(Instance instance1, Instance instance2) throws Exception {
+    return m_metric.getGradients(instance1, instance2);
+  }
+
+  /** Given a cluster of instances, return the centroid of that cluster */
+  public Instance getCentroidInstance(Instances instances, boolean fastMode, boolean normalized) {
+    return m_metric.getCentroidInstance(instances, fastMode, normalized);
+  }
+
+  /** Normalizes the values of an Instance utilizing the feature weights of the wrapped metric */
+  public void normalizeInstanceWeighted(Instance inst) {
+    m_metric.normalizeInstanceWeighted(inst);
+    invalidate();
+  }
+
+  /** Normalizes the values of an Instance with the wrapped metric */
+  public void normalizeInstance(Instance inst) throws Exception {
+    m_metric.normalizeInstance(inst);
+    invalidate();
+  }
+
+  public double getMaxDistance() {
+    return m_metric.getMaxDistance();
+  }
+
+  public boolean doesNormalizeData() {
+    return m_metric.doesNormalizeData();
+  }
+
+  public double getNormalizer() {
+    return m_metric.getNormalizer();
+  }
+
+  public void recomputeNormalizer() {
+    m_metric.recomputeNormalizer();
+  }
+
+  public double regularizer() {
+    return m_metric.regularizer();
+  }
+
+  public void recomputeRegularizer() {
+    m_metric.recomputeRegularizer();
+  }
+
+  public void setRegularizer(Regularizer reg) {
+    m_metric.setRegularizer(reg);
+    invalidate();
+  }
+
+  public Regularizer getRegularizer() {
+    return m_metric.getRegularizer();
+  }
+
+  public boolean getTrainable() {
+    return m_metric.getTrainable();
+  }
+
+  public void setTrainable(boolean trainable) {
+    m_metric.setTrainable(trainable);
+    m_trainable = trainable;
+  }
+
+  public boolean getExternal() {
+    return m_metric.getExternal();
+  }
+
+  public void setExternal(boolean external) {
+    m_metric.setExternal(external);
+    m_external = external;
+  }
+
+  public void useClassifier(String classifierClassName, boolean classifierRequiresNominalClass) throws Exception {
+    m_metric.useClassifier(classifierClassName, classifierRequiresNominalClass);
+    invalidate();
+  }
+
+  public void useNoClassifier() {
+    m_metric.useNoClassifier();
+    invalidate();
+  }
+
+  public boolean usesClassifier() {
+    return m_metric.usesClassifier();
+  }
+
+  public void setClassIndex(int classIndex) {
+    m_metric.setClassIndex(classIndex);
+    m_classIndex = classIndex;
+    invalidate();
+  }
+
+  public void setAttrIdxs(int[] attrIdxs) {
+    m_metric.setAttrIdxs(attrIdxs);
+    m_attrIdxs = m_metric.getAttrIndxs();
+    invalidate();
+  }
+
+  public void setAttrIdxs(int startIdx, int endIdx) {
+    m_metric.setAttrIdxs(startIdx, endIdx);
+    m_attrIdxs = m_metric.getAttrIndxs();
+    invalidate();
+  }
+
+  public int getNumAttributes() {
+    return m_metric.getNumAttributes();
+  }
+
+  /** Set/get the wrapped metric */
+  public void setMetric(LearnableMetric metric) {
+    m_metric = metric;
+    copyState();
+    invalidate();
+  }
+  public LearnableMetric getMetric() {
+    return m_metric;
+  }
+
+  /** Set/get the requested number of table entries; the table holds
+   * the largest power of two of at most that many, two at the least */
+  public synchronized void setCacheSize(int cacheSize) {
+    m_cacheSize = cacheSize;
+    m_table = null;
+  }
+  public int getCacheSize() {
+    return m_cacheSize;
+  }
+
+  /** Set/get whether call times are recorded */
+  public void setProfile(boolean profile) {
+    m_profile = profile;
+  }
+  public boolean getProfile() {
+    return m_profile;
+  }
+
+  /** Clears the statistics of all methods */
+  public synchronized void resetStatistics() {
+    m_numCalls = new long[METHOD_NAMES.length];
+    m_numHits = new long[METHOD_NAMES.length];
+    m_numUncached = new long[METHOD_NAMES.length];
+    m_totalTime = new long[METHOD_NAMES.length];
+    m_timeHistogram = new long[METHOD_NAMES.length][NUM_TIME_BUCKETS];
+  }
+
+  /** Returns the number of calls of a method */
+  public synchronized long getNumCalls(int method) {
+    return m_numCalls[method];
+  }
+
+  /** Returns the number of calls of a method answered from the table */
+  public synchronized long getNumHits(int method) {
+    return m_numHits[method];
+  }
+
+  /** Returns the number of calls of a method with unregistered instances */
+  public synchronized long getNumUncached(int method) {
+    return m_numUncached[method];
+  }
+
+  /** Returns the fraction of the cacheable calls of a method that were
+   * answered from the table */
+  public synchronized double getHitRate(int method) {
+    long cacheable = m_numCalls[method] - m_numUncached[method];
+    return cacheable == 0 ? 0 : (double) m_numHits[method] / cacheable;
+  }
+
+  /** Returns the total time spent in a method in nanoseconds, if profiling */
+  public synchronized long getTotalTime(int method) {
+    return m_totalTime[method];
+  }
+
+  /** Returns the histogram of call times of a method, if profiling;
+   * bucket b counts calls that took from 2^b to 2^(b+1) nanoseconds */
+  public synchronized long[] getTimeHistogram(int method) {
+    return (long[]) m_timeHistogram[method].clone();
+  }
+
+  /** Returns a table of the statistics of all methods that were called */
+  public synchronized String getStatistics() {
+    StringBuffer text = new StringBuffer();
+    text.append("Method                    calls       hits   uncached  hit rate");
+    if (m_profile) {
+      text.append("   avg time (ns)");
+    }
+    text.append("\n");
+    for (int m = 0; m < METHOD_NAMES.length; m++) {
+      if (m_numCalls[m] == 0) {
+	continue;
+      }
+      text.append(Utils.padRight(METHOD_NAMES[m], 21));
+      text.append(Utils.padLeft("" + m_numCalls[m], 10));
+      text.append(Utils.padLeft("" + m_numHits[m], 11));
+      text.append(Utils.padLeft("" + m_numUncached[m], 11));
+      text.append(Utils.padLeft(Utils.doubleToString(getHitRate(m), 10, 4), 10));
+      if (m_profile) {
+	text.append(Utils.padLeft("" + (m_totalTime[m] / m_numCalls[m]), 16));
+      }
+      text.append("\n");
+      if (m_profile) {
+	text.append("  time histogram (log2 ns):");
+	for (int b = 0; b < NUM_TIME_BUCKETS; b++) {
+	  if (m_timeHistogram[m][b] > 0) {
+	    text.append(" " + b + ":" + m_timeHistogram[m][b]);
+	  }
+	}
+	text.append("\n");
+      }
+    }
+    return text.toString();
+  }
+
+  /** Create a copy of this metric with its own copy of the wrapped
+   * metric, an empty table and fresh statistics */
+  public synchronized Object clone() {
+    CachingMetric m = (CachingMetric) super.clone();
+    m.m_metric = (LearnableMetric) m_metric.clone();
+    m.copyState();
+    m.m_table = null;
+    m.resetStatistics();
+    // the registered instances are only read, so the copy can share them
+    return m;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector newVector = new Vector(3);
+
+    newVector.addElement(new Option("\tMetric to wrap, with its options.\n"
+				    + "\t(default weka.core.metrics.WeightedEuclidean)",
+				    "M", 1, "-M <metric specification>"));
+    newVector.addElement(new Option("\tNumber of cached values.\n"
+				    + "\t(default " + (1 << 20) + ")",
+				    "C", 1, "-C <num>"));
+    newVector.addElement(new Option("\tRecord the time of every call.",
+				    "P", 0, "-P"));
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+    String optionString = Utils.getOption('M', options);
+    if (optionString.length() != 0) {
+      String[] metricSpec = Utils.splitOptions(optionString);
+      String metricName = metricSpec[0];
+      metricSpec[0] = "";
+      setMetric((LearnableMetric) Utils.forName(LearnableMetric.class,
+						metricName, metricSpec));
+    }
+
+    optionString = Utils.getOption('C', options);
+    if (optionString.length() != 0) {
+      setCacheSize(Integer.parseInt(optionString));
+    }
+
+    setProfile(Utils.getFlag('P', options));
+    Utils.checkForRemainingOptions(options);
+  }
+
+  /**
+   * Gets the current settings of CachingMetric.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String[] getOptions() {
+    String [] options = new String [6];
+    int current = 0;
+
+    options[current++] = "-M";
+    options[current++] = getMetricSpec();
+    options[current++] = "-C";
+    options[current++] = "" + m_cacheSize;
+    if (m_profile) {
+      options[current++] = "-P";
+    }
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+    return options;
+  }
+
+  /** Returns the class name and options of the wrapped metric */
+  protected String getMetricSpec() {
+    if (m_metric instanceof OptionHandler) {
+      return (m_metric.getClass().getName() + " "
+	      + Utils.joinOptions(((OptionHandler) m_metric).getOptions())).trim();
+    }
+    return m_metric.getClass().getName();
+  }
+
+  public String toString() {
+    return "CachingMetric(" + getMetricSpec() + ")";
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    CheckCachingMetric.java
+ *    Checks that CachingMetric returns the values of the metric it wraps
+ *
+ */
+
+package weka.core.metrics;
+
+import java.io.*;
+import java.util.*;
+
+import weka.core.*;
+
+/**
+ * Simple command line checking of CachingMetric.  The values of the
+ * wrapper are compared with the values of the wrapped metric while the
+ * weights change, with a table that is too small for the dataset, for
+ * copies made with clone() and with several threads; finally the options
+ * are checked with CheckOptionHandler.<p>
+ *
+ * Usage: <p>
+ * <code>
+ *     CheckCachingMetric [-t arff file]
+ * </code> <p>
+ *
+ * Valid options are: <p>
+ *
+ * -t arff file <br>
+ * The dataset to check with, numeric attributes and a nominal class as
+ * the last attribute.  A random dataset is used if none is given. <p>
+ *
+ * @version $Revision: 1.1 $
+ */
+public class CheckCachingMetric {
+
+  /** The methods that are compared, ids of CachingMetric */
+  protected static final int [] METHODS = {CachingMetric.DISTANCE,
+					   CachingMetric.SIMILARITY,
+					   CachingMetric.DISTANCE_NON_WEIGHTED,
+					   CachingMetric.SIMILARITY_NON_WEIGHTED};
+
+  /** The dataset */
+  protected Instances m_data;
+
+  /** Random numbers for weights and pairs */
+  protected Random m_random = new Random(1);
+
+  /**
+   * Creates a check
+   * @param data the dataset, numeric attributes and a nominal class
+   */
+  public CheckCachingMetric(Instances data) {
+    m_data = data;
+  }
+
+  /**
+   * Creates a random dataset
+   * @param numInstances the number of instances
+   * @param numAttributes the number of numeric attributes
+   * @param seed the seed of the random numbers
+   */
+  public static Instances randomData(int numInstances, int numAttributes, long seed) {
+    Random random = new Random(seed);
+    FastVector attributes = new FastVector(numAttributes + 1);
+    for (int i = 0; i < numAttributes; i++) {
+      attributes.addElement(new Attribute("a" + i));
+    }
+    FastVector classValues = new FastVector(2);
+    classValues.addElement("c0");
+    classValues.addElement("c1");
+    attributes.addElement(new Attribute("class", classValues));
+    Instances data = new Instances("random", attributes, numInstances);
+    data.setClassIndex(numAttributes);
+    for (int n = 0; n < numInstances; n++) {
+      double [] values = new double[numAttributes + 1];
+      values[numAttributes] = random.nextInt(2);
+      for (int i = 0; i < numAttributes; i++) {
+	values[i] = random.nextGaussian() + values[numAttributes];
+      }
+      data.add(new Instance(1.0, values));
+    }
+    return data;
+  }
+
+  /**
+   * Computes a value with a metric
+   * @param metric the metric
+   * @param method the id of the method in CachingMetric
+   * @param instance1 first instance
+   * @param instance2 second instance
+   */
+  protected static double value(LearnableMetric metric, int method,
+				Instance instance1, Instance instance2) throws Exception {
+    switch (method) {
+    case CachingMetric.DISTANCE:
+      return metric.distance(instance1, instance2);
+    case CachingMetric.SIMILARITY:
+      return metric.similarity(instance1, instance2);
+    case CachingMetric.DISTANCE_NON_WEIGHTED:
+      return metric.distanceNonWeighted(instance1, instance2);
+    default:
+      return metric.similarityNonWeighted(instance1, instance2);
+    }
+  }
+
+  /**
+   * Compares the values of the wrapper with the values of the metric it
+   * wraps for pairs of the dataset, each pair twice
+   * @param caching the wrapper
+   * @param numPairs the number of pairs
+   * @param what describes the situation for the error message
+   * @exception Exception if a value differs
+   */
+  protected void compareValues(CachingMetric caching, int numPairs, String what)
+    throws Exception {
+
+    LearnableMetric metric = caching.getMetric();
+    for (int p = 0; p < numPairs; p++) {
+      Instance instance1 = m_data.instance(m_random.nextInt(m_data.numInstances()));
+      Instance instance2 = m_data.instance(m_random.nextInt(m_data.numInstances()));
+      for (int m = 0; m < METHODS.length; m++) {
+	double expected = value(metric, METHODS[m], instance1, instance2);
+	for (int repeat = 0; repeat < 2; repeat++) {
+	  double actual = value(caching, METHODS[m], instance1, instance2);
+	  if (Double.doubleToLongBits(actual) != Double.doubleToLongBits(expected)) {
+	    throw new Exception(what + ": " + CachingMetric.METHOD_NAMES[METHODS[m]]
+				+ " is " + actual + " instead of " + expected);
+	  }
+	}
+      }
+    }
+  }
+
+  /**
+   * Returns random weights for the attributes of a metric
+   * @param metric the metric
+   */
+  protected double [] randomWeights(LearnableMetric metric) {
+    double [] weights = new double[metric.getNumAttributes()];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = 0.1 + m_random.nextDouble();
+    }
+    return weights;
+  }
+
+  /** Learns random weights, so that training surely changes the metric */
+  protected class RandomWeightsLearner extends MetricLearner {
+
+    public void trainMetric(LearnableMetric metric, Instances instances) throws Exception {
+      metric.setWeights(randomWeights(metric));
+    }
+
+    public double getSimilarity(Instance instance1, Instance instance2) throws Exception {
+      throw new Exception("RandomWeightsLearner has no model");
+    }
+
+    public double getDistance(Instance instance1, Instance instance2) throws Exception {
+      throw new Exception("RandomWeightsLearner has no model");
+    }
+  }
+
+  /**
+   * Checks the values while the weights change through setWeights(),
+   * learnMetric() and changes of the wrapped metric
+   * @exception Exception if a value differs
+   */
+  public void checkValues() throws Exception {
+    System.out.print("Values across weight changes...");
+    WeightedEuclidean euclidean = new WeightedEuclidean();
+    euclidean.setMetricLearner(new RandomWeightsLearner());
+    CachingMetric caching = new CachingMetric(euclidean);
+    caching.buildMetric(m_data);
+    compareValues(caching, 200, "built");
+    if (caching.getNumHits(CachingMetric.DISTANCE) == 0) {
+      throw new Exception("no value was answered from the table");
+    }
+
+    for (int i = 0; i < 3; i++) {
+      caching.setWeights(randomWeights(caching));
+      compareValues(caching, 200, "after setWeights");
+    }
+
+    caching.learnMetric(m_data);
+    compareValues(caching, 200, "after learnMetric");
+
+    // change the wrapped metric behind the back of the wrapper
+    LearnableMetric metric = (LearnableMetric) CachingMetric.unwrap(caching);
+    metric.setWeights(randomWeights(metric));
+    CachingMetric.metricChanged(caching);
+    compareValues(caching, 200, "after metricChanged");
+
+    caching.resetMetric();
+    compareValues(caching, 200, "after resetMetric");
+    System.out.println("OK");
+  }
+
+  /**
+   * Checks a table with room for two values, a single set
+   * @exception Exception if a value differs or isn't evicted
+   */
+  public void checkEviction() throws Exception {
+    System.out.print("Eviction with a tiny table...");
+    CachingMetric caching = new CachingMetric();
+    caching.setOptions(new String[] {"-C", "2"});
+    caching.buildMetric(m_data);
+    compareValues(caching, 500, "tiny table");
+
+    Instance a = m_data.instance(0);
+    Instance b = m_data.instance(1);
+    Instance c = m_data.instance(2);
+    caching.invalidate();
+    caching.resetStatistics();
+    caching.distance(a, b);
+    caching.distance(a, c);
+    caching.distance(a, b);     // hit, both pairs fit
+    caching.distance(b, c);     // evicts (a, c), the less recently used one
+    caching.distance(a, b);     // hit
+    caching.distance(a, c);     // miss
+    if (caching.getNumCalls(CachingMetric.DISTANCE) != 6
+	|| caching.getNumHits(CachingMetric.DISTANCE) != 2) {
+      throw new Exception("expected 2 hits in 6 calls, got "
+			  + caching.getNumHits(CachingMetric.DISTANCE) + " in "
+			  + caching.getNumCalls(CachingMetric.DISTANCE));
+    }
+    System.out.println("OK");
+  }
+
+  /**
+   * Checks that a copy made with clone() has its own metric, table and
+   * statistics
+   * @exception Exception if the copy and the original interfere
+   */
+  public void checkClone() throws Exception {
+    System.out.print("Independence of clone()...");
+    CachingMetric caching = new CachingMetric(new WeightedEuclidean());
+    caching.buildMetric(m_data);
+    compareValues(caching, 100, "original");
+    long numCalls = caching.getNumCalls(CachingMetric.DISTANCE);
+
+    CachingMetric copy = (CachingMetric) caching.clone();
+    if (copy.getMetric() == caching.getMetric()) {
+      throw new Exception("the copy shares the wrapped metric");
+    }
+    if (copy.getNumCalls(CachingMetric.DISTANCE) != 0) {
+      throw new Exception("the copy has the statistics of the original");
+    }
+    copy.setWeights(randomWeights(copy));
+    compareValues(copy, 100, "copy with new weights");
+    compareValues(caching, 100, "original after changing the copy");
+    if (caching.getNumCalls(CachingMetric.DISTANCE) != numCalls + 200) {
+      throw new Exception("calls of the copy were counted by the original");
+    }
+    System.out.println("OK");
+  }
+
+  /**
+   * Checks the values and the statistics with several threads using the
+   * same wrapper
+   * @exception Exception if a value or a count is wrong
+   */
+  public void checkThreads() throws Exception {
+    System.out.print("Several threads...");
+    final CachingMetric caching = new CachingMetric(new WeightedEuclidean());
+    caching.setCacheSize(64);
+    caching.setProfile(true);
+    caching.buildMetric(m_data);
+    final LearnableMetric metric = caching.getMetric();
+    final int numPairs = 20000;
+    final String [] errors = new String[4];
+    Thread [] threads = new Thread[errors.length];
+    for (int t = 0; t < threads.length; t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+	  public void run() {
+	    Random random = new Random(thread);
+	    try {
+	      for (int p = 0; p < numPairs; p++) {
+		Instance instance1 = m_data.instance(random.nextInt(m_data.numInstances()));
+		Instance instance2 = m_data.instance(random.nextInt(m_data.numInstances()));
+		double expected = metric.distance(instance1, instance2);
+		double actual = caching.distance(instance1, instance2);
+		if (actual != expected) {
+		  errors[thread] = "distance is " + actual + " instead of " + expected;
+		  return;
+		}
+	      }
+	    } catch (Exception e) {
+	      errors[thread] = e.toString();
+	    }
+	  }
+	};
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+    }
+    for (int t = 0; t < errors.length; t++) {
+      if (errors[t] != null) {
+	throw new Exception("thread " + t + ": " + errors[t]);
+      }
+    }
+    long numCalls = caching.getNumCalls(CachingMetric.DISTANCE);
+    long numTimes = 0;
+    long [] histogram = caching.getTimeHistogram(CachingMetric.DISTANCE);
+    for (int b = 0; b < histogram.length; b++) {
+      numTimes += histogram[b];
+    }
+    if (numCalls != threads.length * numPairs || numTimes != numCalls) {
+      throw new Exception(threads.length * numPairs + " calls, but " + numCalls
+			  + " counted and " + numTimes + " timed");
+    }
+    System.out.println("OK");
+  }
+
+  /**
+   * Runs all checks
+   * @exception Exception if a check fails
+   */
+  public void doTests() throws Exception {
+    checkValues();
+    checkEviction();
+    checkClone();
+    checkThreads();
+    CheckOptionHandler.checkOptionHandler(new CachingMetric(),
+					  new String[] {"-M", "weka.core.metrics.WeightedDotP",
+							"-C", "64", "-P"});
+  }
+
+  /**
+   * Main method for using the CheckCachingMetric.<p>
+   *
+   * Valid options are: <p>
+   *
+   * -t arff file <br>
+   * The dataset to check with; a random dataset is used if none is given. <p>
+   *
+   * @param args the options to the CheckCachingMetric
+   */
+  public static void main(String [] args) {
+
+    try {
+      String fileName = Utils.getOption('t', args);
+      Utils.checkForRemainingOptions(args);
+      Instances data;
+      if (fileName.length() == 0) {
+	data = randomData(60, 5, 1);
+      } else {
+	data = new Instances(new BufferedReader(new FileReader(fileName)));
+	data.setClassIndex(data.numAttributes() - 1);
+      }
+      new CheckCachingMetric(data).doTests();
+    } catch (Exception ex) {
+      System.err.println(ex.getMessage());
+      System.exit(1);
+    }
+  }
+}
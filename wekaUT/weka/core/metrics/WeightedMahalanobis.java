@@ -23,6 +23,7 @@
 package weka.core.metrics;
 
 import weka.clusterers.InstancePair; 
+import weka.clusterers.ConstraintGraph;
 import weka.core.*;
 import java.util.*;
 
@@ -267,16 +268,14 @@ public class WeightedMahalanobis extends  LearnableMetric implements OptionHandl
   }
 
   /** Get the maxPoints instances */
-  public double [][] getMaxPoints(HashMap constraintMap, Instances instances) throws Exception {
+  public double [][] getMaxPoints(ConstraintGraph constraints, Instances instances) throws Exception {
     m_maxPoints = new double [2][m_weightsMatrix.length];
     InstancePair maxConstraint = null;
     double maxDistance = -Double.MIN_VALUE; 
-    Iterator iterator = constraintMap.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Map.Entry entry = (Map.Entry) iterator.next();
-      int type = ((Integer) entry.getValue()).intValue();
-      if (type == InstancePair.CANNOT_LINK) {
-	InstancePair pair = (InstancePair) entry.getKey();
+    ArrayList pairs = constraints.toPairs();
+    for (int i = 0; i < pairs.size(); i++) {
+      InstancePair pair = (InstancePair) pairs.get(i);
+      if (pair.linkType == InstancePair.CANNOT_LINK) {
 	int firstIdx = pair.first;
 	int secondIdx = pair.second;
 	Instance instance1 = instances.instance(firstIdx);
@@ -306,14 +305,12 @@ public class WeightedMahalanobis extends  LearnableMetric implements OptionHandl
       if (m_weightsMatrixSquare != null) { 
 	m_weightsMatrixSquare = null;
 	System.out.println("recursing");
-	return getMaxPoints(constraintMap, instances);
+	return getMaxPoints(constraints, instances);
       } else {
-	iterator = constraintMap.entrySet().iterator();
-	while (iterator.hasNext()) {
-	  Map.Entry entry = (Map.Entry) iterator.next();
-	  int type = ((Integer) entry.getValue()).intValue();
-	  if (type == InstancePair.CANNOT_LINK) {
-	    maxConstraint = (InstancePair) entry.getKey();
+	for (int i = 0; i < pairs.size(); i++) {
+	  InstancePair pair = (InstancePair) pairs.get(i);
+	  if (pair.linkType == InstancePair.CANNOT_LINK) {
+	    maxConstraint = pair;
 	    break;
 	  }
 	}
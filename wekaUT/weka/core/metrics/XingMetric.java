@@ -24,6 +24,7 @@ package weka.core.metrics;
 
 import weka.core.*;
 import weka.clusterers.InstancePair;
+import weka.clusterers.ConstraintGraph;
 import java.util.*;
 import java.io.*;
 
@@ -291,7 +292,7 @@ public class XingMetric extends OfflineLearnableMetric
   }
 
 
-  public void buildAttributeMatrix (Instances data, HashMap constraintsHash) throws Exception {
+  public void buildAttributeMatrix (Instances data, ConstraintGraph constraints) throws Exception {
 
     m_simConstraints = new int[m_numInstances][m_numInstances];
     m_diffConstraints = new int[m_numInstances][m_numInstances];
@@ -303,12 +304,12 @@ public class XingMetric extends OfflineLearnableMetric
       }
     }
 
-    Iterator iter = ((Set) constraintsHash.keySet()).iterator();; 
-    while (iter.hasNext()) {
-      InstancePair pair = (InstancePair) iter.next();
+    ArrayList pairs = constraints.toPairs();
+    for (int i = 0; i < pairs.size(); i++) {
+      InstancePair pair = (InstancePair) pairs.get(i);
       int first = pair.first;
       int second = pair.second;
-      int linkType = ((Integer) constraintsHash.get(pair)).intValue();
+      int linkType = pair.linkType;
       if (linkType == InstancePair.MUST_LINK) {
 	m_simConstraints[first][second] = 1;
 	m_simConstraints[second][first] = 1;
@@ -74,6 +74,9 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
 
   /** Use blocking ? */
   protected boolean m_useBlocking = false; 
+
+  /** If not null, blocking is done with MinHash/LSH instead of Blocking */
+  protected LSHBlocking m_LSHBlocking = null;
   
   /**
    * temporary variable holding cluster assignments
@@ -91,6 +94,9 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
   protected int m_numTotalPairsTrain = 0;  // the overall number of pairs in the test split
   protected int m_numTotalPairsTest = 0;  // the overall number of pairs in the test split
 
+  protected int m_numCandidatePairs = 0;  // pairs in the test split that passed blocking
+  protected int m_numTrueCandidatePairs = 0;  // true pairs among them
+
   protected int m_numPotentialDupePairsTrain = 0;
   protected int m_numActualDupePairsTrain = 0;
   protected int m_numPotentialNonDupePairsTrain = 0;
@@ -361,19 +367,34 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
 	Arrays.fill(m_distanceMatrix[i], Double.MAX_VALUE);
       }
       
-      Blocking blocker = new Blocking();
-      blocker.buildIndex(m_testInstances);
-      InstancePair[] pairs = blocker.getMostSimilarPairs(m_testInstances.numClasses() * 50);
-      for (int i = 0; i < pairs.length && pairs[i] != null; i++) {
-	int idx1 = ((Integer) m_reverseInstancesHash.get(pairs[i].instance1)).intValue();
-	int idx2 = ((Integer) m_reverseInstancesHash.get(pairs[i].instance2)).intValue();
-	m_distanceMatrix[idx1][idx2] = m_distanceMatrix[idx1][idx2] = pairs[i].value;
+      if (m_LSHBlocking != null) {
+	m_LSHBlocking.buildIndex(m_testInstances);
+	for (int i = 0; i < m_LSHBlocking.numCandidatePairs(); i++) {
+	  int idx1 = ((Integer) m_reverseInstancesHash.get(m_testInstances.instance(m_LSHBlocking.getFirst(i)))).intValue();
+	  int idx2 = ((Integer) m_reverseInstancesHash.get(m_testInstances.instance(m_LSHBlocking.getSecond(i)))).intValue();
+	  m_distanceMatrix[idx1][idx2] = m_distanceMatrix[idx2][idx1] = 0;
+	}
+      } else { 
+	Blocking blocker = new Blocking();
+	blocker.buildIndex(m_testInstances);
+	InstancePair[] pairs = blocker.getMostSimilarPairs(m_testInstances.numClasses() * 50);
+	for (int i = 0; i < pairs.length && pairs[i] != null; i++) {
+	  int idx1 = ((Integer) m_reverseInstancesHash.get(pairs[i].instance1)).intValue();
+	  int idx2 = ((Integer) m_reverseInstancesHash.get(pairs[i].instance2)).intValue();
+	  m_distanceMatrix[idx1][idx2] = m_distanceMatrix[idx1][idx2] = pairs[i].value;
+	}
       }
     }
     
+    m_numCandidatePairs = 0;
+    m_numTrueCandidatePairs = 0;
     for (int i = 0; i < n; i++) {
       for (int j = i+1; j < n; j++) {
 	if (!m_useBlocking || m_distanceMatrix[i][j] != Double.MAX_VALUE) {
+	  m_numCandidatePairs++;
+	  if (m_classValues[i] == m_classValues[j]) {
+	    m_numTrueCandidatePairs++;
+	  }
 	  m_distanceMatrix[i][j] = m_distanceMatrix[j][i] =
 	    m_metric.distance((Instance) m_instancesHash.get(new Integer(i)),
 			      (Instance) m_instancesHash.get(new Integer(j)));
@@ -522,7 +543,7 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
 
   /** Add the current state of things to statistics */
   protected void accumulateStatistics() {
-    Object[] currentStats = new Object[16];
+    Object[] currentStats = new Object[18];
 
     double precision = (m_numGoodPairs+0.0)/m_numTotalPairs;
     double recall = (m_numGoodPairs+0.0)/m_numTruePairs;
@@ -553,6 +574,10 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
     currentStats[statIdx++] = new Double(m_numTruePairs);     
     currentStats[statIdx++] = new Double((m_numTruePairs + 0.0)/m_numTotalPairsTest);
 
+    // Blocking statistics
+    currentStats[statIdx++] = new Double(getBlockingRecall());
+    currentStats[statIdx++] = new Double(getReductionRatio());
+
     // Timing statistics
     currentStats[statIdx++] = new Double(m_trainTime);
     currentStats[statIdx++] = new Double((System.currentTimeMillis() - m_testTimeStart)/1000.0);
@@ -613,6 +638,36 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
     return m_useBlocking;
   }
 
+  /** Set the MinHash/LSH blocking to use instead of Blocking
+   * @param blocking the LSH blocking, or null to use Blocking
+   */
+  public void setLSHBlocking(LSHBlocking blocking) {
+    m_LSHBlocking = blocking;
+  }
+
+  /** Get the MinHash/LSH blocking that is used instead of Blocking
+   * @returns the LSH blocking, or null if Blocking is used
+   */
+  public LSHBlocking getLSHBlocking() {
+    return m_LSHBlocking;
+  }
+
+  /** The fraction of the true pairs of the test split that passed
+   * blocking, i.e. that were compared with the metric
+   * @returns the blocking recall
+   */
+  public double getBlockingRecall() {
+    return DedupingEvaluation.blockingRecall(m_numTrueCandidatePairs, m_numTruePairs);
+  }
+
+  /** The fraction of the pairs of the test split that were not compared
+   * with the metric thanks to blocking
+   * @returns the reduction ratio
+   */
+  public double getReductionRatio() {
+    return DedupingEvaluation.reductionRatio(m_numCandidatePairs, m_numTotalPairsTest);
+  }
+
   
     /**
    * Returns an enumeration describing the available options
@@ -623,6 +678,8 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
     Vector newVector = new Vector(2);
     newVector.addElement(new Option("\tMetric.\n"
 				    +"\t(default=ClassifierInstanceMetric)", "M", 1,"-M metric_name metric_options"));
+    newVector.addElement(new Option("\tBlock with MinHash/LSH.\n"
+				    +"\t(default=no blocking)", "L", 1,"-L lsh_options"));
     return newVector.elements();
   }
 
@@ -634,6 +691,9 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
    * -M metric options <p>
    * InstanceMetric used <p>
    *
+   * -L LSH options <p>
+   * Block with LSHBlocking using the given options <p>
+   *
    * @param options the list of options as an array of strings
    * @exception Exception if an option is not supported
    *
@@ -649,6 +709,16 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
       System.out.println("Metric name: " + metricName + "\nMetric parameters: " + concatStringArray(metricSpec));
       setMetric(InstanceMetric.forName(metricName, metricSpec));
     }
+
+    String lshString = Utils.getOption('L', options);
+    if (lshString.length() != 0) {
+      LSHBlocking blocking = new LSHBlocking();
+      blocking.setOptions(Utils.splitOptions(lshString));
+      setLSHBlocking(blocking);
+      setUseBlocking(true);
+    } else {
+      setLSHBlocking(null);
+    }
   }
 
 
@@ -663,6 +733,9 @@ public class BasicDeduper extends Deduper implements OptionHandler, Serializable
 
     if (m_useBlocking == false) { 
       options[current++] = "-NB"; 
+    } else if (m_LSHBlocking != null) {
+      options[current++] = "-L";
+      options[current++] = Utils.joinOptions(m_LSHBlocking.getOptions());
     }
 
     options[current++] = "-T";
@@ -86,9 +86,39 @@ public class DedupingEvaluation {
     System.out.println("testInstances: " + testInstances.numInstances() + " true=" + numTrueClasses + " desired:" + numObjects);
     System.out.println("numClasses=" + testInstances.numClasses());
     deduper.findDuplicates(testInstances, numObjects);
+    if (deduper instanceof BasicDeduper && ((BasicDeduper) deduper).getUseBlocking()) {
+      System.out.println("Blocking recall=" + ((BasicDeduper) deduper).getBlockingRecall()
+			 + " reduction ratio=" + ((BasicDeduper) deduper).getReductionRatio());
+    }
     return deduper.getStatistics();
   }
 
+  /** The recall of blocking (a.k.a. pairs completeness): the fraction
+   * of the true duplicate pairs that are among the candidate pairs
+   * @param numTrueCandidatePairs the number of true pairs among the candidates
+   * @param numTruePairs the number of true pairs overall
+   * @return the blocking recall, 1 if there are no true pairs
+   */
+  public static double blockingRecall(long numTrueCandidatePairs, long numTruePairs) {
+    if (numTruePairs == 0) {
+      return 1;
+    }
+    return (numTrueCandidatePairs + 0.0) / numTruePairs;
+  }
+
+  /** The reduction ratio of blocking: the fraction of all pairs that
+   * are not candidate pairs, and need not be compared
+   * @param numCandidatePairs the number of candidate pairs
+   * @param numTotalPairs the number of pairs overall
+   * @return the reduction ratio, 0 if there are no pairs
+   */
+  public static double reductionRatio(long numCandidatePairs, long numTotalPairs) {
+    if (numTotalPairs == 0) {
+      return 0;
+    }
+    return 1 - (numCandidatePairs + 0.0) / numTotalPairs;
+  }
+
   /** A helper function that determines how many classes are actually
    * represented in an Instances object
    * @param instances a set of instances
@@ -106,6 +106,45 @@ public class Blocking implements OptionHandler, Serializable {
   /** Should IDF weighting be used? */
   protected boolean m_useIDF = true;
 
+  /** Should the most similar pairs be found by streaming over primitive
+   * posting lists, instead of materialising all pairs that share a
+   * token in m_pairSet?  The streaming mode scores pairs by their cosine
+   * similarity, while similarity() divides by the length of the first
+   * instance twice, so the two modes can rank pairs differently. */
+  protected boolean m_streaming = false;
+
+  /** In the streaming mode, tokens that occur in more than this
+   * fraction of the instances are ignored as stop-tokens */
+  protected double m_maxDocFrequency = 1.0;
+
+  /** In the streaming mode, only the this many rarest tokens of each
+   * instance are indexed and used to find candidates (0 = all tokens).
+   * The candidates are still scored with all their tokens. */
+  protected int m_prefixLength = 0;
+
+  /** The streaming index: the tokens of instance i are at
+   * m_instanceOffsets[i] ... m_instanceOffsets[i+1]-1 of
+   * m_instanceTokens, rarest first, with their weights divided by the
+   * length of the instance vector in m_instanceWeights */
+  protected int[] m_instanceOffsets = null;
+  protected int[] m_instanceTokens = null;
+  protected double[] m_instanceWeights = null;
+
+  /** The streaming index: the posting list of token t is at
+   * m_postingOffsets[t] ... m_postingOffsets[t+1]-1 of m_postingInstances,
+   * in increasing order of the instances, with the normalized weights in
+   * m_postingWeights */
+  protected int[] m_postingOffsets = null;
+  protected int[] m_postingInstances = null;
+  protected double[] m_postingWeights = null;
+
+  /** The number of distinct tokens in the streaming index, including
+   * the ignored ones */
+  protected int m_numTokens = 0;
+
+  /** The number of tokens in the streaming index that are not ignored */
+  protected int m_numIndexedTokens = 0;
+
   /** Construct a vector space from a given set of examples
    * @param strings a list of strings from which the inverted index is
    * to be constructed
@@ -119,6 +158,10 @@ public class Blocking implements OptionHandler, Serializable {
    /** Given a list of strings, build the vector space
    */
   public void buildIndex(Instances instances) throws Exception {
+    if (m_streaming) {
+      buildStreamingIndex(instances);
+      return;
+    }
     m_instances = instances; 
     m_instanceRefHash = new HashMap();
     m_tokenHash = new HashMap();
@@ -146,6 +189,174 @@ public class Blocking implements OptionHandler, Serializable {
     System.out.println(getTimestamp() + " Created a set with " + m_pairSet.size() + " pairs");
   }
 
+  /** Builds the primitive posting lists of the streaming mode.  No pairs
+   * are created; they are scored on demand by getMostSimilarPairs.
+   */
+  protected void buildStreamingIndex(Instances instances) throws Exception {
+    m_instances = instances; 
+    m_instanceRefHash = new HashMap();
+    m_tokenHash = new HashMap();
+    m_instanceRefs = new ArrayList();
+    m_pairSet.clear();
+    int classIndex = instances.classIndex();
+    int numInstances = instances.numInstances();
+
+    // tokenize, mapping tokens to consecutive ids; a token occurs at
+    // most once per instance, with its count
+    HashMap tokenIds = new HashMap();
+    int [] offsets = new int[numInstances + 1];
+    int [] tokens = new int[16];
+    int [] counts = new int[16];
+    int [] docFrequencies = new int[16];
+    for (int i = 0; i < numInstances; i++) { 
+      Instance instance = instances.instance(i);
+      StringBuffer buffer = new StringBuffer();
+      for (int j = 0; j < instance.numAttributes(); j++) {
+	if (j != classIndex) {
+	  buffer.append(instance.stringValue(j)).append(" ");
+	} 
+      }
+      HashMapVector vector = m_tokenizer.tokenize(buffer.toString());
+      int current = offsets[i];
+      if (current + vector.size() > tokens.length) {
+	tokens = grow(tokens, current + vector.size());
+	counts = grow(counts, current + vector.size());
+      }
+      Iterator mapEntries = vector.iterator();
+      while (mapEntries.hasNext()) {
+	Map.Entry entry = (Map.Entry)mapEntries.next();
+	Integer id = (Integer) tokenIds.get(entry.getKey());
+	if (id == null) {
+	  id = new Integer(tokenIds.size());
+	  tokenIds.put(entry.getKey(), id);
+	  if (id.intValue() >= docFrequencies.length) {
+	    docFrequencies = grow(docFrequencies, id.intValue() + 1);
+	  }
+	}
+	tokens[current] = id.intValue();
+	counts[current] = (int)((Weight)entry.getValue()).getValue();
+	docFrequencies[id.intValue()]++;
+	current++;
+      }
+      offsets[i+1] = current;
+    }
+    m_numTokens = tokenIds.size();
+    tokenIds = null;
+
+    // IDF factors; tokens that occur in all instances or in too many
+    // of them are ignored
+    double N = numInstances;
+    double [] idfs = new double[m_numTokens];
+    m_numIndexedTokens = 0;
+    for (int t = 0; t < m_numTokens; t++) {
+      if (docFrequencies[t] <= m_maxDocFrequency * N) {
+	idfs[t] = Math.log(N/docFrequencies[t]);
+      }
+      if (idfs[t] != 0) {
+	m_numIndexedTokens++;
+      }
+    }
+
+    // rank the tokens from the rarest to the most frequent
+    long [] keys = new long[m_numTokens];
+    for (int t = 0; t < m_numTokens; t++) {
+      keys[t] = ((long) docFrequencies[t] << 32) | t;
+    }
+    Arrays.sort(keys);
+    int [] ranks = new int[m_numTokens];
+    int [] tokenOfRank = new int[m_numTokens];
+    for (int r = 0; r < m_numTokens; r++) {
+      tokenOfRank[r] = (int) keys[r];
+      ranks[tokenOfRank[r]] = r;
+    }
+    keys = null;
+
+    // the vector of each instance, rarest tokens first, normalized
+    m_instanceOffsets = new int[numInstances + 1];
+    m_instanceTokens = new int[offsets[numInstances]];
+    m_instanceWeights = new double[offsets[numInstances]];
+    int [] postingCounts = new int[m_numTokens + 1];
+    long [] entries = new long[16];
+    for (int i = 0; i < numInstances; i++) {
+      int numEntries = 0;
+      for (int e = offsets[i]; e < offsets[i+1]; e++) {
+	if (idfs[tokens[e]] != 0) {
+	  if (numEntries == entries.length) {
+	    entries = grow(entries, numEntries + 1);
+	  }
+	  entries[numEntries++] = ((long) ranks[tokens[e]] << 32) | counts[e];
+	}
+      }
+      Arrays.sort(entries, 0, numEntries);
+
+      int start = m_instanceOffsets[i];
+      double length = 0;
+      for (int e = 0; e < numEntries; e++) {
+	int token = tokenOfRank[(int) (entries[e] >>> 32)];
+	int count = (int) entries[e];
+	double weight = m_useIDF ? idfs[token] * count : count;
+	m_instanceTokens[start + e] = token;
+	m_instanceWeights[start + e] = weight;
+	length += weight * weight;
+      }
+      length = Math.sqrt(length);
+      for (int e = 0; e < numEntries; e++) {
+	m_instanceWeights[start + e] /= length;
+      }
+      m_instanceOffsets[i+1] = start + numEntries;
+
+      for (int e = start; e < prefixEnd(i); e++) {
+	postingCounts[m_instanceTokens[e] + 1]++;
+      }
+    }
+    offsets = null;
+    tokens = null;
+    counts = null;
+
+    // posting lists of the indexed prefixes, in the order of the instances
+    m_postingOffsets = new int[m_numTokens + 1];
+    for (int t = 0; t < m_numTokens; t++) {
+      m_postingOffsets[t+1] = m_postingOffsets[t] + postingCounts[t+1];
+    }
+    m_postingInstances = new int[m_postingOffsets[m_numTokens]];
+    m_postingWeights = new double[m_postingOffsets[m_numTokens]];
+    int [] next = postingCounts;
+    System.arraycopy(m_postingOffsets, 0, next, 0, m_numTokens);
+    for (int i = 0; i < numInstances; i++) {
+      for (int e = m_instanceOffsets[i]; e < prefixEnd(i); e++) {
+	int pos = next[m_instanceTokens[e]]++;
+	m_postingInstances[pos] = i;
+	m_postingWeights[pos] = m_instanceWeights[e];
+      }
+    }
+    
+    System.out.println(getTimestamp() + " Indexed " +  numInstances + " documents with " + size()
+		       + " unique terms in " + m_postingInstances.length + " postings.");
+  }
+
+  /** The end of the indexed prefix of an instance in the streaming index */
+  protected int prefixEnd(int idx) {
+    int end = m_instanceOffsets[idx+1];
+    if (m_prefixLength > 0 && m_instanceOffsets[idx] + m_prefixLength < end) {
+      end = m_instanceOffsets[idx] + m_prefixLength;
+    }
+    return end;
+  }
+
+  /** Returns a copy of the array with room for at least min elements */
+  protected static int[] grow(int[] array, int min) {
+    int [] newArray = new int[Math.max(min, 2 * array.length)];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+
+  /** Returns a copy of the array with room for at least min elements */
+  protected static long[] grow(long[] array, int min) {
+    long [] newArray = new long[Math.max(min, 2 * array.length)];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+
   /** Index a given Instance using its corresponding vector */
   protected void indexInstance(Instance instance, int idx, String string, HashMapVector vector) {
     // Create a new reference
@@ -313,6 +524,9 @@ public class Blocking implements OptionHandler, Serializable {
   /** Return n most similar pairs
    */
   public InstancePair[] getMostSimilarPairs(int numPairs) {
+    if (m_streaming) {
+      return getMostSimilarPairsStreaming(numPairs);
+    }
     Iterator iterator = m_pairSet.iterator();
     int i = 0;
     InstancePair [] pairs = new InstancePair[numPairs]; 
@@ -325,9 +539,190 @@ public class Blocking implements OptionHandler, Serializable {
   } 
   
 
+  /** Finds the n most similar pairs with the streaming index.  Every
+   * instance is used as a query in turn: the cosine similarities to all
+   * preceding instances that share an indexed token are accumulated from
+   * the posting lists, and the pairs are offered to a heap that only
+   * keeps the n best ones.  Memory is linear in the number of instances
+   * and n, regardless of how many pairs share tokens.
+   */
+  protected InstancePair[] getMostSimilarPairsStreaming(int numPairs) {
+    int numInstances = m_instanceOffsets.length - 1;
+    TopPairs topPairs = new TopPairs(numPairs);
+    double [] scores = new double[numInstances];
+    int [] lastQuery = new int[numInstances];
+    Arrays.fill(lastQuery, -1);
+    int [] candidates = new int[numInstances];
+    // with a prefix, the candidates are scored against the whole query
+    double [] queryWeights = (m_prefixLength > 0) ? new double[m_numTokens] : null;
+
+    for (int q = 0; q < numInstances; q++) {
+      int numCandidates = 0;
+      for (int e = m_instanceOffsets[q]; e < prefixEnd(q); e++) {
+	int token = m_instanceTokens[e];
+	double weight = m_instanceWeights[e];
+	for (int p = m_postingOffsets[token]; p < m_postingOffsets[token+1]; p++) {
+	  int candidate = m_postingInstances[p];
+	  if (candidate >= q) {
+	    break;
+	  }
+	  if (lastQuery[candidate] != q) {
+	    lastQuery[candidate] = q;
+	    scores[candidate] = 0;
+	    candidates[numCandidates++] = candidate;
+	  }
+	  scores[candidate] += weight * m_postingWeights[p];
+	}
+      }
+      if (numCandidates == 0) {
+	continue;
+      }
+
+      if (queryWeights != null) {
+	for (int e = m_instanceOffsets[q]; e < m_instanceOffsets[q+1]; e++) {
+	  queryWeights[m_instanceTokens[e]] = m_instanceWeights[e];
+	}
+      }
+      for (int c = 0; c < numCandidates; c++) {
+	int candidate = candidates[c];
+	double score = scores[candidate];
+	if (queryWeights != null) {
+	  score = 0;
+	  for (int e = m_instanceOffsets[candidate]; e < m_instanceOffsets[candidate+1]; e++) {
+	    score += m_instanceWeights[e] * queryWeights[m_instanceTokens[e]];
+	  }
+	}
+	topPairs.offer(score, candidate, q);
+      }
+      if (queryWeights != null) {
+	for (int e = m_instanceOffsets[q]; e < m_instanceOffsets[q+1]; e++) {
+	  queryWeights[m_instanceTokens[e]] = 0;
+	}
+      }
+    }
+
+    InstancePair [] pairs = new InstancePair[numPairs];
+    int [] first = new int[1];
+    int [] second = new int[1];
+    for (int i = topPairs.size() - 1; i >= 0; i--) {
+      double sim = topPairs.poll(first, second);
+      Instance instance1 = m_instances.instance(first[0]);
+      Instance instance2 = m_instances.instance(second[0]);
+      pairs[i] = new InstancePair(instance1, instance2,
+				  (instance1.classValue() == instance2.classValue()),
+				  sim);
+    }
+    return pairs;
+  }
+
+  /** A bounded heap of instance pairs that keeps the pairs with the
+   * highest similarities.  Ties are broken in favour of the pair with
+   * the smaller indices, so the result does not depend on the order in
+   * which the pairs are offered.  The root is the worst pair kept.
+   */
+  protected static class TopPairs {
+    protected double[] m_values;
+    protected int[] m_first;
+    protected int[] m_second;
+    protected int m_size = 0;
+
+    public TopPairs(int capacity) {
+      m_values = new double[capacity];
+      m_first = new int[capacity];
+      m_second = new int[capacity];
+    }
+
+    public int size() {
+      return m_size;
+    }
+
+    /** Is the pair at heap position i worse than the given pair? */
+    protected boolean worse(int i, double value, int first, int second) {
+      if (m_values[i] != value) {
+	return m_values[i] < value;
+      }
+      if (m_first[i] != first) {
+	return m_first[i] > first;
+      }
+      return m_second[i] > second;
+    }
+
+    /** Adds the pair if it is among the best pairs seen so far */
+    public void offer(double value, int first, int second) {
+      if (m_size < m_values.length) {
+	// sift up from a new leaf
+	int i = m_size++;
+	while (i > 0) {
+	  int parent = (i - 1) / 2;
+	  if (!worse(parent, value, first, second)) {
+	    // the parent is better than the new pair, it has to move down
+	    set(i, parent);
+	    i = parent;
+	  } else {
+	    break;
+	  }
+	}
+	set(i, value, first, second);
+      } else if (m_size > 0 && worse(0, value, first, second)) {
+	siftDown(value, first, second);
+      }
+    }
+
+    /** Removes the worst pair
+     * @param first receives the first index of the pair
+     * @param second receives the second index of the pair
+     * @return the similarity of the pair
+     */
+    public double poll(int[] first, int[] second) {
+      double value = m_values[0];
+      first[0] = m_first[0];
+      second[0] = m_second[0];
+      m_size--;
+      if (m_size > 0) {
+	siftDown(m_values[m_size], m_first[m_size], m_second[m_size]);
+      }
+      return value;
+    }
+
+    /** Puts the pair at the root and moves it down to its place */
+    protected void siftDown(double value, int first, int second) {
+      int i = 0;
+      while (true) {
+	int child = 2 * i + 1;
+	if (child >= m_size) {
+	  break;
+	}
+	if (child + 1 < m_size && worse(child + 1, m_values[child], m_first[child], m_second[child])) {
+	  child++;
+	}
+	if (worse(child, value, first, second)) {
+	  set(i, child);
+	  i = child;
+	} else {
+	  break;
+	}
+      }
+      set(i, value, first, second);
+    }
+
+    protected void set(int i, int from) {
+      set(i, m_values[from], m_first[from], m_second[from]);
+    }
+
+    protected void set(int i, double value, int first, int second) {
+      m_values[i] = value;
+      m_first[i] = first;
+      m_second[i] = second;
+    }
+  }
+
+
   /** Return the number of tokens indexed.
    * @return the number of tokens indexed*/
   public int size() {
+    if (m_streaming && m_instanceOffsets != null) {
+      return m_numIndexedTokens;
+    }
     return m_tokenHash.size();
   }
 
@@ -360,15 +755,70 @@ public class Blocking implements OptionHandler, Serializable {
     return m_useIDF;
   } 
 
+  /** Turn the streaming mode on/off
+   * @param streaming if true, the most similar pairs are found with
+   * primitive posting lists and a bounded heap instead of a set of all
+   * pairs that share a token
+   */
+  public void setStreaming(boolean streaming) {
+    m_streaming = streaming;
+  }
+
+  /** check whether the streaming mode is on/off
+   * @return true if the streaming mode is on
+   */
+  public boolean getStreaming() {
+    return m_streaming;
+  }
+
+  /** Set the maximum document frequency of the tokens used in the streaming mode
+   * @param maxDocFrequency tokens that occur in a larger fraction of the
+   * instances are ignored
+   */
+  public void setMaxDocFrequency(double maxDocFrequency) {
+    m_maxDocFrequency = maxDocFrequency;
+  }
+
+  /** Get the maximum document frequency of the tokens used in the streaming mode
+   * @return the fraction of instances above which tokens are ignored
+   */
+  public double getMaxDocFrequency() {
+    return m_maxDocFrequency;
+  }
+
+  /** Set the number of rarest tokens of each instance that are indexed
+   * in the streaming mode
+   * @param prefixLength the number of tokens, 0 for all tokens
+   */
+  public void setPrefixLength(int prefixLength) {
+    m_prefixLength = prefixLength;
+  }
+
+  /** Get the number of rarest tokens of each instance that are indexed
+   * in the streaming mode
+   * @return the number of tokens, 0 for all tokens
+   */
+  public int getPrefixLength() {
+    return m_prefixLength;
+  }
+
   /**
    * Gets the current settings of Blocking
    *
    * @return an array of strings suitable for passing to setOptions()
    */
   public String [] getOptions() {
-    String [] options = new String [1];
+    String [] options = new String [5];
     int current = 0;
 
+    if (m_streaming) {
+      options[current++] = "-S";
+      options[current++] = "-F";
+      options[current++] = "" + m_maxDocFrequency;
+      options[current++] = "-P";
+      options[current++] = "" + m_prefixLength;
+    }
+
     while (current < options.length) {
       options[current++] = "";
     }
@@ -388,8 +838,34 @@ public class Blocking implements OptionHandler, Serializable {
 
   /**
    * Parses a given list of options. Valid options are:<p>
+   *
+   * -S <br>
+   * Find the most similar pairs with posting lists and a bounded heap <p>
+   *
+   * -F fraction <br>
+   * Ignore tokens that occur in more than this fraction of the instances
+   * in the streaming mode (default 1.0) <p>
+   *
+   * -P num <br>
+   * Only index the num rarest tokens of each instance in the streaming
+   * mode (default 0 = all) <p>
    */
   public void setOptions(String[] options) throws Exception {
+    setStreaming(Utils.getFlag('S', options));
+
+    String optionString = Utils.getOption('F', options);
+    if (optionString.length() != 0) {
+      setMaxDocFrequency(Double.parseDouble(optionString));
+    } else {
+      setMaxDocFrequency(1.0);
+    }
+
+    optionString = Utils.getOption('P', options);
+    if (optionString.length() != 0) {
+      setPrefixLength(Integer.parseInt(optionString));
+    } else {
+      setPrefixLength(0);
+    }
   }
 
   /**
@@ -398,7 +874,16 @@ public class Blocking implements OptionHandler, Serializable {
    * @return an enumeration of all the available options.
    */
   public Enumeration listOptions() {
-    Vector newVector = new Vector(0);
+    Vector newVector = new Vector(3);
+    newVector.addElement(new Option("\tFind the most similar pairs with posting lists\n"
+				    + "\tand a bounded heap, without creating all pairs",
+				    "S", 0, "-S"));
+    newVector.addElement(new Option("\tIgnore tokens that occur in more than this fraction\n"
+				    + "\tof the instances in the streaming mode (default 1.0)",
+				    "F", 1, "-F <fraction>"));
+    newVector.addElement(new Option("\tOnly index the given number of rarest tokens of\n"
+				    + "\teach instance in the streaming mode (default 0 = all)",
+				    "P", 1, "-P <num>"));
     return newVector.elements();
   }
 } 
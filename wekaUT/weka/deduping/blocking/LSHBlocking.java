@@ -0,0 +1,486 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    LSHBlocking.java
+ *    MinHash signatures with banded locality-sensitive hashing
+ *
+ */
+
+
+package weka.deduping.blocking;
+
+import java.util.*;
+import java.io.Serializable;
+import weka.core.*;
+import java.text.SimpleDateFormat;
+
+import weka.deduping.metrics.*;
+import weka.deduping.InstancePair;
+
+/**
+ * This class takes a set of records, amalgamates them into single
+ * strings and signs the token set of each string with MinHash.  The
+ * signatures are cut into bands of rows, and two records become a
+ * candidate pair if all rows of at least one band agree.  A pair with
+ * Jaccard similarity s of its token sets becomes a candidate with
+ * probability 1 - (1 - s^r)^b for b bands of r rows, so more bands raise
+ * the recall and more rows raise the reduction of the number of pairs.
+ * Unlike Blocking, the time and memory needed do not depend on how
+ * frequent the tokens are, only on the number of records and the sizes
+ * of the buckets.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class LSHBlocking implements OptionHandler, Serializable {
+  /** The dataset that contains the instances */
+  protected Instances m_instances = null;
+
+  /** An underlying tokenizer that is used for converting strings
+   * into token sets
+   */
+  protected Tokenizer m_tokenizer = new WordTokenizer();
+
+  /** The number of bands */
+  protected int m_numBands = 20;
+
+  /** The number of rows (MinHash values) per band */
+  protected int m_numRows = 5;
+
+  /** Buckets with more records are skipped, 0 for no limit */
+  protected int m_maxBucketSize = 0;
+
+  /** Seed for the hash functions */
+  protected int m_seed = 1;
+
+  /** The hashes of the bands of the MinHash signatures, m_numBands
+   * values per record.  Only the band hashes are kept, the signatures
+   * themselves would take m_numRows times as much memory. */
+  protected int[] m_bandHashes = null;
+
+  /** Records without any tokens, which are never candidates */
+  protected boolean[] m_empty = null;
+
+  /** The candidate pairs, first < second, sorted */
+  protected int[] m_first = null;
+  protected int[] m_second = null;
+
+  /** Builds the signatures and finds the candidate pairs
+   * @param instances the records; the class attribute is ignored
+   */
+  public void buildIndex(Instances instances) throws Exception {
+    m_instances = instances;
+    int numInstances = instances.numInstances();
+    int classIndex = instances.classIndex();
+    int numHashes = m_numBands * m_numRows;
+    int [] hashSeeds = hashSeeds(numHashes);
+    int [] signature = new int[numHashes];
+
+    m_bandHashes = new int[numInstances * m_numBands];
+    m_empty = new boolean[numInstances];
+    for (int i = 0; i < numInstances; i++) {
+      Instance instance = instances.instance(i);
+      StringBuffer buffer = new StringBuffer();
+      for (int j = 0; j < instance.numAttributes(); j++) {
+	if (j != classIndex) {
+	  buffer.append(instance.stringValue(j)).append(" ");
+	}
+      }
+      HashMapVector vector = m_tokenizer.tokenize(buffer.toString());
+      m_empty[i] = (vector.size() == 0);
+      sign(vector, hashSeeds, signature);
+      for (int band = 0; band < m_numBands; band++) {
+	m_bandHashes[i * m_numBands + band] = bandHash(signature, band);
+      }
+    }
+    System.out.println(getTimestamp() + " Signed " + numInstances + " documents with "
+		       + numHashes + " MinHash values");
+
+    // bucket the records band by band; a bucket is a run of equal keys
+    // after sorting (band hash, record) pairs
+    PairSet pairs = new PairSet(numInstances);
+    long [] keys = new long[numInstances];
+    for (int band = 0; band < m_numBands; band++) {
+      int numKeys = 0;
+      for (int i = 0; i < numInstances; i++) {
+	if (!m_empty[i]) {
+	  keys[numKeys++] = ((long) m_bandHashes[i * m_numBands + band] << 32) | i;
+	}
+      }
+      Arrays.sort(keys, 0, numKeys);
+
+      int start = 0;
+      while (start < numKeys) {
+	int end = start + 1;
+	while (end < numKeys && (keys[end] >> 32) == (keys[start] >> 32)) {
+	  end++;
+	}
+	if (end - start > 1 && (m_maxBucketSize == 0 || end - start <= m_maxBucketSize)) {
+	  // the band hashes rarely collide for different rows; such pairs
+	  // are weeded out by the metric like other false candidates
+	  for (int i = start; i < end; i++) {
+	    for (int j = i + 1; j < end; j++) {
+	      pairs.add((int) keys[i], (int) keys[j]);
+	    }
+	  }
+	}
+	start = end;
+      }
+    }
+
+    long [] codes = pairs.toSortedArray();
+    m_first = new int[codes.length];
+    m_second = new int[codes.length];
+    for (int i = 0; i < codes.length; i++) {
+      m_first[i] = (int) (codes[i] / numInstances);
+      m_second[i] = (int) (codes[i] % numInstances);
+    }
+    long numTotalPairs = (long) numInstances * (numInstances - 1) / 2;
+    System.out.println(getTimestamp() + " Found " + m_first.length + " candidate pairs out of "
+		       + numTotalPairs);
+  }
+
+  /** Derives the seeds of the hash functions from m_seed */
+  protected int[] hashSeeds(int numHashes) {
+    Random random = new Random(m_seed);
+    int [] seeds = new int[numHashes];
+    for (int h = 0; h < numHashes; h++) {
+      seeds[h] = random.nextInt();
+    }
+    return seeds;
+  }
+
+  /** Computes the MinHash signature of a token set
+   * @param vector the tokens
+   * @param hashSeeds the seeds of the hash functions
+   * @param signature receives the minimum of each hash function
+   */
+  protected void sign(HashMapVector vector, int[] hashSeeds, int[] signature) {
+    int numHashes = hashSeeds.length;
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    Iterator tokens = vector.hashMap.keySet().iterator();
+    while (tokens.hasNext()) {
+      int tokenHash = tokens.next().hashCode();
+      for (int h = 0; h < numHashes; h++) {
+	int value = mix(tokenHash ^ hashSeeds[h]);
+	if (value < signature[h]) {
+	  signature[h] = value;
+	}
+      }
+    }
+  }
+
+  /** A hash function that spreads the bits of its argument (the
+   * finalizer of MurmurHash3) */
+  protected static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /** Combines the rows of a band of a signature into one hash */
+  protected int bandHash(int[] signature, int band) {
+    int offset = band * m_numRows;
+    int hash = band;
+    for (int r = 0; r < m_numRows; r++) {
+      hash = mix(hash * 31 + signature[offset + r]);
+    }
+    return hash;
+  }
+
+  /** Return the number of candidate pairs */
+  public int numCandidatePairs() {
+    return m_first.length;
+  }
+
+  /** Return the index of the first record of a candidate pair */
+  public int getFirst(int pairIdx) {
+    return m_first[pairIdx];
+  }
+
+  /** Return the index of the second record of a candidate pair */
+  public int getSecond(int pairIdx) {
+    return m_second[pairIdx];
+  }
+
+  /** The fraction of bands in which two records fall into the same
+   * bucket, which grows with the similarity of their token sets
+   */
+  public double bandSimilarity(int idx1, int idx2) {
+    if (m_empty[idx1] || m_empty[idx2]) {
+      return 0;
+    }
+    int numEqual = 0;
+    for (int band = 0; band < m_numBands; band++) {
+      if (m_bandHashes[idx1 * m_numBands + band] == m_bandHashes[idx2 * m_numBands + band]) {
+	numEqual++;
+      }
+    }
+    return (numEqual + 0.0) / m_numBands;
+  }
+
+  /** Return the candidate pairs, ordered by the indices of the records
+   * @return InstancePairs whose value is the band similarity
+   */
+  public InstancePair[] getCandidatePairs() {
+    InstancePair [] pairs = new InstancePair[m_first.length];
+    for (int i = 0; i < pairs.length; i++) {
+      Instance instance1 = m_instances.instance(m_first[i]);
+      Instance instance2 = m_instances.instance(m_second[i]);
+      pairs[i] = new InstancePair(instance1, instance2,
+				  (instance1.classValue() == instance2.classValue()),
+				  bandSimilarity(m_first[i], m_second[i]));
+    }
+    return pairs;
+  }
+
+  /** A set of pairs of record indices, coded as first * n + second in an
+   * open addressing hash table */
+  protected static class PairSet {
+    protected long[] m_table = new long[64];
+    protected int m_size = 0;
+    protected long m_numInstances;
+
+    public PairSet(int numInstances) {
+      m_numInstances = numInstances;
+      Arrays.fill(m_table, -1);
+    }
+
+    /** Adds a pair, first < second */
+    public void add(int first, int second) {
+      if (2 * (m_size + 1) > m_table.length) {
+	rehash();
+      }
+      if (insert(m_table, first * m_numInstances + second)) {
+	m_size++;
+      }
+    }
+
+    /** Inserts a code, returns false if it was already present */
+    protected static boolean insert(long[] table, long code) {
+      int mask = table.length - 1;
+      int pos = (int) (code ^ (code >>> 32)) * 0x9e3779b9 & mask;
+      while (table[pos] != -1) {
+	if (table[pos] == code) {
+	  return false;
+	}
+	pos = (pos + 1) & mask;
+      }
+      table[pos] = code;
+      return true;
+    }
+
+    protected void rehash() {
+      long [] table = new long[2 * m_table.length];
+      Arrays.fill(table, -1);
+      for (int i = 0; i < m_table.length; i++) {
+	if (m_table[i] != -1) {
+	  insert(table, m_table[i]);
+	}
+      }
+      m_table = table;
+    }
+
+    public long[] toSortedArray() {
+      long [] codes = new long[m_size];
+      int current = 0;
+      for (int i = 0; i < m_table.length; i++) {
+	if (m_table[i] != -1) {
+	  codes[current++] = m_table[i];
+	}
+      }
+      Arrays.sort(codes);
+      return codes;
+    }
+  }
+
+
+  /** Set the tokenizer to use
+   * @param tokenizer the tokenizer that is used
+   */
+  public void setTokenizer(Tokenizer tokenizer) {
+    m_tokenizer = tokenizer;
+  }
+
+  /** Get the tokenizer to use
+   * @return the tokenizer that is used
+   */
+  public Tokenizer getTokenizer() {
+    return m_tokenizer;
+  }
+
+  /** Set the number of bands
+   * @param numBands more bands find more candidate pairs
+   */
+  public void setNumBands(int numBands) {
+    m_numBands = numBands;
+  }
+
+  /** Get the number of bands
+   * @return the number of bands
+   */
+  public int getNumBands() {
+    return m_numBands;
+  }
+
+  /** Set the number of rows per band
+   * @param numRows more rows find fewer, more similar candidate pairs
+   */
+  public void setNumRows(int numRows) {
+    m_numRows = numRows;
+  }
+
+  /** Get the number of rows per band
+   * @return the number of rows per band
+   */
+  public int getNumRows() {
+    return m_numRows;
+  }
+
+  /** Set the maximum size of the buckets that produce pairs
+   * @param maxBucketSize larger buckets are skipped, 0 for no limit
+   */
+  public void setMaxBucketSize(int maxBucketSize) {
+    m_maxBucketSize = maxBucketSize;
+  }
+
+  /** Get the maximum size of the buckets that produce pairs
+   * @return the maximum size, 0 for no limit
+   */
+  public int getMaxBucketSize() {
+    return m_maxBucketSize;
+  }
+
+  /** Set the seed of the hash functions
+   * @param seed the seed
+   */
+  public void setSeed(int seed) {
+    m_seed = seed;
+  }
+
+  /** Get the seed of the hash functions
+   * @return the seed
+   */
+  public int getSeed() {
+    return m_seed;
+  }
+
+  /**
+   * Gets a string containing current date and time.
+   *
+   * @return a string containing the date and time.
+   */
+  protected static String getTimestamp() {
+    return (new SimpleDateFormat("HH:mm:ss:")).format(new Date());
+  }
+
+  /**
+   * Gets the current settings of LSHBlocking
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String [] getOptions() {
+    String [] options = new String [10];
+    int current = 0;
+
+    options[current++] = "-B";
+    options[current++] = "" + m_numBands;
+    options[current++] = "-R";
+    options[current++] = "" + m_numRows;
+    options[current++] = "-M";
+    options[current++] = "" + m_maxBucketSize;
+    options[current++] = "-S";
+    options[current++] = "" + m_seed;
+
+    if (m_tokenizer instanceof NGramTokenizer) {
+      options[current++] = "-N";
+      options[current++] = "" + ((NGramTokenizer) m_tokenizer).getN();
+    }
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+    return options;
+  }
+
+  /**
+   * Parses a given list of options. Valid options are:<p>
+   *
+   * -B num <br>
+   * The number of bands (default 20) <p>
+   *
+   * -R num <br>
+   * The number of rows per band (default 5) <p>
+   *
+   * -M num <br>
+   * Skip buckets with more records (default 0 = no limit) <p>
+   *
+   * -S num <br>
+   * The seed of the hash functions (default 1) <p>
+   *
+   * -N num <br>
+   * Use n-grams of the given size as tokens instead of words <p>
+   */
+  public void setOptions(String[] options) throws Exception {
+    String optionString = Utils.getOption('B', options);
+    if (optionString.length() != 0) {
+      setNumBands(Integer.parseInt(optionString));
+    }
+    optionString = Utils.getOption('R', options);
+    if (optionString.length() != 0) {
+      setNumRows(Integer.parseInt(optionString));
+    }
+    optionString = Utils.getOption('M', options);
+    if (optionString.length() != 0) {
+      setMaxBucketSize(Integer.parseInt(optionString));
+    }
+    optionString = Utils.getOption('S', options);
+    if (optionString.length() != 0) {
+      setSeed(Integer.parseInt(optionString));
+    }
+    optionString = Utils.getOption('N', options);
+    if (optionString.length() != 0) {
+      NGramTokenizer tokenizer = new NGramTokenizer();
+      tokenizer.setN(Integer.parseInt(optionString));
+      setTokenizer(tokenizer);
+    } else {
+      setTokenizer(new WordTokenizer());
+    }
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector newVector = new Vector(5);
+    newVector.addElement(new Option("\tThe number of bands (default 20)",
+				    "B", 1, "-B <num>"));
+    newVector.addElement(new Option("\tThe number of rows per band (default 5)",
+				    "R", 1, "-R <num>"));
+    newVector.addElement(new Option("\tSkip buckets with more records (default 0 = no limit)",
+				    "M", 1, "-M <num>"));
+    newVector.addElement(new Option("\tThe seed of the hash functions (default 1)",
+				    "S", 1, "-S <num>"));
+    newVector.addElement(new Option("\tUse n-grams of the given size as tokens (default words)",
+				    "N", 1, "-N <num>"));
+    return newVector.elements();
+  }
+}
@@ -81,67 +81,296 @@ public class AffineMetric extends StringMetric implements OptionHandler, Seriali
    * @returns Affine distance between the two strings 
    */
   public  double distance(String string1, String string2) throws Exception {
-    char[] s1 = string1.toCharArray();
-    char[] s2 = string2.toCharArray();
-    int l1 = s1.length, l2 = s2.length;
-    double T[][] = new double[l1+1][l2+1];
-    double I[][] = new double[l1+1][l2+1];
-    double D[][] = new double[l1+1][l2+1];
-    double subCost;
-    int i, j;
+    return distance(string1, string2, Double.POSITIVE_INFINITY);
+  }
+
+  /** Obtain the distance between two strings if it does not exceed a
+   * threshold.  Only the cells of the dynamic programming matrix that can
+   * still lie on an alignment within the threshold are filled in: a band
+   * of diagonals around the main one, narrowed further row by row, and
+   * the computation stops as soon as a whole row is out of reach.  With
+   * unit costs (match 0, everything else 1) the distance is the edit
+   * distance, which is computed with Myers' bit-parallel algorithm
+   * instead.
+   * @param s1 String 1
+   * @param s2 String 2
+   * @param maxDistance the threshold, normalized like the distance
+   * @returns Affine distance between the two strings, exactly as
+   * distance(s1, s2) if it is at most maxDistance, otherwise a value
+   * greater than maxDistance
+   */
+  public double distance(String string1, String string2, double maxDistance) throws Exception {
+    int l1 = string1.length(), l2 = string2.length();
 
     if (l1==0 || l2==0) {
       return m_gapStartCost + (l1+l2-1) * m_gapExtendCost;
     }
-    for (j = 0; j < l2+1; j++) {
-      I[0][j] = Double.MAX_VALUE;
-      D[0][j] = Double.MAX_VALUE;
+
+    Scratch scratch = (Scratch) s_scratch.get();
+    scratch.ensureCapacity(l1, l2);
+    string1.getChars(0, l1, scratch.m_s1, 0);
+    string2.getChars(0, l2, scratch.m_s2, 0);
+
+    double ret;
+    if (isUnitCost()) {
+      ret = myersDistance(scratch, l1, l2);
+    } else {
+      double limit = m_normalized ? maxDistance * (l1 + l2) : maxDistance;
+      ret = affineDistance(scratch, l1, l2, limit);
     }
-    for (j = 0; j < l1+1; j++) {
-      I[j][0] = Double.MAX_VALUE;
-      D[j][0] = Double.MAX_VALUE;
+    if (m_normalized) {
+      ret /= l1 + l2;
     }
-    T[0][0] = 0;
-    T[0][1] = m_gapStartCost;
-    T[1][0] = m_gapStartCost;
-    for (j = 2; j < l2+1; j++) {
-      T[0][j] = T[0][j-1] + m_gapExtendCost;
+    return ret;
+  }
+
+  /** Are the costs those of the plain edit distance? */
+  protected boolean isUnitCost() {
+    return m_matchCost == 0 && m_subCost == 1 && m_gapStartCost == 1 && m_gapExtendCost == 1;
+  }
+
+  /** The rows of the dynamic programming matrices and the bit vectors
+   * used by one thread, grown as needed and reused across calls */
+  protected static class Scratch {
+    char[] m_s1 = new char[0], m_s2 = new char[0];
+    double[] m_prevT = new double[0], m_curT = new double[0];
+    double[] m_prevD = new double[0], m_curD = new double[0];
+
+    /** For Myers' algorithm: a match mask for each character below 256
+     * and each block of 64 characters of the first string, all zero
+     * between calls */
+    long[] m_peq = new long[0];
+    long[] m_pv = new long[0], m_mv = new long[0];
+
+    void ensureCapacity(int l1, int l2) {
+      if (m_s1.length < l1) {
+	m_s1 = new char[l1];
+      }
+      if (m_s2.length < l2) {
+	m_s2 = new char[l2];
+      }
+      if (m_prevT.length < l2 + 1) {
+	m_prevT = new double[l2 + 1];
+	m_curT = new double[l2 + 1];
+	m_prevD = new double[l2 + 1];
+	m_curD = new double[l2 + 1];
+      }
+      int numBlocks = (l1 + 63) >>> 6;
+      if (m_pv.length < numBlocks) {
+	m_peq = new long[256 * numBlocks];
+	m_pv = new long[numBlocks];
+	m_mv = new long[numBlocks];
+      }
+    }
+  }
+
+  /** Scratch space of the current thread */
+  private static final ThreadLocal s_scratch = new ThreadLocal() {
+      protected Object initialValue() {
+	return new Scratch();
+      }
+    };
+
+  /** Fills in the affine gap matrices row by row, keeping only two rows
+   * of each.  Cells are computed in the same order and with the same
+   * comparisons as in the full matrices, so the result does not change.
+   * <p>
+   * If a limit is given, a cell is dropped (set to Double.MAX_VALUE) when
+   * no alignment through it can cost at most the limit.  The bound adds
+   * half of the most negative diagonal cost to every character, which
+   * makes all steps non-negative, so that the cost so far plus a minimum
+   * cost for the gap still needed to reach the last cell can only grow
+   * along an alignment.
+   * @param scratch holds the strings in m_s1 and m_s2
+   * @param l1 the length of the first string
+   * @param l2 the length of the second string
+   * @param limit the largest unnormalized distance of interest
+   * @returns the unnormalized distance, or Double.POSITIVE_INFINITY if it
+   * exceeds the limit
+   */
+  protected double affineDistance(Scratch scratch, int l1, int l2, double limit) {
+    char[] s1 = scratch.m_s1, s2 = scratch.m_s2;
+    double[] prevT = scratch.m_prevT, curT = scratch.m_curT;
+    double[] prevD = scratch.m_prevD, curD = scratch.m_curD;
+    double[] tmp;
+    double subCost, diag, d, t, I = Double.MAX_VALUE, border = 0;
+    int i, j;
+
+    // shift per character and lower bound on a gap character after shifting
+    double shift = -Math.min(0, Math.min(m_matchCost, m_subCost)) / 2;
+    double gapBound = Math.min(m_gapStartCost, m_gapExtendCost) + shift;
+    boolean banded = limit < Double.POSITIVE_INFINITY && shift < Double.POSITIVE_INFINITY
+      && gapBound >= 0;
+    double slack = 1e-9 * (Math.abs(limit) + shift * (l1 + l2) + 1);
+
+    // band of diagonals j-i that can be reached within the limit
+    int lowDiag = -l1, highDiag = l2;
+    if (banded) {
+      int delta = l2 - l1;
+      double budget = limit + shift * (l1 + l2) + slack - gapBound * Math.abs(delta);
+      if (budget < 0) {
+	return Double.POSITIVE_INFINITY;
+      }
+      if (gapBound > 0 && budget / (2 * gapBound) < l1 + l2) {
+	int extra = (int) (budget / (2 * gapBound));
+	lowDiag = Math.max(lowDiag, Math.min(0, delta) - extra);
+	highDiag = Math.min(highDiag, Math.max(0, delta) + extra);
+      }
     }
-    for (j = 2; j < l1+1; j++) {
-      T[j][0] = T[j-1][0] + m_gapExtendCost;
+
+    prevT[0] = 0;
+    prevD[0] = Double.MAX_VALUE;
+    prevT[1] = m_gapStartCost;
+    prevD[1] = Double.MAX_VALUE;
+    for (j = 2; j < l2+1; j++) {
+      prevT[j] = prevT[j-1] + m_gapExtendCost;
+      prevD[j] = Double.MAX_VALUE;
     }
+
+    int firstReachable = 0;
     for (i = 1; i < l1+1; i++) {
-      for (j = 1; j < l2+1; j++) {
-	D[i][j] = (D[i-1][j]+m_gapExtendCost > T[i-1][j]+m_gapStartCost) ?
-	  T[i-1][j]+m_gapStartCost : D[i-1][j]+m_gapExtendCost;
-	I[i][j] = (I[i][j-1]+m_gapExtendCost > T[i][j-1]+m_gapStartCost) ?
-	  T[i][j-1]+m_gapStartCost : I[i][j-1]+m_gapExtendCost;
+      border = (i == 1) ? m_gapStartCost : border + m_gapExtendCost;
+      curT[0] = border;
+      curD[0] = Double.MAX_VALUE;
+      int lo = Math.max(1, Math.max(i + lowDiag, firstReachable));
+      int hi = Math.min(l2, i + highDiag);
+      if (lo > hi) {
+	return Double.POSITIVE_INFINITY;
+      }
+      if (lo > 1) {
+	curT[lo-1] = Double.MAX_VALUE;
+	curD[lo-1] = Double.MAX_VALUE;
+      }
+
+      int nextReachable = -1;
+      if (!banded || border - shift * (l1-i + l2) + gapBound * Math.abs(l2 - (l1-i)) <= limit + slack) {
+	nextReachable = 0;
+      }
+      I = Double.MAX_VALUE;
+      for (j = lo; j <= hi; j++) {
+	d = (prevD[j]+m_gapExtendCost > prevT[j]+m_gapStartCost) ?
+	  prevT[j]+m_gapStartCost : prevD[j]+m_gapExtendCost;
+	I = (I+m_gapExtendCost > curT[j-1]+m_gapStartCost) ?
+	  curT[j-1]+m_gapStartCost : I+m_gapExtendCost;
 	subCost = (s1[i-1] == s2[j-1]) ? m_matchCost : m_subCost;
-	if  ((T[i-1][j-1] + subCost < D[i][j]) && (T[i-1][j-1] + subCost < I[i][j])) {
-	  T[i][j] = T[i-1][j-1] + subCost;
+	diag = prevT[j-1] + subCost;
+	if (diag < d && diag < I) {
+	  t = diag;
 	} else {
-	  if (D[i][j] < I[i][j]) {
-	    T[i][j] = D[i][j];
-	  } else {
-	    T[i][j] = I[i][j];
-	  }
+	  t = (d < I) ? d : I;
+	}
+	if (banded && t - shift * (l1-i + l2-j) + gapBound * Math.abs((l2-j) - (l1-i)) > limit + slack) {
+	  t = d = I = Double.MAX_VALUE;
+	} else if (nextReachable == -1) {
+	  nextReachable = j;
 	}
+	curT[j] = t;
+	curD[j] = d;
       }
+      if (hi < l2) {
+	curT[hi+1] = Double.MAX_VALUE;
+	curD[hi+1] = Double.MAX_VALUE;
+      }
+      if (nextReachable == -1) {
+	return Double.POSITIVE_INFINITY;
+      }
+      firstReachable = nextReachable;
+      tmp = prevT; prevT = curT; curT = tmp;
+      tmp = prevD; prevD = curD; curD = tmp;
     }
+
+    // the last row was computed up to l2 and swapped into prevT/prevD
     double ret;
-    if (T[l1][l2] < D[l1][l2] && T[l1][l2] < I[l1][l2]) {
-      ret = T[l1][l2];
-    } else if (D[l1][l2] < I[l1][l2]) {
-      ret = D[l1][l2];
+    if (prevT[l2] < prevD[l2] && prevT[l2] < I) {
+      ret = prevT[l2];
+    } else if (prevD[l2] < I) {
+      ret = prevD[l2];
     } else {
-      ret = I[l1][l2];
+      ret = I;
     }
-    if (m_normalized) {
-      ret /= l1 + l2;
+    if (banded && ret > limit + slack) {
+      return Double.POSITIVE_INFINITY;
     }
     return ret;
   }
 
+  /** Computes the edit distance with Myers' bit-parallel algorithm, in the
+   * blocked form of Hyyro: the vertical differences of a column of the
+   * edit distance matrix are kept in bit vectors for blocks of 64
+   * characters of the first string, and a column is updated with a
+   * handful of word operations per block.
+   * @param scratch holds the strings in m_s1 and m_s2
+   * @param l1 the length of the first string
+   * @param l2 the length of the second string
+   * @returns the edit distance
+   */
+  protected double myersDistance(Scratch scratch, int l1, int l2) {
+    char[] s1 = scratch.m_s1, s2 = scratch.m_s2;
+    long[] peq = scratch.m_peq, pv = scratch.m_pv, mv = scratch.m_mv;
+    int numBlocks = (l1 + 63) >>> 6;
+    int i, j, b;
+
+    for (i = 0; i < l1; i++) {
+      if (s1[i] < 256) {
+	peq[s1[i] * numBlocks + (i >>> 6)] |= 1L << (i & 63);
+      }
+    }
+    for (b = 0; b < numBlocks; b++) {
+      pv[b] = -1L;
+      mv[b] = 0;
+    }
+
+    long lastBit = 1L << ((l1 - 1) & 63);
+    int score = l1;
+    for (j = 0; j < l2; j++) {
+      char c = s2[j];
+      int hin = 1;
+      for (b = 0; b < numBlocks; b++) {
+	long eq = (c < 256) ? peq[c * numBlocks + b] : matchMask(s1, l1, b, c);
+	long pvb = pv[b], mvb = mv[b];
+	long xv = eq | mvb;
+	if (hin < 0) {
+	  eq |= 1L;
+	}
+	long xh = (((eq & pvb) + pvb) ^ pvb) | eq;
+	long ph = mvb | ~(xh | pvb);
+	long mh = pvb & xh;
+	long high = (b == numBlocks - 1) ? lastBit : 0x8000000000000000L;
+	int hout = ((ph & high) != 0) ? 1 : (((mh & high) != 0) ? -1 : 0);
+	ph <<= 1;
+	mh <<= 1;
+	if (hin < 0) {
+	  mh |= 1L;
+	} else if (hin > 0) {
+	  ph |= 1L;
+	}
+	pv[b] = mh | ~(xv | ph);
+	mv[b] = ph & xv;
+	hin = hout;
+      }
+      score += hin;
+    }
+
+    for (i = 0; i < l1; i++) {
+      if (s1[i] < 256) {
+	peq[s1[i] * numBlocks + (i >>> 6)] = 0;
+      }
+    }
+    return score;
+  }
+
+  /** The match mask of a character outside the precomputed table */
+  protected static long matchMask(char[] s1, int l1, int block, char c) {
+    long mask = 0;
+    int last = Math.min(l1, (block + 1) << 6);
+    for (int i = block << 6; i < last; i++) {
+      if (s1[i] == c) {
+	mask |= 1L << (i & 63);
+      }
+    }
+    return mask;
+  }
+
 
   /** The computation of a metric can be either based on distance, or on similarity
    * @returns true
@@ -761,6 +761,42 @@ public class LearnableTokenEDAffine extends StringMetric implements LearnableStr
    * to transform s1 into s2 (or vice versa)
    */
   public double costDistance(String string1, String string2) {
+    return costDistance(string1, string2, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Calculate affine gapped distance using learned costs if it does not
+   * exceed a threshold; see costDistance(String, String, double)
+   * @param s1 first string
+   * @param s2 second string
+   * @param maxDistance the threshold, normalized like the distance
+   * @return the distance if it is at most maxDistance, otherwise a value
+   * greater than maxDistance
+   */
+  public double distance (String s1, String s2, double maxDistance) {
+    if (m_useGenerativeModel) {
+      return distance(s1, s2);
+    }
+    return costDistance(s1, s2, maxDistance);
+  }
+
+  /**
+   * Calculate affine gapped distance using learned costs, filling in only
+   * the cells of the matrices that can lie on an alignment costing at most
+   * a threshold.  A cell is dropped when the cheapest of its three states,
+   * plus a lower bound on the gap still needed to reach the last cell, is
+   * over the threshold; if the diagonal steps can have negative costs, half
+   * of the most negative one is added to each token first so that all
+   * steps are non-negative.  The computation stops when no cell of a row
+   * is left.  Only two rows of each matrix are kept, and they are reused
+   * across calls by the same thread.
+   * @param s1 first string
+   * @param s2 second string
+   * @param maxDistance the threshold, normalized like the distance
+   * @return the same value as the full computation if it is at most
+   * maxDistance, otherwise a value greater than maxDistance
+   */
+  public double costDistance(String string1, String string2, double maxDistance) {
     TokenString ts1;
     if (m_stringTokenStringMap.containsKey(string1)) {
       ts1 = ((TokenString)m_stringTokenStringMap.get(string1));
@@ -780,75 +816,131 @@ public class LearnableTokenEDAffine extends StringMetric implements LearnableStr
     int [] s1 = ts1.tokenIDs; 
     int [] s2 = ts2.tokenIDs;
     int l1 = s1.length, l2 = s2.length;
-    double T[][] = new double[l1+1][l2+1];
-    double I[][] = new double[l1+1][l2+1];
-    double D[][] = new double[l1+1][l2+1];
-    double subCost = 0, subTokenCost = 0, ret;
+    double subTokenCost = 0, ret, t, d, ins;
     int i, j;
 
     if (l1==0 || l2==0) {
       return m_gapStartCost + (l1+l2-1) * m_gapExtendCost;
     }
-    for (j = 0; j < l2+1; j++) {
-      I[0][j] = Double.MAX_VALUE;
-      D[0][j] = Double.MAX_VALUE;
-    }
-    for (j = 0; j < l1+1; j++) {
-      I[j][0] = Double.MAX_VALUE;
-      D[j][0] = Double.MAX_VALUE;
+
+    double [][] rows = getScratchRows(l2 + 1);
+    double [] prevT = rows[0], curT = rows[1];
+    double [] prevD = rows[2], curD = rows[3];
+    double [] prevI = rows[4], curI = rows[5];
+    double [] tmp;
+
+    double limit = m_normalized ? maxDistance * 4*(l1 + l2) : maxDistance;
+    double shift = -Math.min(0, Math.min(m_subCost, m_gapEndCost) + Math.min(m_matchCost, m_nonMatchCost)) / 2;
+    double gapBound = Math.min(m_gapStartCost, m_gapExtendCost) + shift;
+    boolean banded = limit < Double.POSITIVE_INFINITY && shift < Double.POSITIVE_INFINITY
+      && gapBound >= 0;
+    double slack = 1e-9 * (Math.abs(limit) + shift * (l1 + l2) + 1);
+
+    // band of diagonals j-i that can be reached within the limit
+    int lowDiag = -l1, highDiag = l2;
+    if (banded) {
+      int delta = l2 - l1;
+      double budget = limit + shift * (l1 + l2) + slack - gapBound * Math.abs(delta);
+      if (budget < 0) {
+	return Double.POSITIVE_INFINITY;
+      }
+      if (gapBound > 0 && budget / (2 * gapBound) < l1 + l2) {
+	int extra = (int) (budget / (2 * gapBound));
+	lowDiag = Math.max(lowDiag, Math.min(0, delta) - extra);
+	highDiag = Math.min(highDiag, Math.max(0, delta) + extra);
+      }
     }
-    T[0][0] = 0;
-    T[0][1] = m_gapStartCost;
-    T[1][0] = m_gapStartCost;
+
+    prevT[0] = 0;
+    prevT[1] = m_gapStartCost;
     for (j = 2; j < l2+1; j++) {
-      T[0][j] = T[0][j-1] + m_gapExtendCost;
+      prevT[j] = prevT[j-1] + m_gapExtendCost;
     }
-    for (j = 2; j < l1+1; j++) {
-      T[j][0] = T[j-1][0] + m_gapExtendCost;
+    for (j = 0; j < l2+1; j++) {
+      prevD[j] = Double.MAX_VALUE;
+      prevI[j] = Double.MAX_VALUE;
     }
+
+    double border = 0;
+    int firstReachable = 0;
     for (i = 1; i < l1+1; i++) {
-      for (j = 1; j < l2+1; j++) {
+      border = (i == 1) ? m_gapStartCost : border + m_gapExtendCost;
+      curT[0] = border;
+      curD[0] = Double.MAX_VALUE;
+      curI[0] = Double.MAX_VALUE;
+      int lo = Math.max(1, Math.max(i + lowDiag, firstReachable));
+      int hi = Math.min(l2, i + highDiag);
+      if (lo > hi) {
+	return Double.POSITIVE_INFINITY;
+      }
+      if (lo > 1) {
+	curT[lo-1] = curD[lo-1] = curI[lo-1] = Double.MAX_VALUE;
+      }
+
+      int nextReachable = -1;
+      if (!banded || border - shift * (l1-i + l2) + gapBound * Math.abs(l2 - (l1-i)) <= limit + slack) {
+	nextReachable = 0;
+      }
+      for (j = lo; j <= hi; j++) {
 	int t1 = s1[i-1];
 	int t2 = s2[j-1];
 	subTokenCost = (t1 == t2) ? m_matchCost : m_nonMatchCost;  // TODO:  experiment with 0 matchCost
 
-	if (D[i-1][j]+m_gapExtendCost > T[i-1][j]+m_gapStartCost) {
-	  D[i][j] = T[i-1][j]+m_gapStartCost;
+	if (prevD[j]+m_gapExtendCost > prevT[j]+m_gapStartCost) {
+	  d = prevT[j]+m_gapStartCost;
 	} else {
-	  D[i][j] = D[i-1][j]+m_gapExtendCost;
+	  d = prevD[j]+m_gapExtendCost;
 	}
 		
-	if (I[i][j-1]+m_gapExtendCost > T[i][j-1]+m_gapStartCost) {
-	  I[i][j] = T[i][j-1] + m_gapStartCost;
+	if (curI[j-1]+m_gapExtendCost > curT[j-1]+m_gapStartCost) {
+	  ins = curT[j-1] + m_gapStartCost;
 	} else {
-	  I[i][j] = I[i][j-1] + m_gapExtendCost;
+	  ins = curI[j-1] + m_gapExtendCost;
 	}
 		
-	//	subCost = m_subCost + sub_charCost;
-//  	subCost =((c1 == c2) ? 0 : (m_subCost + m_gapEndCost));
-//  	subCost = subCost + sub_charCost;
-//    	subCost = (c1 == c2) ? 0 : m_subCost;
-	//	subCost = m_subCost;
-		
-	if  ((T[i-1][j-1] + m_subCost < D[i-1][j-1] + m_gapEndCost) &&    /// d[i][j] or d[i-1][j-1]??
-	     (T[i-1][j-1] + m_subCost < I[i-1][j-1] + m_gapEndCost )) {
-	  T[i][j] = T[i-1][j-1] + m_subCost + subTokenCost;   // ?? do we add subCharCost?
+	if  ((prevT[j-1] + m_subCost < prevD[j-1] + m_gapEndCost) &&
+	     (prevT[j-1] + m_subCost < prevI[j-1] + m_gapEndCost )) {
+	  t = prevT[j-1] + m_subCost + subTokenCost;
 	} else {
-	  if (D[i-1][j-1] < I[i-1][j-1]) {
-	    T[i][j] = D[i-1][j-1] + m_gapEndCost + subTokenCost;
+	  if (prevD[j-1] < prevI[j-1]) {
+	    t = prevD[j-1] + m_gapEndCost + subTokenCost;
 	  } else {
-	    T[i][j] = I[i-1][j-1] + m_gapEndCost + subTokenCost;
+	    t = prevI[j-1] + m_gapEndCost + subTokenCost;
 	  }
 	}
+
+	if (banded && Math.min(t, Math.min(d, ins)) - shift * (l1-i + l2-j)
+	    + gapBound * Math.abs((l2-j) - (l1-i)) > limit + slack) {
+	  t = d = ins = Double.MAX_VALUE;
+	} else if (nextReachable == -1) {
+	  nextReachable = j;
+	}
+	curT[j] = t;
+	curD[j] = d;
+	curI[j] = ins;
+      }
+      if (hi < l2) {
+	curT[hi+1] = curD[hi+1] = curI[hi+1] = Double.MAX_VALUE;
       }
+      if (nextReachable == -1) {
+	return Double.POSITIVE_INFINITY;
+      }
+      firstReachable = nextReachable;
+      tmp = prevT; prevT = curT; curT = tmp;
+      tmp = prevD; prevD = curD; curD = tmp;
+      tmp = prevI; prevI = curI; curI = tmp;
     }
-	
-    if (T[l1][l2] < D[l1][l2] && T[l1][l2] < I[l1][l2]) {
-      ret = T[l1][l2];
-    } else if (D[l1][l2] < I[l1][l2]) {
-      ret = D[l1][l2];
+
+    // the last row was swapped into the prev rows
+    if (prevT[l2] < prevD[l2] && prevT[l2] < prevI[l2]) {
+      ret = prevT[l2];
+    } else if (prevD[l2] < prevI[l2]) {
+      ret = prevD[l2];
     } else {
-      ret = I[l1][l2];
+      ret = prevI[l2];
+    }
+    if (banded && ret > limit + slack) {
+      return Double.POSITIVE_INFINITY;
     }
     if (m_normalized) {
 //        // get the normalization factor as P(x,y)=P(x)P(y)
@@ -865,6 +957,25 @@ public class LearnableTokenEDAffine extends StringMetric implements LearnableStr
     return ret;
   }
 
+  /** Rows of the T, D and I matrices of the current thread, two of each */
+  private static final ThreadLocal s_scratchRows = new ThreadLocal() {
+      protected Object initialValue() {
+	return new double[6][0];
+      }
+    };
+
+  /** Returns the six scratch rows of the current thread, grown to at
+   * least the given length */
+  protected static double[][] getScratchRows(int length) {
+    double [][] rows = (double[][]) s_scratchRows.get();
+    if (rows[0].length < length) {
+      for (int k = 0; k < rows.length; k++) {
+	rows[k] = new double[length];
+      }
+    }
+    return rows;
+  }
+
   public static void print3dMatrix(double [][][] matrix) {
     DecimalFormat fmt = new DecimalFormat ("0.0000E00");
     for (int i = 0; i < matrix[0][0].length; i++) {
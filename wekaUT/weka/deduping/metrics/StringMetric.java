@@ -40,6 +40,20 @@ public abstract class StringMetric implements Cloneable {
    */
   public abstract double distance(String s1, String s2) throws Exception;
 
+  /** Compute a measure of distance between two strings, for callers
+   * that only care about distances up to a threshold.  Metrics that can
+   * stop early once the threshold is exceeded override this; the default
+   * computes the full distance.
+   * @param s1 first string
+   * @param s2 second string
+   * @param maxDistance the largest distance the caller is interested in
+   * @returns the distance between two strings if it is at most
+   * maxDistance, otherwise some value greater than maxDistance
+   */
+  public double distance(String s1, String s2, double maxDistance) throws Exception {
+    return distance(s1, s2);
+  }
+
   /** Compute a measure of similarity between two strings
    * @param s1 first string
    * @param s2 second string
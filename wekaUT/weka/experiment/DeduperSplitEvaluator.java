@@ -59,7 +59,7 @@ public class DeduperSplitEvaluator implements SplitEvaluator,
   private static final int KEY_SIZE = 3;
 
   /** The length of a result */
-  private static final int RESULT_SIZE = 16;
+  private static final int RESULT_SIZE = 18;
 
   /**
    * No args constructor.
@@ -254,6 +254,10 @@ public class DeduperSplitEvaluator implements SplitEvaluator,
     resultTypes[current++] = doub;
     resultTypes[current++] = doub;
 
+    // Blocking stats
+    resultTypes[current++] = doub;
+    resultTypes[current++] = doub;
+
     // Timing stats
     resultTypes[current++] = doub;
     resultTypes[current++] = doub;
@@ -295,6 +299,10 @@ public class DeduperSplitEvaluator implements SplitEvaluator,
     resultNames[current++] = "DupePairsTest";
     resultNames[current++] = "DupeNonDupeRatioTest";
 
+    // Blocking stats
+    resultNames[current++] = "BlockingRecall";
+    resultNames[current++] = "ReductionRatio";
+
     // Timing stats
     resultNames[current++] = "Time_training";
     resultNames[current++] = "Time_testing";
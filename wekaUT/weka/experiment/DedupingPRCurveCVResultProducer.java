@@ -61,6 +61,9 @@ public class  DedupingPRCurveCVResultProducer
   /** The number of folds in the cross-validation */
   protected int m_numFolds = 2;
 
+  /** The number of threads computing the folds of a run */
+  protected int m_numThreads = 1;
+
   /** Save raw output of split evaluators --- for debugging purposes */
   protected boolean m_debugOutput = false;
 
@@ -273,14 +276,13 @@ public class  DedupingPRCurveCVResultProducer
   /**
    * Gets the results for a specified run number. Different run
    * numbers correspond to different randomizations of the data. Results
-   * produced should be sent to the current ResultListener
+   * produced should be sent to the current ResultListener. The folds are
+   * computed by getNumThreads() threads.
    *
    * @param run the run number to get results for.
    * @exception Exception if a problem occurs while getting the results
    */
   public void doRun(int run) throws Exception {
-    int numExtraKeys = 4;
-
     if (getRawOutput()) {
       if (m_zipDest == null) {
 	m_zipDest = new OutputZipper(m_outputFile);
@@ -300,54 +302,87 @@ public class  DedupingPRCurveCVResultProducer
     runInstances.randomize(new Random(run));
     ArrayList foldList = createFoldList(runInstances, m_numFolds);
 
+    ParallelCellRunner runner = new ParallelCellRunner(m_splitEvaluator, m_numThreads);
     for (int fold = 0; fold < m_numFolds; fold++) { 
       Instances train = getTrainingFold(foldList, fold);
       // Randomly shuffle the  training set for fold creation
       train.randomize(new Random(fold));	    
 
       Instances test = (Instances) foldList.get(fold);
-      System.out.println("Run:" + run + " Fold:" + fold + " TestSize=" + test.numInstances());
-      Object[] prResults = m_splitEvaluator.getResult(train, test);
-      
+      runner.add(new FoldCell(run, fold, train, test));
+    }
+    runner.run();
+  }
+
+  /**
+   * One fold: the precision-recall curve is computed once and then
+   * reported for every plot point
+   */
+  protected class FoldCell extends ParallelCellRunner.Cell {
+
+    /** The run and fold */
+    protected int m_run, m_fold;
+
+    /** The training and test fold */
+    protected Instances m_train, m_test;
+
+    /** The results of the split evaluator, once computed */
+    protected Object[] m_prResults;
+
+    /** The name and content of the raw output, if it is saved */
+    protected String m_resultName, m_rawOutput;
+
+    public FoldCell(int run, int fold, Instances train, Instances test) {
+      m_run = run;
+      m_fold = fold;
+      m_train = train;
+      m_test = test;
+    }
+
+    public void compute(SplitEvaluator splitEvaluator) throws Exception {
+      System.out.println("Run:" + m_run + " Fold:" + m_fold + " TestSize=" + m_test.numInstances());
+      m_prResults = splitEvaluator.getResult(m_train, m_test);
+      if (m_debugOutput) {
+	String resultName = (""+m_run+"."+(m_fold+1)+"."+ "." 
+			     + Utils.backQuoteChars(m_instances.relationName())
+			     +"."
+			     +splitEvaluator.toString()).replace(' ','_');
+	resultName = Utils.removeSubstring(resultName, 
+					   "weka.clusterers.");
+	resultName = Utils.removeSubstring(resultName, 
+					   "weka.filters.");
+	resultName = Utils.removeSubstring(resultName, 
+					   "weka.attributeSelection.");
+	m_resultName = Utils.removeSubstring(resultName, 
+					     "weka.deduping.");
+	m_rawOutput = splitEvaluator.getRawResultOutput();
+      }
+    }
+
+    public void deliver() throws Exception {
+      int numExtraKeys = 4;
       for (int i = 0; i < m_plotPoints.length; i++) {
 	// Add in some fields to the key like run and fold number, dataset name
 	Object [] seKey = m_splitEvaluator.getKey();
 	Object [] key = new Object [seKey.length + numExtraKeys];
 	key[0] = Utils.backQuoteChars(m_instances.relationName());
-	key[1] = "" + run;
-	key[2] = "" + (fold + 1);
+	key[1] = "" + m_run;
+	key[2] = "" + (m_fold + 1);
 	key[3] = "" + m_plotPoints[i];
 	System.arraycopy(seKey, 0, key, numExtraKeys, seKey.length);
-	if (m_resultListener.isResultRequired(this, key)) {
-	  try {
-	    Object [] seResults = processResults(prResults, m_plotPoints[i]);
-	    System.out.println("Adding result:  RLevel=" + m_plotPoints[i] +
-			       "\tR=" + seResults[1] + "\tP=" + seResults[2] +
-			       "\tFM=" + seResults[3]); 
-	    Object [] results = new Object [seResults.length + 1];
-	    results[0] = getTimestamp();
-	    System.arraycopy(seResults, 0, results, 1,
-			     seResults.length);
-	    if (m_debugOutput) {
-	      String resultName = (""+run+"."+(fold+1)+"."+ "." 
-				   + Utils.backQuoteChars(runInstances.relationName())
-				   +"."
-				   +m_splitEvaluator.toString()).replace(' ','_');
-	      resultName = Utils.removeSubstring(resultName, 
-						 "weka.clusterers.");
-	      resultName = Utils.removeSubstring(resultName, 
-						 "weka.filters.");
-	      resultName = Utils.removeSubstring(resultName, 
-						 "weka.attributeSelection.");
-	      resultName = Utils.removeSubstring(resultName, 
-						 "weka.deduping.");
-	      m_zipDest.zipit(m_splitEvaluator.getRawResultOutput(), resultName);
-	    }
-	    m_resultListener.acceptResult(this, key, results);
-	  } catch (Exception ex) {
-	    // Save the train and test datasets for debugging purposes?
-	    throw ex;
+	if (m_resultListener.isResultRequired(DedupingPRCurveCVResultProducer.this, key)) {
+	  Object [] seResults = processResults(m_prResults, m_plotPoints[i]);
+	  System.out.println("Adding result:  RLevel=" + m_plotPoints[i] +
+			     "\tR=" + seResults[1] + "\tP=" + seResults[2] +
+			     "\tFM=" + seResults[3]); 
+	  Object [] results = new Object [seResults.length + 1];
+	  results[0] = getTimestamp();
+	  System.arraycopy(seResults, 0, results, 1,
+			   seResults.length);
+	  if (m_debugOutput) {
+	    m_zipDest.zipit(m_rawOutput, m_resultName);
 	  }
+	  m_resultListener.acceptResult(DedupingPRCurveCVResultProducer.this, key, results);
 	}
       }
     }
@@ -791,6 +826,35 @@ public class  DedupingPRCurveCVResultProducer
     m_debugOutput = d;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of threads computing the folds of a run, each with its "
+      +"own copy of the split evaluator. Results are passed on in the same "
+      +"order as with a single thread.";
+  }
+
+  /**
+   * Get the number of threads computing the folds of a run.
+   *
+   * @return the number of threads.
+   */
+  public int getNumThreads() {
+    return m_numThreads;
+  }
+
+  /**
+   * Set the number of threads computing the folds of a run.
+   *
+   * @param numThreads the number of threads, 1 computes them one after the other.
+   */
+  public void setNumThreads(int numThreads) {
+    m_numThreads = numThreads;
+  }
+
   /** Set the mode of creating folds
    * @param mode stratified or random
    */
@@ -844,7 +908,7 @@ public class  DedupingPRCurveCVResultProducer
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(7);
+    Vector newVector = new Vector(8);
 
     newVector.addElement(new Option(
 	     "\tThe number of folds to use for the cross-validation.\n"
@@ -865,6 +929,12 @@ public class  DedupingPRCurveCVResultProducer
 	     "O", 1, 
 	     "-O <file/directory name/path>"));
 
+    newVector.addElement(new Option(
+	     "\tThe number of threads computing the folds of a run.\n"
+	     +"\t(default 1)", 
+	     "T", 1, 
+	     "-T <number of threads>"));
+
     newVector.addElement(new Option(
 	     "\tThe full class name of a SplitEvaluator.\n"
 	      +"\teg: weka.experiment.ClustererSplitEvaluator", 
@@ -900,6 +970,9 @@ public class  DedupingPRCurveCVResultProducer
    * is saved as an individual gzip file. If a file is specified, then
    * each output string is saved as an entry in a zip file. <p>
    *
+   * -T num_threads <br>
+   * The number of threads computing the folds of a run. <p>
+   *
    * -W classname <br>
    * Specify the full class name of the split evaluator. <p>
    *
@@ -924,6 +997,13 @@ public class  DedupingPRCurveCVResultProducer
       setNumFolds(10);
     }
 
+    String numThreads = Utils.getOption('T', options);
+    if (numThreads.length() != 0) {
+      setNumThreads(Integer.parseInt(numThreads));
+    } else {
+      setNumThreads(1);
+    }
+
     String seName = Utils.getOption('W', options);
     if (seName.length() == 0) {
       throw new Exception("A SplitEvaluator must be specified with"
@@ -955,7 +1035,7 @@ public class  DedupingPRCurveCVResultProducer
       seOptions = ((OptionHandler)m_splitEvaluator).getOptions();
     }
     
-    String [] options = new String [seOptions.length + 10];
+    String [] options = new String [seOptions.length + 13];
     int current = 0;
 
     switch (m_foldCreationMode) {
@@ -969,6 +1049,8 @@ public class  DedupingPRCurveCVResultProducer
 
     options[current++] = "-X";
     options[current++] = "" + getNumFolds();
+    options[current++] = "-T";
+    options[current++] = "" + getNumThreads();
 
     if (getRawOutput()) {
       options[current++] = "-D";
@@ -0,0 +1,262 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelCellRunner.java
+ *    Computes the cells of an experiment run on several threads
+ *
+ */
+
+package weka.experiment;
+
+import java.util.*;
+import weka.core.Instances;
+import weka.core.OutputFileHandler;
+import weka.core.SerializedObject;
+
+/**
+ * Computes the independent cells of a run of a result producer, e.g. the
+ * (fold, curve point) combinations of a learning curve, on several
+ * threads.  Each cell is computed with its own copy of the split
+ * evaluator.  The cells are delivered, i.e. their results are sent to
+ * the ResultListener, from the thread that added them and in the order
+ * they were added, so the results arrive in the same order as when the
+ * cells are computed one after the other and result files don't change.<p>
+ *
+ * With a single thread every cell is computed and delivered as soon as it
+ * is added, using the split evaluator of the producer itself.<p>
+ *
+ * The split evaluator has to be serializable to be copied, and the
+ * results of the cells are kept until all cells before them have been
+ * delivered.  If the copy writes files besides its results, i.e. is an
+ * OutputFileHandler, it is given the suffix "-cell" and the position of
+ * the cell for their names, so that cells don't write the same files.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ParallelCellRunner {
+
+  /** An independent unit of work of an experiment run */
+  public abstract static class Cell {
+
+    /** The error computing the cell ran into, null if none */
+    protected Exception m_Error;
+
+    /** Has the cell been computed? */
+    protected boolean m_Done;
+
+    /** Is the cell computed by one of several threads? */
+    protected boolean m_Parallel;
+
+    /**
+     * Returns data that the cell can pass on to its split evaluator, which
+     * is a copy in a parallel run since other cells use the same data
+     * @param data data shared by several cells
+     */
+    protected Instances ownCopy(Instances data) {
+      return m_Parallel ? new Instances(data) : data;
+    }
+
+    /**
+     * Computes the results of the cell and keeps them for delivery
+     * @param evaluator the split evaluator to use; in a parallel run it
+     * is a copy that is only used for this cell
+     * @exception Exception if the results can't be computed
+     */
+    public abstract void compute(SplitEvaluator evaluator) throws Exception;
+
+    /**
+     * Sends the results of the cell to the listener
+     * @exception Exception if the listener can't accept the results
+     */
+    public abstract void deliver() throws Exception;
+  }
+
+  /** The split evaluator the cells use or get copies of */
+  protected SplitEvaluator m_SplitEvaluator;
+
+  /** The number of threads computing cells */
+  protected int m_NumThreads;
+
+  /** The cells added since the last call of run() */
+  protected ArrayList m_Cells = new ArrayList();
+
+  /** The next cell to hand out to a thread */
+  protected int m_NextCell;
+
+  /** The first error a cell ran into */
+  protected Exception m_Error;
+
+  /** Set when no more cells should be handed out */
+  protected boolean m_Stopped;
+
+  /**
+   * Creates a runner
+   * @param evaluator the split evaluator of the result producer
+   * @param numThreads the number of threads computing cells, at most one
+   * means the cells are computed right when they are added
+   */
+  public ParallelCellRunner(SplitEvaluator evaluator, int numThreads) {
+    m_SplitEvaluator = evaluator;
+    m_NumThreads = numThreads;
+  }
+
+  /** Returns whether cells are computed by several threads */
+  public boolean isParallel() {
+    return m_NumThreads > 1;
+  }
+
+  /**
+   * Adds a cell; with a single thread it is computed and delivered
+   * immediately, otherwise when run() is called
+   * @param cell the cell
+   * @exception Exception if the cell is computed immediately and fails
+   */
+  public void add(Cell cell) throws Exception {
+    cell.m_Parallel = isParallel();
+    if (!isParallel()) {
+      cell.compute(m_SplitEvaluator);
+      cell.deliver();
+    } else {
+      m_Cells.add(cell);
+    }
+  }
+
+  /**
+   * Computes the cells added so far and delivers them in order as they
+   * become available.  If a cell fails, no further cells are started, the
+   * cells before it are still delivered and its error is thrown.
+   * @exception Exception if a cell can't be computed or delivered
+   */
+  public void run() throws Exception {
+    if (m_Cells.size() == 0) {
+      return;
+    }
+    m_NextCell = 0;
+    m_Error = null;
+    m_Stopped = false;
+
+    CellWorker [] workers = new CellWorker[Math.min(m_NumThreads, m_Cells.size())];
+    for (int t = 0; t < workers.length; t++) {
+      workers[t] = new CellWorker();
+      workers[t].start();
+    }
+    try {
+      for (int i = 0; i < m_Cells.size(); i++) {
+	Cell cell = (Cell) m_Cells.get(i);
+	if (!waitFor(i, cell)) {
+	  // an earlier failure kept this cell from being started
+	  break;
+	}
+	if (cell.m_Error != null) {
+	  throw cell.m_Error;
+	}
+	cell.deliver();
+	m_Cells.set(i, null);
+      }
+    } finally {
+      stop();
+      for (int t = 0; t < workers.length; t++) {
+	workers[t].join();
+      }
+      m_Cells.clear();
+    }
+    if (m_Error != null) {
+      throw m_Error;
+    }
+  }
+
+  /**
+   * Waits until a cell has been computed
+   * @param index the position of the cell
+   * @param cell the cell
+   * @return true if the cell was computed, false if it will not be
+   * started because a cell failed
+   */
+  protected synchronized boolean waitFor(int index, Cell cell) throws InterruptedException {
+    while (!cell.m_Done && !(m_Stopped && index >= m_NextCell)) {
+      wait();
+    }
+    return cell.m_Done;
+  }
+
+  /**
+   * Hands out the next cell to compute
+   * @return the index of the cell, -1 if there are none left or a cell
+   * failed
+   */
+  protected synchronized int nextCell() {
+    if (m_Stopped || m_NextCell >= m_Cells.size()) {
+      return -1;
+    }
+    return m_NextCell++;
+  }
+
+  /**
+   * Returns a copy of the split evaluator for a cell
+   * @param index the position of the cell
+   */
+  protected synchronized SplitEvaluator copyEvaluator(int index) throws Exception {
+    SplitEvaluator copy = (SplitEvaluator) new SerializedObject(m_SplitEvaluator).getObject();
+    if (copy instanceof OutputFileHandler) {
+      ((OutputFileHandler) copy).setOutputFileSuffix("-cell" + index);
+    }
+    return copy;
+  }
+
+  /**
+   * Records that a cell has been computed
+   * @param cell the cell
+   * @param error the error computing the cell ran into, null if none
+   */
+  protected synchronized void done(Cell cell, Exception error) {
+    cell.m_Error = error;
+    cell.m_Done = true;
+    if (error != null) {
+      if (m_Error == null) {
+	m_Error = error;
+      }
+      m_Stopped = true;
+    }
+    notifyAll();
+  }
+
+  /** Stops handing out cells */
+  protected synchronized void stop() {
+    m_Stopped = true;
+    notifyAll();
+  }
+
+  /** A thread that computes cells until none are left */
+  protected class CellWorker extends Thread {
+
+    public void run() {
+      int index;
+      while ((index = nextCell()) != -1) {
+	Cell cell = (Cell) m_Cells.get(index);
+	try {
+	  cell.compute(copyEvaluator(index));
+	  done(cell, null);
+	} catch (Exception e) {
+	  done(cell, e);
+	} catch (Throwable t) {
+	  // e.g. running out of memory, the cell must not stay pending
+	  done(cell, new Exception(t.toString()));
+	}
+      }
+    }
+  }
+}
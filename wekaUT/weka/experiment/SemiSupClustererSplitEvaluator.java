@@ -42,7 +42,7 @@ import weka.clusterers.*;
  */
 
 public class SemiSupClustererSplitEvaluator implements SplitEvaluator, 
-  OptionHandler {
+  OptionHandler, OutputFileHandler {
   
   /** The semi-supervised clusterer used for evaluation */
   protected Clusterer m_Clusterer = new MPCKMeans();
@@ -653,6 +653,19 @@ public class SemiSupClustererSplitEvaluator implements SplitEvaluator,
     
     System.err.println("SemiSupClustererSplitEvaluator: In set clusterer");
   }
+
+  /**
+   * Passes the suffix for the names of its output files on to the
+   * clusterer, if it writes any.
+   *
+   * @param suffix the suffix
+   */
+  public void setOutputFileSuffix(String suffix) {
+    
+    if (m_Clusterer instanceof OutputFileHandler) {
+      ((OutputFileHandler) m_Clusterer).setOutputFileSuffix(suffix);
+    }
+  }
   
   /**
    * Get the value of ClassForIRStatistics.
@@ -115,6 +115,9 @@ public class  SemiSupLearningCurveCVResultProducer
   /* Indicates whether fractions or actual number of instances have been specified */
   protected boolean m_IsFraction = false;
 
+  /** The number of threads computing the folds and curve points of a run */
+  protected int m_NumThreads = 1;
+
 
   /**
    * Returns a string describing this result producer
@@ -320,7 +323,8 @@ public class  SemiSupLearningCurveCVResultProducer
   /**
    * Gets the results for a specified run number. Different run
    * numbers correspond to different randomizations of the data. Results
-   * produced should be sent to the current ResultListener
+   * produced should be sent to the current ResultListener. The folds and
+   * curve points are computed by getNumThreads() threads.
    *
    * @param run the run number to get results for.
    * @exception Exception if a problem occurs while getting the results
@@ -348,6 +352,7 @@ public class  SemiSupLearningCurveCVResultProducer
     if (runInstances.classAttribute().isNominal()) {
       runInstances.stratify(m_NumFolds);
     }
+    ParallelCellRunner runner = new ParallelCellRunner(m_SplitEvaluator, m_NumThreads);
     for (int fold = 0; fold < m_NumFolds; fold++) {
       Instances train = runInstances.trainCV(m_NumFolds, fold);
       // Randomly shuffle stratified training set for fold
@@ -376,57 +381,9 @@ public class  SemiSupLearningCurveCVResultProducer
 	if(m_IsFraction) key[4] = "" + m_PlotPoints[pointNum];
 	System.arraycopy(seKey, 0, key, numExtraKeys, seKey.length);
 	if (m_ResultListener.isResultRequired(this, key)) {
-	  try {
-	    if(m_IsFraction)
-	      System.out.println("Run:" + run + " Fold:" + fold + " Size:" + m_CurrentSize + " Fraction:" + m_PlotPoints[pointNum]);
-	    else 
-	      System.out.println("Run:" + run + " Fold:" + fold + " Size:" + m_CurrentSize);
-	    Instances labeledTrainSubset = new Instances(train, 0, m_CurrentSize);
-	    Instances unlabeledTrainSubsetWithLabels = new Instances(train, m_CurrentSize, maxTrainSize()-m_CurrentSize);
-	    System.out.println("labeledTrain: " + m_CurrentSize + ", unlabeledTrain: " + unlabeledTrainSubsetWithLabels.numInstances() + ", maxTrain: " + maxTrainSize());
-	    if (m_IsTransductive) {
-	      for (int i=0; i<test.numInstances(); i++) {
-		unlabeledTrainSubsetWithLabels.add(test.instance(i));
-	      }
-	    }
-	    
-	    int classIndex = unlabeledTrainSubsetWithLabels.numAttributes(); // assuming that the last attribute is always the class
-
-	    // Need to remove the class labels from the unlabeledTrainSubsetWithLabels data before training learner
-
-	    Instances unlabeledTrainSubset = new Instances(unlabeledTrainSubsetWithLabels);
-	    unlabeledTrainSubset.deleteClassAttribute();
-		
-	    Object [] seResults;
-	    if (m_SplitEvaluator instanceof SemiSupClustererSplitEvaluator) {
-	      seResults = ((SemiSupClustererSplitEvaluator) m_SplitEvaluator).getResult(labeledTrainSubset, unlabeledTrainSubset, test, labeledTrainSubset.numClasses()); 
-	    }
-	    else {
-	      throw new Exception("SplitEvaluator should be SemiSupClustererSplitEvaluator - SemiSupClassifierSplitEvaluator not yet implemented");
-	    }
-	    
-	    Object [] results = new Object [seResults.length + 1];
-	    results[0] = getTimestamp();
-	    System.arraycopy(seResults, 0, results, 1,
-			     seResults.length);
-	    if (m_debugOutput) {
-	      String resultName = (""+run+"."+(fold+1)+"."+ m_CurrentSize + "." 
-				   + Utils.backQuoteChars(runInstances.relationName())
-				   +"."
-				   +m_SplitEvaluator.toString()).replace(' ','_');
-	      resultName = Utils.removeSubstring(resultName, 
-						 "weka.clusterers.");
-	      resultName = Utils.removeSubstring(resultName, 
-						 "weka.filters.");
-	      resultName = Utils.removeSubstring(resultName, 
-						 "weka.attributeSelection.");
-	      m_ZipDest.zipit(m_SplitEvaluator.getRawResultOutput(), resultName);
-	    }
-	    m_ResultListener.acceptResult(this, key, results);
-	  } catch (Exception ex) {
-	    // Save the train and test datasets for debugging purposes?
-	    throw ex;
-	  }
+	  runner.add(new CurvePointCell(key, run, fold, m_CurrentSize,
+					m_IsFraction ? m_PlotPoints[pointNum] : -1,
+					train, test, runInstances.relationName()));
 	}
 	if (m_PlotPoints != null) {
 	  pointNum ++;
@@ -437,6 +394,101 @@ public class  SemiSupLearningCurveCVResultProducer
 	}
       }
     }
+    runner.run();
+  }
+
+  /**
+   * One point of the learning curve of one fold: the first instances of
+   * the training fold are labeled, the rest (and the test fold if
+   * transductive) are clustered without labels
+   */
+  protected class CurvePointCell extends ParallelCellRunner.Cell {
+
+    /** The key of the results */
+    protected Object [] m_Key;
+
+    /** The run, fold and number of labeled instances */
+    protected int m_Run, m_Fold, m_Size;
+
+    /** The fraction of the training fold, -1 if sizes are not fractions */
+    protected double m_Fraction;
+
+    /** The training and test fold */
+    protected Instances m_Train, m_Test;
+
+    /** The name of the dataset */
+    protected String m_RelationName;
+
+    /** The results, once computed */
+    protected Object [] m_Results;
+
+    /** The name and content of the raw output, if it is saved */
+    protected String m_ResultName, m_RawOutput;
+
+    public CurvePointCell(Object [] key, int run, int fold, int size, double fraction,
+			  Instances train, Instances test, String relationName) {
+      m_Key = key;
+      m_Run = run;
+      m_Fold = fold;
+      m_Size = size;
+      m_Fraction = fraction;
+      m_Train = train;
+      m_Test = test;
+      m_RelationName = relationName;
+    }
+
+    public void compute(SplitEvaluator splitEvaluator) throws Exception {
+      if(m_IsFraction)
+	System.out.println("Run:" + m_Run + " Fold:" + m_Fold + " Size:" + m_Size + " Fraction:" + m_Fraction);
+      else 
+	System.out.println("Run:" + m_Run + " Fold:" + m_Fold + " Size:" + m_Size);
+      Instances labeledTrainSubset = new Instances(m_Train, 0, m_Size);
+      Instances unlabeledTrainSubsetWithLabels = new Instances(m_Train, m_Size, maxTrainSize()-m_Size);
+      System.out.println("labeledTrain: " + m_Size + ", unlabeledTrain: " + unlabeledTrainSubsetWithLabels.numInstances() + ", maxTrain: " + maxTrainSize());
+      if (m_IsTransductive) {
+	for (int i=0; i<m_Test.numInstances(); i++) {
+	  unlabeledTrainSubsetWithLabels.add(m_Test.instance(i));
+	}
+      }
+
+      // Need to remove the class labels from the unlabeledTrainSubsetWithLabels data before training learner
+      Instances unlabeledTrainSubset = new Instances(unlabeledTrainSubsetWithLabels);
+      unlabeledTrainSubset.deleteClassAttribute();
+		
+      Object [] seResults;
+      if (splitEvaluator instanceof SemiSupClustererSplitEvaluator) {
+	seResults = ((SemiSupClustererSplitEvaluator) splitEvaluator).getResult(labeledTrainSubset, unlabeledTrainSubset, ownCopy(m_Test), labeledTrainSubset.numClasses()); 
+      }
+      else {
+	throw new Exception("SplitEvaluator should be SemiSupClustererSplitEvaluator - SemiSupClassifierSplitEvaluator not yet implemented");
+      }
+	    
+      m_Results = new Object [seResults.length + 1];
+      m_Results[0] = getTimestamp();
+      System.arraycopy(seResults, 0, m_Results, 1,
+		       seResults.length);
+      if (m_debugOutput) {
+	String resultName = (""+m_Run+"."+(m_Fold+1)+"."+ m_Size + "." 
+			     + Utils.backQuoteChars(m_RelationName)
+			     +"."
+			     +splitEvaluator.toString()).replace(' ','_');
+	resultName = Utils.removeSubstring(resultName, 
+					   "weka.clusterers.");
+	resultName = Utils.removeSubstring(resultName, 
+					   "weka.filters.");
+	m_ResultName = Utils.removeSubstring(resultName, 
+					     "weka.attributeSelection.");
+	m_RawOutput = splitEvaluator.getRawResultOutput();
+      }
+    }
+
+    public void deliver() throws Exception {
+      if (m_debugOutput) {
+	m_ZipDest.zipit(m_RawOutput, m_ResultName);
+      }
+      m_ResultListener.acceptResult(SemiSupLearningCurveCVResultProducer.this,
+				    m_Key, m_Results);
+    }
   }
 
   /** Determines if the points specified are fractions of the total number of examples */
@@ -857,6 +909,35 @@ public class  SemiSupLearningCurveCVResultProducer
     m_debugOutput = d;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of threads computing the folds and curve points of a run, "
+      +"each with its own copy of the split evaluator. Results are passed on "
+      +"in the same order as with a single thread.";
+  }
+
+  /**
+   * Get the number of threads computing the cells of a run.
+   *
+   * @return the number of threads.
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Set the number of threads computing the cells of a run.
+   *
+   * @param numThreads the number of threads, 1 computes them one after the other.
+   */
+  public void setNumThreads(int numThreads) {
+    m_NumThreads = numThreads;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -894,7 +975,7 @@ public class  SemiSupLearningCurveCVResultProducer
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(7);
+    Vector newVector = new Vector(8);
 
     newVector.addElement(new Option(
 	     "\tThe number of folds to use for the cross-validation.\n"
@@ -934,6 +1015,13 @@ public class  SemiSupLearningCurveCVResultProducer
 	     "O", 1, 
 	     "-O <file/directory name/path>"));
 
+    newVector.addElement(new Option(
+	     "\tThe number of threads computing the folds and\n"
+	     +"\tcurve points of a run.\n"
+	     +"\t(default 1)", 
+	     "T", 1, 
+	     "-T <number of threads>"));
+
     newVector.addElement(new Option(
 	     "\tThe full class name of a SplitEvaluator.\n"
 	      +"\teg: weka.experiment.ClustererSplitEvaluator", 
@@ -969,6 +1057,9 @@ public class  SemiSupLearningCurveCVResultProducer
    * is saved as an individual gzip file. If a file is specified, then
    * each output string is saved as an entry in a zip file. <p>
    *
+   * -T num_threads <br>
+   * The number of threads computing the folds and curve points of a run. <p>
+   *
    * -W classname <br>
    * Specify the full class name of the split evaluator. <p>
    *
@@ -1014,6 +1105,13 @@ public class  SemiSupLearningCurveCVResultProducer
       setUpperSize(-1);
     }
 
+    String numThreads = Utils.getOption('T', options);
+    if (numThreads.length() != 0) {
+      setNumThreads(Integer.parseInt(numThreads));
+    } else {
+      setNumThreads(1);
+    }
+
     String seName = Utils.getOption('W', options);
     if (seName.length() == 0) {
       throw new Exception("A SplitEvaluator must be specified with"
@@ -1045,7 +1143,7 @@ public class  SemiSupLearningCurveCVResultProducer
       seOptions = ((OptionHandler)m_SplitEvaluator).getOptions();
     }
     
-    String [] options = new String [seOptions.length + 14];
+    String [] options = new String [seOptions.length + 16];
     int current = 0;
 
     options[current++] = "-X"; options[current++] = "" + getNumFolds();
@@ -1063,6 +1161,8 @@ public class  SemiSupLearningCurveCVResultProducer
     options[current++] = "" + getLowerSize();
     options[current++] = "-U";
     options[current++] = "" + getUpperSize();
+    options[current++] = "-T";
+    options[current++] = "" + getNumThreads();
 
     if (getSplitEvaluator() != null) {
       options[current++] = "-W";
@@ -134,6 +134,9 @@ public class  SemiSupPairActiveCurveCVResultProducer
   /* Indicates whether fractions or actual number of instances have been specified */
   protected boolean m_IsFraction = false;
 
+  /** The number of threads computing the folds and curve points of a run */
+  protected int m_NumThreads = 1;
+
 
   /**
    * Returns a string describing this result producer
@@ -351,7 +354,8 @@ public class  SemiSupPairActiveCurveCVResultProducer
   /**
    * Gets the results for a specified run number. Different run
    * numbers correspond to different randomizations of the data. Results
-   * produced should be sent to the current ResultListener
+   * produced should be sent to the current ResultListener. The folds and
+   * curve points are computed by getNumThreads() threads.
    *
    * @param run the run number to get results for.
    * @exception Exception if a problem occurs while getting the results
@@ -379,6 +383,7 @@ public class  SemiSupPairActiveCurveCVResultProducer
     if (runInstances.classAttribute().isNominal()) {
       runInstances.stratify(m_NumFolds);
     }
+    ParallelCellRunner runner = new ParallelCellRunner(m_SplitEvaluator, m_NumThreads);
     for (int fold = 0; fold < m_NumFolds; fold++) {
       Instances train = runInstances.trainCV(m_NumFolds, fold);
       // Randomly shuffle stratified training set for fold
@@ -416,61 +421,9 @@ public class  SemiSupPairActiveCurveCVResultProducer
 		if(m_IsFraction) key[4] = "" + m_PlotPoints[pointNum];
 		System.arraycopy(seKey, 0, key, numExtraKeys, seKey.length);
 		if (m_ResultListener.isResultRequired(this, key)) {
-		  try {
-			System.out.println((new SimpleDateFormat("HH:mm:ss:")).format(new Date()));
-			if(m_IsFraction) {
-			  System.out.println("Run:" + run + " Fold:" + fold
-								 + " Size:" + m_CurrentSize
-								 + " Fraction:" + m_PlotPoints[pointNum]);
-			} else {
-			  System.out.println("\n****\nRun:" + run + " Fold:" + fold
-								 + " Size:" + m_CurrentSize
-								 + " Dataset: " + train.relationName());
-			}
-
-			// Need to remove the class labels from the unlabeledTrainSubsetWithLabels data before training learner
-			Instances unlabeledTrain = new Instances(train);
-			unlabeledTrain.deleteClassAttribute();
-
-			Instances unlabeledTest = new Instances (test);
-			unlabeledTest.deleteClassAttribute();
-
-			if (m_IsTransductive) {
-			  for (int i=0; i<test.numInstances(); i++) {
-				unlabeledTrain.add(unlabeledTest.instance(i));
-			  }
-			}
- 	    		
-			Object [] seResults;
-			if (m_SplitEvaluator instanceof SemiSupClustererSplitEvaluator) {
-			  seResults = ((SemiSupClustererSplitEvaluator) m_SplitEvaluator).getResult(labeledTrainPairs, train, unlabeledTrain, test, unlabeledTest); 
-			}
-			else {
-			  throw new Exception("SplitEvaluator should be SemiSupClustererSplitEvaluator - SemiSupClassifierSplitEvaluator not yet implemented");
-			}
-
-			Object [] results = new Object [seResults.length + 1];
-			results[0] = getTimestamp();
-			System.arraycopy(seResults, 0, results, 1,
-							 seResults.length);
-			if (m_debugOutput) {
-			  String resultName = (""+run+"."+(fold+1)+"."+ m_CurrentSize + "." 
-								   + Utils.backQuoteChars(runInstances.relationName())
-								   +"."
-								   +m_SplitEvaluator.toString()).replace(' ','_');
-			  resultName = Utils.removeSubstring(resultName, 
-												 "weka.clusterers.");
-			  resultName = Utils.removeSubstring(resultName, 
-												 "weka.filters.");
-			  resultName = Utils.removeSubstring(resultName, 
-												 "weka.attributeSelection.");
-			  m_ZipDest.zipit(m_SplitEvaluator.getRawResultOutput(), resultName);
-			}
-			m_ResultListener.acceptResult(this, key, results);
-		  } catch (Exception ex) {
-			// Save the train and test datasets for debugging purposes?
-			throw ex;
-		  }
+		  runner.add(new CurvePointCell(key, run, fold, m_CurrentSize,
+										m_IsFraction ? m_PlotPoints[pointNum] : -1,
+										labeledTrainPairs, train, test));
 		}
 
 		//  	PCKMeans pckmeans = (PCKMeans) ((SemiSupClustererSplitEvaluator)m_SplitEvaluator).getClusterer(); // KLUGE, will have to remove later!!
@@ -530,6 +483,113 @@ public class  SemiSupPairActiveCurveCVResultProducer
 		}
       }
     }
+    runner.run();
+  }
+
+  /**
+   * One point of the learning curve of one fold: the training and the
+   * test fold are clustered without labels, with constraints between
+   * pairs of training instances
+   */
+  protected class CurvePointCell extends ParallelCellRunner.Cell {
+
+    /** The key of the results */
+    protected Object [] m_Key;
+
+    /** The run, fold and number of pairs */
+    protected int m_Run, m_Fold, m_Size;
+
+    /** The fraction of the training fold, -1 if sizes are not fractions */
+    protected double m_Fraction;
+
+    /** The constrained pairs */
+    protected ArrayList m_LabeledTrainPairs;
+
+    /** The training and test fold */
+    protected Instances m_Train, m_Test;
+
+    /** The results, once computed */
+    protected Object [] m_Results;
+
+    /** The name and content of the raw output, if it is saved */
+    protected String m_ResultName, m_RawOutput;
+
+    public CurvePointCell(Object [] key, int run, int fold, int size, double fraction,
+						  ArrayList labeledTrainPairs, Instances train, Instances test) {
+      m_Key = key;
+      m_Run = run;
+      m_Fold = fold;
+      m_Size = size;
+      m_Fraction = fraction;
+      m_LabeledTrainPairs = labeledTrainPairs;
+      m_Train = train;
+      m_Test = test;
+    }
+
+    public void compute(SplitEvaluator splitEvaluator) throws Exception {
+      System.out.println((new SimpleDateFormat("HH:mm:ss:")).format(new Date()));
+      if(m_IsFraction) {
+		System.out.println("Run:" + m_Run + " Fold:" + m_Fold
+						   + " Size:" + m_Size
+						   + " Fraction:" + m_Fraction);
+      } else {
+		System.out.println("\n****\nRun:" + m_Run + " Fold:" + m_Fold
+						   + " Size:" + m_Size
+						   + " Dataset: " + m_Train.relationName());
+      }
+      // the pair list is passed on as it is, so the cells of a parallel
+      // run need copies of it as well as of the data
+      ArrayList labeledTrainPairs = m_Parallel ? new ArrayList(m_LabeledTrainPairs) : m_LabeledTrainPairs;
+      Instances train = ownCopy(m_Train);
+      Instances test = ownCopy(m_Test);
+
+      // Need to remove the class labels from the unlabeledTrainSubsetWithLabels data before training learner
+      Instances unlabeledTrain = new Instances(train);
+      unlabeledTrain.deleteClassAttribute();
+
+      Instances unlabeledTest = new Instances (test);
+      unlabeledTest.deleteClassAttribute();
+
+      if (m_IsTransductive) {
+		for (int i=0; i<test.numInstances(); i++) {
+		  unlabeledTrain.add(unlabeledTest.instance(i));
+		}
+      }
+ 	    		
+      Object [] seResults;
+      if (splitEvaluator instanceof SemiSupClustererSplitEvaluator) {
+		seResults = ((SemiSupClustererSplitEvaluator) splitEvaluator).getResult(labeledTrainPairs, train, unlabeledTrain, test, unlabeledTest); 
+      }
+      else {
+		throw new Exception("SplitEvaluator should be SemiSupClustererSplitEvaluator - SemiSupClassifierSplitEvaluator not yet implemented");
+      }
+
+      m_Results = new Object [seResults.length + 1];
+      m_Results[0] = getTimestamp();
+      System.arraycopy(seResults, 0, m_Results, 1,
+					   seResults.length);
+      if (m_debugOutput) {
+		String resultName = (""+m_Run+"."+(m_Fold+1)+"."+ m_Size + "." 
+							 + Utils.backQuoteChars(m_Instances.relationName())
+							 +"."
+							 +splitEvaluator.toString()).replace(' ','_');
+		resultName = Utils.removeSubstring(resultName, 
+										   "weka.clusterers.");
+		resultName = Utils.removeSubstring(resultName, 
+										   "weka.filters.");
+		m_ResultName = Utils.removeSubstring(resultName, 
+											 "weka.attributeSelection.");
+		m_RawOutput = splitEvaluator.getRawResultOutput();
+      }
+    }
+
+    public void deliver() throws Exception {
+      if (m_debugOutput) {
+		m_ZipDest.zipit(m_RawOutput, m_ResultName);
+      }
+      m_ResultListener.acceptResult(SemiSupPairActiveCurveCVResultProducer.this,
+									m_Key, m_Results);
+    }
   }
 
 
@@ -1038,6 +1098,35 @@ public class  SemiSupPairActiveCurveCVResultProducer
     m_debugOutput = d;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of threads computing the folds and curve points of a run, "
+      +"each with its own copy of the split evaluator. Results are passed on "
+      +"in the same order as with a single thread.";
+  }
+
+  /**
+   * Get the number of threads computing the cells of a run.
+   *
+   * @return the number of threads.
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Set the number of threads computing the cells of a run.
+   *
+   * @param numThreads the number of threads, 1 computes them one after the other.
+   */
+  public void setNumThreads(int numThreads) {
+    m_NumThreads = numThreads;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -1075,7 +1164,7 @@ public class  SemiSupPairActiveCurveCVResultProducer
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(7);
+    Vector newVector = new Vector(8);
 
     newVector.addElement(new Option(
 									"\tThe number of folds to use for the cross-validation.\n"
@@ -1115,6 +1204,13 @@ public class  SemiSupPairActiveCurveCVResultProducer
 									"O", 1, 
 									"-O <file/directory name/path>"));
 
+    newVector.addElement(new Option(
+									"\tThe number of threads computing the folds and\n"
+									+"\tcurve points of a run.\n"
+									+"\t(default 1)", 
+									"T", 1, 
+									"-T <number of threads>"));
+
     newVector.addElement(new Option(
 									"\tThe full class name of a SplitEvaluator.\n"
 									+"\teg: weka.experiment.ClustererSplitEvaluator", 
@@ -1150,6 +1246,9 @@ public class  SemiSupPairActiveCurveCVResultProducer
    * is saved as an individual gzip file. If a file is specified, then
    * each output string is saved as an entry in a zip file. <p>
    *
+   * -T num_threads <br>
+   * The number of threads computing the folds and curve points of a run. <p>
+   *
    * -W classname <br>
    * Specify the full class name of the split evaluator. <p>
    *
@@ -1195,6 +1294,13 @@ public class  SemiSupPairActiveCurveCVResultProducer
       setUpperSize(-1);
     }
 
+    String numThreads = Utils.getOption('T', options);
+    if (numThreads.length() != 0) {
+      setNumThreads(Integer.parseInt(numThreads));
+    } else {
+      setNumThreads(1);
+    }
+
     String seName = Utils.getOption('W', options);
     if (seName.length() == 0) {
       throw new Exception("A SplitEvaluator must be specified with"
@@ -1226,7 +1332,7 @@ public class  SemiSupPairActiveCurveCVResultProducer
       seOptions = ((OptionHandler)m_SplitEvaluator).getOptions();
     }
     
-    String [] options = new String [seOptions.length + 16];
+    String [] options = new String [seOptions.length + 18];
     int current = 0;
 
     options[current++] = "-X"; options[current++] = "" + getNumFolds();
@@ -1244,6 +1350,8 @@ public class  SemiSupPairActiveCurveCVResultProducer
     options[current++] = "" + getLowerSize();
     options[current++] = "-U";
     options[current++] = "" + getUpperSize();
+    options[current++] = "-T";
+    options[current++] = "" + getNumThreads();
 
 	if (m_fractionMustLinks != -1) { 
 	  options[current++] = "-fraction";